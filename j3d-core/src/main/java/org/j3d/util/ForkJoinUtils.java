@@ -0,0 +1,194 @@
+/*
+ * j3d.org Copyright (c) 2001-2015
+ *                                 Java Source
+ *
+ *  This source is licensed under the GNU LGPL v2.1
+ *  Please read docs/LGPL.txt for more information
+ *
+ *  This software comes with the standard NO WARRANTY disclaimer for any
+ *  purpose. Use it at your own risk. If there's a problem you get to fix it.
+ */
+
+package org.j3d.util;
+
+// External imports
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+// Local imports
+// None
+
+/**
+ * Holder of the fork/join pool shared by the parallel batch processing code
+ * in the various j3d.org libraries.
+ * <p>
+ *
+ * Code that splits work across multiple cores will generally allow the
+ * caller to pass in an explicit pool. When one is not provided, they fall
+ * back to the pool held here. The pool is lazily created the first time it
+ * is requested and is sized to the number of available processors. An
+ * application that already has its own pool may register it here so that
+ * all the library code shares the same worker threads.
+ * <p>
+ *
+ * Loops over independent items are split up with
+ * {@link #forRange(ForkJoinPool, int, int, int, RangeProcessor)}, which
+ * halves the range until the pieces are small enough and hands each piece
+ * to a {@link RangeProcessor}. Small loops, or a null pool, run straight
+ * through on the calling thread.
+ */
+public class ForkJoinUtils
+{
+    /** The pool that is shared between all the users */
+    private static ForkJoinPool sharedPool;
+
+    /**
+     * Private constructor to prevent instantiation of this static-only class.
+     */
+    private ForkJoinUtils()
+    {
+    }
+
+    /**
+     * Fetch the currently shared pool. If none has been set, a new one is
+     * created with parallelism equal to the number of available processors.
+     *
+     * @return The current shared pool instance
+     */
+    public static synchronized ForkJoinPool getSharedPool()
+    {
+        if(sharedPool == null)
+            sharedPool = new ForkJoinPool();
+
+        return sharedPool;
+    }
+
+    /**
+     * Replace the shared pool with an application-provided instance. Any
+     * work already submitted to the previous pool is unaffected. The
+     * previous pool is not shut down. Setting a value of null will cause a
+     * new default pool to be created on the next request.
+     *
+     * @param pool The pool instance to use or null
+     */
+    public static synchronized void setSharedPool(ForkJoinPool pool)
+    {
+        sharedPool = pool;
+    }
+
+    /**
+     * Convenience method to calculate a reasonable minimum size for a chunk
+     * of work when splitting a loop of the given size over the given pool.
+     * The value aims at a few chunks per worker thread so that work stealing
+     * can balance uneven costs, while never dropping below the given floor
+     * so that small jobs do not drown in task overhead.
+     *
+     * @param pool The pool that will run the work
+     * @param total The total number of items to be processed
+     * @param minChunk The smallest chunk size that is worth a separate task
+     * @return A chunk size that is at least minChunk and at least 1
+     */
+    public static int chunkSize(ForkJoinPool pool, int total, int minChunk)
+    {
+        int parallelism = (pool == null) ? 1 : pool.getParallelism();
+        int chunk = total / (parallelism * 4);
+
+        if(chunk < minChunk)
+            chunk = minChunk;
+
+        return chunk < 1 ? 1 : chunk;
+    }
+
+    /**
+     * Process the items from start to end, split over the given pool. The
+     * range is halved until the pieces are no bigger than the size given by
+     * {@link #chunkSize(ForkJoinPool, int, int)}, and each piece is passed to
+     * the processor. If the pool is null or the range fits in a single
+     * piece, the whole range is processed on the calling thread. Either way
+     * the method returns once every item has been processed, and an
+     * exception thrown by the processor is passed on to the caller.
+     *
+     * @param pool The pool to run the work in or null for the calling thread
+     * @param start The first item to process, inclusive
+     * @param end The last item to process, exclusive
+     * @param minChunk The smallest number of items to give to one piece
+     * @param processor The code to run on each piece
+     */
+    public static void forRange(ForkJoinPool pool,
+                                int start,
+                                int end,
+                                int minChunk,
+                                RangeProcessor processor)
+    {
+        int count = end - start;
+
+        if(count <= 0)
+            return;
+
+        int chunk = chunkSize(pool, count, minChunk);
+
+        if(pool == null || count <= chunk)
+        {
+            processor.processRange(start, end);
+            return;
+        }
+
+        RangeTask task = new RangeTask(processor, start, end, chunk);
+
+        // Already running inside the pool, so fork from here rather than
+        // blocking a worker on a new submission.
+        if(ForkJoinTask.getPool() == pool)
+            task.invoke();
+        else
+            pool.invoke(task);
+    }
+
+    /**
+     * Task that halves its range until it is below the threshold and then
+     * hands it to the processor.
+     */
+    private static class RangeTask extends RecursiveAction
+    {
+        /** Version ID for serialisation */
+        private static final long serialVersionUID = 1L;
+
+        /** The code that does the work */
+        private final RangeProcessor processor;
+
+        /** First item to process, inclusive */
+        private final int start;
+
+        /** Last item to process, exclusive */
+        private final int end;
+
+        /** Number of items below which we stop splitting */
+        private final int threshold;
+
+        /**
+         * Construct a task for the given range.
+         */
+        RangeTask(RangeProcessor processor, int start, int end, int threshold)
+        {
+            this.processor = processor;
+            this.start = start;
+            this.end = end;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if(end - start <= threshold)
+            {
+                processor.processRange(start, end);
+                return;
+            }
+
+            int mid = (start + end) >>> 1;
+
+            invokeAll(new RangeTask(processor, start, mid, threshold),
+                      new RangeTask(processor, mid, end, threshold));
+        }
+    }
+}
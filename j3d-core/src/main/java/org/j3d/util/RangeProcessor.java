@@ -0,0 +1,37 @@
+/*
+ * j3d.org Copyright (c) 2001-2015
+ *                                 Java Source
+ *
+ *  This source is licensed under the GNU LGPL v2.1
+ *  Please read docs/LGPL.txt for more information
+ *
+ *  This software comes with the standard NO WARRANTY disclaimer for any
+ *  purpose. Use it at your own risk. If there's a problem you get to fix it.
+ */
+
+package org.j3d.util;
+
+// External imports
+// None
+
+// Local imports
+// None
+
+/**
+ * The work done on one range of a loop split up by
+ * {@link ForkJoinUtils#forRange(java.util.concurrent.ForkJoinPool, int, int, int, RangeProcessor)}.
+ * <p>
+ *
+ * Ranges may be processed at the same time on different threads, so an
+ * implementation must only write state that belongs to its own range.
+ */
+public interface RangeProcessor
+{
+    /**
+     * Process the items of one range.
+     *
+     * @param start The first item to process, inclusive
+     * @param end The last item to process, exclusive
+     */
+    public void processRange(int start, int end);
+}
@@ -0,0 +1,100 @@
+/*
+ * j3d.org Copyright (c) 2001-2015
+ *                                 Java Source
+ *
+ *  This source is licensed under the GNU LGPL v2.1
+ *  Please read docs/LGPL.txt for more information
+ *
+ *  This software comes with the standard NO WARRANTY disclaimer for any
+ *  purpose. Use it at your own risk. If there's a problem you get to fix it.
+ */
+
+package org.j3d.util;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public class ForkJoinUtilsTest
+{
+    @Test(groups = "unit")
+    public void testForRangeCoversEveryItem() throws Exception
+    {
+        final int[] visits = new int[10000];
+        final AtomicInteger pieces = new AtomicInteger();
+
+        RangeProcessor processor = new RangeProcessor()
+        {
+            @Override
+            public void processRange(int start, int end)
+            {
+                pieces.incrementAndGet();
+
+                for(int i = start; i < end; i++)
+                    visits[i]++;
+            }
+        };
+
+        ForkJoinPool pool = new ForkJoinPool(3);
+
+        try
+        {
+            ForkJoinUtils.forRange(pool, 5, 9995, 100, processor);
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+
+        for(int i = 0; i < visits.length; i++)
+            assertEquals(visits[i], (i < 5 || i >= 9995) ? 0 : 1, "Item " + i);
+
+        assertTrue(pieces.get() > 1, "Range was not split");
+
+        // No pool or a small range is one call on the calling thread
+        pieces.set(0);
+        ForkJoinUtils.forRange(null, 0, 10000, 100, processor);
+        assertEquals(pieces.get(), 1, "Null pool split the range");
+
+        pieces.set(0);
+        ForkJoinUtils.forRange(ForkJoinUtils.getSharedPool(), 0, 50, 100, processor);
+        assertEquals(pieces.get(), 1, "Small range was split");
+
+        pieces.set(0);
+        ForkJoinUtils.forRange(null, 10, 10, 100, processor);
+        assertEquals(pieces.get(), 0, "Empty range processed");
+    }
+
+    @Test(groups = "unit")
+    public void testForRangePassesExceptions() throws Exception
+    {
+        RangeProcessor processor = new RangeProcessor()
+        {
+            @Override
+            public void processRange(int start, int end)
+            {
+                if(start <= 500 && end > 500)
+                    throw new IllegalStateException("Bad item");
+            }
+        };
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+
+        try
+        {
+            ForkJoinUtils.forRange(pool, 0, 1000, 10, processor);
+            fail("Exception was lost");
+        }
+        catch(IllegalStateException ise)
+        {
+            // expected
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,464 @@
+/*
+ * j3d.org Copyright (c) 2001-2015
+ *                                 Java Source
+ *
+ *  This source is licensed under the GNU LGPL v2.1
+ *  Please read docs/LGPL.txt for more information
+ *
+ *  This software comes with the standard NO WARRANTY disclaimer for any
+ *  purpose. Use it at your own risk. If there's a problem you get to fix it.
+ */
+
+package org.j3d.geom;
+
+// External imports
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+
+// Local imports
+import org.j3d.util.ForkJoinUtils;
+import org.j3d.util.RangeProcessor;
+
+/**
+ * Triangulates large numbers of independent concave polygons in one call,
+ * spreading the work over multiple cores.
+ * <p>
+ *
+ * {@link TriangulationUtils} and the triangulators behind it keep internal
+ * working structures between calls, so a single instance cannot be shared
+ * between threads. This class keeps a pool of them instead. Each parallel
+ * task checks an instance out for its whole run of polygons and returns it
+ * afterwards, so the internal caches are reused from one batch to the next
+ * and no instance is ever touched by two threads at once.
+ * <p>
+ *
+ * <b>Input Format</b>
+ * <p>
+ * All the polygons are packed one after the other into a single flat
+ * coordinate array of [... Xn, Yn, Zn, ...] values. An offsets array gives
+ * the index of the first vertex of each polygon, followed by one extra entry
+ * that marks the end of the last polygon. So polygon i has the vertices from
+ * polygonOffsets[i] up to, but not including, polygonOffsets[i + 1].
+ * Polygons are not required to be closed. Polygons with fewer than three
+ * vertices are skipped.
+ * <p>
+ *
+ * <b>Output Format</b>
+ * <p>
+ * The triangles for all the polygons are written into one shared index
+ * array, in polygon order, as three vertex indices per triangle. The indices
+ * are vertex numbers into the coordinate array, not offsets into it, so they
+ * can be used directly as an index buffer. The output array needs room for
+ * the worst case of (n - 2) triangles per polygon of n vertices, which is
+ * the value returned by {@link #getMaxIndexCount(int, int[])}.
+ * <p>
+ *
+ * If a polygon fails to triangulate, the count reported for it in the
+ * optional per-polygon counts array is negative, following the same
+ * convention as {@link TriangulationUtils}. Any triangles that were produced
+ * before the failure are still included in the output.
+ */
+public class BatchTriangulator
+{
+    /** The default size of the polygon values */
+    private static final int DEFAULT_POLY_SIZE = 6;
+
+    /**
+     * Polygons per piece when a batch is split over a pool. Each piece
+     * takes a triangulator from the pool, so it needs enough polygons to
+     * be worth the checkout.
+     */
+    private static final int MIN_POLYGON_CHUNK = 64;
+
+    /** Triangulators that are not currently being used by a task */
+    private ConcurrentLinkedQueue<TriangulationUtils> triangulatorPool;
+
+    /** Initialisation size for new triangulators */
+    private int initSize;
+
+    /** Vertex count to switch to z-order hashed ear clipping, 0 for never */
+    private int zOrderThreshold;
+
+    /**
+     * Construct a new instance of the batch triangulator. Assumes a default
+     * max polygon size of 6 vertices.
+     */
+    public BatchTriangulator()
+    {
+        this(DEFAULT_POLY_SIZE);
+    }
+
+    /**
+     * Construct a new instance of the batch triangulator with a given maximum
+     * polygon size hint, which is passed to each of the triangulators.
+     *
+     * @param size Hint to the maximum size of polygon to deal with
+     */
+    public BatchTriangulator(int size)
+    {
+        initSize = size;
+        triangulatorPool = new ConcurrentLinkedQueue<TriangulationUtils>();
+    }
+
+    /**
+     * Set the vertex count at which concave polygons are triangulated with
+     * the z-order hashed ear clipper. See
+     * {@link TriangulationUtils#setZOrderThreshold(int)} for details. Should
+     * not be changed while a batch is being processed.
+     *
+     * @param size The minimum vertex count to use the hashed mode for
+     */
+    public void setZOrderThreshold(int size)
+    {
+        zOrderThreshold = size;
+
+        for(TriangulationUtils tu : triangulatorPool)
+            tu.setZOrderThreshold(size);
+    }
+
+    /**
+     * Get the vertex count at which the z-order hashed ear clipper is used.
+     *
+     * @return The current threshold, zero for disabled
+     */
+    public int getZOrderThreshold()
+    {
+        return zOrderThreshold;
+    }
+
+    /**
+     * Calculate the size of index array needed to hold the worst case output
+     * of a batch.
+     *
+     * @param numPolygons The number of polygons in the batch
+     * @param polygonOffsets The first vertex of each polygon plus end marker
+     * @return The number of int values needed in the output array
+     */
+    public static int getMaxIndexCount(int numPolygons, int[] polygonOffsets)
+    {
+        int ret_val = 0;
+
+        for(int i = 0; i < numPolygons; i++)
+        {
+            int num_vtx = polygonOffsets[i + 1] - polygonOffsets[i];
+
+            if(num_vtx > 2)
+                ret_val += (num_vtx - 2) * 3;
+        }
+
+        return ret_val;
+    }
+
+    /**
+     * Triangulate a batch of polygons using the shared fork/join pool.
+     *
+     * @param coords The packed coordinates of all the polygons
+     * @param numPolygons The number of polygons to process
+     * @param polygonOffsets The first vertex of each polygon plus end marker
+     * @param normals Optional face normal per polygon or null to calculate
+     * @param triangleCounts Optional array to receive the triangle count for
+     *   each polygon, negative where an error occurred. May be null
+     * @param output The array to write the triangle vertex indices to
+     * @return The total number of triangles written to the output
+     * @throws IllegalArgumentException One of the arrays is too small
+     */
+    public int triangulate(float[] coords,
+                           int numPolygons,
+                           int[] polygonOffsets,
+                           float[] normals,
+                           int[] triangleCounts,
+                           int[] output)
+    {
+        return triangulate(coords,
+                           numPolygons,
+                           polygonOffsets,
+                           normals,
+                           triangleCounts,
+                           output,
+                           ForkJoinUtils.getSharedPool());
+    }
+
+    /**
+     * Triangulate a batch of polygons using the given fork/join pool. If the
+     * pool is null, all of the work is done on the calling thread.
+     *
+     * @param coords The packed coordinates of all the polygons
+     * @param numPolygons The number of polygons to process
+     * @param polygonOffsets The first vertex of each polygon plus end marker
+     * @param normals Optional face normal per polygon or null to calculate
+     * @param triangleCounts Optional array to receive the triangle count for
+     *   each polygon, negative where an error occurred. May be null
+     * @param output The array to write the triangle vertex indices to
+     * @param pool The pool to run the work in or null for the calling thread
+     * @return The total number of triangles written to the output
+     * @throws IllegalArgumentException One of the arrays is too small
+     */
+    public int triangulate(final float[] coords,
+                           int numPolygons,
+                           final int[] polygonOffsets,
+                           final float[] normals,
+                           int[] triangleCounts,
+                           final int[] output,
+                           ForkJoinPool pool)
+    {
+        if(numPolygons <= 0)
+            return 0;
+
+        if(polygonOffsets.length < numPolygons + 1)
+            throw new IllegalArgumentException(
+                "Polygon offsets needs numPolygons + 1 values");
+
+        if(polygonOffsets[numPolygons] * 3 > coords.length)
+            throw new IllegalArgumentException(
+                "Coordinate array is smaller than the polygon offsets require");
+
+        if(normals != null && normals.length < numPolygons * 3)
+            throw new IllegalArgumentException(
+                "Normal array is smaller than numPolygons * 3");
+
+        if(triangleCounts != null && triangleCounts.length < numPolygons)
+            throw new IllegalArgumentException(
+                "Triangle count array is smaller than numPolygons");
+
+        // Reserve the worst case slot for each polygon so that the tasks
+        // can all write straight into the shared output.
+        final int[] output_offsets = new int[numPolygons];
+        int max_idx = 0;
+
+        for(int i = 0; i < numPolygons; i++)
+        {
+            output_offsets[i] = max_idx;
+
+            int num_vtx = polygonOffsets[i + 1] - polygonOffsets[i];
+
+            if(num_vtx > 2)
+                max_idx += (num_vtx - 2) * 3;
+        }
+
+        if(output.length < max_idx)
+            throw new IllegalArgumentException(
+                "Output array needs at least " + max_idx + " values");
+
+        final int[] counts = (triangleCounts != null) ?
+                             triangleCounts :
+                             new int[numPolygons];
+
+        // Each piece checks a triangulator out of the pool for its whole
+        // run of polygons.
+        RangeProcessor processor = new RangeProcessor()
+        {
+            @Override
+            public void processRange(int start, int end)
+            {
+                TriangulationUtils triangulator = acquireTriangulator();
+
+                try
+                {
+                    processPolygons(triangulator,
+                                    coords,
+                                    polygonOffsets,
+                                    normals,
+                                    output_offsets,
+                                    counts,
+                                    output,
+                                    start,
+                                    end);
+                }
+                finally
+                {
+                    releaseTriangulator(triangulator);
+                }
+            }
+        };
+
+        ForkJoinUtils.forRange(pool, 0, numPolygons, MIN_POLYGON_CHUNK,
+                               processor);
+
+        // Close up the gaps left by polygons that produced less than the
+        // worst case. Slots only ever move towards the front so a forward
+        // copy is safe.
+        int out = 0;
+
+        for(int i = 0; i < numPolygons; i++)
+        {
+            int num_idx = Math.abs(counts[i]) * 3;
+
+            if(num_idx != 0 && out != output_offsets[i])
+                System.arraycopy(output, output_offsets[i], output, out, num_idx);
+
+            out += num_idx;
+        }
+
+        return out / 3;
+    }
+
+    /**
+     * Clean up the internal caches of all the pooled triangulators and
+     * release them. Should not be called while a batch is being processed.
+     */
+    public void clearCachedObjects()
+    {
+        triangulatorPool.clear();
+    }
+
+    /**
+     * Fetch a triangulator from the pool, creating a new one if none are
+     * free.
+     *
+     * @return A triangulator for the exclusive use of the caller
+     */
+    private TriangulationUtils acquireTriangulator()
+    {
+        TriangulationUtils ret_val = triangulatorPool.poll();
+
+        if(ret_val == null)
+        {
+            ret_val = new TriangulationUtils(initSize);
+            ret_val.setZOrderThreshold(zOrderThreshold);
+        }
+
+        return ret_val;
+    }
+
+    /**
+     * Return a triangulator to the pool once the caller has finished with it.
+     *
+     * @param triangulator The instance to put back
+     */
+    private void releaseTriangulator(TriangulationUtils triangulator)
+    {
+        triangulatorPool.offer(triangulator);
+    }
+
+    /**
+     * Triangulate the given range of polygons with a single triangulator.
+     * Every polygon has a slot in the output that is big enough for the
+     * worst case triangle count, so ranges never write over each other.
+     *
+     * @param triangulator The triangulator to use for all the polygons
+     * @param coords Vertex coordinates of all the polygons
+     * @param polygonOffsets First vertex of each polygon plus an end marker
+     * @param normals Per-polygon normals or null to calculate them
+     * @param outputOffsets Start of each polygon's slot in the output
+     * @param triangleCounts Output triangle count per polygon
+     * @param output Output vertex indices
+     * @param start First polygon to process, inclusive
+     * @param end Last polygon to process, exclusive
+     */
+    private static void processPolygons(TriangulationUtils triangulator,
+                                        float[] coords,
+                                        int[] polygonOffsets,
+                                        float[] normals,
+                                        int[] outputOffsets,
+                                        int[] triangleCounts,
+                                        int[] output,
+                                        int start,
+                                        int end)
+    {
+        float[] normal = new float[3];
+        int[] tmp_output = new int[12];
+
+        for(int p = start; p < end; p++)
+        {
+            int first_vtx = polygonOffsets[p];
+            int num_vtx = polygonOffsets[p + 1] - first_vtx;
+
+            if(num_vtx < 3)
+            {
+                triangleCounts[p] = 0;
+                continue;
+            }
+
+            if(normals != null)
+            {
+                normal[0] = normals[p * 3];
+                normal[1] = normals[p * 3 + 1];
+                normal[2] = normals[p * 3 + 2];
+            }
+            else
+            {
+                calcNewellNormal(coords, first_vtx, num_vtx, normal);
+            }
+
+            int max_tris = num_vtx - 2;
+
+            if(tmp_output.length < max_tris * 3)
+                tmp_output = new int[max_tris * 3];
+
+            int num_tris = triangulator.triangulateConcavePolygon(coords,
+                                                                  first_vtx * 3,
+                                                                  num_vtx,
+                                                                  tmp_output,
+                                                                  normal);
+
+            // Error results are the negative of what was generated before
+            // the failure. Keep those triangles but pass the flag back.
+            int valid_tris = (num_tris < 0) ? -num_tris : num_tris;
+
+            if(valid_tris > max_tris)
+                valid_tris = max_tris;
+
+            int out = outputOffsets[p];
+            int num_idx = valid_tris * 3;
+
+            for(int i = 0; i < num_idx; i++)
+                output[out + i] = tmp_output[i] / 3;
+
+            triangleCounts[p] = (num_tris < 0) ? -valid_tris : valid_tris;
+        }
+    }
+
+    /**
+     * Calculate the face normal of a polygon using Newell's method, which
+     * copes with concave and slightly non-planar outlines.
+     *
+     * @param coords Vertex coordinates of all the polygons
+     * @param firstVertex The index of the first vertex of the polygon
+     * @param numVertex The number of vertices in the polygon
+     * @param normal Array to write the unit normal to
+     */
+    private static void calcNewellNormal(float[] coords,
+                                         int firstVertex,
+                                         int numVertex,
+                                         float[] normal)
+    {
+        double nx = 0;
+        double ny = 0;
+        double nz = 0;
+
+        int last = (firstVertex + numVertex - 1) * 3;
+
+        for(int i = 0; i < numVertex; i++)
+        {
+            int cur = (firstVertex + i) * 3;
+
+            double x0 = coords[last];
+            double y0 = coords[last + 1];
+            double z0 = coords[last + 2];
+            double x1 = coords[cur];
+            double y1 = coords[cur + 1];
+            double z1 = coords[cur + 2];
+
+            nx += (y0 - y1) * (z0 + z1);
+            ny += (z0 - z1) * (x0 + x1);
+            nz += (x0 - x1) * (y0 + y1);
+
+            last = cur;
+        }
+
+        double len = Math.sqrt(nx * nx + ny * ny + nz * nz);
+
+        if(len == 0)
+        {
+            normal[0] = 0;
+            normal[1] = 0;
+            normal[2] = 1;
+        }
+        else
+        {
+            normal[0] = (float)(nx / len);
+            normal[1] = (float)(ny / len);
+            normal[2] = (float)(nz / len);
+        }
+    }
+}
@@ -29,7 +29,6 @@ import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 
 // Local imports
-import org.j3d.util.CharHashMap;
 import org.j3d.util.IntHashMap;
 
 /**
@@ -50,6 +49,16 @@ import org.j3d.util.IntHashMap;
  * may need to perform a negative scale about the Y axis.
  * <p>
  *
+ * Tessellated glyphs are kept in a {@link GlyphCache}, keyed by font,
+ * flatness and character. By default all instances share the global cache,
+ * so any creator for the same font and flatness reuses the glyphs already
+ * generated by another. Fetching a cached glyph does not take any lock, so
+ * several threads may generate text through the same creator at once. Only
+ * the tessellation of a glyph that is not yet cached is serialised, per
+ * creator instance. The returned {@link CharacterData} instances are shared
+ * and must be treated as read only.
+ * <p>
+ *
  * <b>Note:</b> Because this class works at the individual character level,
  * it doesn't render very well fonts that need to be connected per-character
  * such as arabic etc.
@@ -76,7 +85,7 @@ public class CharacterCreator
     private FontRenderContext fontContext;
 
     /** Stored collection of characters we already have */
-    private CharHashMap<CharacterData> charDataMap;
+    private final GlyphCache glyphCache;
 
     /** Convenience array used to fetch coordinates from the PathIterator */
     private float[] newCoords;
@@ -101,13 +110,27 @@ public class CharacterCreator
      *   outlines for the font
      */
     public CharacterCreator(Font font, double flatness)
+    {
+        this(font, flatness, GlyphCache.getSharedCache());
+    }
+
+    /**
+     * Create a new fontstyle object representing the given font, that keeps
+     * its glyphs in the given cache.
+     *
+     * @param font The font object to use
+     * @param flatness How closely the points should resemble the defined
+     *   outlines for the font
+     * @param cache The cache to keep generated glyphs in
+     */
+    public CharacterCreator(Font font, double flatness, GlyphCache cache)
     {
         this.font = font;
         this.flatness = flatness;
 
         // Set it up using default transform, antialiased and metrics
         fontContext = new FontRenderContext(null, true, true);
-        charDataMap = new CharHashMap<>();
+        glyphCache = cache;
         newCoords = new float[6];
         charCoords = new float[1024];
         charIndex = new int[512];
@@ -146,6 +169,16 @@ public class CharacterCreator
         return flatness;
     }
 
+    /**
+     * Get the cache that the glyphs of this creator are kept in.
+     *
+     * @return The glyph cache in use
+     */
+    public GlyphCache getGlyphCache()
+    {
+        return glyphCache;
+    }
+
     /**
      * From the provided font, generate the output triangles now.
      *
@@ -153,38 +186,164 @@ public class CharacterCreator
      * @param numChars The number of valid characters in the array
      * @param output A place to put each of the character arrays
      */
-    public synchronized void createCharacterTriangles(char[] characters,
-                                                     int numChars,
-                                                     ArrayList<CharacterData> output)
+    public void createCharacterTriangles(char[] characters,
+                                         int numChars,
+                                         ArrayList<CharacterData> output)
     {
-        // first find out what we don't have characters for:
-        int needed_char_cnt = 0;
         for(int i = 0; i < numChars; i++)
-            if(!charDataMap.containsKey(characters[i]))
-                needed_char_cnt++;
+            output.add(getCharacter(characters[i]));
+    }
 
-        // Do we need to create any more?
-        if(needed_char_cnt != 0)
+    /**
+     * Generate a single mesh for a run of characters. The cached glyph of
+     * each character is copied in and offset along the X axis by the
+     * advance of the characters before it, so the result is ready to render
+     * as one piece of geometry. Whitespace characters add their advance but
+     * no triangles.
+     * <p>
+     *
+     * The coordinates and bounds of the returned object use the same
+     * normalised units as the individual characters, where the line height
+     * is one. The scale is that of the first character.
+     *
+     * @param characters The string of characters to generate
+     * @param numChars The number of valid characters in the array
+     * @param spacing Extra gap to add between each character, in the same
+     *   normalised units. Zero for the natural font spacing
+     * @return A new object holding the combined mesh
+     */
+    public CharacterData createStringTriangles(char[] characters,
+                                               int numChars,
+                                               float spacing)
+    {
+        CharacterData[] glyphs = new CharacterData[numChars];
+        int total_coords = 0;
+        int total_index = 0;
+
+        for(int i = 0; i < numChars; i++)
         {
-            needed_char_cnt = 0;
+            glyphs[i] = getCharacter(characters[i]);
 
-            for(int i = 0; i < numChars; i++)
-                if(!charDataMap.containsKey(characters[i]))
-                    createNewGlyph(characters[i]);
+            if(glyphs[i].numIndex != 0)
+            {
+                total_coords += glyphs[i].coordinates.capacity();
+                total_index += glyphs[i].numIndex;
+            }
         }
 
+        CharacterData ret_val = new CharacterData();
+        ret_val.coordinates = createFloatBuffer(total_coords);
+        ret_val.coordIndex = createIntBuffer(total_index);
+        ret_val.numIndex = total_index;
+
+        float[] coords = new float[total_coords];
+        int[] index = new int[total_index];
+        int coord_pos = 0;
+        int index_pos = 0;
+        float pen_x = 0;
 
         for(int i = 0; i < numChars; i++)
-            output.add(charDataMap.get(characters[i]));
+        {
+            CharacterData ch_data = glyphs[i];
+
+            if(ch_data.numIndex != 0)
+            {
+                // Use duplicates so the shared buffers' positions are
+                // never touched.
+                FloatBuffer src_coords = ch_data.coordinates.duplicate();
+                src_coords.clear();
+
+                int num_coords = src_coords.capacity();
+                src_coords.get(coords, coord_pos, num_coords);
+
+                for(int j = 0; j < num_coords; j += 3)
+                    coords[coord_pos + j] += pen_x;
+
+                IntBuffer src_index = ch_data.coordIndex.duplicate();
+                src_index.clear();
+                src_index.get(index, index_pos, ch_data.numIndex);
+
+                int base_vtx = coord_pos / 3;
+                for(int j = 0; j < ch_data.numIndex; j++)
+                    index[index_pos + j] += base_vtx;
+
+                coord_pos += num_coords;
+                index_pos += ch_data.numIndex;
+            }
+
+            pen_x += ch_data.bounds.width;
+
+            if(i != numChars - 1)
+                pen_x += spacing;
+        }
+
+        ret_val.coordinates.put(coords, 0, total_coords);
+        ret_val.coordIndex.put(index, 0, total_index);
+
+        if(numChars == 0)
+        {
+            ret_val.bounds = new Rectangle2D.Float(0, 0, 0, 1);
+            ret_val.scale = 1;
+        }
+        else
+        {
+            ret_val.bounds = new Rectangle2D.Float(glyphs[0].bounds.x,
+                                                   glyphs[0].bounds.y,
+                                                   pen_x,
+                                                   1);
+            ret_val.scale = glyphs[0].scale;
+        }
+
+        return ret_val;
     }
-	
+
+    /**
+     * Fetch the glyph for a single character, creating it if it is not
+     * already in the cache.
+     *
+     * @param character The character to fetch
+     * @return The shared glyph data
+     */
+    private CharacterData getCharacter(char character)
+    {
+        CharacterData ret_val = glyphCache.get(font, flatness, character);
+
+        if(ret_val == null)
+            ret_val = createGlyph(character);
+
+        return ret_val;
+    }
+
+    /**
+     * Create a glyph that was not found in the cache. The working arrays
+     * used for tessellation belong to this instance, so only one glyph is
+     * created at a time. Checks the cache again in case another thread
+     * created the same glyph while we were waiting.
+     *
+     * @param character The character to be created
+     * @return The newly created glyph data
+     */
+    private synchronized CharacterData createGlyph(char character)
+    {
+        CharacterData ret_val = glyphCache.get(font, flatness, character);
+
+        if(ret_val == null)
+        {
+            ret_val = createNewGlyph(character);
+            glyphCache.put(font, flatness, character, ret_val);
+        }
+
+        return ret_val;
+    }
+
     /**
      * Convenience method that creates the glyph information
 	 * for the specified character.
      *
      * @param character The character to be created.
+     * @return The glyph information for the character
      */
-    private void createNewGlyph(char character)
+    private CharacterData createNewGlyph(char character)
     {
         sourceChar[0] = character;
         GlyphVector glyph_vec =
@@ -233,8 +392,7 @@ System.out.println(" offset " +
         if(Character.isWhitespace(character))
         {
             ch_data.numIndex = 0;
-            charDataMap.put(character, ch_data);
-            return;
+            return ch_data;
         }
 
         Shape glyph_shape = glyph_vec.getOutline();
@@ -433,7 +591,7 @@ System.out.println(" offset " +
         ch_data.coordIndex.put(charIndex, 0, total_index);
         ch_data.numIndex = total_index;
 
-        charDataMap.put(character, ch_data);
+        return ch_data;
     }
 
     /**
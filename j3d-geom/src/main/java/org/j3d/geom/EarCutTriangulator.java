@@ -36,6 +36,14 @@ import org.j3d.util.ObjectArray;
  *
  * Seidel's algorithm is described here:
  * http://www.cs.unc.edu/~dm/CODE/GEM/chapter.html
+ * <p>
+ *
+ * For very large polygons, a z-order hashed mode may be enabled by setting a
+ * vertex count threshold. Polygons with at least that many vertices are
+ * projected onto the dominant plane of the face normal and handed to
+ * {@link ZOrderEarClipper}, which only tests the points near each candidate
+ * ear. The hashed mode is also used for polygons with holes. The output
+ * format is the same in both modes.
  *
  * @author Justin Couch
  * @version $Revision: 1.3 $
@@ -45,8 +53,11 @@ class EarCutTriangulator
     /** The default size of the polygon values */
     private static final int DEFAULT_POLY_SIZE = 6;
 
-    /** Cache of polygon vertex structures for efficiency */
-    private static ObjectArray vertexCache;
+    /**
+     * Cache of polygon vertex structures for efficiency. Held per instance
+     * so that triangulators on different threads never contend for it.
+     */
+    private ObjectArray vertexCache;
 
     /** Set of concave vertices for this polygon */
     private HashSet concaveVertices;
@@ -61,12 +72,19 @@ class EarCutTriangulator
     private PolyVertex[] tmpArray;
 
     /**
-     * Static construct.
+     * Polygons with this many vertices or more use the z-order hashed
+     * clipper. Zero to disable.
      */
-    static
-    {
-        vertexCache = new ObjectArray();
-    }
+    private int zOrderThreshold;
+
+    /** Hashed ear clipper, created on first use */
+    private ZOrderEarClipper zOrderClipper;
+
+    /** Initial size hint for the hashed clipper */
+    private int initSize;
+
+    /** Contour count array for single contour calls to the clipper */
+    private int[] singleContour;
 
     /**
      * Construct a new instance of the triangulation utilities. Assumes a
@@ -92,6 +110,31 @@ class EarCutTriangulator
         faceNormal = new float[3];
         working2dCoords = new float[6];
         tmpArray = new PolyVertex[size];
+        singleContour = new int[1];
+        vertexCache = new ObjectArray();
+        initSize = size;
+    }
+
+    /**
+     * Set the vertex count at which polygons are triangulated with the z-order
+     * hashed ear clipper rather than the plain scan. A value of zero disables
+     * the hashed mode for simple polygons, which is the default.
+     *
+     * @param size The minimum vertex count to use the hashed mode for
+     */
+    void setZOrderThreshold(int size)
+    {
+        zOrderThreshold = size;
+    }
+
+    /**
+     * Get the vertex count at which the z-order hashed ear clipper is used.
+     *
+     * @return The current threshold, zero for disabled
+     */
+    int getZOrderThreshold()
+    {
+        return zOrderThreshold;
     }
 
     /**
@@ -167,6 +210,34 @@ class EarCutTriangulator
             return 1;
         }
 
+        if(zOrderThreshold > 0 && numVertex >= zOrderThreshold)
+        {
+            ZOrderEarClipper clipper = getZOrderClipper();
+            int u_axis = projectionAxis(normal, true);
+            int v_axis = projectionAxis(normal, false);
+
+            for(int i = 0; i < numVertex; i++)
+            {
+                int index = coordIndex[startIndex + i];
+
+                clipper.addVertex(coords[index * 3 + u_axis],
+                                  coords[index * 3 + v_axis],
+                                  index,
+                                  normalIndex == null ? 0 : normalIndex[firstNormalIndex + i],
+                                  colorIndex == null ? 0 : colorIndex[firstColorIndex + i],
+                                  texCoordIndex == null ? 0 : texCoordIndex[firstTexCoordIndex + i]);
+            }
+
+            singleContour[0] = numVertex;
+
+            return clipper.triangulate(1,
+                                       singleContour,
+                                       coordOutput,
+                                       normalOutput,
+                                       colorOutput,
+                                       texCoordOutput);
+        }
+
         faceNormal[0] = normal[0];
         faceNormal[1] = normal[1];
         faceNormal[2] = normal[2];
@@ -364,6 +435,24 @@ while(tmp != first)
             return 1;
         }
 
+        if(zOrderThreshold > 0 && numVertex >= zOrderThreshold)
+        {
+            singleContour[0] = numVertex;
+
+            return triangulateZOrder(coords,
+                                     startIndex,
+                                     1,
+                                     singleContour,
+                                     firstNormalIndex,
+                                     firstColorIndex,
+                                     firstTexCoordIndex,
+                                     coordOutput,
+                                     normalOutput,
+                                     colorOutput,
+                                     texCoordOutput,
+                                     normal);
+        }
+
         faceNormal[0] = normal[0];
         faceNormal[1] = normal[1];
         faceNormal[2] = normal[2];
@@ -469,12 +558,87 @@ while(tmp != first)
                            texCoordOutput);
     }
 
+    /**
+     * Triangulate a polygon with holes in the given array, using the z-order
+     * hashed ear clipper. The array is a flat array of coordinates of
+     * [...Xn, Yn, Zn....] values. The contours follow each other in the
+     * array, starting at startIndex, with the outer boundary first and then
+     * each of the holes. Contours are not required to be closed and may be
+     * given in either winding order. The output array is indexes into the
+     * original array (including compensating for the 3 index values per
+     * coordinate), in the same way as the other flat array method. The
+     * output arrays must have room for (n + 2h - 2) triangles, where n is
+     * the total vertex count and h the number of holes.
+     * <p>
+     * If an error occurs, the result will be negative number of triangles.
+     *
+     * @param coords The coordinates of the face
+     * @param startIndex The index of the first coordinate in the face
+     * @param numContours The number of contours, including the outer one
+     * @param contourCounts The number of vertices in each contour
+     * @param firstNormalIndex The first position of the normalIndex array
+     * @param firstColorIndex The index of color for each coordinate
+     * @param firstTexCoordIndex The first position of the texCoordIndex array
+     * @param coordOutput The array to copy the coord index values to
+     * @param normalOutput The array to copy the normal index values to
+     * @param colorOutput The array to copy the color index values to
+     * @param texCoordOutput The array to copy the texCoord index values to
+     * @param normal The normal to this face these vertices are a part of
+     * @return The number of triangles in the output array
+     */
+    public int triangulateZOrder(float[] coords,
+                                 int startIndex,
+                                 int numContours,
+                                 int[] contourCounts,
+                                 int firstNormalIndex,
+                                 int firstColorIndex,
+                                 int firstTexCoordIndex,
+                                 int[] coordOutput,
+                                 int[] normalOutput,
+                                 int[] colorOutput,
+                                 int[] texCoordOutput,
+                                 float[] normal)
+    {
+        if(numContours < 1 || contourCounts[0] < 3)
+            return 0;
+
+        ZOrderEarClipper clipper = getZOrderClipper();
+        int u_axis = projectionAxis(normal, true);
+        int v_axis = projectionAxis(normal, false);
+
+        int vtx = startIndex;
+        int inc = 0;
+
+        for(int i = 0; i < numContours; i++)
+        {
+            for(int j = 0; j < contourCounts[i]; j++)
+            {
+                clipper.addVertex(coords[vtx + u_axis],
+                                  coords[vtx + v_axis],
+                                  vtx,
+                                  firstNormalIndex + inc,
+                                  firstColorIndex + inc,
+                                  firstTexCoordIndex + inc);
+                vtx += 3;
+                inc += 3;
+            }
+        }
+
+        return clipper.triangulate(numContours,
+                                   contourCounts,
+                                   coordOutput,
+                                   normalOutput,
+                                   colorOutput,
+                                   texCoordOutput);
+    }
+
     /**
      * Clean up the internal cache and reduce it to zero.
      */
     public void clearCachedObjects()
     {
         vertexCache.clear();
+        zOrderClipper = null;
     }
 
     //----------------------------------------------------------
@@ -698,6 +862,71 @@ for(int i = 0; i < output_index; i += 3)
         return (output_index / 3);
     }
 
+    /**
+     * Fetch the hashed clipper, creating it if needed, ready for a new
+     * polygon.
+     *
+     * @return The clipper instance, reset and ready for use
+     */
+    private ZOrderEarClipper getZOrderClipper()
+    {
+        if(zOrderClipper == null)
+            zOrderClipper = new ZOrderEarClipper(initSize);
+
+        zOrderClipper.reset();
+
+        return zOrderClipper;
+    }
+
+    /**
+     * Work out which coordinate axes to use for projecting a polygon onto
+     * the plane most perpendicular to the normal. The axes are ordered so
+     * that a polygon that is counter-clockwise about the normal remains
+     * counter-clockwise once projected.
+     *
+     * @param normal The face normal
+     * @param uAxis true to get the first axis, false for the second
+     * @return The offset of the axis, 0, 1 or 2
+     */
+    private static int projectionAxis(float[] normal, boolean uAxis)
+    {
+        float abs_x = Math.abs(normal[0]);
+        float abs_y = Math.abs(normal[1]);
+        float abs_z = Math.abs(normal[2]);
+
+        int u;
+        int v;
+        boolean positive;
+
+        if(abs_x > abs_y && abs_x > abs_z)
+        {
+            u = 1;
+            v = 2;
+            positive = normal[0] > 0;
+        }
+        else if(abs_y > abs_z)
+        {
+            u = 2;
+            v = 0;
+            positive = normal[1] > 0;
+        }
+        else
+        {
+            u = 0;
+            v = 1;
+            positive = normal[2] >= 0;
+        }
+
+        if(!positive)
+        {
+            int tmp = u;
+            u = v;
+            v = tmp;
+        }
+
+        return uAxis ? u : v;
+    }
+
     /**
      * Find out if this is an ear.
      *
@@ -1028,18 +1257,13 @@ for(int i = 0; i < output_index; i += 3)
      *
      * @return an available entry object
      */
-    private static PolyVertex newVertex()
+    private PolyVertex newVertex()
     {
-        PolyVertex ret_val = null;
-
-        synchronized(vertexCache) {
+        int size = vertexCache.size();
 
-            ret_val = (vertexCache.size() == 0) ?
+        return (size == 0) ?
                new PolyVertex() :
-               (PolyVertex)vertexCache.remove(0);
-        }
-
-        return ret_val;
+               (PolyVertex)vertexCache.remove(size - 1);
     }
 
     /**
@@ -1048,10 +1272,8 @@ for(int i = 0; i < output_index; i += 3)
      *
      * @param e The entry to put back in the list
      */
-    private static void freeVertex(PolyVertex e)
+    private void freeVertex(PolyVertex e)
     {
-        synchronized(vertexCache) {
-            vertexCache.add(e);
-        }
+        vertexCache.add(e);
     }
 }
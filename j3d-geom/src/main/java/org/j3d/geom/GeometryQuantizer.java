@@ -0,0 +1,533 @@
+/*
+ * j3d.org Copyright (c) 2001-2015
+ *                                 Java Source
+ *
+ *  This source is licensed under the GNU LGPL v2.1
+ *  Please read docs/LGPL.txt for more information
+ *
+ *  This software comes with the standard NO WARRANTY disclaimer for any
+ *  purpose. Use it at your own risk. If there's a problem you get to fix it.
+ */
+
+package org.j3d.geom;
+
+// External imports
+// None
+
+// Local imports
+// None
+
+/**
+ * A utility class that converts the vertex data of geometry to and from the
+ * compact 16 bit form held by {@link QuantizedGeometryData}.
+ * <p>
+ *
+ * The utility class may be used as either a single shared instance or as a
+ * normal class. It holds no working state, so the shared instance is safe to
+ * use from multiple threads. Each encoding is also available as a bulk
+ * method over flat arrays, for data that is not held in geometry objects.
+ * <p>
+ *
+ * <b>Error Bounds</b>
+ * <ul>
+ * <li>Positions are spread over 65536 steps across the bounding box on
+ *   each axis. Each decoded value is within half a step, which is the
+ *   box size / 131070, of the original, plus float rounding.</li>
+ * <li>Normals are folded onto an octahedron and stored as two 16 bit
+ *   signed values. Decoded normals are unit length and within 0.005
+ *   degrees of the original direction.</li>
+ * <li>Texture coordinates are stored as IEEE 754 half floats, rounded to
+ *   nearest. The relative error is at most 2<sup>-11</sup>, so values in
+ *   [0, 1] are within 2<sup>-12</sup> of the original. That is under a
+ *   texel for textures up to 4096 across. Values over 65504 in size
+ *   become infinite.</li>
+ * </ul>
+ */
+public class GeometryQuantizer
+{
+    /** The largest unsigned 16 bit position value */
+    private static final int MAX_POSITION = 0xFFFF;
+
+    /** The largest signed 16 bit normal value */
+    private static final float MAX_NORMAL = 32767;
+
+    /** The value of the smallest half float step below the normal range */
+    private static final float HALF_SUBNORMAL_STEP = 5.9604645e-8f;
+
+    /** The shared singleton instance, if needed */
+    private static GeometryQuantizer sharedInstance;
+
+    /**
+     * Create a default instance of the utility class.
+     */
+    public GeometryQuantizer()
+    {
+    }
+
+    /**
+     * Fetch the currently shared singleton instance.
+     *
+     * @return The current instance
+     */
+    public static GeometryQuantizer getSharedInstance()
+    {
+        if(sharedInstance == null)
+            sharedInstance = new GeometryQuantizer();
+
+        return sharedInstance;
+    }
+
+    /**
+     * Create a quantized version of the geometry. See the full version of
+     * this method for details.
+     *
+     * @param data The geometry to quantize
+     * @return The quantized geometry
+     */
+    public QuantizedGeometryData quantize(GeometryData data)
+    {
+        QuantizedGeometryData ret_val = new QuantizedGeometryData();
+        quantize(data, ret_val);
+
+        return ret_val;
+    }
+
+    /**
+     * Quantize the vertex data of the geometry into the given holder.
+     * Arrays in the holder are reused if they are large enough. Normals and
+     * texture coordinates are only encoded if the components flags ask for
+     * them. Colours, indexes and strip counts are shared with the source,
+     * not copied.
+     *
+     * @param data The geometry to quantize
+     * @param out The holder to put the quantized values in
+     */
+    public void quantize(GeometryData data, QuantizedGeometryData out)
+    {
+        int num_verts = data.vertexCount;
+
+        out.geometryType = data.geometryType;
+        out.geometrySubType = data.geometrySubType;
+        out.geometryComponents = data.geometryComponents;
+        out.vertexCount = num_verts;
+
+        computePositionRange(data.coordinates,
+                             num_verts,
+                             out.positionOffset,
+                             out.positionScale);
+
+        if(out.coordinates == null || out.coordinates.length < num_verts * 3)
+            out.coordinates = new short[num_verts * 3];
+
+        encodePositions(data.coordinates,
+                        num_verts,
+                        out.positionOffset,
+                        out.positionScale,
+                        out.coordinates);
+
+        if((data.geometryComponents & GeometryData.NORMAL_DATA) != 0)
+        {
+            if(out.normals == null || out.normals.length < num_verts * 2)
+                out.normals = new short[num_verts * 2];
+
+            encodeNormals(data.normals, num_verts, out.normals);
+        }
+        else
+        {
+            out.normals = null;
+        }
+
+        int tex_size = textureSize(data.geometryComponents);
+
+        if(tex_size != 0)
+        {
+            int count = num_verts * tex_size;
+
+            if(out.textureCoordinates == null ||
+               out.textureCoordinates.length < count)
+            {
+                out.textureCoordinates = new short[count];
+            }
+
+            encodeHalfFloats(data.textureCoordinates,
+                             count,
+                             out.textureCoordinates);
+        }
+        else
+        {
+            out.textureCoordinates = null;
+        }
+
+        out.colors = data.colors;
+        out.indexesCount = data.indexesCount;
+        out.indexes = data.indexes;
+        out.numStrips = data.numStrips;
+        out.stripCounts = data.stripCounts;
+    }
+
+    /**
+     * Decode quantized geometry back to floats. Arrays in the output that
+     * are null are created. Colours, indexes and strip counts are shared
+     * with the quantized data, not copied.
+     *
+     * @param data The quantized geometry
+     * @param out The geometry to put the decoded values in
+     * @throws InvalidArraySizeException One of the output arrays is not
+     *   null but too small to hold the values
+     */
+    public void dequantize(QuantizedGeometryData data, GeometryData out)
+    {
+        int num_verts = data.vertexCount;
+
+        out.geometryType = data.geometryType;
+        out.geometrySubType = data.geometrySubType;
+        out.geometryComponents = data.geometryComponents;
+        out.vertexCount = num_verts;
+
+        int count = num_verts * 3;
+
+        if(out.coordinates == null)
+            out.coordinates = new float[count];
+        else if(out.coordinates.length < count)
+            throw new InvalidArraySizeException("Coordinates",
+                                                out.coordinates.length,
+                                                count);
+
+        decodePositions(data.coordinates,
+                        num_verts,
+                        data.positionOffset,
+                        data.positionScale,
+                        out.coordinates);
+
+        if(data.normals != null)
+        {
+            if(out.normals == null)
+                out.normals = new float[count];
+            else if(out.normals.length < count)
+                throw new InvalidArraySizeException("Normals",
+                                                    out.normals.length,
+                                                    count);
+
+            decodeNormals(data.normals, num_verts, out.normals);
+        }
+
+        int tex_size = textureSize(data.geometryComponents);
+
+        if(data.textureCoordinates != null && tex_size != 0)
+        {
+            count = num_verts * tex_size;
+
+            if(out.textureCoordinates == null)
+                out.textureCoordinates = new float[count];
+            else if(out.textureCoordinates.length < count)
+                throw new InvalidArraySizeException("Texture coordinates",
+                                                    out.textureCoordinates.length,
+                                                    count);
+
+            decodeHalfFloats(data.textureCoordinates,
+                             count,
+                             out.textureCoordinates);
+        }
+
+        out.colors = data.colors;
+        out.indexesCount = data.indexesCount;
+        out.indexes = data.indexes;
+        out.numStrips = data.numStrips;
+        out.stripCounts = data.stripCounts;
+    }
+
+    /**
+     * Work out the offset and step size that spread the bounding box of the
+     * coordinates over the 16 bit position range.
+     *
+     * @param coords The coordinates as a flat array
+     * @param numVerts The number of valid coordinates
+     * @param offset Array to put the lowest corner of the box in
+     * @param scale Array to put the step size on each axis in
+     */
+    public void computePositionRange(float[] coords,
+                                     int numVerts,
+                                     float[] offset,
+                                     float[] scale)
+    {
+        for(int k = 0; k < 3; k++)
+        {
+            float min = Float.POSITIVE_INFINITY;
+            float max = Float.NEGATIVE_INFINITY;
+
+            for(int i = 0; i < numVerts; i++)
+            {
+                float v = coords[i * 3 + k];
+
+                if(v < min)
+                    min = v;
+
+                if(v > max)
+                    max = v;
+            }
+
+            if(numVerts == 0)
+            {
+                min = 0;
+                max = 0;
+            }
+
+            offset[k] = min;
+            scale[k] = (max - min) / MAX_POSITION;
+        }
+    }
+
+    /**
+     * Quantize coordinates to unsigned 16 bit values. Values outside the
+     * range are clamped to it.
+     *
+     * @param coords The coordinates as a flat array
+     * @param numVerts The number of valid coordinates
+     * @param offset The lowest corner of the range
+     * @param scale The step size on each axis
+     * @param out Array to put 3 values per coordinate in
+     */
+    public void encodePositions(float[] coords,
+                                int numVerts,
+                                float[] offset,
+                                float[] scale,
+                                short[] out)
+    {
+        for(int k = 0; k < 3; k++)
+        {
+            float min = offset[k];
+            float inv = (scale[k] == 0) ? 0 : 1 / scale[k];
+
+            for(int i = k; i < numVerts * 3; i += 3)
+            {
+                int q = (int)((coords[i] - min) * inv + 0.5f);
+
+                if(q < 0)
+                    q = 0;
+                else if(q > MAX_POSITION)
+                    q = MAX_POSITION;
+
+                out[i] = (short)q;
+            }
+        }
+    }
+
+    /**
+     * Decode unsigned 16 bit positions back to floats.
+     *
+     * @param coords The quantized positions, 3 values per coordinate
+     * @param numVerts The number of valid coordinates
+     * @param offset The lowest corner of the range
+     * @param scale The step size on each axis
+     * @param out Array to put the decoded coordinates in
+     */
+    public void decodePositions(short[] coords,
+                                int numVerts,
+                                float[] offset,
+                                float[] scale,
+                                float[] out)
+    {
+        float ox = offset[0];
+        float oy = offset[1];
+        float oz = offset[2];
+        float sx = scale[0];
+        float sy = scale[1];
+        float sz = scale[2];
+
+        for(int i = 0; i < numVerts * 3; i += 3)
+        {
+            out[i] = ox + (coords[i] & 0xFFFF) * sx;
+            out[i + 1] = oy + (coords[i + 1] & 0xFFFF) * sy;
+            out[i + 2] = oz + (coords[i + 2] & 0xFFFF) * sz;
+        }
+    }
+
+    /**
+     * Octahedral encode normals into two signed 16 bit values each. The
+     * normals do not need to be unit length. A zero length normal has no
+     * direction and decodes as +Z.
+     *
+     * @param normals The normals as a flat array
+     * @param numVerts The number of valid normals
+     * @param out Array to put 2 values per normal in
+     */
+    public void encodeNormals(float[] normals, int numVerts, short[] out)
+    {
+        for(int i = 0; i < numVerts; i++)
+        {
+            float x = normals[i * 3];
+            float y = normals[i * 3 + 1];
+            float z = normals[i * 3 + 2];
+            float len = Math.abs(x) + Math.abs(y) + Math.abs(z);
+
+            float u = 0;
+            float v = 0;
+
+            if(len != 0)
+            {
+                u = x / len;
+                v = y / len;
+
+                // Fold the lower half over the diagonals
+                if(z < 0)
+                {
+                    float fu = (1 - Math.abs(v)) * (u >= 0 ? 1 : -1);
+                    float fv = (1 - Math.abs(u)) * (v >= 0 ? 1 : -1);
+                    u = fu;
+                    v = fv;
+                }
+            }
+
+            out[i * 2] = (short)Math.round(u * MAX_NORMAL);
+            out[i * 2 + 1] = (short)Math.round(v * MAX_NORMAL);
+        }
+    }
+
+    /**
+     * Decode octahedral encoded normals back to unit length floats.
+     *
+     * @param normals The encoded normals, 2 values per normal
+     * @param numVerts The number of valid normals
+     * @param out Array to put the decoded normals in
+     */
+    public void decodeNormals(short[] normals, int numVerts, float[] out)
+    {
+        for(int i = 0; i < numVerts; i++)
+        {
+            float x = Math.max(normals[i * 2] / MAX_NORMAL, -1);
+            float y = Math.max(normals[i * 2 + 1] / MAX_NORMAL, -1);
+            float z = 1 - Math.abs(x) - Math.abs(y);
+
+            // Unfold the lower half
+            if(z < 0)
+            {
+                float t = -z;
+                x += (x >= 0) ? -t : t;
+                y += (y >= 0) ? -t : t;
+            }
+
+            float scale = 1 / (float)Math.sqrt(x * x + y * y + z * z);
+
+            out[i * 3] = x * scale;
+            out[i * 3 + 1] = y * scale;
+            out[i * 3 + 2] = z * scale;
+        }
+    }
+
+    /**
+     * Convert floats to half floats.
+     *
+     * @param values The values to convert
+     * @param count The number of values to convert
+     * @param out Array to put the half float bits in
+     */
+    public void encodeHalfFloats(float[] values, int count, short[] out)
+    {
+        for(int i = 0; i < count; i++)
+            out[i] = floatToHalf(values[i]);
+    }
+
+    /**
+     * Convert half floats back to floats.
+     *
+     * @param values The half float bits
+     * @param count The number of values to convert
+     * @param out Array to put the floats in
+     */
+    public void decodeHalfFloats(short[] values, int count, float[] out)
+    {
+        for(int i = 0; i < count; i++)
+            out[i] = halfToFloat(values[i]);
+    }
+
+    /**
+     * Convert a float to the bits of the nearest half float, rounding ties
+     * to even. Values too large for a half float become infinite.
+     *
+     * @param value The value to convert
+     * @return The half float bits
+     */
+    public static short floatToHalf(float value)
+    {
+        int bits = Float.floatToRawIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int abs = bits & 0x7FFFFFFF;
+
+        // Infinity and NaN, keeping NaN as a NaN
+        if(abs >= 0x7F800000)
+            return (short)(sign | 0x7C00 | ((abs > 0x7F800000) ? 0x200 : 0));
+
+        // At least 65520 rounds past the largest half float
+        if(abs >= 0x477FF000)
+            return (short)(sign | 0x7C00);
+
+        // Below the smallest normal half float
+        if(abs < 0x38800000)
+        {
+            // Half of the smallest step or less rounds to 0
+            if(abs <= 0x33000000)
+                return (short)sign;
+
+            int shift = 126 - (abs >>> 23);
+            int mant = (abs & 0x7FFFFF) | 0x800000;
+            int ret_val = mant >> shift;
+            int rem = mant & ((1 << shift) - 1);
+            int halfway = 1 << (shift - 1);
+
+            if(rem > halfway || (rem == halfway && (ret_val & 1) != 0))
+                ret_val++;
+
+            return (short)(sign | ret_val);
+        }
+
+        // Rebias the exponent from 127 to 15 and drop 13 bits of mantissa.
+        // A carry out of the mantissa correctly bumps the exponent.
+        int ret_val = (abs - 0x38000000) >>> 13;
+        int rem = abs & 0x1FFF;
+
+        if(rem > 0x1000 || (rem == 0x1000 && (ret_val & 1) != 0))
+            ret_val++;
+
+        return (short)(sign | ret_val);
+    }
+
+    /**
+     * Convert the bits of a half float to a float. Every half float is
+     * exactly representable, so this does not lose anything.
+     *
+     * @param half The half float bits
+     * @return The float value
+     */
+    public static float halfToFloat(short half)
+    {
+        int h = half & 0xFFFF;
+        int sign = (h & 0x8000) << 16;
+        int exp = (h >>> 10) & 0x1F;
+        int mant = h & 0x3FF;
+
+        if(exp == 0)
+        {
+            float v = mant * HALF_SUBNORMAL_STEP;
+            return (sign != 0) ? -v : v;
+        }
+
+        if(exp == 0x1F)
+            return Float.intBitsToFloat(sign | 0x7F800000 | (mant << 13));
+
+        return Float.intBitsToFloat(sign | ((exp + 112) << 23) | (mant << 13));
+    }
+
+    /**
+     * Get the number of texture coordinate values per vertex from the
+     * components flags.
+     */
+    private static int textureSize(int components)
+    {
+        if((components & GeometryData.TEXTURE_2D_DATA) != 0)
+            return 2;
+        else if((components & GeometryData.TEXTURE_3D_DATA) != 0)
+            return 3;
+        else
+            return 0;
+    }
+}
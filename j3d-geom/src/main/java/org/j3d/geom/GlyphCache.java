@@ -0,0 +1,229 @@
+/*
+ * j3d.org Copyright (c) 2001-2015
+ *                                 Java Source
+ *
+ *  This source is licensed under the GNU LGPL v2.1
+ *  Please read docs/LGPL.txt for more information
+ *
+ *  This software comes with the standard NO WARRANTY disclaimer for any
+ *  purpose. Use it at your own risk. If there's a problem you get to fix it.
+ */
+
+package org.j3d.geom;
+
+// External imports
+import java.awt.Font;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Local imports
+// None
+
+/**
+ * A bounded, thread-safe cache of tessellated character glyphs, keyed by
+ * font, flatness and character.
+ * <p>
+ *
+ * Any number of {@link CharacterCreator} instances may share one cache, so
+ * that two labels in the same font only pay for the tessellation of each
+ * glyph once. Lookups do not take any lock.
+ * <p>
+ *
+ * The size is bounded by keeping two generations of entries. New entries go
+ * into the current generation. When that fills up to half the maximum size
+ * it becomes the old generation and the previous old generation is dropped.
+ * A lookup that finds an entry in the old generation copies it forward to
+ * the current one, so glyphs that are still being used survive and only the
+ * ones that have not been asked for in a while are evicted.
+ * <p>
+ *
+ * The {@link CharacterData} instances held here are shared between all
+ * callers and must be treated as read only. Use absolute gets or a
+ * <code>duplicate()</code> of the buffers to read them.
+ */
+public class GlyphCache
+{
+    /** The default maximum number of glyphs held */
+    public static final int DEFAULT_MAX_SIZE = 4096;
+
+    /** The cache used by character creators that are not given one */
+    private static final GlyphCache sharedCache =
+        new GlyphCache(DEFAULT_MAX_SIZE);
+
+    /** The maximum number of entries in each generation */
+    private final int generationSize;
+
+    /** The generation that new entries are added to */
+    private volatile ConcurrentHashMap<GlyphKey, CharacterData> currentGlyphs;
+
+    /** The previous generation, dropped at the next rollover */
+    private volatile ConcurrentHashMap<GlyphKey, CharacterData> oldGlyphs;
+
+    /**
+     * Key for a single glyph in a single font and flatness.
+     */
+    private static class GlyphKey
+    {
+        /** The font the glyph is from */
+        private final Font font;
+
+        /** Bits of the flatness value */
+        private final long flatness;
+
+        /** The character */
+        private final char character;
+
+        /** Precalculated hash code */
+        private final int hash;
+
+        GlyphKey(Font font, double flatness, char character)
+        {
+            this.font = font;
+            this.flatness = Double.doubleToLongBits(flatness);
+            this.character = character;
+
+            int h = font.hashCode();
+            h = h * 31 + (int)(this.flatness ^ (this.flatness >>> 32));
+            h = h * 31 + character;
+
+            hash = h;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if(!(o instanceof GlyphKey))
+                return false;
+
+            GlyphKey k = (GlyphKey)o;
+
+            return k.character == character &&
+                   k.flatness == flatness &&
+                   k.font.equals(font);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+    }
+
+    /**
+     * Create a new cache that holds up to the given number of glyphs.
+     *
+     * @param maxSize The maximum number of glyphs to hold. Must be at
+     *   least 2
+     * @throws IllegalArgumentException The size is less than 2
+     */
+    public GlyphCache(int maxSize)
+    {
+        if(maxSize < 2)
+            throw new IllegalArgumentException("Maximum size must be at least 2");
+
+        generationSize = maxSize / 2;
+        currentGlyphs = new ConcurrentHashMap<>();
+        oldGlyphs = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Get the cache instance that is shared by default between all the
+     * character creators.
+     *
+     * @return The global shared cache
+     */
+    public static GlyphCache getSharedCache()
+    {
+        return sharedCache;
+    }
+
+    /**
+     * Fetch the glyph for a character, if it is in the cache.
+     *
+     * @param font The font the glyph is from
+     * @param flatness The flatness the glyph was tessellated with
+     * @param character The character to look for
+     * @return The cached glyph or null if not found
+     */
+    public CharacterData get(Font font, double flatness, char character)
+    {
+        GlyphKey key = new GlyphKey(font, flatness, character);
+        CharacterData ret_val = currentGlyphs.get(key);
+
+        if(ret_val == null)
+        {
+            ret_val = oldGlyphs.get(key);
+
+            // Still in use, so bring it forward to stop it being evicted
+            if(ret_val != null)
+                store(key, ret_val);
+        }
+
+        return ret_val;
+    }
+
+    /**
+     * Add a glyph to the cache. If the glyph is already present it is
+     * replaced.
+     *
+     * @param font The font the glyph is from
+     * @param flatness The flatness the glyph was tessellated with
+     * @param character The character the glyph represents
+     * @param data The tessellated glyph
+     */
+    public void put(Font font, double flatness, char character, CharacterData data)
+    {
+        store(new GlyphKey(font, flatness, character), data);
+    }
+
+    /**
+     * Get the number of glyphs currently held. Glyphs that have recently
+     * been brought forward from the old generation may be counted twice.
+     *
+     * @return The number of entries in the cache
+     */
+    public int size()
+    {
+        return currentGlyphs.size() + oldGlyphs.size();
+    }
+
+    /**
+     * Remove all of the glyphs from the cache.
+     */
+    public synchronized void clear()
+    {
+        currentGlyphs = new ConcurrentHashMap<>();
+        oldGlyphs = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Put the entry into the current generation, rolling the generations
+     * over if it is now full.
+     *
+     * @param key The key to store
+     * @param data The glyph to store
+     */
+    private void store(GlyphKey key, CharacterData data)
+    {
+        ConcurrentHashMap<GlyphKey, CharacterData> glyphs = currentGlyphs;
+        glyphs.put(key, data);
+
+        if(glyphs.size() > generationSize)
+            rollover(glyphs);
+    }
+
+    /**
+     * Make the current generation the old one and start a new, empty
+     * current generation. Only one thread gets to do this for any given
+     * generation.
+     *
+     * @param full The generation that the caller found to be full
+     */
+    private synchronized void rollover(ConcurrentHashMap<GlyphKey, CharacterData> full)
+    {
+        if(currentGlyphs != full)
+            return;
+
+        oldGlyphs = full;
+        currentGlyphs = new ConcurrentHashMap<>();
+    }
+}
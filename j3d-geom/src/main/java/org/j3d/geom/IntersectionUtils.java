@@ -10,13 +10,15 @@
 package org.j3d.geom;
 
 // External imports
-// None
+import java.util.concurrent.ForkJoinPool;
 
 // Local imports
 import org.j3d.maths.vector.Matrix4d;
 import org.j3d.maths.vector.Point3d;
 import org.j3d.maths.vector.Vector3d;
+import org.j3d.util.ForkJoinUtils;
 import org.j3d.util.MatrixUtils;
+import org.j3d.util.RangeProcessor;
 
 /**
  * A collection of utility methods to do geometry intersection tests.
@@ -58,6 +60,20 @@ import org.j3d.util.MatrixUtils;
  * <li><a href="http://www.siggraph.org/education/materials/HyperGraph/raytrace/rayplane_intersection.htm">Ray-Plane</a></li>
  * <li><a href="http://www.2tothex.com/raytracing/primitives.html">Ray-Cylinder</a></li>
  * </ul>
+ * <p>
+ *
+ * <b>Batched Queries</b>
+ * <p>
+ *
+ * The static <code>rayTriangleBatch</code> and <code>rayGeometryBatch</code>
+ * methods are the exception to the above rules. They do not touch any of the
+ * instance working state and may be called from any number of threads at
+ * once. They take a whole set of rays as flat origin and direction arrays,
+ * and write the hit distance and triangle index for each ray to the output
+ * arrays. Large batches are split across a fork/join pool, with each worker
+ * using its own scratch values, so that thousands of line-of-sight or
+ * visibility samples can be processed per frame. Triangles are tested with
+ * the Moller-Trumbore algorithm rather than the polygon test above.
  *
  * @author Justin Couch
  * @version $Revision: 1.20 $
@@ -73,6 +89,18 @@ public class IntersectionUtils
     /** Cylinder intersection axis Z */
     public static final int Z_AXIS = 3;
 
+    /** Triangle index written by the batch methods for a ray that missed */
+    public static final int NO_INTERSECTION = -1;
+
+    /**
+     * Rays per piece of a split batch. Each ray walks the whole triangle
+     * list, so even a few make enough work for a separate thread.
+     */
+    private static final int MIN_BATCH_RAYS = 16;
+
+    /** Epsilon used to reject triangles parallel to the ray */
+    private static final double PARALLEL_EPSILON = 1e-12;
+
     /** A point that we use for working calculations (coord transforms) */
     private Point3d wkPoint;
     private Vector3d wkVec;
@@ -273,6 +301,335 @@ public class IntersectionUtils
         return ret_val;
     }
 
+    /**
+     * Intersect a batch of rays with an array of triangles using the shared
+     * fork/join pool from {@link ForkJoinUtils}. See the full version of this
+     * method for details of the parameters.
+     *
+     * @param origins The origins of the rays as [x1, y1, z1, x2, ...]
+     * @param directions The directions of the rays as [x1, y1, z1, x2, ...]
+     * @param numRays The number of rays to process
+     * @param length An optional length for to make the rays segments. If
+     *   the value is zero, it is ignored
+     * @param coords The coordinates of the triangle vertices
+     * @param indexes The vertex indices of each triangle or null if the
+     *   coordinates are a list of unindexed triangles
+     * @param numTris The number of triangles to use
+     * @param distances Array to write the distance to the closest hit for
+     *   each ray
+     * @param triangleIds Array to write the index of the closest triangle
+     *   hit for each ray
+     * @param intersectOnly true if we only want to know if each ray has an
+     *    intersection and don't really care which it is
+     * @return The number of rays that hit something
+     */
+    public static int rayTriangleBatch(float[] origins,
+                                       float[] directions,
+                                       int numRays,
+                                       float length,
+                                       float[] coords,
+                                       int[] indexes,
+                                       int numTris,
+                                       float[] distances,
+                                       int[] triangleIds,
+                                       boolean intersectOnly)
+    {
+        return rayTriangleBatch(origins,
+                                directions,
+                                numRays,
+                                length,
+                                coords,
+                                indexes,
+                                numTris,
+                                distances,
+                                triangleIds,
+                                intersectOnly,
+                                ForkJoinUtils.getSharedPool());
+    }
+
+    /**
+     * Intersect a batch of rays with an array of triangles. For every ray,
+     * the distance to the closest intersection is written to the distances
+     * array and the index of the triangle hit to the triangleIds array. A
+     * ray that does not hit anything gets a distance of positive infinity
+     * and a triangle index of {@link #NO_INTERSECTION}. The distance is
+     * measured in the same units as the coordinates, regardless of the
+     * length of the direction vector. Rays and geometry are assumed to be
+     * in the same coordinate system.
+     * <p>
+     *
+     * This method does not use any instance state and may be called from
+     * multiple threads at once. If the pool is null, or the batch is too
+     * small to be worth splitting, all rays are processed on the calling
+     * thread.
+     *
+     * @param origins The origins of the rays as [x1, y1, z1, x2, ...]
+     * @param directions The directions of the rays as [x1, y1, z1, x2, ...]
+     * @param numRays The number of rays to process
+     * @param length An optional length for to make the rays segments. If
+     *   the value is zero, it is ignored
+     * @param coords The coordinates of the triangle vertices
+     * @param indexes The vertex indices of each triangle or null if the
+     *   coordinates are a list of unindexed triangles
+     * @param numTris The number of triangles to use
+     * @param distances Array to write the distance to the closest hit for
+     *   each ray
+     * @param triangleIds Array to write the index of the closest triangle
+     *   hit for each ray
+     * @param intersectOnly true if we only want to know if each ray has an
+     *    intersection and don't really care which it is
+     * @param pool The pool to run the work on or null for the calling thread
+     * @return The number of rays that hit something
+     * @throws IllegalArgumentException One of the arrays is too small
+     */
+    public static int rayTriangleBatch(final float[] origins,
+                                       final float[] directions,
+                                       int numRays,
+                                       final float length,
+                                       final float[] coords,
+                                       final int[] indexes,
+                                       final int numTris,
+                                       final float[] distances,
+                                       final int[] triangleIds,
+                                       final boolean intersectOnly,
+                                       ForkJoinPool pool)
+    {
+        if(numRays == 0)
+            return 0;
+
+        if(origins.length < numRays * 3 || directions.length < numRays * 3)
+            throw new IllegalArgumentException("ray arrays too small for numRays");
+
+        if(distances.length < numRays || triangleIds.length < numRays)
+            throw new IllegalArgumentException("output arrays too small for numRays");
+
+        if(indexes == null && coords.length < numTris * 9)
+            throw new IllegalArgumentException("coords too small for numTris");
+
+        if(indexes != null && indexes.length < numTris * 3)
+            throw new IllegalArgumentException("indexes too small for numTris");
+
+        // A single pass over the geometry to find the bounds lets most of
+        // the misses out without touching every triangle.
+        final float[] bounds = (numRays > 1 && numTris > 1) ?
+                               calcTriangleBounds(coords, indexes, numTris) :
+                               null;
+
+        RangeProcessor processor = new RangeProcessor()
+        {
+            @Override
+            public void processRange(int start, int end)
+            {
+                processRays(origins,
+                            directions,
+                            length,
+                            coords,
+                            indexes,
+                            numTris,
+                            bounds,
+                            distances,
+                            triangleIds,
+                            intersectOnly,
+                            start,
+                            end);
+            }
+        };
+
+        ForkJoinUtils.forRange(pool, 0, numRays, MIN_BATCH_RAYS, processor);
+
+        int hits = 0;
+
+        for(int i = 0; i < numRays; i++)
+        {
+            if(triangleIds[i] != NO_INTERSECTION)
+                hits++;
+        }
+
+        return hits;
+    }
+
+    /**
+     * Intersect a batch of rays with a {@link GeometryData} using the shared
+     * fork/join pool from {@link ForkJoinUtils}. See the full version of this
+     * method for details of the parameters.
+     *
+     * @param origins The origins of the rays as [x1, y1, z1, x2, ...]
+     * @param directions The directions of the rays as [x1, y1, z1, x2, ...]
+     * @param numRays The number of rays to process
+     * @param length An optional length for to make the rays segments. If
+     *   the value is zero, it is ignored
+     * @param data The geometry to test against
+     * @param distances Array to write the distance to the closest hit for
+     *   each ray
+     * @param triangleIds Array to write the index of the closest triangle
+     *   hit for each ray
+     * @param intersectOnly true if we only want to know if each ray has an
+     *    intersection and don't really care which it is
+     * @return The number of rays that hit something
+     */
+    public static int rayGeometryBatch(float[] origins,
+                                       float[] directions,
+                                       int numRays,
+                                       float length,
+                                       GeometryData data,
+                                       float[] distances,
+                                       int[] triangleIds,
+                                       boolean intersectOnly)
+    {
+        return rayGeometryBatch(origins,
+                                directions,
+                                numRays,
+                                length,
+                                data,
+                                distances,
+                                triangleIds,
+                                intersectOnly,
+                                ForkJoinUtils.getSharedPool());
+    }
+
+    /**
+     * Intersect a batch of rays with a {@link GeometryData}. The geometry is
+     * broken down into a list of triangles once and then handed to
+     * {@link #rayTriangleBatch(float[], float[], int, float, float[], int[], int, float[], int[], boolean, ForkJoinPool)}.
+     * The triangle index reported is the index in that decomposed list. For
+     * triangle and indexed triangle arrays this is the triangle index of the
+     * original geometry. Quads are split into two triangles each, so the quad
+     * number is the triangle index divided by two. Strips and fans produce
+     * triangles in the order they appear in each strip. If the geometry type
+     * is not understood, all rays are reported as missing.
+     *
+     * @param origins The origins of the rays as [x1, y1, z1, x2, ...]
+     * @param directions The directions of the rays as [x1, y1, z1, x2, ...]
+     * @param numRays The number of rays to process
+     * @param length An optional length for to make the rays segments. If
+     *   the value is zero, it is ignored
+     * @param data The geometry to test against
+     * @param distances Array to write the distance to the closest hit for
+     *   each ray
+     * @param triangleIds Array to write the index of the closest triangle
+     *   hit for each ray
+     * @param intersectOnly true if we only want to know if each ray has an
+     *    intersection and don't really care which it is
+     * @param pool The pool to run the work on or null for the calling thread
+     * @return The number of rays that hit something
+     */
+    public static int rayGeometryBatch(float[] origins,
+                                       float[] directions,
+                                       int numRays,
+                                       float length,
+                                       GeometryData data,
+                                       float[] distances,
+                                       int[] triangleIds,
+                                       boolean intersectOnly,
+                                       ForkJoinPool pool)
+    {
+        int[] tri_index = null;
+        int num_tris = 0;
+        boolean supported = true;
+
+        switch(data.geometryType)
+        {
+            case GeometryData.TRIANGLES:
+                num_tris = data.vertexCount / 3;
+                break;
+
+            case GeometryData.INDEXED_TRIANGLES:
+                tri_index = data.indexes;
+                num_tris = data.indexesCount / 3;
+                break;
+
+            case GeometryData.QUADS:
+                num_tris = data.vertexCount / 2;
+                tri_index = new int[num_tris * 3];
+                for(int i = 0, q = 0; q < data.vertexCount; q += 4)
+                {
+                    tri_index[i++] = q;
+                    tri_index[i++] = q + 1;
+                    tri_index[i++] = q + 2;
+                    tri_index[i++] = q;
+                    tri_index[i++] = q + 2;
+                    tri_index[i++] = q + 3;
+                }
+                break;
+
+            case GeometryData.INDEXED_QUADS:
+                num_tris = data.indexesCount / 2;
+                tri_index = new int[num_tris * 3];
+                for(int i = 0, q = 0; q < data.indexesCount; q += 4)
+                {
+                    tri_index[i++] = data.indexes[q];
+                    tri_index[i++] = data.indexes[q + 1];
+                    tri_index[i++] = data.indexes[q + 2];
+                    tri_index[i++] = data.indexes[q];
+                    tri_index[i++] = data.indexes[q + 2];
+                    tri_index[i++] = data.indexes[q + 3];
+                }
+                break;
+
+            case GeometryData.TRIANGLE_STRIPS:
+            case GeometryData.TRIANGLE_FANS:
+            case GeometryData.INDEXED_TRIANGLE_STRIPS:
+            case GeometryData.INDEXED_TRIANGLE_FANS:
+                boolean fan =
+                    data.geometryType == GeometryData.TRIANGLE_FANS ||
+                    data.geometryType == GeometryData.INDEXED_TRIANGLE_FANS;
+                boolean indexed =
+                    data.geometryType == GeometryData.INDEXED_TRIANGLE_STRIPS ||
+                    data.geometryType == GeometryData.INDEXED_TRIANGLE_FANS;
+
+                for(int i = 0; i < data.numStrips; i++)
+                    num_tris += data.stripCounts[i] - 2;
+
+                tri_index = new int[num_tris * 3];
+                int pos = 0;
+                int offset = 0;
+
+                for(int i = 0; i < data.numStrips; i++)
+                {
+                    for(int j = 0; j < data.stripCounts[i] - 2; j++)
+                    {
+                        int first = fan ? offset : offset + j;
+                        int v0 = indexed ? data.indexes[first] : first;
+                        int v1 = offset + j + 1;
+                        int v2 = offset + j + 2;
+
+                        tri_index[pos++] = v0;
+                        tri_index[pos++] = indexed ? data.indexes[v1] : v1;
+                        tri_index[pos++] = indexed ? data.indexes[v2] : v2;
+                    }
+
+                    offset += data.stripCounts[i];
+                }
+                break;
+
+            default:
+                supported = false;
+        }
+
+        if(!supported || num_tris == 0)
+        {
+            for(int i = 0; i < numRays; i++)
+            {
+                distances[i] = Float.POSITIVE_INFINITY;
+                triangleIds[i] = NO_INTERSECTION;
+            }
+
+            return 0;
+        }
+
+        return rayTriangleBatch(origins,
+                                directions,
+                                numRays,
+                                length,
+                                data.coordinates,
+                                tri_index,
+                                num_tris,
+                                distances,
+                                triangleIds,
+                                intersectOnly,
+                                pool);
+    }
+
     /**
      * Test an array of triangles for intersection. Returns the closest
      * intersection point to the origin of the picking ray. Assumes that the
@@ -1448,6 +1805,245 @@ public class IntersectionUtils
         return ((crossings % 2) == 1);
     }
 
+    /**
+     * Intersect the given range of rays with the triangle list. Each ray
+     * only writes its own slot of the output arrays.
+     *
+     * @param origins Ray origins [x1, y1, z1, x2, ...]
+     * @param directions Ray directions [x1, y1, z1, x2, ...]
+     * @param length The maximum distance along the ray or zero for infinite
+     * @param coords Vertex coordinates of the geometry
+     * @param indexes Triangle vertex indices or null for sequential
+     * @param numTris The number of triangles to test
+     * @param bounds Geometry bounds or null to skip the bounds test
+     * @param distances Output distance per ray
+     * @param triangleIds Output triangle per ray
+     * @param intersectOnly true to stop at the first hit found
+     * @param start First ray to process, inclusive
+     * @param end Last ray to process, exclusive
+     */
+    private static void processRays(float[] origins,
+                                    float[] directions,
+                                    float length,
+                                    float[] coords,
+                                    int[] indexes,
+                                    int numTris,
+                                    float[] bounds,
+                                    float[] distances,
+                                    int[] triangleIds,
+                                    boolean intersectOnly,
+                                    int start,
+                                    int end)
+    {
+        for(int r = start; r < end; r++)
+        {
+            int r3 = r * 3;
+            double ox = origins[r3];
+            double oy = origins[r3 + 1];
+            double oz = origins[r3 + 2];
+            double dx = directions[r3];
+            double dy = directions[r3 + 1];
+            double dz = directions[r3 + 2];
+
+            double dir_len = Math.sqrt(dx * dx + dy * dy + dz * dz);
+
+            distances[r] = Float.POSITIVE_INFINITY;
+            triangleIds[r] = NO_INTERSECTION;
+
+            if(dir_len == 0)
+                continue;
+
+            // Convert the segment length into a parametric limit so that
+            // the per-triangle test is a single compare.
+            double max_t = (length == 0) ?
+                           Double.POSITIVE_INFINITY :
+                           length / dir_len;
+
+            if(bounds != null &&
+               !rayHitsBounds(ox, oy, oz, dx, dy, dz, max_t, bounds))
+                continue;
+
+            double closest_t = max_t;
+            int closest_tri = NO_INTERSECTION;
+
+            for(int t = 0; t < numTris; t++)
+            {
+                int i0, i1, i2;
+
+                if(indexes == null)
+                {
+                    i0 = t * 9;
+                    i1 = i0 + 3;
+                    i2 = i0 + 6;
+                }
+                else
+                {
+                    int t3 = t * 3;
+                    i0 = indexes[t3] * 3;
+                    i1 = indexes[t3 + 1] * 3;
+                    i2 = indexes[t3 + 2] * 3;
+                }
+
+                // Moller-Trumbore, accepting hits from either side
+                double v0x = coords[i0];
+                double v0y = coords[i0 + 1];
+                double v0z = coords[i0 + 2];
+
+                double e1x = coords[i1] - v0x;
+                double e1y = coords[i1 + 1] - v0y;
+                double e1z = coords[i1 + 2] - v0z;
+
+                double e2x = coords[i2] - v0x;
+                double e2y = coords[i2 + 1] - v0y;
+                double e2z = coords[i2 + 2] - v0z;
+
+                double px = dy * e2z - dz * e2y;
+                double py = dz * e2x - dx * e2z;
+                double pz = dx * e2y - dy * e2x;
+
+                double det = e1x * px + e1y * py + e1z * pz;
+
+                if(det > -PARALLEL_EPSILON && det < PARALLEL_EPSILON)
+                    continue;
+
+                double inv_det = 1 / det;
+
+                double sx = ox - v0x;
+                double sy = oy - v0y;
+                double sz = oz - v0z;
+
+                double u = (sx * px + sy * py + sz * pz) * inv_det;
+
+                if(u < 0 || u > 1)
+                    continue;
+
+                double qx = sy * e1z - sz * e1y;
+                double qy = sz * e1x - sx * e1z;
+                double qz = sx * e1y - sy * e1x;
+
+                double v = (dx * qx + dy * qy + dz * qz) * inv_det;
+
+                if(v < 0 || u + v > 1)
+                    continue;
+
+                double hit_t = (e2x * qx + e2y * qy + e2z * qz) * inv_det;
+
+                if(hit_t < 0 || hit_t > closest_t)
+                    continue;
+
+                closest_t = hit_t;
+                closest_tri = t;
+
+                if(intersectOnly)
+                    break;
+            }
+
+            if(closest_tri != NO_INTERSECTION)
+            {
+                distances[r] = (float)(closest_t * dir_len);
+                triangleIds[r] = closest_tri;
+            }
+        }
+    }
+
+    /**
+     * Slab test of the ray against an axis-aligned box.
+     *
+     * @return true if the ray passes through the box within [0, maxT]
+     */
+    private static boolean rayHitsBounds(double ox,
+                                         double oy,
+                                         double oz,
+                                         double dx,
+                                         double dy,
+                                         double dz,
+                                         double maxT,
+                                         float[] bounds)
+    {
+        double t_near = 0;
+        double t_far = maxT;
+
+        for(int axis = 0; axis < 3; axis++)
+        {
+            double o = (axis == 0) ? ox : (axis == 1) ? oy : oz;
+            double d = (axis == 0) ? dx : (axis == 1) ? dy : dz;
+            double min = bounds[axis];
+            double max = bounds[axis + 3];
+
+            if(d == 0)
+            {
+                if(o < min || o > max)
+                    return false;
+
+                continue;
+            }
+
+            double t0 = (min - o) / d;
+            double t1 = (max - o) / d;
+
+            if(t0 > t1)
+            {
+                double tmp = t0;
+                t0 = t1;
+                t1 = tmp;
+            }
+
+            if(t0 > t_near)
+                t_near = t0;
+
+            if(t1 < t_far)
+                t_far = t1;
+
+            if(t_near > t_far)
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Calculate the axis-aligned bounds of the vertices used by a list of
+     * triangles.
+     *
+     * @param coords The coordinates of the triangle vertices
+     * @param indexes The vertex indices of each triangle or null
+     * @param numTris The number of triangles to use
+     * @return The bounds as [minX, minY, minZ, maxX, maxY, maxZ]
+     */
+    private static float[] calcTriangleBounds(float[] coords,
+                                              int[] indexes,
+                                              int numTris)
+    {
+        float[] bounds = {
+            Float.POSITIVE_INFINITY,
+            Float.POSITIVE_INFINITY,
+            Float.POSITIVE_INFINITY,
+            Float.NEGATIVE_INFINITY,
+            Float.NEGATIVE_INFINITY,
+            Float.NEGATIVE_INFINITY
+        };
+
+        int num_verts = numTris * 3;
+
+        for(int i = 0; i < num_verts; i++)
+        {
+            int v = (indexes == null) ? i * 3 : indexes[i] * 3;
+
+            for(int j = 0; j < 3; j++)
+            {
+                float c = coords[v + j];
+
+                if(c < bounds[j])
+                    bounds[j] = c;
+
+                if(c > bounds[j + 3])
+                    bounds[j + 3] = c;
+            }
+        }
+
+        return bounds;
+    }
+
     /**
      * Convenience method to transform the picking coordinates to the local
      * coordinates of the geometry. Takes the coordinates and stores them in
@@ -0,0 +1,385 @@
+/*
+ * j3d.org Copyright (c) 2001-2015
+ *                                 Java Source
+ *
+ *  This source is licensed under the GNU LGPL v2.1
+ *  Please read docs/LGPL.txt for more information
+ *
+ *  This software comes with the standard NO WARRANTY disclaimer for any
+ *  purpose. Use it at your own risk. If there's a problem you get to fix it.
+ */
+
+package org.j3d.geom;
+
+// External imports
+import java.util.Arrays;
+
+// Local imports
+// None
+
+/**
+ * A set of increasingly simplified versions of one piece of geometry, each
+ * with the geometric error it has relative to the original.
+ * <p>
+ *
+ * Level 0 is the most detailed. Each level after it must have an error at
+ * least as large as the one before. Levels can be added by hand, for
+ * example from modelling tools, or a whole chain can be created from one
+ * mesh with {@link #generate(GeometryData, int, float)}, which uses
+ * {@link MeshSimplifier}.
+ * <p>
+ *
+ * <b>Level Selection</b>
+ * <p>
+ * The geometric error of a level is an object space distance. Projected
+ * onto the screen at a given distance from the camera, it becomes
+ * <code>error * pixelScale / distance</code> pixels, where the pixel scale
+ * comes from the projection. See {@link #getPixelScale(float, int)}. The
+ * selection methods pick the coarsest level whose projected error is
+ * within the allowed number of pixels.
+ * <p>
+ *
+ * An object sitting right on the distance where two levels change over
+ * would flicker between them. To stop that, the selection takes the level
+ * the object used last frame. Moving to a finer level happens as soon as
+ * the current level is too coarse, but moving to a coarser level needs the
+ * projected error to be below the limit by the hysteresis fraction.
+ * <p>
+ *
+ * A chain holds no per-object state, so one chain can be shared between
+ * any number of instances of the same prop. The caller keeps the current
+ * level for each instance. For instances that are scaled, divide the
+ * distance by the scale factor.
+ */
+public class LODChain
+{
+    /** The default hysteresis fraction */
+    public static final float DEFAULT_HYSTERESIS = 0.1f;
+
+    /** Initial number of levels space is allocated for */
+    private static final int DEFAULT_LEVEL_COUNT = 4;
+
+    /** Smallest distance used to project the error, to avoid dividing by 0 */
+    private static final float MIN_DISTANCE = 1e-6f;
+
+    /** The geometry of each level */
+    private GeometryData[] levels;
+
+    /** The geometric error of each level */
+    private float[] errors;
+
+    /** The number of levels in use */
+    private int numLevels;
+
+    /** Fraction below the limit the error must be to move coarser */
+    private float hysteresis;
+
+    /**
+     * Create a new empty chain with the default hysteresis.
+     */
+    public LODChain()
+    {
+        levels = new GeometryData[DEFAULT_LEVEL_COUNT];
+        errors = new float[DEFAULT_LEVEL_COUNT];
+        hysteresis = DEFAULT_HYSTERESIS;
+    }
+
+    /**
+     * Create a chain from a single mesh. The first level is the mesh itself
+     * with no error. Each following level is simplified from the one before
+     * to the given fraction of its triangles. The error recorded for each
+     * level is the sum of the errors of the simplifications that led to it.
+     * This is a heuristic estimate of its distance from the original, not a
+     * bound. Each step's error comes from quadrics and is itself only
+     * approximate, so a level may be somewhat further from the original
+     * than its recorded error.
+     * Generation stops early if a level cannot be simplified any further.
+     * <p>
+     *
+     * The source geometry is not changed. Each level after the first is a
+     * new indexed triangle geometry.
+     *
+     * @param source The full detail geometry
+     * @param numLevels The most levels to create, including the first
+     * @param ratio The fraction of triangles to keep at each level
+     * @return A chain of the simplified levels
+     * @throws IllegalArgumentException The number of levels is less than 1
+     *   or the ratio is not between 0 and 1
+     * @throws UnsupportedTypeException The geometry type is not triangles or
+     *   indexed triangles
+     */
+    public static LODChain generate(GeometryData source,
+                                    int numLevels,
+                                    float ratio)
+    {
+        if(numLevels < 1)
+            throw new IllegalArgumentException("Number of levels is < 1");
+
+        if(!(ratio > 0 && ratio < 1))
+            throw new IllegalArgumentException("Ratio not between 0 and 1");
+
+        LODChain ret_val = new LODChain();
+        ret_val.addLevel(source, 0);
+
+        MeshSimplifier simplifier = new MeshSimplifier();
+        GeometryData previous = source;
+        int prev_tris = (source.geometryType == GeometryData.TRIANGLES) ?
+                        source.vertexCount / 3 : source.indexesCount / 3;
+        float error = 0;
+
+        for(int i = 1; i < numLevels; i++)
+        {
+            GeometryData level = (GeometryData)previous.clone();
+            int tris = simplifier.simplify(level, (int)(prev_tris * ratio));
+
+            if(tris >= prev_tris)
+                break;
+
+            error += simplifier.getLastError();
+            ret_val.addLevel(level, error);
+
+            previous = level;
+            prev_tris = tris;
+        }
+
+        return ret_val;
+    }
+
+    /**
+     * Work out the pixel scale for a perspective projection. This is the
+     * number of pixels an object one unit across covers when it is one unit
+     * in front of the camera.
+     *
+     * @param fieldOfView The vertical field of view in radians
+     * @param viewportHeight The height of the viewport in pixels
+     * @return The pixel scale
+     * @throws IllegalArgumentException The field of view is not between 0
+     *   and PI or the height is not positive
+     */
+    public static float getPixelScale(float fieldOfView, int viewportHeight)
+    {
+        if(!(fieldOfView > 0 && fieldOfView < Math.PI))
+            throw new IllegalArgumentException("Field of view not in (0, PI)");
+
+        if(viewportHeight <= 0)
+            throw new IllegalArgumentException("Viewport height is <= 0");
+
+        return (float)(viewportHeight * 0.5 / Math.tan(fieldOfView * 0.5));
+    }
+
+    /**
+     * Add a level to the coarse end of the chain.
+     *
+     * @param geom The geometry of the level
+     * @param error The geometric error of the level
+     * @throws IllegalArgumentException The geometry is null, or the error is
+     *   negative or less than the error of the last level
+     */
+    public void addLevel(GeometryData geom, float error)
+    {
+        if(geom == null)
+            throw new IllegalArgumentException("Level geometry is null");
+
+        if(!(error >= 0))
+            throw new IllegalArgumentException("Level error is < 0");
+
+        if(numLevels > 0 && error < errors[numLevels - 1])
+            throw new IllegalArgumentException("Level error is less than " +
+                                               "the previous level");
+
+        if(numLevels == levels.length)
+        {
+            levels = Arrays.copyOf(levels, numLevels * 2);
+            errors = Arrays.copyOf(errors, numLevels * 2);
+        }
+
+        levels[numLevels] = geom;
+        errors[numLevels] = error;
+        numLevels++;
+    }
+
+    /**
+     * Get the number of levels in the chain.
+     *
+     * @return The number of levels
+     */
+    public int getNumLevels()
+    {
+        return numLevels;
+    }
+
+    /**
+     * Get the geometry of a level.
+     *
+     * @param level The index of the level, with 0 the most detailed
+     * @return The geometry of that level
+     * @throws IndexOutOfBoundsException The level is not in the chain
+     */
+    public GeometryData getLevel(int level)
+    {
+        checkLevel(level);
+
+        return levels[level];
+    }
+
+    /**
+     * Get the geometric error of a level.
+     *
+     * @param level The index of the level, with 0 the most detailed
+     * @return The error of that level
+     * @throws IndexOutOfBoundsException The level is not in the chain
+     */
+    public float getError(int level)
+    {
+        checkLevel(level);
+
+        return errors[level];
+    }
+
+    /**
+     * Set the fraction below the pixel error limit that a coarser level must
+     * be before it is switched to. 0 disables hysteresis.
+     *
+     * @param fraction The hysteresis fraction, from 0 up to but not
+     *   including 1
+     * @throws IllegalArgumentException The fraction is out of range
+     */
+    public void setHysteresis(float fraction)
+    {
+        if(!(fraction >= 0 && fraction < 1))
+            throw new IllegalArgumentException("Hysteresis not in [0, 1)");
+
+        hysteresis = fraction;
+    }
+
+    /**
+     * Get the hysteresis fraction currently in use.
+     *
+     * @return The hysteresis fraction
+     */
+    public float getHysteresis()
+    {
+        return hysteresis;
+    }
+
+    /**
+     * Select the level for an object without taking into account the level
+     * it used before. This is the coarsest level whose projected error is
+     * within the limit.
+     *
+     * @param distance The distance from the camera to the object
+     * @param pixelScale The pixel scale of the projection
+     * @param maxPixelError The largest error allowed, in pixels
+     * @return The selected level, or -1 if the chain is empty
+     */
+    public int selectLevel(float distance, float pixelScale, float maxPixelError)
+    {
+        return selectLevel(distance, pixelScale, maxPixelError, -1);
+    }
+
+    /**
+     * Select the level for an object, applying hysteresis against the level
+     * it used before.
+     *
+     * @param distance The distance from the camera to the object
+     * @param pixelScale The pixel scale of the projection
+     * @param maxPixelError The largest error allowed, in pixels
+     * @param currentLevel The level used last time, or -1 if none
+     * @return The selected level, or -1 if the chain is empty
+     */
+    public int selectLevel(float distance,
+                           float pixelScale,
+                           float maxPixelError,
+                           int currentLevel)
+    {
+        if(numLevels == 0)
+            return -1;
+
+        // Convert the pixel limit to an object space error at this distance
+        float limit = maxPixelError * Math.max(distance, MIN_DISTANCE) /
+                      pixelScale;
+
+        int ret_val = coarsestWithin(limit);
+
+        if(currentLevel >= 0 && currentLevel < numLevels &&
+           ret_val > currentLevel)
+        {
+            ret_val = Math.max(coarsestWithin(limit * (1 - hysteresis)),
+                               currentLevel);
+        }
+
+        return ret_val;
+    }
+
+    /**
+     * Select levels for a batch of objects sharing this chain. The levels
+     * array holds the level each object used last time, or -1, and is
+     * replaced with the new selections.
+     *
+     * @param distances The distance from the camera to each object
+     * @param numObjects The number of objects to select for
+     * @param pixelScale The pixel scale of the projection
+     * @param maxPixelError The largest error allowed, in pixels
+     * @param levels The current level of each object, updated in place
+     * @throws InvalidArraySizeException One of the arrays is shorter than
+     *   the number of objects
+     */
+    public void selectLevels(float[] distances,
+                             int numObjects,
+                             float pixelScale,
+                             float maxPixelError,
+                             int[] levels)
+    {
+        if(distances.length < numObjects)
+            throw new InvalidArraySizeException("Distances",
+                                                distances.length,
+                                                numObjects);
+
+        if(levels.length < numObjects)
+            throw new InvalidArraySizeException("Levels",
+                                                levels.length,
+                                                numObjects);
+
+        for(int i = 0; i < numObjects; i++)
+        {
+            levels[i] = selectLevel(distances[i],
+                                    pixelScale,
+                                    maxPixelError,
+                                    levels[i]);
+        }
+    }
+
+    /**
+     * Find the coarsest level with an error no more than the limit. The
+     * errors are sorted, so this is a binary search. Level 0 is used if
+     * every level is over the limit.
+     */
+    private int coarsestWithin(float limit)
+    {
+        int lo = 0;
+        int hi = numLevels - 1;
+
+        while(lo < hi)
+        {
+            int mid = (lo + hi + 1) >>> 1;
+
+            if(errors[mid] <= limit)
+                lo = mid;
+            else
+                hi = mid - 1;
+        }
+
+        return lo;
+    }
+
+    /**
+     * Make sure a level index is in the chain.
+     */
+    private void checkLevel(int level)
+    {
+        if(level < 0 || level >= numLevels)
+            throw new IndexOutOfBoundsException("Level " + level +
+                                                " not in chain of " +
+                                                numLevels);
+    }
+}
@@ -0,0 +1,1332 @@
+/*
+ * j3d.org Copyright (c) 2001-2015
+ *                                 Java Source
+ *
+ *  This source is licensed under the GNU LGPL v2.1
+ *  Please read docs/LGPL.txt for more information
+ *
+ *  This software comes with the standard NO WARRANTY disclaimer for any
+ *  purpose. Use it at your own risk. If there's a problem you get to fix it.
+ */
+
+package org.j3d.geom;
+
+// External imports
+import java.util.Arrays;
+
+// Local imports
+// None
+
+/**
+ * Reduces the number of triangles in a mesh by repeatedly collapsing edges,
+ * using the quadric error metric of Garland and Heckbert.
+ * <p>
+ *
+ * Every vertex carries a quadric that sums the squared distance to the
+ * planes of the faces around it in the original mesh. Collapsing an edge
+ * merges the two quadrics and moves the surviving vertex to the position
+ * that minimises the merged error. Edges are collapsed cheapest first from a
+ * heap, until either the triangle count reaches the target or the next
+ * collapse would move the surface further than the allowed error. All of
+ * the working state is held in flat arrays, so large meshes can be
+ * simplified without creating an object per vertex, edge or face.
+ * <p>
+ *
+ * The time taken is dominated by the heap, which holds an entry for every
+ * edge that has changed since it was last collapsed or rejected. Expect
+ * somewhere around 100,000 collapses a second on one core for large
+ * meshes, so reducing a 2 million triangle grid to 20,000 takes several
+ * seconds.
+ * <p>
+ *
+ * Before simplifying, vertices with identical positions and texture
+ * coordinates are welded together, so unindexed geometry and meshes from
+ * loaders that repeat vertices are simplified as one surface. Vertices with
+ * the same position but different texture coordinates are left apart. That
+ * makes a texture seam look like an open edge of the mesh. As described by
+ * Garland and Heckbert, each open edge adds a heavily weighted plane to the
+ * quadrics of its ends. The plane holds the edge and is perpendicular to its
+ * face. Vertices may then slide along a boundary or seam and be removed
+ * where it is straight, but moving off it is expensive, and the corners
+ * where it turns stay put. The two sides of a seam are simplified
+ * separately, so they keep the same line but may not keep the same
+ * vertices. Only vertices on a non-manifold edge, or where more than one
+ * boundary passes through, are locked in place. A collapse is also refused
+ * if it would fold a face over, join two parts of the surface that only
+ * touch at the edge, or pinch a boundary by joining two of its vertices
+ * across the inside of the mesh.
+ * <p>
+ *
+ * Normals, texture coordinates and colours are carried across from the
+ * original vertex that survives, they are not interpolated. Faceted normals
+ * should be regenerated afterwards, for example with
+ * {@link NormalUtils#createSmoothNormals(GeometryData, float, boolean)}.
+ * <p>
+ *
+ * An instance keeps working state while simplifying, so it must not be
+ * used from more than one thread at a time. Separate instances are
+ * independent.
+ */
+public class MeshSimplifier
+{
+    /**
+     * Smallest cosine of the angle allowed between a face normal before and
+     * after a collapse. Anything less is treated as folding the face over.
+     */
+    private static final double MIN_NORMAL_COS = 0.2;
+
+    /** Relative size of the quadric determinant treated as singular */
+    private static final double SINGULAR_TOLERANCE = 1e-10;
+
+    /** Number of values in a symmetric 4x4 quadric */
+    private static final int QUADRIC_SIZE = 10;
+
+    /** Number of values held for each edge in the heap */
+    private static final int ENTRY_SIZE = 4;
+
+    /**
+     * Weight of the plane added for each open edge, relative to the face
+     * planes. Large enough that a vertex only leaves a boundary when there
+     * is nothing else left to collapse.
+     */
+    private static final double BOUNDARY_WEIGHT = 1000;
+
+    /** Positions of the welded vertices */
+    private double[] positions;
+
+    /** The quadric for each welded vertex */
+    private double[] quadrics;
+
+    /** Index of the original vertex each welded vertex came from */
+    private int[] sourceVertex;
+
+    /** Flags for vertices that must not move, from non-manifold edges */
+    private boolean[] locked;
+
+    /** Flags for vertices on a boundary or seam */
+    private boolean[] boundary;
+
+    /**
+     * Change count for each vertex, bumped whenever the vertex moves. -1 for
+     * vertices removed by a collapse.
+     */
+    private int[] stamps;
+
+    /** The three welded vertices of each face */
+    private int[] faces;
+
+    /** Flags for faces removed by a collapse */
+    private boolean[] faceRemoved;
+
+    /** The number of faces not removed yet */
+    private int numLiveFaces;
+
+    /** First corner of each vertex's list of face corners, or -1 */
+    private int[] cornerHead;
+
+    /** Last corner of each vertex's list of face corners, or -1 */
+    private int[] cornerTail;
+
+    /** The next corner in the same vertex's list, or -1 */
+    private int[] cornerNext;
+
+    /** Marker values used to find the unique neighbours of a vertex */
+    private int[] marks;
+
+    /** The current value to mark vertices with */
+    private int markValue;
+
+    /**
+     * The heap nodes. Each holds the bits of its cost as a float in the top
+     * half and its entry number in the bottom half, so nodes order by cost
+     * when compared as longs and a sift only moves one array.
+     */
+    private long[] heap;
+
+    /**
+     * The edges in the heap, ENTRY_SIZE values each: the two vertices and
+     * their stamps when the edge was added. Entries stay put while the heap
+     * is sorted.
+     */
+    private int[] entries;
+
+    /** The full cost of each entry */
+    private double[] entryCost;
+
+    /** Entry numbers free for reuse */
+    private int[] freeEntries;
+
+    /** The number of valid values in the above array */
+    private int numFreeEntries;
+
+    /** The number of entries handed out, including the free ones */
+    private int numEntries;
+
+    /** The number of nodes in the heap */
+    private int heapSize;
+
+    /** The largest collapse error from the last simplification */
+    private float lastError;
+
+    /** Scratch quadric for summing a pair of vertices */
+    private double[] pairQuadric;
+
+    /** Scratch position for the target of a collapse */
+    private double[] target;
+
+    /** Scratch face normal before a collapse */
+    private double[] normalBefore;
+
+    /** Scratch face normal after a collapse */
+    private double[] normalAfter;
+
+    /**
+     * Create a new simplifier.
+     */
+    public MeshSimplifier()
+    {
+        pairQuadric = new double[QUADRIC_SIZE];
+        target = new double[3];
+        normalBefore = new double[3];
+        normalAfter = new double[3];
+    }
+
+    /**
+     * Get the largest error of any collapse made by the last call to
+     * simplify. This is in the same units as the maximum error, so is
+     * roughly how far the simplified surface has moved from the original.
+     *
+     * @return The error of the last simplification, or 0 if nothing was
+     *   collapsed
+     */
+    public float getLastError()
+    {
+        return lastError;
+    }
+
+    /**
+     * Simplify the geometry down to the target number of triangles, with no
+     * limit on the error. See the full version of this method for details.
+     *
+     * @param data The geometry to simplify
+     * @param targetTriangles The number of triangles to reduce to
+     * @return The number of triangles left in the geometry
+     * @throws IllegalArgumentException The target is negative
+     * @throws UnsupportedTypeException The geometry type is not triangles or
+     *   indexed triangles
+     */
+    public int simplify(GeometryData data, int targetTriangles)
+    {
+        return simplify(data, targetTriangles, Float.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Simplify the geometry, replacing its contents. Collapses stop when the
+     * number of triangles reaches the target, when the next collapse would
+     * have an error above the maximum, or when no more edges can be
+     * collapsed. The error is the square root of the quadric error, which is
+     * roughly the distance the surface has moved. Use a target of 0 to
+     * simplify by error alone, or an infinite error to simplify by triangle
+     * count alone.
+     * <p>
+     *
+     * Triangles and indexed triangles are accepted, and the result is always
+     * indexed triangles. Coordinates, normals, texture coordinates and
+     * colours are replaced with new arrays holding only the vertices that
+     * are still used. Any separate normal, texture coordinate or colour
+     * indexes are discarded.
+     *
+     * @param data The geometry to simplify
+     * @param targetTriangles The number of triangles to reduce to
+     * @param maxError The largest error allowed for a single collapse
+     * @return The number of triangles left in the geometry
+     * @throws IllegalArgumentException The target or error is negative
+     * @throws UnsupportedTypeException The geometry type is not triangles or
+     *   indexed triangles
+     */
+    public int simplify(GeometryData data, int targetTriangles, float maxError)
+    {
+        if(targetTriangles < 0)
+            throw new IllegalArgumentException("Target triangle count is < 0");
+
+        if(maxError < 0)
+            throw new IllegalArgumentException("Maximum error is < 0");
+
+        int[] indexes;
+        int num_corners;
+
+        switch(data.geometryType)
+        {
+            case GeometryData.TRIANGLES:
+                indexes = null;
+                num_corners = data.vertexCount;
+                break;
+
+            case GeometryData.INDEXED_TRIANGLES:
+                indexes = data.indexes;
+                num_corners = data.indexesCount;
+                break;
+
+            default:
+                throw new UnsupportedTypeException("Unsupported geometry type " +
+                                                   "for simplification: " +
+                                                   data.geometryType);
+        }
+
+        int tex_size = 0;
+
+        if(data.textureCoordinates != null)
+        {
+            if((data.geometryComponents & GeometryData.TEXTURE_2D_DATA) != 0)
+                tex_size = 2;
+            else if((data.geometryComponents & GeometryData.TEXTURE_3D_DATA) != 0)
+                tex_size = 3;
+        }
+
+        weldVertices(data, indexes, num_corners / 3, tex_size);
+        buildCornerLists();
+        buildQuadrics();
+
+        long[] edges = findBoundaries();
+        buildHeap(edges);
+        edges = null;
+
+        double max_cost = (double)maxError * maxError;
+        double worst = 0;
+
+        while(numLiveFaces > targetTriangles && heapSize > 0)
+        {
+            // There are about 1.5 edges per face, so past this most of the
+            // heap is old nodes left behind by collapses
+            if(heapSize > numLiveFaces * 3)
+                compactHeap();
+
+            int entry = (int)heap[0];
+            double cost = entryCost[entry];
+            int e = entry * ENTRY_SIZE;
+            int a = entries[e];
+            int b = entries[e + 1];
+            boolean current = stamps[a] == entries[e + 2] &&
+                              stamps[b] == entries[e + 3];
+
+            removeHeapTop();
+
+            if(!current)
+                continue;
+
+            if(cost > max_cost)
+                break;
+
+            if(collapse(a, b) && cost > worst)
+                worst = cost;
+        }
+
+        lastError = (float)Math.sqrt(worst);
+
+        writeResult(data, tex_size);
+
+        int ret_val = numLiveFaces;
+
+        clearWorkingState();
+
+        return ret_val;
+    }
+
+    /**
+     * Weld vertices that share a position and texture coordinate, and build
+     * the face list from the welded vertices. Faces that become degenerate
+     * are dropped.
+     */
+    private void weldVertices(GeometryData data,
+                              int[] indexes,
+                              int numFaces,
+                              int texSize)
+    {
+        float[] coords = data.coordinates;
+        float[] tex = data.textureCoordinates;
+        int num_verts = data.vertexCount;
+
+        int size = Integer.highestOneBit(Math.max(num_verts, 1) * 2) * 2;
+        int mask = size - 1;
+        int[] table = new int[size];
+        Arrays.fill(table, -1);
+
+        int[] welded = new int[num_verts];
+        int[] source = new int[num_verts];
+        int num_welded = 0;
+
+        for(int i = 0; i < num_verts; i++)
+        {
+            int p = i * 3;
+            int t = i * texSize;
+
+            // +0.0f makes -0 and 0 hash the same
+            int h = Float.floatToIntBits(coords[p] + 0.0f) * 73856093 ^
+                    Float.floatToIntBits(coords[p + 1] + 0.0f) * 19349663 ^
+                    Float.floatToIntBits(coords[p + 2] + 0.0f) * 83492791;
+
+            for(int k = 0; k < texSize; k++)
+                h = h * 31 + Float.floatToIntBits(tex[t + k] + 0.0f);
+
+            h ^= h >>> 16;
+            int slot = h & mask;
+
+            while(true)
+            {
+                int existing = table[slot];
+
+                if(existing == -1)
+                {
+                    table[slot] = i;
+                    welded[i] = num_welded;
+                    source[num_welded++] = i;
+                    break;
+                }
+
+                if(sameVertex(coords, tex, texSize, existing, i))
+                {
+                    welded[i] = welded[existing];
+                    break;
+                }
+
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        table = null;
+
+        positions = new double[num_welded * 3];
+        quadrics = new double[num_welded * QUADRIC_SIZE];
+        sourceVertex = source;
+        locked = new boolean[num_welded];
+        boundary = new boolean[num_welded];
+        stamps = new int[num_welded];
+        marks = new int[num_welded];
+        markValue = 0;
+
+        for(int i = 0; i < num_welded; i++)
+        {
+            int p = source[i] * 3;
+            positions[i * 3] = coords[p];
+            positions[i * 3 + 1] = coords[p + 1];
+            positions[i * 3 + 2] = coords[p + 2];
+        }
+
+        faces = new int[numFaces * 3];
+        int f = 0;
+
+        for(int i = 0; i < numFaces; i++)
+        {
+            int c = i * 3;
+            int v0 = welded[indexes == null ? c : indexes[c]];
+            int v1 = welded[indexes == null ? c + 1 : indexes[c + 1]];
+            int v2 = welded[indexes == null ? c + 2 : indexes[c + 2]];
+
+            if(v0 == v1 || v1 == v2 || v2 == v0)
+                continue;
+
+            faces[f++] = v0;
+            faces[f++] = v1;
+            faces[f++] = v2;
+        }
+
+        numLiveFaces = f / 3;
+        faceRemoved = new boolean[numLiveFaces];
+    }
+
+    /**
+     * Check if two original vertices have the same position and texture
+     * coordinates.
+     */
+    private static boolean sameVertex(float[] coords,
+                                      float[] tex,
+                                      int texSize,
+                                      int a,
+                                      int b)
+    {
+        int pa = a * 3;
+        int pb = b * 3;
+
+        if(coords[pa] != coords[pb] ||
+           coords[pa + 1] != coords[pb + 1] ||
+           coords[pa + 2] != coords[pb + 2])
+            return false;
+
+        int ta = a * texSize;
+        int tb = b * texSize;
+
+        for(int k = 0; k < texSize; k++)
+        {
+            if(tex[ta + k] != tex[tb + k])
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Link the corners of every face into a list per vertex.
+     */
+    private void buildCornerLists()
+    {
+        int num_verts = stamps.length;
+        int num_corners = numLiveFaces * 3;
+
+        cornerHead = new int[num_verts];
+        cornerTail = new int[num_verts];
+        cornerNext = new int[num_corners];
+
+        Arrays.fill(cornerHead, -1);
+        Arrays.fill(cornerTail, -1);
+
+        for(int c = num_corners; --c >= 0; )
+        {
+            int v = faces[c];
+
+            if(cornerHead[v] == -1)
+                cornerTail[v] = c;
+
+            cornerNext[c] = cornerHead[v];
+            cornerHead[v] = c;
+        }
+    }
+
+    /**
+     * Sum the plane quadric of every face into its vertices.
+     */
+    private void buildQuadrics()
+    {
+        double[] n = normalBefore;
+
+        for(int f = 0; f < numLiveFaces; f++)
+        {
+            int c = f * 3;
+            int p0 = faces[c] * 3;
+
+            double len = faceNormal(positions, p0,
+                                    positions, faces[c + 1] * 3,
+                                    positions, faces[c + 2] * 3,
+                                    n);
+
+            // Zero area faces have no plane
+            if(len == 0)
+                continue;
+
+            double a = n[0] / len;
+            double b = n[1] / len;
+            double cc = n[2] / len;
+            double d = -(a * positions[p0] +
+                         b * positions[p0 + 1] +
+                         cc * positions[p0 + 2]);
+
+            for(int k = 0; k < 3; k++)
+                addPlane(faces[c + k], a, b, cc, d, 1);
+        }
+    }
+
+    /**
+     * Find the open and non-manifold edges. Open edges, with only one face,
+     * add a boundary plane to the quadrics of their ends. Edges with more
+     * than two faces lock their ends, as do vertices with more than two
+     * open edges, which is where separate boundaries meet.
+     *
+     * @return The sorted edge keys, with each edge once per face
+     */
+    private long[] findBoundaries()
+    {
+        int num_corners = numLiveFaces * 3;
+        long[] ret_val = new long[num_corners];
+        long[] open_edges = new long[num_corners];
+        int[] open_count = new int[stamps.length];
+        int num_open = 0;
+
+        for(int c = 0; c < num_corners; c++)
+        {
+            int a = faces[c];
+            int b = faces[(c % 3 == 2) ? c - 2 : c + 1];
+
+            ret_val[c] = edgeKey(a, b);
+        }
+
+        Arrays.sort(ret_val);
+
+        int start = 0;
+
+        while(start < num_corners)
+        {
+            int end = start + 1;
+
+            while(end < num_corners && ret_val[end] == ret_val[start])
+                end++;
+
+            int a = (int)(ret_val[start] >>> 32);
+            int b = (int)ret_val[start];
+
+            if(end - start > 2)
+            {
+                locked[a] = true;
+                locked[b] = true;
+            }
+            else if(end - start == 1)
+            {
+                open_edges[num_open++] = ret_val[start];
+                open_count[a]++;
+                open_count[b]++;
+                boundary[a] = true;
+                boundary[b] = true;
+            }
+
+            start = end;
+        }
+
+        // The open edges were found in sorted order, so can be searched for
+        // each corner to find the face they belong to.
+        for(int c = 0; c < num_corners && num_open != 0; c++)
+        {
+            int next = (c % 3 == 2) ? c - 2 : c + 1;
+            int a = faces[c];
+            int b = faces[next];
+
+            if(boundary[a] && boundary[b] &&
+               Arrays.binarySearch(open_edges, 0, num_open, edgeKey(a, b)) >= 0)
+                addBoundaryPlane(c - c % 3, a, b);
+        }
+
+        for(int v = 0; v < open_count.length; v++)
+        {
+            if(open_count[v] > 2)
+                locked[v] = true;
+        }
+
+        return ret_val;
+    }
+
+    /**
+     * Add the constraint plane for an open edge to both of its ends. The
+     * plane holds the edge and is perpendicular to the face.
+     *
+     * @param base The index of the face's first corner
+     * @param a The first vertex of the edge
+     * @param b The second vertex of the edge
+     */
+    private void addBoundaryPlane(int base, int a, int b)
+    {
+        double[] n = normalBefore;
+
+        double len = faceNormal(positions, faces[base] * 3,
+                                positions, faces[base + 1] * 3,
+                                positions, faces[base + 2] * 3,
+                                n);
+
+        if(len == 0)
+            return;
+
+        int pa = a * 3;
+        int pb = b * 3;
+        double ex = positions[pb] - positions[pa];
+        double ey = positions[pb + 1] - positions[pa + 1];
+        double ez = positions[pb + 2] - positions[pa + 2];
+
+        double px = ey * n[2] - ez * n[1];
+        double py = ez * n[0] - ex * n[2];
+        double pz = ex * n[1] - ey * n[0];
+        double p_len = Math.sqrt(px * px + py * py + pz * pz);
+
+        if(p_len == 0)
+            return;
+
+        px /= p_len;
+        py /= p_len;
+        pz /= p_len;
+
+        double d = -(px * positions[pa] +
+                     py * positions[pa + 1] +
+                     pz * positions[pa + 2]);
+
+        addPlane(a, px, py, pz, d, BOUNDARY_WEIGHT);
+        addPlane(b, px, py, pz, d, BOUNDARY_WEIGHT);
+    }
+
+    /**
+     * Add the quadric of a plane to a vertex.
+     *
+     * @param v The vertex to add to
+     * @param a The x component of the unit plane normal
+     * @param b The y component of the unit plane normal
+     * @param c The z component of the unit plane normal
+     * @param d The plane offset
+     * @param weight The amount to scale the quadric by
+     */
+    private void addPlane(int v,
+                          double a,
+                          double b,
+                          double c,
+                          double d,
+                          double weight)
+    {
+        int q = v * QUADRIC_SIZE;
+
+        quadrics[q] += a * a * weight;
+        quadrics[q + 1] += a * b * weight;
+        quadrics[q + 2] += a * c * weight;
+        quadrics[q + 3] += a * d * weight;
+        quadrics[q + 4] += b * b * weight;
+        quadrics[q + 5] += b * c * weight;
+        quadrics[q + 6] += b * d * weight;
+        quadrics[q + 7] += c * c * weight;
+        quadrics[q + 8] += c * d * weight;
+        quadrics[q + 9] += d * d * weight;
+    }
+
+    /**
+     * Create the heap holding one entry for every unique edge that may be
+     * collapsed.
+     *
+     * @param edges The sorted edge keys
+     */
+    private void buildHeap(long[] edges)
+    {
+        int capacity = Math.max(edges.length / 2, 16);
+
+        heap = new long[capacity];
+        entries = new int[capacity * ENTRY_SIZE];
+        entryCost = new double[capacity];
+        freeEntries = new int[capacity];
+        numFreeEntries = 0;
+        numEntries = 0;
+        heapSize = 0;
+
+        for(int i = 0; i < edges.length; i++)
+        {
+            if(i > 0 && edges[i] == edges[i - 1])
+                continue;
+
+            addEdge((int)(edges[i] >>> 32), (int)edges[i]);
+        }
+    }
+
+    /**
+     * Work out the cost of collapsing an edge and add it to the heap. Edges
+     * between two locked vertices are never collapsed, so are not added.
+     */
+    private void addEdge(int a, int b)
+    {
+        if(locked[a] && locked[b])
+            return;
+
+        double cost = collapseCost(a, b, target);
+
+        if(heapSize == heap.length)
+        {
+            int size = heapSize * 2;
+            heap = Arrays.copyOf(heap, size);
+            entries = Arrays.copyOf(entries, size * ENTRY_SIZE);
+            entryCost = Arrays.copyOf(entryCost, size);
+            freeEntries = Arrays.copyOf(freeEntries, size);
+        }
+
+        int entry = (numFreeEntries != 0) ?
+                    freeEntries[--numFreeEntries] :
+                    numEntries++;
+
+        int e = entry * ENTRY_SIZE;
+        entries[e] = a;
+        entries[e + 1] = b;
+        entries[e + 2] = stamps[a];
+        entries[e + 3] = stamps[b];
+        entryCost[entry] = cost;
+
+        // Costs are never negative, so the float bits order the same way as
+        // the values. Rounding only changes the order of near ties.
+        long node = ((long)Float.floatToIntBits((float)cost) << 32) | entry;
+
+        // A 4-ary heap is half the depth of a binary one, and the children
+        // of a node share a cache line.
+        int pos = heapSize++;
+
+        while(pos > 0)
+        {
+            int parent = (pos - 1) >> 2;
+
+            if(heap[parent] <= node)
+                break;
+
+            heap[pos] = heap[parent];
+            pos = parent;
+        }
+
+        heap[pos] = node;
+    }
+
+    /**
+     * Drop the heap nodes of edges whose vertices have moved since they were
+     * added, then rebuild the heap from what is left. Every collapse leaves
+     * the old nodes of its edges behind, and without this they make up most
+     * of the heap.
+     */
+    private void compactHeap()
+    {
+        int size = 0;
+
+        for(int i = 0; i < heapSize; i++)
+        {
+            long node = heap[i];
+            int entry = (int)node;
+            int e = entry * ENTRY_SIZE;
+
+            if(stamps[entries[e]] == entries[e + 2] &&
+               stamps[entries[e + 1]] == entries[e + 3])
+                heap[size++] = node;
+            else
+                freeEntries[numFreeEntries++] = entry;
+        }
+
+        heapSize = size;
+
+        for(int i = (size - 2) >> 2; i >= 0; i--)
+            siftDown(i, heap[i]);
+    }
+
+    /**
+     * Remove the cheapest node from the heap, freeing its entry.
+     */
+    private void removeHeapTop()
+    {
+        freeEntries[numFreeEntries++] = (int)heap[0];
+
+        int last = --heapSize;
+
+        if(last == 0)
+            return;
+
+        siftDown(0, heap[last]);
+    }
+
+    /**
+     * Put a node into the heap at a position, moving it down below any
+     * cheaper children.
+     *
+     * @param pos The position to start at
+     * @param node The node to place
+     */
+    private void siftDown(int pos, long node)
+    {
+        int last = heapSize;
+
+        while(true)
+        {
+            int first = pos * 4 + 1;
+
+            if(first >= last)
+                break;
+
+            int end = Math.min(first + 4, last);
+            int child = first;
+            long child_node = heap[first];
+
+            for(int i = first + 1; i < end; i++)
+            {
+                if(heap[i] < child_node)
+                {
+                    child = i;
+                    child_node = heap[i];
+                }
+            }
+
+            if(child_node >= node)
+                break;
+
+            heap[pos] = child_node;
+            pos = child;
+        }
+
+        heap[pos] = node;
+    }
+
+    /**
+     * Work out where the vertices of an edge would collapse to and the error
+     * of putting them there. A locked vertex stays where it is. Otherwise
+     * the position with the least error is used, falling back to the best of
+     * the ends and the middle if the quadric has no unique minimum.
+     *
+     * @param a The first vertex of the edge
+     * @param b The second vertex of the edge
+     * @param out The position to collapse to
+     * @return The error at that position
+     */
+    private double collapseCost(int a, int b, double[] out)
+    {
+        double[] q = pairQuadric;
+        int qa = a * QUADRIC_SIZE;
+        int qb = b * QUADRIC_SIZE;
+
+        for(int i = 0; i < QUADRIC_SIZE; i++)
+            q[i] = quadrics[qa + i] + quadrics[qb + i];
+
+        int pa = a * 3;
+        int pb = b * 3;
+
+        if(locked[a] || locked[b])
+        {
+            int p = locked[a] ? pa : pb;
+            out[0] = positions[p];
+            out[1] = positions[p + 1];
+            out[2] = positions[p + 2];
+
+            return Math.max(quadricError(q, out), 0);
+        }
+
+        double c00 = q[4] * q[7] - q[5] * q[5];
+        double c01 = q[2] * q[5] - q[1] * q[7];
+        double c02 = q[1] * q[5] - q[2] * q[4];
+        double det = q[0] * c00 + q[1] * c01 + q[2] * c02;
+        double scale = q[0] + q[4] + q[7];
+
+        boolean solved = false;
+
+        if(Math.abs(det) > SINGULAR_TOLERANCE * scale * scale * scale)
+        {
+            double c11 = q[0] * q[7] - q[2] * q[2];
+            double c12 = q[1] * q[2] - q[0] * q[5];
+            double c22 = q[0] * q[4] - q[1] * q[1];
+
+            out[0] = -(c00 * q[3] + c01 * q[6] + c02 * q[8]) / det;
+            out[1] = -(c01 * q[3] + c11 * q[6] + c12 * q[8]) / det;
+            out[2] = -(c02 * q[3] + c12 * q[6] + c22 * q[8]) / det;
+
+            // A nearly singular quadric can put the minimum a long way off.
+            // Only trust it if it stays near the edge.
+            double mx = (positions[pa] + positions[pb]) * 0.5;
+            double my = (positions[pa + 1] + positions[pb + 1]) * 0.5;
+            double mz = (positions[pa + 2] + positions[pb + 2]) * 0.5;
+            double ex = positions[pa] - positions[pb];
+            double ey = positions[pa + 1] - positions[pb + 1];
+            double ez = positions[pa + 2] - positions[pb + 2];
+            double dx = out[0] - mx;
+            double dy = out[1] - my;
+            double dz = out[2] - mz;
+
+            solved = (dx * dx + dy * dy + dz * dz) <=
+                     (ex * ex + ey * ey + ez * ez);
+        }
+
+        if(solved)
+            return Math.max(quadricError(q, out), 0);
+
+        double best = Double.POSITIVE_INFINITY;
+
+        for(int i = 0; i < 3; i++)
+        {
+            double s = i * 0.5;
+            double x = positions[pa] + (positions[pb] - positions[pa]) * s;
+            double y = positions[pa + 1] + (positions[pb + 1] - positions[pa + 1]) * s;
+            double z = positions[pa + 2] + (positions[pb + 2] - positions[pa + 2]) * s;
+            double err = quadricError(q, x, y, z);
+
+            if(err < best)
+            {
+                best = err;
+                out[0] = x;
+                out[1] = y;
+                out[2] = z;
+            }
+        }
+
+        return Math.max(best, 0);
+    }
+
+    /**
+     * Collapse an edge if it is still safe to do so, moving the remaining
+     * vertex and adding its edges back into the heap with their new costs.
+     *
+     * @param a The first vertex of the edge
+     * @param b The second vertex of the edge
+     * @return true if the edge was collapsed
+     */
+    private boolean collapse(int a, int b)
+    {
+        // Keep the locked vertex, if there is one
+        int keep = locked[b] ? b : a;
+        int gone = (keep == a) ? b : a;
+
+        collapseCost(a, b, target);
+
+        if(!linkConditionHolds(keep, gone) ||
+           foldsFaces(gone, keep, target) ||
+           foldsFaces(keep, gone, target))
+            return false;
+
+        for(int c = cornerHead[gone]; c != -1; c = cornerNext[c])
+        {
+            int f = c / 3;
+
+            if(faceRemoved[f])
+                continue;
+
+            int base = f * 3;
+
+            if(faces[base] == keep || faces[base + 1] == keep ||
+               faces[base + 2] == keep)
+            {
+                faceRemoved[f] = true;
+                numLiveFaces--;
+            }
+            else
+            {
+                faces[c] = keep;
+            }
+        }
+
+        int pk = keep * 3;
+        positions[pk] = target[0];
+        positions[pk + 1] = target[1];
+        positions[pk + 2] = target[2];
+
+        int qk = keep * QUADRIC_SIZE;
+        int qg = gone * QUADRIC_SIZE;
+
+        for(int i = 0; i < QUADRIC_SIZE; i++)
+            quadrics[qk + i] += quadrics[qg + i];
+
+        stamps[keep]++;
+        stamps[gone] = -1;
+        boundary[keep] |= boundary[gone];
+
+        if(cornerHead[gone] != -1)
+        {
+            if(cornerHead[keep] == -1)
+                cornerHead[keep] = cornerHead[gone];
+            else
+                cornerNext[cornerTail[keep]] = cornerHead[gone];
+
+            cornerTail[keep] = cornerTail[gone];
+            cornerHead[gone] = -1;
+            cornerTail[gone] = -1;
+        }
+
+        // Drop the corners of removed faces while finding the neighbours
+        int mark = ++markValue;
+        int prev = -1;
+
+        for(int c = cornerHead[keep]; c != -1; c = cornerNext[c])
+        {
+            int f = c / 3;
+
+            if(faceRemoved[f])
+            {
+                if(prev == -1)
+                    cornerHead[keep] = cornerNext[c];
+                else
+                    cornerNext[prev] = cornerNext[c];
+
+                continue;
+            }
+
+            prev = c;
+
+            int base = f * 3;
+
+            for(int k = 0; k < 3; k++)
+            {
+                int w = faces[base + k];
+
+                if(w != keep && marks[w] != mark)
+                {
+                    marks[w] = mark;
+                    addEdge(keep, w);
+                }
+            }
+        }
+
+        cornerTail[keep] = prev;
+
+        return true;
+    }
+
+    /**
+     * Check that the only vertices the ends of an edge have in common are
+     * the ones opposite the edge in its faces. If there are more, collapsing
+     * the edge would pinch the surface. An edge inside the mesh that joins
+     * two boundary vertices would pinch the boundary in the same way.
+     */
+    private boolean linkConditionHolds(int a, int b)
+    {
+        int mark = ++markValue;
+        int shared = 0;
+
+        for(int c = cornerHead[a]; c != -1; c = cornerNext[c])
+        {
+            int f = c / 3;
+
+            if(faceRemoved[f])
+                continue;
+
+            int base = f * 3;
+            boolean has_b = false;
+
+            for(int k = 0; k < 3; k++)
+            {
+                int w = faces[base + k];
+                marks[w] = mark;
+                has_b |= (w == b);
+            }
+
+            if(has_b)
+                shared++;
+        }
+
+        if(shared == 0 || (shared > 1 && boundary[a] && boundary[b]))
+            return false;
+
+        int common_mark = ++markValue;
+        int common = 0;
+
+        for(int c = cornerHead[b]; c != -1; c = cornerNext[c])
+        {
+            int f = c / 3;
+
+            if(faceRemoved[f])
+                continue;
+
+            int base = f * 3;
+
+            for(int k = 0; k < 3; k++)
+            {
+                int w = faces[base + k];
+
+                if(w != a && w != b && marks[w] == mark)
+                {
+                    marks[w] = common_mark;
+                    common++;
+                }
+            }
+        }
+
+        return common == shared;
+    }
+
+    /**
+     * Check whether moving a vertex to a new position would fold over or
+     * flatten any of its faces that are not also faces of the other vertex.
+     *
+     * @param v The vertex to move
+     * @param other The other vertex of the edge
+     * @param pos The new position of the vertex
+     * @return true if a face would fold
+     */
+    private boolean foldsFaces(int v, int other, double[] pos)
+    {
+        double[] before = normalBefore;
+        double[] after = normalAfter;
+
+        for(int c = cornerHead[v]; c != -1; c = cornerNext[c])
+        {
+            int f = c / 3;
+
+            if(faceRemoved[f])
+                continue;
+
+            int base = f * 3;
+            int k = c - base;
+            int p1 = faces[base + (k + 1) % 3];
+            int p2 = faces[base + (k + 2) % 3];
+
+            if(p1 == other || p2 == other)
+                continue;
+
+            double len_before = faceNormal(positions, v * 3,
+                                           positions, p1 * 3,
+                                           positions, p2 * 3,
+                                           before);
+
+            double len_after = faceNormal(pos, 0,
+                                          positions, p1 * 3,
+                                          positions, p2 * 3,
+                                          after);
+
+            if(len_after == 0)
+                return true;
+
+            if(len_before == 0)
+                continue;
+
+            double dot = before[0] * after[0] +
+                         before[1] * after[1] +
+                         before[2] * after[2];
+
+            if(dot < MIN_NORMAL_COS * len_before * len_after)
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Write the remaining faces and vertices back into the geometry.
+     */
+    private void writeResult(GeometryData data, int texSize)
+    {
+        int num_welded = stamps.length;
+        int[] new_index = new int[num_welded];
+        Arrays.fill(new_index, -1);
+
+        int[] indexes = new int[numLiveFaces * 3];
+        int num_faces = faceRemoved.length;
+        int num_verts = 0;
+        int idx = 0;
+
+        for(int f = 0; f < num_faces; f++)
+        {
+            if(faceRemoved[f])
+                continue;
+
+            for(int k = 0; k < 3; k++)
+            {
+                int v = faces[f * 3 + k];
+
+                if(new_index[v] == -1)
+                    new_index[v] = num_verts++;
+
+                indexes[idx++] = new_index[v];
+            }
+        }
+
+        float[] coords = new float[num_verts * 3];
+        float[] normals = null;
+        float[] tex = null;
+        float[] colors = null;
+
+        if(data.normals != null)
+            normals = new float[num_verts * 3];
+
+        if(texSize != 0)
+            tex = new float[num_verts * texSize];
+
+        if(data.colors != null)
+            colors = new float[num_verts * 3];
+
+        for(int v = 0; v < num_welded; v++)
+        {
+            int out = new_index[v];
+
+            if(out == -1)
+                continue;
+
+            int src = sourceVertex[v];
+
+            coords[out * 3] = (float)positions[v * 3];
+            coords[out * 3 + 1] = (float)positions[v * 3 + 1];
+            coords[out * 3 + 2] = (float)positions[v * 3 + 2];
+
+            if(normals != null)
+                System.arraycopy(data.normals, src * 3, normals, out * 3, 3);
+
+            if(tex != null)
+                System.arraycopy(data.textureCoordinates,
+                                 src * texSize,
+                                 tex,
+                                 out * texSize,
+                                 texSize);
+
+            if(colors != null)
+                System.arraycopy(data.colors, src * 3, colors, out * 3, 3);
+        }
+
+        data.geometryType = GeometryData.INDEXED_TRIANGLES;
+        data.vertexCount = num_verts;
+        data.coordinates = coords;
+        data.normals = normals;
+        data.colors = colors;
+        data.indexes = indexes;
+        data.indexesCount = indexes.length;
+        data.normalIndexes = null;
+        data.texCoordIndexes = null;
+        data.colorIndexes = null;
+
+        if(texSize != 0)
+            data.textureCoordinates = tex;
+    }
+
+    /**
+     * Release the working arrays so a large mesh is not kept in memory
+     * between calls.
+     */
+    private void clearWorkingState()
+    {
+        positions = null;
+        quadrics = null;
+        sourceVertex = null;
+        locked = null;
+        boundary = null;
+        stamps = null;
+        faces = null;
+        faceRemoved = null;
+        cornerHead = null;
+        cornerTail = null;
+        cornerNext = null;
+        marks = null;
+        heap = null;
+        entries = null;
+        entryCost = null;
+        freeEntries = null;
+        numFreeEntries = 0;
+        numEntries = 0;
+        heapSize = 0;
+    }
+
+    /**
+     * Evaluate a quadric at a position.
+     */
+    private static double quadricError(double[] q, double[] p)
+    {
+        return quadricError(q, p[0], p[1], p[2]);
+    }
+
+    /**
+     * Evaluate a quadric at a position.
+     */
+    private static double quadricError(double[] q,
+                                       double x,
+                                       double y,
+                                       double z)
+    {
+        return q[0] * x * x + 2 * q[1] * x * y + 2 * q[2] * x * z +
+               2 * q[3] * x + q[4] * y * y + 2 * q[5] * y * z +
+               2 * q[6] * y + q[7] * z * z + 2 * q[8] * z + q[9];
+    }
+
+    /**
+     * Calculate the unnormalised normal of a triangle.
+     *
+     * @return The length of the normal, which is twice the area
+     */
+    private static double faceNormal(double[] c0, int p0,
+                                     double[] c1, int p1,
+                                     double[] c2, int p2,
+                                     double[] out)
+    {
+        double ax = c1[p1] - c0[p0];
+        double ay = c1[p1 + 1] - c0[p0 + 1];
+        double az = c1[p1 + 2] - c0[p0 + 2];
+        double bx = c2[p2] - c0[p0];
+        double by = c2[p2 + 1] - c0[p0 + 1];
+        double bz = c2[p2 + 2] - c0[p0 + 2];
+
+        out[0] = ay * bz - az * by;
+        out[1] = az * bx - ax * bz;
+        out[2] = ax * by - ay * bx;
+
+        return Math.sqrt(out[0] * out[0] + out[1] * out[1] + out[2] * out[2]);
+    }
+
+    /**
+     * Create a key for an edge that is the same in either direction.
+     */
+    private static long edgeKey(int a, int b)
+    {
+        int lo = Math.min(a, b);
+        int hi = Math.max(a, b);
+
+        return ((long)lo << 32) | hi;
+    }
+}
@@ -10,10 +10,13 @@
 package org.j3d.geom;
 
 // External imports
-// None
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
 
 // Local imports
 import org.j3d.maths.vector.Vector3d;
+import org.j3d.util.ForkJoinUtils;
+import org.j3d.util.RangeProcessor;
 
 /**
  * A utility class that can be used to modify or create normal values of an
@@ -24,12 +27,30 @@ import org.j3d.maths.vector.Vector3d;
  * normal class. Sometimes you have a lot of different code all wanting to
  * do similar modifications simultaneously and so having a single static-only
  * class with synchronised methods would be very bad for performance.
+ * <p>
+ *
+ * The smooth normal generation methods do not use any of the instance
+ * working state, so they are safe to call on the shared instance from
+ * multiple threads. They generate per-vertex normals for an arbitrary
+ * triangle mesh by averaging the normals of the faces around each vertex,
+ * weighted by either face area or the angle of the face at the vertex.
+ * Faces that meet at an edge with normals differing by more than a crease
+ * angle are not averaged together, so a vertex on a hard edge ends up with
+ * more than one normal. The face and vertex passes are run in parallel over
+ * chunks of the mesh using a fork/join pool.
  *
  * @author Justin Couch
  * @version $Revision: 1.4 $
  */
 public class NormalUtils
 {
+    /**
+     * Triangles or vertices per piece when the smooth normal passes are
+     * split over a pool. The per item work is small, so pieces need to be
+     * fairly large to cover the cost of handing them out.
+     */
+    private static final int MIN_SMOOTH_CHUNK = 512;
+
     /** The shared singleton instance, if needed */
     private static NormalUtils sharedInstance;
 
@@ -364,4 +385,735 @@ public class NormalUtils
             normals[offset][2] = 0;
         }
     }
+
+    /**
+     * Create smooth normals for a list of indexed triangles using the shared
+     * fork/join pool from {@link ForkJoinUtils}. See the full version of
+     * this method for details of the parameters.
+     *
+     * @param coords The coordinate array to read values from
+     * @param indexes The vertex indices of each triangle
+     * @param numTris The number of triangles to use
+     * @param creaseAngle The crease angle in radians
+     * @param angleWeighted true to weight face normals by the angle at the
+     *   vertex, false to weight them by face area
+     * @param normalIndexes Array to write the normal index of each triangle
+     *   corner into. Must be at least numTris * 3 long
+     * @return The packed list of normals, flat [x, y, z]
+     */
+    public float[] createSmoothNormals(float[] coords,
+                                       int[] indexes,
+                                       int numTris,
+                                       float creaseAngle,
+                                       boolean angleWeighted,
+                                       int[] normalIndexes)
+    {
+        return createSmoothNormals(coords,
+                                   indexes,
+                                   numTris,
+                                   creaseAngle,
+                                   angleWeighted,
+                                   normalIndexes,
+                                   ForkJoinUtils.getSharedPool());
+    }
+
+    /**
+     * Create smooth normals for a list of indexed triangles. The faces
+     * around each vertex are split into smoothing groups, where two faces
+     * that share an edge are in the same group if their normals are within
+     * the crease angle. Every triangle corner is given the weighted average
+     * normal of its face's group. The corners of one group share a single
+     * entry in the returned array, so the normal count is the vertex count
+     * when there are no creases, and more when vertices have to be split
+     * along hard edges. Degenerate triangles
+     * contribute nothing. A corner with no usable faces gets a zero normal.
+     * <p>
+     *
+     * A crease angle of zero gives faceted shading, while a value of PI or
+     * more gives fully smooth shading.
+     *
+     * @param coords The coordinate array to read values from
+     * @param indexes The vertex indices of each triangle
+     * @param numTris The number of triangles to use
+     * @param creaseAngle The crease angle in radians
+     * @param angleWeighted true to weight face normals by the angle at the
+     *   vertex, false to weight them by face area
+     * @param normalIndexes Array to write the normal index of each triangle
+     *   corner into. Must be at least numTris * 3 long
+     * @param pool The pool to run the work on or null for the calling thread
+     * @return The packed list of normals, flat [x, y, z]
+     * @throws InvalidArraySizeException One of the arrays is too small
+     */
+    public float[] createSmoothNormals(float[] coords,
+                                       int[] indexes,
+                                       int numTris,
+                                       float creaseAngle,
+                                       boolean angleWeighted,
+                                       int[] normalIndexes,
+                                       ForkJoinPool pool)
+    {
+        int num_corners = numTris * 3;
+
+        if(indexes.length < num_corners)
+            throw new InvalidArraySizeException("Indexes",
+                                                num_corners,
+                                                indexes.length);
+
+        if(normalIndexes.length < num_corners)
+            throw new InvalidArraySizeException("Normal Indexes",
+                                                num_corners,
+                                                normalIndexes.length);
+
+        int num_verts = 0;
+
+        for(int i = 0; i < num_corners; i++)
+        {
+            if(indexes[i] >= num_verts)
+                num_verts = indexes[i] + 1;
+        }
+
+        if(coords.length < num_verts * 3)
+            throw new InvalidArraySizeException("Coordinates",
+                                                num_verts * 3,
+                                                coords.length);
+
+        final SmoothNormalData data = new SmoothNormalData();
+        data.coords = coords;
+        data.indexes = indexes;
+        data.numTris = numTris;
+        data.numVertices = num_verts;
+        data.angleWeighted = angleWeighted;
+        data.cosCrease = (creaseAngle >= Math.PI) ?
+                         -2 :
+                         (float)Math.cos(creaseAngle);
+
+        data.faceNormals = new float[num_corners];
+        data.cornerWeights = new float[num_corners];
+        data.cornerNormals = new float[num_corners * 3];
+        data.cornerGroups = new int[num_corners];
+
+        RangeProcessor face_pass = new RangeProcessor()
+        {
+            @Override
+            public void processRange(int start, int end)
+            {
+                processFaces(data, start, end);
+            }
+        };
+
+        ForkJoinUtils.forRange(pool, 0, numTris, MIN_SMOOTH_CHUNK, face_pass);
+
+        // Build the list of corners that use each vertex. Counting sort, so
+        // each list is in corner order, which the vertex pass relies on.
+        int[] vtx_start = new int[num_verts + 1];
+
+        for(int i = 0; i < num_corners; i++)
+            vtx_start[indexes[i] + 1]++;
+
+        for(int i = 0; i < num_verts; i++)
+            vtx_start[i + 1] += vtx_start[i];
+
+        int[] fill = Arrays.copyOf(vtx_start, num_verts);
+        int[] vtx_corners = new int[num_corners];
+
+        for(int i = 0; i < num_corners; i++)
+            vtx_corners[fill[indexes[i]]++] = i;
+
+        data.vertexStart = vtx_start;
+        data.vertexCorners = vtx_corners;
+
+        RangeProcessor vertex_pass = new RangeProcessor()
+        {
+            @Override
+            public void processRange(int start, int end)
+            {
+                processVertices(data, start, end);
+            }
+        };
+
+        ForkJoinUtils.forRange(pool, 0, num_verts, MIN_SMOOTH_CHUNK,
+                               vertex_pass);
+
+        // Give each smoothing group of each vertex a single entry. Groups
+        // are numbered in corner order, so a group's first corner is the
+        // one whose number is the next unused one.
+        float[] corner_normals = data.cornerNormals;
+        int[] corner_groups = data.cornerGroups;
+        float[] ret_val = new float[num_corners * 3];
+        int num_normals = 0;
+
+        for(int v = 0; v < num_verts; v++)
+        {
+            int first = vtx_start[v];
+            int last = vtx_start[v + 1];
+            int base = num_normals;
+
+            for(int i = first; i < last; i++)
+            {
+                int c = vtx_corners[i];
+                int match = base + corner_groups[c];
+
+                if(match == num_normals)
+                {
+                    int n = c * 3;
+                    int out = num_normals++ * 3;
+                    ret_val[out] = corner_normals[n];
+                    ret_val[out + 1] = corner_normals[n + 1];
+                    ret_val[out + 2] = corner_normals[n + 2];
+                }
+
+                normalIndexes[c] = match;
+            }
+        }
+
+        return Arrays.copyOf(ret_val, num_normals * 3);
+    }
+
+    /**
+     * Create smooth normals for the geometry using the shared fork/join pool
+     * from {@link ForkJoinUtils}. See the full version of this method for
+     * details of the parameters.
+     *
+     * @param data The geometry to generate normals for
+     * @param creaseAngle The crease angle in radians
+     * @param angleWeighted true to weight face normals by the angle at the
+     *   vertex, false to weight them by face area
+     */
+    public void createSmoothNormals(GeometryData data,
+                                    float creaseAngle,
+                                    boolean angleWeighted)
+    {
+        createSmoothNormals(data,
+                            creaseAngle,
+                            angleWeighted,
+                            ForkJoinUtils.getSharedPool());
+    }
+
+    /**
+     * Create smooth normals for the geometry, replacing any normals it
+     * already has. Only triangle and indexed triangle geometry are supported.
+     * <p>
+     *
+     * For unindexed triangles, vertices with identical positions are treated
+     * as shared for the purpose of smoothing and every vertex is given its
+     * own normal. For indexed triangles, if any vertex has to be split along
+     * a crease, the coordinates, texture coordinates and colours of that
+     * vertex are duplicated and the index list is rewritten to suit, so the
+     * geometry may gain vertices.
+     *
+     * @param data The geometry to generate normals for
+     * @param creaseAngle The crease angle in radians
+     * @param angleWeighted true to weight face normals by the angle at the
+     *   vertex, false to weight them by face area
+     * @param pool The pool to run the work on or null for the calling thread
+     * @throws UnsupportedTypeException The geometry type is not triangles or
+     *   indexed triangles
+     */
+    public void createSmoothNormals(GeometryData data,
+                                    float creaseAngle,
+                                    boolean angleWeighted,
+                                    ForkJoinPool pool)
+    {
+        switch(data.geometryType)
+        {
+            case GeometryData.TRIANGLES:
+                smoothTriangles(data, creaseAngle, angleWeighted, pool);
+                break;
+
+            case GeometryData.INDEXED_TRIANGLES:
+                smoothIndexedTriangles(data, creaseAngle, angleWeighted, pool);
+                break;
+
+            default:
+                throw new UnsupportedTypeException("Unsupported geometry type " +
+                                                   "for smooth normals: " +
+                                                   data.geometryType);
+        }
+
+        data.geometryComponents |= GeometryData.NORMAL_DATA;
+    }
+
+    /**
+     * Generate the smooth normals for unindexed triangles by welding
+     * coincident vertices together first.
+     */
+    private void smoothTriangles(GeometryData data,
+                                 float creaseAngle,
+                                 boolean angleWeighted,
+                                 ForkJoinPool pool)
+    {
+        int num_verts = data.vertexCount;
+        int[] weld = weldVertices(data.coordinates, num_verts);
+        int[] normal_idx = new int[num_verts];
+
+        float[] normals = createSmoothNormals(data.coordinates,
+                                              weld,
+                                              num_verts / 3,
+                                              creaseAngle,
+                                              angleWeighted,
+                                              normal_idx,
+                                              pool);
+
+        if(data.normals == null || data.normals.length < num_verts * 3)
+            data.normals = new float[num_verts * 3];
+
+        for(int i = 0; i < num_verts; i++)
+        {
+            int n = normal_idx[i] * 3;
+            data.normals[i * 3] = normals[n];
+            data.normals[i * 3 + 1] = normals[n + 1];
+            data.normals[i * 3 + 2] = normals[n + 2];
+        }
+    }
+
+    /**
+     * Generate the smooth normals for indexed triangles, splitting vertices
+     * where needed.
+     */
+    private void smoothIndexedTriangles(GeometryData data,
+                                        float creaseAngle,
+                                        boolean angleWeighted,
+                                        ForkJoinPool pool)
+    {
+        int num_corners = data.indexesCount;
+        int[] normal_idx = new int[num_corners];
+
+        float[] normals = createSmoothNormals(data.coordinates,
+                                              data.indexes,
+                                              num_corners / 3,
+                                              creaseAngle,
+                                              angleWeighted,
+                                              normal_idx,
+                                              pool);
+
+        int num_normals = normals.length / 3;
+
+        // Each normal belongs to exactly one vertex, so the normal index is
+        // also a valid new vertex index. Record where each one came from.
+        int[] source_vtx = new int[num_normals];
+
+        for(int i = 0; i < num_corners; i++)
+            source_vtx[normal_idx[i]] = data.indexes[i];
+
+        boolean split = false;
+        int num_verts = data.vertexCount;
+        int[] vtx_normal = new int[num_verts];
+        Arrays.fill(vtx_normal, -1);
+
+        for(int i = 0; i < num_normals && !split; i++)
+        {
+            int v = source_vtx[i];
+
+            if(vtx_normal[v] != -1)
+                split = true;
+            else
+                vtx_normal[v] = i;
+        }
+
+        if(!split)
+        {
+            if(data.normals == null || data.normals.length < num_verts * 3)
+                data.normals = new float[num_verts * 3];
+
+            for(int v = 0; v < num_verts; v++)
+            {
+                int n = vtx_normal[v] * 3;
+
+                if(n < 0)
+                {
+                    data.normals[v * 3] = 0;
+                    data.normals[v * 3 + 1] = 0;
+                    data.normals[v * 3 + 2] = 0;
+                }
+                else
+                {
+                    data.normals[v * 3] = normals[n];
+                    data.normals[v * 3 + 1] = normals[n + 1];
+                    data.normals[v * 3 + 2] = normals[n + 2];
+                }
+            }
+
+            return;
+        }
+
+        data.coordinates = copyVertexAttribute(data.coordinates,
+                                               3,
+                                               source_vtx);
+
+        if(data.textureCoordinates != null)
+        {
+            int size =
+                ((data.geometryComponents & GeometryData.TEXTURE_3D_DATA) != 0) ?
+                3 : 2;
+
+            data.textureCoordinates =
+                copyVertexAttribute(data.textureCoordinates, size, source_vtx);
+        }
+
+        if(data.colors != null)
+            data.colors = copyVertexAttribute(data.colors, 3, source_vtx);
+
+        data.normals = normals;
+        data.vertexCount = num_normals;
+        System.arraycopy(normal_idx, 0, data.indexes, 0, num_corners);
+    }
+
+    /**
+     * Create a new attribute array by picking values out of the source
+     * array with the given vertex mapping.
+     *
+     * @param src The source values
+     * @param size The number of values per vertex
+     * @param sourceVertex The source vertex for each new vertex
+     * @return The new array of values
+     */
+    private static float[] copyVertexAttribute(float[] src,
+                                               int size,
+                                               int[] sourceVertex)
+    {
+        float[] ret_val = new float[sourceVertex.length * size];
+
+        for(int i = 0; i < sourceVertex.length; i++)
+            System.arraycopy(src, sourceVertex[i] * size, ret_val, i * size, size);
+
+        return ret_val;
+    }
+
+    /**
+     * Map every vertex to the first vertex that has exactly the same
+     * position. Uses an open addressing hash over the coordinate bits.
+     *
+     * @param coords The coordinates to weld
+     * @param numVerts The number of vertices to use
+     * @return The index of the first matching vertex for each vertex
+     */
+    private static int[] weldVertices(float[] coords, int numVerts)
+    {
+        int size = Integer.highestOneBit(Math.max(numVerts, 1) * 2) * 2;
+        int mask = size - 1;
+        int[] table = new int[size];
+        Arrays.fill(table, -1);
+
+        int[] ret_val = new int[numVerts];
+
+        for(int i = 0; i < numVerts; i++)
+        {
+            int p = i * 3;
+
+            // +0.0f makes -0 and 0 hash the same
+            int hx = Float.floatToIntBits(coords[p] + 0.0f);
+            int hy = Float.floatToIntBits(coords[p + 1] + 0.0f);
+            int hz = Float.floatToIntBits(coords[p + 2] + 0.0f);
+
+            int h = hx * 73856093 ^ hy * 19349663 ^ hz * 83492791;
+            h ^= h >>> 16;
+            int slot = h & mask;
+
+            while(true)
+            {
+                int existing = table[slot];
+
+                if(existing == -1)
+                {
+                    table[slot] = i;
+                    ret_val[i] = i;
+                    break;
+                }
+
+                int e = existing * 3;
+
+                if(coords[e] == coords[p] &&
+                   coords[e + 1] == coords[p + 1] &&
+                   coords[e + 2] == coords[p + 2])
+                {
+                    ret_val[i] = existing;
+                    break;
+                }
+
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        return ret_val;
+    }
+
+    /**
+     * Calculate the face normals and corner weights for a range of
+     * triangles. Only the slots of the triangles in the range are written.
+     *
+     * @param data The shared generation state
+     * @param start The first triangle, inclusive
+     * @param end The last triangle, exclusive
+     */
+    private static void processFaces(SmoothNormalData data,
+                                     int start,
+                                     int end)
+    {
+        float[] coords = data.coords;
+        int[] indexes = data.indexes;
+        float[] face_normals = data.faceNormals;
+        float[] weights = data.cornerWeights;
+
+        for(int t = start; t < end; t++)
+        {
+            int c = t * 3;
+            int p0 = indexes[c] * 3;
+            int p1 = indexes[c + 1] * 3;
+            int p2 = indexes[c + 2] * 3;
+
+            double ax = coords[p1] - coords[p0];
+            double ay = coords[p1 + 1] - coords[p0 + 1];
+            double az = coords[p1 + 2] - coords[p0 + 2];
+
+            double bx = coords[p2] - coords[p0];
+            double by = coords[p2 + 1] - coords[p0 + 1];
+            double bz = coords[p2 + 2] - coords[p0 + 2];
+
+            double nx = ay * bz - az * by;
+            double ny = az * bx - ax * bz;
+            double nz = ax * by - ay * bx;
+
+            double len = Math.sqrt(nx * nx + ny * ny + nz * nz);
+
+            if(len == 0)
+            {
+                // Degenerate triangle. Contributes nothing to anyone.
+                face_normals[c] = 0;
+                face_normals[c + 1] = 0;
+                face_normals[c + 2] = 0;
+                weights[c] = 0;
+                weights[c + 1] = 0;
+                weights[c + 2] = 0;
+                continue;
+            }
+
+            face_normals[c] = (float)(nx / len);
+            face_normals[c + 1] = (float)(ny / len);
+            face_normals[c + 2] = (float)(nz / len);
+
+            if(!data.angleWeighted)
+            {
+                // Cross product length is twice the area. The factor of two
+                // is common to all faces so it can be ignored.
+                float w = (float)len;
+                weights[c] = w;
+                weights[c + 1] = w;
+                weights[c + 2] = w;
+            }
+            else
+            {
+                double cx = coords[p2] - coords[p1];
+                double cy = coords[p2 + 1] - coords[p1 + 1];
+                double cz = coords[p2 + 2] - coords[p1 + 2];
+
+                double la = Math.sqrt(ax * ax + ay * ay + az * az);
+                double lb = Math.sqrt(bx * bx + by * by + bz * bz);
+                double lc = Math.sqrt(cx * cx + cy * cy + cz * cz);
+
+                weights[c] = (float)cornerAngle(ax, ay, az, la,
+                                                bx, by, bz, lb);
+                weights[c + 1] = (float)cornerAngle(-ax, -ay, -az, la,
+                                                    cx, cy, cz, lc);
+                weights[c + 2] = (float)(Math.PI - weights[c] - weights[c + 1]);
+            }
+        }
+    }
+
+    /**
+     * Accumulate the normal for every corner of a range of vertices. The
+     * faces around each vertex are sorted into smoothing groups. Two faces
+     * that share an edge at the vertex are in the same group if their
+     * normals are within the crease angle, and groups are joined through
+     * chains of such faces. Each group's weighted face normals are summed
+     * once and given to all of its corners, and the groups are numbered in
+     * the order of their first corner in the vertex's list.
+     * <p>
+     *
+     * Faces are matched by sorting their edges at the vertex, so the work
+     * for a vertex grows as k log k with its face count rather than as the
+     * square, which matters at fan centres and poles.
+     *
+     * @param data The shared generation state
+     * @param start The first vertex, inclusive
+     * @param end The last vertex, exclusive
+     */
+    private static void processVertices(SmoothNormalData data,
+                                        int start,
+                                        int end)
+    {
+        int[] indexes = data.indexes;
+        int[] vtx_start = data.vertexStart;
+        int[] vtx_corners = data.vertexCorners;
+        float[] face_normals = data.faceNormals;
+        float[] weights = data.cornerWeights;
+        float[] corner_normals = data.cornerNormals;
+        int[] corner_groups = data.cornerGroups;
+        float cos_crease = data.cosCrease;
+        boolean all_smooth = cos_crease < -1;
+
+        // Scratch space for one vertex, grown to the largest face count.
+        // Each range has its own, as ranges run on separate threads.
+        int capacity = 16;
+        long[] edges = new long[capacity * 2];
+        int[] parent = new int[capacity];
+        int[] label = new int[capacity];
+        double[] sums = new double[capacity * 3];
+
+        for(int v = start; v < end; v++)
+        {
+            int first = vtx_start[v];
+            int num = vtx_start[v + 1] - first;
+
+            if(num > capacity)
+            {
+                capacity = Integer.highestOneBit(num) * 2;
+                edges = new long[capacity * 2];
+                parent = new int[capacity];
+                label = new int[capacity];
+                sums = new double[capacity * 3];
+            }
+
+            for(int i = 0; i < num; i++)
+                parent[i] = all_smooth ? 0 : i;
+
+            if(!all_smooth)
+            {
+                // Key each face by the other vertex of both of its edges at
+                // this vertex. After sorting, faces sharing an edge are next
+                // to each other.
+                for(int i = 0; i < num; i++)
+                {
+                    int c = vtx_corners[first + i];
+                    int base = c - c % 3;
+                    int next = indexes[base + (c - base + 1) % 3];
+                    int prev = indexes[base + (c - base + 2) % 3];
+
+                    edges[i * 2] = ((long)next << 32) | i;
+                    edges[i * 2 + 1] = ((long)prev << 32) | i;
+                }
+
+                Arrays.sort(edges, 0, num * 2);
+
+                for(int j = 1; j < num * 2; j++)
+                {
+                    if((edges[j] >>> 32) != (edges[j - 1] >>> 32))
+                        continue;
+
+                    int a = (int)edges[j - 1];
+                    int b = (int)edges[j];
+                    int fa = (vtx_corners[first + a] / 3) * 3;
+                    int fb = (vtx_corners[first + b] / 3) * 3;
+
+                    float dot = face_normals[fa] * face_normals[fb] +
+                                face_normals[fa + 1] * face_normals[fb + 1] +
+                                face_normals[fa + 2] * face_normals[fb + 2];
+
+                    if(dot < cos_crease)
+                        continue;
+
+                    int root_a = findRoot(parent, a);
+                    int root_b = findRoot(parent, b);
+
+                    // Keep the earliest face as the root so that it is also
+                    // the first corner of its group
+                    if(root_a < root_b)
+                        parent[root_b] = root_a;
+                    else if(root_b < root_a)
+                        parent[root_a] = root_b;
+                }
+            }
+
+            for(int i = 0; i < num; i++)
+            {
+                label[i] = -1;
+                sums[i * 3] = 0;
+                sums[i * 3 + 1] = 0;
+                sums[i * 3 + 2] = 0;
+            }
+
+            for(int i = 0; i < num; i++)
+            {
+                int c = vtx_corners[first + i];
+                int f = (c / 3) * 3;
+                int g = findRoot(parent, i) * 3;
+                float w = weights[c];
+
+                sums[g] += face_normals[f] * w;
+                sums[g + 1] += face_normals[f + 1] * w;
+                sums[g + 2] += face_normals[f + 2] * w;
+            }
+
+            int num_groups = 0;
+
+            for(int i = 0; i < num; i++)
+            {
+                int root = findRoot(parent, i);
+
+                if(label[root] == -1)
+                    label[root] = num_groups++;
+
+                int c = vtx_corners[first + i];
+                int g = root * 3;
+                int n = c * 3;
+                double len = Math.sqrt(sums[g] * sums[g] +
+                                       sums[g + 1] * sums[g + 1] +
+                                       sums[g + 2] * sums[g + 2]);
+
+                corner_groups[c] = label[root];
+
+                if(len != 0)
+                {
+                    corner_normals[n] = (float)(sums[g] / len);
+                    corner_normals[n + 1] = (float)(sums[g + 1] / len);
+                    corner_normals[n + 2] = (float)(sums[g + 2] / len);
+                }
+                else
+                {
+                    corner_normals[n] = 0;
+                    corner_normals[n + 1] = 0;
+                    corner_normals[n + 2] = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Find the root of an item in a union-find forest, halving the path on
+     * the way.
+     */
+    private static int findRoot(int[] parent, int item)
+    {
+        while(parent[item] != item)
+        {
+            parent[item] = parent[parent[item]];
+            item = parent[item];
+        }
+
+        return item;
+    }
+
+    /**
+     * Calculate the angle between two vectors with known lengths.
+     */
+    private static double cornerAngle(double ax,
+                                      double ay,
+                                      double az,
+                                      double la,
+                                      double bx,
+                                      double by,
+                                      double bz,
+                                      double lb)
+    {
+        if(la == 0 || lb == 0)
+            return 0;
+
+        double cos = (ax * bx + ay * by + az * bz) / (la * lb);
+
+        if(cos > 1)
+            cos = 1;
+        else if(cos < -1)
+            cos = -1;
+
+        return Math.acos(cos);
+    }
 }
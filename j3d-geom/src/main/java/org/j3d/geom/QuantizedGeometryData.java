@@ -0,0 +1,95 @@
+/*
+ * j3d.org Copyright (c) 2001-2015
+ *                                 Java Source
+ *
+ *  This source is licensed under the GNU LGPL v2.1
+ *  Please read docs/LGPL.txt for more information
+ *
+ *  This software comes with the standard NO WARRANTY disclaimer for any
+ *  purpose. Use it at your own risk. If there's a problem you get to fix it.
+ */
+
+package org.j3d.geom;
+
+// External imports
+// None
+
+// Local imports
+// None
+
+/**
+ * Compact storage of the vertex data from a {@link GeometryData}.
+ * <p>
+ *
+ * Positions are held as 16 bit unsigned values spread across the bounding
+ * box of the geometry. Normals are octahedral encoded into two 16 bit
+ * signed values. Texture coordinates are held as 16 bit half floats. That
+ * is 14 bytes for a vertex with a position, normal and 2D texture
+ * coordinate, against 32 bytes as floats. Colours, indexes and strip counts
+ * are not compressed.
+ * <p>
+ *
+ * Instances are filled and read by {@link GeometryQuantizer}, which also
+ * describes the error bounds of each encoding. The 16 bit values are all
+ * held in <code>short</code> arrays, so positions must be read as unsigned
+ * with <code>value &amp; 0xFFFF</code>.
+ */
+public class QuantizedGeometryData
+{
+    /** The type of geometry, from the GeometryData constants */
+    public int geometryType;
+
+    /** The sub type of geometry, copied from the source */
+    public int geometrySubType;
+
+    /** The components held, from the GeometryData flags */
+    public int geometryComponents;
+
+    /** The number of vertices held */
+    public int vertexCount;
+
+    /**
+     * The position of the lowest corner of the bounding box. A position
+     * value q decodes to offset + q * scale on each axis.
+     */
+    public float[] positionOffset;
+
+    /** The size of one step of the 16 bit position on each axis */
+    public float[] positionScale;
+
+    /** The quantized positions, 3 unsigned values per vertex */
+    public short[] coordinates;
+
+    /** The octahedral encoded normals, 2 values per vertex, or null */
+    public short[] normals;
+
+    /**
+     * The half float texture coordinates or null. 2 or 3 values per vertex,
+     * depending on the texture flag in the components.
+     */
+    public short[] textureCoordinates;
+
+    /** The colours, shared with the source, or null */
+    public float[] colors;
+
+    /** The number of items stored in the indexes array */
+    public int indexesCount;
+
+    /** The coordinate indexes, shared with the source, or null */
+    public int[] indexes;
+
+    /** The number of items stored in the strip counts */
+    public int numStrips;
+
+    /** The strip counts, shared with the source, or null */
+    public int[] stripCounts;
+
+    /**
+     * Create a new empty instance.
+     */
+    public QuantizedGeometryData()
+    {
+        positionOffset = new float[3];
+        positionScale = new float[3];
+    }
+}
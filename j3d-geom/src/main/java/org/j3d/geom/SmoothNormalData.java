@@ -0,0 +1,69 @@
+/*
+ * j3d.org Copyright (c) 2001-2015
+ *                                 Java Source
+ *
+ *  This source is licensed under the GNU LGPL v2.1
+ *  Please read docs/LGPL.txt for more information
+ *
+ *  This software comes with the standard NO WARRANTY disclaimer for any
+ *  purpose. Use it at your own risk. If there's a problem you get to fix it.
+ */
+
+package org.j3d.geom;
+
+// External imports
+// None
+
+// Local imports
+// None
+
+/**
+ * Working state shared between the passes of the smooth normal generation
+ * in {@link NormalUtils}.
+ * <p>
+ *
+ * A corner is one vertex reference of one triangle, so triangle t owns
+ * corners 3t, 3t + 1 and 3t + 2. All per-corner and per-face arrays are
+ * indexed that way.
+ */
+class SmoothNormalData
+{
+    /** Vertex coordinates, flat [x, y, z] */
+    float[] coords;
+
+    /** Vertex index of each corner */
+    int[] indexes;
+
+    /** Number of triangles being processed */
+    int numTris;
+
+    /** Number of vertices referenced */
+    int numVertices;
+
+    /** Cosine of the crease angle */
+    float cosCrease;
+
+    /** true to weight by corner angle, false to weight by face area */
+    boolean angleWeighted;
+
+    /** Unit normal of each face, flat [x, y, z] */
+    float[] faceNormals;
+
+    /** Weight of each corner */
+    float[] cornerWeights;
+
+    /** Start of the corner list for each vertex, plus one end marker */
+    int[] vertexStart;
+
+    /** Corner lists for all vertices, indexed by vertexStart */
+    int[] vertexCorners;
+
+    /** The resulting normal of each corner, flat [x, y, z] */
+    float[] cornerNormals;
+
+    /**
+     * Smoothing group of each corner, numbered from 0 within its vertex in
+     * the order the groups first appear in the vertex's corner list
+     */
+    int[] cornerGroups;
+}
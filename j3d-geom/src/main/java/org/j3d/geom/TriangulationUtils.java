@@ -34,6 +34,14 @@ package org.j3d.geom;
  *
  * Seidel's algorithm is described here:
  * http://www.cs.unc.edu/~dm/CODE/GEM/chapter.html
+ * <p>
+ *
+ * For very large concave polygons, such as GIS coastlines and building
+ * footprints with tens of thousands of vertices, the plain ear clipping scan
+ * becomes too slow. Setting a z-order threshold switches polygons of that
+ * size or more to an ear clipper that indexes the vertices with a Morton
+ * code spatial hash, so each ear test only looks at nearby points. The same
+ * clipper is used by {@link #triangulateConcavePolygonWithHoles}.
  *
  * @author Justin Couch, Eric Fickenscher
  * @version $Revision: 1.8 $
@@ -52,6 +60,9 @@ public class TriangulationUtils
     /** Initialisation size stored for the ecTriangulator */
     private int initSize;
 
+    /** Vertex count to switch to z-order hashed ear clipping, 0 for never */
+    private int zOrderThreshold;
+
     /**
      * Construct a new instance of the triangulation utilities. Assumes a
      * default max polygon size of 6 vertices.
@@ -75,6 +86,32 @@ public class TriangulationUtils
         initSize = size;
     }
 
+    /**
+     * Set the vertex count at which concave polygons are triangulated with
+     * the z-order hashed ear clipper rather than the plain scan. A value of
+     * zero disables the hashed mode, which is the default. Somewhere around
+     * 64 to 128 vertices is a good value for large polygon data sets.
+     *
+     * @param size The minimum vertex count to use the hashed mode for
+     */
+    public void setZOrderThreshold(int size)
+    {
+        zOrderThreshold = size;
+
+        if(ecTriangulator != null)
+            ecTriangulator.setZOrderThreshold(size);
+    }
+
+    /**
+     * Get the vertex count at which the z-order hashed ear clipper is used.
+     *
+     * @return The current threshold, zero for disabled
+     */
+    public int getZOrderThreshold()
+    {
+        return zOrderThreshold;
+    }
+
     /**
      * Triangulate a simple polygon that may have zero or more holes in it.
      * There is no requirement for the polygon to be concave, but it will be
@@ -125,7 +162,7 @@ public class TriangulationUtils
                                          float[] normal)
     {
         if(ecTriangulator == null)
-            ecTriangulator = new EarCutTriangulator(initSize);
+            createEarCutTriangulator();
 
         return ecTriangulator.triangulateConcavePolygon(coords,
                                                         startIndex,
@@ -165,7 +202,7 @@ public class TriangulationUtils
                                          float[] normal)
     {
         if(ecTriangulator == null)
-            ecTriangulator = new EarCutTriangulator(initSize);
+            createEarCutTriangulator();
 
         return ecTriangulator.triangulateConcavePolygon(coords,
                                                         0,
@@ -226,7 +263,7 @@ public class TriangulationUtils
                                          float[] normal)
     {
         if(ecTriangulator == null)
-            ecTriangulator = new EarCutTriangulator(initSize);
+            createEarCutTriangulator();
 
         return ecTriangulator.triangulateConcavePolygon(coords,
                                                         startIndex,
@@ -271,7 +308,7 @@ public class TriangulationUtils
                                          float[] normal)
     {
         if(ecTriangulator == null)
-            ecTriangulator = new EarCutTriangulator(initSize);
+            createEarCutTriangulator();
 
         return ecTriangulator.triangulateConcavePolygon(coords,
                                                         startIndex,
@@ -308,7 +345,7 @@ public class TriangulationUtils
                                          float[] normal)
     {
         if(ecTriangulator == null)
-            ecTriangulator = new EarCutTriangulator(initSize);
+            createEarCutTriangulator();
 
         return ecTriangulator.triangulateConcavePolygon(coords,
                                                         0,
@@ -362,7 +399,7 @@ public class TriangulationUtils
                                          float[] normal)
     {
         if(ecTriangulator == null)
-            ecTriangulator = new EarCutTriangulator(initSize);
+            createEarCutTriangulator();
 
         return ecTriangulator.triangulateConcavePolygon(coords,
                                                         startIndex,
@@ -377,6 +414,53 @@ public class TriangulationUtils
                                                         normal);
     }
 
+    /**
+     * Triangulate a concave polygon with zero or more holes in the given
+     * array, using the z-order hashed ear clipper regardless of the current
+     * threshold. The array is a flat array of coordinates of
+     * [...Xn, Yn, Zn....] values. The contours follow each other in the
+     * array, starting at startIndex, with the outer boundary first and then
+     * each of the holes. Contours are not required to be closed and may be
+     * given in either winding order. Each hole is bridged to the outer
+     * boundary before the ears are clipped. The output array is indexes into
+     * the original array (including compensating for the 3 index values per
+     * coordinate) and needs room for (n + 2h - 2) triangles, where n is the
+     * total vertex count and h the number of holes.
+     * <p>
+     * If an error occurs, the result will be negative number of triangles.
+     *
+     * @param coords The coordinates of the face
+     * @param startIndex The index of the first coordinate in the face
+     * @param numContours The number of contours, including the outer one
+     * @param contourCounts The number of vertices in each contour
+     * @param coordOutput The array to copy the coord index values to
+     * @param normal The normal to this face these vertices are a part of
+     * @return The number of triangles in the output array
+     */
+    public int triangulateConcavePolygonWithHoles(float[] coords,
+                                                  int startIndex,
+                                                  int numContours,
+                                                  int[] contourCounts,
+                                                  int[] coordOutput,
+                                                  float[] normal)
+    {
+        if(ecTriangulator == null)
+            createEarCutTriangulator();
+
+        return ecTriangulator.triangulateZOrder(coords,
+                                                startIndex,
+                                                numContours,
+                                                contourCounts,
+                                                0,
+                                                0,
+                                                0,
+                                                coordOutput,
+                                                null,
+                                                null,
+                                                null,
+                                                normal);
+    }
+
     /**
      * Clean up the internal cache and reduce it to zero.
      */
@@ -385,6 +469,15 @@ public class TriangulationUtils
         ecTriangulator.clearCachedObjects();
     }
 
+    /**
+     * Create the ear cut triangulator with the current settings.
+     */
+    private void createEarCutTriangulator()
+    {
+        ecTriangulator = new EarCutTriangulator(initSize);
+        ecTriangulator.setZOrderThreshold(zOrderThreshold);
+    }
+
     /**
      * Check to see if this vertex is a concave vertex or convex. It assumes
      * a right-handed coordinate system and counter-clockwise ordering of the
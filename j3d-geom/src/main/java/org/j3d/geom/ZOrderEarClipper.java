@@ -0,0 +1,1234 @@
+/*
+ * j3d.org Copyright (c) 2001-2015
+ *                                 Java Source
+ *
+ *  This source is licensed under the GNU LGPL v2.1
+ *  Please read docs/LGPL.txt for more information
+ *
+ *  This software comes with the standard NO WARRANTY disclaimer for any
+ *  purpose. Use it at your own risk. If there's a problem you get to fix it.
+ *
+ * This class is a Java port of the earcut library, which carries the
+ * following notice:
+ *
+ *  ISC License
+ *
+ *  Copyright (c) 2016, Mapbox
+ *
+ *  Permission to use, copy, modify, and/or distribute this software for any
+ *  purpose with or without fee is hereby granted, provided that the above
+ *  copyright notice and this permission notice appear in all copies.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS" AND ISC DISCLAIMS ALL WARRANTIES WITH
+ *  REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *  MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL ISC BE LIABLE FOR ANY
+ *  SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *  WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *  ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *  OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.j3d.geom;
+
+// External imports
+import java.util.Arrays;
+
+// Local imports
+// None
+
+/**
+ * Ear clipping triangulator for very large 2D polygons, with or without holes,
+ * that uses a z-order (Morton code) index of the vertices to limit the ear
+ * validity test to nearby points.
+ * <p>
+ *
+ * The plain ear clipper in {@link EarCutTriangulator} has to test every
+ * concave vertex against every candidate ear, which approaches O(n<sup>2</sup>)
+ * for the large outlines found in GIS coastline and building footprint data.
+ * This version keeps a second linked list of the remaining vertices sorted by
+ * the Morton code of their position. Any vertex that lies inside a candidate
+ * ear must have a code between the codes of the corners of the ear's bounding
+ * box, so only that stretch of the z-ordered list needs to be walked. Only
+ * reflex vertices can invalidate an ear, so convex ones are skipped during
+ * the walk.
+ * <p>
+ *
+ * Holes are joined to the outer boundary before clipping by finding, for the
+ * left-most point of each hole, the closest visible vertex of the outer
+ * boundary to the left and splitting the polygon along that bridge. Holes
+ * are processed left to right so that each bridge search only needs to look
+ * at the boundary as it stands.
+ * <p>
+ *
+ * When the clipper gets stuck (because of self-intersections or other bad
+ * input) it first removes duplicate and collinear points, then cuts out
+ * small local self-intersections, and finally tries to split the remaining
+ * polygon in two along a valid diagonal, recursing on each half.
+ * <p>
+ *
+ * All the vertex data is held in parallel primitive arrays that are kept
+ * between calls and only grown when needed, so no per-vertex objects are
+ * created. The input is expected to already be projected into 2D. The
+ * outer boundary may be in either winding order. Output triangles follow
+ * the winding of the outer boundary as given.
+ * <p>
+ *
+ * The algorithm, including the hole bridging and the fallbacks for bad
+ * input, is a port of Mapbox's
+ * <a href="https://github.com/mapbox/earcut">earcut</a> library to flat
+ * Java arrays. It is used here under the ISC licence given at the top of
+ * this file.
+ *
+ * @author Mapbox, ported from earcut
+ */
+class ZOrderEarClipper
+{
+    /** Marker for an empty link */
+    private static final int NIL = -1;
+
+    /** Largest integer coordinate used for the Morton codes */
+    private static final float ZORDER_RANGE = 32767;
+
+    /** Projected coordinates of each node */
+    private float[] nodeX;
+    private float[] nodeY;
+
+    /** Morton code of each node */
+    private int[] zCode;
+
+    /** Polygon ring links */
+    private int[] prev;
+    private int[] next;
+
+    /** Z-order list links */
+    private int[] prevZ;
+    private int[] nextZ;
+
+    /** Index of the input vertex that each node came from */
+    private int[] source;
+
+    /** Output index values for each node */
+    private int[] coordIndex;
+    private int[] normalIndex;
+    private int[] colorIndex;
+    private int[] texCoordIndex;
+
+    /** Number of nodes allocated so far, input plus bridge copies */
+    private int numNodes;
+
+    /** Number of input vertices added */
+    private int numInput;
+
+    /** Bounds values used to compute the Morton codes */
+    private float minX;
+    private float minY;
+    private float invSize;
+
+    /** Output arrays for the current call */
+    private int[] coordOutput;
+    private int[] normalOutput;
+    private int[] colorOutput;
+    private int[] texCoordOutput;
+
+    /** Current position in the output arrays */
+    private int outputIndex;
+
+    /** true if the outer ring was reversed and output needs flipping */
+    private boolean reverseOutput;
+
+    /** Set if the clipper could not finish the polygon */
+    private boolean failed;
+
+    /**
+     * Construct a new clipper with the given initial capacity.
+     *
+     * @param size Hint to the number of vertices to be processed
+     */
+    ZOrderEarClipper(int size)
+    {
+        allocate(Math.max(size, 16));
+    }
+
+    /**
+     * Clear out any previous polygon ready for a new one.
+     */
+    void reset()
+    {
+        numNodes = 0;
+        numInput = 0;
+    }
+
+    /**
+     * Add the next input vertex. Vertices of all the contours are added one
+     * after the other, starting with the outer boundary.
+     *
+     * @param x The projected x coordinate
+     * @param y The projected y coordinate
+     * @param coord The value to write to the coordinate output
+     * @param normal The value to write to the normal output
+     * @param color The value to write to the color output
+     * @param texCoord The value to write to the texture coordinate output
+     */
+    void addVertex(float x,
+                   float y,
+                   int coord,
+                   int normal,
+                   int color,
+                   int texCoord)
+    {
+        int n = newNode();
+        nodeX[n] = x;
+        nodeY[n] = y;
+        source[n] = numInput++;
+        coordIndex[n] = coord;
+        normalIndex[n] = normal;
+        colorIndex[n] = color;
+        texCoordIndex[n] = texCoord;
+    }
+
+    /**
+     * Triangulate the vertices added so far. The first contour is the outer
+     * boundary and all others are holes. The output arrays need room for
+     * (n + 2h - 2) triangles, where n is the total vertex count and h the
+     * number of holes. Any of the output arrays other than coordinates may
+     * be null.
+     *
+     * @param numContours The number of contours, including the outer one
+     * @param contourCounts The number of vertices in each contour
+     * @param coordOut The array to copy the coord index values to
+     * @param normalOut The array to copy the normal index values to
+     * @param colorOut The array to copy the color index values to
+     * @param texCoordOut The array to copy the texCoord index values to
+     * @return The number of triangles generated, negative on error
+     */
+    int triangulate(int numContours,
+                    int[] contourCounts,
+                    int[] coordOut,
+                    int[] normalOut,
+                    int[] colorOut,
+                    int[] texCoordOut)
+    {
+        coordOutput = coordOut;
+        normalOutput = normalOut;
+        colorOutput = colorOut;
+        texCoordOutput = texCoordOut;
+        outputIndex = 0;
+        failed = false;
+
+        int outer = linkContour(0, contourCounts[0], true);
+
+        if(outer == NIL || next[outer] == prev[outer])
+        {
+            clearOutputs();
+            return 0;
+        }
+
+        if(numContours > 1)
+            outer = eliminateHoles(outer, numContours, contourCounts);
+
+        // Bounds of everything for the Morton code scaling
+        float max_x = nodeX[0];
+        float max_y = nodeY[0];
+        minX = max_x;
+        minY = max_y;
+
+        for(int i = 1; i < numInput; i++)
+        {
+            float x = nodeX[i];
+            float y = nodeY[i];
+
+            if(x < minX)
+                minX = x;
+            else if(x > max_x)
+                max_x = x;
+
+            if(y < minY)
+                minY = y;
+            else if(y > max_y)
+                max_y = y;
+        }
+
+        float size = Math.max(max_x - minX, max_y - minY);
+        invSize = (size != 0) ? ZORDER_RANGE / size : 0;
+
+        earcutLinked(outer, 0);
+
+        int ret_val = outputIndex / 3;
+
+        clearOutputs();
+
+        return failed ? -ret_val : ret_val;
+    }
+
+    //---------------------------------------------------------------
+    // Local Methods
+    //---------------------------------------------------------------
+
+    /**
+     * Release the references to the output arrays.
+     */
+    private void clearOutputs()
+    {
+        coordOutput = null;
+        normalOutput = null;
+        colorOutput = null;
+        texCoordOutput = null;
+    }
+
+    /**
+     * Link a contour of input nodes into a circular list with the requested
+     * winding. The outer boundary is made counter-clockwise and the holes
+     * clockwise.
+     *
+     * @param start The first input node of the contour
+     * @param count The number of nodes in the contour
+     * @param outer true if this is the outer boundary
+     * @return A node of the ring or NIL if it was empty
+     */
+    private int linkContour(int start, int count, boolean outer)
+    {
+        if(count <= 0)
+            return NIL;
+
+        int end = start + count;
+
+        // Twice the signed area. Positive is counter-clockwise.
+        double area = 0;
+
+        for(int i = start, j = end - 1; i < end; j = i++)
+            area += (double)nodeX[j] * nodeY[i] - (double)nodeX[i] * nodeY[j];
+
+        boolean reverse = outer ? (area < 0) : (area > 0);
+
+        if(outer)
+            reverseOutput = reverse;
+
+        int first;
+        int last;
+
+        if(!reverse)
+        {
+            first = start;
+            last = end - 1;
+
+            for(int i = start; i < end - 1; i++)
+            {
+                next[i] = i + 1;
+                prev[i + 1] = i;
+            }
+        }
+        else
+        {
+            first = end - 1;
+            last = start;
+
+            for(int i = end - 1; i > start; i--)
+            {
+                next[i] = i - 1;
+                prev[i - 1] = i;
+            }
+        }
+
+        next[last] = first;
+        prev[first] = last;
+
+        for(int i = start; i < end; i++)
+        {
+            prevZ[i] = NIL;
+            nextZ[i] = NIL;
+        }
+
+        // Drop the closing vertex if the contour was given closed
+        if(last != first && equals(last, next[last]))
+        {
+            removeNode(last);
+            last = prev[last];
+        }
+
+        return last;
+    }
+
+    /**
+     * Join all the holes to the outer ring, working from left to right.
+     *
+     * @param outer A node of the outer ring
+     * @param numContours The number of contours including the outer one
+     * @param contourCounts The number of vertices in each contour
+     * @return A node of the combined ring
+     */
+    private int eliminateHoles(int outer, int numContours, int[] contourCounts)
+    {
+        long[] queue = new long[numContours - 1];
+        int num_holes = 0;
+        int start = contourCounts[0];
+
+        for(int i = 1; i < numContours; i++)
+        {
+            int ring = linkContour(start, contourCounts[i], false);
+            start += contourCounts[i];
+
+            if(ring == NIL || ring == next[ring])
+                continue;
+
+            int left = getLeftmost(ring);
+
+            // Sort key is the x coordinate in a form that orders correctly
+            // as a signed long, with the node in the low bits.
+            int bits = Float.floatToIntBits(nodeX[left] + 0.0f);
+            bits ^= (bits >> 31) & 0x7FFFFFFF;
+            queue[num_holes++] = ((long)bits << 32) | left;
+        }
+
+        Arrays.sort(queue, 0, num_holes);
+
+        for(int i = 0; i < num_holes; i++)
+            outer = eliminateHole((int)queue[i], outer);
+
+        return outer;
+    }
+
+    /**
+     * Bridge one hole into the outer ring.
+     *
+     * @param hole The left-most node of the hole
+     * @param outer A node of the outer ring
+     * @return A node of the combined ring
+     */
+    private int eliminateHole(int hole, int outer)
+    {
+        int bridge = findHoleBridge(hole, outer);
+
+        if(bridge == NIL)
+            return outer;
+
+        int bridge_reverse = splitPolygon(bridge, hole);
+
+        filterPoints(bridge_reverse, next[bridge_reverse]);
+
+        return filterPoints(bridge, next[bridge]);
+    }
+
+    /**
+     * Find the vertex of the outer ring that the hole can be bridged to.
+     * Casts a ray from the hole point to the left, finds the nearest edge
+     * it hits, and then looks for the reflex vertex inside the triangle
+     * formed with that edge that has the smallest angle to the ray.
+     *
+     * @param hole The left-most node of the hole
+     * @param outer A node of the outer ring
+     * @return The node to bridge to or NIL if none found
+     */
+    private int findHoleBridge(int hole, int outer)
+    {
+        int p = outer;
+        float hx = nodeX[hole];
+        float hy = nodeY[hole];
+        float qx = Float.NEGATIVE_INFINITY;
+        int m = NIL;
+
+        do
+        {
+            int n = next[p];
+
+            if(hy <= nodeY[p] && hy >= nodeY[n] && nodeY[n] != nodeY[p])
+            {
+                float x = nodeX[p] + (hy - nodeY[p]) * (nodeX[n] - nodeX[p]) /
+                                     (nodeY[n] - nodeY[p]);
+
+                if(x <= hx && x > qx)
+                {
+                    qx = x;
+                    m = nodeX[p] < nodeX[n] ? p : n;
+
+                    // Hole touches the outer segment. Use the end point.
+                    if(x == hx)
+                        return m;
+                }
+            }
+
+            p = n;
+        }
+        while(p != outer);
+
+        if(m == NIL)
+            return NIL;
+
+        int stop = m;
+        float mx = nodeX[m];
+        float my = nodeY[m];
+        float tan_min = Float.POSITIVE_INFINITY;
+
+        p = m;
+
+        do
+        {
+            float px = nodeX[p];
+            float py = nodeY[p];
+
+            if(hx >= px && px >= mx && hx != px &&
+               pointInTriangle(hy < my ? hx : qx, hy,
+                               mx, my,
+                               hy < my ? qx : hx, hy,
+                               px, py))
+            {
+                float tan = Math.abs(hy - py) / (hx - px);
+
+                if(locallyInside(p, hole) &&
+                   (tan < tan_min ||
+                    (tan == tan_min &&
+                     (px > nodeX[m] ||
+                      (px == nodeX[m] && sectorContainsSector(m, p))))))
+                {
+                    m = p;
+                    tan_min = tan;
+                }
+            }
+
+            p = next[p];
+        }
+        while(p != stop);
+
+        return m;
+    }
+
+    /**
+     * Check whether the sector at m contains the sector at p.
+     */
+    private boolean sectorContainsSector(int m, int p)
+    {
+        return area(prev[m], m, prev[p]) < 0 && area(next[p], m, next[m]) < 0;
+    }
+
+    /**
+     * Main ear slicing loop for one ring.
+     *
+     * @param start A node of the ring
+     * @param pass 0 for a fresh ring, 1 after filtering, 2 after curing
+     *   local intersections
+     */
+    private void earcutLinked(int start, int pass)
+    {
+        if(start == NIL)
+            return;
+
+        if(pass == 0)
+            indexCurve(start);
+
+        int ear = start;
+        int stop = ear;
+
+        while(prev[ear] != next[ear])
+        {
+            int p = prev[ear];
+            int n = next[ear];
+
+            if(isEarHashed(ear))
+            {
+                emitTriangle(p, ear, n);
+                removeNode(ear);
+
+                // Skipping the next vertex gives fewer sliver triangles
+                ear = next[n];
+                stop = ear;
+                continue;
+            }
+
+            ear = n;
+
+            if(ear == stop)
+            {
+                if(pass == 0)
+                {
+                    earcutLinked(filterPoints(ear, NIL), 1);
+                }
+                else if(pass == 1)
+                {
+                    ear = cureLocalIntersections(filterPoints(ear, NIL));
+                    earcutLinked(ear, 2);
+                }
+                else
+                {
+                    splitEarcut(ear);
+                }
+
+                break;
+            }
+        }
+    }
+
+    /**
+     * Check whether the node is a valid ear, using the z-order index to
+     * test only vertices near the ear.
+     *
+     * @param ear The apex node of the candidate ear
+     * @return true if it is an ear that can be cut
+     */
+    private boolean isEarHashed(int ear)
+    {
+        int a = prev[ear];
+        int c = next[ear];
+
+        // Reflex, so it can't be an ear
+        if(area(a, ear, c) >= 0)
+            return false;
+
+        float ax = nodeX[a];
+        float ay = nodeY[a];
+        float bx = nodeX[ear];
+        float by = nodeY[ear];
+        float cx = nodeX[c];
+        float cy = nodeY[c];
+
+        float x0 = ax < bx ? (ax < cx ? ax : cx) : (bx < cx ? bx : cx);
+        float y0 = ay < by ? (ay < cy ? ay : cy) : (by < cy ? by : cy);
+        float x1 = ax > bx ? (ax > cx ? ax : cx) : (bx > cx ? bx : cx);
+        float y1 = ay > by ? (ay > cy ? ay : cy) : (by > cy ? by : cy);
+
+        int min_z = zOrder(x0, y0);
+        int max_z = zOrder(x1, y1);
+
+        int p = prevZ[ear];
+        int n = nextZ[ear];
+
+        // Walk in both directions at once as the nearest points are the
+        // most likely to be inside the ear.
+        while(p != NIL && zCode[p] >= min_z && n != NIL && zCode[n] <= max_z)
+        {
+            if(blocksEar(p, a, ear, c))
+                return false;
+
+            p = prevZ[p];
+
+            if(blocksEar(n, a, ear, c))
+                return false;
+
+            n = nextZ[n];
+        }
+
+        while(p != NIL && zCode[p] >= min_z)
+        {
+            if(blocksEar(p, a, ear, c))
+                return false;
+
+            p = prevZ[p];
+        }
+
+        while(n != NIL && zCode[n] <= max_z)
+        {
+            if(blocksEar(n, a, ear, c))
+                return false;
+
+            n = nextZ[n];
+        }
+
+        return true;
+    }
+
+    /**
+     * Check to see if the given node is a reflex vertex that lies inside
+     * the ear a-b-c. Nodes at the same position as one of the ear corners
+     * are ignored, as they are the other half of a hole bridge.
+     */
+    private boolean blocksEar(int p, int a, int b, int c)
+    {
+        if(p == a || p == c)
+            return false;
+
+        float px = nodeX[p];
+        float py = nodeY[p];
+
+        if((px == nodeX[a] && py == nodeY[a]) ||
+           (px == nodeX[b] && py == nodeY[b]) ||
+           (px == nodeX[c] && py == nodeY[c]))
+            return false;
+
+        return pointInTriangle(nodeX[a], nodeY[a],
+                               nodeX[b], nodeY[b],
+                               nodeX[c], nodeY[c],
+                               px, py) &&
+               area(prev[p], p, next[p]) >= 0;
+    }
+
+    /**
+     * Go through all the polygon nodes and cure small local
+     * self-intersections.
+     *
+     * @param start A node of the ring
+     * @return A node of the remaining ring
+     */
+    private int cureLocalIntersections(int start)
+    {
+        if(start == NIL)
+            return NIL;
+
+        int p = start;
+
+        do
+        {
+            int a = prev[p];
+            int b = next[next[p]];
+
+            if(!equals(a, b) &&
+               intersects(a, p, next[p], b) &&
+               locallyInside(a, b) &&
+               locallyInside(b, a))
+            {
+                emitTriangle(a, p, b);
+
+                removeNode(p);
+                removeNode(next[p]);
+
+                p = start = b;
+            }
+
+            p = next[p];
+        }
+        while(p != start);
+
+        return filterPoints(p, NIL);
+    }
+
+    /**
+     * Try splitting the ring into two along a valid diagonal and
+     * triangulate each half separately.
+     *
+     * @param start A node of the ring
+     */
+    private void splitEarcut(int start)
+    {
+        int a = start;
+
+        do
+        {
+            int b = next[next[a]];
+
+            while(b != prev[a])
+            {
+                if(source[a] != source[b] && isValidDiagonal(a, b))
+                {
+                    int c = splitPolygon(a, b);
+
+                    a = filterPoints(a, next[a]);
+                    c = filterPoints(c, next[c]);
+
+                    earcutLinked(a, 0);
+                    earcutLinked(c, 0);
+                    return;
+                }
+
+                b = next[b];
+            }
+
+            a = next[a];
+        }
+        while(a != start);
+
+        failed = true;
+    }
+
+    /**
+     * Remove duplicate and collinear points from the ring.
+     *
+     * @param start The first node to check
+     * @param end The node to stop at, or NIL for the start
+     * @return A node of the remaining ring
+     */
+    private int filterPoints(int start, int end)
+    {
+        if(start == NIL)
+            return NIL;
+
+        if(end == NIL)
+            end = start;
+
+        int p = start;
+        boolean again;
+
+        do
+        {
+            again = false;
+
+            if(equals(p, next[p]) || area(prev[p], p, next[p]) == 0)
+            {
+                removeNode(p);
+                p = end = prev[p];
+
+                if(p == next[p])
+                    break;
+
+                again = true;
+            }
+            else
+            {
+                p = next[p];
+            }
+        }
+        while(again || p != end);
+
+        return end;
+    }
+
+    /**
+     * Check if a diagonal between the two nodes lies inside the polygon
+     * without crossing any edges.
+     */
+    private boolean isValidDiagonal(int a, int b)
+    {
+        if(source[next[a]] == source[b] ||
+           source[prev[a]] == source[b] ||
+           intersectsPolygon(a, b))
+            return false;
+
+        if(locallyInside(a, b) &&
+           locallyInside(b, a) &&
+           middleInside(a, b) &&
+           (area(prev[a], a, prev[b]) != 0 || area(a, prev[b], b) != 0))
+            return true;
+
+        return equals(a, b) &&
+               area(prev[a], a, next[a]) > 0 &&
+               area(prev[b], b, next[b]) > 0;
+    }
+
+    /**
+     * Check if the segment a-b crosses any edge of the ring.
+     */
+    private boolean intersectsPolygon(int a, int b)
+    {
+        int p = a;
+
+        do
+        {
+            int n = next[p];
+
+            if(source[p] != source[a] && source[n] != source[a] &&
+               source[p] != source[b] && source[n] != source[b] &&
+               intersects(p, n, a, b))
+                return true;
+
+            p = n;
+        }
+        while(p != a);
+
+        return false;
+    }
+
+    /**
+     * Check if the diagonal a-b starts off inside the polygon at a.
+     */
+    private boolean locallyInside(int a, int b)
+    {
+        if(area(prev[a], a, next[a]) < 0)
+            return area(a, b, next[a]) >= 0 && area(a, prev[a], b) >= 0;
+        else
+            return area(a, b, prev[a]) < 0 || area(a, next[a], b) < 0;
+    }
+
+    /**
+     * Check if the middle point of the diagonal a-b is inside the polygon.
+     */
+    private boolean middleInside(int a, int b)
+    {
+        int p = a;
+        boolean inside = false;
+        float px = (nodeX[a] + nodeX[b]) / 2;
+        float py = (nodeY[a] + nodeY[b]) / 2;
+
+        do
+        {
+            int n = next[p];
+
+            if(((nodeY[p] > py) != (nodeY[n] > py)) &&
+               nodeY[n] != nodeY[p] &&
+               (px < (nodeX[n] - nodeX[p]) * (py - nodeY[p]) /
+                     (nodeY[n] - nodeY[p]) + nodeX[p]))
+                inside = !inside;
+
+            p = n;
+        }
+        while(p != a);
+
+        return inside;
+    }
+
+    /**
+     * Check if the segments p1-q1 and p2-q2 intersect.
+     */
+    private boolean intersects(int p1, int q1, int p2, int q2)
+    {
+        int o1 = sign(area(p1, q1, p2));
+        int o2 = sign(area(p1, q1, q2));
+        int o3 = sign(area(p2, q2, p1));
+        int o4 = sign(area(p2, q2, q1));
+
+        if(o1 != o2 && o3 != o4)
+            return true;
+
+        // Collinear cases
+        if(o1 == 0 && onSegment(p1, p2, q1))
+            return true;
+
+        if(o2 == 0 && onSegment(p1, q2, q1))
+            return true;
+
+        if(o3 == 0 && onSegment(p2, p1, q2))
+            return true;
+
+        if(o4 == 0 && onSegment(p2, q1, q2))
+            return true;
+
+        return false;
+    }
+
+    /**
+     * For collinear points p, q, r, check if q lies on the segment p-r.
+     */
+    private boolean onSegment(int p, int q, int r)
+    {
+        return nodeX[q] <= Math.max(nodeX[p], nodeX[r]) &&
+               nodeX[q] >= Math.min(nodeX[p], nodeX[r]) &&
+               nodeY[q] <= Math.max(nodeY[p], nodeY[r]) &&
+               nodeY[q] >= Math.min(nodeY[p], nodeY[r]);
+    }
+
+    /**
+     * Link two nodes with a bridge. If they are in the same ring this splits
+     * it in two, if they are in different rings it merges them. Copies of
+     * both nodes are made for the other side of the bridge.
+     *
+     * @return The copy of b, which is in the second ring
+     */
+    private int splitPolygon(int a, int b)
+    {
+        int a2 = copyNode(a);
+        int b2 = copyNode(b);
+        int an = next[a];
+        int bp = prev[b];
+
+        next[a] = b;
+        prev[b] = a;
+
+        next[a2] = an;
+        prev[an] = a2;
+
+        next[b2] = a2;
+        prev[a2] = b2;
+
+        next[bp] = b2;
+        prev[b2] = bp;
+
+        return b2;
+    }
+
+    /**
+     * Build the z-order list for the ring.
+     */
+    private void indexCurve(int start)
+    {
+        int p = start;
+
+        do
+        {
+            zCode[p] = zOrder(nodeX[p], nodeY[p]);
+            prevZ[p] = prev[p];
+            nextZ[p] = next[p];
+            p = next[p];
+        }
+        while(p != start);
+
+        nextZ[prevZ[p]] = NIL;
+        prevZ[p] = NIL;
+
+        sortLinked(p);
+    }
+
+    /**
+     * Sort the z-order list with a bottom up linked list merge sort.
+     *
+     * @param list The head of the list
+     * @return The new head of the list
+     */
+    private int sortLinked(int list)
+    {
+        int in_size = 1;
+        int num_merges;
+
+        do
+        {
+            int p = list;
+            int tail = NIL;
+            list = NIL;
+            num_merges = 0;
+
+            while(p != NIL)
+            {
+                num_merges++;
+
+                int q = p;
+                int p_size = 0;
+
+                for(int i = 0; i < in_size; i++)
+                {
+                    p_size++;
+                    q = nextZ[q];
+
+                    if(q == NIL)
+                        break;
+                }
+
+                int q_size = in_size;
+
+                while(p_size > 0 || (q_size > 0 && q != NIL))
+                {
+                    int e;
+
+                    if(p_size != 0 &&
+                       (q_size == 0 || q == NIL || zCode[p] <= zCode[q]))
+                    {
+                        e = p;
+                        p = nextZ[p];
+                        p_size--;
+                    }
+                    else
+                    {
+                        e = q;
+                        q = nextZ[q];
+                        q_size--;
+                    }
+
+                    if(tail != NIL)
+                        nextZ[tail] = e;
+                    else
+                        list = e;
+
+                    prevZ[e] = tail;
+                    tail = e;
+                }
+
+                p = q;
+            }
+
+            nextZ[tail] = NIL;
+            in_size *= 2;
+        }
+        while(num_merges > 1);
+
+        return list;
+    }
+
+    /**
+     * Calculate the Morton code of a point by interleaving the bits of its
+     * scaled coordinates.
+     */
+    private int zOrder(float x, float y)
+    {
+        int ix = (int)((x - minX) * invSize);
+        int iy = (int)((y - minY) * invSize);
+
+        ix = (ix | (ix << 8)) & 0x00FF00FF;
+        ix = (ix | (ix << 4)) & 0x0F0F0F0F;
+        ix = (ix | (ix << 2)) & 0x33333333;
+        ix = (ix | (ix << 1)) & 0x55555555;
+
+        iy = (iy | (iy << 8)) & 0x00FF00FF;
+        iy = (iy | (iy << 4)) & 0x0F0F0F0F;
+        iy = (iy | (iy << 2)) & 0x33333333;
+        iy = (iy | (iy << 1)) & 0x55555555;
+
+        return ix | (iy << 1);
+    }
+
+    /**
+     * Find the left-most node of a ring.
+     */
+    private int getLeftmost(int start)
+    {
+        int p = start;
+        int leftmost = start;
+
+        do
+        {
+            if(nodeX[p] < nodeX[leftmost] ||
+               (nodeX[p] == nodeX[leftmost] && nodeY[p] < nodeY[leftmost]))
+                leftmost = p;
+
+            p = next[p];
+        }
+        while(p != start);
+
+        return leftmost;
+    }
+
+    /**
+     * Check if a point lies within a counter-clockwise triangle, including
+     * the edges.
+     */
+    private static boolean pointInTriangle(float ax,
+                                           float ay,
+                                           float bx,
+                                           float by,
+                                           float cx,
+                                           float cy,
+                                           float px,
+                                           float py)
+    {
+        return (cx - px) * (ay - py) >= (ax - px) * (cy - py) &&
+               (ax - px) * (by - py) >= (bx - px) * (ay - py) &&
+               (bx - px) * (cy - py) >= (cx - px) * (by - py);
+    }
+
+    /**
+     * Signed area of the triangle p-q-r. Negative for a left (convex) turn
+     * in a counter-clockwise ring.
+     */
+    private float area(int p, int q, int r)
+    {
+        return (nodeY[q] - nodeY[p]) * (nodeX[r] - nodeX[q]) -
+               (nodeX[q] - nodeX[p]) * (nodeY[r] - nodeY[q]);
+    }
+
+    /**
+     * Check if two nodes are at the same position.
+     */
+    private boolean equals(int a, int b)
+    {
+        return nodeX[a] == nodeX[b] && nodeY[a] == nodeY[b];
+    }
+
+    /**
+     * Sign of a value as -1, 0 or 1.
+     */
+    private static int sign(float value)
+    {
+        return (value > 0) ? 1 : (value < 0) ? -1 : 0;
+    }
+
+    /**
+     * Write a triangle to the output arrays, following the winding of the
+     * original outer boundary.
+     */
+    private void emitTriangle(int a, int b, int c)
+    {
+        if(reverseOutput)
+        {
+            int tmp = a;
+            a = c;
+            c = tmp;
+        }
+
+        int o = outputIndex;
+
+        coordOutput[o] = coordIndex[a];
+        coordOutput[o + 1] = coordIndex[b];
+        coordOutput[o + 2] = coordIndex[c];
+
+        if(normalOutput != null)
+        {
+            normalOutput[o] = normalIndex[a];
+            normalOutput[o + 1] = normalIndex[b];
+            normalOutput[o + 2] = normalIndex[c];
+        }
+
+        if(colorOutput != null)
+        {
+            colorOutput[o] = colorIndex[a];
+            colorOutput[o + 1] = colorIndex[b];
+            colorOutput[o + 2] = colorIndex[c];
+        }
+
+        if(texCoordOutput != null)
+        {
+            texCoordOutput[o] = texCoordIndex[a];
+            texCoordOutput[o + 1] = texCoordIndex[b];
+            texCoordOutput[o + 2] = texCoordIndex[c];
+        }
+
+        outputIndex += 3;
+    }
+
+    /**
+     * Remove the node from both the ring and the z-order list. The links of
+     * the removed node itself are left intact.
+     */
+    private void removeNode(int p)
+    {
+        next[prev[p]] = next[p];
+        prev[next[p]] = prev[p];
+
+        if(prevZ[p] != NIL)
+            nextZ[prevZ[p]] = nextZ[p];
+
+        if(nextZ[p] != NIL)
+            prevZ[nextZ[p]] = prevZ[p];
+    }
+
+    /**
+     * Make a copy of the node for use on the other side of a bridge.
+     */
+    private int copyNode(int src)
+    {
+        int n = newNode();
+
+        nodeX[n] = nodeX[src];
+        nodeY[n] = nodeY[src];
+        zCode[n] = zCode[src];
+        source[n] = source[src];
+        coordIndex[n] = coordIndex[src];
+        normalIndex[n] = normalIndex[src];
+        colorIndex[n] = colorIndex[src];
+        texCoordIndex[n] = texCoordIndex[src];
+        prevZ[n] = NIL;
+        nextZ[n] = NIL;
+
+        return n;
+    }
+
+    /**
+     * Allocate a new node, growing the arrays if needed.
+     */
+    private int newNode()
+    {
+        if(numNodes == nodeX.length)
+            allocate(numNodes * 2);
+
+        return numNodes++;
+    }
+
+    /**
+     * Resize all of the node arrays to the given size, keeping the
+     * existing contents.
+     */
+    private void allocate(int size)
+    {
+        if(nodeX == null)
+        {
+            nodeX = new float[size];
+            nodeY = new float[size];
+            zCode = new int[size];
+            prev = new int[size];
+            next = new int[size];
+            prevZ = new int[size];
+            nextZ = new int[size];
+            source = new int[size];
+            coordIndex = new int[size];
+            normalIndex = new int[size];
+            colorIndex = new int[size];
+            texCoordIndex = new int[size];
+        }
+        else
+        {
+            nodeX = Arrays.copyOf(nodeX, size);
+            nodeY = Arrays.copyOf(nodeY, size);
+            zCode = Arrays.copyOf(zCode, size);
+            prev = Arrays.copyOf(prev, size);
+            next = Arrays.copyOf(next, size);
+            prevZ = Arrays.copyOf(prevZ, size);
+            nextZ = Arrays.copyOf(nextZ, size);
+            source = Arrays.copyOf(source, size);
+            coordIndex = Arrays.copyOf(coordIndex, size);
+            normalIndex = Arrays.copyOf(normalIndex, size);
+            colorIndex = Arrays.copyOf(colorIndex, size);
+            texCoordIndex = Arrays.copyOf(texCoordIndex, size);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * j3d.org Copyright (c) 2001-2015
+ *                                 Java Source
+ *
+ *  This source is licensed under the GNU LGPL v2.1
+ *  Please read docs/LGPL.txt for more information
+ *
+ *  This software comes with the standard NO WARRANTY disclaimer for any
+ *  purpose. Use it at your own risk. If there's a problem you get to fix it.
+ */
+
+package org.j3d.geom.particle;
+
+// External imports
+// None
+
+// Local imports
+// None
+
+/**
+ * A particle function that can work on a range of particles held in a
+ * {@link ParticleBlock} in one call.
+ * <p>
+ *
+ * A system using block storage calls {@link #applyBatch} once per frame for
+ * each function that implements this interface, rather than making one
+ * {@link #apply(Particle)} call per particle. Each function runs over every
+ * particle before the next function starts. Functions that only implement
+ * {@link ParticleFunction} are still run, through an adapter that presents
+ * each slot as a {@link Particle}.
+ * <p>
+ *
+ * Particles that should die are marked with {@link ParticleBlock#kill(int)}.
+ * They are removed once all the functions have run, so a later function may
+ * still be handed particles that an earlier one killed. The range given may
+ * be only part of the live particles, and separate ranges of the same block
+ * may be processed at the same time by different threads, so an
+ * implementation must only write to the slots in its range.
+ */
+public interface BatchParticleFunction extends ParticleFunction
+{
+    /**
+     * Apply this function to a range of particles in the block.
+     *
+     * @param block The block holding the particles
+     * @param start The first slot to process
+     * @param end One past the last slot to process
+     */
+    public void applyBatch(ParticleBlock block, int start, int end);
+}
@@ -24,7 +24,7 @@ package org.j3d.geom.particle;
  * @author Daniel Selman
  * @version $Revision: 2.0 $
  */
-public class BoundingBoxParticleFunction implements ParticleFunction
+public class BoundingBoxParticleFunction implements BatchParticleFunction
 {
     /** Temp variable for requesting the position from a particle */
     private float[] position;
@@ -47,6 +47,10 @@ public class BoundingBoxParticleFunction implements ParticleFunction
      */
     public BoundingBoxParticleFunction(float[] upper, float[] lower)
     {
+        position = new float[3];
+        lowerCorner = new float[3];
+        upperCorner = new float[3];
+
         lowerCorner[0] = lower[0];
         lowerCorner[1] = lower[1];
         lowerCorner[2] = lower[2];
@@ -58,6 +62,36 @@ public class BoundingBoxParticleFunction implements ParticleFunction
         enabled = true;
     }
 
+    //-------------------------------------------------------------
+    // Methods defined by BatchParticleFunction
+    //-------------------------------------------------------------
+
+    /**
+     * Apply this function to a range of particles in the block.
+     *
+     * @param block The block holding the particles
+     * @param start The first slot to process
+     * @param end One past the last slot to process
+     */
+    @Override
+    public void applyBatch(ParticleBlock block, int start, int end)
+    {
+        double[] positions = block.positions;
+
+        for(int i = start * 3; i < end * 3; i += 3)
+        {
+            for(int k = 0; k < 3; k++)
+            {
+                double p = positions[i + k];
+
+                if(p > upperCorner[k])
+                    positions[i + k] = upperCorner[k];
+                else if(p < lowerCorner[k])
+                    positions[i + k] = lowerCorner[k];
+            }
+        }
+    }
+
     //-------------------------------------------------------------
     // Methods defined by ParticleFunction
     //-------------------------------------------------------------
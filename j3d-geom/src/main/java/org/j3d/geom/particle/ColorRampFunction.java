@@ -35,7 +35,7 @@ import org.j3d.util.I18nManager;
  * @author Justin Couch
  * @version $Revision: 2.1 $
  */
-public class ColorRampFunction implements ParticleFunction
+public class ColorRampFunction implements BatchParticleFunction
 {
     /** Error message for different array lengths */
     private static final String LENGTH_MSG_PROP =
@@ -44,6 +44,15 @@ public class ColorRampFunction implements ParticleFunction
     /** The colour interpolator we are using */
     private ColorInterpolator interpolator;
 
+    /** The key frame times of the ramp in milliseconds */
+    private float[] rampTimes;
+
+    /** The RGBA colour of each key frame, 4 values per key */
+    private float[] rampColors;
+
+    /** The number of key frames in the ramp */
+    private int numRampKeys;
+
     /** A flag to say whether the colour values included an alpha component */
     private boolean hasAlpha;
 
@@ -116,6 +125,42 @@ public class ColorRampFunction implements ParticleFunction
         enabled = true;
     }
 
+    //-------------------------------------------------------------
+    // Methods defined by BatchParticleFunction
+    //-------------------------------------------------------------
+
+    /**
+     * Apply this function to a range of particles in the block.
+     *
+     * @param block The block holding the particles
+     * @param start The first slot to process
+     * @param end One past the last slot to process
+     */
+    @Override
+    public void applyBatch(ParticleBlock block, int start, int end)
+    {
+        // The interpolator keeps state between calls, and ranges may run
+        // on several threads at once, so each range gets its own.
+        ColorInterpolator interp = createInterpolator();
+        long[] births = block.birthTimes;
+        float[] colors = block.colors;
+
+        for(int idx = start; idx < end; idx++)
+        {
+            int delta = (int)(currentTime - births[idx]);
+
+            float[] col = (delta >= lastTime) ?
+                          lastColor :
+                          interp.floatRGBValue(delta);
+
+            int i4 = idx * 4;
+            colors[i4] = col[0];
+            colors[i4 + 1] = col[1];
+            colors[i4 + 2] = col[2];
+            colors[i4 + 3] = col[3];
+        }
+    }
+
     //-------------------------------------------------------------
     // Methods defined by ParticleFunction
     //-------------------------------------------------------------
@@ -223,44 +268,55 @@ public class ColorRampFunction implements ParticleFunction
         }
 
         this.hasAlpha = hasAlpha;
-        interpolator = new ColorInterpolator(numColors,
-                                             ColorInterpolator.HSV_SPACE);
 
-        int idx = 0;
+        rampTimes = new float[numColors];
+        rampColors = new float[numColors * 4];
+        numRampKeys = numColors;
 
-        if(hasAlpha)
+        int stride = hasAlpha ? 4 : 3;
+
+        for(int i = 0; i < numColors; i++)
         {
+            rampTimes[i] = times[i] * 1000;
+            rampColors[i * 4] = ramp[i * stride];
+            rampColors[i * 4 + 1] = ramp[i * stride + 1];
+            rampColors[i * 4 + 2] = ramp[i * stride + 2];
 
-            for(int i = 0; i < numColors; i++)
-            {
-                interpolator.addRGBKeyFrame(times[i] * 1000,
-                                            ramp[idx++],
-                                            ramp[idx++],
-                                            ramp[idx++],
-                                            ramp[idx++]);
-            }
-
-            lastTime = times[numColors - 1] * 1000;
-            lastColor[0] = ramp[idx - 4];
-            lastColor[1] = ramp[idx - 3];
-            lastColor[2] = ramp[idx - 2];
-            lastColor[3] = ramp[idx - 1];
+            if(hasAlpha)
+                rampColors[i * 4 + 3] = ramp[i * stride + 3];
         }
-        else
+
+        interpolator = createInterpolator();
+
+        int last = (numColors - 1) * 4;
+        lastTime = rampTimes[numColors - 1];
+        lastColor[0] = rampColors[last];
+        lastColor[1] = rampColors[last + 1];
+        lastColor[2] = rampColors[last + 2];
+
+        if(hasAlpha)
+            lastColor[3] = rampColors[last + 3];
+    }
+
+    /**
+     * Create a new interpolator from the current ramp.
+     *
+     * @return A new interpolator instance
+     */
+    private ColorInterpolator createInterpolator()
+    {
+        ColorInterpolator ret_val =
+            new ColorInterpolator(numRampKeys, ColorInterpolator.HSV_SPACE);
+
+        for(int i = 0; i < numRampKeys; i++)
         {
-            for(int i = 0; i < numColors; i++)
-            {
-                interpolator.addRGBKeyFrame(times[i] * 1000,
-                                            ramp[idx++],
-                                            ramp[idx++],
-                                            ramp[idx++],
-                                            0);
-            }
-
-            lastTime = times[numColors - 1] * 1000;
-            lastColor[0] = ramp[idx - 3];
-            lastColor[1] = ramp[idx - 2];
-            lastColor[2] = ramp[idx - 1];
+            ret_val.addRGBKeyFrame(rampTimes[i],
+                                   rampColors[i * 4],
+                                   rampColors[i * 4 + 1],
+                                   rampColors[i * 4 + 2],
+                                   rampColors[i * 4 + 3]);
         }
+
+        return ret_val;
     }
 }
@@ -18,7 +18,7 @@ package org.j3d.geom.particle;
  * @author Daniel Selman
  * @version $Revision: 2.0 $
  */
-public class FrameCountParticleFunction implements ParticleFunction
+public class FrameCountParticleFunction implements BatchParticleFunction
 {
     /** The maximum age a particle is allowed to be */
     private int maxAge;
@@ -36,6 +36,27 @@ public class FrameCountParticleFunction implements ParticleFunction
         this.maxAge = maxAge;
     }
 
+    //-------------------------------------------------------------
+    // Methods defined by BatchParticleFunction
+    //-------------------------------------------------------------
+
+    /**
+     * Apply this function to a range of particles in the block.
+     *
+     * @param block The block holding the particles
+     * @param start The first slot to process
+     * @param end One past the last slot to process
+     */
+    @Override
+    public void applyBatch(ParticleBlock block, int start, int end)
+    {
+        if(frameCount < maxAge)
+            return;
+
+        for(int idx = start; idx < end; idx++)
+            block.kill(idx);
+    }
+
     //-------------------------------------------------------------
     // Methods defined by ParticleFunction
     //-------------------------------------------------------------
@@ -21,7 +21,7 @@ package org.j3d.geom.particle;
  * @author Daniel Selman
  * @version $Revision: 2.0 $
  */
-public class GravityParticleFunction implements ParticleFunction
+public class GravityParticleFunction implements BatchParticleFunction
 {
     /** accelaration due to gravity: meters per second squared */
     private float[] gravityForce;
@@ -51,6 +51,33 @@ public class GravityParticleFunction implements ParticleFunction
         enabled = true;
     }
 
+    //-------------------------------------------------------------
+    // Methods defined by BatchParticleFunction
+    //-------------------------------------------------------------
+
+    /**
+     * Apply this function to a range of particles in the block.
+     *
+     * @param block The block holding the particles
+     * @param start The first slot to process
+     * @param end One past the last slot to process
+     */
+    @Override
+    public void applyBatch(ParticleBlock block, int start, int end)
+    {
+        double g_x = gravityForce[0];
+        double g_y = gravityForce[1];
+        double g_z = gravityForce[2];
+        double[] forces = block.forces;
+
+        for(int i = start * 3; i < end * 3; i += 3)
+        {
+            forces[i] += g_x;
+            forces[i + 1] += g_y;
+            forces[i + 2] += g_z;
+        }
+    }
+
     //-------------------------------------------------------------
     // Methods defined by ParticleFunction
     //-------------------------------------------------------------
@@ -22,7 +22,7 @@ package org.j3d.geom.particle;
  * @author Daniel Selman
  * @version $Revision: 2.0 $
  */
-public class MaxTimeParticleFunction implements ParticleFunction
+public class MaxTimeParticleFunction implements BatchParticleFunction
 {
     /** Flag to handle the enabled state */
     private boolean enabled;
@@ -40,6 +40,25 @@ public class MaxTimeParticleFunction implements ParticleFunction
         currentTime = System.currentTimeMillis();
     }
 
+    /**
+     * Apply this function to a range of particles in the block.
+     *
+     * @param block The block holding the particles
+     * @param start The first slot to process
+     * @param end One past the last slot to process
+     */
+    @Override
+    public void applyBatch(ParticleBlock block, int start, int end)
+    {
+        long[] deaths = block.deathTimes;
+
+        for(int idx = start; idx < end; idx++)
+        {
+            if(currentTime >= deaths[idx])
+                block.kill(idx);
+        }
+    }
+
     /**
      * Check to see if this function has been enabled or not currently.
      *
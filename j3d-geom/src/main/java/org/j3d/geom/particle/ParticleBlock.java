@@ -0,0 +1,418 @@
+/*
+ * j3d.org Copyright (c) 2001-2015
+ *                                 Java Source
+ *
+ *  This source is licensed under the GNU LGPL v2.1
+ *  Please read docs/LGPL.txt for more information
+ *
+ *  This software comes with the standard NO WARRANTY disclaimer for any
+ *  purpose. Use it at your own risk. If there's a problem you get to fix it.
+ */
+
+package org.j3d.geom.particle;
+
+// External imports
+import java.util.Arrays;
+
+// Local imports
+// None
+
+/**
+ * Structure of arrays storage for the live particles of a system.
+ * <p>
+ *
+ * Rather than one {@link Particle} object per particle, each property is
+ * held in its own packed array, indexed by the particle's slot. Vector
+ * properties are interleaved, so the position of slot i is at
+ * <code>positions[i * 3]</code> to <code>positions[i * 3 + 2]</code> and
+ * its colour is at <code>colors[i * 4]</code> to
+ * <code>colors[i * 4 + 3]</code> as RGBA. Only the first
+ * {@link #getParticleCount()} slots are live.
+ * <p>
+ *
+ * The live particles are always packed into the front of the arrays. When
+ * one dies, the last live particle is moved into its slot, so the slot of a
+ * particle may change from one frame to the next and the order is not
+ * kept. The arrays are replaced with larger ones when the block grows past
+ * its capacity, so references to them should not be held past the current
+ * frame.
+ * <p>
+ *
+ * A particle is killed during an update by marking it with
+ * {@link #kill(int)}, which leaves it in place so that functions working
+ * over a range of slots are not disturbed. Once every function has run,
+ * {@link #removeDead()} compacts the block in one pass.
+ * <p>
+ *
+ * Code that works with the object interface can still get at a particle
+ * through {@link #readParticle(int, Particle)} and
+ * {@link #writeParticle(int, Particle)}, which copy the common
+ * {@link Particle} fields to and from a slot.
+ */
+public class ParticleBlock
+{
+    /** The capacity used when none is given */
+    private static final int DEFAULT_CAPACITY = 64;
+
+    /** The dimensions of a new particle, matching {@link Particle} */
+    private static final float DEFAULT_SIZE = 0.2f;
+
+    /** Position of each particle, 3 values per slot */
+    public double[] positions;
+
+    /** Velocity of each particle in meters per second, 3 values per slot */
+    public double[] velocities;
+
+    /** Resultant force on each particle in newtons, 3 values per slot */
+    public double[] forces;
+
+    /** RGBA colour of each particle, 4 values per slot */
+    public float[] colors;
+
+    /** Width, height and depth of each particle, 3 values per slot */
+    public float[] sizes;
+
+    /** Mass of each particle in kilograms */
+    public float[] masses;
+
+    /** Surface area of each particle in square meters */
+    public float[] surfaceAreas;
+
+    /** Wall clock time the particle was born, in milliseconds */
+    public long[] birthTimes;
+
+    /** Wall clock time the particle reaches the end of its life */
+    public long[] deathTimes;
+
+    /** The lifetime of each particle in milliseconds */
+    public int[] lifetimes;
+
+    /** The resettable cycle age of each particle */
+    public int[] cycleAges;
+
+    /** The number of live particles */
+    private int particleCount;
+
+    /** Flag per slot set when the particle has been killed this frame */
+    private boolean[] dead;
+
+    /**
+     * Create a new block with the default capacity.
+     */
+    public ParticleBlock()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a new block with room for the given number of particles before
+     * it needs to grow.
+     *
+     * @param capacity The initial number of slots
+     * @throws IllegalArgumentException The capacity is negative
+     */
+    public ParticleBlock(int capacity)
+    {
+        if(capacity < 0)
+            throw new IllegalArgumentException("Capacity is < 0");
+
+        allocate(capacity);
+    }
+
+    /**
+     * Get the number of live particles in the block.
+     *
+     * @return A non-negative count
+     */
+    public int getParticleCount()
+    {
+        return particleCount;
+    }
+
+    /**
+     * Get the number of particles the block can hold before it needs to grow.
+     *
+     * @return The current capacity
+     */
+    public int getCapacity()
+    {
+        return masses.length;
+    }
+
+    /**
+     * Make sure the block can hold at least the given number of particles
+     * without growing. The live particles are kept.
+     *
+     * @param capacity The number of slots needed
+     */
+    public void ensureCapacity(int capacity)
+    {
+        if(capacity <= masses.length)
+            return;
+
+        int size = Math.max(capacity, masses.length * 2);
+
+        positions = Arrays.copyOf(positions, size * 3);
+        velocities = Arrays.copyOf(velocities, size * 3);
+        forces = Arrays.copyOf(forces, size * 3);
+        colors = Arrays.copyOf(colors, size * 4);
+        sizes = Arrays.copyOf(sizes, size * 3);
+        masses = Arrays.copyOf(masses, size);
+        surfaceAreas = Arrays.copyOf(surfaceAreas, size);
+        birthTimes = Arrays.copyOf(birthTimes, size);
+        deathTimes = Arrays.copyOf(deathTimes, size);
+        lifetimes = Arrays.copyOf(lifetimes, size);
+        cycleAges = Arrays.copyOf(cycleAges, size);
+        dead = Arrays.copyOf(dead, size);
+    }
+
+    /**
+     * Add a new particle to the end of the block. All its values start as
+     * zero, except the dimensions, which are 0.2 as for {@link Particle}.
+     *
+     * @return The slot of the new particle
+     */
+    public int add()
+    {
+        ensureCapacity(particleCount + 1);
+
+        int idx = particleCount++;
+        int i3 = idx * 3;
+        int i4 = idx * 4;
+
+        positions[i3] = 0;
+        positions[i3 + 1] = 0;
+        positions[i3 + 2] = 0;
+        velocities[i3] = 0;
+        velocities[i3 + 1] = 0;
+        velocities[i3 + 2] = 0;
+        forces[i3] = 0;
+        forces[i3 + 1] = 0;
+        forces[i3 + 2] = 0;
+        colors[i4] = 0;
+        colors[i4 + 1] = 0;
+        colors[i4 + 2] = 0;
+        colors[i4 + 3] = 0;
+        sizes[i3] = DEFAULT_SIZE;
+        sizes[i3 + 1] = DEFAULT_SIZE;
+        sizes[i3 + 2] = DEFAULT_SIZE;
+        masses[idx] = 0;
+        surfaceAreas[idx] = 0;
+        birthTimes[idx] = 0;
+        deathTimes[idx] = 0;
+        lifetimes[idx] = 0;
+        cycleAges[idx] = 0;
+        dead[idx] = false;
+
+        return idx;
+    }
+
+    /**
+     * Remove the particle in the given slot. The last live particle is moved
+     * into its place, so after this call the slot holds a different particle
+     * unless it was the last one.
+     *
+     * @param index The slot of the particle to remove
+     * @throws IndexOutOfBoundsException The slot is not live
+     */
+    public void remove(int index)
+    {
+        if(index < 0 || index >= particleCount)
+            throw new IndexOutOfBoundsException("Particle " + index +
+                                                " not in block of " +
+                                                particleCount);
+
+        particleCount--;
+
+        if(index != particleCount)
+            copySlot(particleCount, index);
+    }
+
+    /**
+     * Mark the particle in the given slot as dead. It stays in the block
+     * until the next call to {@link #removeDead()}. Killing a particle more
+     * than once has no further effect.
+     *
+     * @param index The slot of the particle to kill
+     */
+    public void kill(int index)
+    {
+        dead[index] = true;
+    }
+
+    /**
+     * Check to see if the particle in the given slot has been killed and is
+     * waiting to be removed.
+     *
+     * @param index The slot to check
+     * @return true if the particle is dead
+     */
+    public boolean isDead(int index)
+    {
+        return dead[index];
+    }
+
+    /**
+     * Remove every particle that has been killed, swapping the last live
+     * particle into each freed slot.
+     *
+     * @return The number of particles removed
+     */
+    public int removeDead()
+    {
+        int start_count = particleCount;
+        int idx = 0;
+
+        while(idx < particleCount)
+        {
+            if(dead[idx])
+            {
+                particleCount--;
+
+                if(idx != particleCount)
+                    copySlot(particleCount, idx);
+                else
+                    dead[idx] = false;
+            }
+            else
+                idx++;
+        }
+
+        return start_count - particleCount;
+    }
+
+    /**
+     * Remove all the particles from the block. The capacity is kept.
+     */
+    public void clear()
+    {
+        particleCount = 0;
+    }
+
+    /**
+     * Set the resultant force of a range of particles back to zero.
+     *
+     * @param start The first slot to clear
+     * @param end One past the last slot to clear
+     */
+    public void clearForces(int start, int end)
+    {
+        Arrays.fill(forces, start * 3, end * 3, 0);
+    }
+
+    /**
+     * Copy the values of a slot into a particle object. Fields of the
+     * particle that the block does not hold are left alone.
+     *
+     * @param index The slot to read
+     * @param particle The particle to copy the values to
+     */
+    public void readParticle(int index, Particle particle)
+    {
+        int i3 = index * 3;
+        int i4 = index * 4;
+
+        particle.position.x = positions[i3];
+        particle.position.y = positions[i3 + 1];
+        particle.position.z = positions[i3 + 2];
+        particle.velocity.x = velocities[i3];
+        particle.velocity.y = velocities[i3 + 1];
+        particle.velocity.z = velocities[i3 + 2];
+        particle.resultantForce.x = forces[i3];
+        particle.resultantForce.y = forces[i3 + 1];
+        particle.resultantForce.z = forces[i3 + 2];
+
+        particle.red = colors[i4];
+        particle.green = colors[i4 + 1];
+        particle.blue = colors[i4 + 2];
+        particle.alpha = colors[i4 + 3];
+
+        particle.width = sizes[i3];
+        particle.height = sizes[i3 + 1];
+        particle.depth = sizes[i3 + 2];
+
+        particle.mass = masses[index];
+        particle.surfaceArea = surfaceAreas[index];
+        particle.wallClockBirth = birthTimes[index];
+        particle.wallClockLife = deathTimes[index];
+        particle.particleLife = lifetimes[index];
+        particle.cycleAge = cycleAges[index];
+    }
+
+    /**
+     * Copy the values of a particle object into a slot.
+     *
+     * @param index The slot to write
+     * @param particle The particle to copy the values from
+     */
+    public void writeParticle(int index, Particle particle)
+    {
+        int i3 = index * 3;
+        int i4 = index * 4;
+
+        positions[i3] = particle.position.x;
+        positions[i3 + 1] = particle.position.y;
+        positions[i3 + 2] = particle.position.z;
+        velocities[i3] = particle.velocity.x;
+        velocities[i3 + 1] = particle.velocity.y;
+        velocities[i3 + 2] = particle.velocity.z;
+        forces[i3] = particle.resultantForce.x;
+        forces[i3 + 1] = particle.resultantForce.y;
+        forces[i3 + 2] = particle.resultantForce.z;
+
+        colors[i4] = particle.red;
+        colors[i4 + 1] = particle.green;
+        colors[i4 + 2] = particle.blue;
+        colors[i4 + 3] = particle.alpha;
+
+        sizes[i3] = particle.width;
+        sizes[i3 + 1] = particle.height;
+        sizes[i3 + 2] = particle.depth;
+
+        masses[index] = particle.mass;
+        surfaceAreas[index] = particle.surfaceArea;
+        birthTimes[index] = particle.wallClockBirth;
+        deathTimes[index] = particle.wallClockLife;
+        lifetimes[index] = particle.particleLife;
+        cycleAges[index] = particle.cycleAge;
+    }
+
+    /**
+     * Copy every value of one slot over another.
+     */
+    private void copySlot(int src, int dest)
+    {
+        System.arraycopy(positions, src * 3, positions, dest * 3, 3);
+        System.arraycopy(velocities, src * 3, velocities, dest * 3, 3);
+        System.arraycopy(forces, src * 3, forces, dest * 3, 3);
+        System.arraycopy(colors, src * 4, colors, dest * 4, 4);
+        System.arraycopy(sizes, src * 3, sizes, dest * 3, 3);
+
+        masses[dest] = masses[src];
+        surfaceAreas[dest] = surfaceAreas[src];
+        birthTimes[dest] = birthTimes[src];
+        deathTimes[dest] = deathTimes[src];
+        lifetimes[dest] = lifetimes[src];
+        cycleAges[dest] = cycleAges[src];
+        dead[dest] = dead[src];
+    }
+
+    /**
+     * Create all the arrays at the given capacity.
+     */
+    private void allocate(int capacity)
+    {
+        positions = new double[capacity * 3];
+        velocities = new double[capacity * 3];
+        forces = new double[capacity * 3];
+        colors = new float[capacity * 4];
+        sizes = new float[capacity * 3];
+        masses = new float[capacity];
+        surfaceAreas = new float[capacity];
+        birthTimes = new long[capacity];
+        deathTimes = new long[capacity];
+        lifetimes = new int[capacity];
+        cycleAges = new int[capacity];
+        dead = new boolean[capacity];
+    }
+}
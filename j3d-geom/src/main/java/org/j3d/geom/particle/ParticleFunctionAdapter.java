@@ -0,0 +1,193 @@
+/*
+ * j3d.org Copyright (c) 2001-2015
+ *                                 Java Source
+ *
+ *  This source is licensed under the GNU LGPL v2.1
+ *  Please read docs/LGPL.txt for more information
+ *
+ *  This software comes with the standard NO WARRANTY disclaimer for any
+ *  purpose. Use it at your own risk. If there's a problem you get to fix it.
+ */
+
+package org.j3d.geom.particle;
+
+// External imports
+// None
+
+// Local imports
+// None
+
+/**
+ * Runs a sequence of per-particle functions over a range of a
+ * {@link ParticleBlock}.
+ * <p>
+ *
+ * Each live slot is copied into a single {@link Particle} instance, handed
+ * to each function in turn, and copied back. A run of neighbouring
+ * functions that have no batch form shares one adapter, so a particle is
+ * only copied once for the whole run. A particle that a function kills is
+ * not passed to the rest of the run.
+ * <p>
+ *
+ * The adapter's own particle instance is shared, so to run separate ranges
+ * at the same time each thread must pass in a particle of its own.
+ */
+class ParticleFunctionAdapter implements BatchParticleFunction
+{
+    /** The initial number of functions to assume */
+    private static final int NUM_INIT_FUNCTIONS = 2;
+
+    /** The particle used to present each slot to the functions */
+    private final Particle particle;
+
+    /** The functions to run, in order */
+    private ParticleFunction[] functions;
+
+    /** The number of functions in the array */
+    private int numFunctions;
+
+    /**
+     * Create an adapter with no functions.
+     *
+     * @param particle The particle instance to load each slot into
+     */
+    ParticleFunctionAdapter(Particle particle)
+    {
+        this.particle = particle;
+
+        functions = new ParticleFunction[NUM_INIT_FUNCTIONS];
+    }
+
+    //-------------------------------------------------------------
+    // Methods defined by BatchParticleFunction
+    //-------------------------------------------------------------
+
+    /**
+     * Apply the functions to a range of particles in the block.
+     *
+     * @param block The block holding the particles
+     * @param start The first slot to process
+     * @param end One past the last slot to process
+     */
+    @Override
+    public void applyBatch(ParticleBlock block, int start, int end)
+    {
+        applyBatch(block, start, end, particle);
+    }
+
+    //-------------------------------------------------------------
+    // Methods defined by ParticleFunction
+    //-------------------------------------------------------------
+
+    /**
+     * The adapter is only built from enabled functions, so is always
+     * enabled.
+     *
+     * @return true
+     */
+    @Override
+    public boolean isEnabled()
+    {
+        return true;
+    }
+
+    /**
+     * Ignored. Enable or disable the wrapped functions instead.
+     *
+     * @param state The new enabled state to set it to
+     */
+    @Override
+    public void setEnabled(boolean state)
+    {
+    }
+
+    /**
+     * Apply each of the functions to the particle in turn, stopping at the
+     * first that kills it.
+     *
+     * @param particle The particle that is being updated
+     * @return true if the particle continues to live, false otherwise
+     */
+    @Override
+    public boolean apply(Particle particle)
+    {
+        for(int i = 0; i < numFunctions; i++)
+        {
+            if(!functions[i].apply(particle))
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Ignored. The system informs the wrapped functions of a new frame
+     * itself.
+     *
+     * @param deltaT The elapsed time in milliseconds since the last frame
+     * @return true
+     */
+    @Override
+    public boolean newFrame(int deltaT)
+    {
+        return true;
+    }
+
+    //-------------------------------------------------------------
+    // Local Methods
+    //-------------------------------------------------------------
+
+    /**
+     * Apply the functions to a range of particles in the block, loading
+     * each slot into the given particle rather than the adapter's own. This
+     * allows separate ranges to be run at the same time.
+     *
+     * @param block The block holding the particles
+     * @param start The first slot to process
+     * @param end One past the last slot to process
+     * @param p The particle instance to load each slot into
+     */
+    void applyBatch(ParticleBlock block, int start, int end, Particle p)
+    {
+        for(int idx = start; idx < end; idx++)
+        {
+            if(block.isDead(idx))
+                continue;
+
+            block.readParticle(idx, p);
+
+            if(apply(p))
+                block.writeParticle(idx, p);
+            else
+                block.kill(idx);
+        }
+    }
+
+    /**
+     * Add a function to the end of the sequence.
+     *
+     * @param function The function to add
+     */
+    void addFunction(ParticleFunction function)
+    {
+        if(numFunctions == functions.length)
+        {
+            ParticleFunction[] tmp = new ParticleFunction[numFunctions * 2];
+            System.arraycopy(functions, 0, tmp, 0, numFunctions);
+            functions = tmp;
+        }
+
+        functions[numFunctions++] = function;
+    }
+
+    /**
+     * Remove all the functions from the sequence.
+     */
+    void clearFunctions()
+    {
+        for(int i = 0; i < numFunctions; i++)
+            functions[i] = null;
+
+        numFunctions = 0;
+    }
+}
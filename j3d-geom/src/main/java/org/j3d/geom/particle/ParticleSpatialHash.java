@@ -0,0 +1,357 @@
+/*
+ * j3d.org Copyright (c) 2001-2015
+ *                                 Java Source
+ *
+ *  This source is licensed under the GNU LGPL v2.1
+ *  Please read docs/LGPL.txt for more information
+ *
+ *  This software comes with the standard NO WARRANTY disclaimer for any
+ *  purpose. Use it at your own risk. If there's a problem you get to fix it.
+ */
+
+package org.j3d.geom.particle;
+
+// External imports
+import java.util.Arrays;
+
+// Local imports
+// None
+
+/**
+ * A uniform grid over the positions of the particles in a
+ * {@link ParticleBlock}, for finding the particles near a point without
+ * testing every particle.
+ * <p>
+ *
+ * Space is divided into cubic cells of a fixed size. The grid is unbounded,
+ * so the cells are hashed into a table with a power of two size of at
+ * least twice the particle count. Building the grid is a counting sort of
+ * the particles by bucket: one pass to count, a prefix sum, and one pass to
+ * place them. The positions are copied in bucket order, so a query walks
+ * contiguous memory. Several cells may share a bucket, so each entry also
+ * holds the key of its real cell, and entries from other cells are skipped.
+ * <p>
+ *
+ * <b>Use from functions</b>
+ * <p>
+ * A {@link ParticleSystem} with block storage that has been given a hash
+ * with {@link ParticleSystem#setSpatialHash(ParticleSpatialHash)} rebuilds
+ * it every frame, after new particles are created and before any function
+ * runs. A function that keeps a reference to the same hash can then look up
+ * the neighbours of each particle. The hash holds its own copy of the
+ * positions from the time it was built, which is what the queries use and
+ * what {@link #getPositions()} returns. Functions that move particles do
+ * not change it, so the results do not depend on the order in which the
+ * particles, or ranges of them on other threads, are processed. Queries
+ * only read the hash, so any number of threads can make them at once.
+ * <p>
+ *
+ * Query cost depends on the number of cells the search radius covers.
+ * Choose a cell size about twice the interaction radius so that a query
+ * visits 8 cells. A cell size equal to the radius means 27 cells, and each
+ * one is a random table lookup, which outweighs the smaller number of
+ * particles tested.
+ */
+public class ParticleSpatialHash
+{
+    /** The smallest table size */
+    private static final int MIN_TABLE_SIZE = 16;
+
+    /** Mask for one cell coordinate in a packed key */
+    private static final long KEY_MASK = 0x1FFFFF;
+
+    /** The size of a cell along each axis */
+    private final double cellSize;
+
+    /** 1 / cellSize */
+    private final double invCellSize;
+
+    /** Table size - 1, used to take the hash modulo the size */
+    private int tableMask;
+
+    /**
+     * Index of the first entry of each bucket in the sorted arrays. Has one
+     * extra item at the end holding the entry count.
+     */
+    private int[] bucketStart;
+
+    /** The bucket of each particle slot, kept between the two build passes */
+    private int[] slotBucket;
+
+    /** Particle slot of each sorted entry */
+    private int[] sortedSlots;
+
+    /** Packed cell key of each sorted entry */
+    private long[] sortedKeys;
+
+    /** Position of each sorted entry, 3 values per entry */
+    private double[] sortedPositions;
+
+    /** Positions of the particles in slot order when the hash was built */
+    private double[] positions;
+
+    /** The number of particles in the hash */
+    private int numParticles;
+
+    /**
+     * Create a new, empty hash with the given cell size.
+     *
+     * @param cellSize The size of each cell along each axis
+     * @throws IllegalArgumentException The cell size is not positive
+     */
+    public ParticleSpatialHash(double cellSize)
+    {
+        if(!(cellSize > 0))
+            throw new IllegalArgumentException("Cell size is <= 0");
+
+        this.cellSize = cellSize;
+        invCellSize = 1 / cellSize;
+
+        bucketStart = new int[MIN_TABLE_SIZE + 1];
+        tableMask = MIN_TABLE_SIZE - 1;
+        slotBucket = new int[0];
+        sortedSlots = new int[0];
+        sortedKeys = new long[0];
+        sortedPositions = new double[0];
+        positions = new double[0];
+    }
+
+    /**
+     * Get the size of the cells.
+     *
+     * @return The cell size along each axis
+     */
+    public double getCellSize()
+    {
+        return cellSize;
+    }
+
+    /**
+     * Get the number of particles that were in the block when the hash was
+     * last built.
+     *
+     * @return A non-negative count
+     */
+    public int getParticleCount()
+    {
+        return numParticles;
+    }
+
+    /**
+     * Get the particle positions as they were when the hash was last built,
+     * in slot order with 3 values per slot. The array is reused by the next
+     * build, so do not keep it past the current frame.
+     *
+     * @return The position array
+     */
+    public double[] getPositions()
+    {
+        return positions;
+    }
+
+    /**
+     * Rebuild the hash from the current positions of the live particles in
+     * the block.
+     *
+     * @param block The block to take the positions from
+     */
+    public void build(ParticleBlock block)
+    {
+        int count = block.getParticleCount();
+        int table_size = MIN_TABLE_SIZE;
+
+        while(table_size < count * 2)
+            table_size <<= 1;
+
+        if(bucketStart.length != table_size + 1)
+            bucketStart = new int[table_size + 1];
+        else
+            Arrays.fill(bucketStart, 0);
+
+        if(sortedSlots.length < count)
+        {
+            slotBucket = new int[count];
+            sortedSlots = new int[count];
+            sortedKeys = new long[count];
+            sortedPositions = new double[count * 3];
+            positions = new double[count * 3];
+        }
+
+        tableMask = table_size - 1;
+        numParticles = count;
+
+        double[] src = block.positions;
+        System.arraycopy(src, 0, positions, 0, count * 3);
+
+        // Count the particles in each bucket. Counts go one place up so that
+        // the prefix sum leaves each bucket's start in place.
+        for(int i = 0; i < count; i++)
+        {
+            int i3 = i * 3;
+            int bucket = bucketOf(cellOf(src[i3]),
+                                  cellOf(src[i3 + 1]),
+                                  cellOf(src[i3 + 2]));
+
+            slotBucket[i] = bucket;
+            bucketStart[bucket + 1]++;
+        }
+
+        for(int b = 0; b < table_size; b++)
+            bucketStart[b + 1] += bucketStart[b];
+
+        // Place each particle, using the start of each bucket as a running
+        // insert position, then shift the starts back down.
+        for(int i = 0; i < count; i++)
+        {
+            int bucket = slotBucket[i];
+            int entry = bucketStart[bucket]++;
+            int i3 = i * 3;
+            int e3 = entry * 3;
+
+            double x = src[i3];
+            double y = src[i3 + 1];
+            double z = src[i3 + 2];
+
+            sortedSlots[entry] = i;
+            sortedKeys[entry] = keyOf(cellOf(x), cellOf(y), cellOf(z));
+            sortedPositions[e3] = x;
+            sortedPositions[e3 + 1] = y;
+            sortedPositions[e3 + 2] = z;
+        }
+
+        System.arraycopy(bucketStart, 0, bucketStart, 1, table_size);
+        bucketStart[0] = 0;
+    }
+
+    /**
+     * Find the particles within a distance of a point. The slots of the
+     * particles found are written to the results array, in no particular
+     * order. If there are more than the array can hold, the search stops
+     * when it is full.
+     *
+     * @param x The x coordinate of the point
+     * @param y The y coordinate of the point
+     * @param z The z coordinate of the point
+     * @param radius The largest distance from the point to include
+     * @param results Array to write the particle slots to
+     * @return The number of slots written
+     */
+    public int findNeighbours(double x,
+                              double y,
+                              double z,
+                              double radius,
+                              int[] results)
+    {
+        return findNeighbours(x, y, z, radius, -1, results);
+    }
+
+    /**
+     * Find the other particles within a distance of one particle, using its
+     * position from when the hash was built. The particle itself is not
+     * included. If there are more than the array can hold, the search stops
+     * when it is full.
+     *
+     * @param slot The slot of the particle to search around
+     * @param radius The largest distance from the particle to include
+     * @param results Array to write the particle slots to
+     * @return The number of slots written
+     */
+    public int findNeighbours(int slot, double radius, int[] results)
+    {
+        int s3 = slot * 3;
+
+        return findNeighbours(positions[s3],
+                              positions[s3 + 1],
+                              positions[s3 + 2],
+                              radius,
+                              slot,
+                              results);
+    }
+
+    /**
+     * Common search code for the public methods.
+     *
+     * @param exclude A slot to leave out of the results, or -1
+     */
+    private int findNeighbours(double x,
+                               double y,
+                               double z,
+                               double radius,
+                               int exclude,
+                               int[] results)
+    {
+        if(numParticles == 0 || results.length == 0)
+            return 0;
+
+        double r_sq = radius * radius;
+        int min_x = cellOf(x - radius);
+        int max_x = cellOf(x + radius);
+        int min_y = cellOf(y - radius);
+        int max_y = cellOf(y + radius);
+        int min_z = cellOf(z - radius);
+        int max_z = cellOf(z + radius);
+        int found = 0;
+
+        for(int cx = min_x; cx <= max_x; cx++)
+        {
+            for(int cy = min_y; cy <= max_y; cy++)
+            {
+                for(int cz = min_z; cz <= max_z; cz++)
+                {
+                    int bucket = bucketOf(cx, cy, cz);
+                    long key = keyOf(cx, cy, cz);
+                    int end = bucketStart[bucket + 1];
+
+                    for(int e = bucketStart[bucket]; e < end; e++)
+                    {
+                        if(sortedKeys[e] != key || sortedSlots[e] == exclude)
+                            continue;
+
+                        int e3 = e * 3;
+                        double dx = sortedPositions[e3] - x;
+                        double dy = sortedPositions[e3 + 1] - y;
+                        double dz = sortedPositions[e3 + 2] - z;
+
+                        if(dx * dx + dy * dy + dz * dz <= r_sq)
+                        {
+                            results[found++] = sortedSlots[e];
+
+                            if(found == results.length)
+                                return found;
+                        }
+                    }
+                }
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * Convert a coordinate to the index of the cell holding it.
+     */
+    private int cellOf(double value)
+    {
+        return (int)Math.floor(value * invCellSize);
+    }
+
+    /**
+     * Pack the three cell indices into a single key. Each is kept to 21
+     * bits, which separates about two million cells along each axis.
+     */
+    private static long keyOf(int cx, int cy, int cz)
+    {
+        return ((cx & KEY_MASK) << 42) | ((cy & KEY_MASK) << 21) |
+               (cz & KEY_MASK);
+    }
+
+    /**
+     * Hash the cell indices to a bucket of the table.
+     */
+    private int bucketOf(int cx, int cy, int cz)
+    {
+        int hash = (cx * 73856093) ^ (cy * 19349663) ^ (cz * 83492791);
+
+        return (hash ^ (hash >>> 16)) & tableMask;
+    }
+}
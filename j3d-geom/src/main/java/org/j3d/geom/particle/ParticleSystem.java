@@ -11,12 +11,14 @@ package org.j3d.geom.particle;
 
 // External imports
 import java.util.ArrayList;
-
+import java.util.concurrent.ForkJoinPool;
 
 // Local imports
 import org.j3d.util.DefaultErrorReporter;
 import org.j3d.util.ErrorReporter;
+import org.j3d.util.ForkJoinUtils;
 import org.j3d.util.I18nManager;
+import org.j3d.util.RangeProcessor;
 
 /**
  * Abstract representation of a ParticleSystem.
@@ -28,6 +30,42 @@ import org.j3d.util.I18nManager;
  * <P>
  * A ParticleSystem can be represented in any way appropriate, the only
  * requirement is that is create a Node to be added to the scenegraph.
+ * <p>
+ *
+ * <b>Particle Storage</b>
+ * <p>
+ * By default each live particle is a {@link Particle} object held in the
+ * {@link #particleList}. A system constructed with block storage instead
+ * keeps its live particles in the packed arrays of a {@link ParticleBlock},
+ * so that an update walks contiguous memory and creates no objects. In that
+ * case the list is unused and {@link #updateGeometry()} should read from
+ * {@link #particleBlock}. Functions that implement
+ * {@link BatchParticleFunction} are run over the whole block in one call
+ * each. Other functions, and the initializer, still see a {@link Particle}:
+ * a single instance from {@link #createParticle()} is loaded from each
+ * slot, handed to them, and written back. Only the fields held by the block
+ * survive between frames, so particle classes that keep extra state of
+ * their own need the object storage.
+ * <p>
+ *
+ * <b>Threading</b>
+ * <p>
+ * {@link #update(long, ForkJoinPool)} can split the function passes of a
+ * large block into particle ranges that run in a fork/join pool. New
+ * particles are created before the split, and the dead are removed and
+ * {@link #updateGeometry()} called after all the ranges have finished, all
+ * on the thread running the update. Per-particle functions are given a
+ * particle instance per range, so they may run on several threads at once
+ * and must not rely on state shared between particles. Systems using the
+ * object storage always run on a single thread.
+ * <p>
+ *
+ * When a {@link ParticleSystemManager} updates several systems in a pool,
+ * it calls {@link #updateParticles(long, ForkJoinPool)} for each system on
+ * a pool thread, then runs the geometry updates one after the other on its
+ * own calling thread once every system has finished. So
+ * {@link #updateGeometry()} is always called on the thread that called the
+ * manager, and never at the same time as another system's.
  *
  * <p>
  * <b>Internationalisation Resource Names</b>
@@ -45,6 +83,12 @@ public abstract class ParticleSystem implements ParticleFactory
     /** The initial number of functions to assume just for initialisation */
     private static final int NUM_INIT_FUNCTIONS = 5;
 
+    /**
+     * Particles per range when the functions are run over a pool. Most
+     * functions are a few adds per particle, so ranges need to be long.
+     */
+    private static final int MIN_PARTICLE_CHUNK = 1024;
+
     /** Error message when the particle count is negative */
     private static final String NEG_PARTICLE_COUNT_PROP =
         "org.j3d.geom.particle.ParticleSystem.negParticleCountMsg";
@@ -88,6 +132,36 @@ public abstract class ParticleSystem implements ParticleFactory
     /** List of currently active particle instances */
     protected ParticleList particleList;
 
+    /** Packed storage of the live particles, or null when using the list */
+    protected ParticleBlock particleBlock;
+
+    /** The particle used to present block slots to functions */
+    private Particle blockParticle;
+
+    /** The batch passes to run over the block this frame */
+    private BatchParticleFunction[] blockPasses;
+
+    /** The number of valid passes in the above array */
+    private int numBlockPasses;
+
+    /** Adapters for runs of per-particle functions, reused between frames */
+    private ParticleFunctionAdapter[] functionAdapters;
+
+    /** Particles not in use for presenting block slots to functions */
+    private Particle[] spareParticles;
+
+    /** The number of valid particles in the above array */
+    private int numSpareParticles;
+
+    /** The time the last update took, in nanoseconds */
+    private long lastUpdateTime;
+
+    /** Set when the particles have been updated but the geometry has not */
+    private boolean geometryPending;
+
+    /** Grid over the particle positions rebuilt each frame, or null */
+    private ParticleSpatialHash spatialHash;
+
     /** Interpolator of texture coordinate handling */
     protected TexCoordInterpolator texCoordInterp;
 
@@ -123,6 +197,22 @@ public abstract class ParticleSystem implements ParticleFactory
      */
     public ParticleSystem(String name, int maxParticleCount)
         throws IllegalArgumentException
+    {
+        this(name, maxParticleCount, false);
+    }
+
+    /**
+     * Create a new ParticleSystem, choosing how the live particles are
+     * stored.
+     *
+     * @param name An arbitrary string name for ID purposes
+     * @param maxParticleCount The maximum number of particles allowed to exist
+     * @param useBlock true to keep the particles in a {@link ParticleBlock},
+     *   false to keep them as a list of {@link Particle} objects
+     * @throws IllegalArgumentException The particle count was negative
+     */
+    public ParticleSystem(String name, int maxParticleCount, boolean useBlock)
+        throws IllegalArgumentException
     {
         if(maxParticleCount < 0)
         {
@@ -135,7 +225,14 @@ public abstract class ParticleSystem implements ParticleFactory
         systemName = name;
         particleFunctions = new ArrayList<>(NUM_INIT_FUNCTIONS);
         particleList = new ParticleList();
-        deadParticles = new Particle[maxParticleCount];
+
+        if(useBlock)
+        {
+            particleBlock = new ParticleBlock(maxParticleCount);
+            deadParticles = new Particle[0];
+        }
+        else
+            deadParticles = new Particle[maxParticleCount];
 
         this.maxParticleCount = maxParticleCount;
         numDeadParticles = 0;
@@ -146,6 +243,9 @@ public abstract class ParticleSystem implements ParticleFactory
 
         numActiveFunctions = 0;
         activeFunctions = new ParticleFunction[NUM_INIT_FUNCTIONS];
+        blockPasses = new BatchParticleFunction[NUM_INIT_FUNCTIONS];
+        functionAdapters = new ParticleFunctionAdapter[NUM_INIT_FUNCTIONS];
+        spareParticles = new Particle[NUM_INIT_FUNCTIONS];
         errorReporter = DefaultErrorReporter.getDefaultReporter();
     }
 
@@ -186,6 +286,44 @@ public abstract class ParticleSystem implements ParticleFactory
         updateGeometry();
     }
 
+    /**
+     * Check to see whether this system keeps its particles in a
+     * {@link ParticleBlock}.
+     *
+     * @return true if block storage is in use
+     */
+    public boolean isBlockStorage()
+    {
+        return particleBlock != null;
+    }
+
+    /**
+     * Set a spatial hash to be rebuilt over the particle positions each
+     * frame, before the functions run. Functions doing particle to particle
+     * interaction should be given the same instance. A value of null stops
+     * the rebuilding.
+     *
+     * @param hash The hash to keep up to date or null
+     * @throws IllegalStateException This system does not use block storage
+     */
+    public void setSpatialHash(ParticleSpatialHash hash)
+    {
+        if(hash != null && particleBlock == null)
+            throw new IllegalStateException("Spatial hash needs block storage");
+
+        spatialHash = hash;
+    }
+
+    /**
+     * Get the spatial hash currently rebuilt each frame.
+     *
+     * @return The hash or null if none is set
+     */
+    public ParticleSpatialHash getSpatialHash()
+    {
+        return spatialHash;
+    }
+
     /**
      * Notification that this particle system has been removed from the scene
      * graph and it cleanup anything needed right now.
@@ -355,14 +493,62 @@ public abstract class ParticleSystem implements ParticleFactory
 
     /**
      * Inform each of the ParticleFunctions so they can do any processing.
+     * All of the work is done on the calling thread.
      *
      * @param timestamp The time for this frame
      * @return true if the system is currently running
      */
     public boolean update(long timestamp)
+    {
+        return update(timestamp, null);
+    }
+
+    /**
+     * Inform each of the ParticleFunctions so they can do any processing,
+     * splitting the particles of a large block over the given fork/join
+     * pool. If the pool is null, or the system uses object storage, all of
+     * the work is done on the calling thread. The time taken is available
+     * afterwards from {@link #getLastUpdateTime()}.
+     * <p>
+     *
+     * This is {@link #updateParticles(long, ForkJoinPool)} followed by
+     * {@link #updateGeometry()}. Subclasses that need to change how the
+     * particles are updated should override
+     * {@link #updateParticles(long, ForkJoinPool)}, as the manager calls
+     * that directly when it has a pool.
+     *
+     * @param timestamp The time for this frame
+     * @param pool The pool to run the work in or null for the calling thread
+     * @return true if the system is currently running
+     */
+    public boolean update(long timestamp, ForkJoinPool pool)
+    {
+        boolean ret_val = updateParticles(timestamp, pool);
+        completeUpdate();
+
+        return ret_val;
+    }
+
+    /**
+     * Run the particle creation and the functions for this frame, without
+     * updating the geometry. The particles of a large block are split over
+     * the given pool. The caller must follow this with
+     * {@link #updateGeometry()} before the next frame, which the manager
+     * does on its own thread.
+     *
+     * @param timestamp The time for this frame
+     * @param pool The pool to run the work in or null for the calling thread
+     * @return true if the system is currently running
+     */
+    public boolean updateParticles(long timestamp, ForkJoinPool pool)
     {
         if(particleInitializer == null)
+        {
+            lastUpdateTime = 0;
             return true;
+        }
+
+        long start_time = System.nanoTime();
 
         // Work out the delta for frame times. If, due to win32 stupid timer
         // we end up with 0 time between frames, then just bump it a little so
@@ -385,12 +571,43 @@ public abstract class ParticleSystem implements ParticleFactory
             createNewParticles();
 
         updateParticleFunctions(frameTime);
-        runParticleFunctions();
-        updateGeometry();
+        runParticleFunctions(pool);
+
+        geometryPending = true;
+        lastUpdateTime = System.nanoTime() - start_time;
 
         return true;
     }
 
+    /**
+     * Update the geometry after {@link #updateParticles(long, ForkJoinPool)}
+     * has run, adding its time to the update time. Does nothing if the
+     * particles were not updated.
+     */
+    void completeUpdate()
+    {
+        if(!geometryPending)
+            return;
+
+        long start_time = System.nanoTime();
+
+        updateGeometry();
+
+        geometryPending = false;
+        lastUpdateTime += System.nanoTime() - start_time;
+    }
+
+    /**
+     * Get the time the last call to update took, including the geometry
+     * update. Useful for finding which systems are the expensive ones.
+     *
+     * @return The time in nanoseconds, or 0 if nothing was run
+     */
+    public long getLastUpdateTime()
+    {
+        return lastUpdateTime;
+    }
+
     /**
      * Gets the currently set systemName.
      *
@@ -432,7 +649,9 @@ public abstract class ParticleSystem implements ParticleFactory
             throw new IllegalArgumentException(msg);
         }
 
-        if(maxCount > deadParticles.length)
+        if(particleBlock != null)
+            particleBlock.ensureCapacity(maxCount);
+        else if(maxCount > deadParticles.length)
         {
             Particle[] tmp = new Particle[maxCount];
             System.arraycopy(deadParticles, 0, tmp, 0, numDeadParticles);
@@ -484,9 +703,17 @@ public abstract class ParticleSystem implements ParticleFactory
 
     /**
      * Evaluate the particle functions now.
+     *
+     * @param pool The pool to split block storage over or null
      */
-    private void runParticleFunctions()
+    private void runParticleFunctions(ForkJoinPool pool)
     {
+        if(particleBlock != null)
+        {
+            runBlockFunctions(pool);
+            return;
+        }
+
         // Quick exit if there's nothing to be done
         if(particleFunctions.size() == 0 || particleList.size() == 0)
             return;
@@ -537,6 +764,12 @@ public abstract class ParticleSystem implements ParticleFactory
             creationResidue = 0;
         }
 
+        if(particleBlock != null)
+        {
+            createBlockParticles(needed);
+            return;
+        }
+
         for(int n = 0; n < needed; n++)
         {
             Particle particle = fetchParticle();
@@ -550,6 +783,208 @@ public abstract class ParticleSystem implements ParticleFactory
         particleCount += needed;
     }
 
+    /**
+     * Evaluate the particle functions over the block, in ranges if there is
+     * a pool and enough particles. The particles killed along the way are
+     * all removed once every range has finished.
+     *
+     * @param pool The pool to run the ranges in or null
+     */
+    private void runBlockFunctions(ForkJoinPool pool)
+    {
+        int num_particles = particleBlock.getParticleCount();
+
+        if(spatialHash != null)
+            spatialHash.build(particleBlock);
+
+        if(num_particles == 0)
+            return;
+
+        buildBlockPasses();
+
+        // Killed particles are only marked, so no range writes outside of
+        // its own slots.
+        RangeProcessor processor = new RangeProcessor()
+        {
+            @Override
+            public void processRange(int start, int end)
+            {
+                processParticles(start, end);
+            }
+        };
+
+        ForkJoinUtils.forRange(pool, 0, num_particles, MIN_PARTICLE_CHUNK,
+                               processor);
+
+        particleCount -= particleBlock.removeDead();
+    }
+
+    /**
+     * Run every function pass over a range of the block. Each pass runs over
+     * the whole range before the next starts.
+     *
+     * @param start The first slot to process
+     * @param end One past the last slot to process
+     */
+    private void processParticles(int start, int end)
+    {
+        particleBlock.clearForces(start, end);
+
+        Particle p = null;
+
+        for(int i = 0; i < numBlockPasses; i++)
+        {
+            BatchParticleFunction pass = blockPasses[i];
+
+            if(pass instanceof ParticleFunctionAdapter)
+            {
+                if(p == null)
+                    p = acquireSpareParticle();
+
+                ((ParticleFunctionAdapter)pass).applyBatch(particleBlock,
+                                                           start,
+                                                           end,
+                                                           p);
+            }
+            else
+                pass.applyBatch(particleBlock, start, end);
+        }
+
+        if(p != null)
+            releaseSpareParticle(p);
+    }
+
+    /**
+     * Turn the active functions into the list of passes over the block.
+     * Batch functions are used as they are. Each run of neighbouring
+     * per-particle functions is gathered into one adapter.
+     */
+    private void buildBlockPasses()
+    {
+        if(blockPasses.length < numActiveFunctions)
+        {
+            blockPasses = new BatchParticleFunction[numActiveFunctions];
+
+            ParticleFunctionAdapter[] tmp =
+                new ParticleFunctionAdapter[numActiveFunctions];
+            System.arraycopy(functionAdapters,
+                             0,
+                             tmp,
+                             0,
+                             functionAdapters.length);
+            functionAdapters = tmp;
+        }
+
+        int num_passes = 0;
+        int num_adapters = 0;
+
+        ParticleFunctionAdapter adapter = null;
+
+        for(int i = 0; i < numActiveFunctions; i++)
+        {
+            ParticleFunction function = activeFunctions[i];
+
+            if(function instanceof BatchParticleFunction)
+            {
+                blockPasses[num_passes++] = (BatchParticleFunction)function;
+                adapter = null;
+            }
+            else
+            {
+                if(adapter == null)
+                {
+                    adapter = functionAdapters[num_adapters];
+
+                    if(adapter == null)
+                    {
+                        adapter = new ParticleFunctionAdapter(getBlockParticle());
+                        functionAdapters[num_adapters] = adapter;
+                    }
+                    else
+                        adapter.clearFunctions();
+
+                    num_adapters++;
+                    blockPasses[num_passes++] = adapter;
+                }
+
+                adapter.addFunction(function);
+            }
+        }
+
+        numBlockPasses = num_passes;
+    }
+
+    /**
+     * Create new particles in the block, passing each through the
+     * initializer.
+     *
+     * @param needed The number of particles to create
+     */
+    private void createBlockParticles(int needed)
+    {
+        Particle p = getBlockParticle();
+
+        for(int n = 0; n < needed; n++)
+        {
+            int idx = particleBlock.add();
+
+            particleBlock.readParticle(idx, p);
+            p.wallClockBirth = timeNow;
+            particleInitializer.initialize(p);
+            particleBlock.writeParticle(idx, p);
+        }
+
+        particleCount += needed;
+    }
+
+    /**
+     * Get the particle instance used to present block slots, creating it the
+     * first time.
+     *
+     * @return The shared facade particle
+     */
+    private Particle getBlockParticle()
+    {
+        if(blockParticle == null)
+            blockParticle = createParticle();
+
+        return blockParticle;
+    }
+
+    /**
+     * Take a particle for presenting block slots to per-particle functions
+     * on the current thread, creating one if none are spare.
+     *
+     * @return A particle instance not in use by any other thread
+     */
+    private synchronized Particle acquireSpareParticle()
+    {
+        if(numSpareParticles == 0)
+            return createParticle();
+
+        Particle ret_val = spareParticles[--numSpareParticles];
+        spareParticles[numSpareParticles] = null;
+
+        return ret_val;
+    }
+
+    /**
+     * Hand back a particle taken with {@link #acquireSpareParticle()}.
+     *
+     * @param p The particle that is no longer in use
+     */
+    private synchronized void releaseSpareParticle(Particle p)
+    {
+        if(numSpareParticles == spareParticles.length)
+        {
+            Particle[] tmp = new Particle[numSpareParticles * 2];
+            System.arraycopy(spareParticles, 0, tmp, 0, numSpareParticles);
+            spareParticles = tmp;
+        }
+
+        spareParticles[numSpareParticles++] = p;
+    }
+
     /**
      * Fetch a new particle instance. The instance will be fetched from the cache if
      * available, otherwise a new one will be created.
@@ -11,10 +11,13 @@ package org.j3d.geom.particle;
 
 // External imports
 import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
 
 // Local imports
 import org.j3d.util.DefaultErrorReporter;
 import org.j3d.util.ErrorReporter;
+import org.j3d.util.ForkJoinUtils;
+import org.j3d.util.RangeProcessor;
 
 /**
  * The ParticleSystemManager is a simple manager that controls all of the
@@ -23,6 +26,19 @@ import org.j3d.util.ErrorReporter;
  * The manager needs to have a clock ticking it to drive the updates of the
  * managed particles. It has a List of registered ParticleSystems and calls the
  * update method on each whenever it is triggered.
+ * <p>
+ *
+ * By default the systems are updated one after the other on the thread that
+ * calls {@link #update()}. Once a fork/join pool has been set, the systems
+ * are updated in parallel, and large systems using block storage split
+ * their particles over the same pool. Systems updated in parallel must not
+ * share function or initializer instances. Only the particle work runs in
+ * the pool: the geometry of each system is updated afterwards, one system
+ * at a time, on the thread that called {@link #update()}, so
+ * {@link ParticleSystem#updateGeometry()} may touch the scene graph as it
+ * would in a serial update. The time each system took for
+ * its last update is available from
+ * {@link ParticleSystem#getLastUpdateTime()}.
  *
  * @author Daniel Selman
  * @version $Revision: 2.1 $
@@ -38,6 +54,15 @@ public class ParticleSystemManager
     /** Local reporter to put errors in */
     protected ErrorReporter errorReporter;
 
+    /** The pool to update the systems in, or null for the calling thread */
+    private ForkJoinPool updatePool;
+
+    /** Array copy of the systems for handing to the update tasks */
+    private ParticleSystem[] systemArray;
+
+    /** Result of the last update of each system in the array */
+    private boolean[] systemRunning;
+
     /**
      * Create a new manager, with no systems registered.
      */
@@ -46,6 +71,8 @@ public class ParticleSystemManager
         particleSystems = new ArrayList<>();
         newSystems = new ArrayList<>();
         errorReporter = DefaultErrorReporter.getDefaultReporter();
+        systemArray = new ParticleSystem[0];
+        systemRunning = new boolean[0];
     }
 
     /**
@@ -72,6 +99,28 @@ public class ParticleSystemManager
         }
     }
 
+    /**
+     * Set the fork/join pool used to update the systems. A value of null
+     * causes all updates to run on the calling thread, which is the
+     * default.
+     *
+     * @param pool The pool to use or null
+     */
+    public void setForkJoinPool(ForkJoinPool pool)
+    {
+        updatePool = pool;
+    }
+
+    /**
+     * Get the fork/join pool currently used to update the systems.
+     *
+     * @return The pool or null if updates run on the calling thread
+     */
+    public ForkJoinPool getForkJoinPool()
+    {
+        return updatePool;
+    }
+
     /**
      * Update the registered particle systems now. If any registered systems
      * have completed their function, they will be automatically removed.
@@ -89,6 +138,12 @@ public class ParticleSystemManager
 
         newSystems.clear();
 
+        if(updatePool != null)
+        {
+            updateParallel(time);
+            return;
+        }
+
         for(int n = particleSystems.size() - 1; n >= 0; n--)
         {
             system = particleSystems.get(n);
@@ -125,4 +180,61 @@ public class ParticleSystemManager
     {
         particleSystems.remove(system);
     }
+
+    /**
+     * Update the particles of all the systems in the pool, waiting for them
+     * all to finish. Then update the geometry of each and remove the ones
+     * that have completed, on the calling thread.
+     *
+     * @param time The time of this frame
+     */
+    private void updateParallel(long time)
+    {
+        int num_systems = particleSystems.size();
+
+        if(num_systems == 0)
+            return;
+
+        if(systemArray.length < num_systems)
+        {
+            systemArray = new ParticleSystem[num_systems];
+            systemRunning = new boolean[num_systems];
+        }
+
+        particleSystems.toArray(systemArray);
+
+        final ParticleSystem[] systems = systemArray;
+        final boolean[] running = systemRunning;
+        final long frame_time = time;
+        final ForkJoinPool pool = updatePool;
+
+        // Each system is updated with the same pool, so a large one can
+        // split its own particles into further tasks.
+        RangeProcessor processor = new RangeProcessor()
+        {
+            @Override
+            public void processRange(int start, int end)
+            {
+                for(int i = start; i < end; i++)
+                    running[i] = systems[i].updateParticles(frame_time, pool);
+            }
+        };
+
+        ForkJoinUtils.forRange(pool, 0, num_systems, 1, processor);
+
+        for(int n = 0; n < num_systems; n++)
+            systemArray[n].completeUpdate();
+
+        for(int n = num_systems - 1; n >= 0; n--)
+        {
+            if(!systemRunning[n])
+            {
+                // the system is dead, so we can remove it...
+                systemArray[n].onRemove();
+                particleSystems.remove(n);
+            }
+
+            systemArray[n] = null;
+        }
+    }
 }
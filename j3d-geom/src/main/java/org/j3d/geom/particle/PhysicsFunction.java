@@ -42,7 +42,7 @@ package org.j3d.geom.particle;
  * @author Daniel Selman, Justin Couch
  * @version $Revision: 2.1 $
  */
-public class PhysicsFunction implements ParticleFunction
+public class PhysicsFunction implements BatchParticleFunction
 {
     /**
      * The assumed initial interval between calls to the PhysicsFunction
@@ -63,6 +63,44 @@ public class PhysicsFunction implements ParticleFunction
         deltaTime = 1.0f / 40.0f;
     }
 
+    //-------------------------------------------------------------
+    // Methods defined by BatchParticleFunction
+    //-------------------------------------------------------------
+
+    /**
+     * Apply this function to a range of particles in the block.
+     *
+     * @param block The block holding the particles
+     * @param start The first slot to process
+     * @param end One past the last slot to process
+     */
+    @Override
+    public void applyBatch(ParticleBlock block, int start, int end)
+    {
+        double[] positions = block.positions;
+        double[] velocities = block.velocities;
+        double[] forces = block.forces;
+        float[] masses = block.masses;
+        float dt = deltaTime;
+
+        for(int idx = start; idx < end; idx++)
+        {
+            int i3 = idx * 3;
+            float mass = masses[idx];
+
+            if(mass != 0)
+            {
+                velocities[i3] += forces[i3] * dt / mass;
+                velocities[i3 + 1] += forces[i3 + 1] * dt / mass;
+                velocities[i3 + 2] += forces[i3 + 2] * dt / mass;
+            }
+
+            positions[i3] += velocities[i3] * dt;
+            positions[i3 + 1] += velocities[i3 + 1] * dt;
+            positions[i3 + 2] += velocities[i3 + 2] * dt;
+        }
+    }
+
     //-------------------------------------------------------------
     // Methods defined by ParticleFunction
     //-------------------------------------------------------------
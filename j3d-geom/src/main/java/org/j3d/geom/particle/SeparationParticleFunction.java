@@ -0,0 +1,355 @@
+/*
+ * j3d.org Copyright (c) 2001-2015
+ *                                 Java Source
+ *
+ *  This source is licensed under the GNU LGPL v2.1
+ *  Please read docs/LGPL.txt for more information
+ *
+ *  This software comes with the standard NO WARRANTY disclaimer for any
+ *  purpose. Use it at your own risk. If there's a problem you get to fix it.
+ */
+
+package org.j3d.geom.particle;
+
+// External imports
+// None
+
+// Local imports
+// None
+
+/**
+ * Pushes particles that are close together apart.
+ * <p>
+ *
+ * Each neighbour within the radius adds a force directly away from it,
+ * with a strength that falls linearly from the full value when the two
+ * particles touch to zero at the radius. Neighbours are found through a
+ * {@link ParticleSpatialHash}, which must be the one set on the particle
+ * system with {@link ParticleSystem#setSpatialHash(ParticleSpatialHash)} so
+ * that it is rebuilt each frame. The cell size of the hash should be about
+ * twice the radius, so that each search covers 2 cells along each axis;
+ * smaller cells visit 27 or more cells and their extra table lookups cost
+ * more than the fewer distance tests save. The constructor that only
+ * takes a radius creates a hash of that size, fetched with
+ * {@link #getSpatialHash()}.
+ * <p>
+ *
+ * Only force is applied, so this should be placed before a
+ * {@link PhysicsFunction}. Neighbours beyond the maximum count are ignored,
+ * which keeps the cost per particle bounded in dense clumps.
+ * <p>
+ *
+ * {@link #applyBatch(ParticleBlock, int, int)} may be run on several ranges
+ * at once. {@link #apply(Particle)} shares one set of working arrays
+ * between calls, so it must only be called from one thread at a time. That
+ * is always the case inside a {@link ParticleSystem}, which only calls it
+ * for object storage, and object storage is never split over threads.
+ */
+public class SeparationParticleFunction implements BatchParticleFunction
+{
+    /** The default most neighbours considered for each particle */
+    private static final int DEFAULT_MAX_NEIGHBOURS = 32;
+
+    /** The hash to find neighbours with */
+    private final ParticleSpatialHash hash;
+
+    /** The distance within which particles push each other */
+    private float radius;
+
+    /** The force in newtons between two particles at the same place */
+    private float strength;
+
+    /** The most neighbours considered for each particle */
+    private int maxNeighbours;
+
+    /** Flag to say whether or not this function is disabled or not */
+    private boolean enabled;
+
+    /** Neighbour list used by the per-particle apply() */
+    private int[] neighbours;
+
+    /** Force total used by the per-particle apply() */
+    private double[] force;
+
+    /**
+     * Create a new separation function with its own hash, using cells twice
+     * the radius in size. The hash must still be set on the particle system
+     * so that it is rebuilt each frame. Changing the radius later does not
+     * change the cell size.
+     *
+     * @param radius The distance within which particles push each other
+     * @param strength The force between two particles at the same place
+     * @throws IllegalArgumentException The radius is not positive
+     */
+    public SeparationParticleFunction(float radius, float strength)
+    {
+        this(new ParticleSpatialHash(radius > 0 ? 2 * radius : radius),
+             radius,
+             strength);
+    }
+
+    /**
+     * Create a new separation function.
+     *
+     * @param hash The hash that is rebuilt each frame by the system
+     * @param radius The distance within which particles push each other
+     * @param strength The force between two particles at the same place
+     * @throws IllegalArgumentException The radius is not positive
+     */
+    public SeparationParticleFunction(ParticleSpatialHash hash,
+                                      float radius,
+                                      float strength)
+    {
+        if(!(radius > 0))
+            throw new IllegalArgumentException("Radius is <= 0");
+
+        this.hash = hash;
+        this.radius = radius;
+        this.strength = strength;
+
+        maxNeighbours = DEFAULT_MAX_NEIGHBOURS;
+        neighbours = new int[maxNeighbours];
+        force = new double[3];
+        enabled = true;
+    }
+
+    //-------------------------------------------------------------
+    // Methods defined by BatchParticleFunction
+    //-------------------------------------------------------------
+
+    /**
+     * Apply this function to a range of particles in the block.
+     *
+     * @param block The block holding the particles
+     * @param start The first slot to process
+     * @param end One past the last slot to process
+     */
+    @Override
+    public void applyBatch(ParticleBlock block, int start, int end)
+    {
+        // Ranges may run on several threads, so each gets its own list
+        int[] found = new int[maxNeighbours];
+        double[] snapshot = hash.getPositions();
+        double[] forces = block.forces;
+        int limit = Math.min(end, hash.getParticleCount());
+
+        for(int idx = start; idx < limit; idx++)
+        {
+            int i3 = idx * 3;
+            int num = hash.findNeighbours(idx, radius, found);
+
+            addForces(snapshot[i3],
+                      snapshot[i3 + 1],
+                      snapshot[i3 + 2],
+                      snapshot,
+                      found,
+                      num,
+                      forces,
+                      i3);
+        }
+    }
+
+    //-------------------------------------------------------------
+    // Methods defined by ParticleFunction
+    //-------------------------------------------------------------
+
+    /**
+     * Check to see if this function has been enabled or not currently.
+     *
+     * @return True if this is enabled
+     */
+    @Override
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Set the enabled state of this function. A disabled function will not
+     * be applied to particles during this update.
+     *
+     * @param state The new enabled state to set it to
+     */
+    @Override
+    public void setEnabled(boolean state)
+    {
+        enabled = state;
+    }
+
+    /**
+     * Notification that the system is about to do an update of the particles
+     * and to do any system-level initialisation.
+     *
+     * @param deltaT The elapsed time in milliseconds since the last frame
+     * @return true if this should force another update after this one
+     */
+    @Override
+    public boolean newFrame(int deltaT)
+    {
+        return true;
+    }
+
+    /**
+     * Apply this function to the given particle right now. The particle is
+     * looked up by its current position, so a neighbour sitting at exactly
+     * the same place cannot be told apart from the particle itself and is
+     * ignored. Not safe to call from more than one thread at once, as the
+     * neighbour list and force total are held by the function.
+     *
+     * @param particle The particle to apply the function to
+     * @return true always
+     */
+    @Override
+    public boolean apply(Particle particle)
+    {
+        double x = particle.position.x;
+        double y = particle.position.y;
+        double z = particle.position.z;
+
+        int num = hash.findNeighbours(x, y, z, radius, neighbours);
+
+        force[0] = 0;
+        force[1] = 0;
+        force[2] = 0;
+
+        addForces(x, y, z, hash.getPositions(), neighbours, num, force, 0);
+
+        particle.resultantForce.x += force[0];
+        particle.resultantForce.y += force[1];
+        particle.resultantForce.z += force[2];
+
+        return true;
+    }
+
+    //-------------------------------------------------------------
+    // Local methods
+    //-------------------------------------------------------------
+
+    /**
+     * Get the hash this function finds neighbours with. This is the one to
+     * set on the particle system.
+     *
+     * @return The spatial hash
+     */
+    public ParticleSpatialHash getSpatialHash()
+    {
+        return hash;
+    }
+
+    /**
+     * Set the distance within which particles push each other.
+     *
+     * @param radius The new radius
+     * @throws IllegalArgumentException The radius is not positive
+     */
+    public void setRadius(float radius)
+    {
+        if(!(radius > 0))
+            throw new IllegalArgumentException("Radius is <= 0");
+
+        this.radius = radius;
+    }
+
+    /**
+     * Get the distance within which particles push each other.
+     *
+     * @return The current radius
+     */
+    public float getRadius()
+    {
+        return radius;
+    }
+
+    /**
+     * Set the force between two particles at the same place.
+     *
+     * @param strength The force in newtons
+     */
+    public void setStrength(float strength)
+    {
+        this.strength = strength;
+    }
+
+    /**
+     * Get the force between two particles at the same place.
+     *
+     * @return The force in newtons
+     */
+    public float getStrength()
+    {
+        return strength;
+    }
+
+    /**
+     * Set the most neighbours considered for each particle.
+     *
+     * @param count The neighbour count, at least 1
+     * @throws IllegalArgumentException The count is less than 1
+     */
+    public void setMaxNeighbours(int count)
+    {
+        if(count < 1)
+            throw new IllegalArgumentException("Neighbour count is < 1");
+
+        maxNeighbours = count;
+        neighbours = new int[count];
+    }
+
+    /**
+     * Get the most neighbours considered for each particle.
+     *
+     * @return The neighbour count
+     */
+    public int getMaxNeighbours()
+    {
+        return maxNeighbours;
+    }
+
+    /**
+     * Add the push from each of the neighbours on a point to a force.
+     *
+     * @param x The x coordinate of the point
+     * @param y The y coordinate of the point
+     * @param z The z coordinate of the point
+     * @param positions The neighbour positions, in slot order
+     * @param found The slots of the neighbours
+     * @param num The number of neighbours
+     * @param force The array to add the force to
+     * @param offset The index of the force in the array
+     */
+    private void addForces(double x,
+                           double y,
+                           double z,
+                           double[] positions,
+                           int[] found,
+                           int num,
+                           double[] force,
+                           int offset)
+    {
+        double f_x = 0;
+        double f_y = 0;
+        double f_z = 0;
+
+        for(int n = 0; n < num; n++)
+        {
+            int j3 = found[n] * 3;
+            double dx = x - positions[j3];
+            double dy = y - positions[j3 + 1];
+            double dz = z - positions[j3 + 2];
+            double dist = Math.sqrt(dx * dx + dy * dy + dz * dz);
+
+            if(dist == 0)
+                continue;
+
+            double scale = strength * (1 - dist / radius) / dist;
+
+            f_x += dx * scale;
+            f_y += dy * scale;
+            f_z += dz * scale;
+        }
+
+        force[offset] += f_x;
+        force[offset + 1] += f_y;
+        force[offset + 2] += f_z;
+    }
+}
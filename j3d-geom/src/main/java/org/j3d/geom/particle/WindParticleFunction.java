@@ -11,6 +11,7 @@ package org.j3d.geom.particle;
 
 // External imports
 import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 // Local imports
 import org.j3d.util.I18nManager;
@@ -53,7 +54,7 @@ import org.j3d.util.I18nManager;
  * @author Justin Couch
  * @version $Revision: 2.2 $
  */
-public class WindParticleFunction implements ParticleFunction
+public class WindParticleFunction implements BatchParticleFunction
 {
     /** Message when the gustiness is negative */
     private static final String NEG_GUSTINESS_MSG =
@@ -137,6 +138,52 @@ public class WindParticleFunction implements ParticleFunction
         recalculatePressure();
     }
 
+    //-------------------------------------------------------------
+    // Methods defined by BatchParticleFunction
+    //-------------------------------------------------------------
+
+    /**
+     * Apply this function to a range of particles in the block.
+     *
+     * @param block The block holding the particles
+     * @param start The first slot to process
+     * @param end One past the last slot to process
+     */
+    @Override
+    public void applyBatch(ParticleBlock block, int start, int end)
+    {
+        float base_x = currentPressure * direction[0];
+        float base_y = currentPressure * direction[1];
+        float base_z = currentPressure * direction[2];
+        double[] forces = block.forces;
+        float[] areas = block.surfaceAreas;
+
+        // Ranges may run on several threads at once, so take the per-thread
+        // generator rather than contending on the shared randomiser.
+        Random rand = ThreadLocalRandom.current();
+
+        for(int idx = start; idx < end; idx++)
+        {
+            float force_x = base_x;
+            float force_y = base_y;
+            float force_z = base_z;
+
+            if(turbulence != 0)
+            {
+                force_x += rand.nextFloat() * turbulence;
+                force_y += rand.nextFloat() * turbulence;
+                force_z += rand.nextFloat() * turbulence;
+            }
+
+            float area = areas[idx];
+            int i3 = idx * 3;
+
+            forces[i3] += force_x * area;
+            forces[i3 + 1] += force_y * area;
+            forces[i3 + 2] += force_z * area;
+        }
+    }
+
     //-------------------------------------------------------------
     // Methods defined by ParticleFunction
     //-------------------------------------------------------------
@@ -0,0 +1,875 @@
+/*
+ * j3d.org Copyright (c) 2001-2015
+ *                                 Java Source
+ *
+ *  This source is licensed under the GNU LGPL v2.1
+ *  Please read docs/LGPL.txt for more information
+ *
+ *  This software comes with the standard NO WARRANTY disclaimer for any
+ *  purpose. Use it at your own risk. If there's a problem you get to fix it.
+ */
+
+package org.j3d.geom.spline;
+
+// External imports
+import java.util.Arrays;
+
+// Local imports
+import org.j3d.maths.vector.Matrix4d;
+
+/**
+ * Tessellates a {@link PatchGenerator} surface with the number of triangles
+ * driven by how far the surface strays from them.
+ * <p>
+ *
+ * Each of the four boundary curves is split into the smallest number of
+ * equal parameter steps, doubling each time, that keeps the curve within the
+ * error tolerance of its chords. That decision and the points on the boundary
+ * are calculated only from the control points of the boundary, ordered in a
+ * canonical direction. Two patches that share a boundary therefore produce
+ * exactly the same points along it, whichever way round they hold it, so
+ * there are no cracks between them.
+ * <p>
+ *
+ * The interior is a regular grid sized from a handful of iso-parameter curves
+ * across the patch. The outer ring of the grid is then zipped onto the points
+ * of each boundary. Triangles are wound anti-clockwise in parameter space to
+ * match the uniform tessellation of the patch. As the boundary points cannot
+ * depend on the interior, the triangles in the strips next to a straight
+ * boundary may stray further than the tolerance where the surface bends
+ * sharply away from it.
+ * <p>
+ *
+ * The error is measured as the distance of the curve from its chord, in
+ * object space, or in pixels once a view matrix is set.
+ */
+class AdaptivePatchTessellator
+{
+    /** Default error tolerance in object space units */
+    private static final float DEFAULT_TOLERANCE = 0.01f;
+
+    /** Closest distance in front of the eye that points are projected at */
+    private static final double MIN_DEPTH = 1e-6;
+
+    /** Parameter values of the iso-curves used to size the interior */
+    private static final double[] ISO_PARAMS = { 0, 0.25, 0.5, 0.75, 1 };
+
+    /** Fractions of each segment that are tested against the chord */
+    private static final double[] TEST_FRACTIONS = { 0.25, 0.5, 0.75 };
+
+    /** Curve type for a boundary evaluated from its own control points */
+    private static final int EDGE_CURVE = 0;
+
+    /** Curve type for an iso-curve along u at a fixed v */
+    private static final int U_CURVE = 1;
+
+    /** Curve type for an iso-curve along v at a fixed u */
+    private static final int V_CURVE = 2;
+
+    /** The patch being tessellated */
+    private final PatchGenerator owner;
+
+    /** The largest distance allowed between the surface and triangles */
+    private float tolerance;
+
+    /** World to eye space transform. Null for object space errors */
+    private Matrix4d viewMatrix;
+
+    /** Pixels per unit of size at a distance of one */
+    private double pixelScale;
+
+    /** The type of curve currently being measured */
+    private int curveType;
+
+    /** The fixed parameter of an iso-curve */
+    private double curveParam;
+
+    /** True if the current boundary runs along the width */
+    private boolean curveAlongWidth;
+
+    /** True if the current boundary is at u = 1 or v = 1 */
+    private boolean curveAtEnd;
+
+    /** True if the current boundary is held in reverse order */
+    private boolean curveReversed;
+
+    /** Control points of the current boundary in canonical order */
+    private float[] edgePoints;
+
+    /** Weights of the current boundary or null if not rational */
+    private float[] edgeWeights;
+
+    /** The number of control points on the current boundary */
+    private int numEdgePoints;
+
+    /** Vertex indices of each boundary in increasing parameter order */
+    private int[][] edgeVertices;
+
+    /** Number of segments each boundary is split into */
+    private int[] edgeSegments;
+
+    /** Output vertex coordinates */
+    private float[] coordinates;
+
+    /** Output texture coordinates */
+    private float[] texCoords;
+
+    /** Output vertex normals */
+    private float[] normals;
+
+    /** The number of output vertices */
+    private int numVertices;
+
+    /** Output triangle indices */
+    private int[] triangles;
+
+    /** The number of output triangles */
+    private int numTriangles;
+
+    /** Scratch points used for measuring errors */
+    private double[] start;
+    private double[] end;
+    private double[] test;
+    private double[] wrkPoint;
+
+    /**
+     * Create a new tessellator for the given patch.
+     *
+     * @param owner The patch to evaluate
+     */
+    AdaptivePatchTessellator(PatchGenerator owner)
+    {
+        this.owner = owner;
+
+        tolerance = DEFAULT_TOLERANCE;
+        edgePoints = new float[0];
+        edgeVertices = new int[4][];
+        edgeSegments = new int[4];
+        coordinates = new float[0];
+        texCoords = new float[0];
+        normals = new float[0];
+        triangles = new int[0];
+
+        start = new double[3];
+        end = new double[3];
+        test = new double[3];
+        wrkPoint = new double[3];
+    }
+
+    /**
+     * Set the largest error allowed.
+     *
+     * @param tolerance The tolerance to use, zero or greater
+     */
+    void setErrorTolerance(float tolerance)
+    {
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Get the largest error allowed.
+     *
+     * @return The current tolerance
+     */
+    float getErrorTolerance()
+    {
+        return tolerance;
+    }
+
+    /**
+     * Set the view that errors are measured in. The matrix is copied.
+     *
+     * @param view The world to eye transform or null for object space
+     * @param scale Pixels per unit of size at a distance of one
+     */
+    void setViewMatrix(Matrix4d view, float scale)
+    {
+        if(view == null)
+        {
+            viewMatrix = null;
+        }
+        else
+        {
+            if(viewMatrix == null)
+                viewMatrix = new Matrix4d();
+
+            viewMatrix.set(view);
+        }
+
+        pixelScale = scale;
+    }
+
+    /**
+     * Build the triangles for the current state of the patch.
+     *
+     * @param maxWidth The most segments allowed along the width
+     * @param maxDepth The most segments allowed along the depth
+     */
+    void tessellate(int maxWidth, int maxDepth)
+    {
+        numVertices = 0;
+        numTriangles = 0;
+
+        // Boundaries first, as they decide the shared points. 0 is v = 0,
+        // 1 is u = 1, 2 is v = 1 and 3 is u = 0.
+        for(int e = 0; e < 4; e++)
+        {
+            boolean width = (e & 1) == 0;
+
+            setupEdge(e);
+            curveType = EDGE_CURVE;
+            edgeSegments[e] = countSegments(width ? maxWidth : maxDepth);
+        }
+
+        int num_u = 2;
+        int num_v = 2;
+
+        curveType = U_CURVE;
+        for(int i = 0; i < ISO_PARAMS.length; i++)
+        {
+            curveParam = ISO_PARAMS[i];
+            num_u = Math.max(num_u, countSegments(maxWidth));
+        }
+
+        curveType = V_CURVE;
+        for(int i = 0; i < ISO_PARAMS.length; i++)
+        {
+            curveParam = ISO_PARAMS[i];
+            num_v = Math.max(num_v, countSegments(maxDepth));
+        }
+
+        int inner_cnt = (num_u - 1) * (num_v - 1);
+        int vtx_cnt = inner_cnt;
+
+        for(int e = 0; e < 4; e++)
+            vtx_cnt += edgeSegments[e];
+
+        int tri_cnt = 2 * (num_u - 2) * (num_v - 2) +
+                      edgeSegments[0] + edgeSegments[2] + 2 * (num_u - 2) +
+                      edgeSegments[1] + edgeSegments[3] + 2 * (num_v - 2);
+
+        if(coordinates.length < vtx_cnt * 3)
+        {
+            coordinates = new float[vtx_cnt * 3];
+            normals = new float[vtx_cnt * 3];
+            texCoords = new float[vtx_cnt * 2];
+        }
+
+        if(triangles.length < tri_cnt * 3)
+            triangles = new int[tri_cnt * 3];
+
+        // Corners come from the width boundaries and are then shared with
+        // the depth boundaries.
+        generateEdge(0, -1, -1);
+        generateEdge(2, -1, -1);
+
+        int[] bottom = edgeVertices[0];
+        int[] top = edgeVertices[2];
+
+        generateEdge(1, bottom[edgeSegments[0]], top[edgeSegments[2]]);
+        generateEdge(3, bottom[0], top[0]);
+
+        // Interior grid, indexed as (i - 1) * (num_v - 1) + (j - 1)
+        int first_inner = numVertices;
+
+        for(int i = 1; i < num_u; i++)
+        {
+            double u = i / (double)num_u;
+
+            for(int j = 1; j < num_v; j++)
+            {
+                double v = j / (double)num_v;
+
+                owner.evaluateSurface(u, v, wrkPoint);
+                addVertex(wrkPoint, u, v);
+            }
+        }
+
+        for(int i = 1; i < num_u - 1; i++)
+        {
+            for(int j = 1; j < num_v - 1; j++)
+            {
+                int a = first_inner + (i - 1) * (num_v - 1) + j - 1;
+                int b = a + num_v - 1;
+                int c = b + 1;
+                int d = a + 1;
+
+                addTriangle(a, b, c);
+                addTriangle(a, c, d);
+            }
+        }
+
+        // Zip each side of the ring, working anti-clockwise around it
+        int max_segs = Math.max(Math.max(edgeSegments[0], edgeSegments[1]),
+                                Math.max(edgeSegments[2], edgeSegments[3]));
+        int[] outer = new int[max_segs + 1];
+        double[] o_params = new double[max_segs + 1];
+        int[] inner = new int[Math.max(num_u, num_v)];
+        double[] i_params = new double[inner.length];
+
+        for(int side = 0; side < 4; side++)
+        {
+            int segs = edgeSegments[side];
+            int[] verts = edgeVertices[side];
+            boolean backwards = side >= 2;
+
+            for(int k = 0; k <= segs; k++)
+            {
+                int idx = backwards ? segs - k : k;
+                outer[k] = verts[idx];
+                o_params[k] = backwards ? 1 - idx / (double)segs :
+                                          idx / (double)segs;
+            }
+
+            boolean width = (side & 1) == 0;
+            int num = width ? num_u : num_v;
+            int q = num - 1;
+
+            for(int k = 0; k < q; k++)
+            {
+                int step = backwards ? num - 1 - k : k + 1;
+                int i;
+                int j;
+
+                switch(side)
+                {
+                    case 0:
+                        i = step;
+                        j = 1;
+                        break;
+
+                    case 1:
+                        i = num_u - 1;
+                        j = step;
+                        break;
+
+                    case 2:
+                        i = step;
+                        j = num_v - 1;
+                        break;
+
+                    default:
+                        i = 1;
+                        j = step;
+                }
+
+                inner[k] = first_inner + (i - 1) * (num_v - 1) + j - 1;
+                i_params[k] = backwards ? 1 - step / (double)num :
+                                          step / (double)num;
+            }
+
+            zip(outer, o_params, segs + 1, inner, i_params, q);
+        }
+
+        calculateNormals();
+    }
+
+    /**
+     * Get the number of vertices from the last tessellation.
+     *
+     * @return A value zero or greater
+     */
+    int getNumVertices()
+    {
+        return numVertices;
+    }
+
+    /**
+     * Get the number of triangles from the last tessellation.
+     *
+     * @return A value zero or greater
+     */
+    int getNumTriangles()
+    {
+        return numTriangles;
+    }
+
+    /**
+     * Get the vertex coordinates, 3 values per vertex.
+     *
+     * @return The internal array
+     */
+    float[] getCoordinates()
+    {
+        return coordinates;
+    }
+
+    /**
+     * Get the vertex normals, 3 values per vertex.
+     *
+     * @return The internal array
+     */
+    float[] getNormals()
+    {
+        return normals;
+    }
+
+    /**
+     * Get the texture coordinates, 2 values per vertex.
+     *
+     * @return The internal array
+     */
+    float[] getTexCoords()
+    {
+        return texCoords;
+    }
+
+    /**
+     * Get the vertex indices of the triangles, 3 per triangle.
+     *
+     * @return The internal array
+     */
+    int[] getTriangles()
+    {
+        return triangles;
+    }
+
+    //---------------------------------------------------------------
+    // Local Methods
+    //---------------------------------------------------------------
+
+    /**
+     * Copy the control points of one boundary into the edge arrays, in the
+     * canonical order. The order is the one where the control points compare
+     * lower from the start than from the end.
+     *
+     * @param edge The index of the boundary
+     */
+    private void setupEdge(int edge)
+    {
+        float[][] ctrl = owner.controlPointCoordinates;
+        float[][] wgts = owner.useControlPointWeights ?
+                         owner.controlPointWeights : null;
+        int num_width = owner.numWidthControlPoints;
+        int num_depth = owner.numDepthControlPoints;
+
+        curveAlongWidth = (edge & 1) == 0;
+        curveAtEnd = (edge == 1) || (edge == 2);
+        numEdgePoints = curveAlongWidth ? num_width : num_depth;
+
+        if(edgePoints.length < numEdgePoints * 3)
+            edgePoints = new float[numEdgePoints * 3];
+
+        if(wgts == null)
+            edgeWeights = null;
+        else if((edgeWeights == null) || (edgeWeights.length < numEdgePoints))
+            edgeWeights = new float[numEdgePoints];
+
+        for(int k = 0; k < numEdgePoints; k++)
+        {
+            int ki;
+            int kj;
+
+            switch(edge)
+            {
+                case 0:
+                    ki = k;
+                    kj = 0;
+                    break;
+
+                case 1:
+                    ki = num_width - 1;
+                    kj = k;
+                    break;
+
+                case 2:
+                    ki = k;
+                    kj = num_depth - 1;
+                    break;
+
+                default:
+                    ki = 0;
+                    kj = k;
+            }
+
+            edgePoints[k * 3] = ctrl[ki][kj * 3];
+            edgePoints[k * 3 + 1] = ctrl[ki][kj * 3 + 1];
+            edgePoints[k * 3 + 2] = ctrl[ki][kj * 3 + 2];
+
+            if(wgts != null)
+                edgeWeights[k] = wgts[ki][kj];
+        }
+
+        curveReversed = compareEnds() > 0;
+
+        if(curveReversed)
+        {
+            for(int a = 0, b = numEdgePoints - 1; a < b; a++, b--)
+            {
+                for(int c = 0; c < 3; c++)
+                {
+                    float tmp = edgePoints[a * 3 + c];
+                    edgePoints[a * 3 + c] = edgePoints[b * 3 + c];
+                    edgePoints[b * 3 + c] = tmp;
+                }
+
+                if(edgeWeights != null)
+                {
+                    float tmp = edgeWeights[a];
+                    edgeWeights[a] = edgeWeights[b];
+                    edgeWeights[b] = tmp;
+                }
+            }
+        }
+    }
+
+    /**
+     * Compare the edge control points read from the start against those
+     * read from the end.
+     *
+     * @return Negative if the start is lower, positive if the end is lower
+     *   or zero if the boundary reads the same both ways
+     */
+    private int compareEnds()
+    {
+        for(int a = 0, b = numEdgePoints - 1; a < b; a++, b--)
+        {
+            for(int c = 0; c < 3; c++)
+            {
+                int ret_val = Float.compare(edgePoints[a * 3 + c],
+                                            edgePoints[b * 3 + c]);
+                if(ret_val != 0)
+                    return ret_val;
+            }
+
+            if(edgeWeights != null)
+            {
+                int ret_val = Float.compare(edgeWeights[a], edgeWeights[b]);
+
+                if(ret_val != 0)
+                    return ret_val;
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * Create the vertices along one boundary. Points are evaluated at the
+     * canonical parameters so a neighbouring patch gets identical values.
+     *
+     * @param edge The index of the boundary
+     * @param firstVertex Vertex to use for the start or -1 to create one
+     * @param lastVertex Vertex to use for the end or -1 to create one
+     */
+    private void generateEdge(int edge, int firstVertex, int lastVertex)
+    {
+        int segs = edgeSegments[edge];
+
+        setupEdge(edge);
+        curveType = EDGE_CURVE;
+
+        if((edgeVertices[edge] == null) ||
+           (edgeVertices[edge].length < segs + 1))
+            edgeVertices[edge] = new int[segs + 1];
+
+        int[] verts = edgeVertices[edge];
+        double fixed = curveAtEnd ? 1 : 0;
+
+        for(int k = 0; k <= segs; k++)
+        {
+            if((k == 0) && (firstVertex != -1))
+            {
+                verts[k] = firstVertex;
+                continue;
+            }
+
+            if((k == segs) && (lastVertex != -1))
+            {
+                verts[k] = lastVertex;
+                continue;
+            }
+
+            int c = curveReversed ? segs - k : k;
+            double t = k / (double)segs;
+
+            evaluateCurve(c / (double)segs, wrkPoint);
+
+            verts[k] = curveAlongWidth ? addVertex(wrkPoint, t, fixed) :
+                                         addVertex(wrkPoint, fixed, t);
+        }
+    }
+
+    /**
+     * Find the number of segments needed for the current curve, doubling
+     * from one until the error is small enough or the limit is reached.
+     *
+     * @param maxSegments The most segments allowed
+     * @return The number of segments to use
+     */
+    private int countSegments(int maxSegments)
+    {
+        int ret_val = 1;
+
+        while((ret_val < maxSegments) && (curveError(ret_val) > tolerance))
+            ret_val = Math.min(ret_val * 2, maxSegments);
+
+        return ret_val;
+    }
+
+    /**
+     * Measure the largest distance of the current curve from the chords
+     * of the given number of equal segments.
+     *
+     * @param segments The number of segments
+     * @return The largest distance found
+     */
+    private double curveError(int segments)
+    {
+        double ret_val = 0;
+
+        evaluateCurve(0, start);
+        project(start);
+
+        for(int k = 0; k < segments; k++)
+        {
+            evaluateCurve((k + 1) / (double)segments, end);
+            project(end);
+
+            for(int f = 0; f < TEST_FRACTIONS.length; f++)
+            {
+                evaluateCurve((k + TEST_FRACTIONS[f]) / segments, test);
+                project(test);
+
+                double d = chordDistance(start, end, test);
+
+                if(d > ret_val)
+                    ret_val = d;
+            }
+
+            double[] tmp = start;
+            start = end;
+            end = tmp;
+        }
+
+        return ret_val;
+    }
+
+    /**
+     * Evaluate the current curve.
+     *
+     * @param t The parameter along the curve in [0, 1]
+     * @param out The array to put the position in
+     */
+    private void evaluateCurve(double t, double[] out)
+    {
+        switch(curveType)
+        {
+            case EDGE_CURVE:
+                owner.evaluateBoundary(edgePoints,
+                                       edgeWeights,
+                                       numEdgePoints,
+                                       curveAlongWidth,
+                                       curveAtEnd,
+                                       curveReversed,
+                                       t,
+                                       out);
+                break;
+
+            case U_CURVE:
+                owner.evaluateSurface(t, curveParam, out);
+                break;
+
+            case V_CURVE:
+                owner.evaluateSurface(curveParam, t, out);
+                break;
+        }
+    }
+
+    /**
+     * Move a point into the space that errors are measured in. Does nothing
+     * without a view matrix, otherwise gives the position in pixels.
+     *
+     * @param p The point to update
+     */
+    private void project(double[] p)
+    {
+        if(viewMatrix == null)
+            return;
+
+        Matrix4d m = viewMatrix;
+
+        double x = m.m00 * p[0] + m.m01 * p[1] + m.m02 * p[2] + m.m03;
+        double y = m.m10 * p[0] + m.m11 * p[1] + m.m12 * p[2] + m.m13;
+        double z = m.m20 * p[0] + m.m21 * p[1] + m.m22 * p[2] + m.m23;
+
+        double depth = -z;
+
+        if(depth < MIN_DEPTH)
+            depth = MIN_DEPTH;
+
+        p[0] = pixelScale * x / depth;
+        p[1] = pixelScale * y / depth;
+        p[2] = 0;
+    }
+
+    /**
+     * Distance from a point to the line through two others.
+     *
+     * @param a The start of the chord
+     * @param b The end of the chord
+     * @param p The point to measure
+     * @return The distance from the point to the chord line
+     */
+    private static double chordDistance(double[] a, double[] b, double[] p)
+    {
+        double dx = b[0] - a[0];
+        double dy = b[1] - a[1];
+        double dz = b[2] - a[2];
+
+        double px = p[0] - a[0];
+        double py = p[1] - a[1];
+        double pz = p[2] - a[2];
+
+        double len_sq = dx * dx + dy * dy + dz * dz;
+
+        if(len_sq != 0)
+        {
+            double f = (px * dx + py * dy + pz * dz) / len_sq;
+            px -= f * dx;
+            py -= f * dy;
+            pz -= f * dz;
+        }
+
+        return Math.sqrt(px * px + py * py + pz * pz);
+    }
+
+    /**
+     * Triangulate the strip between one side of the boundary and the ring
+     * of the interior grid, always advancing the side whose next point is
+     * nearer the start.
+     *
+     * @param outer The boundary vertices
+     * @param oParams Position of each boundary vertex along the side
+     * @param numOuter The number of boundary vertices
+     * @param inner The interior vertices
+     * @param iParams Position of each interior vertex along the side
+     * @param numInner The number of interior vertices
+     */
+    private void zip(int[] outer,
+                     double[] oParams,
+                     int numOuter,
+                     int[] inner,
+                     double[] iParams,
+                     int numInner)
+    {
+        int a = 0;
+        int b = 0;
+
+        while((a < numOuter - 1) || (b < numInner - 1))
+        {
+            boolean advance_outer;
+
+            if(a == numOuter - 1)
+                advance_outer = false;
+            else if(b == numInner - 1)
+                advance_outer = true;
+            else
+                advance_outer = oParams[a + 1] <= iParams[b + 1];
+
+            if(advance_outer)
+            {
+                addTriangle(outer[a], outer[a + 1], inner[b]);
+                a++;
+            }
+            else
+            {
+                addTriangle(outer[a], inner[b + 1], inner[b]);
+                b++;
+            }
+        }
+    }
+
+    /**
+     * Add a vertex to the output.
+     *
+     * @param p The position of the vertex
+     * @param u The parameter along the width
+     * @param v The parameter along the depth
+     * @return The index of the new vertex
+     */
+    private int addVertex(double[] p, double u, double v)
+    {
+        int c = numVertices * 3;
+        int t = numVertices * 2;
+
+        coordinates[c] = (float)p[0];
+        coordinates[c + 1] = (float)p[1];
+        coordinates[c + 2] = (float)p[2];
+
+        // Matches the uniform tessellation, where s runs along the depth
+        texCoords[t] = (float)v;
+        texCoords[t + 1] = (float)u;
+
+        return numVertices++;
+    }
+
+    /**
+     * Add a triangle to the output.
+     */
+    private void addTriangle(int a, int b, int c)
+    {
+        int t = numTriangles * 3;
+
+        triangles[t] = a;
+        triangles[t + 1] = b;
+        triangles[t + 2] = c;
+
+        numTriangles++;
+    }
+
+    /**
+     * Calculate the area weighted vertex normals of the output triangles.
+     */
+    private void calculateNormals()
+    {
+        float[] pos = coordinates;
+
+        Arrays.fill(normals, 0, numVertices * 3, 0);
+
+        for(int t = 0; t < numTriangles * 3; t += 3)
+        {
+            int a = triangles[t] * 3;
+            int b = triangles[t + 1] * 3;
+            int c = triangles[t + 2] * 3;
+
+            float ux = pos[b] - pos[a];
+            float uy = pos[b + 1] - pos[a + 1];
+            float uz = pos[b + 2] - pos[a + 2];
+            float vx = pos[c] - pos[a];
+            float vy = pos[c + 1] - pos[a + 1];
+            float vz = pos[c + 2] - pos[a + 2];
+
+            float nx = uy * vz - uz * vy;
+            float ny = uz * vx - ux * vz;
+            float nz = ux * vy - uy * vx;
+
+            for(int i = 0; i < 3; i++)
+            {
+                int p = triangles[t + i] * 3;
+                normals[p] += nx;
+                normals[p + 1] += ny;
+                normals[p + 2] += nz;
+            }
+        }
+
+        for(int p = 0; p < numVertices * 3; p += 3)
+        {
+            float x = normals[p];
+            float y = normals[p + 1];
+            float z = normals[p + 2];
+            float len = (float)Math.sqrt(x * x + y * y + z * z);
+
+            if(len != 0)
+            {
+                normals[p] = x / len;
+                normals[p + 1] = y / len;
+                normals[p + 2] = z / len;
+            }
+            else
+            {
+                normals[p + 2] = 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * j3d.org Copyright (c) 2001-2015
+ *                                 Java Source
+ *
+ *  This source is licensed under the GNU LGPL v2.1
+ *  Please read docs/LGPL.txt for more information
+ *
+ *  This software comes with the standard NO WARRANTY disclaimer for any
+ *  purpose. Use it at your own risk. If there's a problem you get to fix it.
+ */
+
+package org.j3d.geom.spline;
+
+// External imports
+// None
+
+// Local imports
+// None
+
+/**
+ * Precalculated values of the B-Spline basis functions for a fixed set of
+ * sample positions along one knot vector.
+ * <p>
+ *
+ * At any position along the curve only degree + 1 of the basis functions are
+ * non-zero, and they are always consecutive. For each sample, the table
+ * holds the index of the first of those functions and the packed values of
+ * the run, so evaluating the curve becomes a short weighted sum over the
+ * control points. The table only depends on the knots, the degree, the number
+ * of control points and the sample positions, so it can be reused for any
+ * number of edits to the control points or weights.
+ * <p>
+ *
+ * Tables are created and filled by
+ * {@link BSplineUtils#createBasisTable(float[], int, int, int, double, double, int, BSplineBasisTable)}.
+ */
+public class BSplineBasisTable
+{
+    /** The number of sample positions held in the table */
+    public int numSamples;
+
+    /** The number of basis functions, which is the number of control points */
+    public int numBasis;
+
+    /** The order (degree + 1) of the basis functions */
+    public int order;
+
+    /**
+     * The number of values held for each sample. This is the order, unless
+     * there are less control points than that.
+     */
+    public int width;
+
+    /**
+     * The index of the first basis function used by each sample. Always
+     * in the range [0, numBasis - width]. Length is at least numSamples.
+     */
+    public int[] firstBasis;
+
+    /**
+     * The basis function values, width values per sample. Length is at least
+     * numSamples * width.
+     */
+    public double[] values;
+}
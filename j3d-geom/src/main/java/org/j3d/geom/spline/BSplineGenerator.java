@@ -80,6 +80,12 @@ public class BSplineGenerator extends GeometryGenerator
     /** Should we use control point weights. Defaults to false. */
     protected boolean useControlPointWeights;
 
+    /** Cached basis function values for each sample along the curve */
+    private BSplineBasisTable basisTable;
+
+    /** Flag to say the knots, degree or facets have changed */
+    private boolean basisChanged;
+
     /**
      * Construct a new generator of degree 3 with default number of segments.
      * The default number of segments is 16, regardless of the length of the
@@ -121,6 +127,7 @@ public class BSplineGenerator extends GeometryGenerator
 
         degree = t;
         curveChanged = true;
+        basisChanged = true;
         facetCount = facets;
         numControlPoints = 0;
         numKnots = degree;
@@ -171,7 +178,10 @@ public class BSplineGenerator extends GeometryGenerator
             throw new IllegalArgumentException("Number of facets is < 3");
 
         if(facetCount != facets)
+        {
             curveChanged = true;
+            basisChanged = true;
+        }
 
         facetCount = facets;
     }
@@ -527,6 +537,7 @@ public class BSplineGenerator extends GeometryGenerator
 
         numKnots = knots.length;
         curveChanged = true;
+        basisChanged = true;
     }
 
     /**
@@ -555,6 +566,7 @@ public class BSplineGenerator extends GeometryGenerator
 
         numKnots = knots.length;
         curveChanged = true;
+        basisChanged = true;
     }
 
     /**
@@ -638,6 +650,9 @@ public class BSplineGenerator extends GeometryGenerator
             else if(j >= numControlPoints)
                 knots[j] = numControlPoints - degree + 1;
         }
+
+        curveChanged = true;
+        basisChanged = true;
     }
 
     /**
@@ -1053,9 +1068,10 @@ public class BSplineGenerator extends GeometryGenerator
     }
 
     /**
-     * Regenerate the patch coordinate points. These are the flat circle that
-     * makes up the patch of the code. The coordinates are generated patchd on
-     * the 2 PI divided by the number of facets to generate.
+     * Regenerate the curve coordinate points. The basis function values at
+     * each sample are cached and only recalculated when the knots, degree,
+     * facet count or number of control points change. Otherwise this is just
+     * a weighted sum over the control points that affect each sample.
      */
     private final void regenerateCurve()
     {
@@ -1072,107 +1088,36 @@ public class BSplineGenerator extends GeometryGenerator
             curveCoordinates = new float[numCurveValues];
         }
 
-        double interval = 0;
-//        double increment = knots[numKnots - 1] / (double)(facetCount - 1);
-        double increment = (numControlPoints - degree + 1) / (double)(facetCount + 1);
-        int coord = 0;
-
-        if(useControlPointWeights)
+        if(basisChanged ||
+           (basisTable == null) ||
+           (basisTable.numBasis != numControlPoints))
         {
-            for(int i = 0; i < facetCount; i++)
-            {
-                calcSingleRationalPoint(interval, coord);
-                interval += increment;
-                coord += 3;
-            }
-
-            int last = (numControlPoints - 1) * 3;
-            curveCoordinates[coord] = controlPointCoordinates[last];
-            curveCoordinates[coord + 1] = controlPointCoordinates[last + 1];
-            curveCoordinates[coord + 2] = controlPointCoordinates[last + 2];
-        }
-        else
-        {
-            for(int i = 0; i < facetCount; i++)
-            {
-                calcSingleNonRationalPoint(interval, coord);
-                interval += increment;
-                coord += 3;
-            }
-
-            int last = (numControlPoints - 1) * 3;
-            curveCoordinates[coord] = controlPointCoordinates[last];
-            curveCoordinates[coord + 1] = controlPointCoordinates[last + 1];
-            curveCoordinates[coord + 2] = controlPointCoordinates[last + 2];
-        }
-    }
-
-    /**
-     * Calculate the position of a single point on the spline curve.
-     * The parameter "v" indicates the position, it ranges from 0 to n-t+2
-     *
-     * @param t the position along the curve
-     * @param out The location to put the curve point in the output array
-     */
-    private void calcSingleNonRationalPoint(double t, int out)
-    {
-        double x = 0;
-        double y = 0;
-        double z = 0;
-        int order = degree + 1;
-
-        for(int k = 0; k < numControlPoints; k++) {
-            double b = splineBlend(k, order, t);
-
-            x += controlPointCoordinates[k * 3] * b;
-            y += controlPointCoordinates[k * 3 + 1] * b;
-            z += controlPointCoordinates[k * 3 + 2] * b;
+//            double increment = knots[numKnots - 1] / (double)(facetCount - 1);
+            double increment =
+                (numControlPoints - degree + 1) / (double)(facetCount + 1);
+
+            basisTable = BSplineUtils.createBasisTable(knots,
+                                                       numKnots,
+                                                       degree,
+                                                       numControlPoints,
+                                                       0,
+                                                       increment,
+                                                       facetCount,
+                                                       basisTable);
+            basisChanged = false;
         }
 
-        curveCoordinates[out] = (float)x;
-        curveCoordinates[out + 1] = (float)y;
-        curveCoordinates[out + 2] = (float)z;
-    }
-
-    /**
-     * Calculate the position of a single point on the rational spline curve.
-     * The parameter "v" indicates the position, it ranges from 0 to n-t+2
-     *
-     * @param t the position along the curve
-     * @param out The location to put the curve point in the output array
-     */
-    private void calcSingleRationalPoint(double t, int out)
-    {
-        double x = 0;
-        double y = 0;
-        double z = 0;
-        double w = 0;
-        double denom = 0;
-        int order = degree + 1;
-
-        for(int k = 0; k < numControlPoints; k++) {
-            double b = splineBlend(k, order, t);
-            w = controlPointWeights[k];
-
-            x += controlPointCoordinates[k * 3] * b * w;
-            y += controlPointCoordinates[k * 3 + 1] * b * w;
-            z += controlPointCoordinates[k * 3 + 2] * b * w;
-
-            denom += b * w;
-        }
-
-        if(denom != 0)
-        {
-            curveCoordinates[out] = (float)(x / denom);
-            curveCoordinates[out + 1] = (float)(y / denom);
-            curveCoordinates[out + 2] = (float)(z / denom);
-        }
-        else
-        {
-            curveCoordinates[out] = (float)x;
-            curveCoordinates[out + 1] = (float)y;
-            curveCoordinates[out + 2] = (float)z;
-        }
+        BSplineUtils.evaluateCurve(basisTable,
+                                   controlPointCoordinates,
+                                   useControlPointWeights ?
+                                       controlPointWeights : null,
+                                   curveCoordinates);
+
+        int coord = facetCount * 3;
+        int last = (numControlPoints - 1) * 3;
+        curveCoordinates[coord] = controlPointCoordinates[last];
+        curveCoordinates[coord + 1] = controlPointCoordinates[last + 1];
+        curveCoordinates[coord + 2] = controlPointCoordinates[last + 2];
     }
 
     /**
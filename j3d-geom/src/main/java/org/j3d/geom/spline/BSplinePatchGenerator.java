@@ -29,6 +29,12 @@ import org.j3d.geom.UnsupportedTypeException;
  * explicit checking is performed to ensure that knot coordinates do not
  * self-intersect or do anything nasty. Normals are always generated as the
  * average between the adjacent edges.
+ * <p>
+ *
+ * In adaptive mode, two patches only share the points along a common
+ * boundary when the boundary describes the same curve in both. If one patch
+ * holds the boundary control points in the reverse order, its knots in that
+ * direction must be the mirror image of the other patch's knots.
  *
  * @author Justin Couch
  * @version $Revision: 1.8 $
@@ -59,6 +65,24 @@ public class BSplinePatchGenerator extends PatchGenerator
     /** The degree of the depth curve to generate. Must be positive. */
     private int depthDegree;
 
+    /** Cached basis function values for each sample across the width */
+    private BSplineBasisTable widthBasis;
+
+    /** Cached basis function values for each sample across the depth */
+    private BSplineBasisTable depthBasis;
+
+    /** Flag to say the knots or degrees have changed since the last cache */
+    private boolean knotsChanged;
+
+    /** Scratch basis values for single point evaluation across the width */
+    private double[] widthValues;
+
+    /** Scratch basis values for single point evaluation across the depth */
+    private double[] depthValues;
+
+    /** Scratch knots for evaluating a boundary in reverse */
+    private float[] mirrorKnots;
+
     /**
      * Construct a new generator with default settings of 20 grid squares over
      * the length of one surface.
@@ -126,6 +150,7 @@ public class BSplinePatchGenerator extends PatchGenerator
             throw new IllegalArgumentException("Depth degree is < 2");
 
         patchChanged = true;
+        knotsChanged = true;
         widthFacetCount = widthFacets;
         depthFacetCount = depthFacets;
 
@@ -183,6 +208,7 @@ public class BSplinePatchGenerator extends PatchGenerator
         numDepthKnots = dKnots.length;
 
         patchChanged = true;
+        knotsChanged = true;
     }
 
     /**
@@ -234,6 +260,7 @@ public class BSplinePatchGenerator extends PatchGenerator
         numDepthKnots = dKnots.length;
 
         patchChanged = true;
+        knotsChanged = true;
     }
 
     /**
@@ -329,11 +356,16 @@ public class BSplinePatchGenerator extends PatchGenerator
             else if(j >= numDepthControlPoints)
                 depthKnots[j] = numDepthControlPoints - depthDegree + 1;
         }
+
+        patchChanged = true;
+        knotsChanged = true;
     }
 
     /**
      * Regenerate the patch coordinate points according to the NURBS
-     * surface function.
+     * surface function. The basis function values for the samples in each
+     * direction are cached, so that after the first call, editing the
+     * control points or weights only needs the weighted sums to be redone.
      */
     @Override
     protected final void regeneratePatch()
@@ -351,174 +383,313 @@ public class BSplinePatchGenerator extends PatchGenerator
             patchCoordinates = new float[depthFacetCount + 1][numPatchValues];
         }
 
+        updateBasisTables();
 
-        if(useControlPointWeights)
-            regenerateRationalPatch();
-        else
-            regenerateStandardPatch();
+        BSplineUtils.evaluatePatch(widthBasis,
+                                   depthBasis,
+                                   controlPointCoordinates,
+                                   useControlPointWeights ?
+                                       controlPointWeights : null,
+                                   patchCoordinates);
     }
 
     /**
-     * Regenerate the patch ignoring control point weights.
+     * Evaluate a single point on the surface. The parameters are mapped onto
+     * the valid part of the knot vectors.
+     *
+     * @param u The parameter along the width
+     * @param v The parameter along the depth
+     * @param out Array to write the 3 coordinate values to
      */
-    private void regenerateStandardPatch()
+    @Override
+    protected void evaluateSurface(double u, double v, double[] out)
     {
-        int i, j, ki, kj;
-        double i_inter, i_inc;
-        double j_inter, j_inc;
-        double bi, bj;
-        double x, y, z;
-        int cnt, p_cnt;
-        int w_order = widthDegree + 1;
-        int d_order = depthDegree + 1;
-
-        // Step size along the curve
-        i_inc = widthKnots[numWidthKnots - 1] / (double)(widthFacetCount + 1);
-        j_inc = depthKnots[numDepthKnots - 1] / (double)(depthFacetCount + 1);
-
-        i_inter = 0;
-        for(i = 0; i <= widthFacetCount; i++)
+        if((widthValues == null) || (widthValues.length <= widthDegree))
+            widthValues = new double[widthDegree + 1];
+
+        if((depthValues == null) || (depthValues.length <= depthDegree))
+            depthValues = new double[depthDegree + 1];
+
+        int first_i = evaluateDomainBasis(widthKnots,
+                                          numWidthKnots,
+                                          widthDegree,
+                                          numWidthControlPoints,
+                                          u,
+                                          widthValues);
+
+        int first_j = evaluateDomainBasis(depthKnots,
+                                          numDepthKnots,
+                                          depthDegree,
+                                          numDepthControlPoints,
+                                          v,
+                                          depthValues);
+
+        double x = 0;
+        double y = 0;
+        double z = 0;
+        double denom = 0;
+
+        for(int r = 0; r <= widthDegree; r++)
         {
-            j_inter = 0;
-            p_cnt = 0;
-            for(j = 0; j <= depthFacetCount; j++)
+            int ki = first_i + r;
+            double bi = widthValues[r];
+
+            if(bi == 0)
+                continue;
+
+            for(int c = 0; c <= depthDegree; c++)
             {
-                x = 0;
-                y = 0;
-                z = 0;
-                cnt = 0;
-                kj = 0;
-
-                for(ki = 0; ki < numWidthControlPoints; ki++)
-                {
-                    cnt = 0;
-                    for(kj = 0; kj < numDepthControlPoints; kj++)
-                    {
-                        bi = splineBlend(ki, w_order, false, i_inter);
-                        bj = splineBlend(kj, d_order, true, j_inter);
-
-                        x += controlPointCoordinates[ki][cnt++] * bi * bj;
-                        y += controlPointCoordinates[ki][cnt++] * bi * bj;
-                        z += controlPointCoordinates[ki][cnt++] * bi * bj;
-                    }
-                }
-
-                patchCoordinates[i][p_cnt++] = (float)x;
-                patchCoordinates[i][p_cnt++] = (float)y;
-                patchCoordinates[i][p_cnt++] = (float)z;
-
-                j_inter += j_inc;
+                int kj = first_j + c;
+                double b = bi * depthValues[c];
+                int pos = kj * 3;
+
+                if(useControlPointWeights)
+                    b *= controlPointWeights[ki][kj];
+
+                x += controlPointCoordinates[ki][pos] * b;
+                y += controlPointCoordinates[ki][pos + 1] * b;
+                z += controlPointCoordinates[ki][pos + 2] * b;
+                denom += b;
             }
+        }
 
-            i_inter += i_inc;
+        if(useControlPointWeights && (denom != 0))
+        {
+            x /= denom;
+            y /= denom;
+            z /= denom;
         }
+
+        out[0] = x;
+        out[1] = y;
+        out[2] = z;
     }
 
     /**
-     * Regenerate the patch using control point weights.
+     * Evaluate a single point on a boundary curve. The boundary control
+     * points only describe the edge of the surface when the knots of the
+     * other direction are clamped at that end, repeated as many times as
+     * the degree. Otherwise the surface is evaluated along the edge instead.
+     * A reversed boundary uses the mirror image of the knot vector for that
+     * direction, so that it describes the same curve.
+     *
+     * @param points The boundary control points as a flat array
+     * @param weights The boundary weights or null if not rational
+     * @param numPoints The number of control points on the boundary
+     * @param alongWidth true if the boundary follows the width direction
+     * @param atEnd true if the boundary is at the end of the other direction
+     * @param reversed true if the points are in the reverse order
+     * @param t The parameter along the curve from 0 to 1
+     * @param out Array to write the 3 coordinate values to
      */
-    private void regenerateRationalPatch()
+    @Override
+    protected void evaluateBoundary(float[] points,
+                                    float[] weights,
+                                    int numPoints,
+                                    boolean alongWidth,
+                                    boolean atEnd,
+                                    boolean reversed,
+                                    double t,
+                                    double[] out)
     {
-        int i, j, ki, kj;
-        double i_inter, i_inc;
-        double j_inter, j_inc;
-        double bi,bj;
-        double x, y, z, denom;
-        float w;
-        int cnt, p_cnt;
-        int w_order = widthDegree + 1;
-        int d_order = depthDegree + 1;
-
-        // Step size along the curve
-        i_inc = widthKnots[numWidthKnots - 1] / (double)(widthFacetCount + 1);
-        j_inc = depthKnots[numDepthKnots - 1] / (double)(depthFacetCount + 1);
-
-        i_inter = 0;
-        for(i = 0; i <= widthFacetCount; i++)
+        boolean clamped = alongWidth ?
+            isClamped(depthKnots, depthDegree, numDepthControlPoints, atEnd) :
+            isClamped(widthKnots, widthDegree, numWidthControlPoints, atEnd);
+
+        if(!clamped)
         {
-            j_inter = 0;
-            p_cnt = 0;
-            for(j = 0; j <= depthFacetCount; j++)
-            {
-                x = 0;
-                y = 0;
-                z = 0;
-                denom = 0;
-                cnt = 0;
-                kj = 0;
-
-                for(ki = 0; ki < numWidthControlPoints; ki++)
-                {
-                    cnt = 0;
-                    for(kj = 0; kj < numDepthControlPoints; kj++)
-                    {
-                        bi = splineBlend(ki, w_order, false, i_inter);
-                        bj = splineBlend(kj, d_order, true, j_inter);
-                        w = controlPointWeights[ki][kj];
-
-                        x += controlPointCoordinates[ki][cnt++] * bi * bj * w;
-                        y += controlPointCoordinates[ki][cnt++] * bi * bj * w;
-                        z += controlPointCoordinates[ki][cnt++] * bi * bj * w;
-
-                        denom += bi * bj * w;
-                    }
-                }
-
-                if(denom != 0)
-                {
-                    patchCoordinates[i][p_cnt++] = (float)(x / denom);
-                    patchCoordinates[i][p_cnt++] = (float)(y / denom);
-                    patchCoordinates[i][p_cnt++] = (float)(z / denom);
-                }
-                else
-                {
-                    patchCoordinates[i][p_cnt++] = (float)x;
-                    patchCoordinates[i][p_cnt++] = (float)y;
-                    patchCoordinates[i][p_cnt++] = (float)z;
-                }
-
-                j_inter += j_inc;
-            }
+            super.evaluateBoundary(points,
+                                   weights,
+                                   numPoints,
+                                   alongWidth,
+                                   atEnd,
+                                   reversed,
+                                   t,
+                                   out);
+            return;
+        }
+
+        float[] knots = alongWidth ? widthKnots : depthKnots;
+        int degree = alongWidth ? widthDegree : depthDegree;
+        int num_knots = numPoints + degree + 1;
+
+        if(reversed)
+        {
+            if((mirrorKnots == null) || (mirrorKnots.length < num_knots))
+                mirrorKnots = new float[num_knots];
+
+            float sum = knots[0] + knots[num_knots - 1];
+
+            for(int i = 0; i < num_knots; i++)
+                mirrorKnots[i] = sum - knots[num_knots - 1 - i];
 
-            i_inter += i_inc;
+            knots = mirrorKnots;
         }
+
+        double[] values = alongWidth ? widthValues : depthValues;
+
+        if((values == null) || (values.length <= degree))
+        {
+            values = new double[degree + 1];
+
+            if(alongWidth)
+                widthValues = values;
+            else
+                depthValues = values;
+        }
+
+        int first = evaluateDomainBasis(knots,
+                                        num_knots,
+                                        degree,
+                                        numPoints,
+                                        t,
+                                        values);
+        double x = 0;
+        double y = 0;
+        double z = 0;
+        double denom = 0;
+
+        for(int r = 0; r <= degree; r++)
+        {
+            int k = first + r;
+            double b = values[r];
+
+            if(weights != null)
+                b *= weights[k];
+
+            x += points[k * 3] * b;
+            y += points[k * 3 + 1] * b;
+            z += points[k * 3 + 2] * b;
+            denom += b;
+        }
+
+        if((weights != null) && (denom != 0))
+        {
+            x /= denom;
+            y /= denom;
+            z /= denom;
+        }
+
+        out[0] = x;
+        out[1] = y;
+        out[2] = z;
     }
 
     /**
-     * Calculate the blending value for the spline recursively.
-     * If the numerator and denominator are 0 the result is 0.
+     * Check whether one end of the domain of a knot vector is a knot
+     * repeated as many times as the degree, which makes the surface pass
+     * through the outer row of control points there.
      *
-     * @param i The basis function to check
-     * @param k The order of the curve
-     * @param t The position along the curve to check ie N(t)
+     * @param knots The knot vector
+     * @param degree The degree of the curve
+     * @param numBasis The number of control points in that direction
+     * @param atEnd true to check the end of the domain, false the start
+     * @return true if that end is clamped
      */
-    private double splineBlend(int i, int k, boolean useDepth, double t)
+    private static boolean isClamped(float[] knots,
+                                     int degree,
+                                     int numBasis,
+                                     boolean atEnd)
     {
-        double ret_val;
+        if(atEnd)
+            return knots[numBasis] == knots[numBasis + degree - 1];
+        else
+            return knots[1] == knots[degree];
+    }
 
-        // Do this just to make the maths traceable with the std algorithm
-        float[] u = useDepth ? depthKnots : widthKnots;
+    /**
+     * Evaluate the non-zero basis functions at a normalised position over
+     * the valid domain of the knots, which runs from knot[degree] to
+     * knot[numBasis]. The end of the domain is included, using the last
+     * non-empty span.
+     *
+     * @param knots The knot values
+     * @param numKnots The number of valid knot values
+     * @param degree The degree of the curve
+     * @param numBasis The number of control points
+     * @param t The normalised position from 0 to 1
+     * @param values Array to write the degree + 1 basis values to
+     * @return The index of the control point for the first value
+     */
+    private int evaluateDomainBasis(float[] knots,
+                                    int numKnots,
+                                    int degree,
+                                    int numBasis,
+                                    double t,
+                                    double[] values)
+    {
+        double start = knots[degree];
+        double end = knots[numBasis];
+        double param;
+        int span;
 
-        if(k == 1)
+        if(t >= 1)
         {
-            ret_val = ((u[i] <= t) && (t < u[i+1])) ? 1 : 0;
+            param = end;
+            span = numBasis - 1;
+
+            while((span > degree) && (knots[span] == knots[span + 1]))
+                span--;
         }
         else
         {
-            double b1 = splineBlend(i, k-1, useDepth, t);
-            double b2 = splineBlend(i+1, k-1, useDepth, t);
+            param = (t <= 0) ? start : start + (end - start) * t;
+            span = BSplineUtils.findKnotSpan(knots, numKnots, param);
 
-            double d1 = u[i+k-1] - u[i];
-            double d2 = u[i+k] - u[i+1];
+            if(span < degree)
+                span = degree;
+            else if(span > numBasis - 1)
+                span = numBasis - 1;
+        }
 
-            double e, f;
+        BSplineUtils.evaluateBasis(knots, numKnots, degree, span, param, values);
 
-            e = (b1 != 0) ? (t - u[i]) / d1 * b1 : 0;
-            f = (b2 != 0) ? (u[i+k] - t) / d2  * b2 : 0;
+        return span - degree;
+    }
 
-            ret_val = e + f;
+    /**
+     * Rebuild the cached basis tables if the knots, degrees, facet counts or
+     * number of control points no longer match the ones they were built for.
+     */
+    private void updateBasisTables()
+    {
+        if(knotsChanged ||
+           (widthBasis == null) ||
+           (widthBasis.numSamples != widthFacetCount + 1) ||
+           (widthBasis.numBasis != numWidthControlPoints))
+        {
+            // Step size along the curve
+            double i_inc = widthKnots[numWidthKnots - 1] /
+                           (double)(widthFacetCount + 1);
+
+            widthBasis = BSplineUtils.createBasisTable(widthKnots,
+                                                       numWidthKnots,
+                                                       widthDegree,
+                                                       numWidthControlPoints,
+                                                       0,
+                                                       i_inc,
+                                                       widthFacetCount + 1,
+                                                       widthBasis);
+        }
+
+        if(knotsChanged ||
+           (depthBasis == null) ||
+           (depthBasis.numSamples != depthFacetCount + 1) ||
+           (depthBasis.numBasis != numDepthControlPoints))
+        {
+            double j_inc = depthKnots[numDepthKnots - 1] /
+                           (double)(depthFacetCount + 1);
+
+            depthBasis = BSplineUtils.createBasisTable(depthKnots,
+                                                       numDepthKnots,
+                                                       depthDegree,
+                                                       numDepthControlPoints,
+                                                       0,
+                                                       j_inc,
+                                                       depthFacetCount + 1,
+                                                       depthBasis);
         }
 
-        return ret_val;
+        knotsChanged = false;
     }
 }
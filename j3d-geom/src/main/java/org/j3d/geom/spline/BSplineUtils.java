@@ -166,6 +166,349 @@ public class BSplineUtils
         return ret_val;
     }
 
+    /**
+     * Find the knot span that contains the given position. The span is the
+     * index s such that knots[s] <= t < knots[s + 1]. Where knots repeat,
+     * the last of the repeated values is used so the span is never empty.
+     *
+     * @param knots The array of current knot values
+     * @param numKnots The number of valid knot values in the array
+     * @param t The position on the curve to find the span for
+     * @return The span index or -1 if t is outside the knot range
+     */
+    public static int findKnotSpan(float[] knots, int numKnots, double t)
+    {
+        if((numKnots < 2) || (t < knots[0]) || (t >= knots[numKnots - 1]))
+            return -1;
+
+        int low = 0;
+        int high = numKnots - 1;
+
+        while(high - low > 1)
+        {
+            int mid = (low + high) >>> 1;
+
+            if(t < knots[mid])
+                high = mid;
+            else
+                low = mid;
+        }
+
+        return low;
+    }
+
+    /**
+     * Evaluate the basis functions that are non-zero in the given knot span,
+     * using the triangular form of the Cox-de Boor recurrence. The output
+     * holds degree + 1 values for the functions span - degree through span.
+     * Functions that would need knots outside the valid range of the array
+     * are given as zero, as they are never part of a valid curve.
+     *
+     * @param knots The array of current knot values
+     * @param numKnots The number of valid knot values in the array
+     * @param degree The degree of the curve
+     * @param span The knot span containing t, from findKnotSpan()
+     * @param t The position on the curve to evaluate at
+     * @param basis Array to write the degree + 1 values to
+     */
+    public static void evaluateBasis(float[] knots,
+                                     int numKnots,
+                                     int degree,
+                                     int span,
+                                     double t,
+                                     double[] basis)
+    {
+        for(int r = 0; r < degree; r++)
+            basis[r] = 0;
+
+        basis[degree] = 1;
+
+        // Raise the order one level at a time. Each value only depends on
+        // itself and the one above it from the previous level, so working
+        // upwards lets the array be updated in place.
+        for(int k = 2; k <= degree + 1; k++)
+        {
+            for(int r = 0; r <= degree; r++)
+            {
+                int i = span - degree + r;
+                double b1 = basis[r];
+                double b2 = (r < degree) ? basis[r + 1] : 0;
+
+                if((i < 0) || (i + k >= numKnots))
+                {
+                    basis[r] = 0;
+                    continue;
+                }
+
+                double d1 = knots[i + k - 1] - knots[i];
+                double d2 = knots[i + k] - knots[i + 1];
+
+                double e = (b1 != 0) ? (t - knots[i]) / d1 * b1 : 0;
+                double f = (b2 != 0) ? (knots[i + k] - t) / d2 * b2 : 0;
+
+                basis[r] = e + f;
+            }
+        }
+    }
+
+    /**
+     * Fill in a table of the non-zero basis function values for a run of
+     * evenly spaced sample positions. The positions are generated by
+     * repeatedly adding the increment to the start value. Positions outside
+     * the knot range have all basis values as zero. If the table passed in
+     * is not null, its arrays are reused where they are large enough.
+     *
+     * @param knots The array of current knot values
+     * @param numKnots The number of valid knot values in the array
+     * @param degree The degree of the curve
+     * @param numBasis The number of control points of the curve
+     * @param start The position of the first sample
+     * @param increment The distance between samples
+     * @param numSamples The number of samples to take
+     * @param table The table to fill in or null to create a new one
+     * @return The filled in table
+     * @throws IllegalArgumentException The degree or number of control points
+     *   or samples are out of range
+     */
+    public static BSplineBasisTable createBasisTable(float[] knots,
+                                                     int numKnots,
+                                                     int degree,
+                                                     int numBasis,
+                                                     double start,
+                                                     double increment,
+                                                     int numSamples,
+                                                     BSplineBasisTable table)
+        throws IllegalArgumentException
+    {
+        if(degree < 1)
+            throw new IllegalArgumentException("Degree is < 1");
+
+        if(numBasis < 1)
+            throw new IllegalArgumentException("Number of basis functions < 1");
+
+        if(numSamples < 0)
+            throw new IllegalArgumentException("Number of samples < 0");
+
+        int order = degree + 1;
+        int width = numBasis < order ? numBasis : order;
+
+        if(table == null)
+            table = new BSplineBasisTable();
+
+        if((table.firstBasis == null) || (table.firstBasis.length < numSamples))
+            table.firstBasis = new int[numSamples];
+
+        if((table.values == null) ||
+           (table.values.length < numSamples * width))
+            table.values = new double[numSamples * width];
+
+        table.numSamples = numSamples;
+        table.numBasis = numBasis;
+        table.order = order;
+        table.width = width;
+
+        double[] basis = new double[order];
+        int[] first_basis = table.firstBasis;
+        double[] values = table.values;
+        double t = start;
+        int v = 0;
+
+        for(int s = 0; s < numSamples; s++)
+        {
+            int span = findKnotSpan(knots, numKnots, t);
+
+            if(span == -1)
+            {
+                first_basis[s] = 0;
+
+                for(int r = 0; r < width; r++)
+                    values[v++] = 0;
+            }
+            else
+            {
+                evaluateBasis(knots, numKnots, degree, span, t, basis);
+
+                // Slide the window so that it only covers real control
+                // points. The functions dropped off the end are all zero.
+                int first = span - degree;
+
+                if(first < 0)
+                    first = 0;
+                else if(first > numBasis - width)
+                    first = numBasis - width;
+
+                first_basis[s] = first;
+
+                for(int r = 0; r < width; r++)
+                {
+                    int b = first + r - (span - degree);
+                    values[v++] = (b >= 0 && b < order) ? basis[b] : 0;
+                }
+            }
+
+            t += increment;
+        }
+
+        return table;
+    }
+
+    /**
+     * Evaluate a curve at every sample of a basis table. The control points
+     * are a flat array of [Xn, Yn, Zn] values. If weights are provided the
+     * rational form of the curve is used. Output is written as a flat array
+     * of coordinates, one per sample.
+     *
+     * @param basis The table of basis function values
+     * @param controlPoints The control point coordinates
+     * @param weights The control point weights or null for non-rational
+     * @param output Array to write numSamples * 3 coordinate values to
+     */
+    public static void evaluateCurve(BSplineBasisTable basis,
+                                     float[] controlPoints,
+                                     float[] weights,
+                                     float[] output)
+    {
+        int width = basis.width;
+        int[] first_basis = basis.firstBasis;
+        double[] values = basis.values;
+        int v = 0;
+        int out = 0;
+
+        for(int s = 0; s < basis.numSamples; s++)
+        {
+            double x = 0;
+            double y = 0;
+            double z = 0;
+            double denom = 0;
+            int k = first_basis[s];
+            int c = k * 3;
+
+            for(int r = 0; r < width; r++)
+            {
+                double b = values[v++];
+
+                if(weights != null)
+                {
+                    b *= weights[k];
+                    denom += b;
+                }
+
+                x += controlPoints[c++] * b;
+                y += controlPoints[c++] * b;
+                z += controlPoints[c++] * b;
+                k++;
+            }
+
+            if(denom != 0)
+            {
+                x /= denom;
+                y /= denom;
+                z /= denom;
+            }
+
+            output[out++] = (float)x;
+            output[out++] = (float)y;
+            output[out++] = (float)z;
+        }
+    }
+
+    /**
+     * Evaluate a tensor product surface at every pair of samples from two
+     * basis tables. The control points are given as [width][depth * 3] and
+     * the weights, if provided, as [width][depth]. The output is written as
+     * [width sample][depth sample * 3].
+     * <p>
+     * The width direction is summed first into a single row of depth control
+     * points per width sample, so the cost is linear in the number of samples
+     * in each direction rather than their product times the control points.
+     *
+     * @param widthBasis The table of basis values in the width direction
+     * @param depthBasis The table of basis values in the depth direction
+     * @param controlPoints The control point coordinates
+     * @param weights The control point weights or null for non-rational
+     * @param output Array to write the surface coordinates to
+     */
+    public static void evaluatePatch(BSplineBasisTable widthBasis,
+                                     BSplineBasisTable depthBasis,
+                                     float[][] controlPoints,
+                                     float[][] weights,
+                                     float[][] output)
+    {
+        int num_depth = depthBasis.numBasis;
+        int w_width = widthBasis.width;
+        int d_width = depthBasis.width;
+        boolean rational = weights != null;
+
+        // Homogeneous coordinates of the partially summed row
+        double[] row = new double[num_depth * 4];
+        int v_i = 0;
+
+        for(int i = 0; i < widthBasis.numSamples; i++)
+        {
+            for(int n = 0; n < num_depth * 4; n++)
+                row[n] = 0;
+
+            int ki = widthBasis.firstBasis[i];
+
+            for(int r = 0; r < w_width; r++, ki++)
+            {
+                double bi = widthBasis.values[v_i++];
+
+                if(bi == 0)
+                    continue;
+
+                float[] ctrl = controlPoints[ki];
+                float[] wgt = rational ? weights[ki] : null;
+                int c = 0;
+                int n = 0;
+
+                for(int kj = 0; kj < num_depth; kj++)
+                {
+                    double b = rational ? bi * wgt[kj] : bi;
+
+                    row[n++] += ctrl[c++] * b;
+                    row[n++] += ctrl[c++] * b;
+                    row[n++] += ctrl[c++] * b;
+                    row[n++] += b;
+                }
+            }
+
+            float[] out = output[i];
+            int v_j = 0;
+            int p = 0;
+
+            for(int j = 0; j < depthBasis.numSamples; j++)
+            {
+                double x = 0;
+                double y = 0;
+                double z = 0;
+                double denom = 0;
+                int n = depthBasis.firstBasis[j] * 4;
+
+                for(int r = 0; r < d_width; r++)
+                {
+                    double bj = depthBasis.values[v_j++];
+
+                    x += row[n++] * bj;
+                    y += row[n++] * bj;
+                    z += row[n++] * bj;
+                    denom += row[n++] * bj;
+                }
+
+                if(rational && denom != 0)
+                {
+                    x /= denom;
+                    y /= denom;
+                    z /= denom;
+                }
+
+                out[p++] = (float)x;
+                out[p++] = (float)y;
+                out[p++] = (float)z;
+            }
+        }
+    }
+
     /**
      * Insert a new knot value into the curve. The code will attempt to reuse
      * the arrays already constructed in the output curve, but will reallocated
@@ -25,6 +25,14 @@ import org.j3d.geom.UnsupportedTypeException;
  *
  * Bezier curves of all orders are permitted. Order information is derived
  * from the provided controlPoint coordinates.
+ * <P>
+ *
+ * When many short curves are regenerated often, such as cables and hoses
+ * that move every frame, {@link #setForwardDifferencing(boolean)} switches
+ * to evaluating the evenly spaced samples by forward differences. Each sample
+ * then costs a handful of additions rather than a full polynomial
+ * evaluation. The difference table is rebuilt from the exact curve at regular
+ * intervals, so the results stay within rounding error of the direct path.
  *
  * @author Justin Couch
  * @version $Revision: 1.4 $
@@ -55,6 +63,18 @@ public class BezierGenerator extends GeometryGenerator
     /** Flag to say the curve setup has changed */
     private boolean curveChanged;
 
+    /** Flag to say samples are evaluated by forward differences */
+    private boolean forwardDifferencing;
+
+    /** Forward difference evaluator, created on first use */
+    private ForwardDifferencer differencer;
+
+    /** Control points in double precision for the differencer */
+    private double[] differenceControls;
+
+    /** Curve samples in double precision from the differencer */
+    private double[] differenceSamples;
+
     /**
      * Construct a new generator with default settings of 16 line segments over
      * the length of one curve.
@@ -146,6 +166,33 @@ public class BezierGenerator extends GeometryGenerator
         curveChanged = true;
     }
 
+    /**
+     * Set whether the curve samples should be evaluated using forward
+     * differencing rather than evaluating the polynomial for each sample.
+     * Both give the same curve to within rounding error, forward
+     * differencing is just cheaper per sample. The default is off.
+     *
+     * @param enable true to use forward differencing
+     */
+    public void setForwardDifferencing(boolean enable)
+    {
+        if(forwardDifferencing != enable)
+            curveChanged = true;
+
+        forwardDifferencing = enable;
+    }
+
+    /**
+     * Check to see whether forward differencing is used to evaluate the
+     * curve samples.
+     *
+     * @return true if forward differencing is in use
+     */
+    public boolean isForwardDifferencing()
+    {
+        return forwardDifferencing;
+    }
+
     /**
      * Get the number of vertices that this generator will create for the
      * curve. This is just the number of facets + 1.
@@ -578,6 +625,12 @@ public class BezierGenerator extends GeometryGenerator
             curveCoordinates = new float[numCurveValues];
         }
 
+        if(forwardDifferencing)
+        {
+            regenerateDifferencedCurve();
+            return;
+        }
+
         int coord = 0;
         float div = 1 / (float)facetCount;
 
@@ -594,6 +647,39 @@ public class BezierGenerator extends GeometryGenerator
         curveCoordinates[numCurveValues - 1] = controlPointCoordinates[ncp - 1];
     }
 
+    /**
+     * Regenerate the curve points using forward differences. The last point
+     * comes out as exactly the last control point.
+     */
+    private void regenerateDifferencedCurve()
+    {
+        int ncp = numControlPoints * 3;
+
+        if(differencer == null)
+            differencer = new ForwardDifferencer();
+
+        if((differenceControls == null) || (differenceControls.length < ncp))
+            differenceControls = new double[ncp];
+
+        if((differenceSamples == null) ||
+           (differenceSamples.length < numCurveValues))
+        {
+            differenceSamples = new double[numCurveValues];
+        }
+
+        for(int i = 0; i < ncp; i++)
+            differenceControls[i] = controlPointCoordinates[i];
+
+        differencer.evaluate(differenceControls,
+                             numControlPoints,
+                             3,
+                             facetCount,
+                             differenceSamples);
+
+        for(int i = 0; i < numCurveValues; i++)
+            curveCoordinates[i] = (float)differenceSamples[i];
+    }
+
     /**
      * Calculate a single point along the bezier curve and place it into
      * the point array.
@@ -28,6 +28,14 @@ import org.j3d.geom.UnsupportedTypeException;
  * explicit checking is performed to ensure that controlPoint coordinates do not
  * self-intersect or do anything nasty. Normals are always generated as the
  * average between the adjacent edges.
+ * <P>
+ *
+ * When the patch is regenerated often, {@link #setForwardDifferencing(boolean)}
+ * switches the uniform grid to forward difference evaluation. Each row of
+ * control points is stepped down the patch as one curve, then each of the
+ * resulting rows is stepped across, so every grid point costs a few
+ * additions per control point in one direction rather than a sum over every
+ * control point. Weighted patches are stepped in homogeneous coordinates.
  *
  * @author Justin Couch
  * @version $Revision: 1.8 $
@@ -37,6 +45,24 @@ public class BezierPatchGenerator extends PatchGenerator
     /** Default number of segments used in the patch */
     private static final int DEFAULT_FACETS = 16;
 
+    /** Flag to say the grid is evaluated by forward differences */
+    private boolean forwardDifferencing;
+
+    /** Forward difference evaluator, created on first use */
+    private ForwardDifferencer differencer;
+
+    /** Every control point as one flat array for the differencer */
+    private double[] differenceControls;
+
+    /** The control points of each grid row, stepped down the patch */
+    private double[] differenceRows;
+
+    /** Control points of the grid row being stepped across */
+    private double[] differenceRow;
+
+    /** The points of one grid row */
+    private double[] differenceSamples;
+
     /**
      * Construct a new generator with default settings of 20 grid squares over
      * the length of one surface.
@@ -66,6 +92,33 @@ public class BezierPatchGenerator extends PatchGenerator
         depthFacetCount = depthFacets;
     }
 
+    /**
+     * Set whether the uniform grid should be evaluated using forward
+     * differencing rather than evaluating the polynomials at each grid point.
+     * Both give the same surface to within rounding error. The default is
+     * off. This has no effect on adaptive mode.
+     *
+     * @param enable true to use forward differencing
+     */
+    public void setForwardDifferencing(boolean enable)
+    {
+        if(forwardDifferencing != enable)
+            patchChanged = true;
+
+        forwardDifferencing = enable;
+    }
+
+    /**
+     * Check to see whether forward differencing is used to evaluate the
+     * uniform grid.
+     *
+     * @return true if forward differencing is in use
+     */
+    public boolean isForwardDifferencing()
+    {
+        return forwardDifferencing;
+    }
+
     /**
      * Regenerate the patch coordinate points according to the bezier surface
      * function.
@@ -86,12 +139,114 @@ public class BezierPatchGenerator extends PatchGenerator
             patchCoordinates = new float[depthFacetCount + 1][numPatchValues];
         }
 
-        if(useControlPointWeights)
+        if(forwardDifferencing)
+            regenerateDifferencedPatch();
+        else if(useControlPointWeights)
             regenerateWeightedPatch();
         else
             regenerateStandardPatch();
     }
 
+    /**
+     * Evaluate a single point on the surface from the Bernstein polynomials
+     * of every control point.
+     *
+     * @param u The parameter along the width
+     * @param v The parameter along the depth
+     * @param out Array to write the 3 coordinate values to
+     */
+    @Override
+    protected void evaluateSurface(double u, double v, double[] out)
+    {
+        double x = 0;
+        double y = 0;
+        double z = 0;
+        double denom = 0;
+
+        for(int ki = 0; ki < numWidthControlPoints; ki++)
+        {
+            double bi = bezierBlend(ki, u, numWidthControlPoints - 1);
+
+            for(int kj = 0; kj < numDepthControlPoints; kj++)
+            {
+                double b = bi * bezierBlend(kj, v, numDepthControlPoints - 1);
+                int pos = kj * 3;
+
+                if(useControlPointWeights)
+                    b *= controlPointWeights[ki][kj];
+
+                x += controlPointCoordinates[ki][pos] * b;
+                y += controlPointCoordinates[ki][pos + 1] * b;
+                z += controlPointCoordinates[ki][pos + 2] * b;
+                denom += b;
+            }
+        }
+
+        if(useControlPointWeights && (denom != 0))
+        {
+            x /= denom;
+            y /= denom;
+            z /= denom;
+        }
+
+        out[0] = x;
+        out[1] = y;
+        out[2] = z;
+    }
+
+    /**
+     * Evaluate a single point on a boundary curve. Reversing a Bezier curve
+     * only needs the control points reversed, so that flag is not needed.
+     *
+     * @param points The boundary control points as a flat array
+     * @param weights The boundary weights or null if not rational
+     * @param numPoints The number of control points on the boundary
+     * @param alongWidth true if the boundary follows the width direction
+     * @param atEnd true if the boundary is at the end of the other direction
+     * @param reversed true if the points are in the reverse order
+     * @param t The parameter along the curve from 0 to 1
+     * @param out Array to write the 3 coordinate values to
+     */
+    @Override
+    protected void evaluateBoundary(float[] points,
+                                    float[] weights,
+                                    int numPoints,
+                                    boolean alongWidth,
+                                    boolean atEnd,
+                                    boolean reversed,
+                                    double t,
+                                    double[] out)
+    {
+        double x = 0;
+        double y = 0;
+        double z = 0;
+        double denom = 0;
+
+        for(int k = 0; k < numPoints; k++)
+        {
+            double b = bezierBlend(k, t, numPoints - 1);
+
+            if(weights != null)
+                b *= weights[k];
+
+            x += points[k * 3] * b;
+            y += points[k * 3 + 1] * b;
+            z += points[k * 3 + 2] * b;
+            denom += b;
+        }
+
+        if((weights != null) && (denom != 0))
+        {
+            x /= denom;
+            y /= denom;
+            z /= denom;
+        }
+
+        out[0] = x;
+        out[1] = y;
+        out[2] = z;
+    }
+
     /**
      * Regenerate the patch ignoring control point weights.
      */
@@ -338,6 +493,113 @@ public class BezierPatchGenerator extends PatchGenerator
             controlPointCoordinates[numWidthControlPoints - 1][ncp - 1];
     }
 
+    /**
+     * Regenerate the patch using forward differences. Each width control
+     * point holds a full row of depth control points, so stepping them down
+     * the patch as a single curve gives the control points of each grid row.
+     * Each of those is then stepped across to give the grid points.
+     */
+    private void regenerateDifferencedPatch()
+    {
+        int dim = useControlPointWeights ? 4 : 3;
+        int row_size = numDepthControlPoints * dim;
+        int num_rows = depthFacetCount + 1;
+        int num_samples = (widthFacetCount + 1) * dim;
+
+        if(differencer == null)
+            differencer = new ForwardDifferencer();
+
+        if((differenceControls == null) ||
+           (differenceControls.length < numWidthControlPoints * row_size))
+        {
+            differenceControls = new double[numWidthControlPoints * row_size];
+        }
+
+        if((differenceRows == null) ||
+           (differenceRows.length < num_rows * row_size))
+        {
+            differenceRows = new double[num_rows * row_size];
+        }
+
+        if((differenceRow == null) || (differenceRow.length < row_size))
+            differenceRow = new double[row_size];
+
+        if((differenceSamples == null) ||
+           (differenceSamples.length < num_samples))
+        {
+            differenceSamples = new double[num_samples];
+        }
+
+        int pos = 0;
+
+        for(int ki = 0; ki < numWidthControlPoints; ki++)
+        {
+            float[] src = controlPointCoordinates[ki];
+
+            for(int kj = 0; kj < numDepthControlPoints; kj++)
+            {
+                if(useControlPointWeights)
+                {
+                    double w = controlPointWeights[ki][kj];
+
+                    differenceControls[pos++] = src[kj * 3] * w;
+                    differenceControls[pos++] = src[kj * 3 + 1] * w;
+                    differenceControls[pos++] = src[kj * 3 + 2] * w;
+                    differenceControls[pos++] = w;
+                }
+                else
+                {
+                    differenceControls[pos++] = src[kj * 3];
+                    differenceControls[pos++] = src[kj * 3 + 1];
+                    differenceControls[pos++] = src[kj * 3 + 2];
+                }
+            }
+        }
+
+        differencer.evaluate(differenceControls,
+                             numWidthControlPoints,
+                             row_size,
+                             depthFacetCount,
+                             differenceRows);
+
+        for(int i = 0; i < num_rows; i++)
+        {
+            System.arraycopy(differenceRows,
+                             i * row_size,
+                             differenceRow,
+                             0,
+                             row_size);
+
+            differencer.evaluate(differenceRow,
+                                 numDepthControlPoints,
+                                 dim,
+                                 widthFacetCount,
+                                 differenceSamples);
+
+            float[] dest = patchCoordinates[i];
+            int cnt = 0;
+
+            for(int j = 0; j < num_samples; j += dim)
+            {
+                double x = differenceSamples[j];
+                double y = differenceSamples[j + 1];
+                double z = differenceSamples[j + 2];
+
+                if(useControlPointWeights && (differenceSamples[j + 3] != 0))
+                {
+                    double denom = differenceSamples[j + 3];
+                    x /= denom;
+                    y /= denom;
+                    z /= denom;
+                }
+
+                dest[cnt++] = (float)x;
+                dest[cnt++] = (float)y;
+                dest[cnt++] = (float)z;
+            }
+        }
+    }
+
     /**
      * Calculate the blending function of the two curves that contribute to
      * this point.
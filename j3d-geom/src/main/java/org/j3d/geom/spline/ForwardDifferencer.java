@@ -0,0 +1,173 @@
+/*
+ * j3d.org Copyright (c) 2001-2015
+ *                                 Java Source
+ *
+ *  This source is licensed under the GNU LGPL v2.1
+ *  Please read docs/LGPL.txt for more information
+ *
+ *  This software comes with the standard NO WARRANTY disclaimer for any
+ *  purpose. Use it at your own risk. If there's a problem you get to fix it.
+ */
+
+package org.j3d.geom.spline;
+
+// External imports
+// None
+
+// Local imports
+// None
+
+/**
+ * Evaluates a Bezier curve at evenly spaced parameter steps using forward
+ * differences.
+ * <p>
+ *
+ * A polynomial of degree n has a constant n'th forward difference, so once
+ * the table of differences at one sample is known, every following sample
+ * is n additions per component. Rounding errors build up in the table as it
+ * is stepped, so it is rebuilt from a direct evaluation of the curve every
+ * {@link #ANCHOR_INTERVAL} samples, keeping the drift bounded however many
+ * samples are taken. The last sample is always exactly the last control
+ * point.
+ * <p>
+ *
+ * A point may have any number of components. Rational curves are handled by
+ * passing homogeneous points, and a tensor product patch by treating a whole
+ * row of control points as one point.
+ */
+class ForwardDifferencer
+{
+    /** The number of samples stepped before the table is rebuilt */
+    static final int ANCHOR_INTERVAL = 32;
+
+    /** The table of forward differences, one row per order */
+    private double[] differences;
+
+    /** Scratch space for de Casteljau evaluation */
+    private double[] casteljau;
+
+    /**
+     * Construct a new differencer with empty scratch space.
+     */
+    ForwardDifferencer()
+    {
+        differences = new double[0];
+        casteljau = new double[0];
+    }
+
+    /**
+     * Evaluate a curve at segments + 1 evenly spaced steps from 0 to 1.
+     *
+     * @param ctrl The control points, dim values for each
+     * @param numPoints The number of control points, which is degree + 1
+     * @param dim The number of components in each point
+     * @param segments The number of steps to take
+     * @param out Array to write (segments + 1) * dim values to
+     */
+    void evaluate(double[] ctrl,
+                  int numPoints,
+                  int dim,
+                  int segments,
+                  double[] out)
+    {
+        int size = numPoints * dim;
+
+        if(differences.length < size)
+        {
+            differences = new double[size];
+            casteljau = new double[size];
+        }
+
+        double step = 1 / (double)segments;
+        int o = 0;
+
+        for(int i = 0; i < segments; i++)
+        {
+            if(i % ANCHOR_INTERVAL == 0)
+                anchor(ctrl, numPoints, dim, i, step);
+
+            for(int c = 0; c < dim; c++)
+                out[o++] = differences[c];
+
+            // Step each order on by the one above it
+            for(int k = 0; k < numPoints - 1; k++)
+            {
+                int d = k * dim;
+
+                for(int c = 0; c < dim; c++)
+                    differences[d + c] += differences[d + dim + c];
+            }
+        }
+
+        System.arraycopy(ctrl, (numPoints - 1) * dim, out, o, dim);
+    }
+
+    /**
+     * Rebuild the difference table from direct evaluations of the curve at
+     * the given sample and the degree samples after it.
+     *
+     * @param ctrl The control points, dim values for each
+     * @param numPoints The number of control points
+     * @param dim The number of components in each point
+     * @param first The index of the first sample
+     * @param step The parameter distance between samples
+     */
+    private void anchor(double[] ctrl,
+                        int numPoints,
+                        int dim,
+                        int first,
+                        double step)
+    {
+        // The later samples may lie past the end of the curve. That is fine
+        // as de Casteljau extrapolates the same polynomial.
+        for(int k = 0; k < numPoints; k++)
+            casteljau(ctrl, numPoints, dim, (first + k) * step, k * dim);
+
+        // Turn the values into differences in place, highest order first
+        for(int level = 1; level < numPoints; level++)
+        {
+            for(int k = numPoints - 1; k >= level; k--)
+            {
+                int d = k * dim;
+
+                for(int c = 0; c < dim; c++)
+                    differences[d + c] -= differences[d - dim + c];
+            }
+        }
+    }
+
+    /**
+     * Evaluate the curve at a single parameter with de Casteljau's
+     * algorithm, writing the result into the difference table.
+     *
+     * @param ctrl The control points, dim values for each
+     * @param numPoints The number of control points
+     * @param dim The number of components in each point
+     * @param t The parameter to evaluate at
+     * @param offset The position in the difference table to write to
+     */
+    private void casteljau(double[] ctrl,
+                           int numPoints,
+                           int dim,
+                           double t,
+                           int offset)
+    {
+        double[] wrk = casteljau;
+        double s = 1 - t;
+
+        System.arraycopy(ctrl, 0, wrk, 0, numPoints * dim);
+
+        for(int level = numPoints - 1; level > 0; level--)
+        {
+            for(int k = 0; k < level; k++)
+            {
+                int d = k * dim;
+
+                for(int c = 0; c < dim; c++)
+                    wrk[d + c] = s * wrk[d + c] + t * wrk[d + dim + c];
+            }
+        }
+
+        System.arraycopy(wrk, 0, differences, offset, dim);
+    }
+}
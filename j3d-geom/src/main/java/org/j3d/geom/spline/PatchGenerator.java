@@ -17,6 +17,7 @@ import org.j3d.geom.GeometryData;
 import org.j3d.geom.GeometryGenerator;
 import org.j3d.geom.InvalidArraySizeException;
 import org.j3d.geom.UnsupportedTypeException;
+import org.j3d.maths.vector.Matrix4d;
 import org.j3d.maths.vector.Vector3d;
 
 /**
@@ -37,6 +38,23 @@ import org.j3d.maths.vector.Vector3d;
  * time the control points are changed, unless otherwise specified. If the patch
  * coordinate size changes, then the weights will always be reset, otherwise if
  * the size is the same as previously set, then the weights are left alone.
+ * <p>
+ *
+ * <b>Adaptive Mode</b>
+ * <p>
+ * Normally the patch is cut into a uniform grid of facets however curved or
+ * far away it is. In adaptive mode the facet counts are instead the most
+ * facets allowed in each direction, and each boundary and the interior are
+ * only split as finely as needed to keep within an error tolerance of the
+ * surface. The error is measured in object space, or in pixels once a view
+ * matrix is set. Where a generator can work out a boundary from the control
+ * points of that boundary alone, as the Bezier generator always can and the
+ * B-spline generator can when its knots are clamped at that boundary, the
+ * points along it depend on nothing else. Neighbouring patches that share
+ * such a boundary and use the same settings then join without cracks. Other
+ * boundaries are sampled from the surface, which follows them exactly but
+ * may leave hairline gaps from rounding. Adaptive mode only generates
+ * triangles and triangle arrays.
  *
  * @author Justin Couch
  * @version $Revision: 1.8 $
@@ -94,6 +112,18 @@ public abstract class PatchGenerator extends GeometryGenerator
     /** Should we use control point weights. Defaults to false. */
     protected boolean useControlPointWeights;
 
+    /** Flag to say the patch is tessellated adaptively */
+    private boolean adaptive;
+
+    /** The tessellator used in adaptive mode */
+    private AdaptivePatchTessellator tessellator;
+
+    /**
+     * Flag to say the patch grid is up to date for the default surface
+     * evaluation
+     */
+    private boolean gridSampled;
+
     /**
      * Construct a new generator with no control points set.
      */
@@ -105,6 +135,7 @@ public abstract class PatchGenerator extends GeometryGenerator
         normalsChanged = true;
         texCoordsChanged = true;
         useControlPointWeights = false;
+        tessellator = new AdaptivePatchTessellator(this);
     }
 
     /**
@@ -113,6 +144,94 @@ public abstract class PatchGenerator extends GeometryGenerator
      */
     protected abstract void regeneratePatch();
 
+    /**
+     * Evaluate a single point on the surface. The parameters are normalised
+     * to run from 0 to 1 over the whole patch, with u following the width
+     * control points and v the depth control points.
+     * <p>
+     *
+     * The default implementation interpolates the grid of
+     * {@link #patchCoordinates} built by {@link #regeneratePatch()}, taking
+     * the rows as the depth facets and the values along a row as the width
+     * facets. It is only as accurate as that grid, so adaptive mode can never
+     * be finer than the facet counts. Derived classes should override this
+     * with an exact evaluation of the surface.
+     *
+     * @param u The parameter along the width
+     * @param v The parameter along the depth
+     * @param out Array to write the 3 coordinate values to
+     */
+    protected void evaluateSurface(double u, double v, double[] out)
+    {
+        if(!gridSampled)
+        {
+            patchChanged = true;
+            regeneratePatch();
+            patchChanged = false;
+            gridSampled = true;
+        }
+
+        double fu = Math.min(Math.max(u, 0), 1) * widthFacetCount;
+        double fv = Math.min(Math.max(v, 0), 1) * depthFacetCount;
+        int i = Math.min((int)fu, widthFacetCount - 1);
+        int j = Math.min((int)fv, depthFacetCount - 1);
+        double s = fu - i;
+        double t = fv - j;
+
+        float[] row_0 = patchCoordinates[j];
+        float[] row_1 = patchCoordinates[j + 1];
+        int p = i * 3;
+
+        for(int k = 0; k < 3; k++)
+        {
+            double a = row_0[p + k] + (row_0[p + k + 3] - row_0[p + k]) * s;
+            double b = row_1[p + k] + (row_1[p + k + 3] - row_1[p + k]) * s;
+
+            out[k] = a + (b - a) * t;
+        }
+    }
+
+    /**
+     * Evaluate a single point on a boundary curve of the patch. Where
+     * possible this should use just the control points of that boundary,
+     * so that the result only depends on the values passed in and
+     * neighbouring patches calculate exactly the same points along a shared
+     * boundary.
+     * <p>
+     *
+     * The default implementation ignores the control points and evaluates
+     * the surface along the edge, which is right for any patch but does not
+     * promise crack free joins.
+     *
+     * @param points The boundary control points as a flat array
+     * @param weights The boundary weights or null if not rational
+     * @param numPoints The number of control points on the boundary
+     * @param alongWidth true if the boundary follows the width direction
+     * @param atEnd true if the boundary is at the end of the other
+     *   direction, so at v = 1 for a width boundary or u = 1 for a depth one
+     * @param reversed true if the points are in the reverse order to the
+     *   patch, so the curve parameterisation must be reversed as well
+     * @param t The parameter along the curve from 0 to 1
+     * @param out Array to write the 3 coordinate values to
+     */
+    protected void evaluateBoundary(float[] points,
+                                    float[] weights,
+                                    int numPoints,
+                                    boolean alongWidth,
+                                    boolean atEnd,
+                                    boolean reversed,
+                                    double t,
+                                    double[] out)
+    {
+        double along = reversed ? 1 - t : t;
+        double across = atEnd ? 1 : 0;
+
+        if(alongWidth)
+            evaluateSurface(along, across, out);
+        else
+            evaluateSurface(across, along, out);
+    }
+
 
     /**
      * Change the number of facets used to create this cone. This will cause
@@ -157,6 +276,12 @@ public abstract class PatchGenerator extends GeometryGenerator
      */
     public void enableControlPointWeights(boolean state)
     {
+        if(useControlPointWeights != state)
+        {
+            patchChanged = true;
+            normalsChanged = true;
+        }
+
         useControlPointWeights = state;
     }
 
@@ -170,6 +295,81 @@ public abstract class PatchGenerator extends GeometryGenerator
         return useControlPointWeights;
     }
 
+    /**
+     * Turn adaptive mode on or off. When on, the facet counts are the most
+     * facets allowed in each direction.
+     *
+     * @param enable true to only use as many facets as needed
+     */
+    public void setAdaptive(boolean enable)
+    {
+        if(enable != adaptive)
+        {
+            adaptive = enable;
+            patchChanged = true;
+            normalsChanged = true;
+            texCoordsChanged = true;
+        }
+    }
+
+    /**
+     * Check to see if adaptive mode is in use.
+     *
+     * @return true if only as many facets as needed are used
+     */
+    public boolean isAdaptive()
+    {
+        return adaptive;
+    }
+
+    /**
+     * Set the largest distance allowed between the surface and the triangles
+     * in adaptive mode. Without a view matrix this is in object space units,
+     * with one it is in pixels. The default is 0.01.
+     *
+     * @param tolerance The tolerance to use, zero or greater
+     * @throws IllegalArgumentException The tolerance is negative
+     */
+    public void setErrorTolerance(float tolerance)
+    {
+        if(tolerance < 0)
+            throw new IllegalArgumentException("Negative error tolerance");
+
+        tessellator.setErrorTolerance(tolerance);
+        patchChanged = true;
+    }
+
+    /**
+     * Get the largest distance allowed between the surface and the triangles
+     * in adaptive mode.
+     *
+     * @return The current tolerance
+     */
+    public float getErrorTolerance()
+    {
+        return tessellator.getErrorTolerance();
+    }
+
+    /**
+     * Set the view that errors are measured in for adaptive mode, making the
+     * error tolerance a number of pixels. The matrix transforms the patch
+     * coordinates into eye space, looking down the negative Z axis. The
+     * pixel scale is normally the viewport height divided by 2 tan(fov / 2).
+     * The matrix is copied.
+     *
+     * @param view The eye space transform or null for object space errors
+     * @param pixelScale Pixels per unit of size at a distance of one
+     * @throws IllegalArgumentException The pixel scale is not positive
+     */
+    public void setViewMatrix(Matrix4d view, float pixelScale)
+    {
+        if((view != null) && (pixelScale <= 0))
+            throw new IllegalArgumentException("Pixel scale is not positive");
+
+        tessellator.setViewMatrix(view, pixelScale);
+        patchChanged = true;
+    }
+
     /**
      * Set the patch control point weights. The array is presented as
      * [width][depth] with the coordinates flattened as [Xn, Yn, Zn] in the
@@ -1085,6 +1285,28 @@ public abstract class PatchGenerator extends GeometryGenerator
     {
         int ret_val = 0;
 
+        if(adaptive)
+        {
+            regenerateAdaptive();
+
+            switch(data.geometryType)
+            {
+                case GeometryData.TRIANGLES:
+                    ret_val = tessellator.getNumTriangles() * 3;
+                    break;
+
+                case GeometryData.INDEXED_TRIANGLES:
+                    ret_val = tessellator.getNumVertices();
+                    break;
+
+                default:
+                    throw new UnsupportedTypeException(
+                        "Adaptive mode only generates triangles");
+            }
+
+            return ret_val;
+        }
+
         switch(data.geometryType)
         {
             case GeometryData.TRIANGLES:
@@ -1131,6 +1353,12 @@ public abstract class PatchGenerator extends GeometryGenerator
     public void generate(GeometryData data)
         throws UnsupportedTypeException, InvalidArraySizeException
     {
+        if(adaptive)
+        {
+            adaptiveTriangles(data);
+            return;
+        }
+
         switch(data.geometryType)
         {
             case GeometryData.TRIANGLES:
@@ -1164,6 +1392,108 @@ public abstract class PatchGenerator extends GeometryGenerator
         }
     }
 
+    /**
+     * Generate the triangles of the adaptive tessellation, either indexed or
+     * as a flat triangle array.
+     *
+     * @param data The data to patch the calculations on
+     * @throws InvalidArraySizeException The array is not big enough to contain
+     *   the requested geometry
+     * @throws UnsupportedTypeException The geometry type is not triangles
+     */
+    private void adaptiveTriangles(GeometryData data)
+        throws InvalidArraySizeException, UnsupportedTypeException
+    {
+        int vtx_cnt = getVertexCount(data);
+        boolean indexed = data.geometryType == GeometryData.INDEXED_TRIANGLES;
+        boolean normals = (data.geometryComponents & GeometryData.NORMAL_DATA) != 0;
+        int tex_size = 0;
+
+        if((data.geometryComponents & GeometryData.TEXTURE_2D_DATA) != 0)
+            tex_size = 2;
+        else if((data.geometryComponents & GeometryData.TEXTURE_3D_DATA) != 0)
+            tex_size = 3;
+
+        if(data.coordinates == null)
+            data.coordinates = new float[vtx_cnt * 3];
+        else if(data.coordinates.length < vtx_cnt * 3)
+            throw new InvalidArraySizeException("Coordinates",
+                                                data.coordinates.length,
+                                                vtx_cnt * 3);
+
+        if(normals)
+        {
+            if(data.normals == null)
+                data.normals = new float[vtx_cnt * 3];
+            else if(data.normals.length < vtx_cnt * 3)
+                throw new InvalidArraySizeException("Normals",
+                                                    data.normals.length,
+                                                    vtx_cnt * 3);
+        }
+
+        if(tex_size != 0)
+        {
+            if(data.textureCoordinates == null)
+                data.textureCoordinates = new float[vtx_cnt * tex_size];
+            else if(data.textureCoordinates.length < vtx_cnt * tex_size)
+                throw new InvalidArraySizeException("Texture coordinates",
+                                                    data.textureCoordinates.length,
+                                                    vtx_cnt * tex_size);
+        }
+
+        int num_tris = tessellator.getNumTriangles();
+        int[] tris = tessellator.getTriangles();
+        float[] coords = tessellator.getCoordinates();
+        float[] norms = tessellator.getNormals();
+        float[] tex = tessellator.getTexCoords();
+
+        data.vertexCount = vtx_cnt;
+
+        if(indexed)
+        {
+            int index_size = num_tris * 3;
+
+            if(data.indexes == null)
+                data.indexes = new int[index_size];
+            else if(data.indexes.length < index_size)
+                throw new InvalidArraySizeException("Coord Indexes",
+                                                    data.indexes.length,
+                                                    index_size);
+
+            System.arraycopy(tris, 0, data.indexes, 0, index_size);
+            data.indexesCount = index_size;
+        }
+
+        for(int i = 0; i < vtx_cnt; i++)
+        {
+            int v = indexed ? i : tris[i];
+            int p = v * 3;
+            int o = i * 3;
+
+            data.coordinates[o] = coords[p];
+            data.coordinates[o + 1] = coords[p + 1];
+            data.coordinates[o + 2] = coords[p + 2];
+
+            if(normals)
+            {
+                data.normals[o] = norms[p];
+                data.normals[o + 1] = norms[p + 1];
+                data.normals[o + 2] = norms[p + 2];
+            }
+
+            if(tex_size != 0)
+            {
+                int t = i * tex_size;
+
+                data.textureCoordinates[t] = tex[v * 2];
+                data.textureCoordinates[t + 1] = tex[v * 2 + 1];
+
+                if(tex_size == 3)
+                    data.textureCoordinates[t + 2] = 0;
+            }
+        }
+    }
+
    /**
      * Generate a new set of points for an unindexed quad array
      *
@@ -2245,6 +2575,23 @@ public abstract class PatchGenerator extends GeometryGenerator
         }
     }
 
+    /**
+     * Rebuild the adaptive tessellation if anything about the patch has
+     * changed since it was last built.
+     */
+    private void regenerateAdaptive()
+    {
+        if(!patchChanged)
+            return;
+
+        patchChanged = false;
+        normalsChanged = true;
+        texCoordsChanged = true;
+        gridSampled = false;
+
+        tessellator.tessellate(widthFacetCount, depthFacetCount);
+    }
+
     /**
      * Convenience method to regenerate the smoothed normals for the
      * patch. It assumes that the patch has been regenerated just before
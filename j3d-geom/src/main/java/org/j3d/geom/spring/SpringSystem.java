@@ -10,10 +10,12 @@
 package org.j3d.geom.spring;
 
 // External imports
-// None
+import java.util.IdentityHashMap;
+import java.util.concurrent.ForkJoinPool;
 
 // Local imports
-// None
+import org.j3d.util.ForkJoinUtils;
+import org.j3d.util.RangeProcessor;
 
 /**
  * An implementation of a spring system, particularly useful for modelling cloth
@@ -25,13 +27,114 @@ package org.j3d.geom.spring;
  * by directly operating on the same array that is used by the geometry itself
  * during rendering. The arrays that are passed to the system are not copied,
  * just directly referenced and each node in the system acts as a .
+ * <p>
+ *
+ * <b>Solver</b>
+ * <p>
+ * The update does not walk the node objects. The connections of all the
+ * nodes are flattened into compressed sparse row arrays: the springs of
+ * node i are entries <code>connStart[i]</code> up to
+ * <code>connStart[i + 1]</code> of the target index and natural length
+ * arrays. Positions and velocities are held in packed arrays of 3 values per
+ * node. When every node uses the same position array, with node i at
+ * offset 3i as {@link #addRectField} sets up, that array is used directly.
+ * Otherwise the positions are copied in at the start of each update and
+ * back out at the end.
+ * <p>
+ *
+ * An update is three passes over the nodes: copy in the node state, add
+ * the spring and gravity forces to each velocity, then move each node and
+ * copy its state back out. The force pass only reads positions and only
+ * writes the velocity of its own node, and the position pass only touches
+ * its own node, so each pass can be split over the cores of a fork/join
+ * pool. The node's <code>dir</code>, <code>locked</code> and position values
+ * are read fresh on every update, so they may still be changed between
+ * updates. A node that gains springs through
+ * {@link SpringNode#addSpring(SpringNode)} is picked up automatically.
+ * Changes to the natural lengths made directly on the nodes need a call to
+ * {@link #updateConnections()}.
+ * <p>
+ *
+ * <b>Integration Modes</b>
+ * <p>
+ * The default {@link #EXPLICIT_INTEGRATION} turns each stretched spring
+ * into a force and steps the velocity and position forward. It is cheap,
+ * but a stiff spring constant or a long time step makes it overshoot and
+ * blow up, which means sub-stepping many times a frame.
+ * <p>
+ *
+ * {@link #POSITION_BASED_INTEGRATION} is stable at any time step. Each node
+ * is first moved by its velocity and gravity to a predicted position. Then,
+ * over a number of iterations, each spring is treated as a distance
+ * constraint and the nodes are pulled back towards their natural lengths.
+ * A node takes all of the correction when the other end is locked and half
+ * otherwise. The corrections of all the springs on a node are averaged,
+ * Jacobi style, so every node can be processed at the same time. The new
+ * velocity is the distance moved over the time step. In this mode the
+ * spring constant is not used. Use {@link #setConstraintStiffness(float)}
+ * to make the springs softer. More iterations give stiffer springs.
+ * <p>
  *
+ * <b>Normals</b>
+ * <p>
+ * {@link #evaluateNormals()} only recomputes the normals that can have
+ * changed. It keeps the position of each node from when the normals around
+ * it were last worked out. A node that has since moved further than the
+ * normal threshold marks itself, and its own normal along with those of the
+ * nodes that use it for their normals are recomputed. Both steps are
+ * passes over the nodes that run on the fork/join pool. In a large field
+ * that has mostly come to rest, only the moving part costs anything.
  *
  * @author Justin Couch
  * @version $Revision: 1.2 $
  */
 public class SpringSystem
 {
+    /** Integration mode using explicit spring forces. The default */
+    public static final int EXPLICIT_INTEGRATION = 0;
+
+    /** Integration mode using position based distance constraints */
+    public static final int POSITION_BASED_INTEGRATION = 1;
+
+    /** The default number of constraint iterations per update */
+    private static final int DEFAULT_SOLVER_ITERATIONS = 8;
+
+    /** Over-relaxation applied to the averaged constraint corrections */
+    private static final float RELAXATION = 1.5f;
+
+    /** Nodes per piece when a pass is split over a pool */
+    private static final int MIN_NODE_CHUNK = 1024;
+
+    /** Pass that copies the node state into the packed arrays */
+    private static final int GATHER_PASS = 0;
+
+    /** Pass that accumulates the spring forces into the velocities */
+    private static final int FORCE_PASS = 1;
+
+    /** Pass that moves the nodes and copies the state back out */
+    private static final int INTEGRATE_PASS = 2;
+
+    /** Position based pass that applies damping and gravity to velocities */
+    private static final int VELOCITY_PASS = 3;
+
+    /** Position based pass that moves the nodes to their predicted places */
+    private static final int PREDICT_PASS = 4;
+
+    /** Position based pass that works out each node's spring correction */
+    private static final int PROJECT_PASS = 5;
+
+    /** Position based pass that applies the corrections */
+    private static final int APPLY_PASS = 6;
+
+    /** Position based pass that derives velocities and copies state out */
+    private static final int FINISH_PASS = 7;
+
+    /** Normal pass that marks the nodes that have moved far enough */
+    private static final int MOVED_PASS = 8;
+
+    /** Normal pass that recomputes the normals around moved nodes */
+    private static final int NORMAL_PASS = 9;
+
     /** Constants used to set up the springs */
     private static final int[] DX = { 1, 1, 0, -1, -1, -1,  0,  1 };
     private static final int[] DY = { 0, 1, 1,  1,  0, -1, -1, -1 };
@@ -48,6 +151,76 @@ public class SpringSystem
     /** A constant value defining how springy the connections are */
     private float springConstant;
 
+    /**
+     * All the nodes the solver deals with. The first numNodes are the
+     * system's own. Any after that are nodes outside the system that are
+     * connected to, which are never moved by the solver.
+     */
+    private SpringNode[] solverNodes;
+
+    /** The number of nodes in the solver arrays, including outside ones */
+    private int numSolverNodes;
+
+    /** Index of the first spring of each node, plus the total at the end */
+    private int[] connStart;
+
+    /** Index of the node at the other end of each spring */
+    private int[] connTargets;
+
+    /** Natural length of each spring */
+    private float[] connLengths;
+
+    /** Packed node positions, 3 per node. May be the nodes' own array */
+    private float[] positions;
+
+    /** true if positions is the array shared by all the nodes */
+    private boolean sharedPositions;
+
+    /** Packed node velocities, 3 per node */
+    private float[] velocities;
+
+    /** Locked state of each node, read at the start of each update */
+    private boolean[] lockedNodes;
+
+    /** true when the packed connection arrays match the nodes */
+    private boolean connectionsValid;
+
+    /** Set during an update when a node's spring count has changed */
+    private volatile boolean connectionsChanged;
+
+    /** Decay factor for the velocities in the current update */
+    private float velocityDecay;
+
+    /** The integration mode in use */
+    private int integrationMode;
+
+    /** The number of constraint iterations for position based updates */
+    private int solverIterations;
+
+    /** Stiffness of the constraints, between 0 and 1 */
+    private float constraintStiffness;
+
+    /** Stiffness applied in each iteration of the current update */
+    private float iterationStiffness;
+
+    /** Positions at the start of a position based update, 3 per node */
+    private float[] previousPositions;
+
+    /** Constraint correction for each node in an iteration, 3 per node */
+    private float[] corrections;
+
+    /** Distance a node must move before its normals are recomputed */
+    private float normalThreshold;
+
+    /** Position of each node when the normals around it were worked out */
+    private float[] normalPositions;
+
+    /** Flag per node set when it has moved past the normal threshold */
+    private boolean[] movedNodes;
+
+    /** false when every normal needs to be recomputed */
+    private boolean normalsValid;
+
     /**
      * Create a new default spring system. Gravity is pointed downwards with a
      * value of -9.8 and spring constant of 200.
@@ -59,6 +232,10 @@ public class SpringSystem
 
         numNodes = 0;
         springConstant = 200;
+
+        integrationMode = EXPLICIT_INTEGRATION;
+        solverIterations = DEFAULT_SOLVER_ITERATIONS;
+        constraintStiffness = 1;
     }
 
     /**
@@ -78,6 +255,7 @@ public class SpringSystem
 
         // Make sure we have enough room
         incNodeListSize(width * height);
+        connectionsValid = false;
 
         for(int j = 0; j < height; j++)
         {
@@ -223,6 +401,8 @@ public class SpringSystem
      */
     public void setCustomSpringField(SpringNode[] nodes, int numValid)
     {
+        connectionsValid = false;
+
         if((nodes == null) || (numValid == 0))
         {
             this.nodes = null;
@@ -246,6 +426,18 @@ public class SpringSystem
     {
         for(int i = 0; i < numNodes; i++)
             nodes[i].resetNaturalLengths();
+
+        connectionsValid = false;
+    }
+
+    /**
+     * Re-read the springs and their natural lengths from the nodes. Only
+     * needed when the natural lengths have been changed directly on the
+     * nodes. Everything else is picked up by the next update.
+     */
+    public void updateConnections()
+    {
+        connectionsValid = false;
     }
 
     /**
@@ -255,7 +447,7 @@ public class SpringSystem
      */
     public void update(float dTime)
     {
-        update(dTime, null, null);
+        update(dTime, null, null, ForkJoinUtils.getSharedPool());
     }
 
     /**
@@ -266,7 +458,7 @@ public class SpringSystem
      */
     public void update(float dTime, SpringEvaluatorCallback callback)
     {
-        update(dTime, callback, null);
+        update(dTime, callback, null, ForkJoinUtils.getSharedPool());
     }
 
     /**
@@ -278,118 +470,217 @@ public class SpringSystem
      */
     public void update(float dTime, SpringEvaluatorCallback callback, float[] attribs)
     {
-        float time = (float)Math.pow(0.5f, dTime);
+        update(dTime, callback, attribs, ForkJoinUtils.getSharedPool());
+    }
 
-        for(int i = 0; i < numNodes; i++)
-        {
-            if(nodes[i].locked)
-                continue;
+    /**
+     * Time to update all the interactions between the springs and nodes,
+     * splitting the work over the given fork/join pool. If the pool is null,
+     * all of the work is done on the calling thread. The callback is always
+     * called on the calling thread, once for each unlocked node after all
+     * the forces have been worked out and before any node moves.
+     *
+     * @param dTime The time delta from last evaluation
+     * @param callback A per-node extra processing if needed callback
+     * @param attribs Any per-node attribute info that is useful for the callback
+     * @param pool The pool to run the work in or null for the calling thread
+     */
+    public void update(float dTime,
+                       SpringEvaluatorCallback callback,
+                       float[] attribs,
+                       ForkJoinPool pool)
+    {
+        if(numNodes == 0)
+            return;
 
-            SpringNode node = nodes[i];
+        if(!connectionsValid)
+            buildConnections();
 
-            node.dir[0] *= time;
-            node.dir[1] *= time;
-            node.dir[2] *= time;
+        velocityDecay = (float)Math.pow(0.5f, dTime);
+        connectionsChanged = false;
 
-            float p_x = node.position[node.offset];
-            float p_y = node.position[node.offset + 1];
-            float p_z = node.position[node.offset + 2];
+        runPass(GATHER_PASS, dTime, numSolverNodes, pool);
 
-            for(int j = 0; j < node.numConnections; j++)
-            {
-                // Calculate the distance between the two nodes right now
-                int n_off = node.connections[j].offset;
-                float d_x = node.connections[j].position[n_off] - p_x;
-                float d_y = node.connections[j].position[n_off + 1] - p_y;
-                float d_z = node.connections[j].position[n_off + 2] - p_z;
+        // A node gained springs since the arrays were built, so rebuild
+        // them and gather again.
+        if(connectionsChanged)
+        {
+            buildConnections();
+            runPass(GATHER_PASS, dTime, numSolverNodes, pool);
+        }
 
-                float len = (float)Math.sqrt(d_x * d_x + d_y * d_y + d_z * d_z);
-                float t = (len - node.naturalLengths[j]) / len;
+        if(integrationMode == POSITION_BASED_INTEGRATION)
+        {
+            updatePositionBased(dTime, callback, attribs, pool);
+            return;
+        }
 
-                float f_x = 3 * d_x * t;
-                float f_y = 3 * d_y * t;
-                float f_z = 3 * d_z * t;
+        runPass(FORCE_PASS, dTime, numNodes, pool);
 
-                node.dir[0] += springConstant * dTime * f_x;
-                node.dir[1] += springConstant * dTime * f_y;
-                node.dir[2] += springConstant * dTime * f_z;
-            }
+        if(callback != null)
+            runCallback(callback, attribs);
 
-            node.dir[0] += dTime * gravity[0];
-            node.dir[1] += dTime * gravity[1];
-            node.dir[2] += dTime * gravity[2];
+        runPass(INTEGRATE_PASS, dTime, numNodes, pool);
+    }
 
-            if(callback != null)
-                callback.processSpringNode(node, attribs);
-        }
+    /**
+     * Set the way the nodes are moved on each update. See the class
+     * documentation for the details of each mode.
+     *
+     * @param mode One of the _INTEGRATION constants
+     * @throws IllegalArgumentException The mode is not one of the constants
+     */
+    public void setIntegrationMode(int mode)
+    {
+        if(mode != EXPLICIT_INTEGRATION && mode != POSITION_BASED_INTEGRATION)
+            throw new IllegalArgumentException("Unknown integration mode " +
+                                               mode);
 
-        for(int i = 0; i < numNodes; i++)
-        {
-            if(nodes[i].locked)
-                continue;
+        integrationMode = mode;
+    }
 
-            int n_off = nodes[i].offset;
-            nodes[i].position[n_off] += dTime * nodes[i].dir[0];
-            nodes[i].position[n_off + 1] += dTime * nodes[i].dir[1];
-            nodes[i].position[n_off + 2] += dTime * nodes[i].dir[2];
-        }
+    /**
+     * Get the way the nodes are moved on each update.
+     *
+     * @return One of the _INTEGRATION constants
+     */
+    public int getIntegrationMode()
+    {
+        return integrationMode;
     }
 
     /**
-     * Update the normals now following in any post-processing after the
+     * Set the number of constraint iterations run by each position based
+     * update. More iterations give stiffer springs at a higher cost.
+     *
+     * @param count The number of iterations, at least 1
+     * @throws IllegalArgumentException The count is less than 1
+     */
+    public void setSolverIterations(int count)
+    {
+        if(count < 1)
+            throw new IllegalArgumentException("Solver iterations < 1");
+
+        solverIterations = count;
+    }
+
+    /**
+     * Get the number of constraint iterations run by each position based
      * update.
+     *
+     * @return A value >= 1
      */
-    public void evaluateNormals()
+    public int getSolverIterations()
     {
-        for(int i = 0; i < numNodes; i++)
-        {
-            SpringNode node = nodes[i];
+        return solverIterations;
+    }
 
-            float n_x = 0;
-            float n_y = 0;
-            float n_z = 0;
+    /**
+     * Set how stiff the springs are in position based mode. 1 pulls them all
+     * the way back to their natural length, smaller values let them stretch.
+     * The value is spread over the iterations, so it means the same whatever
+     * the iteration count.
+     *
+     * @param stiffness The stiffness between 0 and 1
+     * @throws IllegalArgumentException The stiffness is out of range
+     */
+    public void setConstraintStiffness(float stiffness)
+    {
+        if(!(stiffness >= 0 && stiffness <= 1))
+            throw new IllegalArgumentException("Stiffness not in [0, 1]");
 
-            float p_x = node.position[node.offset];
-            float p_y = node.position[node.offset + 1];
-            float p_z = node.position[node.offset + 2];
+        constraintStiffness = stiffness;
+    }
 
-            int n_off = node.connections[0].offset;
+    /**
+     * Get how stiff the springs are in position based mode.
+     *
+     * @return A value between 0 and 1
+     */
+    public float getConstraintStiffness()
+    {
+        return constraintStiffness;
+    }
 
-            float v1_x = node.connections[0].position[n_off] - p_x;
-            float v1_y = node.connections[0].position[n_off + 1] - p_y;
-            float v1_z = node.connections[0].position[n_off + 2] - p_z;
+    /**
+     * Update the normals now following in any post-processing after the
+     * update, using the shared fork/join pool.
+     */
+    public void evaluateNormals()
+    {
+        evaluateNormals(ForkJoinUtils.getSharedPool());
+    }
 
-            for(int j = 1; j < node.nNormal; j++)
-            {
-                float v0_x = v1_x;
-                float v0_y = v1_y;
-                float v0_z = v1_z;
+    /**
+     * Update the normals now following in any post-processing after the
+     * update, splitting the work over the given fork/join pool. If the pool
+     * is null, all of the work is done on the calling thread. Only the
+     * normals of nodes near one that has moved since its normal was last
+     * worked out are recomputed. See {@link #setNormalThreshold(float)}.
+     *
+     * @param pool The pool to run the work in or null for the calling thread
+     */
+    public void evaluateNormals(ForkJoinPool pool)
+    {
+        if(numNodes == 0)
+            return;
 
-                n_off = node.connections[j].offset;
-                v1_x = node.connections[j].position[n_off] - p_x;
-                v1_y = node.connections[j].position[n_off + 1] - p_y;
-                v1_z = node.connections[j].position[n_off + 2] - p_z;
+        if(!connectionsValid)
+            buildConnections();
 
-                float dot_v0 = v0_x * v0_x + v0_y * v0_y + v0_z * v0_z;
-                float dot_v1 = v1_x * v1_x + v1_y * v1_y + v1_z * v1_z;
+        if(normalPositions == null ||
+           normalPositions.length < numSolverNodes * 3)
+        {
+            normalPositions = new float[numSolverNodes * 3];
+            movedNodes = new boolean[numSolverNodes];
+            normalsValid = false;
+        }
 
-                float cross_x = v0_y * v1_z - v0_z * v1_y;
-                float cross_y = v0_z * v1_x - v0_x * v1_z;
-                float cross_z = v0_x * v1_y - v0_y * v1_x;
+        runPass(MOVED_PASS, 0, numSolverNodes, pool);
+        runPass(NORMAL_PASS, 0, numNodes, pool);
 
-                float r_sqrt = rsqrt(dot_v0 * dot_v1);
+        normalsValid = true;
+    }
 
-                n_x +=  cross_x * r_sqrt;
-                n_y +=  cross_y * r_sqrt;
-                n_z +=  cross_z * r_sqrt;
-            }
+    /**
+     * Set how far a node has to move before the normals around it are
+     * recomputed. The distance is measured from where the node was when
+     * they were last worked out, so slow drift is still caught once it adds
+     * up. With the default of 0, any movement at all counts, which gives
+     * the same normals as recomputing everything. A small positive value
+     * skips the nodes of a settled field that are only jittering.
+     *
+     * @param distance The distance a node must move, 0 or more
+     * @throws IllegalArgumentException The distance is negative
+     */
+    public void setNormalThreshold(float distance)
+    {
+        if(!(distance >= 0))
+            throw new IllegalArgumentException("Normal threshold < 0");
 
-            float d = rsqrt(n_x * n_x + n_y * n_y + n_z * n_z);
+        normalThreshold = distance;
+    }
 
-            node.normal[node.offset] = n_x * d;
-            node.normal[node.offset + 1] = n_y * d;
-            node.normal[node.offset + 2] = n_z * d;
-        }
+    /**
+     * Get how far a node has to move before the normals around it are
+     * recomputed.
+     *
+     * @return A distance of 0 or more
+     */
+    public float getNormalThreshold()
+    {
+        return normalThreshold;
+    }
+
+    /**
+     * Force every normal to be recomputed by the next call to
+     * {@link #evaluateNormals()}. Needed if the normal array has been
+     * changed by other code, or if the nodes used for a normal have been
+     * changed without a change in position.
+     */
+    public void invalidateNormals()
+    {
+        normalsValid = false;
     }
 
     /**
@@ -459,6 +750,517 @@ public class SpringSystem
         return springConstant;
     }
 
+    /**
+     * Move the nodes using position based constraint projection. The node
+     * state has already been gathered.
+     */
+    private void updatePositionBased(float dTime,
+                                     SpringEvaluatorCallback callback,
+                                     float[] attribs,
+                                     ForkJoinPool pool)
+    {
+        if(dTime <= 0)
+            return;
+
+        if(previousPositions == null ||
+           previousPositions.length < numSolverNodes * 3)
+        {
+            previousPositions = new float[numSolverNodes * 3];
+            corrections = new float[numSolverNodes * 3];
+        }
+
+        iterationStiffness = 1 - (float)Math.pow(1 - constraintStiffness,
+                                                  1.0 / solverIterations);
+
+        runPass(VELOCITY_PASS, dTime, numNodes, pool);
+
+        if(callback != null)
+            runCallback(callback, attribs);
+
+        runPass(PREDICT_PASS, dTime, numNodes, pool);
+
+        for(int i = 0; i < solverIterations; i++)
+        {
+            runPass(PROJECT_PASS, dTime, numNodes, pool);
+            runPass(APPLY_PASS, dTime, numNodes, pool);
+        }
+
+        runPass(FINISH_PASS, dTime, numNodes, pool);
+    }
+
+    /**
+     * Hand each unlocked node to the callback with its current velocity,
+     * and take back any change it makes.
+     */
+    private void runCallback(SpringEvaluatorCallback callback, float[] attribs)
+    {
+        for(int i = 0; i < numNodes; i++)
+        {
+            if(lockedNodes[i])
+                continue;
+
+            SpringNode node = nodes[i];
+            int i3 = i * 3;
+
+            node.dir[0] = velocities[i3];
+            node.dir[1] = velocities[i3 + 1];
+            node.dir[2] = velocities[i3 + 2];
+
+            callback.processSpringNode(node, attribs);
+
+            velocities[i3] = node.dir[0];
+            velocities[i3 + 1] = node.dir[1];
+            velocities[i3 + 2] = node.dir[2];
+        }
+    }
+
+    /**
+     * Run one pass of the solver over a range of nodes. Within a pass each
+     * node only writes its own entries in the packed arrays, and passes that
+     * read other nodes never run at the same time as passes that write them.
+     *
+     * @param pass The pass to run, from the _PASS constants
+     * @param dTime The time delta of this update
+     * @param start The first node to process
+     * @param end One past the last node to process
+     */
+    private void processNodes(int pass, float dTime, int start, int end)
+    {
+        switch(pass)
+        {
+            case GATHER_PASS:
+                for(int i = start; i < end; i++)
+                {
+                    SpringNode node = solverNodes[i];
+                    int i3 = i * 3;
+
+                    if(!sharedPositions)
+                    {
+                        positions[i3] = node.position[node.offset];
+                        positions[i3 + 1] = node.position[node.offset + 1];
+                        positions[i3 + 2] = node.position[node.offset + 2];
+                    }
+
+                    velocities[i3] = node.dir[0];
+                    velocities[i3 + 1] = node.dir[1];
+                    velocities[i3 + 2] = node.dir[2];
+                    lockedNodes[i] = node.locked;
+
+                    if(i < numNodes &&
+                       node.numConnections != connStart[i + 1] - connStart[i])
+                        connectionsChanged = true;
+                }
+                break;
+
+            case FORCE_PASS:
+                float k = springConstant * dTime * 3;
+                float g_x = dTime * gravity[0];
+                float g_y = dTime * gravity[1];
+                float g_z = dTime * gravity[2];
+
+                for(int i = start; i < end; i++)
+                {
+                    if(lockedNodes[i])
+                        continue;
+
+                    int i3 = i * 3;
+                    float p_x = positions[i3];
+                    float p_y = positions[i3 + 1];
+                    float p_z = positions[i3 + 2];
+                    float f_x = 0;
+                    float f_y = 0;
+                    float f_z = 0;
+
+                    for(int c = connStart[i]; c < connStart[i + 1]; c++)
+                    {
+                        int j3 = connTargets[c] * 3;
+                        float d_x = positions[j3] - p_x;
+                        float d_y = positions[j3 + 1] - p_y;
+                        float d_z = positions[j3 + 2] - p_z;
+
+                        float len = (float)Math.sqrt(d_x * d_x +
+                                                     d_y * d_y +
+                                                     d_z * d_z);
+                        float t = (len - connLengths[c]) / len;
+
+                        f_x += d_x * t;
+                        f_y += d_y * t;
+                        f_z += d_z * t;
+                    }
+
+                    velocities[i3] = velocities[i3] * velocityDecay + k * f_x + g_x;
+                    velocities[i3 + 1] = velocities[i3 + 1] * velocityDecay + k * f_y + g_y;
+                    velocities[i3 + 2] = velocities[i3 + 2] * velocityDecay + k * f_z + g_z;
+                }
+                break;
+
+            case INTEGRATE_PASS:
+                for(int i = start; i < end; i++)
+                {
+                    if(lockedNodes[i])
+                        continue;
+
+                    SpringNode node = solverNodes[i];
+                    int i3 = i * 3;
+
+                    positions[i3] += dTime * velocities[i3];
+                    positions[i3 + 1] += dTime * velocities[i3 + 1];
+                    positions[i3 + 2] += dTime * velocities[i3 + 2];
+
+                    if(!sharedPositions)
+                    {
+                        node.position[node.offset] = positions[i3];
+                        node.position[node.offset + 1] = positions[i3 + 1];
+                        node.position[node.offset + 2] = positions[i3 + 2];
+                    }
+
+                    node.dir[0] = velocities[i3];
+                    node.dir[1] = velocities[i3 + 1];
+                    node.dir[2] = velocities[i3 + 2];
+                }
+                break;
+
+            case VELOCITY_PASS:
+                float v_x = dTime * gravity[0];
+                float v_y = dTime * gravity[1];
+                float v_z = dTime * gravity[2];
+
+                for(int i = start; i < end; i++)
+                {
+                    if(lockedNodes[i])
+                        continue;
+
+                    int i3 = i * 3;
+                    velocities[i3] = velocities[i3] * velocityDecay + v_x;
+                    velocities[i3 + 1] = velocities[i3 + 1] * velocityDecay + v_y;
+                    velocities[i3 + 2] = velocities[i3 + 2] * velocityDecay + v_z;
+                }
+                break;
+
+            case PREDICT_PASS:
+                for(int i = start; i < end; i++)
+                {
+                    int i3 = i * 3;
+
+                    previousPositions[i3] = positions[i3];
+                    previousPositions[i3 + 1] = positions[i3 + 1];
+                    previousPositions[i3 + 2] = positions[i3 + 2];
+
+                    if(lockedNodes[i])
+                        continue;
+
+                    positions[i3] += dTime * velocities[i3];
+                    positions[i3 + 1] += dTime * velocities[i3 + 1];
+                    positions[i3 + 2] += dTime * velocities[i3 + 2];
+                }
+                break;
+
+            case PROJECT_PASS:
+                projectConstraints(start, end);
+                break;
+
+            case APPLY_PASS:
+                for(int i = start * 3; i < end * 3; i++)
+                    positions[i] += corrections[i];
+                break;
+
+            case FINISH_PASS:
+                float inv_time = 1 / dTime;
+
+                for(int i = start; i < end; i++)
+                {
+                    if(lockedNodes[i])
+                        continue;
+
+                    SpringNode node = solverNodes[i];
+                    int i3 = i * 3;
+
+                    velocities[i3] = (positions[i3] - previousPositions[i3]) * inv_time;
+                    velocities[i3 + 1] = (positions[i3 + 1] - previousPositions[i3 + 1]) * inv_time;
+                    velocities[i3 + 2] = (positions[i3 + 2] - previousPositions[i3 + 2]) * inv_time;
+
+                    if(!sharedPositions)
+                    {
+                        node.position[node.offset] = positions[i3];
+                        node.position[node.offset + 1] = positions[i3 + 1];
+                        node.position[node.offset + 2] = positions[i3 + 2];
+                    }
+
+                    node.dir[0] = velocities[i3];
+                    node.dir[1] = velocities[i3 + 1];
+                    node.dir[2] = velocities[i3 + 2];
+                }
+                break;
+
+            case MOVED_PASS:
+                float limit = normalThreshold * normalThreshold;
+
+                for(int i = start; i < end; i++)
+                {
+                    SpringNode node = solverNodes[i];
+                    int i3 = i * 3;
+
+                    float p_x = node.position[node.offset];
+                    float p_y = node.position[node.offset + 1];
+                    float p_z = node.position[node.offset + 2];
+
+                    float d_x = p_x - normalPositions[i3];
+                    float d_y = p_y - normalPositions[i3 + 1];
+                    float d_z = p_z - normalPositions[i3 + 2];
+
+                    boolean moved = !normalsValid ||
+                                    (d_x * d_x + d_y * d_y + d_z * d_z > limit);
+
+                    // Only move the reference point when the node counts as
+                    // moved, so small steps add up until they pass the limit.
+                    if(moved)
+                    {
+                        normalPositions[i3] = p_x;
+                        normalPositions[i3 + 1] = p_y;
+                        normalPositions[i3 + 2] = p_z;
+                    }
+
+                    movedNodes[i] = moved;
+                }
+                break;
+
+            case NORMAL_PASS:
+                for(int i = start; i < end; i++)
+                {
+                    SpringNode node = nodes[i];
+                    boolean dirty = movedNodes[i];
+                    int last = Math.min(connStart[i] + Math.max(node.nNormal, 1),
+                                        connStart[i + 1]);
+
+                    for(int c = connStart[i]; c < last && !dirty; c++)
+                        dirty = movedNodes[connTargets[c]];
+
+                    if(dirty)
+                        evaluateNormal(node);
+                }
+                break;
+        }
+    }
+
+    /**
+     * Work out the normal of a single node from the positions of the node
+     * and the first nNormal of its connections.
+     *
+     * @param node The node to update the normal of
+     */
+    private void evaluateNormal(SpringNode node)
+    {
+        float n_x = 0;
+        float n_y = 0;
+        float n_z = 0;
+
+        float p_x = node.position[node.offset];
+        float p_y = node.position[node.offset + 1];
+        float p_z = node.position[node.offset + 2];
+
+        int n_off = node.connections[0].offset;
+
+        float v1_x = node.connections[0].position[n_off] - p_x;
+        float v1_y = node.connections[0].position[n_off + 1] - p_y;
+        float v1_z = node.connections[0].position[n_off + 2] - p_z;
+
+        for(int j = 1; j < node.nNormal; j++)
+        {
+            float v0_x = v1_x;
+            float v0_y = v1_y;
+            float v0_z = v1_z;
+
+            n_off = node.connections[j].offset;
+            v1_x = node.connections[j].position[n_off] - p_x;
+            v1_y = node.connections[j].position[n_off + 1] - p_y;
+            v1_z = node.connections[j].position[n_off + 2] - p_z;
+
+            float dot_v0 = v0_x * v0_x + v0_y * v0_y + v0_z * v0_z;
+            float dot_v1 = v1_x * v1_x + v1_y * v1_y + v1_z * v1_z;
+
+            float cross_x = v0_y * v1_z - v0_z * v1_y;
+            float cross_y = v0_z * v1_x - v0_x * v1_z;
+            float cross_z = v0_x * v1_y - v0_y * v1_x;
+
+            float r_sqrt = rsqrt(dot_v0 * dot_v1);
+
+            n_x +=  cross_x * r_sqrt;
+            n_y +=  cross_y * r_sqrt;
+            n_z +=  cross_z * r_sqrt;
+        }
+
+        float d = rsqrt(n_x * n_x + n_y * n_y + n_z * n_z);
+
+        node.normal[node.offset] = n_x * d;
+        node.normal[node.offset + 1] = n_y * d;
+        node.normal[node.offset + 2] = n_z * d;
+    }
+
+    /**
+     * Work out the correction that moves each node in the range towards the
+     * natural length of each of its springs. Only positions are read and
+     * only the node's own correction is written.
+     *
+     * @param start The first node to process
+     * @param end One past the last node to process
+     */
+    private void projectConstraints(int start, int end)
+    {
+        for(int i = start; i < end; i++)
+        {
+            int i3 = i * 3;
+            int first = connStart[i];
+            int last = connStart[i + 1];
+
+            corrections[i3] = 0;
+            corrections[i3 + 1] = 0;
+            corrections[i3 + 2] = 0;
+
+            if(lockedNodes[i] || first == last)
+                continue;
+
+            float p_x = positions[i3];
+            float p_y = positions[i3 + 1];
+            float p_z = positions[i3 + 2];
+            float c_x = 0;
+            float c_y = 0;
+            float c_z = 0;
+
+            for(int c = first; c < last; c++)
+            {
+                int j = connTargets[c];
+                int j3 = j * 3;
+                float d_x = positions[j3] - p_x;
+                float d_y = positions[j3 + 1] - p_y;
+                float d_z = positions[j3 + 2] - p_z;
+                float len = (float)Math.sqrt(d_x * d_x + d_y * d_y + d_z * d_z);
+
+                if(len == 0)
+                    continue;
+
+                // The other end takes half the correction unless it can't
+                // move, in which case this end takes all of it.
+                boolean fixed = (j >= numNodes) || lockedNodes[j];
+                float share = fixed ? 1 : 0.5f;
+                float t = share * (len - connLengths[c]) / len;
+
+                c_x += d_x * t;
+                c_y += d_y * t;
+                c_z += d_z * t;
+            }
+
+            float scale = RELAXATION * iterationStiffness / (last - first);
+
+            corrections[i3] = c_x * scale;
+            corrections[i3 + 1] = c_y * scale;
+            corrections[i3 + 2] = c_z * scale;
+        }
+    }
+
+    /**
+     * Run a pass of the solver, split over the pool if there are enough
+     * nodes to make it worthwhile.
+     */
+    private void runPass(final int pass,
+                         final float dTime,
+                         int count,
+                         ForkJoinPool pool)
+    {
+        RangeProcessor processor = new RangeProcessor()
+        {
+            @Override
+            public void processRange(int start, int end)
+            {
+                processNodes(pass, dTime, start, end);
+            }
+        };
+
+        ForkJoinUtils.forRange(pool, 0, count, MIN_NODE_CHUNK, processor);
+    }
+
+    /**
+     * Flatten the node connections into the packed arrays. Nodes connected
+     * to that are not part of the system are given indices after the
+     * system's own nodes.
+     */
+    private void buildConnections()
+    {
+        IdentityHashMap<SpringNode, Integer> index_map =
+            new IdentityHashMap<>(numNodes * 2);
+
+        for(int i = 0; i < numNodes; i++)
+            index_map.put(nodes[i], i);
+
+        int num_springs = 0;
+
+        for(int i = 0; i < numNodes; i++)
+            num_springs += nodes[i].numConnections;
+
+        connStart = new int[numNodes + 1];
+        connTargets = new int[num_springs];
+        connLengths = new float[num_springs];
+
+        SpringNode[] all_nodes = new SpringNode[numNodes];
+        System.arraycopy(nodes, 0, all_nodes, 0, numNodes);
+        int num_all = numNodes;
+        int spring = 0;
+
+        for(int i = 0; i < numNodes; i++)
+        {
+            SpringNode node = nodes[i];
+            connStart[i] = spring;
+
+            for(int j = 0; j < node.numConnections; j++)
+            {
+                SpringNode target = node.connections[j];
+                Integer idx = index_map.get(target);
+
+                if(idx == null)
+                {
+                    if(num_all == all_nodes.length)
+                    {
+                        SpringNode[] tmp = new SpringNode[num_all * 2];
+                        System.arraycopy(all_nodes, 0, tmp, 0, num_all);
+                        all_nodes = tmp;
+                    }
+
+                    idx = num_all;
+                    all_nodes[num_all++] = target;
+                    index_map.put(target, idx);
+                }
+
+                connTargets[spring] = idx;
+                connLengths[spring] = node.naturalLengths[j];
+                spring++;
+            }
+        }
+
+        connStart[numNodes] = spring;
+
+        solverNodes = all_nodes;
+        numSolverNodes = num_all;
+
+        // Work directly on the node array if every node is at its own index
+        float[] shared = nodes[0].position;
+        sharedPositions = (num_all == numNodes);
+
+        for(int i = 0; i < numNodes && sharedPositions; i++)
+        {
+            sharedPositions = (nodes[i].position == shared) &&
+                              (nodes[i].offset == i * 3) &&
+                              (shared.length >= numNodes * 3);
+        }
+
+        positions = sharedPositions ? shared : new float[num_all * 3];
+        velocities = new float[num_all * 3];
+        lockedNodes = new boolean[num_all];
+        connectionsValid = true;
+
+        // Node indices may have changed, so the normal tracking starts over
+        normalPositions = null;
+        normalsValid = false;
+    }
+
     /**
      * Increment the node list size by this amount
      *
@@ -0,0 +1,1177 @@
+/*
+ * j3d.org Copyright (c) 2001-2015
+ *                                 Java Source
+ *
+ *  This source is licensed under the GNU LGPL v2.1
+ *  Please read docs/LGPL.txt for more information
+ *
+ *  This software comes with the standard NO WARRANTY disclaimer for any
+ *  purpose. Use it at your own risk. If there's a problem you get to fix it.
+ */
+
+package org.j3d.geom.subdivision;
+
+// External imports
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+// Local imports
+import org.j3d.util.ForkJoinUtils;
+import org.j3d.util.RangeProcessor;
+
+/**
+ * Feature adaptive refinement of a control mesh, where only the faces that
+ * need it are split at each level.
+ * <p>
+ *
+ * Each level is a sparse half-edge mesh made of the faces of the level above
+ * that were chosen for refinement, plus the ring of faces that share a
+ * vertex with them. The extra ring means that every vertex of a refined face
+ * has its complete neighbourhood available, so the subdivision and limit
+ * rules give exactly the same answers as uniform subdivision. The faces of
+ * the ring are only there as support and are never output themselves.
+ * <p>
+ *
+ * A face is refined when it is not a quad, when one of its vertices is
+ * extraordinary, on a crease or tagged as a corner, when it overlaps one of
+ * the caller's regions or when its error is over the tolerance. The error
+ * is the distance, along the face normal, between the face's vertices and
+ * their limit positions. It is optionally scaled to pixels by the distance
+ * from a viewpoint.
+ * <p>
+ *
+ * The output is a triangle mesh on the limit surface. Every point of the
+ * hierarchy has a single identity, no matter how many levels it appears in,
+ * so the faces on either side of a change of level share their vertices.
+ * A face with finer neighbours picks up the extra points along its edges
+ * and is fanned from its centre, so there are no cracks or T-junctions.
+ */
+class AdaptiveRefinement
+{
+    /** Vertices or faces per piece when a pass is split over a pool */
+    private static final int MIN_CHUNK = 512;
+
+    /** Pass that calculates the limit positions and feature flags */
+    private static final int VERTEX_PASS = 0;
+
+    /** Pass that decides which faces to refine */
+    private static final int FACE_PASS = 1;
+
+    /** Pass that calculates the positions of the next level's vertices */
+    private static final int POINT_PASS = 2;
+
+    /** Error relative to the face size that is treated as flat */
+    private static final float FLAT_EPSILON = 1e-5f;
+
+    /**
+     * The working data for one level of the hierarchy.
+     */
+    private static class Level
+    {
+        /** The mesh of this level */
+        HalfEdgeMesh mesh;
+
+        /** Hierarchy point of each vertex */
+        int[] pointIds;
+
+        /** Vertex of the level above each vertex was made from */
+        int[] source;
+
+        /** True for the vertices of the faces in use at this level */
+        boolean[] active;
+
+        /** True for the active vertices that need isolating */
+        boolean[] feature;
+
+        /** True for the faces in use, false for supporting ones */
+        boolean[] present;
+
+        /** True for the faces that are refined again */
+        boolean[] refine;
+
+        /** Face of the next level at the corner of each half-edge, or -1 */
+        int[] cornerChild;
+
+        /**
+         * Construct a new level with a mesh of its own.
+         */
+        Level()
+        {
+            mesh = new HalfEdgeMesh();
+            pointIds = new int[0];
+            source = new int[0];
+            active = new boolean[0];
+            feature = new boolean[0];
+            present = new boolean[0];
+            refine = new boolean[0];
+            cornerChild = new int[0];
+        }
+
+        /**
+         * Make sure the per vertex and per face arrays can hold the sizes
+         * given.
+         *
+         * @param nv The number of vertices
+         * @param nf The number of faces
+         * @param nh The number of half-edges
+         */
+        void ensureCapacity(int nv, int nf, int nh)
+        {
+            if(pointIds.length < nv)
+            {
+                pointIds = new int[nv];
+                source = new int[nv];
+                active = new boolean[nv];
+                feature = new boolean[nv];
+            }
+
+            if(present.length < nf)
+            {
+                present = new boolean[nf];
+                refine = new boolean[nf];
+            }
+
+            if(cornerChild.length < nh)
+                cornerChild = new int[nh];
+        }
+    }
+
+    /** The generator that provides the rules */
+    private final PolygonSubdivisionGenerator generator;
+
+    /** All the levels, reused between refinements */
+    private Level[] levels;
+
+    /** The number of levels in the current hierarchy */
+    private int numLevels;
+
+    /** The level that the passes are working on */
+    private int currentLevel;
+
+    /** The deepest level any face may be refined to */
+    private int maxLevel;
+
+    /** Largest error allowed before a face is refined */
+    private float errorTolerance;
+
+    /** Position of the viewer or null to measure errors in object space */
+    private float[] viewpoint;
+
+    /** Pixels per unit of size at a distance of one from the viewer */
+    private float pixelScale;
+
+    /** Bounds of the regions as min and max corners, 6 values each */
+    private float[] regionBounds;
+
+    /** Level to refine each region to */
+    private int[] regionLevels;
+
+    /** The number of regions in use */
+    private int numRegions;
+
+    /** Limit position of every hierarchy point, flat [x, y, z] */
+    private float[] pointPositions;
+
+    /** The number of hierarchy points */
+    private int numPoints;
+
+    /** Output vertex of each hierarchy point or -1 if not used */
+    private int[] pointOutput;
+
+    /** Output triangles as vertex indices, 3 per triangle */
+    private int[] triangles;
+
+    /** The number of triangles output */
+    private int numTriangles;
+
+    /** The output vertex positions */
+    private float[] outputCoordinates;
+
+    /** The output vertex normals */
+    private float[] outputNormals;
+
+    /** The number of output vertices */
+    private int numOutputVertex;
+
+    /** Working list for the outline of the face being output */
+    private int[] polygon;
+
+    /** The number of points in the polygon list */
+    private int polygonSize;
+
+    /** Scratch marker per parent vertex that touches a refined face */
+    private boolean[] touched;
+
+    /** Scratch map of parent vertex to child vertex */
+    private int[] vertexMap;
+
+    /** Scratch map of parent edge to child vertex */
+    private int[] edgeMap;
+
+    /** Scratch map of parent face to child vertex */
+    private int[] faceMap;
+
+    /** Scratch vertex indexes of the child faces */
+    private int[] childIndexes;
+
+    /** Scratch vertex counts of the child faces */
+    private int[] childCounts;
+
+    /** Scratch vertex tags of the child */
+    private int[] childTags;
+
+    /** Scratch positions of the child vertices */
+    private float[] childPositions;
+
+    /**
+     * Create a new refinement that uses the rules of the given generator.
+     *
+     * @param gen The generator to take the rules from
+     */
+    AdaptiveRefinement(PolygonSubdivisionGenerator gen)
+    {
+        generator = gen;
+
+        levels = new Level[0];
+        regionBounds = new float[0];
+        regionLevels = new int[0];
+        pointPositions = new float[0];
+        pointOutput = new int[0];
+        triangles = new int[0];
+        outputCoordinates = new float[0];
+        outputNormals = new float[0];
+        polygon = new int[16];
+        touched = new boolean[0];
+        vertexMap = new int[0];
+        edgeMap = new int[0];
+        faceMap = new int[0];
+        childIndexes = new int[0];
+        childCounts = new int[0];
+        childTags = new int[0];
+        childPositions = new float[0];
+    }
+
+    /**
+     * Set the largest error allowed before a face is refined. In object
+     * space this is a distance, while with a viewpoint it is in pixels.
+     *
+     * @param tolerance The tolerance to use
+     */
+    void setErrorTolerance(float tolerance)
+    {
+        errorTolerance = tolerance;
+    }
+
+    /**
+     * Get the largest error allowed before a face is refined.
+     *
+     * @return The current tolerance
+     */
+    float getErrorTolerance()
+    {
+        return errorTolerance;
+    }
+
+    /**
+     * Set the viewpoint that errors are measured from.
+     *
+     * @param eye The position of the viewer or null for object space
+     * @param scale Pixels per unit of size at a distance of one
+     */
+    void setViewpoint(float[] eye, float scale)
+    {
+        if(eye == null)
+        {
+            viewpoint = null;
+        }
+        else
+        {
+            viewpoint = new float[] { eye[0], eye[1], eye[2] };
+            pixelScale = scale;
+        }
+    }
+
+    /**
+     * Add a region that is refined to at least the given level.
+     *
+     * @param min The minimum corner of the region
+     * @param max The maximum corner of the region
+     * @param level The level to refine faces that overlap it to
+     */
+    void addRegion(float[] min, float[] max, int level)
+    {
+        if(numRegions == regionLevels.length)
+        {
+            int[] tmp_l = new int[numRegions + 4];
+            float[] tmp_b = new float[(numRegions + 4) * 6];
+
+            System.arraycopy(regionLevels, 0, tmp_l, 0, numRegions);
+            System.arraycopy(regionBounds, 0, tmp_b, 0, numRegions * 6);
+
+            regionLevels = tmp_l;
+            regionBounds = tmp_b;
+        }
+
+        int b = numRegions * 6;
+
+        regionBounds[b] = min[0];
+        regionBounds[b + 1] = min[1];
+        regionBounds[b + 2] = min[2];
+        regionBounds[b + 3] = max[0];
+        regionBounds[b + 4] = max[1];
+        regionBounds[b + 5] = max[2];
+        regionLevels[numRegions] = level;
+
+        numRegions++;
+    }
+
+    /**
+     * Remove all of the regions.
+     */
+    void clearRegions()
+    {
+        numRegions = 0;
+    }
+
+    /**
+     * Build the hierarchy for the control mesh and the output triangles from
+     * it.
+     *
+     * @param control The control mesh
+     * @param levelLimit The deepest level that may be generated
+     * @param pool The pool to run the work in or null for the calling thread
+     */
+    void refine(HalfEdgeMesh control, int levelLimit, ForkJoinPool pool)
+    {
+        maxLevel = levelLimit;
+
+        Level base = getLevel(0);
+        base.mesh = control;
+        base.ensureCapacity(control.numVertex,
+                            control.numFaces,
+                            control.numHalfEdges);
+
+        numPoints = 0;
+        ensurePoints(control.numVertex);
+        numPoints = control.numVertex;
+
+        for(int v = 0; v < control.numVertex; v++)
+            base.pointIds[v] = v;
+
+        Arrays.fill(base.present, 0, control.numFaces, true);
+
+        for(int l = 0; ; l++)
+        {
+            Level level = levels[l];
+            HalfEdgeMesh mesh = level.mesh;
+
+            currentLevel = l;
+            numLevels = l + 1;
+
+            markActive(level);
+            runPass(VERTEX_PASS, mesh.numVertex, pool);
+
+            Arrays.fill(level.refine, 0, mesh.numFaces, false);
+
+            if(l == maxLevel)
+                break;
+
+            runPass(FACE_PASS, mesh.numFaces, pool);
+
+            boolean any = false;
+
+            for(int f = 0; f < mesh.numFaces && !any; f++)
+                any = level.refine[f];
+
+            if(!any)
+                break;
+
+            buildChild(pool);
+        }
+
+        createTriangles();
+    }
+
+    /**
+     * Get the number of triangles output by the last refinement.
+     *
+     * @return The number of triangles
+     */
+    int getNumTriangles()
+    {
+        return numTriangles;
+    }
+
+    /**
+     * Get the number of distinct vertices output by the last refinement.
+     *
+     * @return The number of vertices
+     */
+    int getNumVertices()
+    {
+        return numOutputVertex;
+    }
+
+    /**
+     * Get the vertex indices of the output triangles. The array is the
+     * internal copy and may be longer than needed.
+     *
+     * @return The index array, 3 per triangle
+     */
+    int[] getTriangles()
+    {
+        return triangles;
+    }
+
+    /**
+     * Get the positions of the output vertices. The array is the internal
+     * copy and may be longer than needed.
+     *
+     * @return The flat position array
+     */
+    float[] getCoordinates()
+    {
+        return outputCoordinates;
+    }
+
+    /**
+     * Calculate and get the smooth normals of the output vertices. The array
+     * is the internal copy and may be longer than needed.
+     *
+     * @return The flat normal array
+     */
+    float[] getNormals()
+    {
+        if(outputNormals.length < numOutputVertex * 3)
+            outputNormals = new float[numOutputVertex * 3];
+
+        float[] pos = outputCoordinates;
+        float[] normals = outputNormals;
+
+        Arrays.fill(normals, 0, numOutputVertex * 3, 0);
+
+        for(int t = 0; t < numTriangles * 3; t += 3)
+        {
+            int a = triangles[t] * 3;
+            int b = triangles[t + 1] * 3;
+            int c = triangles[t + 2] * 3;
+
+            float ux = pos[b] - pos[a];
+            float uy = pos[b + 1] - pos[a + 1];
+            float uz = pos[b + 2] - pos[a + 2];
+            float vx = pos[c] - pos[a];
+            float vy = pos[c + 1] - pos[a + 1];
+            float vz = pos[c + 2] - pos[a + 2];
+
+            float nx = uy * vz - uz * vy;
+            float ny = uz * vx - ux * vz;
+            float nz = ux * vy - uy * vx;
+
+            for(int i = 0; i < 3; i++)
+            {
+                int p = triangles[t + i] * 3;
+                normals[p] += nx;
+                normals[p + 1] += ny;
+                normals[p + 2] += nz;
+            }
+        }
+
+        for(int p = 0; p < numOutputVertex * 3; p += 3)
+        {
+            float x = normals[p];
+            float y = normals[p + 1];
+            float z = normals[p + 2];
+            float len = (float)Math.sqrt(x * x + y * y + z * z);
+
+            if(len != 0)
+            {
+                normals[p] = x / len;
+                normals[p + 1] = y / len;
+                normals[p + 2] = z / len;
+            }
+            else
+            {
+                normals[p + 2] = 1;
+            }
+        }
+
+        return normals;
+    }
+
+    /**
+     * Process a range of one of the passes on the current level. The vertex
+     * pass works out limit positions and feature flags, the face pass picks
+     * the faces to refine, and once the next level's topology is known the
+     * point pass places its vertices. Only the slots of the range are
+     * written.
+     *
+     * @param pass The pass to run
+     * @param start The first item, inclusive
+     * @param end The last item, exclusive
+     */
+    private void processItems(int pass, int start, int end)
+    {
+        Level level = levels[currentLevel];
+        HalfEdgeMesh mesh = level.mesh;
+        StencilRule rule = new StencilRule();
+
+        switch(pass)
+        {
+            case VERTEX_PASS:
+                for(int v = start; v < end; v++)
+                {
+                    if(!level.active[v])
+                        continue;
+
+                    rule.clear();
+                    generator.limitRule(mesh, v, rule);
+                    rule.evaluate(mesh.positions,
+                                  pointPositions,
+                                  level.pointIds[v] * 3);
+
+                    level.feature[v] = isFeature(mesh, v);
+                }
+                break;
+
+            case FACE_PASS:
+                for(int f = start; f < end; f++)
+                    level.refine[f] = level.present[f] && needsRefinement(level, f);
+                break;
+
+            case POINT_PASS:
+                int[] source = levels[currentLevel + 1].source;
+
+                for(int cv = start; cv < end; cv++)
+                {
+                    rule.clear();
+                    generator.subdivisionRule(mesh, source[cv], rule);
+                    rule.evaluate(mesh.positions, childPositions, cv * 3);
+                }
+                break;
+        }
+    }
+
+    /**
+     * Build the next level from the faces of the current one that are marked
+     * for refinement, along with the ring of faces around them.
+     *
+     * @param pool The pool to run the work in or null for the calling thread
+     */
+    private void buildChild(ForkJoinPool pool)
+    {
+        Level level = levels[currentLevel];
+        HalfEdgeMesh parent = level.mesh;
+        int nv = parent.numVertex;
+        int nf = parent.numFaces;
+        int ne = parent.numEdges;
+        int[] vtx = parent.halfEdgeVertex;
+        int[] he_edge = parent.halfEdgeEdge;
+        int[] face_start = parent.faceStart;
+
+        if(touched.length < nv)
+        {
+            touched = new boolean[nv];
+            vertexMap = new int[nv];
+        }
+
+        if(edgeMap.length < ne)
+            edgeMap = new int[ne];
+
+        if(faceMap.length < nf)
+            faceMap = new int[nf];
+
+        Arrays.fill(touched, 0, nv, false);
+        Arrays.fill(vertexMap, 0, nv, -1);
+        Arrays.fill(edgeMap, 0, ne, -1);
+
+        for(int f = 0; f < nf; f++)
+        {
+            if(level.refine[f])
+            {
+                for(int h = face_start[f]; h < face_start[f + 1]; h++)
+                    touched[vtx[h]] = true;
+            }
+        }
+
+        Level child = getLevel(currentLevel + 1);
+        child.ensureCapacity(nv + nf + ne, 0, 0);
+
+        int[] source = child.source;
+        int num_vtx = 0;
+        int num_faces = 0;
+
+        // Number the child vertices and faces. A face is split when any of
+        // its vertices touches a refined face.
+        for(int f = 0; f < nf; f++)
+        {
+            int first = face_start[f];
+            int last = face_start[f + 1];
+            boolean split = false;
+
+            for(int h = first; h < last && !split; h++)
+                split = touched[vtx[h]];
+
+            if(!split)
+            {
+                for(int h = first; h < last; h++)
+                    level.cornerChild[h] = -1;
+
+                continue;
+            }
+
+            faceMap[f] = num_vtx;
+            source[num_vtx++] = nv + f;
+
+            for(int h = first; h < last; h++)
+            {
+                int v = vtx[h];
+                int e = he_edge[h];
+
+                if(vertexMap[v] == -1)
+                {
+                    vertexMap[v] = num_vtx;
+                    source[num_vtx++] = v;
+                }
+
+                if(edgeMap[e] == -1)
+                {
+                    edgeMap[e] = num_vtx;
+                    source[num_vtx++] = nv + nf + e;
+                }
+
+                level.cornerChild[h] = num_faces++;
+            }
+        }
+
+        child.ensureCapacity(num_vtx, num_faces, num_faces * 4);
+
+        if(childCounts.length < num_faces)
+        {
+            childCounts = new int[num_faces];
+            childIndexes = new int[num_faces * 4];
+        }
+
+        if(childTags.length < num_vtx)
+        {
+            childTags = new int[num_vtx];
+            childPositions = new float[num_vtx * 3];
+        }
+
+        for(int f = 0; f < nf; f++)
+        {
+            int first = face_start[f];
+
+            if(level.cornerChild[first] == -1)
+                continue;
+
+            boolean refined = level.refine[f];
+            int last = face_start[f + 1];
+
+            for(int h = first; h < last; h++)
+            {
+                int hp = (h == first) ? last - 1 : h - 1;
+                int c = level.cornerChild[h];
+                int i = c * 4;
+
+                childIndexes[i] = vertexMap[vtx[h]];
+                childIndexes[i + 1] = edgeMap[he_edge[h]];
+                childIndexes[i + 2] = faceMap[f];
+                childIndexes[i + 3] = edgeMap[he_edge[hp]];
+                childCounts[c] = 4;
+
+                child.present[c] = refined;
+            }
+        }
+
+        ensurePoints(numPoints + num_vtx);
+
+        for(int cv = 0; cv < num_vtx; cv++)
+        {
+            int s = source[cv];
+
+            if(s < nv)
+            {
+                child.pointIds[cv] = level.pointIds[s];
+                childTags[cv] = parent.vertexTags[s];
+            }
+            else
+            {
+                child.pointIds[cv] = numPoints++;
+
+                boolean crease = s >= nv + nf &&
+                    parent.edgeTags[s - nv - nf] == SubdivisionTypes.CREASE_EDGE;
+
+                childTags[cv] = crease ?
+                                SubdivisionTypes.CREASE_VERTEX :
+                                SubdivisionTypes.SMOOTH_VERTEX;
+            }
+        }
+
+        runPass(POINT_PASS, num_vtx, pool);
+
+        child.mesh.build(childPositions,
+                         num_vtx,
+                         childIndexes,
+                         childCounts,
+                         num_faces,
+                         childTags);
+
+        // The first half-edge of each child face leaves the parent vertex
+        int[] he_sector = child.mesh.halfEdgeSector;
+
+        for(int h = 0; h < parent.numHalfEdges; h++)
+        {
+            int c = level.cornerChild[h];
+
+            if(c != -1)
+                he_sector[c * 4] = parent.halfEdgeSector[h];
+        }
+    }
+
+    /**
+     * Walk the levels and turn every face that is in use but not refined
+     * into triangles, then number the points that were used.
+     */
+    private void createTriangles()
+    {
+        numTriangles = 0;
+
+        for(int l = 0; l < numLevels; l++)
+        {
+            Level level = levels[l];
+            HalfEdgeMesh mesh = level.mesh;
+
+            for(int f = 0; f < mesh.numFaces; f++)
+            {
+                if(!level.present[f] || level.refine[f])
+                    continue;
+
+                int first = mesh.faceStart[f];
+                int last = mesh.faceStart[f + 1];
+
+                polygonSize = 0;
+
+                for(int h = first; h < last; h++)
+                {
+                    addPolygonPoint(level.pointIds[mesh.halfEdgeVertex[h]]);
+
+                    int t = mesh.halfEdgeTwin[h];
+
+                    if(t != HalfEdgeMesh.NO_TWIN)
+                    {
+                        // The points along the twin run the other way
+                        int s = polygonSize;
+                        addEdgePoints(l, t);
+
+                        for(int i = s, j = polygonSize - 1; i < j; i++, j--)
+                        {
+                            int tmp = polygon[i];
+                            polygon[i] = polygon[j];
+                            polygon[j] = tmp;
+                        }
+                    }
+                }
+
+                if(polygonSize == last - first)
+                {
+                    for(int i = 1; i < polygonSize - 1; i++)
+                        addTriangle(polygon[0], polygon[i], polygon[i + 1]);
+                }
+                else
+                {
+                    int centre = addCentrePoint();
+
+                    for(int i = 0; i < polygonSize; i++)
+                        addTriangle(centre,
+                                    polygon[i],
+                                    polygon[(i + 1) % polygonSize]);
+                }
+            }
+        }
+
+        // Number the points in order of first use
+        if(pointOutput.length < numPoints)
+            pointOutput = new int[numPoints];
+
+        Arrays.fill(pointOutput, 0, numPoints, -1);
+        numOutputVertex = 0;
+
+        for(int i = 0; i < numTriangles * 3; i++)
+        {
+            int p = triangles[i];
+
+            if(pointOutput[p] == -1)
+                pointOutput[p] = numOutputVertex++;
+
+            triangles[i] = pointOutput[p];
+        }
+
+        if(outputCoordinates.length < numOutputVertex * 3)
+            outputCoordinates = new float[numOutputVertex * 3];
+
+        for(int p = 0; p < numPoints; p++)
+        {
+            int o = pointOutput[p];
+
+            if(o != -1)
+            {
+                outputCoordinates[o * 3] = pointPositions[p * 3];
+                outputCoordinates[o * 3 + 1] = pointPositions[p * 3 + 1];
+                outputCoordinates[o * 3 + 2] = pointPositions[p * 3 + 2];
+            }
+        }
+    }
+
+    /**
+     * Add the points of finer levels that lie strictly inside a half-edge to
+     * the polygon, in the direction of that half-edge.
+     *
+     * @param l The level of the half-edge
+     * @param h The half-edge
+     */
+    private void addEdgePoints(int l, int h)
+    {
+        Level level = levels[l];
+        HalfEdgeMesh mesh = level.mesh;
+
+        if(!level.refine[mesh.halfEdgeFace[h]])
+            return;
+
+        Level child = levels[l + 1];
+        int[] child_start = child.mesh.faceStart;
+
+        // First half leaves the corner quad of h, the second half enters
+        // the corner quad of the next half-edge.
+        int c1 = child_start[level.cornerChild[h]];
+        int c2 = child_start[level.cornerChild[mesh.next(h)]] + 3;
+
+        addEdgePoints(l + 1, c1);
+        addPolygonPoint(child.pointIds[child.mesh.halfEdgeVertex[c2]]);
+        addEdgePoints(l + 1, c2);
+    }
+
+    /**
+     * Create a new point at the average of the polygon's points.
+     *
+     * @return The index of the new point
+     */
+    private int addCentrePoint()
+    {
+        ensurePoints(numPoints + 1);
+
+        float x = 0;
+        float y = 0;
+        float z = 0;
+
+        for(int i = 0; i < polygonSize; i++)
+        {
+            int p = polygon[i] * 3;
+            x += pointPositions[p];
+            y += pointPositions[p + 1];
+            z += pointPositions[p + 2];
+        }
+
+        int ret_val = numPoints++;
+        int o = ret_val * 3;
+
+        pointPositions[o] = x / polygonSize;
+        pointPositions[o + 1] = y / polygonSize;
+        pointPositions[o + 2] = z / polygonSize;
+
+        return ret_val;
+    }
+
+    /**
+     * Add a point to the end of the working polygon.
+     *
+     * @param p The index of the point
+     */
+    private void addPolygonPoint(int p)
+    {
+        if(polygonSize == polygon.length)
+        {
+            int[] tmp = new int[polygonSize * 2];
+            System.arraycopy(polygon, 0, tmp, 0, polygonSize);
+            polygon = tmp;
+        }
+
+        polygon[polygonSize++] = p;
+    }
+
+    /**
+     * Add a triangle of hierarchy points to the output.
+     *
+     * @param a The first point
+     * @param b The second point
+     * @param c The third point
+     */
+    private void addTriangle(int a, int b, int c)
+    {
+        int t = numTriangles * 3;
+
+        if(t + 3 > triangles.length)
+        {
+            int[] tmp = new int[Math.max(t * 2, 96)];
+            System.arraycopy(triangles, 0, tmp, 0, t);
+            triangles = tmp;
+        }
+
+        triangles[t] = a;
+        triangles[t + 1] = b;
+        triangles[t + 2] = c;
+        numTriangles++;
+    }
+
+    /**
+     * Mark the vertices of all the faces in use at a level as active.
+     *
+     * @param level The level to mark
+     */
+    private void markActive(Level level)
+    {
+        HalfEdgeMesh mesh = level.mesh;
+
+        Arrays.fill(level.active, 0, mesh.numVertex, false);
+
+        for(int f = 0; f < mesh.numFaces; f++)
+        {
+            if(!level.present[f])
+                continue;
+
+            for(int h = mesh.faceStart[f]; h < mesh.faceStart[f + 1]; h++)
+                level.active[mesh.halfEdgeVertex[h]] = true;
+        }
+    }
+
+    /**
+     * Decide if a face of the current level needs to be refined.
+     *
+     * @param level The current level
+     * @param f The index of the face
+     * @return true if the face should be split
+     */
+    private boolean needsRefinement(Level level, int f)
+    {
+        HalfEdgeMesh mesh = level.mesh;
+        int first = mesh.faceStart[f];
+        int last = mesh.faceStart[f + 1];
+
+        if(last - first != 4)
+            return true;
+
+        for(int h = first; h < last; h++)
+        {
+            if(level.feature[mesh.halfEdgeVertex[h]])
+                return true;
+        }
+
+        float[] pos = mesh.positions;
+
+        if(numRegions != 0)
+        {
+            float min_x = Float.POSITIVE_INFINITY;
+            float min_y = Float.POSITIVE_INFINITY;
+            float min_z = Float.POSITIVE_INFINITY;
+            float max_x = Float.NEGATIVE_INFINITY;
+            float max_y = Float.NEGATIVE_INFINITY;
+            float max_z = Float.NEGATIVE_INFINITY;
+
+            for(int h = first; h < last; h++)
+            {
+                int p = mesh.halfEdgeVertex[h] * 3;
+
+                min_x = Math.min(min_x, pos[p]);
+                min_y = Math.min(min_y, pos[p + 1]);
+                min_z = Math.min(min_z, pos[p + 2]);
+                max_x = Math.max(max_x, pos[p]);
+                max_y = Math.max(max_y, pos[p + 1]);
+                max_z = Math.max(max_z, pos[p + 2]);
+            }
+
+            for(int r = 0; r < numRegions; r++)
+            {
+                int b = r * 6;
+
+                if(currentLevel < regionLevels[r] &&
+                   max_x >= regionBounds[b] && min_x <= regionBounds[b + 3] &&
+                   max_y >= regionBounds[b + 1] && min_y <= regionBounds[b + 4] &&
+                   max_z >= regionBounds[b + 2] && min_z <= regionBounds[b + 5])
+                    return true;
+            }
+        }
+
+        int[] ids = level.pointIds;
+        int l0 = ids[mesh.halfEdgeVertex[first]] * 3;
+        int l1 = ids[mesh.halfEdgeVertex[first + 1]] * 3;
+        int l2 = ids[mesh.halfEdgeVertex[first + 2]] * 3;
+        int l3 = ids[mesh.halfEdgeVertex[first + 3]] * 3;
+        float[] lim = pointPositions;
+
+        // Normal from the diagonals of the limit quad
+        float ax = lim[l2] - lim[l0];
+        float ay = lim[l2 + 1] - lim[l0 + 1];
+        float az = lim[l2 + 2] - lim[l0 + 2];
+        float bx = lim[l3] - lim[l1];
+        float by = lim[l3 + 1] - lim[l1 + 1];
+        float bz = lim[l3 + 2] - lim[l1 + 2];
+
+        float nx = ay * bz - az * by;
+        float ny = az * bx - ax * bz;
+        float nz = ax * by - ay * bx;
+        float n_len = (float)Math.sqrt(nx * nx + ny * ny + nz * nz);
+
+        float cx = 0.25f * (lim[l0] + lim[l1] + lim[l2] + lim[l3]);
+        float cy = 0.25f * (lim[l0 + 1] + lim[l1 + 1] + lim[l2 + 1] + lim[l3 + 1]);
+        float cz = 0.25f * (lim[l0 + 2] + lim[l1 + 2] + lim[l2 + 2] + lim[l3 + 2]);
+
+        float error = 0;
+        float extent = 0;
+
+        for(int h = first; h < last; h++)
+        {
+            int v = mesh.halfEdgeVertex[h];
+            int p = v * 3;
+            int l = ids[v] * 3;
+
+            float dx = pos[p] - lim[l];
+            float dy = pos[p + 1] - lim[l + 1];
+            float dz = pos[p + 2] - lim[l + 2];
+
+            float d = (n_len != 0) ?
+                      Math.abs(dx * nx + dy * ny + dz * nz) / n_len :
+                      (float)Math.sqrt(dx * dx + dy * dy + dz * dz);
+
+            error = Math.max(error, d);
+
+            dx = lim[l] - cx;
+            dy = lim[l + 1] - cy;
+            dz = lim[l + 2] - cz;
+
+            extent = Math.max(extent, (float)Math.sqrt(dx * dx + dy * dy + dz * dz));
+        }
+
+        if(error <= FLAT_EPSILON * extent)
+            return false;
+
+        if(viewpoint != null)
+        {
+            float dx = cx - viewpoint[0];
+            float dy = cy - viewpoint[1];
+            float dz = cz - viewpoint[2];
+            float dist = (float)Math.sqrt(dx * dx + dy * dy + dz * dz);
+
+            if(dist <= extent)
+                return true;
+
+            error *= pixelScale / dist;
+        }
+
+        return error > errorTolerance;
+    }
+
+    /**
+     * Check to see if a vertex needs to be isolated by refinement. That is
+     * the case for extraordinary vertices, those on a crease, those tagged
+     * as corners and those with a sector. Regular boundary vertices have
+     * three edges, or two at the corner of a grid.
+     *
+     * @param mesh The mesh to read from
+     * @param v The index of the vertex
+     * @return true if the faces around the vertex should be refined
+     */
+    private static boolean isFeature(HalfEdgeMesh mesh, int v)
+    {
+        if(mesh.vertexTags[v] == SubdivisionTypes.CORNER_VERTEX)
+            return true;
+
+        int h0 = mesh.vertexHalfEdge[v];
+
+        if(h0 == -1)
+            return false;
+
+        int[] twin = mesh.halfEdgeTwin;
+        int num_edges = 0;
+        int h = h0;
+        int steps = 0;
+
+        do
+        {
+            num_edges++;
+
+            if(mesh.halfEdgeSector[h] != -1)
+                return true;
+
+            if(twin[h] != HalfEdgeMesh.NO_TWIN &&
+               mesh.edgeTags[mesh.halfEdgeEdge[h]] == SubdivisionTypes.CREASE_EDGE)
+                return true;
+
+            h = twin[mesh.prev(h)];
+
+            if(h == HalfEdgeMesh.NO_TWIN)
+                return num_edges + 1 != 3 && num_edges + 1 != 2;
+        }
+        while(h != h0 && ++steps < mesh.numHalfEdges);
+
+        return num_edges != 4;
+    }
+
+    /**
+     * Get the level at the given depth, creating it if needed.
+     *
+     * @param l The depth of the level
+     * @return The level object
+     */
+    private Level getLevel(int l)
+    {
+        if(l >= levels.length)
+        {
+            Level[] tmp = new Level[l + 1];
+            System.arraycopy(levels, 0, tmp, 0, levels.length);
+
+            for(int i = levels.length; i <= l; i++)
+                tmp[i] = new Level();
+
+            levels = tmp;
+        }
+
+        return levels[l];
+    }
+
+    /**
+     * Make sure the point position array can hold the given number of
+     * points, keeping the existing values.
+     *
+     * @param count The number of points needed
+     */
+    private void ensurePoints(int count)
+    {
+        if(pointPositions.length < count * 3)
+        {
+            float[] tmp = new float[Math.max(count * 3, pointPositions.length * 2)];
+            System.arraycopy(pointPositions, 0, tmp, 0, numPoints * 3);
+            pointPositions = tmp;
+        }
+    }
+
+    /**
+     * Run one of the passes on the current level, either directly or on the
+     * pool.
+     *
+     * @param pass The pass to run
+     * @param count The number of items in the pass
+     * @param pool The pool to use or null for the calling thread
+     */
+    private void runPass(final int pass, int count, ForkJoinPool pool)
+    {
+        RangeProcessor processor = new RangeProcessor()
+        {
+            @Override
+            public void processRange(int start, int end)
+            {
+                processItems(pass, start, end);
+            }
+        };
+
+        ForkJoinUtils.forRange(pool, 0, count, MIN_CHUNK, processor);
+    }
+}
@@ -13,1186 +13,908 @@ package org.j3d.geom.subdivision;
 // None
 
 // Local imports
-import org.j3d.util.IntHashMap;
-import org.j3d.geom.GeometryData;
-import org.j3d.geom.GeometryGenerator;
-import org.j3d.geom.InvalidArraySizeException;
-import org.j3d.geom.UnsupportedTypeException;
+// None
 
 /**
- * Base geometry generator defintion for all forms of non-adaptive
- * subdivision-based patches.
+ * Geometry generator for Catmull-Clark subdivision surfaces.
  * <P>
  *
- * The subdivision information at a given level is described by the uniform
- * subdivision handling paper.
+ * Any polygon mesh may be used as the control mesh. The first level turns
+ * every n-sided face into n quads and all following levels work on quads
+ * only.
  * <p>
  *
- * Because of the structure of this code, it is not suited for generating
- * adaptive subdivision surfaces. They should use a separate class.
+ * The standard rules are used for the smooth parts of the surface. Edges
+ * on the boundary of the mesh and edges tagged as creases use the cubic
+ * B-spline curve rules, so they stay sharp. A vertex with exactly two such
+ * edges moves along the curve, while a vertex tagged as a corner or with
+ * more than two sharp edges stays where it is. Darts, with only one sharp
+ * edge, use the smooth vertex rule.
+ * <p>
  *
+ * Sectors follow Biermann, Levin and Zorin. The smooth edges at a crease or
+ * corner vertex move some weight between their two ends, so that a sector
+ * of k faces meets the sharp edges at the angle &theta;, where &theta; is
+ * &pi; for a crease and the given angle for a convex or concave sector.
+ * With the regular angle of &pi;/2 per face this is the standard rule.
+ * Flattened sectors blend the child points with their projection onto the
+ * limit position and tangent plane of the sector, which is worked out by
+ * {@link CatmullClarkSector}.
+ * <p>
+ *
+ * Each level is calculated in three parallel passes, one each for the face,
+ * edge and vertex points, working directly on the arrays of the half-edge
+ * mesh. Nothing is allocated per element.
+ * <p>
+ *
+ * The limit positions use the same classification. Smooth vertices of
+ * valence n use the weights n&#178; for the vertex, 4 for each edge
+ * neighbour and 1 for each diagonal neighbour, over n(n + 5). Vertices on a
+ * boundary or crease use the 1-4-1 curve weights and corners stay put.
  *
  * @author Justin Couch
  * @version $Revision: 1.1 $
  */
 public class CatmullClarkGenerator extends PolygonSubdivisionGenerator
 {
-    /** Mapping of vertex IDs to the sector object */
-    private IntHashMap vertexToSectorMap;
-
-    /** Listing of the rules for the concave quad generation */
-    private QuadRule[] concaveRuleTable;
-
-    /** Listing of the rules for the convex quad generation */
-    private QuadRule[] convexRuleTable;
-
-    /** Listing of the rules for the interior quad generation */
-    private QuadRule[] interiorRuleTable;
+    /** Edge weight offset for a vertex that does not change the edge rule */
+    private static final float NOT_TAGGED = -1;
 
-    /** Listing of the rules for the crease quad generation */
-    private QuadRule[] creaseRuleTable;
+    /** The flattening projection of each sector, null for none */
+    private float[][] sectorProjections;
 
-    /** The ring around the currently being processed vertex */
-    private FaceRing ring;
-
-    /** temporary variables for working with stuff */
-    private float[] wkVec0;
-    private float[] wkVec1;
-    private float[] wkVec2;
-    private float[] wkVec3;
-    private float[] wkVec4;
-    private float[] wkVec5;
-    private float[] wkVec6;
-    private float[] wkVec7;
-    private float[] wkVec8;
-    private float[] wkVec9;
+    /** The number of points in the ring of each flattened sector */
+    private int[] sectorRingSizes;
 
     /**
-     * Construct a new generator with no control mesh set. The levelMult field
-     * describes the multiplier of how many vertices are created at each level
-     * from the previous one. For triangle-based schemes, this value is normally
-     * 3.
-     *
-     *
+     * Construct a new generator with no control mesh set.
      */
     public CatmullClarkGenerator()
     {
-        super(4, false);
-
-        wkVec0 = new float[3];
-        wkVec1 = new float[3];
-        wkVec2 = new float[3];
-        wkVec3 = new float[3];
-        wkVec4 = new float[3];
-        wkVec5 = new float[3];
-        wkVec6 = new float[3];
-        wkVec7 = new float[3];
-        wkVec8 = new float[3];
-        wkVec9 = new float[3];
+        super();
     }
 
+    //---------------------------------------------------------------
+    // Methods defined by PolygonSubdivisionGenerator
+    //---------------------------------------------------------------
+
     /**
-     * Regenerate the patch coordinate points in accordance with the derived
-     * classes algorithm type.
+     * Calculate the face points as the average of the face's vertices.
+     *
+     * @param parent The mesh being subdivided
+     * @param child The mesh to write the points to
+     * @param start The first parent face, inclusive
+     * @param end The last parent face, exclusive
      */
     @Override
-    protected void regenerateSubdivision()
+    void computeFacePoints(HalfEdgeMesh parent,
+                           HalfEdgeMesh child,
+                           int start,
+                           int end)
     {
-        if(levelChanged)
-        {
-            concaveRuleTable = new QuadRule[totalSubdivisions];
-            convexRuleTable = new QuadRule[totalSubdivisions];
-            interiorRuleTable = new QuadRule[totalSubdivisions];
-            creaseRuleTable = new QuadRule[totalSubdivisions];
-        }
+        float[] pos = parent.positions;
+        float[] out = child.positions;
+        int[] vtx = parent.halfEdgeVertex;
+        int[] face_start = parent.faceStart;
+        int base = parent.numVertex;
 
-// Must fix this with something that determines the maximum number of
-// edges to a face dynamically.
-        ring = new FaceRing(6);
+        for(int f = start; f < end; f++)
+        {
+            int first = face_start[f];
+            int last = face_start[f + 1];
 
-        // Iterate through all of the top level faces and subdivide them
-        int num_faces = faces.size();
+            float x = 0;
+            float y = 0;
+            float z = 0;
 
-        for(int i = 0; i < totalSubdivisions; i++)
-        {
-            for(int j = 0; j < num_faces; j++)
+            for(int h = first; h < last; h++)
             {
-                Face f = (Face)faces.get(i);
-                subdivide(f, i);
+                int p = vtx[h] * 3;
+                x += pos[p];
+                y += pos[p + 1];
+                z += pos[p + 2];
             }
+
+            float inv_num = 1 / (float)(last - first);
+            int o = (base + f) * 3;
+
+            out[o] = x * inv_num;
+            out[o + 1] = y * inv_num;
+            out[o + 2] = z * inv_num;
         }
     }
 
     /**
-     * Subdivide the face at the given level.
+     * Calculate the edge points. Smooth edges average the two end points
+     * with the two neighbouring face points, moving some weight towards a
+     * crease or corner vertex at either end. Boundary and crease edges use
+     * the mid point of the edge.
      *
-     * @param f The face to be subdivided
-     * @param d The depth of the current subdivision
+     * @param parent The mesh being subdivided
+     * @param child The mesh to write the points to
+     * @param start The first parent edge, inclusive
+     * @param end The last parent edge, exclusive
      */
-    private void subdivide(Face f, int d)
+    @Override
+    void computeEdgePoints(HalfEdgeMesh parent,
+                           HalfEdgeMesh child,
+                           int start,
+                           int end)
     {
-        computeCenterPoint(f, d);
-
-        int i;
-        int num_vtx = f.numVertex + 1;
-
-        for(i = 1; i < num_vtx; i++)
-            computeVertexPoint(f, i, d);
-
-        for(i = 1; i < num_vtx; i++)
-            computeEdgePoint(f, i, d);
+        float[] pos = parent.positions;
+        float[] out = child.positions;
+        int[] vtx = parent.halfEdgeVertex;
+        int[] twin = parent.halfEdgeTwin;
+        int[] he_face = parent.halfEdgeFace;
+        int face_base = parent.numVertex;
+        int edge_base = parent.numVertex + parent.numFaces;
+
+        for(int e = start; e < end; e++)
+        {
+            int r = parent.edgeHalfEdge[e];
+            int t = twin[r];
+            int a = vtx[r] * 3;
+            int b = vtx[parent.next(r)] * 3;
+            int o = (edge_base + e) * 3;
+
+            if(t == HalfEdgeMesh.NO_TWIN ||
+               parent.edgeTags[e] == SubdivisionTypes.CREASE_EDGE)
+            {
+                out[o] = 0.5f * (pos[a] + pos[b]);
+                out[o + 1] = 0.5f * (pos[a + 1] + pos[b + 1]);
+                out[o + 2] = 0.5f * (pos[a + 2] + pos[b + 2]);
+            }
+            else
+            {
+                int f0 = (face_base + he_face[r]) * 3;
+                int f1 = (face_base + he_face[t]) * 3;
 
-        //for(e = 1; e < noVtx()+1; ++e)
-        //    computeEdgeNormal(e, d);
+                out[o] = 0.25f * (pos[a] + pos[b] + out[f0] + out[f1]);
+                out[o + 1] = 0.25f * (pos[a + 1] + pos[b + 1] +
+                                      out[f0 + 1] + out[f1 + 1]);
+                out[o + 2] = 0.25f * (pos[a + 2] + pos[b + 2] +
+                                      out[f0 + 2] + out[f1 + 2]);
 
-        //  computeFaceNormal(d);
+                float w = edgeCorrection(parent, r, t);
 
-        // clear children mid points points
-        if(f.children != null)
-        {
-            for(i = 0; i < f.children.length; i++)
-                f.children[i].clearFace(d + 1);
+                if(w != 0)
+                {
+                    out[o] += w * (pos[a] - pos[b]);
+                    out[o + 1] += w * (pos[a + 1] - pos[b + 1]);
+                    out[o + 2] += w * (pos[a + 2] - pos[b + 2]);
+                }
+            }
         }
     }
 
     /**
-     * Compute the center point of the given object. Assumes that the face has
-     * at least 3 vertices.
+     * Calculate the new positions of the original vertices by walking the
+     * ring of faces around each one.
+     *
+     * @param parent The mesh being subdivided
+     * @param child The mesh to write the points to
+     * @param start The first parent vertex, inclusive
+     * @param end The last parent vertex, exclusive
      */
-    private void computeCenterPoint(Face f, int depth)
+    @Override
+    void computeVertexPoints(HalfEdgeMesh parent,
+                             HalfEdgeMesh child,
+                             int start,
+                             int end)
     {
-        if(f.centerVertex() != null)
-            return;
-
-        float x = 0;
-        float y = 0;
-        float z = 0;
-
-        // some loop unrolling here for performance. After the first pass
-        // through, this should always hit the 4 vertex case.
-        switch(f.numVertex)
+        float[] pos = parent.positions;
+        float[] out = child.positions;
+        int[] vtx = parent.halfEdgeVertex;
+        int[] twin = parent.halfEdgeTwin;
+        int[] he_face = parent.halfEdgeFace;
+        int[] he_edge = parent.halfEdgeEdge;
+        int[] edge_tags = parent.edgeTags;
+        int[] he_sector = parent.halfEdgeSector;
+        int face_base = parent.numVertex;
+        int max_steps = parent.numHalfEdges;
+
+        for(int v = start; v < end; v++)
         {
-            case 3:
-                float[] v = f.vertices[0].getPos(depth);
-                x = v[0];
-                y = v[1];
-                z = v[2];
-
-                v = f.vertices[1].getPos(depth);
-                x += v[0];
-                y += v[1];
-                z += v[2];
-
-                v = f.vertices[2].getPos(depth);
-                x += v[0];
-                y += v[1];
-                z += v[2];
-                break;
+            int p = v * 3;
+            int h0 = parent.vertexHalfEdge[v];
 
-            case 4:
-                v = f.vertices[0].getPos(depth);
-                x = v[0];
-                y = v[1];
-                z = v[2];
-
-                v = f.vertices[1].getPos(depth);
-                x += v[0];
-                y += v[1];
-                z += v[2];
-
-                v = f.vertices[2].getPos(depth);
-                x += v[0];
-                y += v[1];
-                z += v[2];
-
-                v = f.vertices[3].getPos(depth);
-                x += v[0];
-                y += v[1];
-                z += v[2];
-                break;
+            if(h0 == -1 ||
+               parent.vertexTags[v] == SubdivisionTypes.CORNER_VERTEX)
+            {
+                out[p] = pos[p];
+                out[p + 1] = pos[p + 1];
+                out[p + 2] = pos[p + 2];
+                continue;
+            }
 
-            default:
-                for(int i = 0; i < f.numVertex; i++)
+            boolean corner = false;
+
+            // Sums of the neighbouring vertices, face points and the
+            // vertices at the far end of the sharp edges.
+            float ex = 0;
+            float ey = 0;
+            float ez = 0;
+            float fx = 0;
+            float fy = 0;
+            float fz = 0;
+            float sx = 0;
+            float sy = 0;
+            float sz = 0;
+            int num_edges = 0;
+            int num_sharp = 0;
+
+            int h = h0;
+            int steps = 0;
+
+            do
+            {
+                int n = vtx[parent.next(h)] * 3;
+                int fp = (face_base + he_face[h]) * 3;
+
+                ex += pos[n];
+                ey += pos[n + 1];
+                ez += pos[n + 2];
+                fx += out[fp];
+                fy += out[fp + 1];
+                fz += out[fp + 2];
+                num_edges++;
+
+                if(twin[h] == HalfEdgeMesh.NO_TWIN ||
+                   edge_tags[he_edge[h]] == SubdivisionTypes.CREASE_EDGE)
                 {
-                    v = f.vertices[i].getPos(depth);
-                    x += v[0];
-                    y += v[1];
-                    z += v[2];
+                    sx += pos[n];
+                    sy += pos[n + 1];
+                    sz += pos[n + 2];
+                    num_sharp++;
                 }
-        }
-
-        float inv_num = 1 / f.numVertex;
-
-        x *= inv_num;
-        y *= inv_num;
-        z *= inv_num;
-
-        // Modify the vertex value based on the requirements for the
-        // edge conditions. If any edge of this quad has a non-standard
-        // flatness or normal value then use that to contribute to the
-        // final position of the vertex.
-        int num_relevant = 0;
-
-        wkVec8[0] = 0;
-        wkVec8[1] = 0;
-        wkVec8[2] = 0;
-
-        for(int i = 0; i < f.numVertex; i++)
-        {
-            Vertex vtx = f.headVertex(i);
 
-            if(vtx.isSpecial)
-                continue;
-
-            Sector s = f.sectorInfo(f.headVertexIndex(i));
-            if(s.normal == null && s.flatness == -1)
-                continue;
+                if(he_sector[h] != -1 &&
+                   getSectorTag(he_sector[h]) != SubdivisionTypes.UNTAGGED_SECTOR)
+                    corner = true;
 
-            QuadRule rule = getRule(f, depth, s.theta);
+                int hp = parent.prev(h);
+                h = twin[hp];
 
-            float x1 = rule.x1.face[ring.startEdge];
-            float x2 = rule.x2.face[ring.startEdge];
-
-            wkVec5[0] = x;
-            wkVec5[1] = y;
-            wkVec5[2] = z;
+                if(h == HalfEdgeMesh.NO_TWIN)
+                {
+                    // Hit the far boundary. The incoming edge is the last
+                    // edge of the ring and is always sharp.
+                    n = vtx[hp] * 3;
+
+                    ex += pos[n];
+                    ey += pos[n + 1];
+                    ez += pos[n + 2];
+                    sx += pos[n];
+                    sy += pos[n + 1];
+                    sz += pos[n + 2];
+                    num_edges++;
+                    num_sharp++;
+                    break;
+                }
+            }
+            while(h != h0 && ++steps < max_steps);
 
-            if(s.flatness != -1)
+            if(num_sharp > 2 || (corner && num_sharp == 2))
             {
-                modifyFlatness(rule, wkVec5, x1, x2, depth, wkVec7);
-
-                wkVec5[0] = wkVec7[0];
-                wkVec5[1] = wkVec7[1];
-                wkVec5[2] = wkVec7[2];
+                out[p] = pos[p];
+                out[p + 1] = pos[p + 1];
+                out[p + 2] = pos[p + 2];
             }
-
-            if(s.normal != null)
+            else if(num_sharp == 2)
             {
-                if(ring.isClosed)
-                    modifyClosedNormal(rule,
-                                       wkVec5,
-                                       rule.x1.center,
-                                       rule.x2.center,
-                                       depth,
-                                       wkVec6);
-                else
-                    modifyOpenNormal(rule,
-                                     wkVec5,
-                                     rule.x1.center,
-                                     rule.x2.center,
-                                     depth,
-                                     wkVec6);
+                out[p] = 0.75f * pos[p] + 0.125f * sx;
+                out[p + 1] = 0.75f * pos[p + 1] + 0.125f * sy;
+                out[p + 2] = 0.75f * pos[p + 2] + 0.125f * sz;
             }
+            else
+            {
+                float k = num_edges;
+                float w_v = (k - 2) / k;
+                float w_n = 1 / (k * k);
 
-            num_relevant++;
-            wkVec8[0] += wkVec5[0];
-            wkVec8[1] += wkVec5[1];
-            wkVec8[2] += wkVec5[2];
-        }
-
-        if(num_relevant != 0)
-        {
-            float i_nr = 1 / (float)num_relevant;
-            x = i_nr * wkVec8[0];
-            y = i_nr * wkVec8[1];
-            z = i_nr * wkVec8[2];
+                out[p] = w_v * pos[p] + w_n * (ex + fx);
+                out[p + 1] = w_v * pos[p + 1] + w_n * (ey + fy);
+                out[p + 2] = w_v * pos[p + 2] + w_n * (ez + fz);
+            }
         }
-
-        // set center pos
-        f.setCenterPosition(depth, x, y, z);
     }
 
-    private void computeVertexPoint(Face f, int e, int d)
+    /**
+     * Describe a single child vertex as a weighted sum of the parent
+     * vertices, using the same rules as the compute methods. Points in the
+     * ring of a flattened sector are blended with their projection.
+     *
+     * @param parent The mesh being subdivided
+     * @param childVertex The index of the vertex in the child mesh
+     * @param rule The cleared rule to add the weighted parent vertices to
+     */
+    @Override
+    void subdivisionRule(HalfEdgeMesh parent,
+                         int childVertex,
+                         StencilRule rule)
     {
-        if(f.children == null)
-            f.makeChildren(d);
+        baseRule(parent, childVertex, rule);
 
-        Vertex vtx;
-        float[] pos;
+        if(sectorProjections != null)
+            flattenRule(parent, childVertex, rule);
+    }
 
-        Vertex h_vtx = f.headVertex(e);
+    /**
+     * Describe the limit position of a vertex as a weighted sum of the
+     * vertices of the same mesh. Face centroids stand in for the diagonal
+     * neighbours, which is exact when every face around the vertex is a
+     * quad.
+     *
+     * @param mesh The mesh to read from
+     * @param vertex The index of the vertex in the mesh
+     * @param rule The cleared rule to add the weighted vertices to
+     */
+    @Override
+    void limitRule(HalfEdgeMesh mesh, int vertex, StencilRule rule)
+    {
+        int h0 = mesh.vertexHalfEdge[vertex];
 
-        if(h_vtx.currentDepth <= d + 1)
+        if(h0 == -1 ||
+           mesh.vertexTags[vertex] == SubdivisionTypes.CORNER_VERTEX)
         {
-            pos = h_vtx.getPos(d + 1);
-            wkVec6[0] = pos[0];
-            wkVec6[1] = pos[1];
-            wkVec6[2] = pos[2];
+            rule.add(vertex, 1);
+            return;
         }
-        else
-        {
-            if(h_vtx.isSpecial)
-            {
-                int vtx_id = f.headVertexIndex(e);
-                ring.rebuild(f, vtx_id, d);
-                Sector s = f.sectorInfo(vtx_id);
-                QuadRule rule = getRule(f, vtx_id, s.theta);
-
-                computeRingVertexPoint(rule, d, wkVec6);
-                h_vtx.setPosition(d, wkVec6);
-            }
-            else
-            {
-                ring.rebuildFromRing(f, e);
-
-                wkVec7[0] = 0;
-                wkVec7[1] = 0;
-                wkVec7[2] = 0;
 
-                wkVec8[0] = 0;
-                wkVec8[1] = 0;
-                wkVec8[2] = 0;
+        int num_sharp = countRing(mesh, h0, true);
 
-                int num_vtx = ring.numVertex();
-                for(int i = 0;  i < num_vtx; i++)
-                {
-                    int e1 = ring.getFaceIndex(i);
-                    Face f1 = ring.getFace(i);
-
-                    vtx = f.headVertex(e1);
-                    pos =  vtx.getPos(d);
-
-                    wkVec7[0] += pos[0];
-                    wkVec7[1] += pos[1];
-                    wkVec7[2] += pos[2];
-
-                    vtx = f.headVertex(f.nextEdgeIndex(e1));
-                    pos =  vtx.getPos(d);
-
-                    wkVec8[0] += pos[0];
-                    wkVec8[1] += pos[1];
-                    wkVec8[2] += pos[2];
-                }
-
-                float k = ring.numVertex();
-
-                float beta1 = 1.5f / k;
-                float beta2 = 0.25f / k;
-                float b1_b2 = 1 - beta1 - beta2;
-
-                pos = h_vtx.getPos(d);
-
-                wkVec6[0] = (b1_b2) * pos[0] + beta1 / k * wkVec7[0] +
-                            beta2 / k * wkVec8[0];
-                wkVec6[1] = (b1_b2) * pos[1] + beta1 / k * wkVec7[1] +
-                            beta2 / k * wkVec8[1];
-                wkVec6[2] = (b1_b2) * pos[2] + beta1 / k * wkVec7[2] +
-                            beta2 / k * wkVec8[2];
-            }
-
-            h_vtx.setPosition(d + 1, wkVec6);
+        if(num_sharp > 2 || (num_sharp == 2 && hasCornerSector(mesh, h0)))
+        {
+            rule.add(vertex, 1);
         }
-    }
-
-    private void computeRingVertexPoint(QuadRule rule, int d, float[] res)
-    {
-        int e = ring.getCenterFaceIndex();
-        Face t = ring.getCenterFace();
-
-        applyCoef(rule.sub, d, res);
-        Sector s = t.sectorInfo(t.headVertexIndex(e));
-
-        if((s != null) && (s.flatness != 0))
+        else if(num_sharp == 2)
         {
-            modifyFlatness(rule, res, rule.x1.center, rule.x2.center, d, wkVec5);
-            res[0] = wkVec5[0];
-            res[1] = wkVec5[1];
-            res[2] = wkVec5[2];
+            rule.add(vertex, 4 / 6f);
+            addRing(mesh, h0, rule, 1 / 6f, 0, true);
         }
-
-        if((s != null) && (s.normal != null))
+        else
         {
-            if(ring.isClosed)
-                modifyClosedNormal(rule,
-                                   res,
-                                   rule.x1.center,
-                                   rule.x2.center,
-                                   d,
-                                   wkVec5);
-            else
-                modifyOpenNormal(rule,
-                                 res,
-                                 rule.x1.center,
-                                 rule.x2.center,
-                                 d,
-                                 wkVec5);
-
-            res[0] = wkVec5[0];
-            res[1] = wkVec5[1];
-            res[2] = wkVec5[2];
+            // Replacing each diagonal d with 4c - v - e0 - e1, where c is the
+            // face centroid, turns n^2 v + 4 sum(e) + sum(d) into
+            // (n^2 - n) v + 2 sum(e) + 4 sum(c).
+            float n = countRing(mesh, h0, false);
+            float d = n * (n + 5);
+
+            rule.add(vertex, (n * n - n) / d);
+            addRing(mesh, h0, rule, 2 / d, 4 / d, false);
         }
     }
 
-    private void computeEdgePoint(Face f, int e, int d)
+    /**
+     * Work out the flattening projection of every sector with some
+     * flatness. The type and size of a sector are the same at every level,
+     * so the control mesh is enough.
+     *
+     * @param control The control mesh
+     */
+    @Override
+    void prepareSectors(HalfEdgeMesh control)
     {
-        if(f.children == null)
-            f.makeChildren(d);
-
-        if(f.hasMidPosition(e, d))
-            return;
+        int num_sectors = getNumSectors();
+        float[][] projections = null;
 
-        wkVec9[0] = 0;
-        wkVec9[1] = 0;
-        wkVec9[2] = 0;
+        if(sectorRingSizes == null || sectorRingSizes.length < num_sectors)
+            sectorRingSizes = new int[num_sectors];
 
-        int vtx_id = f.headVertexIndex(e);
-        Sector s = f.sectorInfo(vtx_id);
-
-        if(f.headVertex(e).isSpecial || f.tailVertex(e).isSpecial)
+        for(int h = 0; h < control.numHalfEdges; h++)
         {
+            int id = control.halfEdgeSector[h];
 
-            if(!isRelevantToMidpoint(f, -e))
-            {
-                ring.rebuild(f, e, d);
-                computeRingEdgePoint(d, wkVec8);
-            }
-            else if(!isRelevantToMidpoint(f, e))
-            {
-                ring.rebuild(f, -e, d);
-                computeRingEdgePoint(d, wkVec8);
-            }
-            else
-            {
-                ring.rebuild(f, e, d);
-                computeRingEdgePoint(d, wkVec8);
-
-                ring.rebuild(f, -e, d);
-                computeRingEdgePoint(d, wkVec9);
-                wkVec8[0] = 0.5f * wkVec8[0] + 0.5f * wkVec9[0];
-                wkVec8[1] = 0.5f * wkVec8[1] + 0.5f * wkVec9[0];
-                wkVec8[2] = 0.5f * wkVec8[2] + 0.5f * wkVec9[0];
-            }
-        }
-        else
-        {
-            int ne = f.neighborIndex(e);
-            Face nf = f.neighbor(e);
+            if(id == -1 || getSectorFlatness(id) == 0 ||
+               (projections != null && projections[id] != null))
+                continue;
 
-            Vertex vtx = f.headVertex(e);
-            float[] head = vtx.getPos(d);
+            if(projections == null)
+                projections = new float[num_sectors][];
 
-            vtx = f.tailVertex(e);
-            float[] tail = vtx.getPos(d);
+            int v = control.halfEdgeVertex[h];
+            boolean open = control.countSharpEdges(v) >= 2;
+            int k = sectorSize(control, h, open);
+            int type = sectorType(control, h, open);
+            double theta = Math.PI;
 
-            computeFaceCenter(f, d, wkVec8);
-            computeFaceCenter(nf, d, wkVec9);
+            if(type == CatmullClarkSector.CORNER)
+            {
+                if(getSectorTag(id) != SubdivisionTypes.UNTAGGED_SECTOR)
+                    theta = getSectorTheta(id);
+                else
+                    theta = k * Math.PI / 2;
+            }
 
-            wkVec8[0] = 0.25f * (head[0] + tail[0] + wkVec8[0] + wkVec9[0]);
-            wkVec8[0] = 0.25f * (head[0] + tail[0] + wkVec8[0] + wkVec9[0]);
-            wkVec8[0] = 0.25f * (head[0] + tail[0] + wkVec8[0] + wkVec9[0]);
+            projections[id] = CatmullClarkSector.projectionMatrix(type, k, theta);
+            sectorRingSizes[id] = CatmullClarkSector.ringSize(type, k);
         }
 
-        f.setMidPosition(e, d, wkVec8);
+        sectorProjections = projections;
     }
 
+    //---------------------------------------------------------------
+    // Local Methods
+    //---------------------------------------------------------------
+
     /**
-     * Compute the center point of the given face.
+     * Describe a single child vertex with the rules before any flattening.
+     *
+     * @param parent The mesh being subdivided
+     * @param childVertex The index of the vertex in the child mesh
+     * @param rule The rule to add the weighted parent vertices to
      */
-    private void computeFaceCenter(Face f, int d, float[] res)
+    private void baseRule(HalfEdgeMesh parent,
+                          int childVertex,
+                          StencilRule rule)
     {
-        if(f.children == null)
-            f.makeChildren(d);
+        int face_base = parent.numVertex;
+        int edge_base = parent.numVertex + parent.numFaces;
 
-        Vertex vtx = f.centerVertex();
+        if(childVertex >= edge_base)
+        {
+            int e = childVertex - edge_base;
+            int r = parent.edgeHalfEdge[e];
+            int t = parent.halfEdgeTwin[r];
+            int a = parent.halfEdgeVertex[r];
+            int b = parent.halfEdgeVertex[parent.next(r)];
+
+            if(t == HalfEdgeMesh.NO_TWIN ||
+               parent.edgeTags[e] == SubdivisionTypes.CREASE_EDGE)
+            {
+                rule.add(a, 0.5f);
+                rule.add(b, 0.5f);
+            }
+            else
+            {
+                float w = edgeCorrection(parent, r, t);
 
-        if(vtx.currentDepth <= d + 1)
+                rule.add(a, 0.25f + w);
+                rule.add(b, 0.25f - w);
+                rule.addFace(parent, parent.halfEdgeFace[r], 0.25f);
+                rule.addFace(parent, parent.halfEdgeFace[t], 0.25f);
+            }
+        }
+        else if(childVertex >= face_base)
         {
-            float[] p = vtx.getPos(d);
-            res[0] = p[0];
-            res[1] = p[1];
-            res[2] = p[2];
+            rule.addFace(parent, childVertex - face_base, 1);
         }
         else
         {
-            // compute average...
-            float x = 0;
-            float y = 0;
-            float z = 0;
+            int v = childVertex;
+            int h0 = parent.vertexHalfEdge[v];
 
-            for(int v = 0; v < f.numVertex; v++)
+            if(h0 == -1 ||
+               parent.vertexTags[v] == SubdivisionTypes.CORNER_VERTEX)
             {
-                float[] p = f.vertices[0].getPos(d);
-                x += p[0];
-                y += p[1];
-                z += p[2];
+                rule.add(v, 1);
+                return;
             }
 
-            float av = 1.0f / f.numVertex;
+            int num_sharp = countRing(parent, h0, true);
 
-            x *= av;
-            y *= av;
-            z *= av;
-
-            // modify average...
-            int num_relevant = 0;
-            wkVec7[0] = 0;
-            wkVec7[1] = 0;
-            wkVec7[2] = 0;
-
-            for(int e = 1; e < f.numVertex + 1; e++)
+            if(num_sharp > 2 ||
+               (num_sharp == 2 && hasCornerSector(parent, h0)))
             {
-                if(f.headVertex(e).isSpecial)
-                {
-                    int h_vtx = f.headVertexIndex(e);
-                    Sector s = f.sectorInfo(h_vtx);
-
-                    if((s != null) && (s.normal != null || s.flatness != 0))
-                    {
-                        ring.rebuild(f, e, d);
-                        QuadRule rule = getRule(f, h_vtx, s.theta);
-
-                        float x1 = rule.x1.face[ring.startEdge];
-                        float x2 = rule.x2.face[ring.startEdge];
-
-                        wkVec5[0] = x;
-                        wkVec5[1] = y;
-                        wkVec5[2] = z;
-
-                        if(s.flatness != 0)
-                        {
-                            modifyFlatness(rule, wkVec5, x1, x2, d, wkVec6);
-                            wkVec5[0] = wkVec6[0];
-                            wkVec5[1] = wkVec6[1];
-                            wkVec5[2] = wkVec6[2];
-                        }
-
-                        if(s.normal != null)
-                        {
-                            if(ring.isClosed)
-                            {
-                                modifyClosedNormal(rule, wkVec5, x1, x2, d, wkVec6);
-                                wkVec5[0] = wkVec6[0];
-                                wkVec5[1] = wkVec6[1];
-                                wkVec5[2] = wkVec6[2];
-                            }
-                            else
-                            {
-                                modifyOpenNormal(rule, wkVec5, x1, x2, d, wkVec6);
-                                wkVec5[0] = wkVec6[0];
-                                wkVec5[1] = wkVec6[1];
-                                wkVec5[2] = wkVec6[2];
-                            }
-                        }
-
-                        num_relevant++;
-                        wkVec7[0] += wkVec5[0];
-                        wkVec7[1] += wkVec5[1];
-                        wkVec7[2] += wkVec5[2];
-                    }
-                }
+                rule.add(v, 1);
             }
-
-            if(num_relevant != 0)
+            else if(num_sharp == 2)
             {
-                float i_nr = 1 / (float)num_relevant;
-                x = i_nr * wkVec7[0];
-                y = i_nr * wkVec7[1];
-                z = i_nr * wkVec7[2];
+                rule.add(v, 0.75f);
+                addRing(parent, h0, rule, 0.125f, 0, true);
             }
-
-            // set center pos
-            f.setCenterPosition(d, x, y, z);
-            res[0] = x;
-            res[1] = y;
-            res[2] = z;
-        }
-    }
-
-    private void computeRingEdgePoint(int d, float[] res)
-    {
-        int e = ring.getCenterFaceIndex();
-        Face t = ring.getCenterFace();
-
-        int hv = t.headVertexIndex(e);
-        Sector s = t.sectorInfo(hv);
-
-        QuadRule rule = getRule(t, hv, s.theta);
-
-        if(t.edgeTag(e) == SubdivisionTypes.CREASE_EDGE)
-            applyEdgeCoef(rule.creaseSub, d, res);
-        else
-            applyEdgeCoef(rule.edgeSub, d, res);
-
-        float x1 = rule.x1.edge[ring.startEdge];
-        float x2 = rule.x2.edge[ring.startEdge];
-
-        Sector si = t.sectorInfo(t.headVertexIndex(e));
-        if((si != null) && (si.flatness != 0))
-        {
-            modifyFlatness(rule, res, x1, x2, d, wkVec5);
-            res[0] = wkVec5[0];
-            res[1] = wkVec5[1];
-            res[2] = wkVec5[2];
-        }
-
-        si = t.sectorInfo(t.headVertexIndex(e));
-        if((si != null) && (si.normal != null))
-        {
-            if(ring.isClosed)
-                modifyClosedNormal(rule, res, x1, x2, d, wkVec5);
             else
-                modifyOpenNormal(rule, res, x1, x2, d, wkVec5);
+            {
+                float k = countRing(parent, h0, false);
+                float w_n = 1 / (k * k);
 
-            res[0] = wkVec5[0];
-            res[1] = wkVec5[1];
-            res[2] = wkVec5[2];
+                rule.add(v, (k - 2) / k);
+                addRing(parent, h0, rule, w_n, w_n, false);
+            }
         }
     }
 
     /**
-     * Check to see if the edge e is relevant to the face for updates.
+     * Count the edges around a vertex, starting from its outgoing half-edge.
      *
-     * @param f The face to check against
-     * @param e The index of the vertex in the list
+     * @param mesh The mesh to read from
+     * @param h0 The outgoing half-edge of the vertex
+     * @param sharpOnly true to only count boundary and crease edges
+     * @return The number of edges found
      */
-    private boolean isRelevantToMidpoint(Face f, int e)
+    private static int countRing(HalfEdgeMesh mesh, int h0, boolean sharpOnly)
     {
-        int vn = f.headVertexIndex(e);
-
-        if(!f.vertices[vn].isSpecial)
-            return false;
+        int[] twin = mesh.halfEdgeTwin;
+        int ret_val = 0;
+        int h = h0;
+        int steps = 0;
 
-        Sector s = f.sectorInfo(vn);
-
-        if((s != null) && (s.normal != null) || (s.flatness != 0))
-            return true;
+        do
+        {
+            if(!sharpOnly || mesh.isSharp(h))
+                ret_val++;
 
-        int vt = f.vertexTag(vn);
-        int et = f.edgeTag(e);
-        if((et == SubdivisionTypes.UNTAGGED_EDGE) &&
-           (vt == SubdivisionTypes.SMOOTH_VERTEX))
-            return false;
+            int hp = mesh.prev(h);
+            h = twin[hp];
 
-        if((et == SubdivisionTypes.CREASE_EDGE) &&
-           ((vt == SubdivisionTypes.CREASE_VERTEX) ||
-            (vt == SubdivisionTypes.SMOOTH_VERTEX)))
-            return false;
+            if(h == HalfEdgeMesh.NO_TWIN)
+            {
+                // The last, incoming, edge is on the boundary
+                ret_val++;
+                break;
+            }
+        }
+        while(h != h0 && ++steps < mesh.numHalfEdges);
 
-        return true;
+        return ret_val;
     }
 
     /**
-     * Get the quad rule from the table for the given k. If one has not been
-     * allocated, create it, including the theta value.
+     * Add the vertices at the far end of the edges around a vertex, and
+     * optionally the centroids of the faces, to a rule.
      *
-     * @param k The level of subdivision in use
-     * @param theta The theta used in the coefficient
+     * @param mesh The mesh to read from
+     * @param h0 The outgoing half-edge of the vertex
+     * @param rule The rule to add to
+     * @param edgeWeight The weight of each edge neighbour
+     * @param faceWeight The weight of each face centroid, 0 for none
+     * @param sharpOnly true to only use boundary and crease edges
      */
-    private QuadRule getRule(Face f, int vertex, float theta)
+    private static void addRing(HalfEdgeMesh mesh,
+                                int h0,
+                                StencilRule rule,
+                                float edgeWeight,
+                                float faceWeight,
+                                boolean sharpOnly)
     {
-        QuadRule ret_val = null;
+        int[] vtx = mesh.halfEdgeVertex;
+        int[] twin = mesh.halfEdgeTwin;
+        int h = h0;
+        int steps = 0;
 
-        int k = ring.numFace;
-
-        switch(f.vertexTag(vertex))
+        do
         {
-            case SubdivisionTypes.SMOOTH_VERTEX:
-                if(interiorRuleTable[k] == null)
-                    interiorRuleTable[k] = new InteriorQuadRule(k, theta);
+            if(!sharpOnly || mesh.isSharp(h))
+                rule.add(vtx[mesh.next(h)], edgeWeight);
 
-                ret_val = interiorRuleTable[k];
-                break;
+            if(faceWeight != 0)
+                rule.addFace(mesh, mesh.halfEdgeFace[h], faceWeight);
 
-            case SubdivisionTypes.CREASE_VERTEX:
-                if(creaseRuleTable[k] == null)
-                    creaseRuleTable[k] = new CreaseQuadRule(k, theta);
+            int hp = mesh.prev(h);
+            h = twin[hp];
 
-                ret_val = creaseRuleTable[k];
+            if(h == HalfEdgeMesh.NO_TWIN)
+            {
+                rule.add(vtx[hp], edgeWeight);
                 break;
-
-            case SubdivisionTypes.CORNER_VERTEX:
-                switch(f.sectorTag(vertex))
-                {
-                    case Sector.CONVEX_SECTOR:
-                        if((convexRuleTable[k] == null) ||
-                           (convexRuleTable[k].theta != theta))
-                            convexRuleTable[k] = new ConvexQuadRule(k, theta);
-
-                        ret_val = convexRuleTable[k];
-                        break;
-
-                    case Sector.CONCAVE_SECTOR:
-                        if((concaveRuleTable[k] == null) ||
-                           (concaveRuleTable[k].theta != theta))
-                            concaveRuleTable[k] = new ConcaveQuadRule(k, theta);
-
-                        ret_val = concaveRuleTable[k];
-                        break;
-
-                    default:
-                        System.out.println("CC.getRule.invalid");
-
-                }
+            }
         }
-
-        return ret_val;
+        while(h != h0 && ++steps < mesh.numHalfEdges);
     }
 
     /**
-     * Modify the flatness of a point and return it in the provided point
+     * Add the flattening of every sector that the child vertex is part of
+     * to its rule. With a sector's projection P and flatness s, the point
+     * p becomes p + s(Pp - p), where Pp uses the rules of the other points
+     * of the sector's ring. A point in several flattened sectors takes the
+     * average of their changes.
      *
-     * @param d The subdivision depth we're working with.
+     * @param parent The mesh being subdivided
+     * @param childVertex The index of the vertex in the child mesh
+     * @param rule The rule holding the point's unflattened rule
      */
-    private void modifyFlatness(QuadRule rule,
-                                float[] p,
-                                float x1,
-                                float x2,
-                                int d,
-                                float[] res)
-    {
-        int e = ring.getCenterFaceIndex();
-        Face cf = ring.getCenterFace();
-        int c_vtx = cf.headVertexIndex(e);
-
-        res[0] = p[0];
-        res[1] = p[1];
-        res[2] = p[2];
-
-        float[] a0 = wkVec1;
-        float[] a1 = wkVec2;
-        float[] a2 = wkVec3;
-
-        applyCoef(rule.l0, d, a0);
-        applyCoef(rule.l1, d, a1);
-        applyCoef(rule.l2, d, a2);
-
-        Sector si = cf.sectorInfo(c_vtx);
-        float s = si.flatness;
-
-        res[0] = (1 - s) * p[0] +
-                  s * (a0[0] +
-                       a1[0] * x1 * rule.lambda1 +
-                       a2[0] * x2 * rule.lambda2);
-
-        res[1] = (1 - s) * p[1] +
-                  s * (a0[1] +
-                       a1[1] * x1 * rule.lambda1 +
-                       a2[1] * x2 * rule.lambda2);
-
-        res[2] = (1 - s) * p[2] +
-                  s * (a0[2] +
-                       a1[2] * x1 * rule.lambda1 +
-                       a2[2] * x2 * rule.lambda2);
-    }
-
-    private void modifyClosedNormal(QuadRule rule,
-                                    float[] p,
-                                    float x1,
-                                    float x2,
-                                    int depth,
-                                    float[] res)
+    private void flattenRule(HalfEdgeMesh parent,
+                             int childVertex,
+                             StencilRule rule)
     {
-        int fe = ring.getCenterFaceIndex();
-        Face cf = ring.getCenterFace();
-        int c_vtx = cf.headVertexIndex(fe);
-
-        Sector si = cf.sectorInfo(c_vtx);
+        int[] found = findSectors(parent, childVertex);
 
-        float[] pn = si.normal;
-
-        applyCoef(rule.l1, depth, wkVec1);
-        applyCoef(rule.l2, depth, wkVec2);
+        if(found == null)
+            return;
 
-        float a1_dot_pn =
-            wkVec1[0] * pn[0] + wkVec1[1] * pn[1] + wkVec1[2] * pn[2];
-        float a2_dot_pn =
-            wkVec2[0] * pn[0] + wkVec2[1] * pn[1] + wkVec2[2] * pn[2];
+        int num_found = found.length;
+        StencilRule base = new StencilRule();
+        StencilRule other = new StencilRule();
 
-        float fac = si.normalT * (rule.lambda1 * a1_dot_pn * x1 +
-                                  rule.lambda2 * a2_dot_pn * x2);
+        base.add(rule, 1);
 
-        res[0] = p[0] - pn[0] * fac;
-        res[1] = p[1] - pn[1] * fac;
-        res[2] = p[2] - pn[2] * fac;
-    }
+        for(int i = 0; i < num_found; i++)
+        {
+            int h = found[i];
+            int id = parent.halfEdgeSector[h];
+            float[] proj = sectorProjections[id];
+            int n = sectorRingSizes[id];
+            int[] ring = sectorRing(parent, h, n);
 
+            if(ring == null)
+                continue;
 
-    private void modifyOpenNormal(QuadRule rule,
-                                  float[] p,
-                                  float x1,
-                                  float x2,
-                                  int depth,
-                                  float[] res)
-    {
-        // real tangents
-        applyCoef(rule.l1, depth, wkVec2);
-        applyCoef(rule.l2, depth, wkVec3);
+            int row = 0;
 
-        // center
-        int e1 = ring.getCenterFaceIndex();
-        Face t1 = ring.getCenterFace();
-        int c_vtx = t1.headVertexIndex(e1);
+            while(row < n && ring[row] != childVertex)
+                row++;
 
+            if(row == n)
+                continue;
 
-        Sector si = t1.sectorInfo(c_vtx);
-        float[] n1 = si.normal;
+            float s = getSectorFlatness(id) / num_found;
 
-        // wkVec1 == a1, wkVec2 == a2
-        float[] a1 = wkVec1;
-        float[] a2 = wkVec2;
+            rule.add(base, -s);
 
-        applyCoef(rule.l1, depth, a1);
-        applyCoef(rule.l2, depth, a2);
+            for(int m = 0; m < n; m++)
+            {
+                float w = proj[row * n + m];
 
-        // modified tangents
-        float a1_dot_n1 = a1[0] * n1[0] + a1[1] * n1[1] + a1[2] * n1[2];
-        float a2_dot_n1 = a2[0] * n1[0] + a2[1] * n1[1] + a2[2] * n1[2];
+                if(w == 0)
+                    continue;
 
-        // tan1
-        wkVec3[0] = (a1[0] - a1_dot_n1 * n1[0]);
-        wkVec3[1] = (a1[1] - a1_dot_n1 * n1[1]);
-        wkVec3[2] = (a1[2] - a1_dot_n1 * n1[2]);
+                other.clear();
+                baseRule(parent, ring[m], other);
+                rule.add(other, s * w);
+            }
+        }
+    }
 
-        // Normalise the vector.
-        float d = wkVec3[0] * wkVec3[0] +
-                  wkVec3[1] * wkVec3[1] +
-                  wkVec3[2] * wkVec3[2];
+    /**
+     * Find the flattened sectors that a child vertex is part of. Each
+     * sector is returned as one of its half-edges.
+     *
+     * @param parent The mesh being subdivided
+     * @param childVertex The index of the vertex in the child mesh
+     * @return The half-edges of the distinct sectors or null for none
+     */
+    private int[] findSectors(HalfEdgeMesh parent, int childVertex)
+    {
+        int face_base = parent.numVertex;
+        int edge_base = parent.numVertex + parent.numFaces;
+        int[] candidates;
+        int num_candidates = 0;
 
-        if(d != 0)
+        if(childVertex >= edge_base)
         {
-            d = 1 / (float)Math.sqrt(d);
-            wkVec3[0] *= d;
-            wkVec3[1] *= d;
-            wkVec3[2] *= d;
-        }
-
-        // tan2
-        wkVec4[0] = (a2[0] - a2_dot_n1 * n1[0]);
-        wkVec4[1] = (a2[1] - a2_dot_n1 * n1[1]);
-        wkVec4[2] = (a2[2] - a2_dot_n1 * n1[2]);
+            int r = parent.edgeHalfEdge[childVertex - edge_base];
+            int t = parent.halfEdgeTwin[r];
 
-        // Normalise the vector.
-        d = wkVec4[0] * wkVec4[0] +
-            wkVec4[1] * wkVec4[1] +
-            wkVec4[2] * wkVec4[2];
+            // The half-edges leaving both ends in the faces on both sides
+            candidates = new int[4];
+            candidates[num_candidates++] = r;
+            candidates[num_candidates++] = parent.next(r);
 
-        if(d != 0)
-        {
-            d = 1 / (float)Math.sqrt(d);
-            wkVec4[0] *= d;
-            wkVec4[1] *= d;
-            wkVec4[2] *= d;
+            if(t != HalfEdgeMesh.NO_TWIN)
+            {
+                candidates[num_candidates++] = t;
+                candidates[num_candidates++] = parent.next(t);
+            }
         }
+        else if(childVertex >= face_base)
+        {
+            int f = childVertex - face_base;
+            int first = parent.faceStart[f];
+            int last = parent.faceStart[f + 1];
 
-        int k = ring.numFace;
+            candidates = new int[last - first];
 
-        int e_first = ring.getFaceIndex(0);
-        int e_last = ring.getFaceIndex(k - 1);
-        Face t_first = ring.getFace(0);
-        Face t_last = ring.getFace(k - 1);
+            for(int h = first; h < last; h++)
+                candidates[num_candidates++] = h;
+        }
+        else
+        {
+            int h0 = parent.vertexHalfEdge[childVertex];
 
-        int e0 = t_first.neighborIndex(e_first);
-        Face t0 = t_first.neighbor(e_first);
+            if(h0 == -1)
+                return null;
 
-        int p_e2 = t_last.prevEdgeIndex(e_last);
-        int e2 = t_last.neighborIndex(p_e2);
-        Face t2 = t_last.neighbor(p_e2);
+            candidates = new int[countRing(parent, h0, false)];
 
-        boolean two_sector_corner =
-           ((t1.vertexTag(t1.headVertexIndex(e1)) !=
-             SubdivisionTypes.SMOOTH_VERTEX) &&
-           (t0 != null) && (t2 != null) &&
-           (t0.sectorInfo(t0.tailVertexIndex(e0)) ==
-            t2.sectorInfo(t2.headVertexIndex(e2))));
+            int h = h0;
+            int steps = 0;
 
-        if(!two_sector_corner)
-        {
-            // startV
-            if(t0 != null)
+            do
             {
-                si = t0.sectorInfo(t0.tailVertexIndex(e0));
-                float[] n0 = si.normal;
-
-                // n0 x n1
-                float x = n0[1] * n1[2] - n0[2] * n1[1];
-                float y = n0[2] * n1[0] - n0[0] * n1[2];
-                float z = n0[0] * n1[1] - n0[1] * n1[0];
+                candidates[num_candidates++] = h;
+                h = parent.halfEdgeTwin[parent.prev(h)];
+            }
+            while(h != HalfEdgeMesh.NO_TWIN && h != h0 &&
+                  num_candidates < candidates.length &&
+                  ++steps < parent.numHalfEdges);
+        }
 
-                // error calc
-                double l1 = Math.abs(x) + Math.abs(y) + Math.abs(z);
+        int num_found = 0;
 
-                if(l1 > 0.001)
-                {
-                    l1 = Math.sqrt(x * x + y * y + z * z);
-                    if(l1 == 0)
-                        l1 = 1;
-
-                    switch(t1.vertexTag(t1.headVertexIndex(e1)))
-                    {
-                        case SubdivisionTypes.SMOOTH_VERTEX:
-                            // Should never get to this one.
-                            break;
-
-                        case SubdivisionTypes.CREASE_VERTEX:
-                            // this case only happens if the mesh is tagged
-                            // incorrectly. Normalise the cross product to
-
-                            wkVec3[0] /= l1;
-                            wkVec3[1] /= l1;
-                            wkVec3[2] /= l1;
-                            break;
-
-                        case SubdivisionTypes.CORNER_VERTEX:
-                            Sector s1 = t1.sectorInfo(t1.headVertexIndex(e1));
-
-                            if(s1.tag == Sector.CONCAVE_SECTOR)
-                            {
-                                wkVec3[0] /= l1;
-                                wkVec3[1] /= l1;
-                                wkVec3[2] /= l1;
-                            }
-                            else
-                            {
-                                wkVec4[0] /= l1;
-                                wkVec4[1] /= l1;
-                                wkVec4[2] /= l1;
-                            }
-
-                            break;
-                    }
-                }
-            }
+        for(int i = 0; i < num_candidates; i++)
+        {
+            int id = parent.halfEdgeSector[candidates[i]];
 
-            if(t2 != null)
-            {
-                si = t2.sectorInfo(t2.headVertexIndex(e2));
-                float[] n2 = si.normal;
+            if(id == -1 || sectorProjections[id] == null)
+                continue;
 
-                // n1 x n2
-                float x = n1[1] * n2[2] - n1[2] * n2[1];
-                float y = n1[2] * n2[0] - n1[0] * n2[2];
-                float z = n1[0] * n2[1] - n1[1] * n2[0];
+            boolean seen = false;
 
-                double l1 = Math.abs(x) + Math.abs(y) + Math.abs(z);
+            for(int j = 0; j < num_found && !seen; j++)
+                seen = parent.halfEdgeSector[candidates[j]] == id;
 
-                if(l1 > 0.001)
-                {
-                    l1 = Math.sqrt(x * x + y * y + z * z);
-                    if(l1 == 0)
-                        l1 = 1;
-
-                    switch(t1.sectorTag(t1.headVertexIndex(e1)))
-                    {
-                        case Sector.UNTAGGED_SECTOR:
-                            // should never get this
-                            break;
-
-                        case Sector.CONCAVE_SECTOR:
-                            wkVec4[0] /= l1;
-                            wkVec4[1] /= l1;
-                            wkVec4[2] /= l1;
-                            break;
-
-                        case Sector.CONVEX_SECTOR:
-                            wkVec3[0] /= l1;
-                            wkVec3[1] /= l1;
-                            wkVec3[2] /= l1;
-                            break;
-
-                    }
-                }
-            }
+            if(!seen)
+                candidates[num_found++] = candidates[i];
         }
 
-        si = t1.sectorInfo(t1.headVertexIndex(e1));
-        float nt = si.normalT;
-
-        float a1_dot_tan1 =
-            a1[0] * wkVec3[0] + a1[1] * wkVec3[1] + a1[2] * wkVec3[2];
-        float a2_dot_tan2 =
-            a2[0] * wkVec4[0] + a2[1] * wkVec4[1] + a2[2] * wkVec4[2];
+        if(num_found == 0)
+            return null;
 
-        float l1 = x1 * a1_dot_tan1 * rule.lambda1;
-        float l2 = x2 * a2_dot_tan2 * rule.lambda2;
+        int[] ret_val = new int[num_found];
+        System.arraycopy(candidates, 0, ret_val, 0, num_found);
 
-        res[0] = p[0] + nt * (l1 * (wkVec3[0] - wkVec2[0]) +
-                              l2 * (wkVec4[0] - wkVec3[0]));
-        res[1] = p[1] + nt * (l1 * (wkVec3[1] - wkVec2[1]) +
-                              l2 * (wkVec4[1] - wkVec3[1]));
-        res[2] = p[2] + nt * (l1 * (wkVec3[2] - wkVec2[2]) +
-                              l2 * (wkVec4[2] - wkVec3[2]));
+        return ret_val;
     }
 
     /**
-     * Apply the vertex cooefficients to a face.
+     * List the child vertices of a sector's ring in the order used by
+     * {@link CatmullClarkSector}: the vertex, the edge points and then the
+     * face points.
+     *
+     * @param parent The mesh being subdivided
+     * @param h One of the half-edges of the sector
+     * @param n The number of points the ring is expected to have
+     * @return The child vertex indices or null if the ring does not match
      */
-    private void applyCoef(QuadCoefficients coef, int d, float[] res)
+    private static int[] sectorRing(HalfEdgeMesh parent, int h, int n)
     {
-        Vertex vtx = ring.getCenterVertex();
-        float[] p = vtx.getPos(d);
+        boolean open = parent.countSharpEdges(parent.halfEdgeVertex[h]) >= 2;
+        int k = sectorSize(parent, h, open);
+        int num_edges = open ? k + 1 : k;
 
-        res[0] = coef.center * p[0];
-        res[1] = coef.center * p[1];
-        res[2] = coef.center * p[2];
+        if(k + num_edges + 1 != n)
+            return null;
 
-        for(int i = 0; i < ring.numVertex(); i++)
-        {
-            p = ring.vertex(i).getPos(d);
+        int face_base = parent.numVertex;
+        int edge_base = parent.numVertex + parent.numFaces;
+        int[] ret_val = new int[n];
+        int start = parent.sectorStart(h, open);
+        int i = 0;
 
-            res[0] += coef.edge[i] * p[0];
-            res[1] += coef.edge[i] * p[1];
-            res[2] += coef.edge[i] * p[2];
-        }
+        ret_val[0] = parent.halfEdgeVertex[h];
 
-        for(int i = 0; i < ring.numFace; i++)
+        for(int g = start; g != -1; g = parent.sectorNext(g, start, open))
         {
-            Face f = ring.getFace(i);
-            int edge = ring.getFaceEdge(i);
+            ret_val[1 + i] = edge_base + parent.halfEdgeEdge[g];
+            ret_val[1 + num_edges + i] = face_base + parent.halfEdgeFace[g];
+            i++;
 
-            vtx = f.headVertex(f.nextEdgeIndex(edge));
-            float[] t = vtx.getPos(d);
-
-            if(d == 0)
-            {
-                wkVec0[0] = 0;
-                wkVec0[1] = 0;
-                wkVec0[2] = 0;
-                float i_num = 1 / (float)f.numVertex;
-                float[] pos;
-
-                for(int v = 0; v < f.numVertex; v++)
-                {
-                    pos = f.vertices[i].getPos(d);
-                    wkVec0[0] += i_num * pos[0];
-                    wkVec0[1] += i_num * pos[1];
-                    wkVec0[2] += i_num * pos[2];
-                }
-
-                vtx = f.headVertex(edge);
-                float[] f_hp = vtx.getPos(d);
-
-                vtx = f.headVertex(f.nextEdgeIndex(edge));
-                float[] f_hpe = vtx.getPos(d);
-
-                vtx = f.tailVertex(edge);
-                float[] f_tp = vtx.getPos(d);
-
-                t[0] = 4 * wkVec0[0] - f_hp[0] - f_hpe[0] - f_tp[0];
-                t[1] = 4 * wkVec0[1] - f_hp[1] - f_hpe[1] - f_tp[1];
-                t[2] = 4 * wkVec0[2] - f_hp[2] - f_hpe[2] - f_tp[2];
-            }
-
-            res[0] += coef.face[i] * wkVec0[0];
-            res[1] += coef.face[i] * wkVec0[1];
-            res[2] += coef.face[i] * wkVec0[2];
+            if(open && i == k)
+                ret_val[1 + k] = edge_base + parent.halfEdgeEdge[parent.prev(g)];
         }
+
+        return ret_val;
     }
 
     /**
-     * Apply an edge coefficient to the value
+     * Count the faces in the sector of a half-edge.
+     *
+     * @param mesh The mesh to read from
+     * @param h One of the outgoing half-edges of the sector
+     * @param open true if the vertex has two or more sharp edges
+     * @return The number of faces
      */
-    private void applyEdgeCoef(float[] coef, int d, float[] res)
+    private static int sectorSize(HalfEdgeMesh mesh, int h, boolean open)
     {
-        int ce = ring.edgeId;
-        Face cf = ring.centerFace;
-
-        int ne = cf.neighborIndex(ce);
-        Face nf = cf.neighbor(ce);
-        Vertex vtx;
-
-        if(d == 0)
-        {
-            int i;
-            float[][] pos = new float[6][];
-            int num_vtx = cf.numVertex;
-            float i_nv = 1 / (float)num_vtx;
-
-            float[] a0 = wkVec0;
-            float[] a1 = wkVec1;
+        int start = mesh.sectorStart(h, open);
+        int ret_val = 0;
 
-            a0[0] = 0;
-            a0[1] = 0;
-            a0[2] = 0;
+        for(int g = start; g != -1 && ret_val < mesh.numHalfEdges;
+            g = mesh.sectorNext(g, start, open))
+            ret_val++;
 
-            a1[0] = 0;
-            a1[1] = 0;
-            a1[2] = 0;
+        return ret_val;
+    }
 
-            for(i = 0; i < num_vtx; i++)
-            {
-                float[] p = cf.vertices[i].getPos(d);
-                a0[0] += i_nv * p[0];
-                a0[1] += i_nv * p[1];
-                a0[2] += i_nv * p[2];
-            }
+    /**
+     * Work out which of the sector types in {@link CatmullClarkSector} the
+     * sector of a half-edge uses.
+     *
+     * @param mesh The mesh to read from
+     * @param h One of the outgoing half-edges of the sector
+     * @param open true if the vertex has two or more sharp edges
+     * @return The sector type
+     */
+    private int sectorType(HalfEdgeMesh mesh, int h, boolean open)
+    {
+        if(!open)
+            return CatmullClarkSector.INTERIOR;
 
-            vtx = cf.headVertex(ce);
-            pos[0] = vtx.getPos(d);
+        int v = mesh.halfEdgeVertex[h];
 
-            vtx = cf.headVertex(cf.nextEdgeIndex(ce));
-            pos[1] = vtx.getPos(d);
+        if(mesh.vertexTags[v] == SubdivisionTypes.CORNER_VERTEX ||
+           mesh.countSharpEdges(v) > 2 ||
+           hasCornerSector(mesh, mesh.vertexHalfEdge[v]))
+            return CatmullClarkSector.CORNER;
 
-            vtx = cf.tailVertex(ce);
-            pos[3] = vtx.getPos(d);
+        return CatmullClarkSector.CREASE;
+    }
 
-            pos[2] = wkVec2;
-            pos[2][0] = 4 * a0[0] - pos[0][0] - pos[1][0] - pos[3][0];
-            pos[2][1] = 4 * a0[1] - pos[0][1] - pos[1][1] - pos[3][1];
-            pos[2][2] = 4 * a0[2] - pos[0][2] - pos[1][2] - pos[3][2];
+    /**
+     * Check to see if any sector around a vertex is tagged as a convex or
+     * concave corner.
+     *
+     * @param mesh The mesh to read from
+     * @param h0 The outgoing half-edge of the vertex
+     * @return true if the vertex is held as a corner by a sector
+     */
+    private boolean hasCornerSector(HalfEdgeMesh mesh, int h0)
+    {
+        int[] he_sector = mesh.halfEdgeSector;
+        int h = h0;
+        int steps = 0;
 
-            if(nf != null)
-            {
-                num_vtx = nf.numVertex;
-                i_nv = 1 / (float)num_vtx;
+        do
+        {
+            if(he_sector[h] != -1 &&
+               getSectorTag(he_sector[h]) != SubdivisionTypes.UNTAGGED_SECTOR)
+                return true;
 
-                for(i = 0; i < num_vtx; i++)
-                {
-                    float[] p = nf.vertices[i].getPos(d);
-                    a1[0] += i_nv * p[0];
-                    a1[1] += i_nv * p[1];
-                    a1[2] += i_nv * p[2];
-                }
+            h = mesh.halfEdgeTwin[mesh.prev(h)];
+        }
+        while(h != HalfEdgeMesh.NO_TWIN && h != h0 &&
+              ++steps < mesh.numHalfEdges);
 
-                vtx = nf.headVertex(nf.nextEdgeIndex(ne));
+        return false;
+    }
 
-                pos[5] = vtx.getPos(d);
+    /**
+     * Work out the weight moved from b to a for the smooth edge from a to
+     * b. Each end that is a crease or corner vertex pulls the edge point
+     * towards itself by the offset of its sector. When both ends do, the
+     * two halves are averaged.
+     *
+     * @param mesh The mesh to read from
+     * @param r The half-edge from a to b
+     * @param t The half-edge from b to a
+     * @return The weight to add to a and take off b
+     */
+    private float edgeCorrection(HalfEdgeMesh mesh, int r, int t)
+    {
+        float wa = tagOffset(mesh, r);
+        float wb = tagOffset(mesh, t);
 
-                pos[4] = wkVec3;
-                pos[4][0] = 4 * a1[0] - pos[0][0] - pos[3][0] - pos[5][0];
-                pos[4][1] = 4 * a1[1] - pos[0][1] - pos[3][1] - pos[5][1];
-                pos[4][2] = 4 * a1[2] - pos[0][2] - pos[3][2] - pos[5][2];
-            }
+        if(wa == NOT_TAGGED)
+            return (wb == NOT_TAGGED) ? 0 : -wb;
 
-            res[0] = coef[0] * pos[0][0] + coef[1] * pos[1][0] +
-                     coef[2] * pos[2][0] + coef[3] * pos[3][0] +
-                     coef[4] * pos[4][0] + coef[5] * pos[5][0];
+        return (wb == NOT_TAGGED) ? wa : 0.5f * (wa - wb);
+    }
 
-            res[1] = coef[0] * pos[0][1] + coef[1] * pos[1][1] +
-                     coef[2] * pos[2][1] + coef[3] * pos[3][1] +
-                     coef[4] * pos[4][1] + coef[5] * pos[5][1];
+    /**
+     * Get the weight that the vertex at the start of a smooth edge takes
+     * from the far end in the edge rule. Smooth vertices and darts do not
+     * change the rule. Untagged corners use the regular weights.
+     *
+     * @param mesh The mesh to read from
+     * @param h The half-edge leaving the vertex along the edge
+     * @return The offset or NOT_TAGGED if the vertex does not change the rule
+     */
+    private float tagOffset(HalfEdgeMesh mesh, int h)
+    {
+        int v = mesh.halfEdgeVertex[h];
+        int id = mesh.halfEdgeSector[h];
 
-            res[2] = coef[0] * pos[0][2] + coef[1] * pos[1][2] +
-                     coef[2] * pos[2][2] + coef[3] * pos[3][2] +
-                     coef[4] * pos[4][2] + coef[5] * pos[5][2];
-        }
-        else
-        {
-            if(nf != null)
-            {
-                vtx = nf.headVertex(nf.nextEdgeIndex(-ne));
-                float[] p1 = vtx.getPos(d);
+        // Quick exit for the common case of a smooth interior vertex
+        if(id == -1 &&
+           mesh.vertexTags[v] == SubdivisionTypes.SMOOTH_VERTEX &&
+           mesh.halfEdgeTwin[mesh.vertexHalfEdge[v]] != HalfEdgeMesh.NO_TWIN)
+            return NOT_TAGGED;
 
-                vtx = nf.headVertex(nf.nextEdgeIndex(nf.nextEdgeIndex(-ne)));
-                float[] p2 = vtx.getPos(d);
+        int num_sharp = mesh.countSharpEdges(v);
 
-                res[0] = coef[4] * p1[0] + coef[5] * p2[0];
-                res[1] = coef[4] * p1[1] + coef[5] * p2[1];
-                res[2] = coef[4] * p1[2] + coef[5] * p2[2];
-            }
+        if(num_sharp < 2)
+            return NOT_TAGGED;
 
-            float[] p1 = cf.headVertex(ce).getPos(d);
-            float[] p2 = cf.headVertex(cf.nextEdgeIndex(ce)).getPos(d);
-            float[] p3 = cf.headVertex(cf.nextEdgeIndex(cf.nextEdgeIndex(ce))).getPos(d);
-            float[] p4 = cf.tailVertex(ce).getPos(d);
+        int k = sectorSize(mesh, h, true);
 
-            res[0] += coef[0] * p1[0] + coef[1] * p2[0] +
-                      coef[2] * p3[0] + coef[3] * p4[0];
+        if(id != -1 && getSectorTag(id) != SubdivisionTypes.UNTAGGED_SECTOR)
+            return (float)CatmullClarkSector.edgeOffset(k, getSectorTheta(id));
 
-            res[1] += coef[0] * p1[1] + coef[1] * p2[1] +
-                      coef[2] * p3[1] + coef[3] * p4[1];
+        if(num_sharp > 2 ||
+           mesh.vertexTags[v] == SubdivisionTypes.CORNER_VERTEX ||
+           hasCornerSector(mesh, mesh.vertexHalfEdge[v]))
+            return 0;
 
-            res[2] += coef[0] * p1[2] + coef[1] * p2[2] +
-                      coef[2] * p3[2] + coef[3] * p4[2];
-        }
+        return (float)CatmullClarkSector.edgeOffset(k, Math.PI);
     }
 }
@@ -0,0 +1,446 @@
+/*****************************************************************************
+ *                        J3D.org Copyright (c) 2001
+ *                               Java Source
+ *
+ * This source is licensed under the GNU LGPL v2.1
+ * Please read http://www.gnu.org/copyleft/lgpl.html for more information
+ *
+ ****************************************************************************/
+
+package org.j3d.geom.subdivision;
+
+// External imports
+// None
+
+// Local imports
+// None
+
+/**
+ * Eigen analysis of the Catmull-Clark rules over a single sector, used to
+ * apply the flatness control of Biermann, Levin and Zorin's piecewise
+ * smooth subdivision.
+ * <p>
+ *
+ * A sector is the fan of k quads around a vertex that lies between two
+ * sharp edges, or the whole ring when the vertex is smooth. Its points are
+ * held in a fixed order: the centre, then the far ends of the edges in
+ * order around the vertex, then the diagonal corners of the faces. Face i
+ * lies between edges i and i + 1. Interior sectors have k edges, while
+ * crease and corner sectors have k + 1, the first and last being sharp.
+ * <p>
+ *
+ * One level of subdivision maps the points of a sector to the matching
+ * points of the child by a small matrix S. The limit position comes from
+ * its eigenvalue 1 and the tangent plane from its subdominant eigenvalue,
+ * which is 1/2 for crease and corner sectors. Flattening blends the child
+ * points with their projection onto those eigenvectors, which pulls the
+ * sector towards its tangent plane without moving the limit position or
+ * tangents. The projection is found numerically from the null spaces of
+ * S - I and S - &lambda;I, so it stays correct for any valence and angle.
+ */
+class CatmullClarkSector
+{
+    /** The sector is the full ring of a smooth vertex */
+    static final int INTERIOR = 0;
+
+    /** The sector is one side of a vertex moving along a crease */
+    static final int CREASE = 1;
+
+    /** The sector is one side of a fixed corner vertex */
+    static final int CORNER = 2;
+
+    /** Pivots smaller than this relative to the matrix are treated as 0 */
+    private static final double EPSILON = 1e-9;
+
+    /**
+     * Static methods only.
+     */
+    private CatmullClarkSector()
+    {
+    }
+
+    /**
+     * Get the number of points in a sector.
+     *
+     * @param type The type of sector
+     * @param k The number of faces in the sector
+     * @return The number of points in the ring, including the centre
+     */
+    static int ringSize(int type, int k)
+    {
+        return (type == INTERIOR) ? 2 * k + 1 : 2 * k + 2;
+    }
+
+    /**
+     * Get the weight moved from the far end of a smooth edge to the
+     * vertex for the edge rule in a crease or corner sector. This is
+     * 3/8 - &gamma; for the &gamma; = 3/8 - cos(&theta; / k) / 4 of
+     * Biermann et al, and is 0 for the regular case where
+     * &theta; / k = &pi; / 2.
+     *
+     * @param k The number of faces in the sector
+     * @param theta The angle of the sector
+     * @return The extra weight of the tagged vertex
+     */
+    static double edgeOffset(int k, double theta)
+    {
+        return 0.25 * Math.cos(theta / k);
+    }
+
+    /**
+     * Build the one level subdivision matrix of a sector.
+     *
+     * @param type The type of sector
+     * @param k The number of faces in the sector
+     * @param theta The angle of the sector. Ignored for interior sectors
+     * @return The matrix, indexed [child point][parent point]
+     */
+    static double[][] subdivisionMatrix(int type, int k, double theta)
+    {
+        int n = ringSize(type, k);
+        int num_edges = (type == INTERIOR) ? k : k + 1;
+        double[][] s = new double[n][n];
+
+        switch(type)
+        {
+            case INTERIOR:
+                double w_n = 1.0 / (k * k);
+
+                s[0][0] = (k - 2.0) / k;
+
+                for(int i = 0; i < k; i++)
+                {
+                    int f = 1 + num_edges + i;
+
+                    // The edge neighbour plus a quarter of each face point
+                    s[0][1 + i] += w_n;
+                    s[0][0] += 0.25 * w_n;
+                    s[0][1 + i] += 0.25 * w_n;
+                    s[0][1 + (i + 1) % k] += 0.25 * w_n;
+                    s[0][f] += 0.25 * w_n;
+                }
+                break;
+
+            case CREASE:
+                s[0][0] = 0.75;
+                s[0][1] = 0.125;
+                s[0][1 + k] = 0.125;
+                break;
+
+            case CORNER:
+                s[0][0] = 1;
+                break;
+        }
+
+        double offset = (type == INTERIOR) ? 0 : edgeOffset(k, theta);
+
+        for(int i = 0; i < num_edges; i++)
+        {
+            int row = 1 + i;
+
+            if(type != INTERIOR && (i == 0 || i == k))
+            {
+                s[row][0] = 0.5;
+                s[row][row] = 0.5;
+                continue;
+            }
+
+            int e_prev = 1 + (i + num_edges - 1) % num_edges;
+            int e_next = 1 + (i + 1) % num_edges;
+            int f_prev = 1 + num_edges + (i + k - 1) % k;
+            int f_next = 1 + num_edges + i;
+
+            s[row][0] += 0.375 + offset;
+            s[row][row] += 0.375 - offset;
+            s[row][e_prev] += 0.0625;
+            s[row][e_next] += 0.0625;
+            s[row][f_prev] += 0.0625;
+            s[row][f_next] += 0.0625;
+        }
+
+        for(int i = 0; i < k; i++)
+        {
+            int row = 1 + num_edges + i;
+
+            s[row][0] += 0.25;
+            s[row][1 + i] += 0.25;
+            s[row][1 + (i + 1) % num_edges] += 0.25;
+            s[row][row] += 0.25;
+        }
+
+        return s;
+    }
+
+    /**
+     * Get the subdominant eigenvalue of a sector, which scales the tangent
+     * plane from one level to the next.
+     *
+     * @param type The type of sector
+     * @param k The number of faces in the sector
+     * @return The eigenvalue
+     */
+    static double subdominantEigenvalue(int type, int k)
+    {
+        if(type != INTERIOR)
+            return 0.5;
+
+        double c = Math.cos(2 * Math.PI / k);
+
+        return (5 + c + Math.cos(Math.PI / k) * Math.sqrt(2 * (9 + c))) / 16;
+    }
+
+    /**
+     * Build the matrix that projects the points of a child sector onto the
+     * eigenvectors for the limit position and tangent plane. The matrix is
+     * the identity where those eigenvectors do not span a plane, such as a
+     * crease sector of a single face or a corner sector whose angle is a
+     * multiple of &pi;, so flattening has no effect there.
+     *
+     * @param type The type of sector
+     * @param k The number of faces in the sector
+     * @param theta The angle of the sector. Ignored for interior sectors
+     * @return The n by n matrix, flattened by rows
+     */
+    static float[] projectionMatrix(int type, int k, double theta)
+    {
+        int n = ringSize(type, k);
+        double[][] s = subdivisionMatrix(type, k, theta);
+        double lambda = subdominantEigenvalue(type, k);
+
+        double[][] x_one = nullSpace(shift(s, 1, false));
+        double[][] l_one = nullSpace(shift(s, 1, true));
+        double[][] x_sub = nullSpace(shift(s, lambda, false));
+        double[][] l_sub = nullSpace(shift(s, lambda, true));
+
+        int d = x_one.length + x_sub.length;
+        float[] ret_val = new float[n * n];
+        double[][] inv = null;
+
+        // X holds the right eigenvectors as rows and L the left ones
+        double[][] x = new double[d][];
+        double[][] l = new double[d][];
+
+        if(d >= 3 && l_one.length + l_sub.length == d)
+        {
+            System.arraycopy(x_one, 0, x, 0, x_one.length);
+            System.arraycopy(x_sub, 0, x, x_one.length, x_sub.length);
+            System.arraycopy(l_one, 0, l, 0, l_one.length);
+            System.arraycopy(l_sub, 0, l, l_one.length, l_sub.length);
+
+            double[][] lx = new double[d][d];
+
+            for(int i = 0; i < d; i++)
+                for(int j = 0; j < d; j++)
+                    lx[i][j] = dot(l[i], x[j]);
+
+            inv = invert(lx);
+        }
+
+        if(inv == null)
+        {
+            for(int i = 0; i < n; i++)
+                ret_val[i * n + i] = 1;
+
+            return ret_val;
+        }
+
+        // P = X^T (L X^T)^-1 L
+        for(int r = 0; r < n; r++)
+        {
+            for(int c = 0; c < n; c++)
+            {
+                double sum = 0;
+
+                for(int i = 0; i < d; i++)
+                    for(int j = 0; j < d; j++)
+                        sum += x[i][r] * inv[i][j] * l[j][c];
+
+                ret_val[r * n + c] = (float)sum;
+            }
+        }
+
+        return ret_val;
+    }
+
+    /**
+     * Build S - mu I or its transpose.
+     *
+     * @param s The matrix to shift
+     * @param mu The amount to take off the diagonal
+     * @param transpose true to return the transpose
+     * @return A new matrix
+     */
+    private static double[][] shift(double[][] s, double mu, boolean transpose)
+    {
+        int n = s.length;
+        double[][] ret_val = new double[n][n];
+
+        for(int i = 0; i < n; i++)
+        {
+            for(int j = 0; j < n; j++)
+                ret_val[i][j] = transpose ? s[j][i] : s[i][j];
+
+            ret_val[i][i] -= mu;
+        }
+
+        return ret_val;
+    }
+
+    /**
+     * Find a basis for the null space of a square matrix by reducing it to
+     * row echelon form with partial pivoting. The matrix is overwritten.
+     *
+     * @param a The matrix to use
+     * @return The basis vectors, one per row of the result
+     */
+    private static double[][] nullSpace(double[][] a)
+    {
+        int n = a.length;
+        double scale = 0;
+
+        for(int i = 0; i < n; i++)
+            for(int j = 0; j < n; j++)
+                scale = Math.max(scale, Math.abs(a[i][j]));
+
+        double tol = EPSILON * Math.max(scale, 1);
+        int[] pivot_col = new int[n];
+        boolean[] is_pivot = new boolean[n];
+        int rank = 0;
+
+        for(int col = 0; col < n && rank < n; col++)
+        {
+            int best = rank;
+
+            for(int r = rank + 1; r < n; r++)
+            {
+                if(Math.abs(a[r][col]) > Math.abs(a[best][col]))
+                    best = r;
+            }
+
+            if(Math.abs(a[best][col]) <= tol)
+                continue;
+
+            double[] tmp = a[best];
+            a[best] = a[rank];
+            a[rank] = tmp;
+
+            double inv = 1 / a[rank][col];
+
+            for(int j = col; j < n; j++)
+                a[rank][j] *= inv;
+
+            for(int r = 0; r < n; r++)
+            {
+                if(r == rank || a[r][col] == 0)
+                    continue;
+
+                double f = a[r][col];
+
+                for(int j = col; j < n; j++)
+                    a[r][j] -= f * a[rank][j];
+            }
+
+            pivot_col[rank] = col;
+            is_pivot[col] = true;
+            rank++;
+        }
+
+        double[][] ret_val = new double[n - rank][];
+        int found = 0;
+
+        for(int col = 0; col < n; col++)
+        {
+            if(is_pivot[col])
+                continue;
+
+            double[] v = new double[n];
+            v[col] = 1;
+
+            for(int r = 0; r < rank; r++)
+                v[pivot_col[r]] = -a[r][col];
+
+            ret_val[found++] = v;
+        }
+
+        return ret_val;
+    }
+
+    /**
+     * Invert a small square matrix by Gauss-Jordan elimination with partial
+     * pivoting. The matrix is overwritten.
+     *
+     * @param m The matrix to invert
+     * @return The inverse or null if it is singular
+     */
+    private static double[][] invert(double[][] m)
+    {
+        int n = m.length;
+        double[][] ret_val = new double[n][n];
+
+        for(int i = 0; i < n; i++)
+            ret_val[i][i] = 1;
+
+        for(int col = 0; col < n; col++)
+        {
+            int best = col;
+
+            for(int r = col + 1; r < n; r++)
+            {
+                if(Math.abs(m[r][col]) > Math.abs(m[best][col]))
+                    best = r;
+            }
+
+            if(Math.abs(m[best][col]) < EPSILON)
+                return null;
+
+            double[] tmp = m[best];
+            m[best] = m[col];
+            m[col] = tmp;
+
+            tmp = ret_val[best];
+            ret_val[best] = ret_val[col];
+            ret_val[col] = tmp;
+
+            double inv = 1 / m[col][col];
+
+            for(int j = 0; j < n; j++)
+            {
+                m[col][j] *= inv;
+                ret_val[col][j] *= inv;
+            }
+
+            for(int r = 0; r < n; r++)
+            {
+                if(r == col || m[r][col] == 0)
+                    continue;
+
+                double f = m[r][col];
+
+                for(int j = 0; j < n; j++)
+                {
+                    m[r][j] -= f * m[col][j];
+                    ret_val[r][j] -= f * ret_val[col][j];
+                }
+            }
+        }
+
+        return ret_val;
+    }
+
+    /**
+     * Dot product of two vectors of the same length.
+     *
+     * @param a The first vector
+     * @param b The second vector
+     * @return The dot product
+     */
+    private static double dot(double[] a, double[] b)
+    {
+        double ret_val = 0;
+
+        for(int i = 0; i < a.length; i++)
+            ret_val += a[i] * b[i];
+
+        return ret_val;
+    }
+}
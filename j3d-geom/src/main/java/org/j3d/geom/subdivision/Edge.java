@@ -1,29 +0,0 @@
-/*****************************************************************************
- *                        J3D.org Copyright (c) 2001
- *                               Java Source
- *
- * This source is licensed under the GNU LGPL v2.1
- * Please read http://www.gnu.org/copyleft/lgpl.html for more information
- *
- ****************************************************************************/
-
-package org.j3d.geom.subdivision;
-
-// External imports
-// None
-
-// Local imports
-// None
-
-/**
- * Internal representation of an edge data structure.
- * <P>
- *
- * @author Justin Couch
- * @version $Revision: 1.1 $
- */
-class Edge
-{
-    Vertex v1;
-    Vertex v2;
-}
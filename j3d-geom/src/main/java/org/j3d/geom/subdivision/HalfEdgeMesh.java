@@ -0,0 +1,622 @@
+/*
+ * j3d.org Copyright (c) 2001-2015
+ *                                 Java Source
+ *
+ *  This source is licensed under the GNU LGPL v2.1
+ *  Please read docs/LGPL.txt for more information
+ *
+ *  This software comes with the standard NO WARRANTY disclaimer for any
+ *  purpose. Use it at your own risk. If there's a problem you get to fix it.
+ */
+
+package org.j3d.geom.subdivision;
+
+// External imports
+// None
+
+// Local imports
+// None
+
+/**
+ * Compact half-edge representation of a polygon mesh, held entirely in
+ * parallel primitive arrays.
+ * <p>
+ *
+ * The half-edges of each face are stored contiguously and in order, so face
+ * f owns the half-edges from faceStart[f] up to, but not including,
+ * faceStart[f + 1]. That removes the need for explicit next and previous
+ * links, as they are just the neighbouring slots with a wrap at the ends of
+ * the face. Each half-edge stores the vertex it leaves from, the face it
+ * belongs to, the half-edge going the other way along the same edge (-1 on
+ * a boundary) and the index of the undirected edge it is part of.
+ * <p>
+ *
+ * Every undirected edge keeps one representative half-edge and a tag from
+ * {@link SubdivisionTypes}. Every vertex keeps a position, a tag and one
+ * outgoing half-edge. For vertices on a boundary the outgoing half-edge is
+ * always the one that has no twin, so that walking the one-ring from it
+ * visits every face around the vertex.
+ * <p>
+ *
+ * The faces around a vertex are split into sectors by its sharp edges,
+ * which are the boundary edges and creases. A vertex with fewer than two
+ * sharp edges has a single sector covering the whole ring. A half-edge may
+ * carry the index of a sector definition from the generator, which applies
+ * to the vertex it leaves from and is set on every half-edge of the fan.
+ * <p>
+ *
+ * <b>Quad Split Layout</b>
+ * <p>
+ * Refining a mesh by splitting every n-sided face into n quads, as used by
+ * Catmull-Clark, produces a child mesh whose layout is fixed entirely by
+ * the parent. With nv vertices, nf faces, ne edges and nh half-edges in the
+ * parent:
+ * <ul>
+ * <li>Child vertex v is the updated parent vertex v, nv + f is the point
+ *     for face f and nv + nf + e is the point for edge e.</li>
+ * <li>Child face h is the quad at the corner where parent half-edge h
+ *     leaves its vertex, and its half-edges are 4h to 4h + 3. Half-edge
+ *     4h leaves the same vertex and keeps the sector of h.</li>
+ * <li>Child edges 2e and 2e + 1 are the two halves of parent edge e and
+ *     child edge 2ne + h joins the point of the edge of h to the face
+ *     point.</li>
+ * </ul>
+ * Since every slot of the child is owned by exactly one parent face, the
+ * topology of the child can be filled in by any number of threads working
+ * on separate face ranges with no locking.
+ */
+class HalfEdgeMesh
+{
+    /** Marker for a half-edge with no twin */
+    static final int NO_TWIN = -1;
+
+    /** Number of vertices in use */
+    int numVertex;
+
+    /** Number of faces in use */
+    int numFaces;
+
+    /** Number of half-edges in use */
+    int numHalfEdges;
+
+    /** Number of undirected edges in use */
+    int numEdges;
+
+    /** Vertex positions, flat [x, y, z] per vertex */
+    float[] positions;
+
+    /** Tag per vertex from SubdivisionTypes */
+    int[] vertexTags;
+
+    /** An outgoing half-edge per vertex. The boundary one if there is one */
+    int[] vertexHalfEdge;
+
+    /** First half-edge of each face, plus an end marker */
+    int[] faceStart;
+
+    /** The vertex each half-edge leaves from */
+    int[] halfEdgeVertex;
+
+    /** The face each half-edge belongs to */
+    int[] halfEdgeFace;
+
+    /** The half-edge running the other way, or NO_TWIN */
+    int[] halfEdgeTwin;
+
+    /** The undirected edge each half-edge is part of */
+    int[] halfEdgeEdge;
+
+    /** Representative half-edge of each undirected edge */
+    int[] edgeHalfEdge;
+
+    /** Tag per undirected edge from SubdivisionTypes */
+    int[] edgeTags;
+
+    /** The sector definition of each half-edge's vertex, or -1 for none */
+    int[] halfEdgeSector;
+
+    /**
+     * Construct a new, empty mesh. Arrays are allocated on the first call to
+     * {@link #ensureCapacity}.
+     */
+    HalfEdgeMesh()
+    {
+        positions = new float[0];
+        vertexTags = new int[0];
+        vertexHalfEdge = new int[0];
+        faceStart = new int[1];
+        halfEdgeVertex = new int[0];
+        halfEdgeFace = new int[0];
+        halfEdgeTwin = new int[0];
+        halfEdgeEdge = new int[0];
+        halfEdgeSector = new int[0];
+        edgeHalfEdge = new int[0];
+        edgeTags = new int[0];
+    }
+
+    /**
+     * Build the mesh from an indexed polygon list. Edges are matched up by
+     * their vertex pairs. A pair that is used by more than two faces keeps
+     * the first two as twins and treats the rest as boundary edges. An edge
+     * is tagged as a crease when both of its vertices are tagged as crease
+     * or corner vertices.
+     *
+     * @param coordinates Flat array of vertex positions
+     * @param numCoords The number of vertices to copy from the coordinates
+     * @param faceIndexes Vertex indices of all the faces, one after another
+     * @param faceIndexCounts The number of vertices in each face
+     * @param numFaces The number of faces to read
+     * @param vertexFlags Tag per vertex from SubdivisionTypes, or null for
+     *    all smooth
+     * @throws IllegalArgumentException A face has fewer than 3 vertices or
+     *    an index is out of range
+     */
+    void build(float[] coordinates,
+               int numCoords,
+               int[] faceIndexes,
+               int[] faceIndexCounts,
+               int numFaces,
+               int[] vertexFlags)
+    {
+        int num_half = 0;
+
+        for(int i = 0; i < numFaces; i++)
+        {
+            if(faceIndexCounts[i] < 3)
+                throw new IllegalArgumentException("Face " + i +
+                                                   " has less than 3 vertices");
+
+            num_half += faceIndexCounts[i];
+        }
+
+        if(faceIndexes.length < num_half)
+            throw new IllegalArgumentException(
+                "Face indexes shorter than the face index counts require");
+
+        ensureCapacity(numCoords, numFaces, num_half, num_half);
+
+        this.numVertex = numCoords;
+        this.numFaces = numFaces;
+        this.numHalfEdges = num_half;
+
+        System.arraycopy(coordinates, 0, positions, 0, numCoords * 3);
+
+        for(int v = 0; v < numCoords; v++)
+        {
+            vertexTags[v] = (vertexFlags == null) ?
+                            SubdivisionTypes.SMOOTH_VERTEX :
+                            vertexFlags[v];
+            vertexHalfEdge[v] = -1;
+        }
+
+        int h = 0;
+
+        for(int f = 0; f < numFaces; f++)
+        {
+            faceStart[f] = h;
+
+            for(int j = 0; j < faceIndexCounts[f]; j++)
+            {
+                int v = faceIndexes[h];
+
+                if(v < 0 || v >= numCoords)
+                    throw new IllegalArgumentException("Face " + f +
+                                                       " index out of range");
+
+                halfEdgeVertex[h] = v;
+                halfEdgeFace[h] = f;
+                halfEdgeTwin[h] = NO_TWIN;
+                halfEdgeSector[h] = -1;
+                h++;
+            }
+        }
+
+        faceStart[numFaces] = h;
+
+        matchEdges();
+
+        // Pick the outgoing half-edges, preferring ones on the boundary
+        for(h = 0; h < num_half; h++)
+        {
+            int v = halfEdgeVertex[h];
+
+            if(vertexHalfEdge[v] == -1 || halfEdgeTwin[h] == NO_TWIN)
+                vertexHalfEdge[v] = h;
+        }
+
+        for(int e = 0; e < numEdges; e++)
+        {
+            int r = edgeHalfEdge[e];
+            int t0 = vertexTags[halfEdgeVertex[r]];
+            int t1 = vertexTags[halfEdgeVertex[next(r)]];
+
+            boolean crease = (t0 == SubdivisionTypes.CREASE_VERTEX ||
+                              t0 == SubdivisionTypes.CORNER_VERTEX) &&
+                             (t1 == SubdivisionTypes.CREASE_VERTEX ||
+                              t1 == SubdivisionTypes.CORNER_VERTEX);
+
+            edgeTags[e] = crease ?
+                          SubdivisionTypes.CREASE_EDGE :
+                          SubdivisionTypes.UNTAGGED_EDGE;
+        }
+    }
+
+    /**
+     * Pair up the half-edges that run in opposite directions between the
+     * same two vertices and number the undirected edges. Uses an open
+     * addressed hash of the directed vertex pairs that have not yet found
+     * their twin.
+     */
+    private void matchEdges()
+    {
+        int table_size = 16;
+
+        while(table_size < numHalfEdges * 2)
+            table_size <<= 1;
+
+        int mask = table_size - 1;
+        long[] keys = new long[table_size];
+        int[] values = new int[table_size];
+
+        for(int i = 0; i < table_size; i++)
+            values[i] = -1;
+
+        numEdges = 0;
+
+        for(int h = 0; h < numHalfEdges; h++)
+        {
+            int a = halfEdgeVertex[h];
+            int b = halfEdgeVertex[next(h)];
+
+            // Look for an unpaired half-edge going the other way
+            long key = ((long)b << 32) | (a & 0xFFFFFFFFL);
+            int slot = hashPair(b, a) & mask;
+            int twin = NO_TWIN;
+
+            while(values[slot] != -1)
+            {
+                int other = values[slot];
+
+                if(keys[slot] == key && halfEdgeTwin[other] == NO_TWIN)
+                {
+                    twin = other;
+                    break;
+                }
+
+                slot = (slot + 1) & mask;
+            }
+
+            if(twin != NO_TWIN)
+            {
+                halfEdgeTwin[h] = twin;
+                halfEdgeTwin[twin] = h;
+                halfEdgeEdge[h] = halfEdgeEdge[twin];
+                continue;
+            }
+
+            halfEdgeEdge[h] = numEdges;
+            edgeHalfEdge[numEdges] = h;
+            numEdges++;
+
+            slot = hashPair(a, b) & mask;
+
+            while(values[slot] != -1)
+                slot = (slot + 1) & mask;
+
+            keys[slot] = ((long)a << 32) | (b & 0xFFFFFFFFL);
+            values[slot] = h;
+        }
+    }
+
+    /**
+     * Hash a directed pair of vertex indices.
+     *
+     * @param a The start vertex
+     * @param b The end vertex
+     * @return A well mixed hash of the two
+     */
+    private static int hashPair(int a, int b)
+    {
+        int h = a * 0x9E3779B1 + b;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+
+        return h;
+    }
+
+    /**
+     * Make sure the arrays are large enough to hold a mesh of the given
+     * size. Existing contents are not preserved when an array has to grow.
+     *
+     * @param nv The number of vertices needed
+     * @param nf The number of faces needed
+     * @param nh The number of half-edges needed
+     * @param ne The number of edges needed
+     */
+    void ensureCapacity(int nv, int nf, int nh, int ne)
+    {
+        if(positions.length < nv * 3)
+        {
+            positions = new float[nv * 3];
+            vertexTags = new int[nv];
+            vertexHalfEdge = new int[nv];
+        }
+
+        if(faceStart.length < nf + 1)
+            faceStart = new int[nf + 1];
+
+        if(halfEdgeVertex.length < nh)
+        {
+            halfEdgeVertex = new int[nh];
+            halfEdgeFace = new int[nh];
+            halfEdgeTwin = new int[nh];
+            halfEdgeEdge = new int[nh];
+            halfEdgeSector = new int[nh];
+        }
+
+        if(edgeHalfEdge.length < ne)
+        {
+            edgeHalfEdge = new int[ne];
+            edgeTags = new int[ne];
+        }
+    }
+
+    /**
+     * Get the half-edge following the given one around its face.
+     *
+     * @param h The half-edge index
+     * @return The next half-edge in the same face
+     */
+    final int next(int h)
+    {
+        int n = h + 1;
+        return (n == faceStart[halfEdgeFace[h] + 1]) ?
+               faceStart[halfEdgeFace[h]] :
+               n;
+    }
+
+    /**
+     * Get the half-edge preceding the given one around its face.
+     *
+     * @param h The half-edge index
+     * @return The previous half-edge in the same face
+     */
+    final int prev(int h)
+    {
+        int f = halfEdgeFace[h];
+        return (h == faceStart[f]) ? faceStart[f + 1] - 1 : h - 1;
+    }
+
+    /**
+     * Check to see if the edge of a half-edge is on the boundary or tagged
+     * as a crease.
+     *
+     * @param h The half-edge to check
+     * @return true if the edge should use the sharp rules
+     */
+    final boolean isSharp(int h)
+    {
+        return halfEdgeTwin[h] == NO_TWIN ||
+               edgeTags[halfEdgeEdge[h]] == SubdivisionTypes.CREASE_EDGE;
+    }
+
+    /**
+     * Count the boundary and crease edges around a vertex.
+     *
+     * @param v The index of the vertex
+     * @return The number of sharp edges, 0 for an unused vertex
+     */
+    int countSharpEdges(int v)
+    {
+        int h0 = vertexHalfEdge[v];
+        int ret_val = 0;
+
+        if(h0 == -1)
+            return 0;
+
+        int h = h0;
+        int steps = 0;
+
+        do
+        {
+            if(isSharp(h))
+                ret_val++;
+
+            int hp = prev(h);
+            h = halfEdgeTwin[hp];
+
+            if(h == NO_TWIN)
+            {
+                // The last, incoming, edge is on the boundary
+                ret_val++;
+                break;
+            }
+        }
+        while(h != h0 && ++steps < numHalfEdges);
+
+        return ret_val;
+    }
+
+    /**
+     * Find the first half-edge of the sector that an outgoing half-edge is
+     * part of. Sectors run in the same direction as the one-ring walks, so
+     * the edge of the first half-edge is sharp. When the vertex has fewer
+     * than two sharp edges the sector is the whole ring and the given
+     * half-edge is returned.
+     *
+     * @param h An outgoing half-edge of the vertex
+     * @param open true if the vertex has two or more sharp edges
+     * @return The first half-edge of the sector
+     */
+    int sectorStart(int h, boolean open)
+    {
+        if(!open)
+            return h;
+
+        int ret_val = h;
+        int steps = 0;
+
+        while(!isSharp(ret_val) && steps++ < numHalfEdges)
+            ret_val = next(halfEdgeTwin[ret_val]);
+
+        return ret_val;
+    }
+
+    /**
+     * Step to the next outgoing half-edge of a sector.
+     *
+     * @param h The current half-edge of the sector
+     * @param start The first half-edge of the sector
+     * @param open true if the vertex has two or more sharp edges
+     * @return The next half-edge or -1 if h is the last one
+     */
+    int sectorNext(int h, int start, boolean open)
+    {
+        int hp = prev(h);
+
+        if(open && isSharp(hp))
+            return -1;
+
+        int ret_val = halfEdgeTwin[hp];
+
+        return (ret_val == NO_TWIN || ret_val == start) ? -1 : ret_val;
+    }
+
+    /**
+     * Check to see if every face of the mesh is a quad.
+     *
+     * @return true if all faces have exactly 4 vertices
+     */
+    boolean isAllQuads()
+    {
+        return numHalfEdges == numFaces * 4;
+    }
+
+    /**
+     * Set the size of this mesh to that of a one level quad split of the
+     * parent, growing the arrays as needed.
+     *
+     * @param parent The mesh that is about to be split into this one
+     */
+    void prepareQuadSplit(HalfEdgeMesh parent)
+    {
+        int nv = parent.numVertex + parent.numFaces + parent.numEdges;
+        int nf = parent.numHalfEdges;
+        int nh = parent.numHalfEdges * 4;
+        int ne = parent.numEdges * 2 + parent.numHalfEdges;
+
+        ensureCapacity(nv, nf, nh, ne);
+
+        numVertex = nv;
+        numFaces = nf;
+        numHalfEdges = nh;
+        numEdges = ne;
+
+        faceStart[nf] = nh;
+    }
+
+    /**
+     * Fill in the topology of this mesh for a range of faces of the parent,
+     * using the quad split layout described in the class documentation. The
+     * vertex positions are left for the subdivision scheme to fill in.
+     * {@link #prepareQuadSplit(HalfEdgeMesh)} must have been called first.
+     *
+     * @param parent The mesh being split
+     * @param start The first parent face, inclusive
+     * @param end The last parent face, exclusive
+     */
+    void splitQuadTopology(HalfEdgeMesh parent, int start, int end)
+    {
+        int p_nv = parent.numVertex;
+        int p_nf = parent.numFaces;
+        int p_ne = parent.numEdges;
+        int[] p_vtx = parent.halfEdgeVertex;
+        int[] p_twin = parent.halfEdgeTwin;
+        int[] p_edge = parent.halfEdgeEdge;
+        int[] p_face_start = parent.faceStart;
+
+        for(int f = start; f < end; f++)
+        {
+            int first = p_face_start[f];
+            int last = p_face_start[f + 1] - 1;
+            int face_pt = p_nv + f;
+
+            // The face point is a smooth vertex inside the face
+            vertexTags[face_pt] = SubdivisionTypes.SMOOTH_VERTEX;
+            vertexHalfEdge[face_pt] = first * 4 + 2;
+
+            for(int h = first; h <= last; h++)
+            {
+                int hn = (h == last) ? first : h + 1;
+                int hp = (h == first) ? last : h - 1;
+                int v = p_vtx[h];
+                int e = p_edge[h];
+                int ep = p_edge[hp];
+                int rep = parent.edgeHalfEdge[e];
+                int rep_p = parent.edgeHalfEdge[ep];
+                int c = h * 4;
+
+                faceStart[h] = c;
+
+                halfEdgeFace[c] = h;
+                halfEdgeFace[c + 1] = h;
+                halfEdgeFace[c + 2] = h;
+                halfEdgeFace[c + 3] = h;
+
+                halfEdgeVertex[c] = v;
+                halfEdgeVertex[c + 1] = p_nv + p_nf + e;
+                halfEdgeVertex[c + 2] = face_pt;
+                halfEdgeVertex[c + 3] = p_nv + p_nf + ep;
+
+                halfEdgeSector[c] = parent.halfEdgeSector[h];
+                halfEdgeSector[c + 1] = -1;
+                halfEdgeSector[c + 2] = -1;
+                halfEdgeSector[c + 3] = -1;
+
+                int t = p_twin[h];
+                halfEdgeTwin[c] = (t == NO_TWIN) ?
+                                  NO_TWIN :
+                                  parent.next(t) * 4 + 3;
+                halfEdgeTwin[c + 1] = hn * 4 + 2;
+                halfEdgeTwin[c + 2] = hp * 4 + 1;
+
+                t = p_twin[hp];
+                halfEdgeTwin[c + 3] = (t == NO_TWIN) ? NO_TWIN : t * 4;
+
+                halfEdgeEdge[c] = e * 2 + ((h == rep) ? 0 : 1);
+                halfEdgeEdge[c + 1] = p_ne * 2 + h;
+                halfEdgeEdge[c + 2] = p_ne * 2 + hp;
+                halfEdgeEdge[c + 3] = ep * 2 + ((hp == rep_p) ? 1 : 0);
+
+                edgeHalfEdge[p_ne * 2 + h] = c + 1;
+                edgeTags[p_ne * 2 + h] = SubdivisionTypes.UNTAGGED_EDGE;
+
+                // The slots shared with neighbouring faces are written only
+                // by the face holding the parent's representative.
+                if(h == rep)
+                {
+                    int tag = parent.edgeTags[e];
+                    int edge_pt = p_nv + p_nf + e;
+
+                    edgeHalfEdge[e * 2] = c;
+                    edgeHalfEdge[e * 2 + 1] = hn * 4 + 3;
+                    edgeTags[e * 2] = tag;
+                    edgeTags[e * 2 + 1] = tag;
+
+                    vertexHalfEdge[edge_pt] = hn * 4 + 3;
+                    vertexTags[edge_pt] =
+                        (tag == SubdivisionTypes.CREASE_EDGE) ?
+                        SubdivisionTypes.CREASE_VERTEX :
+                        SubdivisionTypes.SMOOTH_VERTEX;
+                }
+
+                if(h == parent.vertexHalfEdge[v])
+                {
+                    vertexHalfEdge[v] = c;
+                    vertexTags[v] = parent.vertexTags[v];
+                }
+            }
+        }
+    }
+}
@@ -10,51 +10,209 @@
 package org.j3d.geom.subdivision;
 
 // External imports
-// none
+import java.util.concurrent.ForkJoinPool;
 
 // Local imports
+import org.j3d.util.ForkJoinUtils;
 import org.j3d.util.ObjectArray;
+import org.j3d.util.RangeProcessor;
 
 import org.j3d.geom.GeometryData;
-import org.j3d.geom.GeometryGenerator;
 import org.j3d.geom.InvalidArraySizeException;
 import org.j3d.geom.UnsupportedTypeException;
 
 /**
- * Base geometry generator defintion for non-adaptive subdivision-based
- * patches that take arbitrary polygons as the input.
+ * Base geometry generator defintion for subdivision-based patches that take
+ * arbitrary polygons as the input.
  * <P>
  *
  * This base class is suitable for all schemes that can work with arbitrary
- * polygons as input.
+ * polygons as input and that split every n-sided face into n quads at each
+ * level. The control mesh and every level generated from it are held in a
+ * compact half-edge structure made of primitive arrays, so no objects are
+ * created per face, edge or vertex. The arrays for the levels are kept and
+ * reused from one regeneration to the next. Derived classes supply the rules
+ * for the positions of the new face, edge and vertex points, which are run
+ * in parallel over ranges of the parent mesh.
+ * <p>
  *
+ * The supported output types are triangles, quads and their indexed forms.
+ * Triangle output fans each face from its first vertex. Quad output
+ * requires every face of the final mesh to be a quad, which is always true
+ * once at least one level of subdivision has been applied. Smooth per-vertex
+ * normals may be requested. Texture coordinates are not generated.
+ * <p>
+ *
+ * <b>Stencil Mode</b>
+ * <p>
+ * For control meshes that keep the same topology but have their points
+ * moved every frame, such as skinned characters, stencil mode factors the
+ * whole subdivision into a {@link SubdivisionStencilTable}. The table is
+ * built once for each topology and level. After that, new positions given
+ * to {@link #setControlPoints(float[])} are turned into the output with a
+ * single parallel sparse matrix-vector product instead of running all of
+ * the levels again.
+ * <p>
+ *
+ * <b>Sectors</b>
+ * <p>
+ * The fan of faces around a vertex between two of its sharp edges, or all
+ * of them for a smooth vertex, is a sector. Sectors added with
+ * {@link #addSector(int, int, int, float, float)} give the shape of a
+ * corner through its angle, and a flatness that pulls the surface around
+ * the vertex towards its tangent plane, following Biermann, Levin and
+ * Zorin. The rules touching a sector are applied in a serial pass after the
+ * parallel ones, and are part of the stencil tables as well.
+ * <p>
+ *
+ * <b>Limit Projection</b>
+ * <p>
+ * The vertices of the final level may optionally be pushed onto the limit
+ * surface using the scheme's limit rules. The projection is exact for quad
+ * meshes, so it should be used with at least one level of subdivision when
+ * the control mesh contains other polygons. Points in the ring of a vertex
+ * with a flattened sector only approach the limit surface, as the limit
+ * rules do not include the flatness.
+ * <p>
+ *
+ * <b>Adaptive Mode</b>
+ * <p>
+ * Uniform subdivision multiplies the face count by four at every level, even
+ * where the surface is flat. In adaptive mode the number of subdivisions is
+ * instead the deepest level allowed, and faces are only refined around
+ * extraordinary vertices, creases and corners, inside the regions added with
+ * {@link #addRefinementRegion(float[], float[], int)} or where they are too
+ * far from the limit surface. That error is measured in object space, or in
+ * pixels once a viewpoint is set. The default tolerance of zero refines
+ * everything except flat areas. The output is always a crack free triangle
+ * mesh on the limit surface, so quads cannot be requested and the stencil
+ * mode and limit projection settings are not used.
  *
  * @author Justin Couch
  * @version $Revision: 1.1 $
  */
 public abstract class PolygonSubdivisionGenerator extends SubdivisionGenerator
 {
-    /** Flag to say if edge structures must also be generated */
-    private boolean needsEdges;
+    /**
+     * Faces, edges or vertices per piece when a pass is split over a pool.
+     * The rules only touch a ring of neighbours, so small pieces do not
+     * cover their own scheduling cost.
+     */
+    private static final int MIN_CHUNK = 512;
+
+    /** Pass that builds the child topology and face points */
+    private static final int FACE_PASS = 0;
+
+    /** Pass that calculates the edge points */
+    private static final int EDGE_PASS = 1;
 
-    /** List of top-level faces that describe this control mesh */
+    /** Pass that calculates the updated vertex positions */
+    private static final int VERTEX_PASS = 2;
+
+    /** Pass that calculates the limit positions of the output vertices */
+    private static final int LIMIT_PASS = 3;
+
+    /** Pass that calculates the output vertex normals */
+    private static final int NORMAL_PASS = 4;
+
+    /**
+     * List of top-level faces that describe this control mesh.
+     *
+     * @deprecated The control mesh is held in a half-edge structure and
+     *    this list is always empty
+     */
+    @Deprecated
     protected ObjectArray faces;
 
+    /** The control mesh as set by the user */
+    private HalfEdgeMesh controlMesh;
+
+    /** The two meshes that the levels alternate between */
+    private HalfEdgeMesh[] workMeshes;
+
+    /** The mesh at the final level of subdivision */
+    private HalfEdgeMesh outputMesh;
+
+    /** Working array for the normals of the output mesh vertices */
+    private float[] vertexNormals;
+
+    /** Working array for the limit positions of the output mesh vertices */
+    private float[] limitPositions;
+
+    /** The positions of the output vertices, either limit or level ones */
+    private float[] outputPositions;
+
+    /** True if the output is generated through a stencil table */
+    private boolean stencilMode;
+
+    /** True if the output vertices are projected onto the limit surface */
+    private boolean limitProjection;
+
+    /** The stencil table for the current topology, if in stencil mode */
+    private SubdivisionStencilTable stencilTable;
+
+    /** Flag indicating only the control point positions have changed */
+    private boolean pointsChanged;
+
+    /** True if only the faces that need it are refined */
+    private boolean adaptive;
+
+    /** The refinement used in adaptive mode */
+    private AdaptiveRefinement adaptiveRefinement;
+
+    /** The tag of each sector slot, or -1 if the slot is free */
+    private int[] sectorTags;
+
+    /** The corner angle of each sector slot */
+    private float[] sectorTheta;
+
+    /** The flatness of each sector slot */
+    private float[] sectorFlatness;
+
+    /** The number of sector slots that have been handed out */
+    private int numSectors;
+
+    /** Control half-edges that carry a sector with some flatness */
+    private int[] flatHalfEdges;
+
+    /** The number of valid entries in flatHalfEdges */
+    private int numFlatHalfEdges;
+
     /**
      * Construct a new generator with no control mesh set. The levelMult field
-     * describes the multiplier of how many vertices are created at each level
-     * from the previous one. For triangle-based schemes, this value is normally
-     * 3. The edge flag indicate whether this base class needs to generate edge
-     * structures as well as the face and vertex information normally created.
+     * described the multiplier of how many vertices are created at each level
+     * from the previous one, and the edge flag whether edge structures were
+     * needed. Every level splits each face into quads and the half-edge
+     * structure always has its edges, so neither is used.
      *
-     * @param levelMult The mutliplier of vertices per level
+     * @param levelMult Ignored
+     * @param edge Ignored
+     * @deprecated Use {@link #PolygonSubdivisionGenerator()}
      */
+    @Deprecated
     protected PolygonSubdivisionGenerator(int levelMult, boolean edge)
     {
-        super(levelMult);
+        this();
+    }
 
-        needsEdges = edge;
+    /**
+     * Construct a new generator with no control mesh set.
+     */
+    @SuppressWarnings("deprecation")
+    protected PolygonSubdivisionGenerator()
+    {
         faces = new ObjectArray();
+        controlMesh = new HalfEdgeMesh();
+        workMeshes = new HalfEdgeMesh[] { new HalfEdgeMesh(), new HalfEdgeMesh() };
+        outputMesh = controlMesh;
+        outputPositions = controlMesh.positions;
+        vertexNormals = new float[0];
+        limitPositions = new float[0];
+        adaptiveRefinement = new AdaptiveRefinement(this);
+        sectorTags = new int[0];
+        sectorTheta = new float[0];
+        sectorFlatness = new float[0];
+        flatHalfEdges = new int[0];
     }
 
     /**
@@ -65,6 +223,11 @@ public abstract class PolygonSubdivisionGenerator extends SubdivisionGenerator
      * <p>
      * If the faceIndexCounts totals are greater than the length of faceIndexes,
      * an exception is generated.
+     * <p>
+     * Edges are found by matching up the vertex pairs of neighbouring faces,
+     * so the faces must all be wound the same way. An edge where both of the
+     * vertices are flagged as crease or corner vertices is treated as a
+     * crease. Any sectors of the previous mesh are removed.
      *
      * @param coordinates The coordinate values to put into the calculation
      * @param faceIndexes The list of indexes used by the faces
@@ -74,7 +237,10 @@ public abstract class PolygonSubdivisionGenerator extends SubdivisionGenerator
      *     array
      * @param vertexFlags Array the same length as the coordinates, that contains
      *     a flag for every vertex describing it's disposition. The valid values
-     *     are described in {@link SubdivisionTypes}.
+     *     are described in {@link SubdivisionTypes}. May be null for all
+     *     smooth vertices
+     * @throws IllegalArgumentException A face has less than 3 vertices or
+     *     references a vertex that is not in the coordinates
      */
     public void setControlMesh(float[] coordinates,
                                int[] faceIndexes,
@@ -82,31 +248,198 @@ public abstract class PolygonSubdivisionGenerator extends SubdivisionGenerator
                                int numFaces,
                                int[] vertexFlags)
     {
-        int face_cnt = 0;
+        controlMesh.build(coordinates,
+                          coordinates.length / 3,
+                          faceIndexes,
+                          faceIndexCounts,
+                          numFaces,
+                          vertexFlags);
 
-        for(int i = 0; i < numFaces; i++)
-        {
-            Face f = new Face();
-            int num_vtx = faceIndexCounts[i];
-            f.numVertex = num_vtx;
-            f.vertices = new Vertex[num_vtx];
+        numSectors = 0;
+        stencilTable = null;
+        meshChanged = true;
+    }
 
-            for(int j = 0; j < num_vtx; j++)
-            {
-                Vertex v = new Vertex(totalSubdivisions, 0);
-                int idx = faceIndexes[face_cnt] * 3;
+    /**
+     * Move the points of the current control mesh without changing its
+     * topology. In stencil mode the output is then recalculated from the
+     * existing stencil table rather than subdividing again.
+     *
+     * @param coordinates Flat array of the new positions, in the same order
+     *    as the coordinates given to setControlMesh
+     * @throws IllegalArgumentException The array is too small for the
+     *    number of control points
+     */
+    public void setControlPoints(float[] coordinates)
+    {
+        int num_vals = controlMesh.numVertex * 3;
 
-                v.position[0][0] = coordinates[idx++];
-                v.position[0][1] = coordinates[idx++];
-                v.position[0][2] = coordinates[idx];
+        if(coordinates.length < num_vals)
+            throw new IllegalArgumentException(
+                "Coordinate array smaller than the control mesh");
 
-                f.vertices[i] = v;
+        System.arraycopy(coordinates, 0, controlMesh.positions, 0, num_vals);
+        pointsChanged = true;
+    }
 
-                face_cnt++;
-            }
+    /**
+     * Turn stencil mode on or off. When turned on, the stencil table is
+     * built on the next generation.
+     *
+     * @param enable true to generate through a stencil table
+     */
+    public void setStencilMode(boolean enable)
+    {
+        stencilMode = enable;
+
+        if(!enable)
+            stencilTable = null;
+    }
+
+    /**
+     * Check to see if stencil mode is in use.
+     *
+     * @return true if the output is generated through a stencil table
+     */
+    public boolean isStencilMode()
+    {
+        return stencilMode;
+    }
+
+    /**
+     * Set whether the output vertices are projected onto the limit surface.
+     *
+     * @param enable true to output limit positions
+     */
+    public void setLimitProjection(boolean enable)
+    {
+        if(enable != limitProjection)
+        {
+            limitProjection = enable;
+            levelChanged = true;
+        }
+    }
+
+    /**
+     * Check to see if the output vertices are projected onto the limit
+     * surface.
+     *
+     * @return true if the limit positions are output
+     */
+    public boolean isLimitProjection()
+    {
+        return limitProjection;
+    }
+
+    /**
+     * Turn adaptive mode on or off. When on, the number of subdivisions is
+     * the deepest level any face may be refined to.
+     *
+     * @param enable true to only refine the faces that need it
+     */
+    public void setAdaptive(boolean enable)
+    {
+        if(enable != adaptive)
+        {
+            adaptive = enable;
+            levelChanged = true;
         }
     }
 
+    /**
+     * Check to see if adaptive mode is in use.
+     *
+     * @return true if only the faces that need it are refined
+     */
+    public boolean isAdaptive()
+    {
+        return adaptive;
+    }
+
+    /**
+     * Set the largest error allowed before a face is refined in adaptive
+     * mode. Without a viewpoint this is the distance of the face from the
+     * limit surface. With one it is that distance projected to pixels.
+     *
+     * @param tolerance The tolerance to use, zero or greater
+     * @throws IllegalArgumentException The tolerance is negative
+     */
+    public void setErrorTolerance(float tolerance)
+    {
+        if(tolerance < 0)
+            throw new IllegalArgumentException("Negative error tolerance");
+
+        adaptiveRefinement.setErrorTolerance(tolerance);
+        levelChanged = true;
+    }
+
+    /**
+     * Get the largest error allowed before a face is refined in adaptive
+     * mode.
+     *
+     * @return The current tolerance
+     */
+    public float getErrorTolerance()
+    {
+        return adaptiveRefinement.getErrorTolerance();
+    }
+
+    /**
+     * Set the viewpoint that errors are measured from in adaptive mode,
+     * making the error tolerance a number of pixels. The pixel scale is
+     * normally the viewport height divided by 2 tan(fov / 2).
+     *
+     * @param eye The position of the viewer or null for object space errors
+     * @param pixelScale Pixels per unit of size at a distance of one
+     */
+    public void setViewpoint(float[] eye, float pixelScale)
+    {
+        adaptiveRefinement.setViewpoint(eye, pixelScale);
+        levelChanged = true;
+    }
+
+    /**
+     * Add a box that faces are refined inside of in adaptive mode. Any face
+     * that overlaps the box is refined down to at least the given level, as
+     * long as that is no deeper than the number of subdivisions.
+     *
+     * @param min The minimum corner of the box
+     * @param max The maximum corner of the box
+     * @param level The level to refine to
+     * @throws IllegalArgumentException The level is negative
+     */
+    public void addRefinementRegion(float[] min, float[] max, int level)
+    {
+        if(level < 0)
+            throw new IllegalArgumentException("Negative subdivision level");
+
+        adaptiveRefinement.addRegion(min, max, level);
+        levelChanged = true;
+    }
+
+    /**
+     * Remove all of the refinement regions.
+     */
+    public void clearRefinementRegions()
+    {
+        adaptiveRefinement.clearRegions();
+        levelChanged = true;
+    }
+
+    /**
+     * Get the stencil table for the current topology and level, building it
+     * on the shared pool if needed. The stencils are in the same order as
+     * the vertices of the indexed output types.
+     *
+     * @return The current table or null if not in stencil mode
+     */
+    public SubdivisionStencilTable getStencilTable()
+    {
+        regenerateSubdivision();
+
+        return stencilTable;
+    }
+
     /**
      * Set the control mess based on the 2D coordinate array. The array is
      * structured as [vertexIndex][x, y, z].
@@ -119,7 +452,10 @@ public abstract class PolygonSubdivisionGenerator extends SubdivisionGenerator
      *     array
      * @param vertexFlags Array the same length as the coordinates, that contains
      *     a flag for every vertex describing it's disposition. The valid values
-     *     are described in {@link SubdivisionTypes}.
+     *     are described in {@link SubdivisionTypes}. May be null for all
+     *     smooth vertices
+     * @throws IllegalArgumentException A face has less than 3 vertices or
+     *     references a vertex that is not in the coordinates
      */
     public void setControlMesh(float[][] coordinates,
                                int[] faceIndexes,
@@ -127,54 +463,1071 @@ public abstract class PolygonSubdivisionGenerator extends SubdivisionGenerator
                                int numFaces,
                                int[] vertexFlags)
     {
+        float[] flat = new float[coordinates.length * 3];
+
+        for(int i = 0; i < coordinates.length; i++)
+        {
+            flat[i * 3] = coordinates[i][0];
+            flat[i * 3 + 1] = coordinates[i][1];
+            flat[i * 3 + 2] = coordinates[i][2];
+        }
+
+        setControlMesh(flat, faceIndexes, faceIndexCounts, numFaces, vertexFlags);
     }
 
     /**
-     * Add a sector definition to the surface.
+     * Add a sector definition to the surface. The sector is the fan of faces
+     * around the given corner of a face that lies between two sharp edges,
+     * or all the faces around the vertex if it has fewer than two. Any
+     * sector already on that fan is replaced.
+     * <p>
      *
-     * @param face The index of the face to remove the sector from
+     * A convex or concave tag turns the vertex into a corner, with the
+     * surface meeting the sharp edges at the given angle. Such sectors need
+     * at least two boundary or crease edges at the vertex. The flatness
+     * blends the points around the vertex towards the tangent plane at
+     * every level, from 0 for the normal rules to 1 for a fully flat
+     * sector. Reasonable values are 0.5 at concave corners and 0 elsewhere.
+     *
+     * @param face The index of the face to add the sector to
      * @param vertex The vertex number in that face
-     * @throws IllegalArgumentException The vertex number is out of the range of
-     *   valid vertices for this face
+     * @param tag The type of sector from {@link SubdivisionTypes}
+     * @param flatness The flatness of the surface at the corner, [0, 1]
+     * @param theta The angle of the corner, (0, pi) for convex corners
+     *    and (pi, 2pi) for concave ones. Ignored for untagged sectors
+     * @throws IllegalArgumentException The face or vertex is out of range,
+     *    or the tag, flatness or angle is not valid for the sector
      */
     public void addSector(int face,
                           int vertex,
                           int tag,
                           float flatness,
-                          float theta,
-                          float[] normal,
-                          float normalT)
-        throws IllegalArgumentException
+                          float theta)
     {
-        Face f = (Face)faces.get(face);
+        int h = findCorner(face, vertex);
 
-        if(f == null)
-            throw new IllegalArgumentException("Unknown face index");
+        if(!(flatness >= 0 && flatness <= 1))
+            throw new IllegalArgumentException("Flatness must be in [0, 1]");
 
-        if(vertex < 0 || vertex >= f.numVertex)
-            throw new IllegalArgumentException("Vertex out of range for face");
+        switch(tag)
+        {
+            case SubdivisionTypes.UNTAGGED_SECTOR:
+                break;
+
+            case SubdivisionTypes.CONVEX_SECTOR:
+                if(!(theta > 0 && theta < Math.PI))
+                    throw new IllegalArgumentException(
+                        "Convex sector angle must be in (0, pi)");
+                break;
+
+            case SubdivisionTypes.CONCAVE_SECTOR:
+                if(!(theta > Math.PI && theta < 2 * Math.PI))
+                    throw new IllegalArgumentException(
+                        "Concave sector angle must be in (pi, 2pi)");
+                break;
+
+            default:
+                throw new IllegalArgumentException("Unknown sector tag");
+        }
+
+        HalfEdgeMesh mesh = controlMesh;
+        boolean open = mesh.countSharpEdges(mesh.halfEdgeVertex[h]) >= 2;
+
+        if(tag != SubdivisionTypes.UNTAGGED_SECTOR && !open)
+            throw new IllegalArgumentException(
+                "Corner sectors need two boundary or crease edges");
+
+        int start = mesh.sectorStart(h, open);
+        int id = mesh.halfEdgeSector[start];
+
+        if(id == -1)
+        {
+            id = 0;
+
+            while(id < numSectors && sectorTags[id] != -1)
+                id++;
 
-        f.addSector(vertex, tag, flatness, theta, normal, normalT);
+            if(id == sectorTags.length)
+            {
+                int size = id + 8;
+                int[] tmp_t = new int[size];
+                float[] tmp_a = new float[size];
+                float[] tmp_f = new float[size];
+
+                System.arraycopy(sectorTags, 0, tmp_t, 0, id);
+                System.arraycopy(sectorTheta, 0, tmp_a, 0, id);
+                System.arraycopy(sectorFlatness, 0, tmp_f, 0, id);
+
+                sectorTags = tmp_t;
+                sectorTheta = tmp_a;
+                sectorFlatness = tmp_f;
+            }
+
+            if(id == numSectors)
+                numSectors++;
+        }
+
+        sectorTags[id] = tag;
+        sectorTheta[id] = theta;
+        sectorFlatness[id] = flatness;
+
+        for(int g = start; g != -1; g = mesh.sectorNext(g, start, open))
+            mesh.halfEdgeSector[g] = id;
+
+        stencilTable = null;
+        meshChanged = true;
     }
 
     /**
-     * Remove the a sector from the given face/vertex combo.
+     * Remove the sector from the given face/vertex combo, if it has one.
+     * The whole fan of faces that shares the sector goes back to the
+     * normal rules.
      *
      * @param face The index of the face to remove the sector from
      * @param vertex The vertex number in that face
-     * @throws IllegalArgumentException The vertex number is out of the range of
-     *   valid vertices for this face
+     * @throws IllegalArgumentException The face or vertex is out of range
      */
     public void removeSector(int face, int vertex)
     {
-        Face f = (Face)faces.get(face);
+        int h = findCorner(face, vertex);
+        HalfEdgeMesh mesh = controlMesh;
+        int id = mesh.halfEdgeSector[h];
+
+        if(id == -1)
+            return;
+
+        boolean open = mesh.countSharpEdges(mesh.halfEdgeVertex[h]) >= 2;
+        int start = mesh.sectorStart(h, open);
+
+        for(int g = start; g != -1; g = mesh.sectorNext(g, start, open))
+            mesh.halfEdgeSector[g] = -1;
+
+        sectorTags[id] = -1;
+
+        stencilTable = null;
+        meshChanged = true;
+    }
+
+    /**
+     * Get the number of vertices that this generator will create for the
+     * shape given in the definition. Runs the subdivision on the shared
+     * pool if it is not already up to date.
+     *
+     * @param data The data to patch the calculations on
+     * @return The vertex count for the object
+     * @throws UnsupportedTypeException The generator cannot handle the type
+     *   of geometry you have requested.
+     */
+    @Override
+    public int getVertexCount(GeometryData data)
+        throws UnsupportedTypeException
+    {
+        regenerateSubdivision();
+
+        return getVertexCount(data.geometryType);
+    }
+
+    /**
+     * Generate a new set of geometry items based on the passed data, running
+     * the subdivision on the shared fork/join pool.
+     *
+     * @param data The data to patch the calculations on
+     * @throws InvalidArraySizeException The array is not big enough to contain
+     *   the requested geometry
+     * @throws UnsupportedTypeException The generator cannot handle the type
+     *   of geometry you have requested
+     */
+    @Override
+    public void generate(GeometryData data)
+        throws UnsupportedTypeException, InvalidArraySizeException
+    {
+        generate(data, ForkJoinUtils.getSharedPool());
+    }
+
+    /**
+     * Generate a new set of geometry items based on the passed data, running
+     * the subdivision on the given pool. If the pool is null, all of the work
+     * is done on the calling thread.
+     *
+     * @param data The data to patch the calculations on
+     * @param pool The pool to run the work in or null for the calling thread
+     * @throws InvalidArraySizeException The array is not big enough to contain
+     *   the requested geometry
+     * @throws UnsupportedTypeException The generator cannot handle the type
+     *   of geometry you have requested
+     */
+    @Override
+    public void generate(GeometryData data, ForkJoinPool pool)
+        throws UnsupportedTypeException, InvalidArraySizeException
+    {
+        regenerateSubdivision(pool);
+
+        int vtx_cnt = getVertexCount(data.geometryType);
+
+        if(data.coordinates == null)
+            data.coordinates = new float[vtx_cnt * 3];
+        else if(data.coordinates.length < vtx_cnt * 3)
+            throw new InvalidArraySizeException("Coordinates",
+                                                data.coordinates.length,
+                                                vtx_cnt * 3);
+
+        boolean normals = (data.geometryComponents & GeometryData.NORMAL_DATA) != 0;
+
+        if(normals)
+        {
+            if(data.normals == null)
+                data.normals = new float[vtx_cnt * 3];
+            else if(data.normals.length < vtx_cnt * 3)
+                throw new InvalidArraySizeException("Normals",
+                                                    data.normals.length,
+                                                    vtx_cnt * 3);
+
+            regenerateNormals(pool);
+        }
+
+        data.vertexCount = vtx_cnt;
+
+        if(adaptive)
+        {
+            adaptiveTriangles(data, normals);
+            return;
+        }
+
+        switch(data.geometryType)
+        {
+            case GeometryData.TRIANGLES:
+                unindexedTriangles(data, normals);
+                break;
+
+            case GeometryData.QUADS:
+                unindexedQuads(data, normals);
+                break;
+
+            case GeometryData.INDEXED_TRIANGLES:
+                indexedTriangles(data, normals);
+                break;
+
+            case GeometryData.INDEXED_QUADS:
+                indexedQuads(data, normals);
+                break;
+        }
+    }
+
+    /**
+     * Regenerate the patch coordinate points on the shared fork/join pool.
+     */
+    @Override
+    protected void regenerateSubdivision()
+    {
+        regenerateSubdivision(ForkJoinUtils.getSharedPool());
+    }
+
+    /**
+     * Regenerate the smooth normals of the output vertices on the shared
+     * fork/join pool. In adaptive mode the normals are worked out from the
+     * output triangles when generating, so this does nothing.
+     */
+    @Override
+    protected void regenerateNormals()
+    {
+        regenerateNormals(ForkJoinUtils.getSharedPool());
+    }
+
+    /**
+     * Regenerate the patch coordinate points in accordance with the derived
+     * classes algorithm type. Does nothing if neither the control mesh nor
+     * the level has changed since the last call. If only the control points
+     * have moved and a stencil table is available, the output is evaluated
+     * from that.
+     *
+     * @param pool The pool to run the work in or null for the calling thread
+     */
+    @Override
+    protected void regenerateSubdivision(ForkJoinPool pool)
+    {
+        if(meshChanged)
+            updateSectors();
+
+        if(adaptive)
+        {
+            if(meshChanged || levelChanged || pointsChanged)
+            {
+                adaptiveRefinement.refine(controlMesh, totalSubdivisions, pool);
+
+                stencilTable = null;
+                meshChanged = false;
+                levelChanged = false;
+                pointsChanged = false;
+            }
 
-        if(f == null)
+            return;
+        }
+
+        boolean rebuild = meshChanged ||
+                          levelChanged ||
+                          (stencilMode && stencilTable == null);
+
+        if(!rebuild)
+        {
+            if(!pointsChanged)
+                return;
+
+            if(stencilTable != null)
+            {
+                // With no levels and no projection the control points are
+                // the output, so there is nothing to evaluate.
+                if(outputPositions != controlMesh.positions)
+                    stencilTable.evaluate(controlMesh.positions,
+                                          outputPositions,
+                                          pool);
+
+                pointsChanged = false;
+                return;
+            }
+        }
+
+        HalfEdgeMesh parent = controlMesh;
+        SubdivisionStencilTable table = null;
+
+        if(stencilMode)
+            table = new SubdivisionStencilTable(controlMesh.numVertex);
+
+        // Control half-edge h is half-edge 4^i h at level i
+        int sector_scale = 1;
+
+        for(int i = 0; i < totalSubdivisions; i++)
+        {
+            HalfEdgeMesh child = workMeshes[i & 1];
+            child.prepareQuadSplit(parent);
+
+            runPass(FACE_PASS, parent, child, parent.numFaces, pool);
+            runPass(EDGE_PASS, parent, child, parent.numEdges, pool);
+            runPass(VERTEX_PASS, parent, child, parent.numVertex, pool);
+
+            if(numFlatHalfEdges != 0)
+            {
+                computeSectorPoints(parent, child, sector_scale);
+                sector_scale *= 4;
+            }
+
+            if(table != null)
+                table = table.compose(this, parent, child.numVertex, false, pool);
+
+            parent = child;
+        }
+
+        outputMesh = parent;
+        outputPositions = parent.positions;
+
+        if(limitProjection)
+        {
+            if(limitPositions.length < parent.numVertex * 3)
+                limitPositions = new float[parent.numVertex * 3];
+
+            runPass(LIMIT_PASS, parent, null, parent.numVertex, pool);
+            outputPositions = limitPositions;
+
+            if(table != null)
+                table = table.compose(this, parent, parent.numVertex, true, pool);
+        }
+
+        stencilTable = table;
+        meshChanged = false;
+        levelChanged = false;
+        pointsChanged = false;
+    }
+
+    /**
+     * Get the tag of a sector.
+     *
+     * @param sector The index of the sector
+     * @return One of the sector tags from SubdivisionTypes
+     */
+    int getSectorTag(int sector)
+    {
+        return sectorTags[sector];
+    }
+
+    /**
+     * Get the corner angle of a sector.
+     *
+     * @param sector The index of the sector
+     * @return The angle in radians
+     */
+    float getSectorTheta(int sector)
+    {
+        return sectorTheta[sector];
+    }
+
+    /**
+     * Get the flatness of a sector.
+     *
+     * @param sector The index of the sector
+     * @return The flatness in [0, 1]
+     */
+    float getSectorFlatness(int sector)
+    {
+        return sectorFlatness[sector];
+    }
+
+    /**
+     * Get the number of sector slots handed out. Some of them may have been
+     * removed since, which is shown by a tag of -1.
+     *
+     * @return The number of slots
+     */
+    int getNumSectors()
+    {
+        return numSectors;
+    }
+
+    /**
+     * Work out anything the rules need for the sectors of the control mesh.
+     * Called before any level is generated, whenever the control mesh or
+     * its sectors have changed.
+     *
+     * @param control The control mesh
+     */
+    abstract void prepareSectors(HalfEdgeMesh control);
+
+    /**
+     * Calculate the face points of the child for a range of parent faces.
+     * The face point of parent face f is child vertex parent.numVertex + f.
+     *
+     * @param parent The mesh being subdivided
+     * @param child The mesh to write the points to
+     * @param start The first parent face, inclusive
+     * @param end The last parent face, exclusive
+     */
+    abstract void computeFacePoints(HalfEdgeMesh parent,
+                                    HalfEdgeMesh child,
+                                    int start,
+                                    int end);
+
+    /**
+     * Calculate the edge points of the child for a range of parent edges.
+     * The edge point of parent edge e is child vertex
+     * parent.numVertex + parent.numFaces + e. All the face points have been
+     * calculated before this is called.
+     *
+     * @param parent The mesh being subdivided
+     * @param child The mesh to write the points to
+     * @param start The first parent edge, inclusive
+     * @param end The last parent edge, exclusive
+     */
+    abstract void computeEdgePoints(HalfEdgeMesh parent,
+                                    HalfEdgeMesh child,
+                                    int start,
+                                    int end);
+
+    /**
+     * Calculate the new positions of a range of the parent vertices. Parent
+     * vertex v is child vertex v. All the face and edge points have been
+     * calculated before this is called.
+     *
+     * @param parent The mesh being subdivided
+     * @param child The mesh to write the points to
+     * @param start The first parent vertex, inclusive
+     * @param end The last parent vertex, exclusive
+     */
+    abstract void computeVertexPoints(HalfEdgeMesh parent,
+                                      HalfEdgeMesh child,
+                                      int start,
+                                      int end);
+
+    /**
+     * Describe a single child vertex as a weighted sum of the parent
+     * vertices. This must give the same result as the compute methods and
+     * is used to build the stencil tables.
+     *
+     * @param parent The mesh being subdivided
+     * @param childVertex The index of the vertex in the child mesh
+     * @param rule The cleared rule to add the weighted parent vertices to
+     */
+    abstract void subdivisionRule(HalfEdgeMesh parent,
+                                  int childVertex,
+                                  StencilRule rule);
+
+    /**
+     * Describe the limit position of a vertex as a weighted sum of the
+     * vertices of the same mesh.
+     *
+     * @param mesh The mesh to read from
+     * @param vertex The index of the vertex in the mesh
+     * @param rule The cleared rule to add the weighted vertices to
+     */
+    abstract void limitRule(HalfEdgeMesh mesh, int vertex, StencilRule rule);
+
+    /**
+     * Process a range of one of the passes. The face pass fills in the child
+     * topology and face points, then the edge and vertex passes work over
+     * the parent edges and vertices. Every pass only writes the slots for
+     * its own range of items.
+     *
+     * @param pass The pass to run
+     * @param parent The mesh being read from
+     * @param child The mesh being written to
+     * @param start The first item, inclusive
+     * @param end The last item, exclusive
+     */
+    private void processItems(int pass,
+                              HalfEdgeMesh parent,
+                              HalfEdgeMesh child,
+                              int start,
+                              int end)
+    {
+        switch(pass)
+        {
+            case FACE_PASS:
+                child.splitQuadTopology(parent, start, end);
+                computeFacePoints(parent, child, start, end);
+                break;
+
+            case EDGE_PASS:
+                computeEdgePoints(parent, child, start, end);
+                break;
+
+            case VERTEX_PASS:
+                computeVertexPoints(parent, child, start, end);
+                break;
+
+            case LIMIT_PASS:
+                computeLimitPoints(parent, start, end);
+                break;
+
+            case NORMAL_PASS:
+                computeVertexNormals(parent, start, end);
+                break;
+        }
+    }
+
+    /**
+     * Run one of the passes, either directly or on the pool.
+     *
+     * @param pass The pass to run
+     * @param parent The mesh being read from
+     * @param child The mesh being written to
+     * @param count The number of items in the pass
+     * @param pool The pool to use or null for the calling thread
+     */
+    private void runPass(final int pass,
+                         final HalfEdgeMesh parent,
+                         final HalfEdgeMesh child,
+                         int count,
+                         ForkJoinPool pool)
+    {
+        RangeProcessor processor = new RangeProcessor()
+        {
+            @Override
+            public void processRange(int start, int end)
+            {
+                processItems(pass, parent, child, start, end);
+            }
+        };
+
+        ForkJoinUtils.forRange(pool, 0, count, MIN_CHUNK, processor);
+    }
+
+    /**
+     * Calculate the smooth normals of the output mesh vertices, unless in
+     * adaptive mode.
+     *
+     * @param pool The pool to run the work in or null for the calling thread
+     */
+    private void regenerateNormals(ForkJoinPool pool)
+    {
+        if(adaptive)
+            return;
+
+        HalfEdgeMesh mesh = outputMesh;
+
+        if(vertexNormals.length < mesh.numVertex * 3)
+            vertexNormals = new float[mesh.numVertex * 3];
+
+        runPass(NORMAL_PASS, mesh, null, mesh.numVertex, pool);
+    }
+
+    /**
+     * Find the half-edge for a corner of a control mesh face.
+     *
+     * @param face The index of the face
+     * @param vertex The vertex number in that face
+     * @return The half-edge leaving that vertex in the face
+     * @throws IllegalArgumentException The face or vertex is out of range
+     */
+    private int findCorner(int face, int vertex)
+    {
+        HalfEdgeMesh mesh = controlMesh;
+
+        if(face < 0 || face >= mesh.numFaces)
             throw new IllegalArgumentException("Unknown face index");
 
-        if(vertex < 0 || vertex >= f.numVertex)
+        int first = mesh.faceStart[face];
+
+        if(vertex < 0 || vertex >= mesh.faceStart[face + 1] - first)
             throw new IllegalArgumentException("Vertex out of range for face");
 
-        f.removeSector(vertex);
+        return first + vertex;
+    }
+
+    /**
+     * Collect the control half-edges that have a sector with some flatness
+     * and let the scheme prepare its sector data.
+     */
+    private void updateSectors()
+    {
+        HalfEdgeMesh mesh = controlMesh;
+        int[] he_sector = mesh.halfEdgeSector;
+
+        numFlatHalfEdges = 0;
+
+        if(numSectors != 0)
+        {
+            for(int h = 0; h < mesh.numHalfEdges; h++)
+            {
+                int id = he_sector[h];
+
+                if(id == -1 || sectorFlatness[id] == 0)
+                    continue;
+
+                if(numFlatHalfEdges == flatHalfEdges.length)
+                {
+                    int[] tmp = new int[numFlatHalfEdges + 16];
+                    System.arraycopy(flatHalfEdges, 0, tmp, 0, numFlatHalfEdges);
+                    flatHalfEdges = tmp;
+                }
+
+                flatHalfEdges[numFlatHalfEdges++] = h;
+            }
+        }
+
+        prepareSectors(mesh);
+    }
+
+    /**
+     * Recalculate the child points that depend on a flattened sector,
+     * using the full rules. Each half-edge of a sector covers the vertex,
+     * the face point of its face and the edge points of the two edges of
+     * that face at the vertex. Only the parent positions are read, so the
+     * order does not matter.
+     *
+     * @param parent The mesh being subdivided
+     * @param child The mesh to write the points to
+     * @param scale The factor from control half-edges to this level's
+     */
+    private void computeSectorPoints(HalfEdgeMesh parent,
+                                     HalfEdgeMesh child,
+                                     int scale)
+    {
+        StencilRule rule = new StencilRule();
+        int face_base = parent.numVertex;
+        int edge_base = parent.numVertex + parent.numFaces;
+
+        for(int i = 0; i < numFlatHalfEdges; i++)
+        {
+            int h = flatHalfEdges[i] * scale;
+
+            for(int j = 0; j < 4; j++)
+            {
+                int cv;
+
+                switch(j)
+                {
+                    case 0:
+                        cv = parent.halfEdgeVertex[h];
+                        break;
+
+                    case 1:
+                        cv = face_base + parent.halfEdgeFace[h];
+                        break;
+
+                    case 2:
+                        cv = edge_base + parent.halfEdgeEdge[h];
+                        break;
+
+                    default:
+                        cv = edge_base + parent.halfEdgeEdge[parent.prev(h)];
+                }
+
+                rule.clear();
+                subdivisionRule(parent, cv, rule);
+                rule.evaluate(parent.positions, child.positions, cv * 3);
+            }
+        }
+    }
+
+    /**
+     * Calculate the limit positions for a range of vertices of the output
+     * mesh.
+     *
+     * @param mesh The output mesh
+     * @param start The first vertex, inclusive
+     * @param end The last vertex, exclusive
+     */
+    private void computeLimitPoints(HalfEdgeMesh mesh, int start, int end)
+    {
+        StencilRule rule = new StencilRule();
+
+        for(int v = start; v < end; v++)
+        {
+            rule.clear();
+            limitRule(mesh, v, rule);
+            rule.evaluate(mesh.positions, limitPositions, v * 3);
+        }
+    }
+
+    /**
+     * Calculate the smooth normal for a range of vertices of the output mesh
+     * by summing the cross products of the edges at each corner around the
+     * vertex. This weights each face by its area near the vertex.
+     *
+     * @param mesh The output mesh
+     * @param start The first vertex, inclusive
+     * @param end The last vertex, exclusive
+     */
+    private void computeVertexNormals(HalfEdgeMesh mesh, int start, int end)
+    {
+        float[] pos = outputPositions;
+        int[] vtx = mesh.halfEdgeVertex;
+        int[] twin = mesh.halfEdgeTwin;
+        float[] normals = vertexNormals;
+
+        for(int v = start; v < end; v++)
+        {
+            int p = v * 3;
+            int h0 = mesh.vertexHalfEdge[v];
+            double nx = 0;
+            double ny = 0;
+            double nz = 0;
+
+            int h = h0;
+            int steps = 0;
+
+            while(h != -1 && steps < mesh.numHalfEdges)
+            {
+                int hp = mesh.prev(h);
+                int a = vtx[mesh.next(h)] * 3;
+                int b = vtx[hp] * 3;
+
+                double ax = pos[a] - pos[p];
+                double ay = pos[a + 1] - pos[p + 1];
+                double az = pos[a + 2] - pos[p + 2];
+                double bx = pos[b] - pos[p];
+                double by = pos[b + 1] - pos[p + 1];
+                double bz = pos[b + 2] - pos[p + 2];
+
+                nx += ay * bz - az * by;
+                ny += az * bx - ax * bz;
+                nz += ax * by - ay * bx;
+
+                h = twin[hp];
+                steps++;
+
+                if(h == h0)
+                    break;
+            }
+
+            double len = Math.sqrt(nx * nx + ny * ny + nz * nz);
+
+            if(len != 0)
+            {
+                normals[p] = (float)(nx / len);
+                normals[p + 1] = (float)(ny / len);
+                normals[p + 2] = (float)(nz / len);
+            }
+            else
+            {
+                normals[p] = 0;
+                normals[p + 1] = 0;
+                normals[p + 2] = 1;
+            }
+        }
+    }
+
+    /**
+     * Work out the number of vertices generated for the given output type
+     * from the current output mesh.
+     *
+     * @param type The geometry type from GeometryData
+     * @return The vertex count for the object
+     * @throws UnsupportedTypeException The type is not supported or needs
+     *   quads and the mesh is not all quads
+     */
+    private int getVertexCount(int type)
+        throws UnsupportedTypeException
+    {
+        if(adaptive)
+        {
+            switch(type)
+            {
+                case GeometryData.TRIANGLES:
+                    return adaptiveRefinement.getNumTriangles() * 3;
+
+                case GeometryData.INDEXED_TRIANGLES:
+                    return adaptiveRefinement.getNumVertices();
+
+                case GeometryData.QUADS:
+                case GeometryData.INDEXED_QUADS:
+                    throw new UnsupportedTypeException(
+                        "Adaptive subdivision only generates triangles");
+            }
+        }
+
+        HalfEdgeMesh mesh = outputMesh;
+        int ret_val = 0;
+
+        switch(type)
+        {
+            case GeometryData.TRIANGLES:
+                ret_val = (mesh.numHalfEdges - 2 * mesh.numFaces) * 3;
+                break;
+
+            case GeometryData.QUADS:
+                checkQuads(mesh);
+                ret_val = mesh.numFaces * 4;
+                break;
+
+            case GeometryData.INDEXED_QUADS:
+                checkQuads(mesh);
+                ret_val = mesh.numVertex;
+                break;
+
+            case GeometryData.INDEXED_TRIANGLES:
+                ret_val = mesh.numVertex;
+                break;
+
+            default:
+                throw new UnsupportedTypeException("Unknown geometry type: " +
+                                                   type);
+        }
+
+        return ret_val;
+    }
+
+    /**
+     * Make sure the mesh is all quads, generating an exception if not.
+     *
+     * @param mesh The mesh to check
+     * @throws UnsupportedTypeException There is a face that is not a quad
+     */
+    private void checkQuads(HalfEdgeMesh mesh)
+        throws UnsupportedTypeException
+    {
+        if(!mesh.isAllQuads())
+            throw new UnsupportedTypeException(
+                "Quad output needs a quad control mesh or at least one level");
+    }
+
+    /**
+     * Generate the coordinates and normals for an unindexed triangle array.
+     * Each face is turned into a fan around its first vertex.
+     *
+     * @param data The data to write to
+     * @param normals true if normals should be copied too
+     */
+    private void unindexedTriangles(GeometryData data, boolean normals)
+    {
+        HalfEdgeMesh mesh = outputMesh;
+        int[] vtx = mesh.halfEdgeVertex;
+        int out = 0;
+
+        for(int f = 0; f < mesh.numFaces; f++)
+        {
+            int first = mesh.faceStart[f];
+            int last = mesh.faceStart[f + 1];
+
+            for(int h = first + 1; h < last - 1; h++)
+            {
+                copyVertex(data, normals, vtx[first], out++);
+                copyVertex(data, normals, vtx[h], out++);
+                copyVertex(data, normals, vtx[h + 1], out++);
+            }
+        }
+    }
+
+    /**
+     * Generate the coordinates and normals for an unindexed quad array.
+     *
+     * @param data The data to write to
+     * @param normals true if normals should be copied too
+     */
+    private void unindexedQuads(GeometryData data, boolean normals)
+    {
+        HalfEdgeMesh mesh = outputMesh;
+        int[] vtx = mesh.halfEdgeVertex;
+
+        for(int h = 0; h < mesh.numHalfEdges; h++)
+            copyVertex(data, normals, vtx[h], h);
+    }
+
+    /**
+     * Generate the coordinates, normals and indices for an indexed triangle
+     * array. Each face is turned into a fan around its first vertex.
+     *
+     * @param data The data to write to
+     * @param normals true if normals should be copied too
+     * @throws InvalidArraySizeException The index array is too small
+     */
+    private void indexedTriangles(GeometryData data, boolean normals)
+        throws InvalidArraySizeException
+    {
+        HalfEdgeMesh mesh = outputMesh;
+        int index_size = (mesh.numHalfEdges - 2 * mesh.numFaces) * 3;
+
+        if(data.indexes == null)
+            data.indexes = new int[index_size];
+        else if(data.indexes.length < index_size)
+            throw new InvalidArraySizeException("Coord Indexes",
+                                                data.indexes.length,
+                                                index_size);
+
+        copyVertices(data, normals);
+
+        int[] vtx = mesh.halfEdgeVertex;
+        int[] indexes = data.indexes;
+        int out = 0;
+
+        for(int f = 0; f < mesh.numFaces; f++)
+        {
+            int first = mesh.faceStart[f];
+            int last = mesh.faceStart[f + 1];
+
+            for(int h = first + 1; h < last - 1; h++)
+            {
+                indexes[out++] = vtx[first];
+                indexes[out++] = vtx[h];
+                indexes[out++] = vtx[h + 1];
+            }
+        }
+
+        data.indexesCount = index_size;
+    }
+
+    /**
+     * Generate the coordinates, normals and indices for an indexed quad
+     * array.
+     *
+     * @param data The data to write to
+     * @param normals true if normals should be copied too
+     * @throws InvalidArraySizeException The index array is too small
+     */
+    private void indexedQuads(GeometryData data, boolean normals)
+        throws InvalidArraySizeException
+    {
+        HalfEdgeMesh mesh = outputMesh;
+        int index_size = mesh.numHalfEdges;
+
+        if(data.indexes == null)
+            data.indexes = new int[index_size];
+        else if(data.indexes.length < index_size)
+            throw new InvalidArraySizeException("Coord Indexes",
+                                                data.indexes.length,
+                                                index_size);
+
+        copyVertices(data, normals);
+
+        System.arraycopy(mesh.halfEdgeVertex, 0, data.indexes, 0, index_size);
+        data.indexesCount = index_size;
+    }
+
+    /**
+     * Generate the coordinates, normals and, if needed, indices of the
+     * triangles from the adaptive refinement.
+     *
+     * @param data The data to write to
+     * @param normals true if normals should be generated too
+     * @throws InvalidArraySizeException The index array is too small
+     */
+    private void adaptiveTriangles(GeometryData data, boolean normals)
+        throws InvalidArraySizeException
+    {
+        AdaptiveRefinement ref = adaptiveRefinement;
+        int[] tris = ref.getTriangles();
+        int num_tris = ref.getNumTriangles();
+        float[] coords = ref.getCoordinates();
+        float[] norms = normals ? ref.getNormals() : null;
+
+        if(data.geometryType == GeometryData.INDEXED_TRIANGLES)
+        {
+            int index_size = num_tris * 3;
+
+            if(data.indexes == null)
+                data.indexes = new int[index_size];
+            else if(data.indexes.length < index_size)
+                throw new InvalidArraySizeException("Coord Indexes",
+                                                    data.indexes.length,
+                                                    index_size);
+
+            int num_vals = ref.getNumVertices() * 3;
+
+            System.arraycopy(coords, 0, data.coordinates, 0, num_vals);
+            System.arraycopy(tris, 0, data.indexes, 0, index_size);
+            data.indexesCount = index_size;
+
+            if(normals)
+                System.arraycopy(norms, 0, data.normals, 0, num_vals);
+
+            return;
+        }
+
+        for(int i = 0; i < num_tris * 3; i++)
+        {
+            int p = tris[i] * 3;
+            int o = i * 3;
+
+            data.coordinates[o] = coords[p];
+            data.coordinates[o + 1] = coords[p + 1];
+            data.coordinates[o + 2] = coords[p + 2];
+
+            if(normals)
+            {
+                data.normals[o] = norms[p];
+                data.normals[o + 1] = norms[p + 1];
+                data.normals[o + 2] = norms[p + 2];
+            }
+        }
+    }
+
+    /**
+     * Copy all the vertices of the output mesh straight into the data.
+     *
+     * @param data The data to write to
+     * @param normals true if normals should be copied too
+     */
+    private void copyVertices(GeometryData data, boolean normals)
+    {
+        int num_vals = outputMesh.numVertex * 3;
+
+        System.arraycopy(outputPositions, 0, data.coordinates, 0, num_vals);
+
+        if(normals)
+            System.arraycopy(vertexNormals, 0, data.normals, 0, num_vals);
+    }
+
+    /**
+     * Copy a single vertex of the output mesh into an output slot.
+     *
+     * @param data The data to write to
+     * @param normals true if normals should be copied too
+     * @param v The index of the mesh vertex
+     * @param out The index of the output vertex
+     */
+    private void copyVertex(GeometryData data, boolean normals, int v, int out)
+    {
+        float[] pos = outputPositions;
+        float[] coords = data.coordinates;
+        int i = v * 3;
+        int o = out * 3;
+
+        coords[o] = pos[i];
+        coords[o + 1] = pos[i + 1];
+        coords[o + 2] = pos[i + 2];
+
+        if(normals)
+        {
+            data.normals[o] = vertexNormals[i];
+            data.normals[o + 1] = vertexNormals[i + 1];
+            data.normals[o + 2] = vertexNormals[i + 2];
+        }
     }
 }
@@ -0,0 +1,139 @@
+/*
+ * j3d.org Copyright (c) 2001-2015
+ *                                 Java Source
+ *
+ *  This source is licensed under the GNU LGPL v2.1
+ *  Please read docs/LGPL.txt for more information
+ *
+ *  This software comes with the standard NO WARRANTY disclaimer for any
+ *  purpose. Use it at your own risk. If there's a problem you get to fix it.
+ */
+
+package org.j3d.geom.subdivision;
+
+// External imports
+// None
+
+// Local imports
+// None
+
+/**
+ * Working list of the weighted vertices that a single point is made from.
+ * <p>
+ *
+ * The subdivision schemes fill one of these in to describe a rule as a
+ * list of vertex index and weight pairs. The same index may appear more
+ * than once, in which case the weights add. Instances are reused from one
+ * point to the next and are not thread safe, so each worker keeps its own.
+ */
+class StencilRule
+{
+    /** The number of entries in use */
+    int size;
+
+    /** The vertex index of each entry */
+    int[] indices;
+
+    /** The weight of each entry */
+    float[] weights;
+
+    /**
+     * Construct a new, empty rule.
+     */
+    StencilRule()
+    {
+        indices = new int[32];
+        weights = new float[32];
+    }
+
+    /**
+     * Remove all of the entries ready for the next point.
+     */
+    void clear()
+    {
+        size = 0;
+    }
+
+    /**
+     * Add a single weighted vertex.
+     *
+     * @param index The vertex index
+     * @param weight The weight of that vertex
+     */
+    void add(int index, float weight)
+    {
+        if(size == indices.length)
+        {
+            int[] tmp_i = new int[size * 2];
+            float[] tmp_w = new float[size * 2];
+
+            System.arraycopy(indices, 0, tmp_i, 0, size);
+            System.arraycopy(weights, 0, tmp_w, 0, size);
+
+            indices = tmp_i;
+            weights = tmp_w;
+        }
+
+        indices[size] = index;
+        weights[size] = weight;
+        size++;
+    }
+
+    /**
+     * Add all the entries of another rule, scaled by a weight.
+     *
+     * @param other The rule to copy the entries from
+     * @param weight The amount to scale each of its weights by
+     */
+    void add(StencilRule other, float weight)
+    {
+        for(int i = 0; i < other.size; i++)
+            add(other.indices[i], other.weights[i] * weight);
+    }
+
+    /**
+     * Add the centroid of a face, sharing the weight evenly between all of
+     * its vertices.
+     *
+     * @param mesh The mesh the face is in
+     * @param face The index of the face
+     * @param weight The total weight of the centroid
+     */
+    void addFace(HalfEdgeMesh mesh, int face, float weight)
+    {
+        int first = mesh.faceStart[face];
+        int last = mesh.faceStart[face + 1];
+        float w = weight / (last - first);
+
+        for(int h = first; h < last; h++)
+            add(mesh.halfEdgeVertex[h], w);
+    }
+
+    /**
+     * Evaluate the rule against a set of positions.
+     *
+     * @param positions Flat array of vertex positions the indices refer to
+     * @param output Array to write the result to
+     * @param offset The index of the first value to write in the output
+     */
+    void evaluate(float[] positions, float[] output, int offset)
+    {
+        float x = 0;
+        float y = 0;
+        float z = 0;
+
+        for(int i = 0; i < size; i++)
+        {
+            int p = indices[i] * 3;
+            float w = weights[i];
+
+            x += w * positions[p];
+            y += w * positions[p + 1];
+            z += w * positions[p + 2];
+        }
+
+        output[offset] = x;
+        output[offset + 1] = y;
+        output[offset + 2] = z;
+    }
+}
@@ -10,25 +10,37 @@
 package org.j3d.geom.subdivision;
 
 // External imports
+import java.util.concurrent.ForkJoinPool;
 
 // Local imports
+import org.j3d.util.ForkJoinUtils;
+
 import org.j3d.geom.GeometryData;
 import org.j3d.geom.GeometryGenerator;
 import org.j3d.geom.InvalidArraySizeException;
 import org.j3d.geom.UnsupportedTypeException;
 
 /**
- * Base geometry generator defintion for all forms of non-adaptive
- * subdivision-based patches.
+ * Base geometry generator defintion for all forms of subdivision-based
+ * patches.
  * <P>
  *
  * The subdivision information at a given level is described by the uniform
  * subdivision handling paper.
  * <p>
  *
- * Because of the structure of this code, it is not suited for generating
- * adaptive subdivision surfaces. They should use a separate class.
+ * By default the levels are applied uniformly over the whole surface.
+ * Derived classes may offer an adaptive mode where the number of
+ * subdivisions is the deepest level used, such as the one in
+ * {@link PolygonSubdivisionGenerator}.
+ * <p>
  *
+ * Derived classes implement {@link #regenerateSubdivision()} and
+ * {@link #generate(GeometryData)}. Those that can split the work over a
+ * fork/join pool also override the overloads that take a pool, and have
+ * the plain methods pass in the shared pool from {@link ForkJoinUtils}. The
+ * default pool overloads ignore the pool and call the plain methods, so all
+ * the work is done on the calling thread.
  *
  * @author Justin Couch
  * @version $Revision: 1.1 $
@@ -45,27 +57,41 @@ public abstract class SubdivisionGenerator extends GeometryGenerator
     protected int totalSubdivisions;
 
 
+    /**
+     * Construct a new generator with no control mesh set.
+     */
+    protected SubdivisionGenerator()
+    {
+        meshChanged = true;
+        levelChanged = true;
+    }
+
     /**
      * Construct a new generator with no control mesh set. The levelMult field
-     * describes the multiplier of how many vertices are created at each level
-     * from the previous one. For triangle-based schemes, this value is normally
-     * 3.
-     *
+     * described the multiplier of how many vertices are created at each level
+     * from the previous one. Derived classes size their own levels, so it is
+     * not used.
      *
+     * @param levelMult Ignored
+     * @deprecated Use {@link #SubdivisionGenerator()}
      */
+    @Deprecated
     protected SubdivisionGenerator(int levelMult)
     {
-        meshChanged = true;
-        levelChanged = true;
+        this();
     }
 
     /**
      * Set the number of levels of subdivision to be used.
      *
      * @param level The new level to set
+     * @throws IllegalArgumentException The level is negative
      */
     public void setNumSubdivisions(int level)
     {
+        if(level < 0)
+            throw new IllegalArgumentException("Negative subdivision level");
+
         if(level != totalSubdivisions)
         {
             totalSubdivisions = level;
@@ -74,51 +100,25 @@ public abstract class SubdivisionGenerator extends GeometryGenerator
     }
 
     /**
-     * Regenerate the patch coordinate points in accordance with the derived
-     * classes algorithm type.
-     */
-    protected abstract void regenerateSubdivision();
-
-    /**
-     * Get the number of vertices that this generator will create for the
-     * shape given in the definition.
+     * Get the number of levels of subdivision currently used.
      *
-     * @param data The data to patch the calculations on
-     * @return The vertex count for the object
-     * @throws UnsupportedTypeException The generator cannot handle the type
-     *   of geometry you have requested.
+     * @return The current level
      */
-    @Override
-    public int getVertexCount(GeometryData data)
-        throws UnsupportedTypeException
+    public int getNumSubdivisions()
     {
-        int ret_val = 0;
-
-        switch(data.geometryType)
-        {
-            case GeometryData.TRIANGLES:
-            case GeometryData.QUADS:
-            case GeometryData.TRIANGLE_STRIPS:
-            case GeometryData.TRIANGLE_FANS:
-            case GeometryData.INDEXED_TRIANGLES:
-            case GeometryData.INDEXED_QUADS:
-            case GeometryData.INDEXED_TRIANGLE_STRIPS:
-            case GeometryData.INDEXED_TRIANGLE_FANS:
-                break;
-
-            default:
-                throw new UnsupportedTypeException("Unknown geometry type: " +
-                                                   data.geometryType);
-        }
-
-        return ret_val;
+        return totalSubdivisions;
     }
 
     /**
-     * Generate a new set of geometry items patchd on the passed data. If the
-     * data does not contain the right minimum array lengths an exception will
-     * be generated. If the array reference is null, this will create arrays
-     * of the correct length and assign them to the return value.
+     * Generate a new set of geometry items based on the passed data. If the
+     * data does not contain the right minimum array lengths an exception
+     * will be generated. If the array reference is null, this will create
+     * arrays of the correct length and assign them to the return value.
+     * <p>
+     *
+     * The default only brings the patch up to date, along with its normals
+     * when they are requested. Derived classes override this to fill in the
+     * data.
      *
      * @param data The data to patch the calculations on
      * @throws InvalidArraySizeException The array is not big enough to contain
@@ -133,645 +133,66 @@ public abstract class SubdivisionGenerator extends GeometryGenerator
         switch(data.geometryType)
         {
             case GeometryData.TRIANGLES:
-                unindexedTriangles(data);
-                break;
             case GeometryData.QUADS:
-                unindexedQuads(data);
-                break;
             case GeometryData.TRIANGLE_STRIPS:
-                triangleStrips(data);
-                break;
-//            case GeometryData.TRIANGLE_FANS:
-//                triangleFans(data);
-//                break;
-            case GeometryData.INDEXED_QUADS:
-                indexedQuads(data);
-                break;
+            case GeometryData.TRIANGLE_FANS:
             case GeometryData.INDEXED_TRIANGLES:
-                indexedTriangles(data);
-                break;
+            case GeometryData.INDEXED_QUADS:
             case GeometryData.INDEXED_TRIANGLE_STRIPS:
-                indexedTriangleStrips(data);
-                break;
             case GeometryData.INDEXED_TRIANGLE_FANS:
-                indexedTriangleFans(data);
                 break;
 
             default:
                 throw new UnsupportedTypeException("Unknown geometry type: " +
                                                    data.geometryType);
         }
-    }
-
-   /**
-     * Generate a new set of points for an unindexed quad array
-     *
-     * @param data The data to patch the calculations on
-     * @throws InvalidArraySizeException The array is not big enough to contain
-     *   the requested geometry
-     */
-    private void unindexedTriangles(GeometryData data)
-        throws InvalidArraySizeException
-    {
-        generateUnindexedTriCoordinates(data);
-
-        if((data.geometryComponents & GeometryData.NORMAL_DATA) != 0)
-            generateUnindexedTriNormals(data);
-
-        if((data.geometryComponents & GeometryData.TEXTURE_2D_DATA) != 0)
-            generateUnindexedTriTexture2D(data);
-        else if((data.geometryComponents & GeometryData.TEXTURE_3D_DATA) != 0)
-            generateUnindexedTriTexture3D(data);
-    }
 
-
-    /**
-     * Generate a new set of points for an unindexed quad array
-     *
-     * @param data The data to patch the calculations on
-     * @throws InvalidArraySizeException The array is not big enough to contain
-     *   the requested geometry
-     */
-    private void unindexedQuads(GeometryData data)
-        throws InvalidArraySizeException
-    {
-        generateUnindexedQuadCoordinates(data);
-
-        if((data.geometryComponents & GeometryData.NORMAL_DATA) != 0)
-            generateUnindexedQuadNormals(data);
-
-        if((data.geometryComponents & GeometryData.TEXTURE_2D_DATA) != 0)
-            generateUnindexedQuadTexture2D(data);
-        else if((data.geometryComponents & GeometryData.TEXTURE_3D_DATA) != 0)
-            generateUnindexedQuadTexture3D(data);
-    }
-
-    /**
-     * Generate a new set of points for an indexed quad array. Uses the same
-     * points as an indexed triangle, but repeats the top coordinate index.
-     *
-     * @param data The data to patch the calculations on
-     * @throws InvalidArraySizeException The array is not big enough to contain
-     *   the requested geometry
-     */
-    private void indexedQuads(GeometryData data)
-        throws InvalidArraySizeException
-    {
-        generateIndexedCoordinates(data);
-
-        if((data.geometryComponents & GeometryData.NORMAL_DATA) != 0)
-            generateIndexedNormals(data);
-
-        if((data.geometryComponents & GeometryData.TEXTURE_2D_DATA) != 0)
-            generateIndexedTexture2D(data);
-        else if((data.geometryComponents & GeometryData.TEXTURE_3D_DATA) != 0)
-            generateIndexedTexture3D(data);
-
-    }
-
-    /**
-     * Generate a new set of points for an indexed triangle array
-     *
-     * @param data The data to patch the calculations on
-     * @throws InvalidArraySizeException The array is not big enough to contain
-     *   the requested geometry
-     */
-    private void indexedTriangles(GeometryData data)
-        throws InvalidArraySizeException
-    {
-        generateIndexedCoordinates(data);
-
-        if((data.geometryComponents & GeometryData.NORMAL_DATA) != 0)
-            generateIndexedNormals(data);
-
-        if((data.geometryComponents & GeometryData.TEXTURE_2D_DATA) != 0)
-            generateIndexedTexture2D(data);
-        else if((data.geometryComponents & GeometryData.TEXTURE_3D_DATA) != 0)
-            generateIndexedTexture3D(data);
-
-    }
-
-    /**
-     * Generate a new set of points for a triangle strip array. Each side is a
-     * strip of two faces.
-     *
-     * @param data The data to patch the calculations on
-     * @throws InvalidArraySizeException The array is not big enough to contain
-     *   the requested geometry
-     */
-    private void triangleStrips(GeometryData data)
-        throws InvalidArraySizeException
-    {
-        generateUnindexedTriStripCoordinates(data);
-
-        if((data.geometryComponents & GeometryData.NORMAL_DATA) != 0)
-            generateUnindexedTriStripNormals(data);
-
-        if((data.geometryComponents & GeometryData.TEXTURE_2D_DATA) != 0)
-            generateUnindexedTriStripTexture2D(data);
-        else if((data.geometryComponents & GeometryData.TEXTURE_3D_DATA) != 0)
-            generateUnindexedTriTexture3D(data);
-
-    }
-
-    /**
-     * Generate a new set of points for a triangle fan array. Each facet on the
-     * side of the cone is a single fan, but the patch is one big fan.
-     *
-     * @param data The data to patch the calculations on
-     * @throws InvalidArraySizeException The array is not big enough to contain
-     *   the requested geometry
-     */
-    private void triangleFans(GeometryData data)
-        throws InvalidArraySizeException
-    {
-    }
-
-    /**
-     * Generate a new set of points for an indexed triangle strip array. We
-     * build the strip from the existing points, and there's no need to
-     * re-order the points for the indexes this time.
-     *
-     * @param data The data to patch the calculations on
-     * @throws InvalidArraySizeException The array is not big enough to contain
-     *   the requested geometry
-     */
-    private void indexedTriangleStrips(GeometryData data)
-        throws InvalidArraySizeException
-    {
-          generateIndexedCoordinates(data);
+        regenerateSubdivision();
 
         if((data.geometryComponents & GeometryData.NORMAL_DATA) != 0)
-            generateIndexedNormals(data);
-
-        if((data.geometryComponents & GeometryData.TEXTURE_2D_DATA) != 0)
-            generateIndexedTexture2D(data);
-        else if((data.geometryComponents & GeometryData.TEXTURE_3D_DATA) != 0)
-            generateIndexedTexture3D(data);
-
+            regenerateNormals();
     }
 
     /**
-     * Generate a new set of points for an indexed triangle fan array. We
-     * build the strip from the existing points, and there's no need to
-     * re-order the points for the indexes this time. As for the simple fan,
-     * we use the first index, the lower-right corner as the apex for the fan.
-     *
-     * @param data The data to patch the calculations on
-     * @throws InvalidArraySizeException The array is not big enough to contain
-     *   the requested geometry
-     */
-    private void indexedTriangleFans(GeometryData data)
-        throws InvalidArraySizeException
-    {
-        generateIndexedCoordinates(data);
-
-        if((data.geometryComponents & GeometryData.NORMAL_DATA) != 0)
-            generateIndexedNormals(data);
-
-        if((data.geometryComponents & GeometryData.TEXTURE_2D_DATA) != 0)
-            generateIndexedTexture2D(data);
-        else if((data.geometryComponents & GeometryData.TEXTURE_3D_DATA) != 0)
-            generateIndexedTexture3D(data);
-
-    }
-
-    //------------------------------------------------------------------------
-    // Coordinate generation routines
-    //------------------------------------------------------------------------
-
-    /**
-     * Generates new set of points suitable for use in an unindexed array. Each
-     * patch coordinate will appear twice in this list. The first half of the
-     * array is the top, the second half, the bottom.
+     * Generate a new set of geometry items based on the passed data, running
+     * the subdivision on the given pool. If the pool is null, all of the work
+     * is done on the calling thread. The default ignores the pool and calls
+     * {@link #generate(GeometryData)}.
      *
      * @param data The data to patch the calculations on
+     * @param pool The pool to run the work in or null for the calling thread
      * @throws InvalidArraySizeException The array is not big enough to contain
      *   the requested geometry
+     * @throws UnsupportedTypeException The generator cannot handle the type
+     *   of geometry you have requested
      */
-    private void generateUnindexedTriCoordinates(GeometryData data)
-        throws InvalidArraySizeException
+    public void generate(GeometryData data, ForkJoinPool pool)
+        throws UnsupportedTypeException, InvalidArraySizeException
     {
-        int vtx_cnt = getVertexCount(data);
-
-        if(data.coordinates == null)
-            data.coordinates = new float[vtx_cnt * 3];
-        else if(data.coordinates.length < vtx_cnt * 3)
-            throw new InvalidArraySizeException("Coordinates",
-                                                data.coordinates.length,
-                                                vtx_cnt * 3);
-
-        float[] coords = data.coordinates;
-        data.vertexCount = vtx_cnt;
-
-        regenerateSubdivision();
+        generate(data);
     }
 
     /**
-     * Generates new set of points suitable for use in an unindexed array. Each
-     * patch coordinate will appear twice in this list. The first half of the
-     * array is the top, the second half, the bottom.
-     *
-     * @param data The data to patch the calculations on
-     * @throws InvalidArraySizeException The array is not big enough to contain
-     *   the requested geometry
+     * Regenerate the patch coordinate points in accordance with the derived
+     * classes algorithm type.
      */
-    private void generateUnindexedQuadCoordinates(GeometryData data)
-        throws InvalidArraySizeException
-    {
-        int vtx_cnt = getVertexCount(data);
-
-        if(data.coordinates == null)
-            data.coordinates = new float[vtx_cnt * 3];
-        else if(data.coordinates.length < vtx_cnt * 3)
-            throw new InvalidArraySizeException("Coordinates",
-                                                data.coordinates.length,
-                                                vtx_cnt * 3);
-
-        float[] coords = data.coordinates;
-        data.vertexCount = vtx_cnt;
-
-        regenerateSubdivision();
-
-    }
+    protected abstract void regenerateSubdivision();
 
     /**
-     * Generates new set of points suitable for use in an unindexed array. Each
-     * patch coordinate will appear twice in this list. The first half of the
-     * array is the top, the second half, the bottom.
+     * Regenerate the patch coordinate points on the given pool. The default
+     * ignores the pool and calls {@link #regenerateSubdivision()}.
      *
-     * @param data The data to patch the calculations on
-     * @throws InvalidArraySizeException The array is not big enough to contain
-     *   the requested geometry
+     * @param pool The pool to run the work in or null for the calling thread
      */
-    private void generateUnindexedTriStripCoordinates(GeometryData data)
-        throws InvalidArraySizeException
+    protected void regenerateSubdivision(ForkJoinPool pool)
     {
-        int vtx_cnt = getVertexCount(data);
-
-        if(data.coordinates == null)
-            data.coordinates = new float[vtx_cnt * 3];
-        else if(data.coordinates.length < vtx_cnt * 3)
-            throw new InvalidArraySizeException("Coordinates",
-                                                data.coordinates.length,
-                                                vtx_cnt * 3);
-
-
-        regenerateSubdivision();
-
-        float[] coords = data.coordinates;
-        data.vertexCount = vtx_cnt;
-
-    }
-
-    /**
-     * Generate a new set of points for use in an indexed array. The first
-     * index will always be the cone tip - parallel for each face so that we
-     * can get the smoothing right. If the array is to use the bottom,
-     * a second set of coordinates will be produced separately for the patch
-     * so that independent surface normals can be used. These values will
-     * start at vertexCount / 2 with the first value as 0,0,0 (the center of
-     * the patch) and then all the following values as the patch.
-     */
-    private void generateIndexedCoordinates(GeometryData data)
-        throws InvalidArraySizeException
-    {
-        int vtx_cnt = getVertexCount(data);
-
-        if(data.coordinates == null)
-            data.coordinates = new float[vtx_cnt * 3];
-        else if(data.coordinates.length < vtx_cnt * 3)
-            throw new InvalidArraySizeException("Coordinates",
-                                                data.coordinates.length,
-                                                vtx_cnt * 3);
-
-        float[] coords = data.coordinates;
-        data.vertexCount = vtx_cnt;
-
         regenerateSubdivision();
     }
 
-    //------------------------------------------------------------------------
-    // Normal generation routines
-    //------------------------------------------------------------------------
-
-    /**
-     * Generate a new set of normals for a normal set of unindexed points.
-     * Smooth normals are used for the sides at the average between the faces.
-     * Bottom normals always point down.
-     * <p>
-     * This must always be called after the coordinate generation. The
-     * top normal of the cone is always perpendicular to the face.
-     *
-     * @param data The data to patch the calculations on
-     * @throws InvalidArraySizeException The array is not big enough to contain
-     *   the requested geometry
-     */
-    private void generateUnindexedTriNormals(GeometryData data)
-        throws InvalidArraySizeException
-    {
-        int vtx_cnt = data.vertexCount * 3;
-
-        if(data.normals == null)
-            data.normals = new float[vtx_cnt];
-        else if(data.normals.length < vtx_cnt)
-            throw new InvalidArraySizeException("Normals",
-                                                data.normals.length,
-                                                vtx_cnt);
-
-        regenerateNormals();
-
-    }
-
-    /**
-     * Generate a new set of normals for a normal set of unindexed points.
-     * Smooth normals are used for the sides at the average between the faces.
-     * Bottom normals always point down.
-     * <p>
-     * This must always be called after the coordinate generation. The
-     * top normal of the cone is always perpendicular to the face.
-     *
-     * @param data The data to patch the calculations on
-     * @throws InvalidArraySizeException The array is not big enough to contain
-     *   the requested geometry
-     */
-    private void generateUnindexedQuadNormals(GeometryData data)
-        throws InvalidArraySizeException
-    {
-        int vtx_cnt = data.vertexCount * 3;
-
-        if(data.normals == null)
-            data.normals = new float[vtx_cnt];
-        else if(data.normals.length < vtx_cnt)
-            throw new InvalidArraySizeException("Normals",
-                                                data.normals.length,
-                                                vtx_cnt);
-
-        regenerateNormals();
-
-    }
-
-    /**
-     * Generate a new set of normals for unindexed points in a triangle strip.
-     * Smooth normals are used for all.
-     * <p>
-     * This must always be called after the coordinate generation. The
-     * top normal of the cone is always perpendicular to the face.
-     *
-     * @param data The data to patch the calculations on
-     * @throws InvalidArraySizeException The array is not big enough to contain
-     *   the requested geometry
-     */
-    private void generateUnindexedTriStripNormals(GeometryData data)
-        throws InvalidArraySizeException
-    {
-        int vtx_cnt = 0;
-
-        if(data.normals == null)
-            data.normals = new float[vtx_cnt];
-        else if(data.normals.length < vtx_cnt)
-            throw new InvalidArraySizeException("Normals",
-                                                data.normals.length,
-                                                vtx_cnt);
-
-        regenerateNormals();
-
-    }
-
-    /**
-     * Generate a new set of normals for a normal set of indexed points.
-     * Handles both flat and smooth shading of normals. Flat just has them
-     * perpendicular to the face. Smooth has them at the value at the
-     * average between the faces. Bottom normals always point down.
-     * <p>
-     * This must always be called after the coordinate generation. The
-     * top normal of the cone is always perpendicular to the face.
-     *
-     * @param data The data to patch the calculations on
-     * @throws InvalidArraySizeException The array is not big enough to contain
-     *   the requested geometry
-     */
-    private void generateIndexedNormals(GeometryData data)
-        throws InvalidArraySizeException
-    {
-        int vtx_cnt = data.vertexCount * 3;
-
-        if(data.normals == null)
-            data.normals = new float[vtx_cnt];
-        else if(data.normals.length < vtx_cnt)
-            throw new InvalidArraySizeException("Normals",
-                                                data.normals.length,
-                                                vtx_cnt);
-
-        // Just copy the values straight into the array.
-        regenerateNormals();
-
-    }
-
-    //------------------------------------------------------------------------
-    // Texture coordinate generation routines
-    //------------------------------------------------------------------------
-
-    /**
-     * Generate a new set of texCoords for a normal set of unindexed points. Each
-     * normal faces directly perpendicular for each point. This makes each face
-     * seem flat.
-     * <p>
-     * This must always be called after the coordinate generation.
-     *
-     * @param data The data to patch the calculations on
-     * @throws InvalidArraySizeException The array is not big enough to contain
-     *   the requested geometry
-     */
-    private void generateUnindexedTriTexture2D(GeometryData data)
-        throws InvalidArraySizeException
-    {
-        int vtx_cnt = data.vertexCount * 2;
-
-        if(data.textureCoordinates == null)
-            data.textureCoordinates = new float[vtx_cnt];
-        else if(data.textureCoordinates.length < vtx_cnt)
-            throw new InvalidArraySizeException("2D Texture coordinates",
-                                                data.textureCoordinates.length,
-                                                vtx_cnt);
-    }
-
-    /**
-     * Generate a new set of texCoords for a normal set of unindexed points. Each
-     * normal faces directly perpendicular for each point. This makes each face
-     * seem flat.
-     * <p>
-     * This must always be called after the coordinate generation.
-     *
-     * @param data The data to patch the calculations on
-     * @throws InvalidArraySizeException The array is not big enough to contain
-     *   the requested geometry
-     */
-    private void generateUnindexedQuadTexture2D(GeometryData data)
-        throws InvalidArraySizeException
-    {
-        int vtx_cnt = data.vertexCount * 2;
-
-        if(data.textureCoordinates == null)
-            data.textureCoordinates = new float[vtx_cnt];
-        else if(data.textureCoordinates.length < vtx_cnt)
-            throw new InvalidArraySizeException("2D Texture coordinates",
-                                                data.textureCoordinates.length,
-                                                vtx_cnt);
-    }
-
-    /**
-     * Generate a new set of texCoords for a normal set of unindexed points. Each
-     * normal faces directly perpendicular for each point. This makes each face
-     * seem flat.
-     * <p>
-     * This must always be called after the coordinate generation.
-     *
-     * @param data The data to patch the calculations on
-     * @throws InvalidArraySizeException The array is not big enough to contain
-     *   the requested geometry
-     */
-    private void generateUnindexedTriStripTexture2D(GeometryData data)
-        throws InvalidArraySizeException
-    {
-        int vtx_cnt = 0;
-
-        if(data.textureCoordinates == null)
-            data.textureCoordinates = new float[vtx_cnt];
-        else if(data.textureCoordinates.length < vtx_cnt)
-            throw new InvalidArraySizeException("2D Texture coordinates",
-                                                data.textureCoordinates.length,
-                                                vtx_cnt);
-
-    }
-
-    /**
-     * Generate a new set of texCoords for a texCoord set of indexed points.
-     * This must always be called after the coordinate generation. The
-     * top texCoord of the cone is always perpendicular to the face.
-     *
-     * @param data The data to patch the calculations on
-     * @throws InvalidArraySizeException The array is not big enough to contain
-     *   the requested geometry
-     */
-    private void generateIndexedTexture2D(GeometryData data)
-        throws InvalidArraySizeException
-    {
-        int vtx_cnt = data.vertexCount * 2;
-
-        if(data.textureCoordinates == null)
-            data.textureCoordinates = new float[vtx_cnt];
-        else if(data.textureCoordinates.length < vtx_cnt)
-            throw new InvalidArraySizeException("Texcoords",
-                                                data.textureCoordinates.length,
-                                                vtx_cnt);
-    }
-
-    /**
-     * Generate a new set of texCoords for a normal set of unindexed points. Each
-     * normal faces directly perpendicular for each point. This makes each face
-     * seem flat.
-     * <p>
-     * This must always be called after the coordinate generation.
-     *
-     * @param data The data to patch the calculations on
-     * @throws InvalidArraySizeException The array is not big enough to contain
-     *   the requested geometry
-     */
-    private void generateUnindexedTriTexture3D(GeometryData data)
-        throws InvalidArraySizeException
-    {
-        int vtx_cnt = data.vertexCount * 3;
-
-        if(data.textureCoordinates == null)
-            data.textureCoordinates = new float[vtx_cnt];
-        else if(data.textureCoordinates.length < vtx_cnt)
-            throw new InvalidArraySizeException("3D Texture coordinates",
-                                                data.textureCoordinates.length,
-                                                vtx_cnt);
-
-        float[] texCoords = data.textureCoordinates;
-    }
-
-    /**
-     * Generate a new set of texCoords for a normal set of unindexed points. Each
-     * normal faces directly perpendicular for each point. This makes each face
-     * seem flat.
-     * <p>
-     * This must always be called after the coordinate generation.
-     *
-     * @param data The data to patch the calculations on
-     * @throws InvalidArraySizeException The array is not big enough to contain
-     *   the requested geometry
-     */
-    private void generateUnindexedQuadTexture3D(GeometryData data)
-        throws InvalidArraySizeException
-    {
-        int vtx_cnt = data.vertexCount * 3;
-
-        if(data.textureCoordinates == null)
-            data.textureCoordinates = new float[vtx_cnt];
-        else if(data.textureCoordinates.length < vtx_cnt)
-            throw new InvalidArraySizeException("3D Texture coordinates",
-                                                data.textureCoordinates.length,
-                                                vtx_cnt);
-
-        float[] texCoords = data.textureCoordinates;
-    }
-
-    /**
-     * Generate a new set of texCoords for a normal set of unindexed points. Each
-     * normal faces directly perpendicular for each point. This makes each face
-     * seem flat.
-     * <p>
-     * This must always be called after the coordinate generation.
-     *
-     * @param data The data to patch the calculations on
-     * @throws InvalidArraySizeException The array is not big enough to contain
-     *   the requested geometry
-     */
-    private void generateIndexedTexture3D(GeometryData data)
-        throws InvalidArraySizeException
-    {
-        int vtx_cnt = data.vertexCount * 3;
-
-        if(data.textureCoordinates == null)
-            data.textureCoordinates = new float[vtx_cnt];
-        else if(data.textureCoordinates.length < vtx_cnt)
-            throw new InvalidArraySizeException("3D Texture coordinates",
-                                                data.textureCoordinates.length,
-                                                vtx_cnt);
-
-        float[] texCoords = data.textureCoordinates;
-    }
-    /**
-     * Generate a new set of texCoords for a normal set of unindexed points. Each
-     * normal faces directly perpendicular for each point. This makes each face
-     * seem flat.
-     * <p>
-     * This must always be called after the coordinate generation.
-     *
-     * @param data The data to patch the calculations on
-     * @throws InvalidArraySizeException The array is not big enough to contain
-     *   the requested geometry
-     */
-    private void generateUnindexedTriStripTexture3D(GeometryData data)
-        throws InvalidArraySizeException
-    {
-        int vtx_cnt = 0;
-
-        if(data.textureCoordinates == null)
-            data.textureCoordinates = new float[vtx_cnt];
-        else if(data.textureCoordinates.length < vtx_cnt)
-            throw new InvalidArraySizeException("2D Texture coordinates",
-                                                data.textureCoordinates.length,
-                                                vtx_cnt);
-    }
-
     /**
      * Convenience method to regenerate the smoothed normals for the
      * patch. It assumes that the patch has been regenerated just before
-     * this call.
+     * this call. The default does nothing.
      */
     protected void regenerateNormals()
     {
@@ -0,0 +1,444 @@
+/*
+ * j3d.org Copyright (c) 2001-2015
+ *                                 Java Source
+ *
+ *  This source is licensed under the GNU LGPL v2.1
+ *  Please read docs/LGPL.txt for more information
+ *
+ *  This software comes with the standard NO WARRANTY disclaimer for any
+ *  purpose. Use it at your own risk. If there's a problem you get to fix it.
+ */
+
+package org.j3d.geom.subdivision;
+
+// External imports
+import java.util.concurrent.ForkJoinPool;
+
+// Local imports
+import org.j3d.util.ForkJoinUtils;
+import org.j3d.util.RangeProcessor;
+
+/**
+ * Sparse table of weights that gives every output vertex of a subdivision
+ * surface directly in terms of the control points.
+ * <p>
+ *
+ * Subdivision is linear in the control points, so once the topology and
+ * level are fixed each output vertex is just a weighted sum of a small
+ * number of control points. This table holds those sums in compressed row
+ * form. Stencil i uses the entries from offsets[i] up to, but not including,
+ * offsets[i + 1], where each entry is a control point index and its weight.
+ * The weights of each stencil sum to one.
+ * <p>
+ *
+ * Building the table costs more than a single subdivision, but after that
+ * a new set of control point positions, such as from a skinned or animated
+ * cage, is turned into the output positions with a single sparse
+ * matrix-vector product. That is run in parallel over the stencils. Tables
+ * are created by {@link PolygonSubdivisionGenerator} when stencil mode is
+ * turned on. Once built, a table is read only and may be evaluated by any
+ * number of threads at once.
+ */
+public class SubdivisionStencilTable
+{
+    /**
+     * Stencils per piece when a pass is split over a pool. A stencil is
+     * only a handful of multiply-adds, so pieces need to be large.
+     */
+    private static final int MIN_STENCIL_CHUNK = 1024;
+
+    /** Pass that counts the entries of each new stencil */
+    private static final int COUNT_PASS = 0;
+
+    /** Pass that writes the entries of each new stencil */
+    private static final int FILL_PASS = 1;
+
+    /** Pass that applies the stencils to the control points */
+    private static final int EVALUATE_PASS = 2;
+
+    /** The number of control points the stencils refer to */
+    private final int numControlPoints;
+
+    /** The number of stencils, one per output vertex */
+    private final int numStencils;
+
+    /** Start of each stencil's entries, plus an end marker */
+    private int[] offsets;
+
+    /** Control point index of each entry */
+    private int[] indices;
+
+    /** Weight of each entry */
+    private float[] weights;
+
+    /** While building, the table for the previous level */
+    private SubdivisionStencilTable source;
+
+    /** While building, the generator that provides the rules */
+    private PolygonSubdivisionGenerator owner;
+
+    /** While building, the mesh the rules are read from */
+    private HalfEdgeMesh mesh;
+
+    /** While building, true if the rules are the limit rules */
+    private boolean limit;
+
+    /**
+     * Create the identity table, where each stencil is just the control
+     * point of the same index.
+     *
+     * @param numControlPoints The number of control points
+     */
+    SubdivisionStencilTable(int numControlPoints)
+    {
+        this.numControlPoints = numControlPoints;
+        this.numStencils = numControlPoints;
+
+        offsets = new int[numControlPoints + 1];
+        indices = new int[numControlPoints];
+        weights = new float[numControlPoints];
+
+        for(int i = 0; i < numControlPoints; i++)
+        {
+            offsets[i] = i;
+            indices[i] = i;
+            weights[i] = 1;
+        }
+
+        offsets[numControlPoints] = numControlPoints;
+    }
+
+    /**
+     * Create an empty table ready to be composed from another.
+     *
+     * @param numControlPoints The number of control points
+     * @param numStencils The number of stencils to create
+     */
+    private SubdivisionStencilTable(int numControlPoints, int numStencils)
+    {
+        this.numControlPoints = numControlPoints;
+        this.numStencils = numStencils;
+
+        offsets = new int[numStencils + 1];
+    }
+
+    /**
+     * Get the number of control points that the stencils refer to.
+     *
+     * @return The number of control points expected by evaluate
+     */
+    public int getNumControlPoints()
+    {
+        return numControlPoints;
+    }
+
+    /**
+     * Get the number of stencils, which is also the number of output
+     * vertices.
+     *
+     * @return The number of stencils
+     */
+    public int getNumStencils()
+    {
+        return numStencils;
+    }
+
+    /**
+     * Get the total number of weight entries over all the stencils.
+     *
+     * @return The number of non-zero entries in the table
+     */
+    public int getNumEntries()
+    {
+        return offsets[numStencils];
+    }
+
+    /**
+     * Get the start of each stencil's entries in the index and weight
+     * arrays, plus one extra end marker. The array is the internal copy
+     * and must not be changed.
+     *
+     * @return The array of numStencils + 1 offsets
+     */
+    public int[] getOffsets()
+    {
+        return offsets;
+    }
+
+    /**
+     * Get the control point index of every entry. The array is the
+     * internal copy and must not be changed.
+     *
+     * @return The array of control point indices
+     */
+    public int[] getIndices()
+    {
+        return indices;
+    }
+
+    /**
+     * Get the weight of every entry. The array is the internal copy and
+     * must not be changed.
+     *
+     * @return The array of weights
+     */
+    public float[] getWeights()
+    {
+        return weights;
+    }
+
+    /**
+     * Calculate the output positions for a set of control points using the
+     * shared fork/join pool.
+     *
+     * @param control Flat array of the control point positions
+     * @param output Flat array to write the output positions to
+     * @throws IllegalArgumentException One of the arrays is too small
+     */
+    public void evaluate(float[] control, float[] output)
+    {
+        evaluate(control, output, ForkJoinUtils.getSharedPool());
+    }
+
+    /**
+     * Calculate the output positions for a set of control points using the
+     * given fork/join pool. If the pool is null, all of the work is done on
+     * the calling thread. The control and output arrays must not be the
+     * same.
+     *
+     * @param control Flat array of the control point positions
+     * @param output Flat array to write the output positions to
+     * @param pool The pool to run the work in or null for the calling thread
+     * @throws IllegalArgumentException One of the arrays is too small
+     */
+    public void evaluate(float[] control, float[] output, ForkJoinPool pool)
+    {
+        if(control.length < numControlPoints * 3)
+            throw new IllegalArgumentException(
+                "Control array is smaller than numControlPoints * 3");
+
+        if(output.length < numStencils * 3)
+            throw new IllegalArgumentException(
+                "Output array is smaller than numStencils * 3");
+
+        runPass(EVALUATE_PASS, control, output, pool);
+    }
+
+    /**
+     * Build a new table by applying one set of rules of a subdivision scheme
+     * on top of this table. When limit is false, the stencils are the child
+     * vertices of the given mesh. When true, they are the limit positions of
+     * the mesh's own vertices.
+     *
+     * @param generator The generator that provides the rules
+     * @param ruleMesh The mesh that the rules are read from. This table must
+     *    have one stencil per vertex of this mesh
+     * @param count The number of stencils in the new table
+     * @param limitRules true to use the limit rules
+     * @param pool The pool to run the work in or null for the calling thread
+     * @return The new table in terms of the same control points
+     */
+    SubdivisionStencilTable compose(PolygonSubdivisionGenerator generator,
+                                    HalfEdgeMesh ruleMesh,
+                                    int count,
+                                    boolean limitRules,
+                                    ForkJoinPool pool)
+    {
+        SubdivisionStencilTable ret_val =
+            new SubdivisionStencilTable(numControlPoints, count);
+
+        ret_val.source = this;
+        ret_val.owner = generator;
+        ret_val.mesh = ruleMesh;
+        ret_val.limit = limitRules;
+
+        ret_val.runPass(COUNT_PASS, null, null, pool);
+
+        // Turn the counts into offsets
+        int[] offs = ret_val.offsets;
+        int total = 0;
+
+        for(int i = 0; i < count; i++)
+        {
+            int c = offs[i];
+            offs[i] = total;
+            total += c;
+        }
+
+        offs[count] = total;
+
+        ret_val.indices = new int[total];
+        ret_val.weights = new float[total];
+
+        ret_val.runPass(FILL_PASS, null, null, pool);
+
+        ret_val.source = null;
+        ret_val.owner = null;
+        ret_val.mesh = null;
+
+        return ret_val;
+    }
+
+    /**
+     * Process a range of stencils for one of the passes. Building a table
+     * from the one for the previous level takes two passes. The count pass
+     * works out how many distinct control points each new stencil uses,
+     * and once the offsets are known the fill pass writes them. Each pass
+     * only writes the slots of its own range of stencils.
+     *
+     * @param pass The pass to run
+     * @param control Control point positions for the evaluate pass
+     * @param output Output positions for the evaluate pass
+     * @param start The first stencil, inclusive
+     * @param end The last stencil, exclusive
+     */
+    private void processStencils(int pass,
+                                 float[] control,
+                                 float[] output,
+                                 int start,
+                                 int end)
+    {
+        if(pass == EVALUATE_PASS)
+        {
+            evaluateRange(control, output, start, end);
+            return;
+        }
+
+        // Dense accumulator over the control points, with a list of the
+        // slots touched so that clearing it is cheap.
+        float[] acc = new float[numControlPoints];
+        int[] touched = new int[64];
+        boolean[] used = new boolean[numControlPoints];
+        StencilRule rule = new StencilRule();
+
+        int[] src_offsets = source.offsets;
+        int[] src_indices = source.indices;
+        float[] src_weights = source.weights;
+
+        for(int s = start; s < end; s++)
+        {
+            rule.clear();
+
+            if(limit)
+                owner.limitRule(mesh, s, rule);
+            else
+                owner.subdivisionRule(mesh, s, rule);
+
+            int num_touched = 0;
+
+            for(int r = 0; r < rule.size; r++)
+            {
+                int src = rule.indices[r];
+                float w = rule.weights[r];
+
+                for(int i = src_offsets[src]; i < src_offsets[src + 1]; i++)
+                {
+                    int c = src_indices[i];
+
+                    if(!used[c])
+                    {
+                        used[c] = true;
+
+                        if(num_touched == touched.length)
+                        {
+                            int[] tmp = new int[num_touched * 2];
+                            System.arraycopy(touched, 0, tmp, 0, num_touched);
+                            touched = tmp;
+                        }
+
+                        touched[num_touched++] = c;
+                    }
+
+                    acc[c] += w * src_weights[i];
+                }
+            }
+
+            if(pass == COUNT_PASS)
+            {
+                offsets[s] = num_touched;
+            }
+            else
+            {
+                int out = offsets[s];
+
+                for(int i = 0; i < num_touched; i++)
+                {
+                    int c = touched[i];
+                    indices[out + i] = c;
+                    weights[out + i] = acc[c];
+                }
+            }
+
+            for(int i = 0; i < num_touched; i++)
+            {
+                int c = touched[i];
+                acc[c] = 0;
+                used[c] = false;
+            }
+        }
+    }
+
+    /**
+     * Apply a range of the stencils to the control points.
+     *
+     * @param control Control point positions
+     * @param output Array to write the output positions to
+     * @param start The first stencil, inclusive
+     * @param end The last stencil, exclusive
+     */
+    private void evaluateRange(float[] control,
+                               float[] output,
+                               int start,
+                               int end)
+    {
+        for(int s = start; s < end; s++)
+        {
+            float x = 0;
+            float y = 0;
+            float z = 0;
+
+            int last = offsets[s + 1];
+
+            for(int i = offsets[s]; i < last; i++)
+            {
+                int p = indices[i] * 3;
+                float w = weights[i];
+
+                x += w * control[p];
+                y += w * control[p + 1];
+                z += w * control[p + 2];
+            }
+
+            int o = s * 3;
+            output[o] = x;
+            output[o + 1] = y;
+            output[o + 2] = z;
+        }
+    }
+
+    /**
+     * Run one of the passes, either directly or on the pool.
+     *
+     * @param pass The pass to run
+     * @param control Control point positions for the evaluate pass
+     * @param output Output positions for the evaluate pass
+     * @param pool The pool to use or null for the calling thread
+     */
+    private void runPass(final int pass,
+                         final float[] control,
+                         final float[] output,
+                         ForkJoinPool pool)
+    {
+        RangeProcessor processor = new RangeProcessor()
+        {
+            @Override
+            public void processRange(int start, int end)
+            {
+                processStencils(pass, control, output, start, end);
+            }
+        };
+
+        ForkJoinUtils.forRange(pool, 0, numStencils, MIN_STENCIL_CHUNK,
+                               processor);
+    }
+}
@@ -45,4 +45,13 @@ public interface SubdivisionTypes
     /** The edge is labeled as crease (s = 2) */
     public int CREASE_EDGE = 2;
 
+    /** The sector is an ordinary smooth or crease sector */
+    public int UNTAGGED_SECTOR = 0;
+
+    /** The sector is a convex corner with an angle in (0, pi) */
+    public int CONVEX_SECTOR = 1;
+
+    /** The sector is a concave corner with an angle in (pi, 2pi) */
+    public int CONCAVE_SECTOR = 2;
+
 }
@@ -10,12 +10,17 @@
 package org.j3d.geom.terrain;
 
 // External imports
-// None
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
 
 // Local imports
 import org.j3d.geom.GeometryData;
 import org.j3d.geom.InvalidArraySizeException;
+import org.j3d.util.ForkJoinUtils;
 import org.j3d.util.I18nManager;
+import org.j3d.util.RangeProcessor;
 import org.j3d.util.interpolator.ColorInterpolator;
 
 /**
@@ -36,6 +41,11 @@ import org.j3d.util.interpolator.ColorInterpolator;
  * <p>
  *
  * Values outside the range provided are clamped.
+ * <p>
+ *
+ * The ramp can also colour a grid of heights straight into an image or a
+ * <code>ByteBuffer</code>, for example to make a preview of a large
+ * elevation model. The rows of the grid are split over a fork/join pool.
  *
  * <p>
  * <b>Internationalisation Resource Names</b>
@@ -66,9 +76,24 @@ public class ColorRampGenerator
     private static final String RAMP_LENGTH_MSG_PROP =
         "org.j3d.geom.terrain.ColorRampGenerator.rampLengthMsg";
 
+    /**
+     * Rows per piece when the colouring is split over a pool. Every piece
+     * makes its own interpolator, so they should not be too small.
+     */
+    private static final int MIN_ROW_CHUNK = 8;
+
     /** The colour interpolator we are using */
     private ColorInterpolator interpolator;
 
+    /** The height of each key of the ramp */
+    private float[] rampHeights;
+
+    /** The RGBA colour of each key of the ramp */
+    private float[] rampColors;
+
+    /** The number of keys in the ramp */
+    private int rampSize;
+
     /** A flag to say whether the colour values included an alpha component */
     private boolean hasAlpha;
 
@@ -85,9 +110,11 @@ public class ColorRampGenerator
 
         // setup the interpolator to have a very small transition between the
         // sea colour and land color.
-        interpolator = new ColorInterpolator(2);
-        interpolator.addRGBKeyFrame(0f, 0f, 0f, 1f, 0f);
-        interpolator.addRGBKeyFrame(0.5f, 1f, 0f, 0f, 0f);
+        rampHeights = new float[] { 0f, 0.5f };
+        rampColors = new float[] { 0f, 0f, 1f, 0f, 1f, 0f, 0f, 0f };
+        rampSize = 2;
+
+        interpolator = createInterpolator();
     }
 
     /**
@@ -175,30 +202,20 @@ public class ColorRampGenerator
         }
 
         hasAlpha = (ramp[0].length != 3);
-        interpolator = new ColorInterpolator(size);
+        rampHeights = new float[size];
+        rampColors = new float[size * 4];
+        rampSize = size;
 
-        if(hasAlpha)
-        {
-            for(int i = 0; i < size; i++)
-            {
-                interpolator.addRGBKeyFrame(heights[i],
-                                            ramp[i][0],
-                                            ramp[i][1],
-                                            ramp[i][2],
-                                            ramp[i][3]);
-            }
-        }
-        else
+        for(int i = 0; i < size; i++)
         {
-            for(int i = 0; i < size; i++)
-            {
-                interpolator.addRGBKeyFrame(heights[i],
-                                            ramp[i][0],
-                                            ramp[i][1],
-                                            ramp[i][2],
-                                            0);
-            }
+            rampHeights[i] = heights[i];
+            rampColors[i * 4] = ramp[i][0];
+            rampColors[i * 4 + 1] = ramp[i][1];
+            rampColors[i * 4 + 2] = ramp[i][2];
+            rampColors[i * 4 + 3] = hasAlpha ? ramp[i][3] : 0;
         }
+
+        interpolator = createInterpolator();
     }
 
 
@@ -272,31 +289,32 @@ public class ColorRampGenerator
         }
 
         this.hasAlpha = hasAlpha;
-        interpolator = new ColorInterpolator(heights.length);
+        rampHeights = new float[size];
+        rampColors = new float[size * 4];
+        rampSize = size;
 
         int idx = 0;
-        if(hasAlpha)
-        {
-            for(int i = 0; i < size; i++)
-            {
-                interpolator.addRGBKeyFrame(heights[i],
-                                            ramp[idx++],
-                                            ramp[idx++],
-                                            ramp[idx++],
-                                            ramp[idx++]);
-            }
-        }
-        else
+
+        for(int i = 0; i < size; i++)
         {
-            for(int i = 0; i < size; i++)
-            {
-                interpolator.addRGBKeyFrame(heights[i],
-                                            ramp[idx++],
-                                            ramp[idx++],
-                                            ramp[idx++],
-                                            0);
-            }
+            rampHeights[i] = heights[i];
+            rampColors[i * 4] = ramp[idx++];
+            rampColors[i * 4 + 1] = ramp[idx++];
+            rampColors[i * 4 + 2] = ramp[idx++];
+            rampColors[i * 4 + 3] = hasAlpha ? ramp[idx++] : 0;
         }
+
+        interpolator = createInterpolator();
+    }
+
+    /**
+     * Check to see if the ramp colours include an alpha channel.
+     *
+     * @return true if colour output includes alpha
+     */
+    public boolean hasAlpha()
+    {
+        return hasAlpha;
     }
 
     /**
@@ -360,4 +378,187 @@ public class ColorRampGenerator
             }
         }
     }
+
+    /**
+     * Create an image of a grid of heights coloured by the ramp, using the
+     * shared fork/join pool.
+     *
+     * @param heights The grid of heights, indexed as [row][column]
+     * @return An image representing the heights
+     */
+    public BufferedImage createImage(float[][] heights)
+    {
+        return createImage(heights, ForkJoinUtils.getSharedPool());
+    }
+
+    /**
+     * Create an image of a grid of heights coloured by the ramp, using the
+     * given fork/join pool. If the pool is null, all of the work is done on
+     * the calling thread. The image is RGB, or ARGB if the ramp has alpha,
+     * and the colours are written straight into its raster. The heights are
+     * used as they are to look up the ramp, not scaled to the height range.
+     *
+     * @param heights The grid of heights, indexed as [row][column]
+     * @param pool The pool to run the work in or null for the calling thread
+     * @return An image representing the heights
+     */
+    public BufferedImage createImage(float[][] heights, ForkJoinPool pool)
+    {
+        int img_type = hasAlpha ?
+                       BufferedImage.TYPE_INT_ARGB :
+                       BufferedImage.TYPE_INT_RGB;
+
+        BufferedImage image = new BufferedImage(heights[0].length,
+                                                heights.length,
+                                                img_type);
+
+        DataBufferInt buffer =
+            (DataBufferInt)image.getRaster().getDataBuffer();
+
+        runRows(heights, buffer.getData(), null, pool);
+
+        return image;
+    }
+
+    /**
+     * Write the ramp colours of a grid of heights into a buffer, row by
+     * row. Each height is 3 bytes of RGB, or 4 bytes of RGBA if the ramp has
+     * alpha. Writing starts at the current position of the buffer, which is
+     * moved to the end of the written values.
+     *
+     * @param heights The grid of heights, indexed as [row][column]
+     * @param buffer The buffer to write to
+     * @param pool The pool to run the work in or null for the calling thread
+     * @throws InvalidArraySizeException The buffer does not have enough space
+     *   remaining
+     */
+    public void writeImage(float[][] heights,
+                           ByteBuffer buffer,
+                           ForkJoinPool pool)
+    {
+        int byte_count = heights[0].length * heights.length *
+                         (hasAlpha ? 4 : 3);
+
+        if(buffer.remaining() < byte_count)
+            throw new InvalidArraySizeException("Colour buffer",
+                                                buffer.remaining(),
+                                                byte_count);
+
+        runRows(heights, null, buffer.slice(), pool);
+
+        buffer.position(buffer.position() + byte_count);
+    }
+
+    /**
+     * Colour a range of rows of a height grid.
+     *
+     * @param heights The grid of heights
+     * @param pixels Packed colour output or null for byte output
+     * @param bytes Byte output, indexed from zero, or null
+     * @param start First row to process, inclusive
+     * @param end Last row to process, exclusive
+     */
+    private void processRows(float[][] heights,
+                             int[] pixels,
+                             ByteBuffer bytes,
+                             int start,
+                             int end)
+    {
+        // The interpolator keeps state between calls, so each piece of
+        // work needs its own.
+        ColorInterpolator interp = createInterpolator();
+        int img_width = heights[0].length;
+
+        for(int i = start; i < end; i++)
+        {
+            float[] row = heights[i];
+
+            for(int j = 0; j < img_width; j++)
+            {
+                float[] col = interp.floatRGBValue(row[j]);
+
+                int r = toByte(col[0]);
+                int g = toByte(col[1]);
+                int b = toByte(col[2]);
+                int a = hasAlpha ? toByte(col[3]) : 255;
+
+                if(pixels != null)
+                {
+                    pixels[i * img_width + j] =
+                        (a << 24) | (r << 16) | (g << 8) | b;
+                }
+                else if(hasAlpha)
+                {
+                    int out = (i * img_width + j) * 4;
+                    bytes.put(out, (byte)r);
+                    bytes.put(out + 1, (byte)g);
+                    bytes.put(out + 2, (byte)b);
+                    bytes.put(out + 3, (byte)a);
+                }
+                else
+                {
+                    int out = (i * img_width + j) * 3;
+                    bytes.put(out, (byte)r);
+                    bytes.put(out + 1, (byte)g);
+                    bytes.put(out + 2, (byte)b);
+                }
+            }
+        }
+    }
+
+    /**
+     * Colour all the rows of a height grid, either on the calling thread or
+     * split over the pool.
+     */
+    private void runRows(final float[][] heights,
+                         final int[] pixels,
+                         final ByteBuffer bytes,
+                         ForkJoinPool pool)
+    {
+        RangeProcessor processor = new RangeProcessor()
+        {
+            @Override
+            public void processRange(int start, int end)
+            {
+                processRows(heights, pixels, bytes, start, end);
+            }
+        };
+
+        ForkJoinUtils.forRange(pool, 0, heights.length, MIN_ROW_CHUNK,
+                               processor);
+    }
+
+    /**
+     * Create a new interpolator from the current ramp.
+     *
+     * @return A new interpolator instance
+     */
+    private ColorInterpolator createInterpolator()
+    {
+        ColorInterpolator ret_val = new ColorInterpolator(rampSize);
+
+        for(int i = 0; i < rampSize; i++)
+        {
+            ret_val.addRGBKeyFrame(rampHeights[i],
+                                   rampColors[i * 4],
+                                   rampColors[i * 4 + 1],
+                                   rampColors[i * 4 + 2],
+                                   rampColors[i * 4 + 3]);
+        }
+
+        return ret_val;
+    }
+
+    /**
+     * Convert a colour component to a byte value, clamping to [0, 1].
+     */
+    private static int toByte(float value)
+    {
+        if(value <= 0)
+            return 0;
+        else if(value >= 1)
+            return 255;
+        else
+            return (int)(value * 255);
+    }
 }
@@ -0,0 +1,57 @@
+/*
+ * j3d.org Copyright (c) 2001-2015
+ *                                 Java Source
+ *
+ *  This source is licensed under the GNU LGPL v2.1
+ *  Please read docs/LGPL.txt for more information
+ *
+ *  This software comes with the standard NO WARRANTY disclaimer for any
+ *  purpose. Use it at your own risk. If there's a problem you get to fix it.
+ */
+
+package org.j3d.geom.terrain;
+
+// External imports
+// None
+
+// Local imports
+import org.j3d.geom.GeometryData;
+
+/**
+ * One rectangular piece of an elevation grid, as created by the chunked
+ * mode of {@link ElevationGridGenerator}.
+ * <p>
+ *
+ * The geometry is an indexed triangle set where every grid point is held
+ * once. Points along the border of the chunk are shared in value, but not in
+ * storage, with the neighbouring chunks. If skirts were requested, the
+ * geometry also contains a strip of triangles hanging down from the border
+ * of the chunk. The bounds cover all of the vertices, including the skirt,
+ * so they can be used directly for culling.
+ */
+public class ElevationGridChunk
+{
+    /** The index of this chunk along the width (X axis) */
+    public int chunkX;
+
+    /** The index of this chunk along the depth (Z axis) */
+    public int chunkZ;
+
+    /** The geometry of the chunk */
+    public GeometryData geometry;
+
+    /** The minimum X, Y and Z of the geometry */
+    public float[] minBounds;
+
+    /** The maximum X, Y and Z of the geometry */
+    public float[] maxBounds;
+
+    /**
+     * Create a new empty chunk.
+     */
+    public ElevationGridChunk()
+    {
+        minBounds = new float[3];
+        maxBounds = new float[3];
+    }
+}
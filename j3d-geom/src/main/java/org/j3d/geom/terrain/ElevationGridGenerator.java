@@ -10,7 +10,7 @@
 package org.j3d.geom.terrain;
 
 // External imports
-// None
+import java.util.concurrent.ForkJoinPool;
 
 // Local imports
 import org.j3d.geom.GeometryGenerator;
@@ -18,6 +18,8 @@ import org.j3d.geom.GeometryData;
 import org.j3d.geom.InvalidArraySizeException;
 import org.j3d.geom.UnsupportedTypeException;
 import org.j3d.maths.vector.Vector3d;
+import org.j3d.util.ForkJoinUtils;
+import org.j3d.util.RangeProcessor;
 
 /**
  * A generator that takes a set of height values as a grid and turns it into
@@ -33,6 +35,20 @@ import org.j3d.maths.vector.Vector3d;
  *
  * Points are defined in the height arrays in width first order. Normals, are
  * always smooth blended.
+ * <p>
+ *
+ * <b>Chunked Generation</b>
+ * <p>
+ * A large grid made as one piece of geometry is a single draw that can
+ * never be culled. {@link #generateChunks(GeometryData, int, int, ForkJoinPool)}
+ * instead splits the grid into a number of chunks along each side. Each
+ * chunk is an indexed triangle set holding every grid point once, with the
+ * bounds of the chunk for culling. Normals and texture coordinates are
+ * worked out over the whole grid first, so there is no lighting or texture
+ * seam between chunks. When neighbouring chunks are drawn at different
+ * levels of detail, cracks can open along their borders. Setting a skirt
+ * depth adds a strip of triangles hanging down that far below the border
+ * of every chunk to hide them. The chunks are built in parallel.
  *
  * Alan: There are some cases where texture generation is not complete.
  * Especially in regards to 3D textures.
@@ -57,6 +73,12 @@ public class ElevationGridGenerator extends GeometryGenerator
     /** The default base height of the terrain */
     private static final float DEFAULT_HEIGHT = 2;
 
+    /**
+     * Chunks per piece when the chunks are built over a pool. Each chunk is
+     * a full mesh of its own, which is plenty of work for one thread.
+     */
+    private static final int MIN_CHUNK_TASK = 1;
+
     /** Current width of the terrain */
     private float terrainWidth;
 
@@ -108,6 +130,9 @@ public class ElevationGridGenerator extends GeometryGenerator
     /** Whether to use the center as origin or the left corner */
     private boolean centerOrigin;
 
+    /** Depth of the skirts below the chunk borders. Zero for none */
+    private float skirtDepth;
+
     /**
      * Construct a default terrain with the following properties:<BR>
      * Size: 100x100
@@ -373,6 +398,129 @@ public class ElevationGridGenerator extends GeometryGenerator
         normalsChanged = true;
     }
 
+    /**
+     * Set the depth of the skirts added below the border of each chunk in
+     * chunked generation. Zero turns the skirts off.
+     *
+     * @param depth The distance the skirt hangs below the border
+     * @throws IllegalArgumentException The depth is negative
+     */
+    public void setSkirtDepth(float depth)
+    {
+        if(!(depth >= 0))
+            throw new IllegalArgumentException("Skirt depth < 0");
+
+        skirtDepth = depth;
+    }
+
+    /**
+     * Get the depth of the skirts used in chunked generation.
+     *
+     * @return The skirt depth, zero if none
+     */
+    public float getSkirtDepth()
+    {
+        return skirtDepth;
+    }
+
+    /**
+     * Generate the grid as a set of chunks using the shared fork/join pool.
+     *
+     * @param format Describes the geometry to create for each chunk
+     * @param numWidth The number of chunks along the width
+     * @param numDepth The number of chunks along the depth
+     * @return The chunks, row by row along the width
+     * @throws IllegalArgumentException A chunk count is less than one or
+     *   more than the number of quads along that side
+     * @throws UnsupportedTypeException The format is not indexed triangles
+     */
+    public ElevationGridChunk[] generateChunks(GeometryData format,
+                                               int numWidth,
+                                               int numDepth)
+        throws UnsupportedTypeException
+    {
+        return generateChunks(format,
+                              numWidth,
+                              numDepth,
+                              ForkJoinUtils.getSharedPool());
+    }
+
+    /**
+     * Generate the grid as a set of chunks using the given fork/join pool.
+     * If the pool is null, all of the work is done on the calling thread.
+     * <p>
+     *
+     * The format must ask for indexed triangles. Its geometry components
+     * say whether normals and 2D texture coordinates are created, and its
+     * sub type says whether heights are relative, the same as for
+     * {@link #generate(GeometryData)}. Each chunk gets its own new
+     * geometry. The quads of the grid are divided as evenly as they can be
+     * between the chunks. The chunk at (i, j) is placed at index
+     * <code>j * numWidth + i</code>.
+     *
+     * @param format Describes the geometry to create for each chunk
+     * @param numWidth The number of chunks along the width
+     * @param numDepth The number of chunks along the depth
+     * @param pool The pool to run the work in or null for the calling thread
+     * @return The chunks, row by row along the width
+     * @throws IllegalArgumentException A chunk count is less than one or
+     *   more than the number of quads along that side
+     * @throws UnsupportedTypeException The format is not indexed triangles
+     */
+    public ElevationGridChunk[] generateChunks(GeometryData format,
+                                               final int numWidth,
+                                               final int numDepth,
+                                               ForkJoinPool pool)
+        throws UnsupportedTypeException
+    {
+        if(format.geometryType != GeometryData.INDEXED_TRIANGLES)
+            throw new UnsupportedTypeException("Chunks must be indexed " +
+                                               "triangles");
+
+        if((numWidth < 1) || (numWidth > widthPoints - 1))
+            throw new IllegalArgumentException("Width chunks not between 1 " +
+                                               "and the quad count");
+
+        if((numDepth < 1) || (numDepth > depthPoints - 1))
+            throw new IllegalArgumentException("Depth chunks not between 1 " +
+                                               "and the quad count");
+
+        final int components = format.geometryComponents;
+        final int sub_type = format.geometrySubType;
+
+        // The shared grid data is made once, up front, so that the chunk
+        // builders only ever read it.
+        regenerateBase();
+
+        if((components & GeometryData.NORMAL_DATA) != 0)
+            regenerateNormals();
+
+        if((components & GeometryData.TEXTURE_2D_DATA) != 0)
+            regenerateTexcoords();
+
+        int num_chunks = numWidth * numDepth;
+        final ElevationGridChunk[] ret_val = new ElevationGridChunk[num_chunks];
+
+        RangeProcessor processor = new RangeProcessor()
+        {
+            @Override
+            public void processRange(int start, int end)
+            {
+                processChunks(ret_val,
+                              numWidth,
+                              numDepth,
+                              components,
+                              sub_type,
+                              start,
+                              end);
+            }
+        };
+
+        ForkJoinUtils.forRange(pool, 0, num_chunks, MIN_CHUNK_TASK, processor);
+
+        return ret_val;
+    }
+
     /**
      * Get the number of vertices that this generator will create for the
      * shape given in the definition based on the current width and height
@@ -1524,6 +1672,225 @@ public class ElevationGridGenerator extends GeometryGenerator
             coords[i] += baseHeight;
     }
 
+    /**
+     * Build a range of chunks. The grid data must already be up to date, as
+     * it is only read here and each chunk goes into its own slot.
+     *
+     * @param chunks Array to place the chunks in
+     * @param numWidth The number of chunks along the width
+     * @param numDepth The number of chunks along the depth
+     * @param components The GeometryData component flags to create
+     * @param subType The GeometryData sub type flags
+     * @param start First chunk index to build, inclusive
+     * @param end Last chunk index to build, exclusive
+     */
+    private void processChunks(ElevationGridChunk[] chunks,
+                               int numWidth,
+                               int numDepth,
+                               int components,
+                               int subType,
+                               int start,
+                               int end)
+    {
+        for(int i = start; i < end; i++)
+        {
+            chunks[i] = buildChunk(i % numWidth,
+                                   i / numWidth,
+                                   numWidth,
+                                   numDepth,
+                                   components,
+                                   subType);
+        }
+    }
+
+    /**
+     * Build a single chunk from the grid data. The grid points of the chunk
+     * come first, width first, followed by one skirt vertex for each border
+     * point. The border is walked so that the skirt triangles face out of
+     * the chunk.
+     *
+     * @param chunkX The index of the chunk along the width
+     * @param chunkZ The index of the chunk along the depth
+     * @param numWidth The number of chunks along the width
+     * @param numDepth The number of chunks along the depth
+     * @param components The GeometryData component flags to create
+     * @param subType The GeometryData sub type flags
+     * @return The new chunk
+     */
+    private ElevationGridChunk buildChunk(int chunkX,
+                                          int chunkZ,
+                                          int numWidth,
+                                          int numDepth,
+                                          int components,
+                                          int subType)
+    {
+        int width_quads = widthPoints - 1;
+        int depth_quads = depthPoints - 1;
+        int first_col = chunkX * width_quads / numWidth;
+        int first_row = chunkZ * depth_quads / numDepth;
+        int cols = (chunkX + 1) * width_quads / numWidth - first_col + 1;
+        int rows = (chunkZ + 1) * depth_quads / numDepth - first_row + 1;
+
+        int grid_cnt = cols * rows;
+        int border_cnt = (skirtDepth > 0) ? (cols - 1 + rows - 1) * 2 : 0;
+        int vtx_cnt = grid_cnt + border_cnt;
+        int index_size = ((cols - 1) * (rows - 1) + border_cnt) * 6;
+
+        boolean do_normals = (components & GeometryData.NORMAL_DATA) != 0;
+        boolean do_texture = (components & GeometryData.TEXTURE_2D_DATA) != 0;
+
+        GeometryData data = new GeometryData();
+        data.geometryType = GeometryData.INDEXED_TRIANGLES;
+        data.geometrySubType = subType;
+        data.geometryComponents = components &
+            (GeometryData.NORMAL_DATA | GeometryData.TEXTURE_2D_DATA);
+        data.vertexCount = vtx_cnt;
+        data.coordinates = new float[vtx_cnt * 3];
+        data.indexesCount = index_size;
+        data.indexes = new int[index_size];
+
+        if(do_normals)
+            data.normals = new float[vtx_cnt * 3];
+
+        if(do_texture)
+            data.textureCoordinates = new float[vtx_cnt * 2];
+
+        float[] coords = data.coordinates;
+
+        for(int i = 0; i < rows; i++)
+        {
+            int src = (first_row + i) * widthPoints + first_col;
+            int dest = i * cols;
+
+            System.arraycopy(terrainCoordinates, src * 3,
+                             coords, dest * 3,
+                             cols * 3);
+
+            if(do_normals)
+                System.arraycopy(terrainNormals, src * 3,
+                                 data.normals, dest * 3,
+                                 cols * 3);
+
+            if(do_texture)
+                System.arraycopy(terrainTexcoords, src * 2,
+                                 data.textureCoordinates, dest * 2,
+                                 cols * 2);
+        }
+
+        checkRelativeHeights(subType, coords, grid_cnt);
+
+        int[] indexes = data.indexes;
+        int idx = 0;
+
+        // Same winding as the single piece of geometry
+        for(int i = 0; i < rows - 1; i++)
+        {
+            int vtx = i * cols;
+
+            for(int j = 0; j < cols - 1; j++)
+            {
+                indexes[idx++] = vtx;
+                indexes[idx++] = vtx + cols + 1;
+                indexes[idx++] = vtx + 1;
+
+                indexes[idx++] = vtx + cols;
+                indexes[idx++] = vtx + cols + 1;
+                indexes[idx++] = vtx;
+
+                vtx++;
+            }
+        }
+
+        if(border_cnt != 0)
+        {
+            // Walk the border along the first row, down the last column,
+            // back along the last row and up the first column.
+            int[] border = new int[border_cnt];
+            int count = 0;
+
+            for(int j = 0; j < cols - 1; j++)
+                border[count++] = j;
+
+            for(int i = 0; i < rows - 1; i++)
+                border[count++] = i * cols + cols - 1;
+
+            for(int j = cols - 1; j > 0; j--)
+                border[count++] = (rows - 1) * cols + j;
+
+            for(int i = rows - 1; i > 0; i--)
+                border[count++] = i * cols;
+
+            for(int k = 0; k < border_cnt; k++)
+            {
+                int src = border[k];
+                int dest = grid_cnt + k;
+
+                coords[dest * 3] = coords[src * 3];
+                coords[dest * 3 + 1] = coords[src * 3 + 1] - skirtDepth;
+                coords[dest * 3 + 2] = coords[src * 3 + 2];
+
+                if(do_normals)
+                {
+                    data.normals[dest * 3] = data.normals[src * 3];
+                    data.normals[dest * 3 + 1] = data.normals[src * 3 + 1];
+                    data.normals[dest * 3 + 2] = data.normals[src * 3 + 2];
+                }
+
+                if(do_texture)
+                {
+                    data.textureCoordinates[dest * 2] =
+                        data.textureCoordinates[src * 2];
+                    data.textureCoordinates[dest * 2 + 1] =
+                        data.textureCoordinates[src * 2 + 1];
+                }
+            }
+
+            for(int k = 0; k < border_cnt; k++)
+            {
+                int next = (k + 1) % border_cnt;
+                int p0 = border[k];
+                int p1 = border[next];
+                int s0 = grid_cnt + k;
+                int s1 = grid_cnt + next;
+
+                indexes[idx++] = p0;
+                indexes[idx++] = s1;
+                indexes[idx++] = s0;
+
+                indexes[idx++] = p0;
+                indexes[idx++] = p1;
+                indexes[idx++] = s1;
+            }
+        }
+
+        ElevationGridChunk ret_val = new ElevationGridChunk();
+        ret_val.chunkX = chunkX;
+        ret_val.chunkZ = chunkZ;
+        ret_val.geometry = data;
+
+        float[] min = ret_val.minBounds;
+        float[] max = ret_val.maxBounds;
+
+        min[0] = max[0] = coords[0];
+        min[1] = max[1] = coords[1];
+        min[2] = max[2] = coords[2];
+
+        for(int i = 3; i < vtx_cnt * 3; i += 3)
+        {
+            for(int k = 0; k < 3; k++)
+            {
+                float v = coords[i + k];
+
+                if(v < min[k])
+                    min[k] = v;
+                else if(v > max[k])
+                    max[k] = v;
+            }
+        }
+
+        return ret_val;
+    }
+
     /**
      * Regenerate the base coordinate points. These are the flat circle that
      * makes up the base of the code. The coordinates are generated based on
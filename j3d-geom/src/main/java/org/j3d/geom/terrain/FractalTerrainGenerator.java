@@ -11,12 +11,15 @@ package org.j3d.geom.terrain;
 
 // External imports
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 // Local imports
 import org.j3d.geom.GeometryGenerator;
 import org.j3d.geom.GeometryData;
 import org.j3d.geom.InvalidArraySizeException;
 import org.j3d.geom.UnsupportedTypeException;
+import org.j3d.util.ForkJoinUtils;
+import org.j3d.util.RangeProcessor;
 
 /**
  * A terrain generator using the standard "fractal" algorithm.
@@ -45,6 +48,31 @@ import org.j3d.geom.UnsupportedTypeException;
  * terrain site with either 3 or 5 points on a side although the generator will
  * accept a seed terrain, so long as it is square and contains more than 2
  * points on a side.
+ * <p>
+ *
+ * <b>Tiled Generation</b>
+ * <p>
+ * The standard mode builds the whole terrain in one pass from a sequential
+ * random number generator, so it must all fit in memory at once. The tiled
+ * mode instead treats the terrain as an unbounded grid of tiles, each one
+ * <code>2<sup>iterations</sup> + 1</code> points on a side, with neighbouring
+ * tiles sharing their border points. The perturbation of every point is
+ * taken from a hash of the seed and the point's global grid coordinate, and
+ * the new points along an edge depend only on the points of that edge. So a
+ * tile is the same no matter when or in what order it is made, and the
+ * border it shares with a neighbour is identical in both. Tiles can be made
+ * on demand with {@link #generateTile(int, int, float[][])}, or a block of
+ * them in parallel with
+ * {@link #generateTiles(int, int, int, int, float[][][], ForkJoinPool)}.
+ * <p>
+ *
+ * The corner points of every tile get a random height within the terrain
+ * height, the seed terrain is not used, and a seed of 0 is just another
+ * seed value. Each tile covers the full width and depth of this generator,
+ * so the geometry for a tile needs to be translated by the tile coordinate
+ * times the width and depth. The tile generation methods only read the
+ * settings of this generator, so any number of threads may make tiles at
+ * once as long as the settings are not changed at the same time.
  *
  * @author Justin Couch
  * @version $Revision: 1.5 $
@@ -66,6 +94,15 @@ public class FractalTerrainGenerator extends GeometryGenerator
     /** The default initial height */
     private static final float DEFAULT_HEIGHT = 20;
 
+    /**
+     * Tiles per piece when a block is split over a pool. One tile is a
+     * whole diamond-square run, so every tile may go to its own thread.
+     */
+    private static final int MIN_TILE_CHUNK = 1;
+
+    /** Scale to convert the top 24 bits of a hash to the range [0, 2) */
+    private static final float HASH_SCALE = 1f / (1 << 23);
+
     /** Flag indicating if we should use sea level or not */
     private boolean useSeaLevel;
 
@@ -108,6 +145,18 @@ public class FractalTerrainGenerator extends GeometryGenerator
     /** The last generated terrain heights */
     private float[][] terrainHeights;
 
+    /** The seed for the tile hash */
+    private long tileSeed;
+
+    /** Flag indicating the tiled mode is used for generate() */
+    private boolean tiledMode;
+
+    /** X coordinate of the tile made by generate() in tiled mode */
+    private int currentTileX;
+
+    /** Z coordinate of the tile made by generate() in tiled mode */
+    private int currentTileZ;
+
     /**
      * Construct a default terrain with the following properties:<BR>
      * Size: 100x100
@@ -346,6 +395,7 @@ public class FractalTerrainGenerator extends GeometryGenerator
         this.roughness = roughness;
 
         randomiser = new Random();
+        tileSeed = seed;
 
         if(seed != 0)
             randomiser.setSeed(seed);
@@ -402,7 +452,8 @@ public class FractalTerrainGenerator extends GeometryGenerator
      * @param height The (approx) max height of the terrain to generate
      * @param iterations The number of subdivisions to calculate
      * @param roughness Division factor for each iteration of height
-     * @param seed A value to use to seed the random number generator with
+     * @param seed A value to use to seed the random number generator with.
+     *   Also used as the tile seed
      */
     public void setGenerationFactors(float height,
                                      int iterations,
@@ -417,6 +468,7 @@ public class FractalTerrainGenerator extends GeometryGenerator
         this.roughness = roughness;
 
         terrainChanged = true;
+        tileSeed = seed;
 
         if(seed != 0)
             randomiser.setSeed(seed);
@@ -519,6 +571,178 @@ public class FractalTerrainGenerator extends GeometryGenerator
         terrainChanged = true;
     }
 
+    /**
+     * Set whether {@link #generate()} and {@link #generate(GeometryData)}
+     * make the current tile rather than the whole terrain from the seed
+     * terrain.
+     *
+     * @param enable true to generate the current tile
+     */
+    public void setTiledMode(boolean enable)
+    {
+        if(tiledMode != enable)
+        {
+            tiledMode = enable;
+            terrainChanged = true;
+
+            int side_points = calcSidePoints(iterations);
+
+            gridGenerator.setDimensions(terrainWidth,
+                                        terrainDepth,
+                                        side_points,
+                                        side_points);
+
+            facetCount = side_points * side_points;
+        }
+    }
+
+    /**
+     * Check to see if the tiled mode is in use.
+     *
+     * @return true if the current tile is generated
+     */
+    public boolean isTiledMode()
+    {
+        return tiledMode;
+    }
+
+    /**
+     * Set the tile that is made by the generate methods when in tiled mode.
+     *
+     * @param tileX The tile coordinate along the X axis
+     * @param tileZ The tile coordinate along the Z axis
+     */
+    public void setTile(int tileX, int tileZ)
+    {
+        if((currentTileX != tileX) || (currentTileZ != tileZ))
+        {
+            currentTileX = tileX;
+            currentTileZ = tileZ;
+
+            if(tiledMode)
+                terrainChanged = true;
+        }
+    }
+
+    /**
+     * Get the number of height points along each side of a tile with the
+     * current number of iterations.
+     *
+     * @return The number of points on a side of a tile
+     */
+    public int getTileSidePoints()
+    {
+        return (1 << iterations) + 1;
+    }
+
+    /**
+     * Generate the heights of a single tile. The result depends only on the
+     * tile coordinate and the current settings, and the outer rows and
+     * columns are the same as those of the neighbouring tiles. This method
+     * may be called from several threads at once.
+     *
+     * @param tileX The tile coordinate along the X axis
+     * @param tileZ The tile coordinate along the Z axis
+     * @param heights An array to write the heights to, indexed as
+     *   [depth][width], or null to create one
+     * @return The array holding the tile heights
+     * @throws InvalidArraySizeException The given array is smaller than
+     *   the number of points on a tile side
+     */
+    public float[][] generateTile(int tileX, int tileZ, float[][] heights)
+    {
+        int side = getTileSidePoints();
+
+        if(heights == null)
+            heights = new float[side][side];
+        else if(heights.length < side)
+            throw new InvalidArraySizeException("Tile rows",
+                                                heights.length,
+                                                side);
+        else if(heights[0].length < side)
+            throw new InvalidArraySizeException("Tile columns",
+                                                heights[0].length,
+                                                side);
+
+        subdivideTile(tileX, tileZ, heights);
+
+        return heights;
+    }
+
+    /**
+     * Generate the heights of a rectangular block of tiles using the shared
+     * fork/join pool.
+     *
+     * @param firstX The X coordinate of the first tile
+     * @param firstZ The Z coordinate of the first tile
+     * @param numX The number of tiles along the X axis
+     * @param numZ The number of tiles along the Z axis
+     * @param tiles Array to place the tiles in, row by row along X. Null
+     *   entries are created
+     * @throws InvalidArraySizeException The tile array is too small
+     */
+    public void generateTiles(int firstX,
+                              int firstZ,
+                              int numX,
+                              int numZ,
+                              float[][][] tiles)
+    {
+        generateTiles(firstX,
+                      firstZ,
+                      numX,
+                      numZ,
+                      tiles,
+                      ForkJoinUtils.getSharedPool());
+    }
+
+    /**
+     * Generate the heights of a rectangular block of tiles using the given
+     * fork/join pool. If the pool is null, all of the work is done on the
+     * calling thread. The tile at (firstX + i, firstZ + j) is placed at index
+     * <code>j * numX + i</code>. The result is the same as making each tile
+     * with {@link #generateTile(int, int, float[][])}.
+     *
+     * @param firstX The X coordinate of the first tile
+     * @param firstZ The Z coordinate of the first tile
+     * @param numX The number of tiles along the X axis
+     * @param numZ The number of tiles along the Z axis
+     * @param tiles Array to place the tiles in, row by row along X. Null
+     *   entries are created
+     * @param pool The pool to run the work in or null for the calling thread
+     * @throws InvalidArraySizeException The tile array or one of the given
+     *   tiles is too small
+     */
+    public void generateTiles(final int firstX,
+                              final int firstZ,
+                              final int numX,
+                              int numZ,
+                              final float[][][] tiles,
+                              ForkJoinPool pool)
+    {
+        if((numX <= 0) || (numZ <= 0))
+            return;
+
+        int num_tiles = numX * numZ;
+
+        if(tiles.length < num_tiles)
+            throw new InvalidArraySizeException("Tiles",
+                                                tiles.length,
+                                                num_tiles);
+
+        // Each tile depends only on its own coordinate and has its own
+        // slot in the output, so any split of the tiles is safe.
+        RangeProcessor processor = new RangeProcessor()
+        {
+            @Override
+            public void processRange(int start, int end)
+            {
+                processTiles(firstX, firstZ, numX, tiles, start, end);
+            }
+        };
+
+        ForkJoinUtils.forRange(pool, 0, num_tiles, MIN_TILE_CHUNK, processor);
+    }
+
     /**
      * Get the number of vertices that this generator will create for the
      * shape given in the definition.
@@ -581,6 +805,13 @@ public class FractalTerrainGenerator extends GeometryGenerator
 
         terrainChanged = false;
 
+        if(tiledMode)
+        {
+            terrainHeights = generateTile(currentTileX, currentTileZ, null);
+            gridGenerator.setTerrainDetail(terrainHeights, 0);
+            return;
+        }
+
         float[][] terrain = subdivideSurface();
 
         // now scour the heights and truncate the sea level if needed
@@ -687,15 +918,176 @@ public class FractalTerrainGenerator extends GeometryGenerator
         return new_surface;
     }
 
+    /**
+     * Generate a range of tiles from a block.
+     *
+     * @param firstX The X coordinate of the first tile of the block
+     * @param firstZ The Z coordinate of the first tile of the block
+     * @param numX The number of tiles along the X axis of the block
+     * @param tiles Array to place the tiles in
+     * @param start First tile index to generate, inclusive
+     * @param end Last tile index to generate, exclusive
+     */
+    private void processTiles(int firstX,
+                              int firstZ,
+                              int numX,
+                              float[][][] tiles,
+                              int start,
+                              int end)
+    {
+        for(int i = start; i < end; i++)
+        {
+            tiles[i] = generateTile(firstX + i % numX,
+                                    firstZ + i / numX,
+                                    tiles[i]);
+        }
+    }
+
+    /**
+     * Run the midpoint displacement over one tile. The tile corners come
+     * straight from the hash. Each level then fills in the centre of every
+     * square from its four corners and the middle of every edge from the two
+     * ends of that edge, so the points on a tile border never look inside
+     * the tile. The sums are always made in increasing coordinate order so
+     * that both tiles of a shared border get exactly the same floats.
+     *
+     * @param tileX The tile coordinate along the X axis
+     * @param tileZ The tile coordinate along the Z axis
+     * @param heights The array to write the heights to
+     */
+    private void subdivideTile(int tileX, int tileZ, float[][] heights)
+    {
+        int cells = 1 << iterations;
+        long base_x = (long)tileX * cells;
+        long base_z = (long)tileZ * cells;
+        float delta = terrainHeight;
+
+        float[] first = heights[0];
+        float[] last = heights[cells];
+
+        first[0] = delta * latticeNoise(tileSeed, base_x, base_z);
+        first[cells] = delta * latticeNoise(tileSeed, base_x + cells, base_z);
+        last[0] = delta * latticeNoise(tileSeed, base_x, base_z + cells);
+        last[cells] = delta * latticeNoise(tileSeed,
+                                           base_x + cells,
+                                           base_z + cells);
+
+        for(int step = cells; step > 1; step >>= 1)
+        {
+            int half = step >> 1;
+
+            // Centre of each square
+            for(int i = half; i < cells; i += step)
+            {
+                float[] above = heights[i - half];
+                float[] row = heights[i];
+                float[] below = heights[i + half];
+                long gz = base_z + i;
+
+                for(int j = half; j < cells; j += step)
+                {
+                    float height = (above[j - half] + above[j + half] +
+                                    below[j - half] + below[j + half]) / 4;
+
+                    row[j] = height +
+                             delta * latticeNoise(tileSeed, base_x + j, gz);
+                }
+            }
+
+            // Middle of the edges running along the X axis
+            for(int i = 0; i <= cells; i += step)
+            {
+                float[] row = heights[i];
+                long gz = base_z + i;
+
+                for(int j = half; j < cells; j += step)
+                {
+                    float height = (row[j - half] + row[j + half]) / 2;
+
+                    row[j] = height +
+                             delta * latticeNoise(tileSeed, base_x + j, gz);
+                }
+            }
+
+            // Middle of the edges running along the Z axis
+            for(int i = half; i < cells; i += step)
+            {
+                float[] above = heights[i - half];
+                float[] row = heights[i];
+                float[] below = heights[i + half];
+                long gz = base_z + i;
+
+                for(int j = 0; j <= cells; j += step)
+                {
+                    float height = (above[j] + below[j]) / 2;
+
+                    row[j] = height +
+                             delta * latticeNoise(tileSeed, base_x + j, gz);
+                }
+            }
+
+            delta /= roughness;
+        }
+
+        if(useSeaLevel)
+        {
+            for(int i = 0; i <= cells; i++)
+            {
+                float[] row = heights[i];
+
+                for(int j = 0; j <= cells; j++)
+                {
+                    if(row[j] < seaLevelHeight)
+                        row[j] = seaLevelHeight;
+                }
+            }
+        }
+    }
+
+    /**
+     * Hash a global grid coordinate to a random value. This takes the place
+     * of the sequential random number generator in the tiled mode. The
+     * mixing steps are those of the SplitMix64 generator.
+     *
+     * @param seed The tile seed
+     * @param x The global grid coordinate along the X axis
+     * @param z The global grid coordinate along the Z axis
+     * @return A value in the range [-1, 1)
+     */
+    private static float latticeNoise(long seed, long x, long z)
+    {
+        long h = mix(seed + x * 0x9E3779B97F4A7C15L);
+        h = mix(h + z * 0xC2B2AE3D27D4EB4FL);
+
+        return (h >>> 40) * HASH_SCALE - 1;
+    }
+
+    /**
+     * Scramble the bits of a 64 bit value.
+     *
+     * @param value The value to scramble
+     * @return The scrambled value
+     */
+    private static long mix(long value)
+    {
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+
+        return value ^ (value >>> 31);
+    }
+
     /**
      * Convenience routine to calculate the number of points along a side of
-     * the subdivided surface.
+     * the subdivided surface, or of a tile in tiled mode.
      *
      * @param itrs The number of iterations to perform
      * @return The number of points
      */
     private final int calcSidePoints(int itrs)
     {
+        if(tiledMode)
+            return (1 << itrs) + 1;
+
         int points = seedTerrain.length;
 
         for(int i = 0; i < itrs; i++)
@@ -11,8 +11,13 @@ package org.j3d.geom.terrain;
 
 // External imports
 import java.awt.image.*;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
 
 // Local imports
+import org.j3d.geom.InvalidArraySizeException;
+import org.j3d.util.ForkJoinUtils;
+import org.j3d.util.RangeProcessor;
 import org.j3d.util.interpolator.ColorInterpolator;
 
 /**
@@ -30,6 +35,12 @@ import org.j3d.util.interpolator.ColorInterpolator;
  * When generating an image, the values works along the X part of image
  * being equated to the X axis of the coordinates. The Y axis of the
  * image is equivalent to the Z axis of the coordinates.
+ * <p>
+ *
+ * Images are made by writing straight into the data buffer of the image
+ * raster, with the rows split over a fork/join pool. The same values can
+ * be written into a caller supplied <code>ByteBuffer</code> instead, for
+ * example to upload as a texture.
  *
  * @author Justin Couch
  * @version $Revision: 1.1 $
@@ -41,6 +52,18 @@ public class HeightImageCreator
     private static final byte[] WHITE_BYTES =
         { (byte)255, (byte)255, (byte)255, (byte)255 };
 
+    /** Rows per piece when a pass is split over a pool */
+    private static final int MIN_ROW_CHUNK = 8;
+
+    /** Pass that finds the range of each row */
+    private static final int RANGE_PASS = 0;
+
+    /** Pass that writes greyscale bytes */
+    private static final int GREY_PASS = 1;
+
+    /** Pass that writes colour values */
+    private static final int COLOR_PASS = 2;
+
     /** The colour of the minimum height */
     private byte[] minColor;
 
@@ -50,9 +73,6 @@ public class HeightImageCreator
     /** Flag to denote if we have to deal with alpha values */
     private boolean hasAlpha;
 
-    /** Interpolator for colour values */
-    private ColorInterpolator interpolator;
-
     /**
      * Create a default map converter. If used to create an image, it
      * will use a grayscale range.
@@ -105,7 +125,7 @@ public class HeightImageCreator
             maxColor[3] = max[3];
         }
 
-        reconstructInterpolator();
+        checkAlpha();
     }
 
     /**
@@ -148,14 +168,14 @@ public class HeightImageCreator
             maxColor[3] = max[3];
         }
 
-        reconstructInterpolator();
+        checkAlpha();
     }
 
     /**
      * Create a greyscale image from a set of terrain points. White
      * will indicate the highest point and black the lowest. The width and
      * height of the image will be equivalent to the size of the terrain
-     * array presented.
+     * array presented. The work is spread over the shared fork/join pool.
      *
      * @param data The map of terrain coordinate values
      * @throws NullPointerException The data reference is null
@@ -163,54 +183,96 @@ public class HeightImageCreator
      * @return An image representation of the values
      */
     public BufferedImage createGreyScaleImage(float[][] data)
+    {
+        return createGreyScaleImage(data, ForkJoinUtils.getSharedPool());
+    }
+
+    /**
+     * Create a greyscale image from a set of terrain points using the given
+     * fork/join pool. If the pool is null, all of the work is done on the
+     * calling thread. The values are written straight into the raster of
+     * the image.
+     *
+     * @param data The map of terrain coordinate values
+     * @param pool The pool to run the work in or null for the calling thread
+     * @throws NullPointerException The data reference is null
+     * @throws IllegalArgumentException Values in the data array are null
+     * @return An image representation of the values
+     */
+    public BufferedImage createGreyScaleImage(float[][] data, ForkJoinPool pool)
     {
         if(data == null)
             throw new NullPointerException("Data reference is null");
 
         int img_width = data[0].length;
         int img_height = data.length;
-        int pixel_count = img_width * img_height;
-
-        byte[] pixels = new byte[pixel_count];
-        int count = 0;
-        int work_height;
 
-        float[] range_vals = findHeightRange(data);
-        float min = range_vals[0];
-        float range = range_vals[1];
+        BufferedImage image = new BufferedImage(img_width,
+                                                img_height,
+                                                BufferedImage.TYPE_BYTE_GRAY);
 
-        for(int i = 0; i < data.length; i++)
-        {
-            for(int j = 0; j < data[i].length; j++)
-            {
-                work_height = (int)((data[i][j] - min) * 255 / range);
-                pixels[count++] = (byte)work_height;
-            }
-        }
+        DataBufferByte buffer =
+            (DataBufferByte)image.getRaster().getDataBuffer();
 
-        // Greyscale raster has only one component and 8 bits are significant.
-        WritableRaster raster = Raster.createPackedRaster(DataBuffer.TYPE_BYTE,
-                                                          img_width,
-                                                          img_height,
-                                                          1,
-                                                          8,
-                                                          null);
+        ByteBuffer pixels = ByteBuffer.wrap(buffer.getData());
 
-        raster.setDataElements(0, 0, img_width, img_height, pixels);
+        float[] range_vals = findHeightRange(data, pool);
 
-        BufferedImage image = new BufferedImage(img_width,
-                                                img_height,
-                                                BufferedImage.TYPE_BYTE_GRAY);
-        image.setData(raster);
+        runPass(GREY_PASS,
+                data,
+                range_vals,
+                null,
+                pixels,
+                pool);
 
         return image;
     }
 
+    /**
+     * Write a set of terrain points into a buffer as greyscale values, one
+     * byte per point, row by row. The values are the same as those of
+     * {@link #createGreyScaleImage(float[][], ForkJoinPool)}. Writing starts
+     * at the current position of the buffer, which is moved to the end of
+     * the written values.
+     *
+     * @param data The map of terrain coordinate values
+     * @param buffer The buffer to write to
+     * @param pool The pool to run the work in or null for the calling thread
+     * @throws NullPointerException The data reference is null
+     * @throws InvalidArraySizeException The buffer does not have enough space
+     *   remaining
+     */
+    public void writeGreyScale(float[][] data,
+                               ByteBuffer buffer,
+                               ForkJoinPool pool)
+    {
+        if(data == null)
+            throw new NullPointerException("Data reference is null");
+
+        int pixel_count = data[0].length * data.length;
+
+        if(buffer.remaining() < pixel_count)
+            throw new InvalidArraySizeException("Greyscale buffer",
+                                                buffer.remaining(),
+                                                pixel_count);
+
+        float[] range_vals = findHeightRange(data, pool);
+
+        runPass(GREY_PASS,
+                data,
+                range_vals,
+                null,
+                buffer.slice(),
+                pool);
+
+        buffer.position(buffer.position() + pixel_count);
+    }
+
     /**
      * Create a color model image from the set of terrain points. This will
-     * use the min and max colours that have been preset. Hints for width and
-     * height of the output image can be provided. If the value is -1 then it
-     * should be automatically calculated from the underlying data
+     * use the min and max colours that have been preset. The width and
+     * height of the image will be equivalent to the size of the terrain
+     * array presented. The work is spread over the shared fork/join pool.
      *
      * @param data The map of terrain coordinate values
      * @throws NullPointerException The data reference is null
@@ -218,91 +280,98 @@ public class HeightImageCreator
      * @return An image representing the heights
      */
     public BufferedImage createColorImage(float[][] data)
+    {
+        return createColorImage(data, ForkJoinUtils.getSharedPool());
+    }
+
+    /**
+     * Create a color model image from the set of terrain points using the
+     * given fork/join pool. If the pool is null, all of the work is done on
+     * the calling thread. The image is RGB, or ARGB if either of the colours
+     * is not opaque, and the colours are written straight into its raster.
+     *
+     * @param data The map of terrain coordinate values
+     * @param pool The pool to run the work in or null for the calling thread
+     * @throws NullPointerException The data reference is null
+     * @throws IllegalArgumentException Values in the data array are null
+     * @return An image representing the heights
+     */
+    public BufferedImage createColorImage(float[][] data, ForkJoinPool pool)
     {
         if(data == null)
             throw new NullPointerException("Data reference is null");
 
         int img_width = data[0].length;
         int img_height = data.length;
-        int pixel_count = img_width * img_height;
+        int img_type = hasAlpha ?
+                       BufferedImage.TYPE_INT_ARGB :
+                       BufferedImage.TYPE_INT_RGB;
 
-        int components;
-        int img_type;
+        BufferedImage image = new BufferedImage(img_width,
+                                                img_height,
+                                                img_type);
 
-        if(hasAlpha)
-        {
-            components = 4;
-            img_type = BufferedImage.TYPE_INT_ARGB;
-        }
-        else
-        {
-            components = 3;
-            img_type = BufferedImage.TYPE_INT_RGB;
-        }
+        DataBufferInt buffer =
+            (DataBufferInt)image.getRaster().getDataBuffer();
 
-        byte[] pixels = new byte[pixel_count * components];
+        float[] range_vals = findHeightRange(data, pool);
 
-        int count = 0;
-        float work_height;
+        runPass(COLOR_PASS,
+                data,
+                range_vals,
+                buffer.getData(),
+                null,
+                pool);
 
-        float[] range_vals = findHeightRange(data);
-        float min = range_vals[0];
-        float range = range_vals[1];
-        float[] real_color;
+        return image;
+    }
 
-        if(hasAlpha)
-        {
-            for(int i = 0; i < data.length; i++)
-            {
-                for(int j = 0; j < data[i].length; j++)
-                {
-                    work_height = (data[i][j] - min) / range;
-                    real_color = interpolator.floatRGBValue(work_height);
+    /**
+     * Write a set of terrain points into a buffer as colour values, row by
+     * row. Each point is 3 bytes of RGB, or 4 bytes of RGBA if
+     * {@link #hasAlpha()} is true. Writing starts at the current position of
+     * the buffer, which is moved to the end of the written values.
+     *
+     * @param data The map of terrain coordinate values
+     * @param buffer The buffer to write to
+     * @param pool The pool to run the work in or null for the calling thread
+     * @throws NullPointerException The data reference is null
+     * @throws InvalidArraySizeException The buffer does not have enough space
+     *   remaining
+     */
+    public void writeColor(float[][] data, ByteBuffer buffer, ForkJoinPool pool)
+    {
+        if(data == null)
+            throw new NullPointerException("Data reference is null");
 
-                    pixels[count++] = (byte)(real_color[3] * 255);
-                    pixels[count++] = (byte)(real_color[0] * 255);
-                    pixels[count++] = (byte)(real_color[1] * 255);
-                    pixels[count++] = (byte)(real_color[2] * 255);
-                }
-            }
-        }
-        else
-        {
-            for(int i = 0; i < data.length; i++)
-            {
-                for(int j = 0; j < data[i].length; j++)
-                {
-                    work_height = (data[i][j] - min) / range;
-                    real_color = interpolator.floatRGBValue(work_height);
+        int byte_count = data[0].length * data.length * (hasAlpha ? 4 : 3);
 
-                    pixels[count++] = (byte)(real_color[0] * 255);
-                    pixels[count++] = (byte)(real_color[1] * 255);
-                    pixels[count++] = (byte)(real_color[2] * 255);
-                }
-            }
-        }
+        if(buffer.remaining() < byte_count)
+            throw new InvalidArraySizeException("Colour buffer",
+                                                buffer.remaining(),
+                                                byte_count);
 
-        // Create a colour model that represents the type of data we want to
-        // generate. Note that we do not use the default RGB model because that
-        // assumes that all components are in a single bit-masked int. However,
-        // we have color values as individual components and to save a lot of
-        // bit flipping we create a colour model that allows us to keep the
-        // separately calculated values directly.
-        WritableRaster raster =
-            Raster.createInterleavedRaster(DataBuffer.TYPE_BYTE,
-                                           img_width,
-                                           img_height,
-                                           components,
-                                           null);
-
-        raster.setDataElements(0, 0, img_width, img_height, pixels);
+        float[] range_vals = findHeightRange(data, pool);
 
-        BufferedImage image = new BufferedImage(img_width,
-                                                img_height,
-                                                img_type);
-        image.setData(raster);
+        runPass(COLOR_PASS,
+                data,
+                range_vals,
+                null,
+                buffer.slice(),
+                pool);
 
-        return image;
+        buffer.position(buffer.position() + byte_count);
+    }
+
+    /**
+     * Check to see if the colours have an alpha channel. This is true if
+     * either of the colours is not fully opaque.
+     *
+     * @return true if colour output includes alpha
+     */
+    public boolean hasAlpha()
+    {
+        return hasAlpha;
     }
 
     /**
@@ -319,46 +388,200 @@ public class HeightImageCreator
      */
 
     /**
-     * Reconstruct the internal interpolator for the new colour values.
+     * Process a range of rows for one of the passes. The range pass finds
+     * the lowest and highest value of each row, which are combined
+     * afterwards. The grey and colour passes convert each height to a
+     * pixel. Only the slots of the rows in the range are written.
+     *
+     * @param pass The pass to run, from the _PASS constants
+     * @param data The map of terrain coordinate values
+     * @param range The minimum and range of the heights, or the per row
+     *   minimum and maximum for the range pass
+     * @param pixels Packed colour output or null for byte output
+     * @param bytes Byte output, indexed from zero, or null
+     * @param start First row to process, inclusive
+     * @param end Last row to process, exclusive
      */
-    private void reconstructInterpolator()
+    private void processRows(int pass,
+                             float[][] data,
+                             float[] range,
+                             int[] pixels,
+                             ByteBuffer bytes,
+                             int start,
+                             int end)
+    {
+        int img_width = data[0].length;
+
+        switch(pass)
+        {
+            case RANGE_PASS:
+                for(int i = start; i < end; i++)
+                {
+                    float[] row = data[i];
+                    float min = row[0];
+                    float max = row[0];
+
+                    for(int j = 1; j < img_width; j++)
+                    {
+                        float h = row[j];
+
+                        if(h < min)
+                            min = h;
+                        else if(h > max)
+                            max = h;
+                    }
+
+                    range[i * 2] = min;
+                    range[i * 2 + 1] = max;
+                }
+                break;
+
+            case GREY_PASS:
+                float min = range[0];
+                float height_range = range[1];
+
+                for(int i = start; i < end; i++)
+                {
+                    float[] row = data[i];
+                    int out = i * img_width;
+
+                    for(int j = 0; j < img_width; j++)
+                    {
+                        int work_height = (height_range == 0) ? 0 :
+                            (int)((row[j] - min) * 255 / height_range);
+
+                        bytes.put(out++, (byte)work_height);
+                    }
+                }
+                break;
+
+            case COLOR_PASS:
+                // The interpolator keeps state between calls, so each
+                // piece of work needs its own.
+                ColorInterpolator interp = createInterpolator();
+                min = range[0];
+                height_range = range[1];
+
+                for(int i = start; i < end; i++)
+                {
+                    float[] row = data[i];
+
+                    for(int j = 0; j < img_width; j++)
+                    {
+                        float work_height = (height_range == 0) ? 0 :
+                            (row[j] - min) / height_range;
+
+                        float[] real_color = interp.floatRGBValue(work_height);
+
+                        int r = (int)(real_color[0] * 255);
+                        int g = (int)(real_color[1] * 255);
+                        int b = (int)(real_color[2] * 255);
+                        int a = (int)(real_color[3] * 255);
+
+                        if(pixels != null)
+                        {
+                            pixels[i * img_width + j] =
+                                (a << 24) | (r << 16) | (g << 8) | b;
+                        }
+                        else if(hasAlpha)
+                        {
+                            int out = (i * img_width + j) * 4;
+                            bytes.put(out, (byte)r);
+                            bytes.put(out + 1, (byte)g);
+                            bytes.put(out + 2, (byte)b);
+                            bytes.put(out + 3, (byte)a);
+                        }
+                        else
+                        {
+                            int out = (i * img_width + j) * 3;
+                            bytes.put(out, (byte)r);
+                            bytes.put(out + 1, (byte)g);
+                            bytes.put(out + 2, (byte)b);
+                        }
+                    }
+                }
+                break;
+        }
+    }
+
+    /**
+     * Run one pass over all the rows of the data, either on the calling
+     * thread or split over the pool.
+     */
+    private void runPass(final int pass,
+                         final float[][] data,
+                         final float[] range,
+                         final int[] pixels,
+                         final ByteBuffer bytes,
+                         ForkJoinPool pool)
+    {
+        RangeProcessor processor = new RangeProcessor()
+        {
+            @Override
+            public void processRange(int start, int end)
+            {
+                processRows(pass, data, range, pixels, bytes, start, end);
+            }
+        };
+
+        ForkJoinUtils.forRange(pool, 0, data.length, MIN_ROW_CHUNK, processor);
+    }
+
+    /**
+     * Work out whether the new colour values need an alpha channel.
+     */
+    private void checkAlpha()
     {
         // Simple comparisons because we're dealing with bytes.
         hasAlpha = ((((int)minColor[3] & 0xFF) != 255) ||
                     (((int)maxColor[3] & 0xFF) != 255));
+    }
 
-        interpolator = new ColorInterpolator(2);
+    /**
+     * Create a new interpolator between the current min and max colours.
+     *
+     * @return A new interpolator instance
+     */
+    private ColorInterpolator createInterpolator()
+    {
+        ColorInterpolator ret_val = new ColorInterpolator(2);
 
         float r = (float)((int)minColor[0] & 0xFF) / 255;
         float g = (float)((int)minColor[1] & 0xFF) / 255;
         float b = (float)((int)minColor[2] & 0xFF) / 255;
         float a = (float)((int)minColor[3] & 0xFF) / 255;
-        interpolator.addRGBKeyFrame(0, r, g, b, a);
+        ret_val.addRGBKeyFrame(0, r, g, b, a);
 
         r = (float)((int)maxColor[0] & 0xFF) / 255;
         g = (float)((int)maxColor[1] & 0xFF) / 255;
         b = (float)((int)maxColor[2] & 0xFF) / 255;
         a = (float)((int)maxColor[3] & 0xFF) / 255;
 
-        interpolator.addRGBKeyFrame(1, r, g, b, a);
+        ret_val.addRGBKeyFrame(1, r, g, b, a);
+
+        return ret_val;
     }
 
     /**
      * Convenience method to find the bounds of the height values
-     * passed.
+     * passed. Each row is scanned in parallel and the row results are then
+     * combined.
+     *
+     * @return The minimum height and the range of the heights
      */
-    private float[] findHeightRange(float[][] data)
+    private float[] findHeightRange(float[][] data, ForkJoinPool pool)
     {
-        float min = data[0][0];
-        float max = data[0][0];
+        float[] row_ranges = new float[data.length * 2];
 
-        for(int i = data.length; --i >= 0; )
+        runPass(RANGE_PASS, data, row_ranges, null, null, pool);
+
+        float min = row_ranges[0];
+        float max = row_ranges[1];
+
+        for(int i = 2; i < row_ranges.length; i += 2)
         {
-            for(int j = data[i].length; --j >= 0; )
-            {
-                min = min > data[i][j] ? data[i][j] : min;
-                max = max < data[i][j] ? data[i][j] : max;
-            }
+            min = min > row_ranges[i] ? row_ranges[i] : min;
+            max = max < row_ranges[i + 1] ? row_ranges[i + 1] : max;
         }
 
         float[] ret_val = { min, max - min };
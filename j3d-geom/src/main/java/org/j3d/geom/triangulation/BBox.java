@@ -78,16 +78,16 @@ class BBox {
 
 	imin = Math.min(i, j);
 	imax = Math.max(i, j);
-	ymin = Math.min(triRef.points[imin].y, triRef.points[imax].y);
-	ymax = Math.max(triRef.points[imin].y, triRef.points[imax].y);
+	ymin = Math.min(triRef.points[imin * 2 + 1], triRef.points[imax * 2 + 1]);
+	ymax = Math.max(triRef.points[imin * 2 + 1], triRef.points[imax * 2 + 1]);
     }
 
 
     boolean pntInBBox(Triangulator triRef, int i) {
 	return (((imax < i) ? false :
 		 ((imin > i) ? false :
-		  ((ymax < triRef.points[i].y) ? false :
-		   ((ymin > triRef.points[i].y) ? false : true)))));
+		  ((ymax < triRef.points[i * 2 + 1]) ? false :
+		   ((ymin > triRef.points[i * 2 + 1]) ? false : true)))));
     }
 
 
@@ -119,6 +119,6 @@ class BBox {
 
 
     double BBoxArea(Triangulator triRef) {
-	return (triRef.points[imax].x - triRef.points[imin].x) * (ymax - ymin);
+	return (triRef.points[imax * 2] - triRef.points[imin * 2]) * (ymax - ymin);
     }
 }
@@ -157,8 +157,8 @@ class Bridge {
 		triRef.distances[k] = new Distance();
 	}
 
-	triRef.distances[numDist].dist = Numerics.baseLength(triRef.points[start],
-							     triRef.points[i1[0]]);
+	triRef.distances[numDist].dist = Numerics.baseLength(triRef.points,
+							     start, i1[0]);
 	triRef.distances[numDist].ind = ind1[0];
 	++numDist;
 
@@ -177,8 +177,8 @@ class Bridge {
 		    triRef.distances[k] = new Distance();
 	    }
 
-	    triRef.distances[numDist].dist = Numerics.baseLength(triRef.points[start],
-								 triRef.points[i1[0]]);
+	    triRef.distances[numDist].dist = Numerics.baseLength(triRef.points,
+								 start, i1[0]);
 	    triRef.distances[numDist].ind = ind1[0];
 	    ++numDist;
 	    ind1[0] = triRef.fetchNextData(ind1[0]);
@@ -301,16 +301,16 @@ class Bridge {
 
 	// Need to get the original data, before setting it.
 
-	vcntIndex = triRef.list[ind1].getCommonIndex();
+	vcntIndex = triRef.getCommonIndex(ind1);
 
-	triRef.list[ind2].setCommonIndex(vcntIndex);
+	triRef.setCommonIndex(ind2, vcntIndex);
 
 
 	ind4 = triRef.makeNode(i3);
 	triRef.insertAfter(ind3, ind4);
 
-	vcntIndex = triRef.list[ind3].getCommonIndex();
-	triRef.list[ind4].setCommonIndex(vcntIndex);
+	vcntIndex = triRef.getCommonIndex(ind3);
+	triRef.setCommonIndex(ind4, vcntIndex);
 
 	// insert the bridge edges into the boundary loops
 	triRef.splitSplice(ind1, ind2, ind3, ind4);
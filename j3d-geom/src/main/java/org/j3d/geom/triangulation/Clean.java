@@ -65,11 +65,16 @@ class Clean
     static void initPUnsorted(Triangulator triRef, int number)
     {
         if(number > triRef.maxNumPUnsorted)
-        {
             triRef.maxNumPUnsorted = number;
-            triRef.pUnsorted = new Point2f[triRef.maxNumPUnsorted];
-            for(int i = 0; i < triRef.maxNumPUnsorted; i++)
-                triRef.pUnsorted[i] = new Point2f();
+
+        // The working arrays are kept between faces and only grown when a
+        // larger face comes along.
+        if(triRef.pOrder == null || triRef.pOrder.length < number)
+        {
+            triRef.pUnsorted = new float[number * 2];
+            triRef.pOrder = new int[number];
+            triRef.pSortTmp = new int[number];
+            triRef.pMap = new int[number];
         }
     }
 
@@ -82,33 +87,43 @@ class Clean
 
         initPUnsorted(triRef, triRef.numPoints);
 
+        float[] unsorted = triRef.pUnsorted;
+        float[] points = triRef.points;
+        int[] order = triRef.pOrder;
+        int[] map = triRef.pMap;
+
+        System.arraycopy(points, 0, unsorted, 0, triRef.numPoints * 2);
+
         for(i = 0; i < triRef.numPoints; ++i)
-            triRef.pUnsorted[i].set(triRef.points[i]);
+            order[i] = i;
 
         // sort points according to lexicographical order
-        //    qsort(points, num_pnts, sizeof(point), &p_comp);
+        sort(unsorted, order, triRef.pSortTmp, triRef.numPoints);
 
-        sort(triRef.points, triRef.numPoints);
-
-        // eliminate duplicate vertices
-        i = 0;
-        for(j = 1; j < triRef.numPoints; ++j)
+        // eliminate duplicate vertices, remembering where each of the
+        // original points ended up
+        numSorted = 0;
+        for(j = 0; j < triRef.numPoints; ++j)
         {
-            if(pComp(triRef.points[i], triRef.points[j]) != 0)
+            int o = order[j];
+            float x = unsorted[o * 2];
+            float y = unsorted[o * 2 + 1];
+
+            if(numSorted == 0 ||
+               pComp(points[(numSorted - 1) * 2],
+                     points[(numSorted - 1) * 2 + 1],
+                     x,
+                     y) != 0)
             {
-                ++i;
-                triRef.points[i] = triRef.points[j];
+                points[numSorted * 2] = x;
+                points[numSorted * 2 + 1] = y;
+                ++numSorted;
             }
+
+            map[o] = numSorted - 1;
         }
-        numSorted = i + 1;
-        removed = triRef.numPoints - numSorted;
 
-	/*
-	  System.out.println("Points : (Sorted and eliminated)");
-	  for(i=0; i<triRef.numPoints; i++)
-	  System.out.println( i + "pt ( " + triRef.points[i].x + ", " +
-	  triRef.points[i].y + ")");
-	*/
+        removed = triRef.numPoints - numSorted;
 
         // renumber the vertices of the polygonal face
         for(i = i1; i < i2; ++i)
@@ -118,13 +133,11 @@ class Clean
             index = triRef.fetchData(ind2);
             while(ind2 != ind1)
             {
-                j = findPInd(triRef.points, numSorted, triRef.pUnsorted[index]);
-                triRef.updateIndex(ind2, j);
+                triRef.updateIndex(ind2, map[index]);
                 ind2 = triRef.fetchNextData(ind2);
                 index = triRef.fetchData(ind2);
             }
-            j = findPInd(triRef.points, numSorted, triRef.pUnsorted[index]);
-            triRef.updateIndex(ind2, j);
+            triRef.updateIndex(ind2, map[index]);
         }
 
         triRef.numPoints = numSorted;
@@ -133,51 +146,69 @@ class Clean
     }
 
 
-    static void sort(Point2f points[], int numPts)
+    /**
+     * Sort the point order into lexicographical order of the packed
+     * points. A bottom up merge sort, so the sort is stable and O(n log n).
+     *
+     * @param points Packed x, y values of the points
+     * @param order Point indices to sort, updated in place
+     * @param tmp Working array at least numPts long
+     * @param numPts The number of points to sort
+     */
+    static void sort(float[] points, int[] order, int[] tmp, int numPts)
     {
-        int i, j;
-        Point2f swap = new Point2f();
+        int[] src = order;
+        int[] dest = tmp;
 
-        for(i = 0; i < numPts; i++)
+        for(int width = 1; width < numPts; width *= 2)
         {
-            for(j = i + 1; j < numPts; j++)
+            for(int lo = 0; lo < numPts; lo += width * 2)
             {
-                if(pComp(points[i], points[j]) > 0)
+                int mid = Math.min(lo + width, numPts);
+                int hi = Math.min(lo + width * 2, numPts);
+                int a = lo;
+                int b = mid;
+                int out = lo;
+
+                while(a < mid && b < hi)
                 {
-                    swap.set(points[i]);
-                    points[i].set(points[j]);
-                    points[j].set(swap);
+                    int pa = src[a] * 2;
+                    int pb = src[b] * 2;
+
+                    if(pComp(points[pb], points[pb + 1],
+                             points[pa], points[pa + 1]) < 0)
+                        dest[out++] = src[b++];
+                    else
+                        dest[out++] = src[a++];
                 }
-            }
-        }
-    }
 
-    static int findPInd(Point2f sorted[], int numPts, Point2f pnt)
-    {
-        int i;
+                while(a < mid)
+                    dest[out++] = src[a++];
 
-        for(i = 0; i < numPts; i++)
-        {
-            if((pnt.x == sorted[i].x) &&
-                (pnt.y == sorted[i].y))
-            {
-                return i;
+                while(b < hi)
+                    dest[out++] = src[b++];
             }
+
+            int[] swap = src;
+            src = dest;
+            dest = swap;
         }
-        return -1;
+
+        if(src != order)
+            System.arraycopy(src, 0, order, 0, numPts);
     }
 
-    static int pComp(Point2f a, Point2f b)
+    static int pComp(float ax, float ay, float bx, float by)
     {
-        if(a.x < b.x)
+        if(ax < bx)
             return -1;
-        else if(a.x > b.x)
+        else if(ax > bx)
             return 1;
         else
         {
-            if(a.y < b.y)
+            if(ay < by)
                 return -1;
-            else if(a.y > b.y)
+            else if(ay > by)
                 return 1;
             else
                 return 0;
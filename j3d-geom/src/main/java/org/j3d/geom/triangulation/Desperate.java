@@ -305,7 +305,7 @@ class Desperate
      * always compute the winding number with respect to the mid-point of a
      * valid diagonal.)
      */
-    static int windingNumber(Triangulator triRef, int ind, Point2f p)
+    static int windingNumber(Triangulator triRef, int ind, float px, float py)
     {
         double angle;
         int ind2;
@@ -314,14 +314,13 @@ class Desperate
         i1 = triRef.fetchData(ind);
         ind2 = triRef.fetchNextData(ind);
         i2 = triRef.fetchData(ind2);
-        angle = Numerics.angle(triRef, p, triRef.points[i1], triRef.points[i2]);
+        angle = Numerics.angle(triRef, px, py, i1, i2);
         while(ind2 != ind)
         {
             i1 = i2;
             ind2 = triRef.fetchNextData(ind2);
             i2 = triRef.fetchData(ind2);
-            angle += Numerics.angle(triRef, p, triRef.points[i1],
-                                    triRef.points[i2]);
+            angle += Numerics.angle(triRef, px, py, i1, i2);
         }
 
         angle += Math.PI;
@@ -333,7 +332,7 @@ class Desperate
     static boolean foundSplit(Triangulator triRef, int ind5, int i5, int ind,
                               int ind1, int i1, int i3, int i4, int[] ind2, int[] i2)
     {
-        Point2f center;
+        float center_x, center_y;
         int numDist = 0;
         int j, i6, i7;
         int ind6, ind7;
@@ -344,7 +343,7 @@ class Desperate
         do
         {
             // assert(numDist < triRef.maxNumDist);
-            triRef.distances[numDist].dist = Numerics.baseLength(triRef.points[i1], triRef.points[i5]);
+            triRef.distances[numDist].dist = Numerics.baseLength(triRef.points, i1, i5);
             triRef.distances[numDist].ind = ind5;
             ++numDist;
             ind5 = triRef.fetchNextData(ind5);
@@ -381,11 +380,10 @@ class Desperate
                         {
                             // check whether this is a good diagonal; we do not want a
                             // diagonal that may create figure-8's!
-                            center = new Point2f();
-                            center.x = (triRef.points[i1].x + triRef.points[i2[0]].x) * 0.5f;
-                            center.y = (triRef.points[i1].y + triRef.points[i2[0]].y) * 0.5f;
+                            center_x = (triRef.points[i1 * 2] + triRef.points[i2[0] * 2]) * 0.5f;
+                            center_y = (triRef.points[i1 * 2 + 1] + triRef.points[i2[0] * 2 + 1]) * 0.5f;
 
-                            if(windingNumber(triRef, ind, center) == 1)
+                            if(windingNumber(triRef, ind, center_x, center_y) == 1)
                                 return true;
                         }
                     }
@@ -409,15 +407,15 @@ class Desperate
 
         // Need to get the original data, before setting it.
 
-        comIndex = triRef.list[ind1].getCommonIndex();
+        comIndex = triRef.getCommonIndex(ind1);
 
-        triRef.list[ind2].setCommonIndex(comIndex);
+        triRef.setCommonIndex(ind2, comIndex);
 
         ind4 = triRef.makeNode(i3);
         triRef.insertAfter(ind3, ind4);
 
-        comIndex = triRef.list[ind3].getCommonIndex();
-        triRef.list[ind4].setCommonIndex(comIndex);
+        comIndex = triRef.getCommonIndex(ind3);
+        triRef.setCommonIndex(ind4, comIndex);
 
         // insert the diagonal into the boundary loop, thus splitting the loop
         // into two loops
@@ -44,7 +44,7 @@
 
 package org.j3d.geom.triangulation;
 
-import java.util.HashMap;
+import java.util.Arrays;
 
 
 /**
@@ -152,11 +152,20 @@ public class GeometryInfo
     // 1 Show indexification details
     private static final int DEBUG = 0;
 
-    private Point3f coordinates[] = null;
-    private Color3f colors3[] = null;
-    private Color4f colors4[] = null;
-    private Vector3f normals[] = null;
-    private Object texCoordSets[][] = null;
+    /** Coordinate data, packed as [x, y, z] per vertex */
+    private float coordinates[] = null;
+
+    /** Colour data, packed with colorSize components per vertex */
+    private float colors[] = null;
+
+    /** The number of components per colour, 3 or 4. 0 if there are none */
+    private int colorSize = 0;
+
+    /** Normal data, packed as [x, y, z] per vertex */
+    private float normals[] = null;
+
+    /** Texture coordinate sets, each packed with texCoordDim per vertex */
+    private float texCoordSets[][] = null;
 
     private int coordinateIndices[] = null;
     private int colorIndices[] = null;
@@ -221,8 +230,8 @@ public class GeometryInfo
         }
 
         coordinates = null;
-        colors3 = null;
-        colors4 = null;
+        colors = null;
+        colorSize = 0;
         normals = null;
 
         coordinateIndices = null;
@@ -320,15 +329,31 @@ public class GeometryInfo
             this.coordinates = null;
         else
         {
-            this.coordinates = new Point3f[coords.length];
+            this.coordinates = new float[coords.length * 3];
             for(int i = 0; i < coords.length; i++)
             {
-                this.coordinates[i] = new Point3f();
-                this.coordinates[i].set(coords[i]);
+                this.coordinates[i * 3] = coords[i].x;
+                this.coordinates[i * 3 + 1] = coords[i].y;
+                this.coordinates[i * 3 + 2] = coords[i].z;
             }
         }
     } // End of setCoordinates
 
+    /**
+     * Sets the coordinates array.
+     * The points are copied into the GeometryInfo object.
+     */
+    public void setCoordinates(float coords[])
+    {
+        if(coords == null)
+            this.coordinates = null;
+        else
+        {
+            this.coordinates = new float[(coords.length / 3) * 3];
+            System.arraycopy(coords, 0, this.coordinates, 0, this.coordinates.length);
+        }
+    } // End of setCoordinates
+
     /**
      * Sets the coordinates array.
      * The points are copied into the GeometryInfo object.
@@ -339,69 +364,101 @@ public class GeometryInfo
             this.coordinates = null;
         else
         {
-            this.coordinates = new Point3f[coords.length / 3];
+            this.coordinates = new float[(coords.length / 3) * 3];
             for(int i = 0; i < this.coordinates.length; i++)
-            {
-                this.coordinates[i] = new Point3f();
-                this.coordinates[i].x = (float)coords[i * 3];
-                this.coordinates[i].y = (float)coords[i * 3 + 1];
-                this.coordinates[i].z = (float)coords[i * 3 + 2];
-            }
+                this.coordinates[i] = (float)coords[i];
         }
     } // End of setCoordinates
 
-    /** Retrieves a reference to the coordinate array. */
+    /**
+     * Retrieves the coordinates as an array of points. The points are
+     * created from the internal packed data on each call, so changes made to
+     * them are not reflected back into this object. Use
+     * getCoordinateData() to avoid the per-vertex objects.
+     */
     public Point3f[] getCoordinates()
     {
-        return coordinates;
+        if(coordinates == null)
+            return null;
+
+        Point3f[] ret_val = new Point3f[coordinates.length / 3];
+        for(int i = 0; i < ret_val.length; i++)
+        {
+            ret_val[i] = new Point3f();
+            ret_val[i].set(coordinates[i * 3],
+                           coordinates[i * 3 + 1],
+                           coordinates[i * 3 + 2]);
+        }
+
+        return ret_val;
     } // End of getCoordinates
 
     /**
-     * Sets the colors array.
-     * No data copying is done because a reference to
-     * user data is used.
+     * Retrieves a reference to the coordinate data, packed as
+     * [x, y, z] per vertex.
      */
-    public void setColors(Color3f colors[])
+    public float[] getCoordinateData()
     {
-        colors3 = colors;
-        colors4 = null;
-    } // End of setColors
+        return coordinates;
+    } // End of getCoordinateData
 
     /**
      * Sets the colors array.
-     * No data copying is done because a reference to
-     * user data is used.
+     * The colours are copied into the GeometryInfo object.
      */
-    public void setColors(Color4f colors[])
+    public void setColors(Color3f colors[])
     {
-        colors3 = null;
-        colors4 = colors;
+        if(colors == null)
+        {
+            this.colors = null;
+            colorSize = 0;
+        }
+        else
+        {
+            this.colors = new float[colors.length * 3];
+            colorSize = 3;
+            for(int i = 0; i < colors.length; i++)
+            {
+                this.colors[i * 3] = colors[i].x;
+                this.colors[i * 3 + 1] = colors[i].y;
+                this.colors[i * 3 + 2] = colors[i].z;
+            }
+        }
     } // End of setColors
 
     /**
      * Sets the colors array.
-     * The points are copied into the GeometryInfo object, assuming
-     * 3 components (R, G, and B) per vertex.
+     * The colours are copied into the GeometryInfo object.
      */
-    public void setColors3(float colors[])
+    public void setColors(Color4f colors[])
     {
         if(colors == null)
         {
-            colors3 = null;
-            colors4 = null;
+            this.colors = null;
+            colorSize = 0;
         }
         else
         {
-            colors3 = new Color3f[colors.length / 3];
-            colors4 = null;
-            for(int i = 0; i < colors.length / 3; i++)
+            this.colors = new float[colors.length * 4];
+            colorSize = 4;
+            for(int i = 0; i < colors.length; i++)
             {
-                colors3[i] = new Color3f();
-                colors3[i].x = colors[i * 3];
-                colors3[i].y = colors[i * 3 + 1];
-                colors3[i].z = colors[i * 3 + 2];
+                this.colors[i * 4] = colors[i].x;
+                this.colors[i * 4 + 1] = colors[i].y;
+                this.colors[i * 4 + 2] = colors[i].z;
+                this.colors[i * 4 + 3] = colors[i].w;
             }
         }
+    } // End of setColors
+
+    /**
+     * Sets the colors array.
+     * The points are copied into the GeometryInfo object, assuming
+     * 3 components (R, G, and B) per vertex.
+     */
+    public void setColors3(float colors[])
+    {
+        setColorData(colors, 3);
     } // End of setColors3
 
     /**
@@ -411,24 +468,7 @@ public class GeometryInfo
      */
     public void setColors4(float colors[])
     {
-        if(colors == null)
-        {
-            colors3 = null;
-            colors4 = null;
-        }
-        else
-        {
-            colors3 = null;
-            colors4 = new Color4f[colors.length / 4];
-            for(int i = 0; i < colors.length / 4; i++)
-            {
-                colors4[i] = new Color4f();
-                colors4[i].x = colors[i * 4];
-                colors4[i].y = colors[i * 4 + 1];
-                colors4[i].z = colors[i * 4 + 2];
-                colors4[i].w = colors[i * 4 + 3];
-            }
-        }
+        setColorData(colors, 4);
     } // End of setColors4
 
     /**
@@ -438,23 +478,7 @@ public class GeometryInfo
      */
     public void setColors3(byte colors[])
     {
-        if(colors == null)
-        {
-            colors3 = null;
-            colors4 = null;
-        }
-        else
-        {
-            colors3 = new Color3f[colors.length / 3];
-            colors4 = null;
-            for(int i = 0; i < colors.length / 3; i++)
-            {
-                colors3[i] = new Color3f();
-                colors3[i].x = (float) (colors[i * 3] & 0xff) / 255.0f;
-                colors3[i].y = (float) (colors[i * 3 + 1] & 0xff) / 255.0f;
-                colors3[i].z = (float) (colors[i * 3 + 2] & 0xff) / 255.0f;
-            }
-        }
+        setColorData(colors, 3);
     } // End of setColors3
 
     /**
@@ -463,40 +487,60 @@ public class GeometryInfo
      * 4 components (R, G, B, and A) per vertex.
      */
     public void setColors4(byte colors[])
+    {
+        setColorData(colors, 4);
+    } // End of setColors4
+
+    /**
+     * Retrieves the colors as an array of colour objects.  Will be either
+     * <code>Color3f[]</code> or <code>Color4f[]</code> depending on
+     * the type of the input data.  Call
+     * getNumColorComponents() to find out which version is returned.
+     * The objects are created from the internal packed data on each call, so
+     * changes made to them are not reflected back into this object.
+     */
+    public Object[] getColors()
     {
         if(colors == null)
+            return null;
+
+        int num_colors = colors.length / colorSize;
+
+        if(colorSize == 3)
         {
-            colors3 = null;
-            colors4 = null;
+            Color3f[] ret_val = new Color3f[num_colors];
+            for(int i = 0; i < num_colors; i++)
+            {
+                ret_val[i] = new Color3f();
+                ret_val[i].set(colors[i * 3], colors[i * 3 + 1], colors[i * 3 + 2]);
+            }
+
+            return ret_val;
         }
         else
         {
-            colors3 = null;
-            colors4 = new Color4f[colors.length / 4];
-            for(int i = 0; i < colors.length / 4; i++)
+            Color4f[] ret_val = new Color4f[num_colors];
+            for(int i = 0; i < num_colors; i++)
             {
-                colors4[i] = new Color4f();
-                colors4[i].x = (float) (colors[i * 4] & 0xff) / 255.0f;
-                colors4[i].y = (float) (colors[i * 4 + 1] & 0xff) / 255.0f;
-                colors4[i].z = (float) (colors[i * 4 + 2] & 0xff) / 255.0f;
-                colors4[i].w = (float) (colors[i * 4 + 3] & 0xff) / 255.0f;
+                ret_val[i] = new Color4f();
+                ret_val[i].x = colors[i * 4];
+                ret_val[i].y = colors[i * 4 + 1];
+                ret_val[i].z = colors[i * 4 + 2];
+                ret_val[i].w = colors[i * 4 + 3];
             }
+
+            return ret_val;
         }
-    } // End of setColors4
+    } // End of getColors
 
     /**
-     * Retrieves a reference to the colors array.  Will be either
-     * <code>Color3f[]</code> or <code>Color4f[]</code> depending on
-     * the type of the input data.  Call
-     * getNumColorComponents() to find out which version is returned.
+     * Retrieves a reference to the colour data, packed with
+     * getNumColorComponents() values per vertex.
      */
-    public Object[] getColors()
+    public float[] getColorData()
     {
-        if(colors3 != null)
-            return colors3;
-        else
-            return colors4;
-    } // End of getColors
+        return colors;
+    } // End of getColorData
 
     /**
      * Returns the number of color data components stored per vertex
@@ -505,12 +549,7 @@ public class GeometryInfo
      */
     public int getNumColorComponents()
     {
-        if(colors3 != null)
-            return 3;
-        else if(colors4 != null)
-            return 4;
-        else
-            return 0;
+        return colors == null ? 0 : colorSize;
     } // End of getNumColorComponents
 
     /**
@@ -523,23 +562,40 @@ public class GeometryInfo
             this.normals = null;
         else
         {
-            this.normals = new Vector3f[normals.length / 3];
-            for(int i = 0; i < this.normals.length; i++)
-            {
-                this.normals[i] = new Vector3f();
-                this.normals[i].x = normals[i * 3];
-                this.normals[i].y = normals[i * 3 + 1];
-                this.normals[i].z = normals[i * 3 + 2];
-            }
+            this.normals = new float[(normals.length / 3) * 3];
+            System.arraycopy(normals, 0, this.normals, 0, this.normals.length);
         }
     } // End of setNormals(float[])
 
-    /** Retrieves a reference to the normal array. */
+    /**
+     * Retrieves the normals as an array of vectors. The vectors are created
+     * from the internal packed data on each call, so changes made to them
+     * are not reflected back into this object.
+     */
     public Vector3f[] getNormals()
     {
-        return normals;
+        if(normals == null)
+            return null;
+
+        Vector3f[] ret_val = new Vector3f[normals.length / 3];
+        for(int i = 0; i < ret_val.length; i++)
+        {
+            ret_val[i] = new Vector3f();
+            ret_val[i].set(normals[i * 3], normals[i * 3 + 1], normals[i * 3 + 2]);
+        }
+
+        return ret_val;
     } // End of getNormals
 
+    /**
+     * Retrieves a reference to the normal data, packed as
+     * [x, y, z] per vertex.
+     */
+    public float[] getNormalData()
+    {
+        return normals;
+    } // End of getNormalData
+
     /**
      * This method is used to specify the number of texture coordinate sets
      * and the dimensionality of the texture coordinates.
@@ -572,22 +628,12 @@ public class GeometryInfo
      */
     public void setTextureCoordinateParams(int numSets, int dim)
     {
-        if(dim == 2)
-        {
-            texCoordSets = new TexCoord2f[numSets][];
-        }
-        else if(dim == 3)
-        {
-            texCoordSets = new TexCoord3f[numSets][];
-        }
-        else if(dim == 4)
-        {
-            texCoordSets = new TexCoord4f[numSets][];
-        }
-        else
+        if((dim < 2) || (dim > 4))
         {
             throw new IllegalArgumentException("GeometryInfo9");
         }
+
+        texCoordSets = new float[numSets][];
         texCoordIndexSets = new int[numSets][];
         texCoordDim = dim;
         texCoordSetCount = numSets;
@@ -653,7 +699,7 @@ public class GeometryInfo
 
     /**
      * Sets the 2D texture coordinates for the specified set.
-     * No data copying is done - a reference to user data is used.
+     * The coordinates are copied into the GeometryInfo object.
      *
      * @param texCoordSet The texture coordinate set for which these
      *                    coordinates are being specified.
@@ -670,12 +716,23 @@ public class GeometryInfo
         if((texCoordSet >= texCoordSetCount) || (texCoordSet < 0))
             throw new IllegalArgumentException("GeometryInfo18");
 
-        texCoordSets[texCoordSet] = texCoords;
-    } // End of setTextureCoordinates(int, TexCoord3f[])
+        float[] tex = null;
+        if(texCoords != null)
+        {
+            tex = new float[texCoords.length * 2];
+            for(int i = 0; i < texCoords.length; i++)
+            {
+                tex[i * 2] = texCoords[i].x;
+                tex[i * 2 + 1] = texCoords[i].y;
+            }
+        }
+
+        texCoordSets[texCoordSet] = tex;
+    } // End of setTextureCoordinates(int, TexCoord2f[])
 
     /**
      * Sets the texture coordinates array for the specified set.
-     * No data copying is done - a reference to user data is used.
+     * The coordinates are copied into the GeometryInfo object.
      *
      * @param texCoordSet The texture coordinate set for which these coordinates
      *                    are being specified.
@@ -692,7 +749,19 @@ public class GeometryInfo
         if((texCoordSet >= texCoordSetCount) || (texCoordSet < 0))
             throw new IllegalArgumentException("GeometryInfo18");
 
-        texCoordSets[texCoordSet] = texCoords;
+        float[] tex = null;
+        if(texCoords != null)
+        {
+            tex = new float[texCoords.length * 3];
+            for(int i = 0; i < texCoords.length; i++)
+            {
+                tex[i * 3] = texCoords[i].x;
+                tex[i * 3 + 1] = texCoords[i].y;
+                tex[i * 3 + 2] = texCoords[i].z;
+            }
+        }
+
+        texCoordSets[texCoordSet] = tex;
     } // End of setTextureCoordinates(int, TexCoord3f[])
 
     /**
@@ -706,16 +775,15 @@ public class GeometryInfo
     {
         texCoordSetCount = 1;
         texCoordDim = 3;
-        texCoordSets = new TexCoord3f[1][];
+        texCoordSets = new float[1][];
         if(texCoords != null)
         {
-            TexCoord3f[] tex = new TexCoord3f[texCoords.length];
+            float[] tex = new float[texCoords.length * 3];
             for(int i = 0; i < texCoords.length; i++)
             {
-                tex[i] = new TexCoord3f();
-                tex[i].x = texCoords[i].x;
-                tex[i].y = texCoords[i].y;
-                tex[i].z = texCoords[i].z;
+                tex[i * 3] = texCoords[i].x;
+                tex[i * 3 + 1] = texCoords[i].y;
+                tex[i * 3 + 2] = texCoords[i].z;
             }
             texCoordSets[0] = tex;
         }
@@ -723,7 +791,7 @@ public class GeometryInfo
 
     /**
      * Sets the texture coordinates array for the specified set.
-     * No data copying is done - a reference to user data is used.
+     * The coordinates are copied into the GeometryInfo object.
      *
      * @param texCoordSet The texture coordinate set for which these coordinates
      *                    are being specified.
@@ -740,7 +808,20 @@ public class GeometryInfo
         if((texCoordSet >= texCoordSetCount) || (texCoordSet < 0))
             throw new IllegalArgumentException("GeometryInfo18");
 
-        texCoordSets[texCoordSet] = texCoords;
+        float[] tex = null;
+        if(texCoords != null)
+        {
+            tex = new float[texCoords.length * 4];
+            for(int i = 0; i < texCoords.length; i++)
+            {
+                tex[i * 4] = texCoords[i].x;
+                tex[i * 4 + 1] = texCoords[i].y;
+                tex[i * 4 + 2] = texCoords[i].z;
+                tex[i * 4 + 3] = texCoords[i].w;
+            }
+        }
+
+        texCoordSets[texCoordSet] = tex;
     } // End of setTextureCoordinates(int, TexCoord4f[])
 
     /**
@@ -760,51 +841,18 @@ public class GeometryInfo
      */
     public void setTextureCoordinates(int texCoordSet, float texCoords[])
     {
+        if((texCoordDim < 2) || (texCoordDim > 4))
+            throw new IllegalArgumentException("GeometryInfo21");
         if((texCoords.length % texCoordDim) != 0)
             throw new IllegalArgumentException("GeometryInfo2");
+        if((texCoordSet >= texCoordSetCount) || (texCoordSet < 0))
+            throw new IllegalArgumentException("GeometryInfo18");
 
         // Copy the texCoords into this GeometryInfo object
-        if(texCoordDim == 2)
-        {
-            TexCoord2f tcoords[] = new TexCoord2f[texCoords.length / 2];
-            for(int i = 0; i < tcoords.length; i++)
-            {
-                tcoords[i] = new TexCoord2f();
-                tcoords[i].x = texCoords[i * 2];
-                tcoords[i].y = texCoords[i * 2 + 1];
-            }
+        float[] tex = new float[texCoords.length];
+        System.arraycopy(texCoords, 0, tex, 0, texCoords.length);
 
-            setTextureCoordinates(texCoordSet, tcoords);
-        }
-        else if(texCoordDim == 3)
-        {
-            TexCoord3f tcoords[] = new TexCoord3f[texCoords.length / 3];
-            for(int i = 0; i < tcoords.length; i++)
-            {
-                tcoords[i] = new TexCoord3f();
-                tcoords[i].x = texCoords[i * 3];
-                tcoords[i].y = texCoords[i * 3 + 1];
-                tcoords[i].z = texCoords[i * 3 + 2];
-            }
-            setTextureCoordinates(texCoordSet, tcoords);
-        }
-        else if(texCoordDim == 4)
-        {
-            TexCoord4f tcoords[] = new TexCoord4f[texCoords.length / 4];
-            for(int i = 0; i < tcoords.length; i++)
-            {
-                tcoords[i] = new TexCoord4f();
-                tcoords[i].x = texCoords[i * 4];
-                tcoords[i].y = texCoords[i * 4 + 1];
-                tcoords[i].z = texCoords[i * 4 + 2];
-                tcoords[i].w = texCoords[i * 4 + 3];
-            }
-            setTextureCoordinates(texCoordSet, tcoords);
-        }
-        else
-        {
-            throw new IllegalArgumentException("GeometryInfo21");
-        }
+        texCoordSets[texCoordSet] = tex;
     } // End of setTextureCoordinates(int, float[])
 
     /**
@@ -819,7 +867,7 @@ public class GeometryInfo
     {
         texCoordSetCount = 1;
         texCoordDim = 2;
-        texCoordSets = new TexCoord2f[1][];
+        texCoordSets = new float[1][];
         setTextureCoordinates(0, texCoords);
     } // End of setTextureCoordinates2(float[])
 
@@ -835,17 +883,19 @@ public class GeometryInfo
     {
         texCoordSetCount = 1;
         texCoordDim = 3;
-        texCoordSets = new TexCoord3f[1][];
+        texCoordSets = new float[1][];
         setTextureCoordinates(0, texCoords);
     } // End of setTextureCoordinates3(float[])
 
     /**
-     * Returns a reference to the indicated texture coordinate array.
+     * Returns the indicated texture coordinate array as objects.
      * The return type will be <code>TexCoord2f[]</code>, <code>TexCoord3f[]
      * </code>, or <code>TexCoord4f[]</code> depending on the
      * current dimensionality of the texture coordinates in the GeometryInfo
      * object.  Use <code>getNumTexCoordComponents()</code> to find out which
-     * version is returned.
+     * version is returned. The objects are created from the internal packed
+     * data on each call, so changes made to them are not reflected back into
+     * this object.
      *
      * @param texCoordSet The index of the texture coordinate set to
      *                    retrieve.
@@ -857,11 +907,55 @@ public class GeometryInfo
     {
         if((texCoordSet >= texCoordSetCount) || (texCoordSet < 0))
             throw new IllegalArgumentException("GeometryInfo18");
-        return texCoordSets[texCoordSet];
+
+        float[] tex = texCoordSets[texCoordSet];
+        if(tex == null)
+            return null;
+
+        int num_tex = tex.length / texCoordDim;
+
+        if(texCoordDim == 2)
+        {
+            TexCoord2f[] ret_val = new TexCoord2f[num_tex];
+            for(int i = 0; i < num_tex; i++)
+            {
+                ret_val[i] = new TexCoord2f();
+                ret_val[i].set(tex[i * 2], tex[i * 2 + 1]);
+            }
+
+            return ret_val;
+        }
+        else if(texCoordDim == 3)
+        {
+            TexCoord3f[] ret_val = new TexCoord3f[num_tex];
+            for(int i = 0; i < num_tex; i++)
+            {
+                ret_val[i] = new TexCoord3f();
+                ret_val[i].x = tex[i * 3];
+                ret_val[i].y = tex[i * 3 + 1];
+                ret_val[i].z = tex[i * 3 + 2];
+            }
+
+            return ret_val;
+        }
+        else
+        {
+            TexCoord4f[] ret_val = new TexCoord4f[num_tex];
+            for(int i = 0; i < num_tex; i++)
+            {
+                ret_val[i] = new TexCoord4f();
+                ret_val[i].x = tex[i * 4];
+                ret_val[i].y = tex[i * 4 + 1];
+                ret_val[i].z = tex[i * 4 + 2];
+                ret_val[i].w = tex[i * 4 + 3];
+            }
+
+            return ret_val;
+        }
     } // End of getTextureCoordinates(int)
 
     /**
-     * Retrieves a reference to texture coordinate set 0.
+     * Retrieves texture coordinate set 0 as objects.
      * The return type will be <code>TexCoord2f[]</code>, <code>TexCoord3f[]
      * </code>, or <code>TexCoord4f[]</code> depending on the
      * current dimensionality of the texture coordinates in the GeometryInfo
@@ -872,9 +966,27 @@ public class GeometryInfo
      */
     public Object[] getTextureCoordinates()
     {
-        return texCoordSets[0];
+        return getTextureCoordinates(0);
     } // End of getTextureCoordinates()
 
+    /**
+     * Retrieves a reference to the indicated texture coordinate set, packed
+     * with getNumTexCoordComponents() values per vertex.
+     *
+     * @param texCoordSet The index of the texture coordinate set to
+     *                    retrieve.
+     * @return The packed texture coordinates at the specified index
+     * @throws IllegalArgumentException If <code> texCoordSet</code> < 0
+     *                                  or <code>texCoordSet >= texCoordSetCount</code>
+     */
+    public float[] getTextureCoordinateData(int texCoordSet)
+    {
+        if((texCoordSet >= texCoordSetCount) || (texCoordSet < 0))
+            throw new IllegalArgumentException("GeometryInfo18");
+
+        return texCoordSets[texCoordSet];
+    } // End of getTextureCoordinateData(int)
+
     /**
      * Sets the array of indices into the Coordinate array.
      * No data copying is done - a reference to user data is used.
@@ -1138,90 +1250,186 @@ public class GeometryInfo
         return contourCounts;
     } // End of getContourCounts
 
-    /*
-     * This routine will return an index list for any array of objects.
+    /**
+     * Copy packed colour values into this object.
+     *
+     * @param colors The source colours, may be null
+     * @param size The number of components per colour
      */
-    int[] getListIndices(Object list[])
+    private void setColorData(float colors[], int size)
     {
-        // Create list of indices to return
-        int indices[] = new int[list.length];
+        if(colors == null)
+        {
+            this.colors = null;
+            colorSize = 0;
+        }
+        else
+        {
+            this.colors = new float[(colors.length / size) * size];
+            colorSize = size;
+            System.arraycopy(colors, 0, this.colors, 0, this.colors.length);
+        }
+    } // End of setColorData(float[], int)
+
+    /**
+     * Copy packed byte colour values into this object, scaling them to the
+     * [0, 1] range.
+     *
+     * @param colors The source colours, may be null
+     * @param size The number of components per colour
+     */
+    private void setColorData(byte colors[], int size)
+    {
+        if(colors == null)
+        {
+            this.colors = null;
+            colorSize = 0;
+        }
+        else
+        {
+            this.colors = new float[(colors.length / size) * size];
+            colorSize = size;
+            for(int i = 0; i < this.colors.length; i++)
+                this.colors[i] = (float) (colors[i] & 0xff) / 255.0f;
+        }
+    } // End of setColorData(byte[], int)
+
+    /**
+     * Create an index list for packed float data, where each run of
+     * <code>stride</code> values is one item. Items with identical values
+     * share the index of the first occurrence. Uses an open addressed hash
+     * table over the raw values, so no per-item objects are created.
+     *
+     * @param data The packed data to index
+     * @param stride The number of values per item
+     * @return An index per item
+     */
+    static int[] getListIndices(float data[], int stride)
+    {
+        int num = data.length / stride;
+        int indices[] = new int[num];
+        int mask = createHashTable(num);
+        int table[] = new int[mask + 1];
 
-        // Create hash table with initial capacity equal to the number
-        // of components (assuming about half will be duplicates)
-        HashMap<Object, Integer> table = new HashMap<>(list.length);
+        Arrays.fill(table, -1);
 
-        Integer idx;
-        for(int i = 0; i < list.length; i++)
+        for(int i = 0; i < num; i++)
         {
+            int base = i * stride;
+            int hash = 0;
+            for(int k = 0; k < stride; k++)
+                hash = hash * 31 + Float.floatToIntBits(data[base + k]);
 
-            // Find index associated with this object
-            idx = table.get(list[i]);
+            int slot = mixHash(hash) & mask;
 
-            if(idx == null)
+            while(true)
             {
-                // We haven't seen this object before
-                indices[i] = i;
+                int idx = table[slot];
 
-                // Put into hash table and remember the index
-                table.put(list[i], i);
+                if(idx == -1)
+                {
+                    // We haven't seen this value before
+                    table[slot] = i;
+                    indices[i] = i;
+                    break;
+                }
 
-            }
-            else
-            {
-                // We've seen this object
-                indices[i] = idx;
+                int other = idx * stride;
+                boolean same = true;
+                for(int k = 0; k < stride && same; k++)
+                    same = data[base + k] == data[other + k];
+
+                if(same)
+                {
+                    indices[i] = idx;
+                    break;
+                }
+
+                slot = (slot + 1) & mask;
             }
         }
 
         return indices;
-    } // End of getListIndices
+    } // End of getListIndices(float[], int)
 
-    // Class to hash 'size' integers
-    private class IndexRow
+    /**
+     * Create an index list for packed int data, where each run of
+     * <code>stride</code> values is one item. Items with identical values
+     * share the index of the first occurrence.
+     *
+     * @param data The packed data to index
+     * @param stride The number of values per item
+     * @return An index per item
+     */
+    static int[] getListIndices(int data[], int stride)
     {
-        int[] val;
-        int size;
-        private static final int HASHCONST = 0xBABEFACE;
+        int num = data.length / stride;
+        int indices[] = new int[num];
+        int mask = createHashTable(num);
+        int table[] = new int[mask + 1];
 
-        @Override
-        public int hashCode()
-        {
-            int bits = 0;
-            for(int i = 0; i < size; i++)
-            {
-                bits ^= (bits * HASHCONST) << 2;
-            }
-            return bits;
-        } // End of IndexRow.hashCode
+        Arrays.fill(table, -1);
 
-        @Override
-        public boolean equals(Object obj)
+        for(int i = 0; i < num; i++)
         {
-            for(int i = 0; i < size; i++)
+            int base = i * stride;
+            int hash = 0;
+            for(int k = 0; k < stride; k++)
+                hash = hash * 31 + data[base + k];
+
+            int slot = mixHash(hash) & mask;
+
+            while(true)
             {
-                if(((IndexRow) obj).get(i) != val[i])
-                    return false;
+                int idx = table[slot];
+
+                if(idx == -1)
+                {
+                    table[slot] = i;
+                    indices[i] = i;
+                    break;
+                }
+
+                int other = idx * stride;
+                boolean same = true;
+                for(int k = 0; k < stride && same; k++)
+                    same = data[base + k] == data[other + k];
+
+                if(same)
+                {
+                    indices[i] = idx;
+                    break;
+                }
+
+                slot = (slot + 1) & mask;
             }
-            return true;
-        } // End of IndexRow.equals()
+        }
 
-        public int get(int index)
-        {
-            return val[index];
-        } // End of IndexRow.get
+        return indices;
+    } // End of getListIndices(int[], int)
 
-        public void set(int index, int value)
-        {
-            val[index] = value;
-        } // End of IndexRow.set
+    /**
+     * Work out the mask for a power of two hash table that is at least twice
+     * the number of items, so probe runs stay short.
+     */
+    private static int createHashTable(int num)
+    {
+        int size = 16;
+        while(size < num * 2)
+            size <<= 1;
 
-        IndexRow(int numColumns)
-        {
-            size = numColumns;
-            val = new int[size];
-        } // End of IndexRow constructor
-    } // End of class IndexRow
+        return size - 1;
+    } // End of createHashTable
+
+    /** Spread the bits of a hash so the low bits used for the slot vary. */
+    private static int mixHash(int hash)
+    {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
 
+        return hash;
+    } // End of mixHash
     /**
      * Create index lists for all data lists.
      * Identical data entries are guaranteed to
@@ -1269,98 +1477,59 @@ public class GeometryInfo
                 numLists++;
             numLists += texCoordSetCount;
 
-            // Make single array containing all indices
+            // Make single array containing all indices, one row per vertex
             int n = coordinateIndices.length;
-            IndexRow[] ir = new IndexRow[n];
-            int j;
+            int[] rows = new int[n * numLists];
+            int j = 0;
             for(int i = 0; i < n; i++)
             {
-                ir[i] = new IndexRow(numLists);
-                j = 0;
-                ir[i].set(j++, coordinateIndices[i]);
+                rows[j++] = coordinateIndices[i];
                 if(colorIndices != null)
-                    ir[i].set(j++, colorIndices[i]);
+                    rows[j++] = colorIndices[i];
                 if(normalIndices != null)
-                    ir[i].set(j++, normalIndices[i]);
+                    rows[j++] = normalIndices[i];
                 for(int k = 0; k < texCoordSetCount; k++)
-                {
-                    ir[i].set(j++, texCoordIndexSets[k][i]);
-                }
+                    rows[j++] = texCoordIndexSets[k][i];
             }
 
             // Get index into that array
-            int[] coordOnlyIndices = getListIndices(ir);
+            int[] coordOnlyIndices = getListIndices(rows, numLists);
 
-            // Get rid of duplicate rows
-            int newInd[] = new int[coordOnlyIndices.length];
-            ir = (IndexRow[]) compactData(coordOnlyIndices, ir, newInd);
-            coordOnlyIndices = newInd;
+            // Get rid of duplicate rows. The kept list says which original
+            // row each of the new vertices comes from.
+            int newInd[] = new int[n];
+            int[] kept = compactIndices(coordOnlyIndices, n, newInd);
 
             // Reformat data lists to correspond to new index
+            int[] src_index = new int[kept.length];
+
+            for(int i = 0; i < kept.length; i++)
+                src_index[i] = coordinateIndices[kept[i]];
+            coordinates = gatherData(coordinates, 3, src_index);
+
+            if(colors != null)
+            {
+                for(int i = 0; i < kept.length; i++)
+                    src_index[i] = colorIndices[kept[i]];
+                colors = gatherData(colors, colorSize, src_index);
+            }
 
-            // Allocate arrays to hold reformatted data
-            Point3f[] newCoords = new Point3f[ir.length];
-            Color3f[] newColors3 = null;
-            Color4f[] newColors4 = null;
-            Vector3f[] newNormals = null;
-            Object newTexCoordSets[][] = null;
-            if(colors3 != null)
-                newColors3 = new Color3f[ir.length];
-            else if(colors4 != null)
-                newColors4 = new Color4f[ir.length];
             if(normals != null)
-                newNormals = new Vector3f[ir.length];
-            for(int i = 0; i < texCoordSetCount; i++)
             {
-                if(texCoordDim == 2)
-                {
-                    if(i == 0)
-                        newTexCoordSets = new TexCoord2f[texCoordSetCount][];
-                    newTexCoordSets[i] = new TexCoord2f[ir.length];
-                }
-                else if(texCoordDim == 3)
-                {
-                    if(i == 0)
-                        newTexCoordSets = new TexCoord3f[texCoordSetCount][];
-                    newTexCoordSets[i] = new TexCoord3f[ir.length];
-                }
-                else if(texCoordDim == 4)
-                {
-                    if(i == 0)
-                        newTexCoordSets = new TexCoord4f[texCoordSetCount][];
-                    newTexCoordSets[i] = new TexCoord4f[ir.length];
-                }
+                for(int i = 0; i < kept.length; i++)
+                    src_index[i] = normalIndices[kept[i]];
+                normals = gatherData(normals, 3, src_index);
             }
 
-            // Copy data into new arrays
-            n = ir.length;
-            for(int i = 0; i < n; i++)
+            for(int k = 0; k < texCoordSetCount; k++)
             {
-                j = 0;
-                newCoords[i] = coordinates[(ir[i]).get(j++)];
-                if(colors3 != null)
-                {
-                    newColors3[i] = colors3[(ir[i]).get(j++)];
-                }
-                else if(colors4 != null)
-                {
-                    newColors4[i] = colors4[(ir[i]).get(j++)];
-                }
-                if(normals != null)
-                    newNormals[i] = normals[(ir[i]).get(j++)];
-                for(int k = 0; k < texCoordSetCount; k++)
-                {
-                    newTexCoordSets[k][i] = texCoordSets[k][(ir[i]).get(j++)];
-                }
+                for(int i = 0; i < kept.length; i++)
+                    src_index[i] = texCoordIndexSets[k][kept[i]];
+                texCoordSets[k] = gatherData(texCoordSets[k], texCoordDim, src_index);
             }
 
-            // Replace old arrays with new arrays
-            coordinates = newCoords;
-            colors3 = newColors3;
-            colors4 = newColors4;
-            normals = newNormals;
-            texCoordSets = newTexCoordSets;
-            coordinateIndices = coordOnlyIndices;
+            // Replace old index arrays
+            coordinateIndices = newInd;
             colorIndices = null;
             normalIndices = null;
             texCoordIndexSets = new int[texCoordSetCount][];
@@ -1374,7 +1543,7 @@ public class GeometryInfo
             // later.
 
             int n = coordinateIndices.length;
-            if((colors3 != null) || (colors4 != null))
+            if(colors != null)
             {
                 colorIndices = new int[n];
                 for(int i = 0; i < n; i++)
@@ -1404,20 +1573,18 @@ public class GeometryInfo
             if(coordinateIndices != null)
                 return;
 
-            coordinateIndices = getListIndices(coordinates);
+            coordinateIndices = getListIndices(coordinates, 3);
 
-            if(colors3 != null)
-                colorIndices = getListIndices(colors3);
-            else if(colors4 != null)
-                colorIndices = getListIndices(colors4);
+            if(colors != null)
+                colorIndices = getListIndices(colors, colorSize);
 
             if(normals != null)
-                normalIndices = getListIndices(normals);
+                normalIndices = getListIndices(normals, 3);
 
             texCoordIndexSets = new int[texCoordSetCount][];
             for(int i = 0; i < texCoordSetCount; i++)
             {
-                texCoordIndexSets[i] = getListIndices(texCoordSets[i]);
+                texCoordIndexSets[i] = getListIndices(texCoordSets[i], texCoordDim);
             }
 
             coordOnly = false;
@@ -1431,86 +1598,26 @@ public class GeometryInfo
     } // End of indexify()
 
     /**
-     * Allocates an array of the same type as the input type. This allows us to
-     * use a generic compactData method.
-     *
-     * @param data Array of coordinate, color, normal or texture coordinate data
-     *             The data can be in one of the following formats - Point3f, Color3f,
-     *             Color4f, TexCoord2f, TexCoord3f, TexCoord4f.
-     * @param num  The size of the array to be allocated
-     * @return An array of size num of the same type as the input type
-     * @throws IllegalArgumentException if the input array is not one of the
-     *                                  types listed above.
-     */
-    Object[] allocateArray(Object data[], int num)
-    {
-        Object newData[] = null;
-        if(data instanceof Point3f[])
-        {
-            newData = new Point3f[num];
-        }
-        else if(data instanceof Vector3f[])
-        {
-            newData = new Vector3f[num];
-        }
-        else if(data instanceof Color3f[])
-        {
-            newData = new Color3f[num];
-        }
-        else if(data instanceof Color4f[])
-        {
-            newData = new Color4f[num];
-        }
-        else if(data instanceof TexCoord2f[])
-        {
-            newData = new TexCoord2f[num];
-        }
-        else if(data instanceof TexCoord3f[])
-        {
-            newData = new TexCoord3f[num];
-        }
-        else if(data instanceof TexCoord4f[])
-        {
-            newData = new TexCoord4f[num];
-        }
-        else if(data instanceof IndexRow[])
-        {
-            // Hack so we can use compactData for coordIndexOnly
-            newData = new IndexRow[num];
-        }
-        else
-            throw new IllegalArgumentException("GeometryInfo9");
-
-        return newData;
-    } // End of allocateArray
-
-    /**
-     * Generic method that compacts (ie removes unreferenced/duplicate data)
-     * any type of indexed data.
-     * Used to compact coordinate, color, normal and texture coordinate data.
+     * Work out which data items are referenced by an index list and build a
+     * new index list that refers to the compacted data.
      *
      * @param indices Array of indices
-     * @param data    Array of coordinate, color, normal or texture coordinate data
-     *                The data can be in one of the following formats - Point3f, Color3f,
-     *                Color4f, TexCoord2f, TexCoord3f, TexCoord4f.
+     * @param numData The number of items in the data the indices refer to
      * @param newInd  The new array of indexes after the data has been compacted.
      *                This must be allocated by the calling method. On return, this array will
      *                contain the new index data. The size of this array must be equal to
      *                indices.length
-     * @return Array of the data with unreferenced and duplicate entries removed.
-     *         The return type will be the same as the type that was passed in data.
+     * @return The index of the original data item for each compacted item
      */
-    // TODO:  Remove duplicate entries in data lists.
-    private Object[] compactData(int indices[], Object data[], int newInd[])
+    private int[] compactIndices(int indices[], int numData, int newInd[])
     {
-        Object newData[] = null;
         /*
          * This is a three step process.
          * First, find out how many unique indexes are used.  This
          * will be the size of the new data array.
          */
         int numUnique = 0;
-        int translationTable[] = new int[data.length];
+        int translationTable[] = new int[numData];
         for(int i = 0; i < indices.length; i++)
         {
             if(translationTable[indices[i]] == 0)
@@ -1524,13 +1631,13 @@ public class GeometryInfo
          * Second, build the new data list.  Remember the new indexes so
          * we can use the table to translate the old indexes to the new
          */
-        newData = allocateArray(data, numUnique);
+        int kept[] = new int[numUnique];
         int newIdx = 0;
         for(int i = 0; i < translationTable.length; i++)
         {
             if(translationTable[i] != 0)
             {
-                newData[newIdx] = data[i];
+                kept[newIdx] = i;
                 translationTable[i] = newIdx++;
             }
         }
@@ -1541,8 +1648,28 @@ public class GeometryInfo
         {
             newInd[i] = translationTable[indices[i]];
         }
+        return kept;
+    } // End of compactIndices
+
+    /**
+     * Build a new packed data array by picking items out of an existing one.
+     * Used for compacting and un-indexing coordinate, color, normal and
+     * texture coordinate data.
+     *
+     * @param data   The packed source data
+     * @param stride The number of values per item
+     * @param index  The source item for each item of the new array
+     * @return The new packed data
+     */
+    private float[] gatherData(float data[], int stride, int index[])
+    {
+        float newData[] = new float[index.length * stride];
+        for(int i = 0; i < index.length; i++)
+        {
+            System.arraycopy(data, index[i] * stride, newData, i * stride, stride);
+        }
         return newData;
-    } // End of compactData
+    } // End of gatherData
 
     /**
      * Remove unused data from an indexed dataset.
@@ -1574,32 +1701,33 @@ public class GeometryInfo
             return;
 
         int newInd[] = new int[coordinateIndices.length];
-        coordinates = (Point3f[]) compactData(coordinateIndices, coordinates,
-                                              newInd);
+        int kept[] = compactIndices(coordinateIndices, coordinates.length / 3, newInd);
+        coordinates = gatherData(coordinates, 3, kept);
         coordinateIndices = newInd;
 
         if(colorIndices != null)
         {
             newInd = new int[colorIndices.length];
-            if(colors3 != null)
-                colors3 = (Color3f[]) compactData(colorIndices, colors3, newInd);
-            else if(colors4 != null)
-                colors4 = (Color4f[]) compactData(colorIndices, colors4, newInd);
+            kept = compactIndices(colorIndices, colors.length / colorSize, newInd);
+            colors = gatherData(colors, colorSize, kept);
             colorIndices = newInd;
         }
 
         if(normalIndices != null)
         {
             newInd = new int[normalIndices.length];
-            normals = (Vector3f[]) compactData(normalIndices, normals, newInd);
+            kept = compactIndices(normalIndices, normals.length / 3, newInd);
+            normals = gatherData(normals, 3, kept);
             normalIndices = newInd;
         }
 
         for(int i = 0; i < texCoordSetCount; i++)
         {
             newInd = new int[texCoordIndexSets[i].length];
-            texCoordSets[i] = compactData(texCoordIndexSets[i],
-                                          texCoordSets[i], newInd);
+            kept = compactIndices(texCoordIndexSets[i],
+                                  texCoordSets[i].length / texCoordDim,
+                                  newInd);
+            texCoordSets[i] = gatherData(texCoordSets[i], texCoordDim, kept);
             texCoordIndexSets[i] = newInd;
         }
     } // End of compact
@@ -1620,7 +1748,7 @@ public class GeometryInfo
         //
         // Check for indices with no data
         //
-        if((colors3 == null) && (colors4 == null) && (colorIndices != null))
+        if(colors == null && (colorIndices != null))
             throw new IllegalArgumentException("GeometryInfo4");
         if((normals == null) && (normalIndices != null))
             throw new IllegalArgumentException("GeometryInfo11");
@@ -1661,7 +1789,7 @@ public class GeometryInfo
                     throw new IllegalArgumentException("GeometryInfo20");
                 }
             }
-            else if(((colors3 != null) || (colors4 != null))
+            else if((colors != null)
                 && (colorIndices == null))
                 badData = true;
             else if((normals != null) && (normalIndices == null))
@@ -1677,7 +1805,7 @@ public class GeometryInfo
         //
         if((coordinateIndices != null) && (!coordOnly))
         {
-            if(((colors3 != null) || (colors4 != null))
+            if((colors != null)
                 && (colorIndices.length != coordinateIndices.length))
                 badData = true;
             else if((normals != null)
@@ -1721,7 +1849,7 @@ public class GeometryInfo
         // Find out how much data we have
         int count;
         if(coordinateIndices == null)
-            count = coordinates.length;
+            count = coordinates.length / 3;
         else
             count = coordinateIndices.length;
 
@@ -1807,75 +1935,51 @@ public class GeometryInfo
             if(coordOnly)
                 indexify(false);
 
-            coordinates = (Point3f[]) unindexifyData(coordinates,
-                                                     coordinateIndices);
+            coordinates = gatherData(coordinates, 3, coordinateIndices);
             coordinateIndices = null;
 
-            if(colors3 != null)
-            {
-                colors3 = (Color3f[]) unindexifyData(colors3, colorIndices);
-            }
-            else if(colors4 != null)
+            if(colors != null)
             {
-                colors4 = (Color4f[]) unindexifyData(colors4, colorIndices);
+                colors = gatherData(colors, colorSize, colorIndices);
             }
             colorIndices = null;
 
             if(normals != null)
             {
-                normals = (Vector3f[]) unindexifyData(normals, normalIndices);
+                normals = gatherData(normals, 3, normalIndices);
                 normalIndices = null;
             }
 
             for(int i = 0; i < texCoordSetCount; i++)
-                texCoordSets[i] = unindexifyData(texCoordSets[i],
-                                                 texCoordIndexSets[i]);
+                texCoordSets[i] = gatherData(texCoordSets[i],
+                                             texCoordDim,
+                                             texCoordIndexSets[i]);
             texCoordIndexSets = new int[texCoordSetCount][];
         }
     } // End of unindexify
 
-    /**
-     * Generic unindexify method. Can unindex data in any of the following
-     * formats Point3f, Color3f, Color4f, Vector3f, TexCoord2f, TexCoord3f,
-     * TexCoord4f.
-     */
-    private Object[] unindexifyData(Object data[], int index[])
-    {
-        Object newData[] = allocateArray(data, index.length);
-        for(int i = 0; i < index.length; i++)
-        {
-            newData[i] = data[index[i]];
-        }
-        return newData;
-    } // End of unindexifyData
-
     /** Calculate vertexCount based on data */
     private int getVertexCount()
     {
-        int vertexCount = coordinates.length;
+        int vertexCount = coordinates.length / 3;
 
-        if(colors3 != null)
-        {
-            if(colors3.length > vertexCount)
-                vertexCount = colors3.length;
-        }
-        else if(colors4 != null)
+        if(colors != null)
         {
-            if(colors4.length > vertexCount)
-                vertexCount = colors4.length;
+            if(colors.length / colorSize > vertexCount)
+                vertexCount = colors.length / colorSize;
         }
 
         if(normals != null)
         {
-            if(normals.length > vertexCount)
-                vertexCount = normals.length;
+            if(normals.length / 3 > vertexCount)
+                vertexCount = normals.length / 3;
         }
 
         // Find max length tex coord set
         for(int i = 0; i < texCoordSetCount; i++)
         {
-            if(texCoordSets[i].length > vertexCount)
-                vertexCount = texCoordSets[i].length;
+            if(texCoordSets[i].length / texCoordDim > vertexCount)
+                vertexCount = texCoordSets[i].length / texCoordDim;
         }
 
         return vertexCount;
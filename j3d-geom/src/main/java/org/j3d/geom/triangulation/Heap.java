@@ -67,7 +67,20 @@ class Heap
         // Calculate the maximum bounds : N + (N -2)* 2.
         //    triRef.maxNumHeap = triRef.numPoints * 3;
         triRef.maxNumHeap = triRef.numPoints;
-        triRef.heap = new HeapNode[triRef.maxNumHeap];
+
+        // Reuse the heap arrays from the last face when they are big enough
+        if(triRef.heapIndex == null ||
+           triRef.heapIndex.length < triRef.maxNumHeap)
+        {
+            triRef.heapRatio = new double[triRef.maxNumHeap];
+            triRef.heapIndex = new int[triRef.maxNumHeap];
+            triRef.heapPrev = new int[triRef.maxNumHeap];
+            triRef.heapNext = new int[triRef.maxNumHeap];
+        }
+        else
+        {
+            triRef.maxNumHeap = triRef.heapIndex.length;
+        }
 
         triRef.numHeap = 0;
         triRef.numZero = 0;
@@ -77,11 +90,21 @@ class Heap
     static void storeHeapData(Triangulator triRef, int index, double ratio,
                               int ind, int prev, int next)
     {
-        triRef.heap[index] = new HeapNode();
-        triRef.heap[index].ratio = ratio;
-        triRef.heap[index].index = ind;
-        triRef.heap[index].prev = prev;
-        triRef.heap[index].next = next;
+        triRef.heapRatio[index] = ratio;
+        triRef.heapIndex[index] = ind;
+        triRef.heapPrev[index] = prev;
+        triRef.heapNext[index] = next;
+    }
+
+    /**
+     * Copy the heap entry at one position over the top of another.
+     */
+    static void copyHeapData(Triangulator triRef, int dest, int src)
+    {
+        triRef.heapRatio[dest] = triRef.heapRatio[src];
+        triRef.heapIndex[dest] = triRef.heapIndex[src];
+        triRef.heapPrev[dest] = triRef.heapPrev[src];
+        triRef.heapNext[dest] = triRef.heapNext[src];
     }
 
     static void dumpOnHeap(Triangulator triRef, double ratio,
@@ -91,27 +114,21 @@ class Heap
 
         if(triRef.numHeap >= triRef.maxNumHeap)
         {
-            HeapNode old[] = triRef.heap;
             triRef.maxNumHeap = triRef.maxNumHeap + triRef.numPoints;
-            triRef.heap = new HeapNode[triRef.maxNumHeap];
-            System.arraycopy(old, 0, triRef.heap, 0, old.length);
+
+            double old_ratio[] = triRef.heapRatio;
+            triRef.heapRatio = new double[triRef.maxNumHeap];
+            System.arraycopy(old_ratio, 0, triRef.heapRatio, 0, old_ratio.length);
+
+            triRef.heapIndex = Triangulator.growArray(triRef.heapIndex, triRef.maxNumHeap);
+            triRef.heapPrev = Triangulator.growArray(triRef.heapPrev, triRef.maxNumHeap);
+            triRef.heapNext = Triangulator.growArray(triRef.heapNext, triRef.maxNumHeap);
         }
         if(ratio == 0.0)
         {
             if(triRef.numZero < triRef.numHeap)
-                if(triRef.heap[triRef.numHeap] == null)
-                    storeHeapData(triRef, triRef.numHeap, triRef.heap[triRef.numZero].ratio,
-                                  triRef.heap[triRef.numZero].index,
-                                  triRef.heap[triRef.numZero].prev,
-                                  triRef.heap[triRef.numZero].next);
-                else
-                    triRef.heap[triRef.numHeap].copy(triRef.heap[triRef.numZero]);
-        /*
-	      storeHeapData(triRef, triRef.numHeap, triRef.heap[triRef.numZero].ratio,
-	      triRef.heap[triRef.numZero].index,
-	      triRef.heap[triRef.numZero].prev,
-	      triRef.heap[triRef.numZero].next);
-	    */
+                copyHeapData(triRef, triRef.numHeap, triRef.numZero);
+
             index = triRef.numZero;
             ++triRef.numZero;
         }
@@ -147,17 +164,12 @@ class Heap
             --triRef.numZero;
             --triRef.numHeap;
 
-            ind[0] = triRef.heap[triRef.numZero].index;
-            prev[0] = triRef.heap[triRef.numZero].prev;
-            next[0] = triRef.heap[triRef.numZero].next;
+            ind[0] = triRef.heapIndex[triRef.numZero];
+            prev[0] = triRef.heapPrev[triRef.numZero];
+            next[0] = triRef.heapNext[triRef.numZero];
             if(triRef.numZero < triRef.numHeap)
-                triRef.heap[triRef.numZero].copy(triRef.heap[triRef.numHeap]);
-	    /*
-	      storeHeapData( triRef, triRef.numZero, triRef.heap[triRef.numHeap].ratio,
-	      triRef.heap[triRef.numHeap].index,
-	      triRef.heap[triRef.numHeap].prev,
-	      triRef.heap[triRef.numHeap].next);
-	    */
+                copyHeapData(triRef, triRef.numZero, triRef.numHeap);
+
             return true;
         }
         else if(triRef.earsRandom)
@@ -172,11 +184,11 @@ class Heap
             --triRef.numHeap;
             if(rndInd > triRef.numHeap) rndInd = triRef.numHeap;
 
-            ind[0] = triRef.heap[rndInd].index;
-            prev[0] = triRef.heap[rndInd].prev;
-            next[0] = triRef.heap[rndInd].next;
+            ind[0] = triRef.heapIndex[rndInd];
+            prev[0] = triRef.heapPrev[rndInd];
+            next[0] = triRef.heapNext[rndInd];
             if(rndInd < triRef.numHeap)
-                triRef.heap[rndInd].copy(triRef.heap[triRef.numHeap]);
+                copyHeapData(triRef, rndInd, triRef.numHeap);
 
             return true;
         }
@@ -188,9 +200,9 @@ class Heap
                 return false;
             }
             --triRef.numHeap;
-            ind[0] = triRef.heap[triRef.numHeap].index;
-            prev[0] = triRef.heap[triRef.numHeap].prev;
-            next[0] = triRef.heap[triRef.numHeap].next;
+            ind[0] = triRef.heapIndex[triRef.numHeap];
+            prev[0] = triRef.heapPrev[triRef.numHeap];
+            next[0] = triRef.heapNext[triRef.numHeap];
 
             return true;
         }
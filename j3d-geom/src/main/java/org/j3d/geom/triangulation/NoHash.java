@@ -69,23 +69,22 @@ class NoHash
     {
         int size;
 
-        if(triRef.vtxList == null)
+        if(triRef.vtxListPnt == null)
         {
             size = Math.max(triRef.numVtxList + 1, 100);
-            triRef.vtxList = new PntNode[size];
+            triRef.vtxListPnt = new int[size];
+            triRef.vtxListNext = new int[size];
         }
-        else if(triRef.numVtxList >= triRef.vtxList.length)
+        else if(triRef.numVtxList >= triRef.vtxListPnt.length)
         {
             size = Math.max(triRef.numVtxList + 1,
-                            triRef.vtxList.length + 100);
-            PntNode old[] = triRef.vtxList;
-            triRef.vtxList = new PntNode[size];
-            System.arraycopy(old, 0, triRef.vtxList, 0, old.length);
+                            triRef.vtxListPnt.length + 100);
+            triRef.vtxListPnt = Triangulator.growArray(triRef.vtxListPnt, size);
+            triRef.vtxListNext = Triangulator.growArray(triRef.vtxListNext, size);
         }
 
-        triRef.vtxList[triRef.numVtxList] = new PntNode();
-        triRef.vtxList[triRef.numVtxList].pnt = iVtx;
-        triRef.vtxList[triRef.numVtxList].next = triRef.reflexVertices;
+        triRef.vtxListPnt[triRef.numVtxList] = iVtx;
+        triRef.vtxListNext[triRef.numVtxList] = triRef.reflexVertices;
         triRef.reflexVertices = triRef.numVtxList;
         ++triRef.numVtxList;
         ++triRef.numReflex;
@@ -107,33 +106,33 @@ class NoHash
         //System.out.println("NoHash:deleteFromList. Problem :Not is InVtxList ..." +
         //	       indPnt);
 
-        indVtx = triRef.vtxList[indPnt].pnt;
+        indVtx = triRef.vtxListPnt[indPnt];
 
         if(indVtx == i)
         {
-            triRef.reflexVertices = triRef.vtxList[indPnt].next;
+            triRef.reflexVertices = triRef.vtxListNext[indPnt];
             --triRef.numReflex;
         }
         else
         {
-            indPnt1 = triRef.vtxList[indPnt].next;
+            indPnt1 = triRef.vtxListNext[indPnt];
             while(indPnt1 != NIL)
             {
                 //if(inVtxList(triRef, indPnt1)==false)
                 //    System.out.println("NoHash:deleteFromList. Problem :Not is InVtxList ..."+
                 //		       indPnt1);
 
-                indVtx = triRef.vtxList[indPnt1].pnt;
+                indVtx = triRef.vtxListPnt[indPnt1];
                 if(indVtx == i)
                 {
-                    triRef.vtxList[indPnt].next = triRef.vtxList[indPnt1].next;
+                    triRef.vtxListNext[indPnt] = triRef.vtxListNext[indPnt1];
                     indPnt1 = NIL;
                     --triRef.numReflex;
                 }
                 else
                 {
                     indPnt = indPnt1;
-                    indPnt1 = triRef.vtxList[indPnt].next;
+                    indPnt1 = triRef.vtxListNext[indPnt];
                 }
             }
         }
@@ -220,7 +219,7 @@ class NoHash
         // of the entire triangle.
         if(i1 < bb.imin) bb.imin = i1;
         else if(i1 > bb.imax) bb.imax = i1;
-        y = triRef.points[i1].y;
+        y = triRef.points[i1 * 2 + 1];
         if(y < bb.ymin) bb.ymin = y;
         else if(y > bb.ymax) bb.ymax = y;
 
@@ -232,7 +231,7 @@ class NoHash
         do
         {
             // assert(InVtxList(ind_pnt));
-            indVtx = triRef.vtxList[indPnt].pnt;
+            indVtx = triRef.vtxListPnt[indPnt];
             // assert(InPolyList(ind_vtx));
             i4 = triRef.fetchData(indVtx);
 
@@ -258,7 +257,7 @@ class NoHash
                     }
                 }
             }
-            indPnt = triRef.vtxList[indPnt].next;
+            indPnt = triRef.vtxListNext[indPnt];
 
         }
         while(indPnt != NIL);
@@ -93,11 +93,11 @@ class Numerics
         return !((a) <= eps);
     }
 
-    static double baseLength(Point2f u, Point2f v)
+    static double baseLength(float[] points, int u, int v)
     {
         double x, y;
-        x = (v).x - (u).x;
-        y = (v).y - (u).y;
+        x = points[v * 2] - points[u * 2];
+        y = points[v * 2 + 1] - points[u * 2 + 1];
         return Math.abs(x) + Math.abs(y);
     }
 
@@ -123,7 +123,7 @@ class Numerics
     static double stableDet2D(Triangulator triRef, int i, int j, int k)
     {
         double det;
-        Point2f numericsHP, numericsHQ, numericsHR;
+        float[] points;
 
         //      if((triRef.inPointsList(i)==false)||(triRef.inPointsList(j)==false)||
         // (triRef.inPointsList(k)==false))
@@ -136,27 +136,25 @@ class Numerics
         }
         else
         {
-            numericsHP = triRef.points[i];
-            numericsHQ = triRef.points[j];
-            numericsHR = triRef.points[k];
+            points = triRef.points;
 
             if(i < j)
             {
                 if(j < k)            /* i < j < k  */
-                    det = PointUtils.det2D(numericsHP, numericsHQ, numericsHR);
+                    det = PointUtils.det2D(points, i, j, k);
                 else if(i < k)       /* i < k < j  */
-                    det = -PointUtils.det2D(numericsHP, numericsHR, numericsHQ);
+                    det = -PointUtils.det2D(points, i, k, j);
                 else                  /* k < i < j  */
-                    det = PointUtils.det2D(numericsHR, numericsHP, numericsHQ);
+                    det = PointUtils.det2D(points, k, i, j);
             }
             else
             {
                 if(i < k)            /* j < i < k  */
-                    det = -PointUtils.det2D(numericsHQ, numericsHP, numericsHR);
+                    det = -PointUtils.det2D(points, j, i, k);
                 else if(j < k)      /* j < k < i  */
-                    det = PointUtils.det2D(numericsHQ, numericsHR, numericsHP);
+                    det = PointUtils.det2D(points, j, k, i);
                 else                  /* k < j < i */
-                    det = -PointUtils.det2D(numericsHR, numericsHQ, numericsHP);
+                    det = -PointUtils.det2D(points, k, j, i);
             }
         }
 
@@ -260,7 +258,6 @@ class Numerics
         int angle;
         double numericsHDot;
         int numericsHOri1;
-        Point2f numericsHP, numericsHQ;
 
         //      if((triRef.inPointsList(i)==false)||(triRef.inPointsList(j)==false)||
         //	 (triRef.inPointsList(k)==false))
@@ -310,11 +307,7 @@ class Numerics
             else
             {
                 // 0, 180, or 360 degrees.
-                numericsHP = new Point2f();
-                numericsHQ = new Point2f();
-                PointUtils.vectorSub2D(triRef.points[i], triRef.points[j], numericsHP);
-                PointUtils.vectorSub2D(triRef.points[k], triRef.points[j], numericsHQ);
-                numericsHDot = PointUtils.dotProduct2D(numericsHP, numericsHQ);
+                numericsHDot = PointUtils.dotProduct2D(triRef.points, i, j, k);
                 if(numericsHDot < 0.0)
                 {
                     // 180 degrees.
@@ -463,16 +456,11 @@ class Numerics
     static double getRatio(Triangulator triRef, int i, int j, int k)
     {
         double area, a, b, c, base, ratio;
-        Point2f p, q, r;
+        float[] points = triRef.points;
 
-        p = triRef.points[i];
-        q = triRef.points[j];
-        r = triRef.points[k];
-
-
-        a = baseLength(p, q);
-        b = baseLength(p, r);
-        c = baseLength(r, q);
+        a = baseLength(points, i, j);
+        b = baseLength(points, i, k);
+        c = baseLength(points, k, j);
         base = max3(a, b, c);
 
         if((10.0 * a) < Math.min(b, c))
@@ -516,7 +504,6 @@ class Numerics
                              int ind1, int ind3)
     {
         int ori, ori1, ori2, i0, ii1, ii2;
-        Point2f pq, pr;
         double dot;
 
         if(ind1 == ind3)
@@ -597,11 +584,7 @@ class Numerics
             }
             else
             {
-                pq = new Point2f();
-                PointUtils.vectorSub2D(triRef.points[i1], triRef.points[i2], pq);
-                pr = new Point2f();
-                PointUtils.vectorSub2D(triRef.points[i3], triRef.points[i2], pr);
-                dot = PointUtils.dotProduct2D(pq, pr);
+                dot = PointUtils.dotProduct2D(triRef.points, i1, i2, i3);
                 if(dot < 0.0)
                 {
                     ori = orientation(triRef, i2, i1, i0);
@@ -620,30 +603,36 @@ class Numerics
 
 
     /**
-     * computes the signed angle between  p, p1  and  p, p2.
+     * computes the signed angle between  p, p1  and  p, p2, where  p  is
+     * given directly and  p1, p2  are point numbers.
      * <p/>
      * warning: this function does not handle a 180-degree angle correctly!
      * (this is no issue in our application, as we will always compute
      * the angle centered at the mid-point of a valid diagonal.)
      */
-    static double angle(Triangulator triRef, Point2f p, Point2f p1, Point2f p2)
+    static double angle(Triangulator triRef, float px, float py, int p1, int p2)
     {
         int sign;
         double angle1, angle2, angle;
-        Point2f v1, v2;
+        float[] points = triRef.points;
+        float p1x = points[p1 * 2];
+        float p1y = points[p1 * 2 + 1];
+        float p2x = points[p2 * 2];
+        float p2y = points[p2 * 2 + 1];
 
-        sign = PointUtils.signEps(PointUtils.det2D(p2, p, p1), triRef.epsilon);
+        sign = PointUtils.signEps(PointUtils.det2D(p2x, p2y, px, py, p1x, p1y),
+                                  triRef.epsilon);
 
         if(sign == 0)
             return 0.0;
 
-        v1 = new Point2f();
-        v2 = new Point2f();
-        PointUtils.vectorSub2D(p1, p, v1);
-        PointUtils.vectorSub2D(p2, p, v2);
+        float v1x = p1x - px;
+        float v1y = p1y - py;
+        float v2x = p2x - px;
+        float v2y = p2y - py;
 
-        angle1 = Math.atan2(v1.y, v1.x);
-        angle2 = Math.atan2(v2.y, v2.x);
+        angle1 = Math.atan2(v1y, v1x);
+        angle2 = Math.atan2(v2y, v2x);
 
         if(angle1 < 0.0) angle1 += 2.0 * Math.PI;
         if(angle2 < 0.0) angle2 += 2.0 * Math.PI;
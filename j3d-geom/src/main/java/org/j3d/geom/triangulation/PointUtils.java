@@ -59,38 +59,38 @@
 
 package org.j3d.geom.triangulation;
 
-/** Cleans up the basic operations on points like they were vectors. */
+/**
+ * Cleans up the basic operations on points like they were vectors. The 2D
+ * points are held packed in a single float array as [x0, y0, x1, y1, ...]
+ * and are referenced by point number.
+ */
 class PointUtils
 {
 
-    static double det2D(Point2f u, Point2f v, Point2f w)
-    {
-        return (((u).x - (v).x) * ((v).y - (w).y) + ((v).y - (u).y) * ((v).x - (w).x));
-    }
-
-    static double dotProduct2D(Point2f u, Point2f v)
+    static double det2D(float ux, float uy, float vx, float vy, float wx, float wy)
     {
-        return (((u).x * (v).x) + ((u).y * (v).y));
+        return ((ux - vx) * (vy - wy) + (vy - uy) * (vx - wx));
     }
 
-    static void vectorProduct(Point3f p, Point3f q, Point3f r)
+    static double det2D(float[] points, int u, int v, int w)
     {
-        (r).x = (p).y * (q).z - (q).y * (p).z;
-        (r).y = (q).x * (p).z - (p).x * (q).z;
-        (r).z = (p).x * (q).y - (q).x * (p).y;
+        return det2D(points[u * 2], points[u * 2 + 1],
+                     points[v * 2], points[v * 2 + 1],
+                     points[w * 2], points[w * 2 + 1]);
     }
 
-    static void vectorSub(Point3f p, Point3f q, Point3f r)
+    /**
+     * Dot product of the vectors from point  v  to  u  and from point  v  to
+     * w.
+     */
+    static double dotProduct2D(float[] points, int u, int v, int w)
     {
-        (r).x = (p).x - (q).x;
-        (r).y = (p).y - (q).y;
-        (r).z = (p).z - (q).z;
-    }
+        float px = points[u * 2] - points[v * 2];
+        float py = points[u * 2 + 1] - points[v * 2 + 1];
+        float qx = points[w * 2] - points[v * 2];
+        float qy = points[w * 2 + 1] - points[v * 2 + 1];
 
-    static void vectorSub2D(Point2f p, Point2f q, Point2f r)
-    {
-        (r).x = (p).x - (q).x;
-        (r).y = (p).y - (q).y;
+        return ((px * qx) + (py * qy));
     }
 
     static int signEps(double x, double eps)
@@ -122,10 +122,15 @@ class Project
         i0 = triRef.fetchData(ind0);
         ind2 = triRef.fetchNextData(ind1);
         i2 = triRef.fetchData(ind2);
+        float[] vtx = triRef.vertices;
         pq = new Vector3f();
-        pq.sub(triRef.vertices[i0], triRef.vertices[i1]);
+        pq.x = vtx[i0 * 3] - vtx[i1 * 3];
+        pq.y = vtx[i0 * 3 + 1] - vtx[i1 * 3 + 1];
+        pq.z = vtx[i0 * 3 + 2] - vtx[i1 * 3 + 2];
         pr = new Vector3f();
-        pr.sub(triRef.vertices[i2], triRef.vertices[i1]);
+        pr.x = vtx[i2 * 3] - vtx[i1 * 3];
+        pr.y = vtx[i2 * 3 + 1] - vtx[i1 * 3 + 1];
+        pr.z = vtx[i2 * 3 + 2] - vtx[i1 * 3 + 2];
         nr = new Vector3f();
         nr.cross(pq, pr);
         nr.normalise();
@@ -136,7 +141,9 @@ class Project
         i2 = triRef.fetchData(ind2);
         while(ind1 != ind)
         {
-            pr.sub(triRef.vertices[i2], triRef.vertices[i1]);
+            pr.x = vtx[i2 * 3] - vtx[i1 * 3];
+            pr.y = vtx[i2 * 3 + 1] - vtx[i1 * 3 + 1];
+            pr.z = vtx[i2 * 3 + 2] - vtx[i1 * 3 + 2];
             nr.cross(pq, pr);
 
             nr.normalise();
@@ -169,6 +176,7 @@ class Project
     {
         Matrix4d matrix = new Matrix4d();
         Point3d vtx = new Point3d();
+        float[] vertices = triRef.vertices;
         Vector3f n1, n2;
         double d;
         int ind, ind1;
@@ -222,9 +230,9 @@ class Project
             ind1 = ind;
             j1 = triRef.fetchData(ind1);
 
-            vtx.x = triRef.vertices[j1].x;
-            vtx.y = triRef.vertices[j1].y;
-            vtx.z = triRef.vertices[j1].z;
+            vtx.x = vertices[j1 * 3];
+            vtx.y = vertices[j1 * 3 + 1];
+            vtx.z = vertices[j1 * 3 + 2];
 
             matrix.transform(vtx, vtx);
 
@@ -234,9 +242,9 @@ class Project
             j1 = triRef.fetchData(ind1);
             while(ind1 != ind)
             {
-                vtx.x = triRef.vertices[j1].x;
-                vtx.y = triRef.vertices[j1].y;
-                vtx.z = triRef.vertices[j1].z;
+                vtx.x = vertices[j1 * 3];
+                vtx.y = vertices[j1 * 3 + 1];
+                vtx.z = vertices[j1 * 3 + 2];
 
                 matrix.transform(vtx, vtx);
 
@@ -78,8 +78,6 @@ class Simple
         int ind0, ind2, ind3, ind4;
         int i1, i2, i3, i0, i4;
 
-        Point3f pq, pr, nr;
-
         double x, y, z;
         int ori2, ori4;
 
@@ -123,51 +121,54 @@ class Simple
             triRef.initPnts(5);
             i1 = triRef.fetchData(ind1);
 
-            pq = new Point3f();
-            pr = new Point3f();
-            nr = new Point3f();
-
-            PointUtils.vectorSub(triRef.vertices[i1], triRef.vertices[i2], pq);
-            PointUtils.vectorSub(triRef.vertices[i3], triRef.vertices[i2], pr);
-            PointUtils.vectorProduct(pq, pr, nr);
-
-            x = Math.abs(nr.x);
-            y = Math.abs(nr.y);
-            z = Math.abs(nr.z);
+            float[] vtx = triRef.vertices;
+            float[] pnts = triRef.points;
+            int v1 = i1 * 3;
+            int v2 = i2 * 3;
+            int v3 = i3 * 3;
+            int v4 = i4 * 3;
+
+            float pqx = vtx[v1] - vtx[v2];
+            float pqy = vtx[v1 + 1] - vtx[v2 + 1];
+            float pqz = vtx[v1 + 2] - vtx[v2 + 2];
+            float prx = vtx[v3] - vtx[v2];
+            float pry = vtx[v3 + 1] - vtx[v2 + 1];
+            float prz = vtx[v3 + 2] - vtx[v2 + 2];
+
+            float nrx = pqy * prz - pry * pqz;
+            float nry = prx * pqz - pqx * prz;
+            float nrz = pqx * pry - prx * pqy;
+
+            x = Math.abs(nrx);
+            y = Math.abs(nry);
+            z = Math.abs(nrz);
+
+            // pick the two coordinates of the plane to project onto
+            int ax, ay;
             if((z >= x) && (z >= y))
             {
-                triRef.points[1].x = triRef.vertices[i1].x;
-                triRef.points[1].y = triRef.vertices[i1].y;
-                triRef.points[2].x = triRef.vertices[i2].x;
-                triRef.points[2].y = triRef.vertices[i2].y;
-                triRef.points[3].x = triRef.vertices[i3].x;
-                triRef.points[3].y = triRef.vertices[i3].y;
-                triRef.points[4].x = triRef.vertices[i4].x;
-                triRef.points[4].y = triRef.vertices[i4].y;
+                ax = 0;
+                ay = 1;
             }
             else if((x >= y) && (x >= z))
             {
-                // System.out.println("((x >= y)  &&  (x >= z))");
-                triRef.points[1].x = triRef.vertices[i1].z;
-                triRef.points[1].y = triRef.vertices[i1].y;
-                triRef.points[2].x = triRef.vertices[i2].z;
-                triRef.points[2].y = triRef.vertices[i2].y;
-                triRef.points[3].x = triRef.vertices[i3].z;
-                triRef.points[3].y = triRef.vertices[i3].y;
-                triRef.points[4].x = triRef.vertices[i4].z;
-                triRef.points[4].y = triRef.vertices[i4].y;
+                ax = 2;
+                ay = 1;
             }
             else
             {
-                triRef.points[1].x = triRef.vertices[i1].x;
-                triRef.points[1].y = triRef.vertices[i1].z;
-                triRef.points[2].x = triRef.vertices[i2].x;
-                triRef.points[2].y = triRef.vertices[i2].z;
-                triRef.points[3].x = triRef.vertices[i3].x;
-                triRef.points[3].y = triRef.vertices[i3].z;
-                triRef.points[4].x = triRef.vertices[i4].x;
-                triRef.points[4].y = triRef.vertices[i4].z;
+                ax = 0;
+                ay = 2;
             }
+
+            pnts[2] = vtx[v1 + ax];
+            pnts[3] = vtx[v1 + ay];
+            pnts[4] = vtx[v2 + ax];
+            pnts[5] = vtx[v2 + ay];
+            pnts[6] = vtx[v3 + ax];
+            pnts[7] = vtx[v3 + ay];
+            pnts[8] = vtx[v4 + ax];
+            pnts[9] = vtx[v4 + ay];
             triRef.numPoints = 5;
 
             // find a valid diagonal
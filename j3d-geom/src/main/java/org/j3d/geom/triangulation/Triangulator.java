@@ -65,6 +65,15 @@ import java.util.*;
  * Triangulator is a utility for turning arbitrary polygons into triangles
  * so they can be rendered by Java 3D.
  * Polygons can be concave, nonplanar, and can contain holes.
+ * <p>
+ *
+ * All of the working state is held in packed primitive arrays rather than
+ * an object per vertex, point, list node or triangle, so a triangulator
+ * instance can be reused for large polygon sets without generating garbage
+ * in proportion to the vertex count. Polygons may be supplied either
+ * through a {@link GeometryInfo} or directly as packed coordinate and
+ * index arrays using
+ * {@link #triangulate(float[], int[], int[], int[], int[], int[])}.
  *
  * @see GeometryInfo
  */
@@ -76,9 +85,20 @@ public class Triangulator
     int faces[] = null;
     int loops[] = null;
     int chains[] = null;
-    Point2f points[] = null;
-    Triangle triangles[] = null;
-    ListNode list[] = null;
+
+    // Projected 2D points packed as [x0, y0, x1, y1, ...]
+    float points[] = null;
+
+    // List node numbers of each triangle packed as [v1, v2, v3, ...]
+    int triangles[] = null;
+
+    // The list nodes as parallel arrays. index holds the point number,
+    // common holds the Vertex, Color, Normal, Texture index.
+    int listIndex[] = null;
+    int listPrev[] = null;
+    int listNext[] = null;
+    int listConvex[] = null;
+    int listCommon[] = null;
 
     Random randomGen = null;
 
@@ -101,14 +121,18 @@ public class Triangulator
     int maxNumChains = 0;
 
     // For Clean class.
-    Point2f[] pUnsorted = null;
+    float[] pUnsorted = null;
+    int[] pOrder = null;
+    int[] pSortTmp = null;
+    int[] pMap = null;
     int maxNumPUnsorted = 0;
 
     // For NoHash class.
     boolean noHashingEdges = false;
     boolean noHashingPnts = false;
     int loopMin, loopMax;
-    PntNode vtxList[] = null;
+    int vtxListPnt[] = null;
+    int vtxListNext[] = null;
     int numVtxList = 0;
     int numReflex = 0;
     int reflexVertices;
@@ -120,7 +144,10 @@ public class Triangulator
     int maxNumLeftMost = 0;
 
     // For Heap class.
-    HeapNode heap[] = null;
+    double heapRatio[] = null;
+    int heapIndex[] = null;
+    int heapPrev[] = null;
+    int heapNext[] = null;
     int numHeap = 0;
     int maxNumHeap = 0;
     int numZero = 0;
@@ -131,9 +158,9 @@ public class Triangulator
 
     int stripCounts[] = null;
     int vertexIndices[] = null;
-    Point3f vertices[] = null;
-    Object colors[] = null;
-    Vector3f normals[] = null;
+
+    // Vertex coordinates packed as [x0, y0, z0, x1, ...]
+    float vertices[] = null;
 
     boolean ccwLoop = true;
 
@@ -206,14 +233,6 @@ public class Triangulator
      */
     public void triangulate(GeometryInfo gi)
     {
-        int i, j, k;
-        int sIndex = 0, index, currLoop, lastInd, ind;
-        boolean proceed;
-        boolean reset = false, troubles = false;
-
-        boolean done[] = new boolean[1];
-        boolean gotIt[] = new boolean[1];
-
         if(gi.getPrimitive() != GeometryInfo.POLYGON_ARRAY)
         {
             throw new IllegalArgumentException("Triangulator0");
@@ -221,14 +240,12 @@ public class Triangulator
 
         gi.indexify();
 
-        vertices = gi.getCoordinates();
+        vertices = gi.getCoordinateData();
         if(vertices != null)
             vertexIndices = gi.getCoordinateIndices();
         else
             vertexIndices = null;
 
-        colors = gi.getColors();
-        normals = gi.getNormals();
         this.gInfo = gi;
 
         stripCounts = gi.getStripCounts();
@@ -236,17 +253,159 @@ public class Triangulator
         faces = gi.getContourCounts();
         if(faces == null)
         {
-            //if (stripCounts == null)
-            //  System.out
-            //          .println("StripCounts is null! Don't know what to do.");
+            faces = new int[stripCounts.length];
+            for(int i = 0; i < stripCounts.length; i++)
+                faces[i] = 1;
+        }
+
+        numTexSets = gInfo.getTexCoordSetCount();
+
+        if(triangulateFaces())
+            writeTriangleToGeomInfo();
+    }
+
+    /**
+     * Triangulate a set of polygons that are held directly in packed arrays,
+     * without going through a {@link GeometryInfo}. No per-vertex objects are
+     * created. The layout follows GeometryInfo's POLYGON_ARRAY: each polygon
+     * is made of one or more contours, the first being the outer boundary and
+     * the rest holes, and each contour is a run of corners in the index list.
+     * <p>
+     *
+     * Two outputs are produced for each triangle corner. The coordinate output
+     * holds the coordinate index of the corner. The optional corner output
+     * holds the position of the corner in the input index list (or the vertex
+     * number for unindexed input), which can be used to look up any other
+     * per-corner data such as normals, colours or texture coordinates. Both
+     * arrays need room for the value returned by
+     * {@link #getMaxIndexCount(int[], int[])}.
+     *
+     * @param coords The vertex coordinates packed as [x0, y0, z0, x1, ...]
+     * @param coordIndices The coordinate index of each corner, or null if
+     *    the corners use the coordinates in order
+     * @param stripCounts The number of corners in each contour
+     * @param contourCounts The number of contours in each polygon, or null
+     *    if every polygon has a single contour
+     * @param coordOutput The array to write the coordinate indices to
+     * @param cornerOutput The array to write the corner positions to, or null
+     * @return The number of triangles generated. Negative if the triangulation
+     *    of one of the polygons failed part way through
+     * @throws IllegalArgumentException An output array is too small
+     */
+    public int triangulate(float[] coords,
+                           int[] coordIndices,
+                           int[] stripCounts,
+                           int[] contourCounts,
+                           int[] coordOutput,
+                           int[] cornerOutput)
+    {
+        int max_idx = getMaxIndexCount(stripCounts, contourCounts);
+
+        if(coordOutput.length < max_idx ||
+           (cornerOutput != null && cornerOutput.length < max_idx))
+            throw new IllegalArgumentException(
+                "Output arrays need at least " + max_idx + " values");
+
+        vertices = coords;
+        vertexIndices = coordIndices;
+        this.stripCounts = stripCounts;
+        gInfo = null;
+        numTexSets = 0;
 
+        faces = contourCounts;
+        if(faces == null)
+        {
             faces = new int[stripCounts.length];
-            for(i = 0; i < stripCounts.length; i++)
+            for(int i = 0; i < stripCounts.length; i++)
                 faces[i] = 1;
         }
 
+        boolean complete = triangulateFaces();
+
+        for(int i = 0; i < numTriangles * 3; i++)
+        {
+            int corner = listCommon[triangles[i]];
+            coordOutput[i] = (vertexIndices == null) ?
+                             corner :
+                             vertexIndices[corner];
+
+            if(cornerOutput != null)
+                cornerOutput[i] = corner;
+        }
+
+        int ret_val = complete ? numTriangles : -numTriangles;
+
+        // Don't hang on to the caller's data
+        vertices = null;
+        vertexIndices = null;
+        this.stripCounts = null;
+        faces = null;
+
+        return ret_val;
+    }
+
+    /**
+     * Calculate the size of the output arrays needed for the given polygons
+     * by {@link #triangulate(float[], int[], int[], int[], int[], int[])}. A
+     * polygon of n corners and h holes generates at most n + 2h - 2
+     * triangles.
+     *
+     * @param stripCounts The number of corners in each contour
+     * @param contourCounts The number of contours in each polygon, or null
+     *    if every polygon has a single contour
+     * @return The number of index values needed
+     */
+    public static int getMaxIndexCount(int[] stripCounts, int[] contourCounts)
+    {
+        int ret_val = 0;
+
+        if(contourCounts == null)
+        {
+            for(int i = 0; i < stripCounts.length; i++)
+            {
+                if(stripCounts[i] > 2)
+                    ret_val += (stripCounts[i] - 2) * 3;
+            }
+        }
+        else
+        {
+            int strip = 0;
+
+            for(int i = 0; i < contourCounts.length; i++)
+            {
+                int num_corners = 0;
+
+                for(int j = 0; j < contourCounts[i]; j++)
+                    num_corners += stripCounts[strip++];
+
+                int num_tris = num_corners + 2 * contourCounts[i] - 4;
+
+                if(num_tris > 0)
+                    ret_val += num_tris * 3;
+            }
+        }
+
+        return ret_val;
+    }
+
+    /**
+     * Run the triangulation over all the faces in the current input. The
+     * vertices, vertexIndices, stripCounts and faces fields must be set
+     * before calling.
+     *
+     * @return false if the triangulation gave up part way through
+     */
+    private boolean triangulateFaces()
+    {
+        int i, j, k;
+        int sIndex = 0, index, currLoop, lastInd, ind;
+        boolean proceed;
+        boolean reset = false, troubles = false;
+
+        boolean done[] = new boolean[1];
+        boolean gotIt[] = new boolean[1];
+
         numFaces = faces.length;
-        numTexSets = gInfo.getTexCoordSetCount();
 
         maxNumLoops = 0;
         maxNumList = 0;
@@ -269,7 +428,7 @@ public class Triangulator
         maxNumList += 20;
 
         loops = new int[maxNumLoops];
-        list = new ListNode[maxNumList];
+        allocateList(maxNumList);
 
         // Construct data for use in triangulation.
         numVtxList = 0;
@@ -293,11 +452,12 @@ public class Triangulator
 
                 for(k = 0; k < stripCounts[sIndex]; k++)
                 {
-                    list[numList] = new ListNode(vertexIndices[index]);
-                    ind = numList++;
+                    ind = makeNode((vertexIndices == null) ?
+                                   index :
+                                   vertexIndices[index]);
 
                     insertAfter(lastInd, ind);
-                    list[ind].setCommonIndex(index);
+                    listCommon[ind] = index;
 
                     lastInd = ind;
                     index++;
@@ -312,7 +472,8 @@ public class Triangulator
         // Done with constructing data. We can start to triangulate now.
 
         maxNumTriangles = maxNumList / 2;
-        triangles = new Triangle[maxNumTriangles];
+        if(triangles == null || triangles.length < maxNumTriangles * 3)
+            triangles = new int[maxNumTriangles * 3];
 
         // set the numerical precision threshold
         setEpsilon(ZERO);
@@ -409,7 +570,7 @@ public class Triangulator
                                 //  System.out.println("***** let's hope for the best *****\n");
                                 if(!Desperate.letsHope(this, ind))
                                 {
-                                    return;
+                                    return false;
                                 }
                             }
                             else
@@ -459,8 +620,7 @@ public class Triangulator
 
         }
 
-        writeTriangleToGeomInfo();
-
+        return true;
     }
 
     void preProcessList(int i1)
@@ -470,17 +630,17 @@ public class Triangulator
         resetPolyList(loops[i1]);
         tInd = loops[i1];
         tInd1 = tInd;
-        tInd2 = list[tInd1].next;
+        tInd2 = listNext[tInd1];
         while(tInd2 != tInd)
         {
-            if(list[tInd1].index == list[tInd2].index)
+            if(listIndex[tInd1] == listIndex[tInd2])
             {
                 if(tInd2 == loops[i1])
-                    loops[i1] = list[tInd2].next;
+                    loops[i1] = listNext[tInd2];
                 deleteLinks(tInd2);
             }
-            tInd1 = list[tInd1].next;
-            tInd2 = list[tInd1].next;
+            tInd1 = listNext[tInd1];
+            tInd2 = listNext[tInd1];
         }
 
     }
@@ -504,44 +664,44 @@ public class Triangulator
         int index;
         for(i = 0; i < numTriangles; i++)
         {
-            index = list[triangles[i].v1].getCommonIndex();
+            index = listCommon[triangles[i * 3]];
             newVertexIndices[currIndex++] = vertexIndices[index];
-            index = list[triangles[i].v2].getCommonIndex();
+            index = listCommon[triangles[i * 3 + 1]];
             newVertexIndices[currIndex++] = vertexIndices[index];
-            index = list[triangles[i].v3].getCommonIndex();
+            index = listCommon[triangles[i * 3 + 2]];
             newVertexIndices[currIndex++] = vertexIndices[index];
         }
         gInfo.setCoordinateIndices(newVertexIndices);
 
-        if(normals != null)
+        int oldNormalIndices[] = gInfo.getNormalIndices();
+        if(oldNormalIndices != null)
         {
-            int oldNormalIndices[] = gInfo.getNormalIndices();
             int newNormalIndices[] = new int[numTriangles * 3];
             currIndex = 0;
             for(i = 0; i < numTriangles; i++)
             {
-                index = list[triangles[i].v1].getCommonIndex();
+                index = listCommon[triangles[i * 3]];
                 newNormalIndices[currIndex++] = oldNormalIndices[index];
-                index = list[triangles[i].v2].getCommonIndex();
+                index = listCommon[triangles[i * 3 + 1]];
                 newNormalIndices[currIndex++] = oldNormalIndices[index];
-                index = list[triangles[i].v3].getCommonIndex();
+                index = listCommon[triangles[i * 3 + 2]];
                 newNormalIndices[currIndex++] = oldNormalIndices[index];
             }
             gInfo.setNormalIndices(newNormalIndices);
         }
 
-        if(colors != null)
+        int oldColorIndices[] = gInfo.getColorIndices();
+        if(oldColorIndices != null)
         {
             currIndex = 0;
-            int oldColorIndices[] = gInfo.getColorIndices();
             int newColorIndices[] = new int[numTriangles * 3];
             for(i = 0; i < numTriangles; i++)
             {
-                index = list[triangles[i].v1].getCommonIndex();
+                index = listCommon[triangles[i * 3]];
                 newColorIndices[currIndex++] = oldColorIndices[index];
-                index = list[triangles[i].v2].getCommonIndex();
+                index = listCommon[triangles[i * 3 + 1]];
                 newColorIndices[currIndex++] = oldColorIndices[index];
-                index = list[triangles[i].v3].getCommonIndex();
+                index = listCommon[triangles[i * 3 + 2]];
                 newColorIndices[currIndex++] = oldColorIndices[index];
             }
             gInfo.setColorIndices(newColorIndices);
@@ -554,11 +714,11 @@ public class Triangulator
             currIndex = 0;
             for(i = 0; i < numTriangles; i++)
             {
-                index = list[triangles[i].v1].getCommonIndex();
+                index = listCommon[triangles[i * 3]];
                 newTextureIndices[currIndex++] = oldTextureIndices[index];
-                index = list[triangles[i].v2].getCommonIndex();
+                index = listCommon[triangles[i * 3 + 1]];
                 newTextureIndices[currIndex++] = oldTextureIndices[index];
-                index = list[triangles[i].v3].getCommonIndex();
+                index = listCommon[triangles[i * 3 + 2]];
                 newTextureIndices[currIndex++] = oldTextureIndices[index];
             }
             gInfo.setTextureCoordinateIndices(j, newTextureIndices);
@@ -570,7 +730,7 @@ public class Triangulator
         epsilon = eps;
     }
 
-    // Methods of handling ListNode.
+    // Methods of handling the list nodes.
 
     boolean inPolyList(int ind)
     {
@@ -580,17 +740,17 @@ public class Triangulator
     void updateIndex(int ind, int index)
     {
         //  assert(InPolyList(ind));
-        list[ind].index = index;
+        listIndex[ind] = index;
     }
 
     int getAngle(int ind)
     {
-        return list[ind].convex;
+        return listConvex[ind];
     }
 
     void setAngle(int ind, int convex)
     {
-        list[ind].convex = convex;
+        listConvex[ind] = convex;
     }
 
     void resetPolyList(int ind)
@@ -611,7 +771,7 @@ public class Triangulator
 
 
         ind1 = loops[currLoop];
-        ind2 = list[ind1].next;
+        ind2 = listNext[ind1];
         if((inPolyList(ind1)) && (inPolyList(ind2)))
         {
 
@@ -625,16 +785,16 @@ public class Triangulator
     void deleteLinks(int ind)
     {
 
-        if((inPolyList(ind)) && (inPolyList(list[ind].prev))
-            && (inPolyList(list[ind].next)))
+        if((inPolyList(ind)) && (inPolyList(listPrev[ind]))
+            && (inPolyList(listNext[ind])))
         {
 
             if(firstNode == ind)
-                firstNode = list[ind].next;
+                firstNode = listNext[ind];
 
-            list[list[ind].next].prev = list[ind].prev;
-            list[list[ind].prev].next = list[ind].next;
-            list[ind].prev = list[ind].next = ind;
+            listPrev[listNext[ind]] = listPrev[ind];
+            listNext[listPrev[ind]] = listNext[ind];
+            listPrev[ind] = listNext[ind] = ind;
 
         }// else
         //  System.out
@@ -649,18 +809,18 @@ public class Triangulator
 
         // assert(InPolyList(ind1));
         // assert(InPolyList(ind2));
-        ind0 = list[ind1].next;
-        ind3 = list[ind2].next;
+        ind0 = listNext[ind1];
+        ind3 = listNext[ind2];
         // assert(InPolyList(ind0));
         // assert(InPolyList(ind3));
 
         // Swap.
-        ind = list[ind1].next;
-        list[ind1].next = list[ind2].next;
-        list[ind2].next = ind;
+        ind = listNext[ind1];
+        listNext[ind1] = listNext[ind2];
+        listNext[ind2] = ind;
 
-        list[ind0].prev = ind2;
-        list[ind3].prev = ind1;
+        listPrev[ind0] = ind2;
+        listPrev[ind3] = ind1;
 
     }
 
@@ -697,10 +857,10 @@ public class Triangulator
 
     void splitSplice(int ind1, int ind2, int ind3, int ind4)
     {
-        list[ind1].next = ind4;
-        list[ind4].prev = ind1;
-        list[ind2].prev = ind3;
-        list[ind3].next = ind2;
+        listNext[ind1] = ind4;
+        listPrev[ind4] = ind1;
+        listPrev[ind2] = ind3;
+        listNext[ind3] = ind2;
 
     }
 
@@ -715,18 +875,13 @@ public class Triangulator
 
         ind = numList;
         if(numList >= maxNumList)
-        {
-            maxNumList += INC_LIST_BK;
-            // System.out.println("Triangulator: Expanding list array ....");
-            ListNode old[] = list;
-            list = new ListNode[maxNumList];
-            System.arraycopy(old, 0, list, 0, old.length);
-        }
+            growList();
 
-        list[numList] = new ListNode(-1);
-        list[numList].prev = ind;
-        list[numList].next = ind;
-        list[numList].index = -1;
+        listPrev[numList] = ind;
+        listNext[numList] = ind;
+        listIndex[numList] = -1;
+        listConvex[numList] = 0;
+        listCommon[numList] = -1;
         ++numList;
 
         return ind;
@@ -765,25 +920,74 @@ public class Triangulator
         int ind;
 
         if(numList >= maxNumList)
-        {
-            maxNumList += INC_LIST_BK;
-            //System.out.println("Triangulator: Expanding list array ....");
-            ListNode old[] = list;
-            list = new ListNode[maxNumList];
-            System.arraycopy(old, 0, list, 0, old.length);
-        }
-
-        list[numList] = new ListNode(index);
+            growList();
 
         ind = numList;
-        list[numList].index = index;
-        list[numList].prev = -1;
-        list[numList].next = -1;
+        listIndex[numList] = index;
+        listPrev[numList] = -1;
+        listNext[numList] = -1;
+        listConvex[numList] = 0;
+        listCommon[numList] = -1;
         ++numList;
 
         return ind;
     }
 
+    /**
+     * Make sure the list node arrays can hold at least the given number of
+     * nodes. Existing arrays are reused between triangulations where they
+     * are already large enough. Does not preserve the contents.
+     */
+    void allocateList(int size)
+    {
+        if(listIndex == null || listIndex.length < size)
+        {
+            listIndex = new int[size];
+            listPrev = new int[size];
+            listNext = new int[size];
+            listConvex = new int[size];
+            listCommon = new int[size];
+        }
+    }
+
+    /** Expand the list node arrays, keeping the current contents. */
+    private void growList()
+    {
+        maxNumList += INC_LIST_BK;
+
+        if(listIndex.length >= maxNumList)
+            return;
+
+        listIndex = growArray(listIndex, maxNumList);
+        listPrev = growArray(listPrev, maxNumList);
+        listNext = growArray(listNext, maxNumList);
+        listConvex = growArray(listConvex, maxNumList);
+        listCommon = growArray(listCommon, maxNumList);
+    }
+
+    /** Copy the array into a new one of the given size. */
+    static int[] growArray(int[] old, int size)
+    {
+        int[] ret_val = new int[size];
+
+        if(old != null)
+            System.arraycopy(old, 0, ret_val, 0, Math.min(old.length, size));
+
+        return ret_val;
+    }
+
+    /** Node access for the common vertex, colour, normal and texture index */
+    int getCommonIndex(int ind)
+    {
+        return listCommon[ind];
+    }
+
+    /** Set the common vertex, colour, normal and texture index of a node */
+    void setCommonIndex(int ind, int comIndex)
+    {
+        listCommon[ind] = comIndex;
+    }
+
     /** Inserts node ind2 after node ind1. */
     void insertAfter(int ind1, int ind2)
     {
@@ -792,32 +996,32 @@ public class Triangulator
         if((inPolyList(ind1)) && (inPolyList(ind2)))
         {
 
-            list[ind2].next = list[ind1].next;
-            list[ind2].prev = ind1;
-            list[ind1].next = ind2;
-            ind3 = list[ind2].next;
+            listNext[ind2] = listNext[ind1];
+            listPrev[ind2] = ind1;
+            listNext[ind1] = ind2;
+            ind3 = listNext[ind2];
 
             if(inPolyList(ind3))
-                list[ind3].prev = ind2;
+                listPrev[ind3] = ind2;
         }
     }
 
     /** Returns pointer to the successor of ind1. */
     int fetchNextData(int ind1)
     {
-        return list[ind1].next;
+        return listNext[ind1];
     }
 
     /** obtains the data store at ind1 */
     int fetchData(int ind1)
     {
-        return list[ind1].index;
+        return listIndex[ind1];
     }
 
     /** returns pointer to the successor of ind1. */
     int fetchPrevData(int ind1)
     {
-        return list[ind1].prev;
+        return listPrev[ind1];
     }
 
     /** swap the list pointers in order to change the orientation. */
@@ -825,37 +1029,44 @@ public class Triangulator
     {
         int ind2, ind3;
 
-        ind2 = list[ind1].next;
-        list[ind1].next = list[ind1].prev;
-        list[ind1].prev = ind2;
+        ind2 = listNext[ind1];
+        listNext[ind1] = listPrev[ind1];
+        listPrev[ind1] = ind2;
         ind3 = ind2;
         while(ind2 != ind1)
         {
-            ind3 = list[ind2].next;
-            list[ind2].next = list[ind2].prev;
-            list[ind2].prev = ind3;
+            ind3 = listNext[ind2];
+            listNext[ind2] = listPrev[ind2];
+            listPrev[ind2] = ind3;
             ind2 = ind3;
         }
     }
 
-    // Methods for handling Triangle.
+    // Methods for handling triangles.
 
     void storeTriangle(int i, int j, int k)
     {
         if(numTriangles >= maxNumTriangles)
         {
-            // System.out.println("Triangulator:storeTriangle Expanding triangle array..");
             maxNumTriangles += INC_TRI_BK;
-            Triangle old[] = triangles;
-            triangles = new Triangle[maxNumTriangles];
-            if(old != null)
-                System.arraycopy(old, 0, triangles, 0, old.length);
+            if(triangles.length < maxNumTriangles * 3)
+                triangles = growArray(triangles, maxNumTriangles * 3);
         }
 
+        int t = numTriangles * 3;
+
         if(ccwLoop)
-            triangles[numTriangles] = new Triangle(i, j, k);
+        {
+            triangles[t] = i;
+            triangles[t + 1] = j;
+        }
         else
-            triangles[numTriangles] = new Triangle(j, i, k);
+        {
+            triangles[t] = j;
+            triangles[t + 1] = i;
+        }
+
+        triangles[t + 2] = k;
         numTriangles++;
 
     }
@@ -867,11 +1078,12 @@ public class Triangulator
         if(maxNumPoints < number)
         {
             maxNumPoints = number;
-            points = new Point2f[maxNumPoints];
+            if(points == null || points.length < maxNumPoints * 2)
+                points = new float[maxNumPoints * 2];
         }
 
-        for(int i = 0; i < number; i++)
-            points[i] = new Point2f();
+        for(int i = 0; i < number * 2; i++)
+            points[i] = 0;
 
         numPoints = 0;
     }
@@ -883,15 +1095,17 @@ public class Triangulator
         if(numPoints >= maxNumPoints)
         {
             maxNumPoints += INC_POINT_BK;
-            Point2f old[] = points;
-            points = new Point2f[maxNumPoints];
-            if(old != null)
-                System.arraycopy(old, 0, points, 0, old.length);
+            if(points == null || points.length < maxNumPoints * 2)
+            {
+                float old[] = points;
+                points = new float[maxNumPoints * 2];
+                if(old != null)
+                    System.arraycopy(old, 0, points, 0, old.length);
+            }
         }
 
-        points[numPoints] = new Point2f();
-        points[numPoints].x = x;
-        points[numPoints].y = y;
+        points[numPoints * 2] = x;
+        points[numPoints * 2 + 1] = y;
 
         i = numPoints;
         ++numPoints;
@@ -0,0 +1,172 @@
+/*
+ * j3d.org Copyright (c) 2001-2015
+ *                                 Java Source
+ *
+ *  This source is licensed under the GNU LGPL v2.1
+ *  Please read docs/LGPL.txt for more information
+ *
+ *  This software comes with the standard NO WARRANTY disclaimer for any
+ *  purpose. Use it at your own risk. If there's a problem you get to fix it.
+ */
+
+package org.j3d.geom;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public class BatchTriangulatorTest
+{
+    @Test(groups = "unit")
+    public void testMixedPolygons() throws Exception
+    {
+        // A triangle, a quad, a line (skipped) and an L-shaped hexagon
+        float[] coords = {
+            0, 0, 0,  1, 0, 0,  0, 1, 0,
+            0, 0, 1,  1, 0, 1,  1, 1, 1,  0, 1, 1,
+            5, 5, 5,  6, 6, 6,
+            0, 0, 2,  2, 0, 2,  2, 1, 2,  1, 1, 2,  1, 2, 2,  0, 2, 2
+        };
+        int[] offsets = { 0, 3, 7, 9, 15 };
+
+        BatchTriangulator classUnderTest = new BatchTriangulator();
+        int[] output = new int[BatchTriangulator.getMaxIndexCount(4, offsets)];
+        int[] counts = new int[4];
+
+        int num_tris = classUnderTest.triangulate(coords, 4, offsets, null, counts, output, null);
+
+        assertEquals(num_tris, 7, "Wrong total triangle count");
+        assertEquals(counts[0], 1, "Triangle count");
+        assertEquals(counts[1], 2, "Quad count");
+        assertEquals(counts[2], 0, "Degenerate polygon count");
+        assertEquals(counts[3], 4, "Hexagon count");
+
+        // Check each polygon's triangles only reference its own vertices
+        int out = 0;
+        for(int p = 0; p < 4; p++)
+        {
+            for(int i = 0; i < counts[p] * 3; i++, out++)
+            {
+                assertTrue(output[out] >= offsets[p] && output[out] < offsets[p + 1],
+                           "Polygon " + p + " index " + output[out] + " out of range");
+            }
+        }
+
+        assertEquals(triangleArea(coords, output, 3, 4), 3, 0.0001f, "Hexagon area");
+    }
+
+    @Test(groups = "unit")
+    public void testParallelMatchesSerial() throws Exception
+    {
+        int num_polygons = 2000;
+        int[] offsets = new int[num_polygons + 1];
+        int num_vertex = 0;
+
+        for(int i = 0; i < num_polygons; i++)
+        {
+            offsets[i] = num_vertex;
+            num_vertex += 6 + (i % 5) * 2;
+        }
+
+        offsets[num_polygons] = num_vertex;
+
+        float[] coords = new float[num_vertex * 3];
+
+        for(int i = 0; i < num_polygons; i++)
+        {
+            int n = offsets[i + 1] - offsets[i];
+            float[] star = createStar(n, 3, 1);
+
+            for(int j = 0; j < n * 3; j += 3)
+            {
+                coords[offsets[i] * 3 + j] = star[j] + i * 10;
+                coords[offsets[i] * 3 + j + 1] = star[j + 1];
+                coords[offsets[i] * 3 + j + 2] = star[j + 2];
+            }
+        }
+
+        int max_idx = BatchTriangulator.getMaxIndexCount(num_polygons, offsets);
+        int[] serial_output = new int[max_idx];
+        int[] parallel_output = new int[max_idx];
+        int[] serial_counts = new int[num_polygons];
+        int[] parallel_counts = new int[num_polygons];
+
+        BatchTriangulator classUnderTest = new BatchTriangulator();
+
+        int serial_tris = classUnderTest.triangulate(coords,
+                                                     num_polygons,
+                                                     offsets,
+                                                     null,
+                                                     serial_counts,
+                                                     serial_output,
+                                                     null);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+
+        try
+        {
+            int parallel_tris = classUnderTest.triangulate(coords,
+                                                           num_polygons,
+                                                           offsets,
+                                                           null,
+                                                           parallel_counts,
+                                                           parallel_output,
+                                                           pool);
+
+            assertEquals(parallel_tris, serial_tris, "Triangle counts differ");
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+
+        assertEquals(serial_tris, num_vertex - 2 * num_polygons, "Not all polygons fully triangulated");
+        assertEquals(parallel_counts, serial_counts, "Per polygon counts differ");
+        assertEquals(parallel_output, serial_output, "Output indices differ");
+    }
+
+    /**
+     * Create a star outline in the XY plane, counter-clockwise.
+     */
+    private float[] createStar(int numVertex, float outer, float inner)
+    {
+        float[] ret_val = new float[numVertex * 3];
+
+        for(int i = 0; i < numVertex; i++)
+        {
+            double angle = 2 * Math.PI * i / numVertex;
+            float radius = (i % 2 == 0) ? outer : inner;
+
+            ret_val[i * 3] = (float)(radius * Math.cos(angle));
+            ret_val[i * 3 + 1] = (float)(radius * Math.sin(angle));
+        }
+
+        return ret_val;
+    }
+
+    /**
+     * Sum of the areas of a run of triangles given by vertex indices.
+     */
+    private float triangleArea(float[] coords, int[] tris, int start, int numTris)
+    {
+        double ret_val = 0;
+
+        for(int i = start; i < start + numTris; i++)
+        {
+            int p0 = tris[i * 3] * 3;
+            int p1 = tris[i * 3 + 1] * 3;
+            int p2 = tris[i * 3 + 2] * 3;
+
+            double ax = coords[p1] - coords[p0];
+            double ay = coords[p1 + 1] - coords[p0 + 1];
+            double bx = coords[p2] - coords[p0];
+            double by = coords[p2 + 1] - coords[p0 + 1];
+
+            ret_val += Math.abs(ax * by - ay * bx) * 0.5;
+        }
+
+        return (float)ret_val;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * j3d.org Copyright (c) 2001-2015
+ *                                 Java Source
+ *
+ *  This source is licensed under the GNU LGPL v2.1
+ *  Please read docs/LGPL.txt for more information
+ *
+ *  This software comes with the standard NO WARRANTY disclaimer for any
+ *  purpose. Use it at your own risk. If there's a problem you get to fix it.
+ */
+
+package org.j3d.geom;
+
+import java.awt.Font;
+import java.util.ArrayList;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public class CharacterCreatorTest
+{
+    @Test(groups = "unit")
+    public void testSharedGlyphs() throws Exception
+    {
+        Font font = new Font(Font.SANS_SERIF, Font.PLAIN, 12);
+        GlyphCache cache = new GlyphCache(64);
+
+        CharacterCreator creator_1 = new CharacterCreator(font, 0.01, cache);
+        CharacterCreator creator_2 = new CharacterCreator(font, 0.01, cache);
+
+        ArrayList<CharacterData> output_1 = new ArrayList<>();
+        ArrayList<CharacterData> output_2 = new ArrayList<>();
+
+        creator_1.createCharacterTriangles("oo".toCharArray(), 2, output_1);
+        creator_2.createCharacterTriangles("o".toCharArray(), 1, output_2);
+
+        assertEquals(output_1.size(), 2, "Wrong number of characters");
+        assertTrue(output_1.get(0).numIndex > 0, "No triangles for the glyph");
+        assertSame(output_1.get(1), output_1.get(0), "Repeated character not cached");
+        assertSame(output_2.get(0), output_1.get(0), "Glyph not shared between creators");
+        assertEquals(cache.size(), 1, "Wrong number of cached glyphs");
+    }
+
+    @Test(groups = "unit")
+    public void testStringTriangles() throws Exception
+    {
+        Font font = new Font(Font.SANS_SERIF, Font.PLAIN, 12);
+        CharacterCreator classUnderTest =
+            new CharacterCreator(font, 0.01, new GlyphCache(64));
+
+        ArrayList<CharacterData> glyphs = new ArrayList<>();
+        classUnderTest.createCharacterTriangles("l l".toCharArray(), 3, glyphs);
+
+        CharacterData glyph = glyphs.get(0);
+        CharacterData result =
+            classUnderTest.createStringTriangles("l l".toCharArray(), 3, 0.1f);
+
+        int num_coords = glyph.coordinates.capacity();
+        float offset = glyph.bounds.width + glyphs.get(1).bounds.width + 0.2f;
+
+        assertEquals(result.numIndex, glyph.numIndex * 2, "Wrong index count");
+        assertEquals(result.coordinates.capacity(), num_coords * 2, "Wrong coordinate count");
+        assertEquals(result.bounds.width, offset + glyph.bounds.width, 0.0001f, "Wrong width");
+
+        // Second copy of the glyph is shifted along X by the advance
+        for(int i = 0; i < num_coords; i += 3)
+        {
+            assertEquals(result.coordinates.get(num_coords + i),
+                         glyph.coordinates.get(i) + offset, 0.0001f, "X at " + i);
+            assertEquals(result.coordinates.get(num_coords + i + 1),
+                         glyph.coordinates.get(i + 1), 0.0001f, "Y at " + i);
+        }
+
+        // And its indices refer to the second set of vertices
+        for(int i = 0; i < glyph.numIndex; i++)
+            assertEquals(result.coordIndex.get(glyph.numIndex + i),
+                         glyph.coordIndex.get(i) + num_coords / 3, "Index " + i);
+    }
+}
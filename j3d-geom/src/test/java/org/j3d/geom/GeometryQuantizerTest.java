@@ -0,0 +1,223 @@
+/*
+ * j3d.org Copyright (c) 2001-2015
+ *                                 Java Source
+ *
+ *  This source is licensed under the GNU LGPL v2.1
+ *  Please read docs/LGPL.txt for more information
+ *
+ *  This software comes with the standard NO WARRANTY disclaimer for any
+ *  purpose. Use it at your own risk. If there's a problem you get to fix it.
+ */
+
+package org.j3d.geom;
+
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public class GeometryQuantizerTest
+{
+    @Test(groups = "unit")
+    public void testGetSharedInstance() throws Exception
+    {
+        GeometryQuantizer testInstance = GeometryQuantizer.getSharedInstance();
+
+        assertNotNull(testInstance, "Did not create the initial shared instance");
+        assertSame(GeometryQuantizer.getSharedInstance(), testInstance, "Wasn't a proper shared instance");
+    }
+
+    @Test(groups = "unit")
+    public void testHalfFloatValues() throws Exception
+    {
+        assertEquals(GeometryQuantizer.floatToHalf(0), (short)0x0000, "Zero");
+        assertEquals(GeometryQuantizer.floatToHalf(-0f), (short)0x8000, "Negative zero");
+        assertEquals(GeometryQuantizer.floatToHalf(1), (short)0x3C00, "One");
+        assertEquals(GeometryQuantizer.floatToHalf(-2), (short)0xC000, "Minus two");
+        assertEquals(GeometryQuantizer.floatToHalf(65504), (short)0x7BFF, "Largest");
+        assertEquals(GeometryQuantizer.floatToHalf(70000), (short)0x7C00, "Overflow");
+        assertEquals(GeometryQuantizer.floatToHalf(5.9604645e-8f), (short)0x0001, "Smallest");
+        assertEquals(GeometryQuantizer.floatToHalf(2.9802322e-8f), (short)0x0000, "Half smallest");
+
+        // 1 + 2^-11 is halfway between 1 and the next half, ties to even
+        assertEquals(GeometryQuantizer.floatToHalf(1 + 1 / 2048f), (short)0x3C00, "Tie to even");
+        assertEquals(GeometryQuantizer.floatToHalf(1 + 3 / 2048f), (short)0x3C02, "Tie to even up");
+
+        assertTrue(Float.isNaN(GeometryQuantizer.halfToFloat(GeometryQuantizer.floatToHalf(Float.NaN))), "NaN");
+        assertEquals(GeometryQuantizer.halfToFloat((short)0xFC00), Float.NEGATIVE_INFINITY, "Negative infinity");
+
+        // Every finite half float converts to a float and back exactly
+        for(int h = 0; h < 0x10000; h++)
+        {
+            if((h & 0x7C00) == 0x7C00)
+                continue;
+
+            float f = GeometryQuantizer.halfToFloat((short)h);
+            assertEquals(GeometryQuantizer.floatToHalf(f), (short)h, "Round trip of " + h);
+        }
+    }
+
+    @Test(groups = "unit")
+    public void testHalfFloatErrorBound() throws Exception
+    {
+        GeometryQuantizer classUnderTest = new GeometryQuantizer();
+        Random rand = new Random(7);
+        int count = 10000;
+        float[] values = new float[count];
+        short[] encoded = new short[count];
+        float[] decoded = new float[count];
+
+        for(int i = 0; i < count; i++)
+            values[i] = rand.nextFloat();
+
+        classUnderTest.encodeHalfFloats(values, count, encoded);
+        classUnderTest.decodeHalfFloats(encoded, count, decoded);
+
+        for(int i = 0; i < count; i++)
+            assertEquals(decoded[i], values[i], 1 / 4096f, "Value " + i);
+    }
+
+    @Test(groups = "unit")
+    public void testPositionErrorBound() throws Exception
+    {
+        GeometryQuantizer classUnderTest = new GeometryQuantizer();
+        Random rand = new Random(3);
+        int num = 5000;
+        float[] coords = new float[num * 3];
+
+        for(int i = 0; i < num; i++)
+        {
+            coords[i * 3] = rand.nextFloat() * 100 - 50;
+            coords[i * 3 + 1] = rand.nextFloat() * 2;
+            coords[i * 3 + 2] = 7;
+        }
+
+        float[] offset = new float[3];
+        float[] scale = new float[3];
+        short[] encoded = new short[num * 3];
+        float[] decoded = new float[num * 3];
+
+        classUnderTest.computePositionRange(coords, num, offset, scale);
+        classUnderTest.encodePositions(coords, num, offset, scale, encoded);
+        classUnderTest.decodePositions(encoded, num, offset, scale, decoded);
+
+        assertEquals(scale[2], 0f, "Flat axis scale");
+
+        for(int i = 0; i < num * 3; i++)
+        {
+            int axis = i % 3;
+            float bound = scale[axis] * 0.5f + Math.ulp(Math.abs(coords[i]) + 50) * 2;
+
+            assertEquals(decoded[i], coords[i], bound, "Coordinate " + i);
+        }
+    }
+
+    @Test(groups = "unit")
+    public void testNormalErrorBound() throws Exception
+    {
+        GeometryQuantizer classUnderTest = new GeometryQuantizer();
+        Random rand = new Random(11);
+        int num = 20000;
+        float[] normals = new float[num * 3];
+
+        for(int i = 0; i < num; i++)
+        {
+            double x = rand.nextGaussian();
+            double y = rand.nextGaussian();
+            double z = rand.nextGaussian();
+            double len = Math.sqrt(x * x + y * y + z * z);
+
+            normals[i * 3] = (float)(x / len);
+            normals[i * 3 + 1] = (float)(y / len);
+            normals[i * 3 + 2] = (float)(z / len);
+        }
+
+        // Axes and the octahedron folds are the awkward cases
+        normals[0] = 0; normals[1] = 0; normals[2] = -1;
+        normals[3] = 0; normals[4] = -1; normals[5] = 0;
+
+        short[] encoded = new short[num * 2];
+        float[] decoded = new float[num * 3];
+
+        classUnderTest.encodeNormals(normals, num, encoded);
+        classUnderTest.decodeNormals(encoded, num, decoded);
+
+        for(int i = 0; i < num; i++)
+        {
+            double ax = normals[i * 3];
+            double ay = normals[i * 3 + 1];
+            double az = normals[i * 3 + 2];
+            double bx = decoded[i * 3];
+            double by = decoded[i * 3 + 1];
+            double bz = decoded[i * 3 + 2];
+
+            double cx = ay * bz - az * by;
+            double cy = az * bx - ax * bz;
+            double cz = ax * by - ay * bx;
+            double dot = ax * bx + ay * by + az * bz;
+            double angle = Math.toDegrees(Math.atan2(Math.sqrt(cx * cx + cy * cy + cz * cz), dot));
+
+            assertTrue(angle < 0.005, "Normal " + i + " off by " + angle);
+            assertEquals(bx * bx + by * by + bz * bz, 1, 1e-5, "Normal " + i + " length");
+        }
+    }
+
+    @Test(groups = "unit")
+    public void testGeometryRoundTrip() throws Exception
+    {
+        SphereGenerator gen = new SphereGenerator(2, 16);
+        GeometryData data = new GeometryData();
+        data.geometryType = GeometryData.INDEXED_TRIANGLES;
+        data.geometryComponents = GeometryData.NORMAL_DATA |
+                                  GeometryData.TEXTURE_2D_DATA;
+        gen.generate(data);
+
+        GeometryQuantizer classUnderTest = new GeometryQuantizer();
+        QuantizedGeometryData quantized = classUnderTest.quantize(data);
+
+        assertEquals(quantized.vertexCount, data.vertexCount, "Vertex count");
+        assertEquals(quantized.coordinates.length, data.vertexCount * 3, "Position size");
+        assertEquals(quantized.normals.length, data.vertexCount * 2, "Normal size");
+        assertEquals(quantized.textureCoordinates.length, data.vertexCount * 2, "Texture size");
+        assertSame(quantized.indexes, data.indexes, "Indexes not shared");
+
+        GeometryData decoded = new GeometryData();
+        classUnderTest.dequantize(quantized, decoded);
+
+        assertEquals(decoded.geometryType, data.geometryType, "Type");
+        assertEquals(decoded.indexesCount, data.indexesCount, "Index count");
+
+        for(int i = 0; i < data.vertexCount * 3; i++)
+            assertEquals(decoded.coordinates[i], data.coordinates[i], 1e-4f, "Coordinate " + i);
+
+        // The generator leaves some unused vertices with zero normals, which
+        // have no direction to encode
+        for(int v = 0; v < data.vertexCount; v++)
+        {
+            int n = v * 3;
+
+            if(data.normals[n] == 0 && data.normals[n + 1] == 0 && data.normals[n + 2] == 0)
+                continue;
+
+            for(int k = 0; k < 3; k++)
+                assertEquals(decoded.normals[n + k], data.normals[n + k], 1e-4f, "Normal " + v);
+        }
+
+        for(int i = 0; i < data.vertexCount * 2; i++)
+            assertEquals(decoded.textureCoordinates[i], data.textureCoordinates[i], 1 / 4096f, "Texture " + i);
+
+        GeometryData small = new GeometryData();
+        small.coordinates = new float[3];
+
+        try
+        {
+            classUnderTest.dequantize(quantized, small);
+            fail("Short coordinate array accepted");
+        }
+        catch(InvalidArraySizeException iase)
+        {
+            // expected
+        }
+    }
+}
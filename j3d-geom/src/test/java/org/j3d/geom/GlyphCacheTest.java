@@ -0,0 +1,64 @@
+/*
+ * j3d.org Copyright (c) 2001-2015
+ *                                 Java Source
+ *
+ *  This source is licensed under the GNU LGPL v2.1
+ *  Please read docs/LGPL.txt for more information
+ *
+ *  This software comes with the standard NO WARRANTY disclaimer for any
+ *  purpose. Use it at your own risk. If there's a problem you get to fix it.
+ */
+
+package org.j3d.geom;
+
+import java.awt.Font;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public class GlyphCacheTest
+{
+    @Test(groups = "unit")
+    public void testKeys() throws Exception
+    {
+        Font font = new Font(Font.SANS_SERIF, Font.PLAIN, 12);
+        Font other_font = new Font(Font.SERIF, Font.PLAIN, 12);
+        CharacterData data = new CharacterData();
+
+        GlyphCache classUnderTest = new GlyphCache(16);
+        classUnderTest.put(font, 0.1, 'a', data);
+
+        assertSame(classUnderTest.get(font, 0.1, 'a'), data, "Cached glyph not found");
+        assertNull(classUnderTest.get(font, 0.1, 'b'), "Wrong character found");
+        assertNull(classUnderTest.get(font, 0.2, 'a'), "Wrong flatness found");
+        assertNull(classUnderTest.get(other_font, 0.1, 'a'), "Wrong font found");
+
+        classUnderTest.clear();
+
+        assertNull(classUnderTest.get(font, 0.1, 'a'), "Glyph not cleared");
+    }
+
+    @Test(groups = "unit")
+    public void testBoundedSize() throws Exception
+    {
+        Font font = new Font(Font.SANS_SERIF, Font.PLAIN, 12);
+        CharacterData keep = new CharacterData();
+
+        GlyphCache classUnderTest = new GlyphCache(20);
+        classUnderTest.put(font, 0.1, 'A', keep);
+
+        for(char c = 'a'; c <= 'z'; c++)
+        {
+            classUnderTest.put(font, 0.1, c, new CharacterData());
+
+            // Keep using the one glyph so it is never evicted
+            assertSame(classUnderTest.get(font, 0.1, 'A'), keep, "Used glyph evicted at " + c);
+
+            assertTrue(classUnderTest.size() <= 22, "Cache grew to " + classUnderTest.size());
+        }
+
+        assertNull(classUnderTest.get(font, 0.1, 'a'), "Oldest unused glyph not evicted");
+        assertNotNull(classUnderTest.get(font, 0.1, 'z'), "Newest glyph evicted");
+    }
+}
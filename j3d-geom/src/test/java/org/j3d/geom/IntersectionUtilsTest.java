@@ -290,6 +290,106 @@ public class IntersectionUtilsTest
         }
     }
 
+    @Test(groups = "unit", dataProvider = "triangle array intersection")
+    public void testRayTriangleBatchSingle(float[] rayOrigin,
+                                           float[] rayDirection,
+                                           float rayLength,
+                                           float[] polyCoordinates,
+                                           float[] expectedIntersection) throws Exception {
+
+        float[] distances = new float[1];
+        int[] triangles = new int[1];
+
+        int hits = IntersectionUtils.rayTriangleBatch(rayOrigin,
+                                                      rayDirection,
+                                                      1,
+                                                      rayLength,
+                                                      polyCoordinates,
+                                                      null,
+                                                      polyCoordinates.length / 9,
+                                                      distances,
+                                                      triangles,
+                                                      false,
+                                                      null);
+
+        if(expectedIntersection != null)
+        {
+            assertEquals(hits, 1, "Did not find any intersection");
+            assertTrue(triangles[0] != IntersectionUtils.NO_INTERSECTION, "No triangle reported");
+
+            float dx = expectedIntersection[0] - rayOrigin[0];
+            float dy = expectedIntersection[1] - rayOrigin[1];
+            float dz = expectedIntersection[2] - rayOrigin[2];
+            float expected_distance = (float)Math.sqrt(dx * dx + dy * dy + dz * dz);
+
+            assertEquals(distances[0], expected_distance, 0.001f, "Wrong distance to intersection");
+        }
+        else
+        {
+            assertEquals(hits, 0, "Found an unexpected intersection at " + distances[0]);
+            assertEquals(triangles[0], IntersectionUtils.NO_INTERSECTION, "Miss should have no triangle");
+            assertEquals(distances[0], Float.POSITIVE_INFINITY, "Miss should have infinite distance");
+        }
+    }
+
+    @Test(groups = "unit")
+    public void testRayTriangleBatchParallelMatchesSerial() throws Exception
+    {
+        // Two parallel unit quads at z = 0 and z = -1, as indexed triangles
+        float[] coords = {
+            0, 0, 0,   1, 0, 0,   1, 1, 0,   0, 1, 0,
+            0, 0, -1,  1, 0, -1,  1, 1, -1,  0, 1, -1
+        };
+
+        int[] indexes = { 0, 1, 2,  0, 2, 3,  4, 5, 6,  4, 6, 7 };
+
+        int num_rays = 2000;
+        float[] origins = new float[num_rays * 3];
+        float[] directions = new float[num_rays * 3];
+
+        for(int i = 0; i < num_rays; i++)
+        {
+            // Spread the rays over a 2x2 area so that some of them miss
+            origins[i * 3] = (i % 50) / 25.0f - 0.5f;
+            origins[i * 3 + 1] = (i / 50) / 20.0f - 0.5f;
+            origins[i * 3 + 2] = 5;
+            directions[i * 3 + 2] = -2;
+        }
+
+        float[] serial_dist = new float[num_rays];
+        int[] serial_ids = new int[num_rays];
+        float[] parallel_dist = new float[num_rays];
+        int[] parallel_ids = new int[num_rays];
+
+        int serial_hits =
+            IntersectionUtils.rayTriangleBatch(origins, directions, num_rays, 0,
+                                               coords, indexes, 4,
+                                               serial_dist, serial_ids,
+                                               false, null);
+
+        int parallel_hits =
+            IntersectionUtils.rayTriangleBatch(origins, directions, num_rays, 0,
+                                               coords, indexes, 4,
+                                               parallel_dist, parallel_ids,
+                                               false);
+
+        assertTrue(serial_hits > 0, "Should have some hits");
+        assertTrue(serial_hits < num_rays, "Should have some misses");
+        assertEquals(parallel_hits, serial_hits, "Hit count differs");
+
+        for(int i = 0; i < num_rays; i++)
+        {
+            assertEquals(parallel_ids[i], serial_ids[i], "Triangle differs for ray " + i);
+            assertEquals(parallel_dist[i], serial_dist[i], "Distance differs for ray " + i);
+
+            if(serial_ids[i] != IntersectionUtils.NO_INTERSECTION)
+            {
+                assertTrue(serial_ids[i] < 2, "Hit the far quad instead of the near one");
+                assertEquals(serial_dist[i], 5.0f, 0.0001f, "Wrong distance for ray " + i);
+            }
+        }
+    }
+
     @DataProvider(name = "sphere intersection")
     public Object[][] generateSphereIntersectionData() {
         Object[][] retval = new Object[3][5];
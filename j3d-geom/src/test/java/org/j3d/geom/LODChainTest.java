@@ -0,0 +1,147 @@
+/*
+ * j3d.org Copyright (c) 2001-2015
+ *                                 Java Source
+ *
+ *  This source is licensed under the GNU LGPL v2.1
+ *  Please read docs/LGPL.txt for more information
+ *
+ *  This software comes with the standard NO WARRANTY disclaimer for any
+ *  purpose. Use it at your own risk. If there's a problem you get to fix it.
+ */
+
+package org.j3d.geom;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public class LODChainTest
+{
+    @Test(groups = "unit")
+    public void testGenerate() throws Exception
+    {
+        TorusGenerator gen = new TorusGenerator(0.5f, 2, 32, 32);
+        GeometryData data = new GeometryData();
+        data.geometryType = GeometryData.INDEXED_TRIANGLES;
+        gen.generate(data);
+
+        int original = data.indexesCount;
+
+        LODChain classUnderTest = LODChain.generate(data, 4, 0.3f);
+
+        assertEquals(classUnderTest.getNumLevels(), 4, "Level count");
+        assertSame(classUnderTest.getLevel(0), data, "First level not source");
+        assertEquals(data.indexesCount, original, "Source changed");
+        assertEquals(classUnderTest.getError(0), 0f, "First level error");
+
+        for(int i = 1; i < 4; i++)
+        {
+            GeometryData prev = classUnderTest.getLevel(i - 1);
+            GeometryData level = classUnderTest.getLevel(i);
+
+            assertTrue(level.indexesCount < prev.indexesCount,
+                       "Level " + i + " not simpler");
+            assertTrue(classUnderTest.getError(i) > 0, "Level " + i + " error");
+            assertTrue(classUnderTest.getError(i) >= classUnderTest.getError(i - 1),
+                       "Level " + i + " error decreased");
+        }
+    }
+
+    @Test(groups = "unit")
+    public void testSelectByDistance() throws Exception
+    {
+        LODChain classUnderTest = createChain();
+        classUnderTest.setHysteresis(0);
+
+        // 1 unit of error covers 100 pixels at distance 1
+        float scale = 100;
+
+        assertEquals(classUnderTest.selectLevel(1, scale, 1), 0, "Near");
+        assertEquals(classUnderTest.selectLevel(100, scale, 1), 1, "Middle");
+        assertEquals(classUnderTest.selectLevel(1000, scale, 1), 2, "Far");
+        assertEquals(classUnderTest.selectLevel(1e6f, scale, 1), 3, "Very far");
+        assertEquals(classUnderTest.selectLevel(0, scale, 1), 0, "At the eye");
+    }
+
+    @Test(groups = "unit")
+    public void testHysteresis() throws Exception
+    {
+        LODChain classUnderTest = createChain();
+        classUnderTest.setHysteresis(0.2f);
+
+        float scale = 100;
+
+        // Level 1 (error 1) is allowed from distance 100. Moving out just
+        // past that should not switch yet.
+        int level = classUnderTest.selectLevel(90, scale, 1, -1);
+        assertEquals(level, 0, "Start");
+
+        level = classUnderTest.selectLevel(110, scale, 1, level);
+        assertEquals(level, 0, "Switched coarser inside the band");
+
+        level = classUnderTest.selectLevel(130, scale, 1, level);
+        assertEquals(level, 1, "Did not switch coarser past the band");
+
+        // Moving back in switches finer as soon as the error is too big
+        level = classUnderTest.selectLevel(110, scale, 1, level);
+        assertEquals(level, 1, "Switched finer while within the limit");
+
+        level = classUnderTest.selectLevel(95, scale, 1, level);
+        assertEquals(level, 0, "Did not switch finer");
+
+        int[] levels = { -1, 1, 0 };
+        float[] distances = { 110, 110, 110 };
+
+        classUnderTest.selectLevels(distances, 3, scale, 1, levels);
+        assertEquals(levels[0], 1, "Batch with no history");
+        assertEquals(levels[1], 1, "Batch staying coarse");
+        assertEquals(levels[2], 0, "Batch staying fine");
+    }
+
+    @Test(groups = "unit")
+    public void testInvalidLevels() throws Exception
+    {
+        LODChain classUnderTest = new LODChain();
+
+        assertEquals(classUnderTest.selectLevel(1, 1, 1), -1, "Empty chain");
+
+        classUnderTest.addLevel(new GeometryData(), 1);
+
+        try
+        {
+            classUnderTest.addLevel(new GeometryData(), 0.5f);
+            fail("Decreasing error accepted");
+        }
+        catch(IllegalArgumentException iae)
+        {
+            // expected
+        }
+
+        try
+        {
+            classUnderTest.getLevel(1);
+            fail("Missing level returned");
+        }
+        catch(IndexOutOfBoundsException ioobe)
+        {
+            // expected
+        }
+
+        float scale = LODChain.getPixelScale((float)(Math.PI / 2), 600);
+        assertEquals(scale, 300, 1e-3f, "Pixel scale for 90 degrees");
+    }
+
+    /**
+     * A chain of empty levels with errors of 0, 1, 10 and 100.
+     */
+    private static LODChain createChain()
+    {
+        LODChain ret_val = new LODChain();
+        ret_val.addLevel(new GeometryData(), 0);
+        ret_val.addLevel(new GeometryData(), 1);
+        ret_val.addLevel(new GeometryData(), 10);
+        ret_val.addLevel(new GeometryData(), 100);
+
+        return ret_val;
+    }
+}
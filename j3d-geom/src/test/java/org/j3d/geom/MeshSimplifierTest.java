@@ -0,0 +1,316 @@
+/*
+ * j3d.org Copyright (c) 2001-2015
+ *                                 Java Source
+ *
+ *  This source is licensed under the GNU LGPL v2.1
+ *  Please read docs/LGPL.txt for more information
+ *
+ *  This software comes with the standard NO WARRANTY disclaimer for any
+ *  purpose. Use it at your own risk. If there's a problem you get to fix it.
+ */
+
+package org.j3d.geom;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public class MeshSimplifierTest
+{
+    @Test(groups = "unit")
+    public void testFlatGridToTarget() throws Exception
+    {
+        int size = 20;
+        GeometryData data = createGrid(size);
+        Set<String> corners = cornerPoints(size);
+
+        MeshSimplifier classUnderTest = new MeshSimplifier();
+        int tris = classUnderTest.simplify(data, 100);
+
+        assertTrue(tris <= 100, "Did not reach target: " + tris);
+        assertEquals(data.indexesCount, tris * 3, "Index count");
+        assertEquals(data.geometryType, GeometryData.INDEXED_TRIANGLES, "Type");
+
+        // Flat, with the outline kept and nothing folded over, so the area
+        // must be unchanged
+        double area = 0;
+
+        for(int t = 0; t < tris; t++)
+        {
+            int a = data.indexes[t * 3] * 3;
+            int b = data.indexes[t * 3 + 1] * 3;
+            int c = data.indexes[t * 3 + 2] * 3;
+            float[] p = data.coordinates;
+
+            // Signed area in the XZ plane. Grid faces are wound to face +Y.
+            area += ((p[c] - p[a]) * (p[b + 2] - p[a + 2]) -
+                     (p[b] - p[a]) * (p[c + 2] - p[a + 2])) * 0.5;
+        }
+
+        assertEquals(area, size * size, 1e-3, "Area changed");
+
+        Set<String> remaining = new HashSet<>();
+
+        for(int i = 0; i < data.vertexCount; i++)
+        {
+            float x = data.coordinates[i * 3];
+            float z = data.coordinates[i * 3 + 2];
+
+            assertEquals(data.coordinates[i * 3 + 1], 0, 1e-6f, "Off the plane");
+            assertTrue(x > -1e-4f && x < size + 1e-4f &&
+                       z > -1e-4f && z < size + 1e-4f, "Outside the outline");
+            remaining.add(key(data.coordinates, i));
+        }
+
+        assertTrue(remaining.containsAll(corners), "Corner vertex removed");
+    }
+
+    @Test(groups = "unit")
+    public void testErrorLimit() throws Exception
+    {
+        SphereGenerator gen = new SphereGenerator(1, 32);
+        GeometryData data = new GeometryData();
+        data.geometryType = GeometryData.INDEXED_TRIANGLES;
+        gen.generate(data);
+
+        int original = data.indexesCount / 3;
+
+        MeshSimplifier classUnderTest = new MeshSimplifier();
+
+        GeometryData strict = (GeometryData)data.clone();
+        int strict_tris = classUnderTest.simplify(strict, 0, 1e-6f);
+
+        GeometryData loose = (GeometryData)data.clone();
+        int loose_tris = classUnderTest.simplify(loose, 0, 0.02f);
+
+        assertTrue(strict_tris > original * 0.9, "Strict error removed too much");
+        assertTrue(loose_tris < strict_tris, "Loose error did not simplify");
+
+        for(int i = 0; i < loose.vertexCount; i++)
+        {
+            float x = loose.coordinates[i * 3];
+            float y = loose.coordinates[i * 3 + 1];
+            float z = loose.coordinates[i * 3 + 2];
+            double r = Math.sqrt(x * x + y * y + z * z);
+
+            assertEquals(r, 1, 0.05, "Vertex " + i + " off the sphere");
+        }
+    }
+
+    @Test(groups = "unit")
+    public void testTextureSeamToTarget() throws Exception
+    {
+        int size = 12;
+        GeometryData data = createGrid(size);
+
+        // Split the texture down the middle so the grid has a seam at x = 6
+        int half = size / 2;
+        int row = size + 1;
+        int num_seam = 0;
+
+        float[] coords = new float[(data.vertexCount + row) * 3];
+        float[] tex = new float[(data.vertexCount + row) * 2];
+        System.arraycopy(data.coordinates, 0, coords, 0, data.vertexCount * 3);
+        System.arraycopy(data.textureCoordinates, 0, tex, 0, data.vertexCount * 2);
+
+        for(int j = 0; j <= size; j++)
+        {
+            int src = j * row + half;
+            int dst = data.vertexCount + j;
+
+            System.arraycopy(coords, src * 3, coords, dst * 3, 3);
+            tex[dst * 2] = 0;
+            tex[dst * 2 + 1] = tex[src * 2 + 1];
+            num_seam++;
+        }
+
+        int[] orig = data.indexes.clone();
+
+        for(int i = 0; i < data.indexesCount; i++)
+        {
+            int v = orig[i];
+            int col = v % row;
+
+            // Faces right of the seam use the copied vertices
+            boolean right = false;
+
+            for(int k = (i / 3) * 3; k < (i / 3) * 3 + 3; k++)
+                right |= (orig[k] % row) > half;
+
+            if(right && col == half)
+                data.indexes[i] = data.vertexCount + v / row;
+        }
+
+        data.vertexCount += num_seam;
+        data.coordinates = coords;
+        data.textureCoordinates = tex;
+
+        // Locking the seam and outline would keep 74 vertices, which is
+        // far more than 24 triangles can use
+        MeshSimplifier classUnderTest = new MeshSimplifier();
+        int tris = classUnderTest.simplify(data, 24);
+
+        assertTrue(tris <= 24, "Did not reach target: " + tris);
+
+        // The seam stays on its line, so no face crosses it, and the two
+        // halves keep their area
+        double[] area = new double[2];
+        float[] p = data.coordinates;
+
+        for(int t = 0; t < tris; t++)
+        {
+            int a = data.indexes[t * 3] * 3;
+            int b = data.indexes[t * 3 + 1] * 3;
+            int c = data.indexes[t * 3 + 2] * 3;
+
+            float min_x = Math.min(p[a], Math.min(p[b], p[c]));
+            float max_x = Math.max(p[a], Math.max(p[b], p[c]));
+
+            assertTrue(max_x <= half + 1e-4f || min_x >= half - 1e-4f,
+                       "Face crosses the seam");
+
+            int side = (max_x <= half + 1e-4f) ? 0 : 1;
+
+            area[side] += ((p[c] - p[a]) * (p[b + 2] - p[a + 2]) -
+                           (p[b] - p[a]) * (p[c + 2] - p[a + 2])) * 0.5;
+        }
+
+        assertEquals(area[0], half * size, 1e-3, "Left area changed");
+        assertEquals(area[1], half * size, 1e-3, "Right area changed");
+    }
+
+    @Test(groups = "unit")
+    public void testUnindexedTriangles() throws Exception
+    {
+        int size = 8;
+        GeometryData indexed = createGrid(size);
+        GeometryData data = new GeometryData();
+        data.geometryType = GeometryData.TRIANGLES;
+        data.vertexCount = indexed.indexesCount;
+        data.coordinates = new float[data.vertexCount * 3];
+
+        for(int i = 0; i < data.vertexCount; i++)
+            System.arraycopy(indexed.coordinates,
+                             indexed.indexes[i] * 3,
+                             data.coordinates,
+                             i * 3,
+                             3);
+
+        MeshSimplifier classUnderTest = new MeshSimplifier();
+        int tris = classUnderTest.simplify(data, 40);
+
+        assertTrue(tris <= 40, "Welded triangles not simplified: " + tris);
+        assertEquals(data.geometryType, GeometryData.INDEXED_TRIANGLES, "Type");
+        assertTrue(data.vertexCount < size * size, "Vertices not welded");
+    }
+
+    @Test(groups = "unit")
+    public void testInvalidInput() throws Exception
+    {
+        MeshSimplifier classUnderTest = new MeshSimplifier();
+        GeometryData data = createGrid(2);
+
+        try
+        {
+            classUnderTest.simplify(data, -1);
+            fail("Negative target accepted");
+        }
+        catch(IllegalArgumentException iae)
+        {
+            // expected
+        }
+
+        data.geometryType = GeometryData.QUADS;
+
+        try
+        {
+            classUnderTest.simplify(data, 1);
+            fail("Quads accepted");
+        }
+        catch(UnsupportedTypeException ute)
+        {
+            // expected
+        }
+    }
+
+    /**
+     * A flat grid of size x size squares on the XZ plane with texture
+     * coordinates, as indexed triangles facing +Y.
+     */
+    private static GeometryData createGrid(int size)
+    {
+        int row = size + 1;
+        GeometryData ret_val = new GeometryData();
+        ret_val.geometryType = GeometryData.INDEXED_TRIANGLES;
+        ret_val.geometryComponents = GeometryData.TEXTURE_2D_DATA;
+        ret_val.vertexCount = row * row;
+        ret_val.coordinates = new float[row * row * 3];
+        ret_val.textureCoordinates = new float[row * row * 2];
+
+        for(int j = 0; j < row; j++)
+        {
+            for(int i = 0; i < row; i++)
+            {
+                int v = j * row + i;
+                ret_val.coordinates[v * 3] = i;
+                ret_val.coordinates[v * 3 + 2] = j;
+                ret_val.textureCoordinates[v * 2] = i / (float)size;
+                ret_val.textureCoordinates[v * 2 + 1] = j / (float)size;
+            }
+        }
+
+        ret_val.indexesCount = size * size * 6;
+        ret_val.indexes = new int[ret_val.indexesCount];
+        int idx = 0;
+
+        for(int j = 0; j < size; j++)
+        {
+            for(int i = 0; i < size; i++)
+            {
+                int v = j * row + i;
+
+                ret_val.indexes[idx++] = v;
+                ret_val.indexes[idx++] = v + row;
+                ret_val.indexes[idx++] = v + 1;
+
+                ret_val.indexes[idx++] = v + 1;
+                ret_val.indexes[idx++] = v + row;
+                ret_val.indexes[idx++] = v + row + 1;
+            }
+        }
+
+        return ret_val;
+    }
+
+    /**
+     * The positions of the four corners of a grid.
+     */
+    private static Set<String> cornerPoints(int size)
+    {
+        Set<String> ret_val = new HashSet<>();
+        float[] coords = new float[3];
+
+        for(int i = 0; i < 4; i++)
+        {
+            coords[0] = (i & 1) * size;
+            coords[2] = (i >> 1) * size;
+            ret_val.add(key(coords, 0));
+        }
+
+        return ret_val;
+    }
+
+    /**
+     * Make a comparable key from a vertex position.
+     */
+    private static String key(float[] coords, int v)
+    {
+        // +0.0f so that -0 and 0 give the same key
+        return (coords[v * 3] + 0.0f) + "," +
+               (coords[v * 3 + 1] + 0.0f) + "," +
+               (coords[v * 3 + 2] + 0.0f);
+    }
+}
@@ -18,6 +18,21 @@ import static org.testng.Assert.*;
 
 public class NormalUtilsTest
 {
+    /** Unit cube centred on the origin */
+    private static final float[] CUBE_COORDS = {
+        -1, -1, -1,   1, -1, -1,   1, 1, -1,   -1, 1, -1,
+        -1, -1,  1,   1, -1,  1,   1, 1,  1,   -1, 1,  1
+    };
+
+    /** Outward facing triangles of the cube */
+    private static final int[] CUBE_INDEXES = {
+        4, 5, 6,  4, 6, 7,   // +z
+        1, 0, 3,  1, 3, 2,   // -z
+        5, 1, 2,  5, 2, 6,   // +x
+        0, 4, 7,  0, 7, 3,   // -x
+        7, 6, 2,  7, 2, 3,   // +y
+        0, 1, 5,  0, 5, 4    // -y
+    };
 
     @Test(groups = "unit")
     public void testGetSharedInstance() throws Exception
@@ -282,6 +297,268 @@ public class NormalUtilsTest
         return retval;
     }
 
+    @Test(groups = "unit")
+    public void testSmoothNormalsFlatQuad() throws Exception
+    {
+        float[] coords = { 0, 0, 0,  1, 0, 0,  1, 1, 0,  0, 1, 0 };
+        int[] indexes = { 0, 1, 2,  0, 2, 3 };
+        int[] normal_index = new int[6];
+
+        NormalUtils classUnderTest = new NormalUtils();
+        float[] normals = classUnderTest.createSmoothNormals(coords,
+                                                             indexes,
+                                                             2,
+                                                             0,
+                                                             false,
+                                                             normal_index,
+                                                             null);
+
+        assertEquals(normals.length, 12, "Coplanar faces should not split any vertex");
+
+        for(int i = 0; i < 6; i++)
+        {
+            int n = normal_index[i] * 3;
+            assertEquals(normals[n], 0, 0.0001f, "Wrong x for corner " + i);
+            assertEquals(normals[n + 1], 0, 0.0001f, "Wrong y for corner " + i);
+            assertEquals(normals[n + 2], 1, 0.0001f, "Wrong z for corner " + i);
+        }
+
+        assertEquals(normal_index[0], normal_index[3], "Shared vertex 0 has different normals");
+        assertEquals(normal_index[2], normal_index[4], "Shared vertex 2 has different normals");
+    }
+
+    @Test(groups = "unit")
+    public void testSmoothNormalsCubeCrease() throws Exception
+    {
+        int[] normal_index = new int[36];
+
+        NormalUtils classUnderTest = new NormalUtils();
+        float[] normals = classUnderTest.createSmoothNormals(CUBE_COORDS,
+                                                             CUBE_INDEXES,
+                                                             12,
+                                                             0.5f,
+                                                             true,
+                                                             normal_index,
+                                                             null);
+
+        assertEquals(normals.length, 24 * 3, "Each cube corner should split three ways");
+
+        // Every normal should be axis aligned
+        for(int i = 0; i < 24; i++)
+        {
+            float sum = Math.abs(normals[i * 3]) +
+                        Math.abs(normals[i * 3 + 1]) +
+                        Math.abs(normals[i * 3 + 2]);
+
+            assertEquals(sum, 1, 0.0001f, "Normal " + i + " is not axis aligned");
+        }
+    }
+
+    @Test(groups = "unit")
+    public void testSmoothNormalsCubeSmooth() throws Exception
+    {
+        int[] normal_index = new int[36];
+
+        NormalUtils classUnderTest = new NormalUtils();
+        float[] normals = classUnderTest.createSmoothNormals(CUBE_COORDS,
+                                                             CUBE_INDEXES,
+                                                             12,
+                                                             (float)Math.PI,
+                                                             true,
+                                                             normal_index,
+                                                             null);
+
+        assertEquals(normals.length, 8 * 3, "No cube corner should be split");
+
+        // Angle weighting makes every corner point straight out along the
+        // diagonal, regardless of how the faces were triangulated.
+        for(int i = 0; i < 36; i++)
+        {
+            int v = CUBE_INDEXES[i] * 3;
+            int n = normal_index[i] * 3;
+
+            for(int j = 0; j < 3; j++)
+            {
+                float expected = (CUBE_COORDS[v + j] > 0 ? 1 : -1) * 0.57735f;
+                assertEquals(normals[n + j], expected, 0.0001f, "Wrong normal for corner " + i);
+            }
+        }
+    }
+
+    @Test(groups = "unit")
+    public void testSmoothNormalsHighValenceFan() throws Exception
+    {
+        // A shallow cone with thousands of triangles meeting at the apex.
+        // Neighbouring faces are well within the crease angle, so the whole
+        // fan is one smoothing group even though opposite sides are not.
+        int num_tris = 4096;
+        float[] coords = new float[(num_tris + 1) * 3];
+        int[] indexes = new int[num_tris * 3];
+        int[] normal_index = new int[num_tris * 3];
+
+        coords[2] = 1;
+
+        for(int i = 0; i < num_tris; i++)
+        {
+            double angle = 2 * Math.PI * i / num_tris;
+            coords[(i + 1) * 3] = (float)Math.cos(angle);
+            coords[(i + 1) * 3 + 1] = (float)Math.sin(angle);
+
+            indexes[i * 3] = 0;
+            indexes[i * 3 + 1] = i + 1;
+            indexes[i * 3 + 2] = (i + 1) % num_tris + 1;
+        }
+
+        NormalUtils classUnderTest = new NormalUtils();
+        float[] normals = classUnderTest.createSmoothNormals(coords,
+                                                             indexes,
+                                                             num_tris,
+                                                             0.5f,
+                                                             true,
+                                                             normal_index,
+                                                             null);
+
+        assertEquals(normals.length, (num_tris + 1) * 3, "Apex or rim was split");
+
+        int apex = normal_index[0];
+
+        for(int i = 0; i < num_tris; i++)
+            assertEquals(normal_index[i * 3], apex, "Apex corner " + i + " not shared");
+
+        assertEquals(normals[apex * 3], 0, 0.0001f, "Wrong apex normal x");
+        assertEquals(normals[apex * 3 + 1], 0, 0.0001f, "Wrong apex normal y");
+        assertEquals(normals[apex * 3 + 2], 1, 0.0001f, "Wrong apex normal z");
+
+        // Faceted shading splits the apex once per face
+        normals = classUnderTest.createSmoothNormals(coords,
+                                                     indexes,
+                                                     num_tris,
+                                                     0,
+                                                     true,
+                                                     normal_index,
+                                                     null);
+
+        assertEquals(normals.length, (num_tris * 3) * 3, "Faceted fan not split");
+    }
+
+    @Test(groups = "unit")
+    public void testSmoothNormalsGeometrySplit() throws Exception
+    {
+        GeometryData data = new GeometryData();
+        data.geometryType = GeometryData.INDEXED_TRIANGLES;
+        data.coordinates = CUBE_COORDS.clone();
+        data.vertexCount = 8;
+        data.indexes = CUBE_INDEXES.clone();
+        data.indexesCount = 36;
+
+        // A reused buffer that is bigger than needed still holds RGB values
+        data.colors = new float[64];
+
+        for(int i = 0; i < 24; i++)
+            data.colors[i] = i * 0.01f;
+
+        NormalUtils classUnderTest = new NormalUtils();
+        classUnderTest.createSmoothNormals(data, 0.5f, false, null);
+
+        assertEquals(data.vertexCount, 24, "Vertices not split along the creases");
+        assertEquals(data.colors.length, 24 * 3, "Colours not expanded");
+
+        for(int v = 0; v < 24; v++)
+        {
+            int src = -1;
+
+            for(int i = 0; i < 8 && src == -1; i++)
+            {
+                if(data.coordinates[v * 3] == CUBE_COORDS[i * 3] &&
+                   data.coordinates[v * 3 + 1] == CUBE_COORDS[i * 3 + 1] &&
+                   data.coordinates[v * 3 + 2] == CUBE_COORDS[i * 3 + 2])
+                    src = i;
+            }
+
+            for(int j = 0; j < 3; j++)
+                assertEquals(data.colors[v * 3 + j], (src * 3 + j) * 0.01f, "Colour of vertex " + v);
+        }
+        assertEquals(data.coordinates.length, 24 * 3, "Coordinates not expanded");
+        assertEquals(data.normals.length, 24 * 3, "Wrong number of normals");
+        assertTrue((data.geometryComponents & GeometryData.NORMAL_DATA) != 0, "Normal flag not set");
+
+        // Every triangle should now have the same normal at all three corners
+        // and that normal should point away from the cube centre.
+        for(int t = 0; t < 12; t++)
+        {
+            int n0 = data.indexes[t * 3] * 3;
+            int n1 = data.indexes[t * 3 + 1] * 3;
+            int n2 = data.indexes[t * 3 + 2] * 3;
+
+            float dot = 0;
+
+            for(int j = 0; j < 3; j++)
+            {
+                assertEquals(data.normals[n0 + j], data.normals[n1 + j], "Face " + t + " not flat");
+                assertEquals(data.normals[n0 + j], data.normals[n2 + j], "Face " + t + " not flat");
+                dot += data.normals[n0 + j] * data.coordinates[n0 + j];
+            }
+
+            assertTrue(dot > 0, "Face " + t + " normal points inwards");
+        }
+    }
+
+    @Test(groups = "unit")
+    public void testSmoothNormalsParallelMatchesSerial() throws Exception
+    {
+        // A bumpy height field large enough to be split into several tasks
+        int size = 100;
+        float[] coords = new float[size * size * 3];
+        int[] indexes = new int[(size - 1) * (size - 1) * 6];
+
+        for(int i = 0; i < size; i++)
+        {
+            for(int j = 0; j < size; j++)
+            {
+                int p = (i * size + j) * 3;
+                coords[p] = j;
+                coords[p + 1] = (float)Math.sin(i * 0.3) * (float)Math.cos(j * 0.7);
+                coords[p + 2] = i;
+            }
+        }
+
+        int idx = 0;
+
+        for(int i = 0; i < size - 1; i++)
+        {
+            for(int j = 0; j < size - 1; j++)
+            {
+                int v = i * size + j;
+                indexes[idx++] = v;
+                indexes[idx++] = v + size;
+                indexes[idx++] = v + 1;
+                indexes[idx++] = v + 1;
+                indexes[idx++] = v + size;
+                indexes[idx++] = v + size + 1;
+            }
+        }
+
+        int num_tris = indexes.length / 3;
+        int[] serial_index = new int[indexes.length];
+        int[] parallel_index = new int[indexes.length];
+
+        NormalUtils classUnderTest = new NormalUtils();
+        float[] serial = classUnderTest.createSmoothNormals(coords, indexes, num_tris,
+                                                            0.4f, false,
+                                                            serial_index, null);
+        float[] parallel = classUnderTest.createSmoothNormals(coords, indexes, num_tris,
+                                                              0.4f, false,
+                                                              parallel_index);
+
+        assertEquals(parallel.length, serial.length, "Different normal counts");
+
+        for(int i = 0; i < serial.length; i++)
+            assertEquals(parallel[i], serial[i], "Normal value " + i + " differs");
+
+        for(int i = 0; i < serial_index.length; i++)
+            assertEquals(parallel_index[i], serial_index[i], "Normal index " + i + " differs");
+    }
+
     @DataProvider(name = "radial normal")
     public Object[][] generateRadialNormalData() {
         Object[][] retval =  new Object[3][2];
@@ -116,4 +116,155 @@ public class TriangulationUtilsTest
                      0,
                      "In a bowtie quad, there should be no output");
     }
+
+    @Test(groups = "unit")
+    public void testZOrderLargeConcavePolygon() throws Exception
+    {
+        // A star shaped outline with many concave vertices
+        int num_vertex = 20000;
+        float[] testPolygon = createStar(num_vertex, 10, 6);
+        float[] testPolygonNormal = { 0, 0, 1 };
+
+        int[] resultCoordIndex = new int[(num_vertex - 2) * 3];
+
+        TriangulationUtils classUnderTest = new TriangulationUtils();
+        classUnderTest.setZOrderThreshold(64);
+
+        int num_tris = classUnderTest.triangulateConcavePolygon(testPolygon,
+                                                                0,
+                                                                num_vertex,
+                                                                resultCoordIndex,
+                                                                testPolygonNormal);
+
+        assertEquals(num_tris, num_vertex - 2, "Wrong number of triangles for a simple polygon");
+
+        float tri_area = triangleArea(testPolygon, resultCoordIndex, num_tris);
+        float poly_area = polygonArea(testPolygon, 0, num_vertex);
+
+        assertEquals(tri_area, poly_area, poly_area * 0.0001f, "Triangles do not cover the polygon");
+    }
+
+    @Test(groups = "unit")
+    public void testZOrderMatchesPlainOutputFormat() throws Exception
+    {
+        float[] testPolygon = createStar(100, 10, 6);
+        float[] testPolygonNormal = { 0, 0, 1 };
+
+        int[] resultCoordIndex = new int[98 * 3];
+
+        TriangulationUtils classUnderTest = new TriangulationUtils();
+        classUnderTest.setZOrderThreshold(50);
+
+        int num_tris = classUnderTest.triangulateConcavePolygon(testPolygon,
+                                                                0,
+                                                                100,
+                                                                resultCoordIndex,
+                                                                testPolygonNormal);
+
+        assertEquals(num_tris, 98, "Wrong number of triangles");
+
+        for(int i = 0; i < num_tris * 3; i++)
+        {
+            assertEquals(resultCoordIndex[i] % 3, 0, "Output not an array offset at " + i);
+
+            int vertexIndex = resultCoordIndex[i] / 3;
+            assertTrue(vertexIndex < 100 && vertexIndex >= 0,
+                       "Result coordinate[" + i + "] is " + vertexIndex + " and not within [0,99]");
+        }
+
+        // Output winding should follow the input, which is counter-clockwise
+        for(int i = 0; i < num_tris; i++)
+        {
+            float area = triangleArea(testPolygon,
+                                      new int[] { resultCoordIndex[i * 3],
+                                                  resultCoordIndex[i * 3 + 1],
+                                                  resultCoordIndex[i * 3 + 2] },
+                                      1);
+            assertTrue(area >= 0, "Triangle " + i + " has reversed winding");
+        }
+    }
+
+    @Test(groups = "unit")
+    public void testZOrderPolygonWithHole() throws Exception
+    {
+        // 4x4 square with a 2x2 square hole in the middle. Hole given in
+        // the same winding as the outside to check it gets flipped.
+        float[] testPolygon = {
+            0, 0, 0,  4, 0, 0,  4, 4, 0,  0, 4, 0,
+            1, 1, 0,  3, 1, 0,  3, 3, 0,  1, 3, 0
+        };
+        float[] testPolygonNormal = { 0, 0, 1 };
+        int[] contours = { 4, 4 };
+
+        int[] resultCoordIndex = new int[8 * 3];
+
+        TriangulationUtils classUnderTest = new TriangulationUtils();
+        int num_tris = classUnderTest.triangulateConcavePolygonWithHoles(testPolygon,
+                                                                         0,
+                                                                         2,
+                                                                         contours,
+                                                                         resultCoordIndex,
+                                                                         testPolygonNormal);
+
+        assertEquals(num_tris, 8, "Wrong number of triangles for square with hole");
+        assertEquals(triangleArea(testPolygon, resultCoordIndex, num_tris), 12, 0.0001f,
+                     "Triangles should cover the polygon less the hole");
+    }
+
+    /**
+     * Create a star outline in the XY plane, counter-clockwise.
+     */
+    private float[] createStar(int numVertex, float outer, float inner)
+    {
+        float[] ret_val = new float[numVertex * 3];
+
+        for(int i = 0; i < numVertex; i++)
+        {
+            double angle = 2 * Math.PI * i / numVertex;
+            float radius = (i % 2 == 0) ? outer : inner;
+
+            ret_val[i * 3] = (float)(radius * Math.cos(angle));
+            ret_val[i * 3 + 1] = (float)(radius * Math.sin(angle));
+        }
+
+        return ret_val;
+    }
+
+    /**
+     * Signed sum of the triangle areas in the XY plane.
+     */
+    private float triangleArea(float[] coords, int[] tris, int numTris)
+    {
+        double area = 0;
+
+        for(int i = 0; i < numTris; i++)
+        {
+            int a = tris[i * 3];
+            int b = tris[i * 3 + 1];
+            int c = tris[i * 3 + 2];
+
+            area += ((coords[b] - coords[a]) * (coords[c + 1] - coords[a + 1]) -
+                     (coords[c] - coords[a]) * (coords[b + 1] - coords[a + 1])) * 0.5;
+        }
+
+        return (float)area;
+    }
+
+    /**
+     * Signed area of a polygon in the XY plane.
+     */
+    private float polygonArea(float[] coords, int start, int numVertex)
+    {
+        double area = 0;
+
+        for(int i = 0, j = numVertex - 1; i < numVertex; j = i++)
+        {
+            int pi = start + i * 3;
+            int pj = start + j * 3;
+
+            area += coords[pj] * coords[pi + 1] - coords[pi] * coords[pj + 1];
+        }
+
+        return (float)(area * 0.5);
+    }
 }
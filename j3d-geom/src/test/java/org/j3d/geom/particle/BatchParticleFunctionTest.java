@@ -0,0 +1,152 @@
+/*
+ * j3d.org Copyright (c) 2001-2015
+ *                                 Java Source
+ *
+ *  This source is licensed under the GNU LGPL v2.1
+ *  Please read docs/LGPL.txt for more information
+ *
+ *  This software comes with the standard NO WARRANTY disclaimer for any
+ *  purpose. Use it at your own risk. If there's a problem you get to fix it.
+ */
+
+package org.j3d.geom.particle;
+
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public class BatchParticleFunctionTest
+{
+    /** Number of particles to test with */
+    private static final int NUM_PARTICLES = 40;
+
+    @Test(groups = "unit")
+    public void testMovementMatchesObjects() throws Exception
+    {
+        float[] dir = { 1, 0, 0 };
+        WindParticleFunction wind = new WindParticleFunction(dir, 10, 0.5f, 0);
+        PhysicsFunction physics = new PhysicsFunction();
+        BoundingBoxParticleFunction box =
+            new BoundingBoxParticleFunction(new float[] { 2, 2, 2 },
+                                            new float[] { -2, -1, -2 });
+
+        wind.newFrame(20);
+        physics.newFrame(20);
+
+        BatchParticleFunction[] functions =
+        {
+            new GravityParticleFunction(), wind, physics, box
+        };
+
+        checkFunctions(functions);
+    }
+
+    @Test(groups = "unit")
+    public void testColorAndLifeMatchObjects() throws Exception
+    {
+        float[] times = { 0, 0.5f, 1 };
+        float[] ramp = { 1, 0, 0, 1,  1, 1, 0, 0.5f,  0, 0, 1, 0 };
+
+        ColorRampFunction colors = new ColorRampFunction(times, ramp, true);
+        MaxTimeParticleFunction life = new MaxTimeParticleFunction();
+
+        BatchParticleFunction[] functions = { colors, life };
+
+        checkFunctions(functions);
+    }
+
+    @Test(groups = "unit")
+    public void testFrameCount() throws Exception
+    {
+        FrameCountParticleFunction classUnderTest = new FrameCountParticleFunction(1);
+        ParticleBlock block = createBlock(System.currentTimeMillis());
+
+        classUnderTest.applyBatch(block, 0, NUM_PARTICLES);
+        assertEquals(block.removeDead(), 0, "Killed too early");
+
+        classUnderTest.newFrame(10);
+        classUnderTest.applyBatch(block, 5, 10);
+        assertEquals(block.removeDead(), 5, "Range not killed");
+    }
+
+    /**
+     * Run the functions over a block, and through apply() over particles
+     * read from an identical block, and make sure they end up the same.
+     */
+    private static void checkFunctions(BatchParticleFunction[] functions)
+    {
+        long now = System.currentTimeMillis();
+        ParticleBlock batch = createBlock(now);
+        ParticleBlock single = createBlock(now);
+        TestParticle p = new TestParticle();
+        boolean[] alive = new boolean[NUM_PARTICLES];
+
+        for(int i = 0; i < NUM_PARTICLES; i++)
+        {
+            single.readParticle(i, p);
+            alive[i] = true;
+
+            for(int j = 0; j < functions.length && alive[i]; j++)
+                alive[i] = functions[j].apply(p);
+
+            single.writeParticle(i, p);
+        }
+
+        for(int j = 0; j < functions.length; j++)
+            functions[j].applyBatch(batch, 0, NUM_PARTICLES);
+
+        for(int i = 0; i < NUM_PARTICLES; i++)
+        {
+            assertEquals(batch.isDead(i), !alive[i], "Life of " + i);
+
+            if(!alive[i])
+                continue;
+
+            for(int k = 0; k < 3; k++)
+            {
+                int n = i * 3 + k;
+                assertEquals(batch.forces[n], single.forces[n], 1e-9, "Force " + n);
+                assertEquals(batch.velocities[n], single.velocities[n], 1e-9, "Velocity " + n);
+                assertEquals(batch.positions[n], single.positions[n], 1e-6, "Position " + n);
+            }
+
+            for(int k = 0; k < 4; k++)
+            {
+                int n = i * 4 + k;
+                assertEquals(batch.colors[n], single.colors[n], 1e-6f, "Colour " + n);
+            }
+        }
+    }
+
+    /**
+     * Fill a block with a repeatable spread of particles. Birth times go
+     * back from now so that the age based functions see a range of ages,
+     * with several particles sharing each birth time.
+     */
+    private static ParticleBlock createBlock(long now)
+    {
+        Random rand = new Random(5);
+        ParticleBlock ret_val = new ParticleBlock();
+
+        for(int i = 0; i < NUM_PARTICLES; i++)
+        {
+            int idx = ret_val.add();
+
+            for(int k = 0; k < 3; k++)
+            {
+                ret_val.positions[idx * 3 + k] = rand.nextDouble() * 6 - 3;
+                ret_val.velocities[idx * 3 + k] = rand.nextDouble() - 0.5;
+            }
+
+            ret_val.masses[idx] = (i % 5 == 0) ? 0 : 1 + rand.nextFloat();
+            ret_val.surfaceAreas[idx] = rand.nextFloat();
+            ret_val.birthTimes[idx] = now - (i / 4) * 200;
+            ret_val.lifetimes[idx] = 1000;
+            ret_val.deathTimes[idx] = ret_val.birthTimes[idx] + 1000;
+        }
+
+        return ret_val;
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * j3d.org Copyright (c) 2001-2015
+ *                                 Java Source
+ *
+ *  This source is licensed under the GNU LGPL v2.1
+ *  Please read docs/LGPL.txt for more information
+ *
+ *  This software comes with the standard NO WARRANTY disclaimer for any
+ *  purpose. Use it at your own risk. If there's a problem you get to fix it.
+ */
+
+package org.j3d.geom.particle;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public class ParticleBlockTest
+{
+    @Test(groups = "unit")
+    public void testSwapRemove() throws Exception
+    {
+        ParticleBlock classUnderTest = new ParticleBlock(2);
+
+        for(int i = 0; i < 5; i++)
+        {
+            int idx = classUnderTest.add();
+            assertEquals(idx, i, "Slot of new particle");
+
+            classUnderTest.positions[idx * 3] = i;
+            classUnderTest.masses[idx] = i * 10;
+        }
+
+        assertEquals(classUnderTest.getParticleCount(), 5, "Count after adding");
+        assertTrue(classUnderTest.getCapacity() >= 5, "Did not grow");
+        assertEquals(classUnderTest.sizes[4 * 3 + 1], 0.2f, "Default height");
+
+        classUnderTest.remove(1);
+
+        assertEquals(classUnderTest.getParticleCount(), 4, "Count after remove");
+        assertEquals(classUnderTest.positions[3], 4.0, "Last not swapped in");
+        assertEquals(classUnderTest.masses[1], 40f, "Last mass not swapped in");
+
+        classUnderTest.remove(3);
+
+        assertEquals(classUnderTest.getParticleCount(), 3, "Count after removing last");
+        assertEquals(classUnderTest.positions[0], 0.0, "First moved");
+        assertEquals(classUnderTest.positions[6], 2.0, "Third moved");
+
+        try
+        {
+            classUnderTest.remove(3);
+            fail("Dead slot removed");
+        }
+        catch(IndexOutOfBoundsException ioobe)
+        {
+            // expected
+        }
+
+        classUnderTest.clear();
+        assertEquals(classUnderTest.getParticleCount(), 0, "Count after clear");
+    }
+
+    @Test(groups = "unit")
+    public void testRemoveDead() throws Exception
+    {
+        ParticleBlock classUnderTest = new ParticleBlock(8);
+
+        for(int i = 0; i < 6; i++)
+            classUnderTest.positions[classUnderTest.add() * 3] = i;
+
+        classUnderTest.kill(0);
+        classUnderTest.kill(4);
+        classUnderTest.kill(5);
+        classUnderTest.kill(5);
+
+        assertTrue(classUnderTest.isDead(4), "Not marked dead");
+        assertEquals(classUnderTest.getParticleCount(), 6, "Removed before compacting");
+        assertEquals(classUnderTest.removeDead(), 3, "Number removed");
+        assertEquals(classUnderTest.getParticleCount(), 3, "Count after compacting");
+
+        double[] left = new double[3];
+
+        for(int i = 0; i < 3; i++)
+        {
+            assertFalse(classUnderTest.isDead(i), "Dead particle left at " + i);
+            left[i] = classUnderTest.positions[i * 3];
+        }
+
+        java.util.Arrays.sort(left);
+        assertEquals(left, new double[] { 1, 2, 3 }, "Survivors");
+
+        assertEquals(classUnderTest.removeDead(), 0, "Removed twice");
+        assertFalse(classUnderTest.isDead(classUnderTest.add()), "New particle dead");
+    }
+
+    @Test(groups = "unit")
+    public void testParticleFacade() throws Exception
+    {
+        ParticleBlock classUnderTest = new ParticleBlock();
+        TestParticle src = new TestParticle();
+        TestParticle dest = new TestParticle();
+
+        src.setPosition(1, 2, 3);
+        src.setColor(0.1f, 0.2f, 0.3f, 0.4f);
+        src.setMass(5);
+        src.setSurfaceArea(6);
+        src.setWidth(7);
+        src.velocity.set(8, 9, 10);
+        src.resultantForce.set(11, 12, 13);
+        src.wallClockBirth = 100;
+        src.setCycleTime(50);
+
+        classUnderTest.add();
+        int idx = classUnderTest.add();
+        classUnderTest.writeParticle(idx, src);
+        classUnderTest.readParticle(idx, dest);
+
+        float[] pos = new float[3];
+        dest.getPosition(pos);
+        assertEquals(pos, new float[] { 1, 2, 3 }, "Position");
+
+        float[] colour = new float[4];
+        dest.getColor(colour);
+        assertEquals(colour, new float[] { 0.1f, 0.2f, 0.3f, 0.4f }, "Colour");
+
+        assertEquals(dest.getMass(), 5f, "Mass");
+        assertEquals(dest.getSurfaceArea(), 6f, "Surface area");
+        assertEquals(dest.getWidth(), 7f, "Width");
+        assertEquals(dest.getHeight(), 0.2f, "Height");
+        assertEquals(dest.velocity.y, 9.0, "Velocity");
+        assertEquals(dest.resultantForce.z, 13.0, "Force");
+        assertEquals(dest.getBirthTime(), 100L, "Birth");
+        assertEquals(dest.getCycleTime(), 50, "Cycle time");
+        assertEquals(dest.wallClockLife, 150L, "Death");
+
+        classUnderTest.clearForces(0, 2);
+        assertEquals(classUnderTest.forces[idx * 3 + 2], 0.0, "Force not cleared");
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * j3d.org Copyright (c) 2001-2015
+ *                                 Java Source
+ *
+ *  This source is licensed under the GNU LGPL v2.1
+ *  Please read docs/LGPL.txt for more information
+ *
+ *  This software comes with the standard NO WARRANTY disclaimer for any
+ *  purpose. Use it at your own risk. If there's a problem you get to fix it.
+ */
+
+package org.j3d.geom.particle;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public class ParticleSpatialHashTest
+{
+    @Test(groups = "unit")
+    public void testMatchesBruteForce() throws Exception
+    {
+        Random rand = new Random(9);
+        ParticleBlock block = new ParticleBlock();
+        int count = 3000;
+
+        for(int i = 0; i < count; i++)
+        {
+            int idx = block.add();
+
+            for(int k = 0; k < 3; k++)
+                block.positions[idx * 3 + k] = rand.nextDouble() * 20 - 10;
+        }
+
+        ParticleSpatialHash classUnderTest = new ParticleSpatialHash(0.75);
+        classUnderTest.build(block);
+
+        assertEquals(classUnderTest.getParticleCount(), count, "Count");
+
+        int[] results = new int[count];
+        double[] radii = { 0.3, 0.75, 2.1 };
+
+        for(int q = 0; q < 60; q++)
+        {
+            double x = rand.nextDouble() * 24 - 12;
+            double y = rand.nextDouble() * 24 - 12;
+            double z = rand.nextDouble() * 24 - 12;
+            double radius = radii[q % radii.length];
+
+            int num = classUnderTest.findNeighbours(x, y, z, radius, results);
+            int[] expected = bruteForce(block, x, y, z, radius, -1);
+            int[] actual = Arrays.copyOf(results, num);
+            Arrays.sort(actual);
+
+            assertEquals(actual, expected, "Query " + q);
+        }
+
+        // Around a particle, leaving itself out
+        for(int slot = 0; slot < count; slot += 97)
+        {
+            int i3 = slot * 3;
+            int num = classUnderTest.findNeighbours(slot, 1, results);
+            int[] expected = bruteForce(block,
+                                        block.positions[i3],
+                                        block.positions[i3 + 1],
+                                        block.positions[i3 + 2],
+                                        1,
+                                        slot);
+            int[] actual = Arrays.copyOf(results, num);
+            Arrays.sort(actual);
+
+            assertEquals(actual, expected, "Around slot " + slot);
+        }
+
+        int[] small = new int[2];
+        assertEquals(classUnderTest.findNeighbours(0, 0, 0, 5, small), 2, "Full results");
+    }
+
+    @Test(groups = "unit")
+    public void testSnapshot() throws Exception
+    {
+        ParticleBlock block = new ParticleBlock();
+        ParticleSpatialHash classUnderTest = new ParticleSpatialHash(1);
+        int[] results = new int[4];
+
+        block.add();
+        block.add();
+        block.positions[3] = 0.5;
+
+        classUnderTest.build(block);
+
+        // Moving a particle afterwards does not change the results
+        block.positions[3] = 50;
+
+        assertEquals(classUnderTest.findNeighbours(0, 0.6, results), 1, "Neighbour lost");
+        assertEquals(results[0], 1, "Neighbour slot");
+        assertEquals(classUnderTest.getPositions()[3], 0.5, "Snapshot changed");
+
+        block.clear();
+        classUnderTest.build(block);
+        assertEquals(classUnderTest.findNeighbours(0, 0, 0, 10, results), 0, "Empty hash");
+
+        try
+        {
+            new ParticleSpatialHash(0);
+            fail("Zero cell size accepted");
+        }
+        catch(IllegalArgumentException iae)
+        {
+            // expected
+        }
+    }
+
+    @Test(groups = "unit")
+    public void testSeparation() throws Exception
+    {
+        ParticleBlock block = new ParticleBlock();
+        ParticleSpatialHash hash = new ParticleSpatialHash(1);
+        SeparationParticleFunction classUnderTest =
+            new SeparationParticleFunction(hash, 1, 10);
+
+        // Two close particles and one out of reach
+        block.add();
+        block.add();
+        block.add();
+        block.positions[3] = 0.5;
+        block.positions[6] = 5;
+
+        hash.build(block);
+        classUnderTest.applyBatch(block, 0, 3);
+
+        assertEquals(block.forces[0], -5, 1e-9, "First not pushed away");
+        assertEquals(block.forces[3], 5, 1e-9, "Second not pushed away");
+        assertEquals(block.forces[1], 0, 1e-9, "Pushed off axis");
+        assertEquals(block.forces[6], 0, 1e-9, "Far particle pushed");
+    }
+
+    @Test(groups = "unit")
+    public void testSeparationDefaultHash() throws Exception
+    {
+        SeparationParticleFunction classUnderTest =
+            new SeparationParticleFunction(0.5f, 10);
+        ParticleSpatialHash hash = classUnderTest.getSpatialHash();
+
+        assertEquals(hash.getCellSize(), 1, 1e-9, "Cell size not twice radius");
+
+        ParticleBlock block = new ParticleBlock();
+        block.add();
+        block.add();
+        block.positions[3] = 0.25;
+
+        hash.build(block);
+        classUnderTest.applyBatch(block, 0, 2);
+
+        assertEquals(block.forces[0], -5, 1e-6, "First not pushed away");
+        assertEquals(block.forces[3], 5, 1e-6, "Second not pushed away");
+    }
+
+    /**
+     * Find the slots within the radius by testing every particle.
+     */
+    private static int[] bruteForce(ParticleBlock block,
+                                    double x,
+                                    double y,
+                                    double z,
+                                    double radius,
+                                    int exclude)
+    {
+        int[] ret_val = new int[block.getParticleCount()];
+        int num = 0;
+
+        for(int i = 0; i < block.getParticleCount(); i++)
+        {
+            double dx = block.positions[i * 3] - x;
+            double dy = block.positions[i * 3 + 1] - y;
+            double dz = block.positions[i * 3 + 2] - z;
+
+            if(i != exclude && dx * dx + dy * dy + dz * dz <= radius * radius)
+                ret_val[num++] = i;
+        }
+
+        return Arrays.copyOf(ret_val, num);
+    }
+}
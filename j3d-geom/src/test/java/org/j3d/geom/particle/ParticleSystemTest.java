@@ -0,0 +1,297 @@
+/*
+ * j3d.org Copyright (c) 2001-2015
+ *                                 Java Source
+ *
+ *  This source is licensed under the GNU LGPL v2.1
+ *  Please read docs/LGPL.txt for more information
+ *
+ *  This software comes with the standard NO WARRANTY disclaimer for any
+ *  purpose. Use it at your own risk. If there's a problem you get to fix it.
+ */
+
+package org.j3d.geom.particle;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public class ParticleSystemTest
+{
+    @Test(groups = "unit")
+    public void testBlockMatchesObjects() throws Exception
+    {
+        TestSystem objects = createSystem(false, 50, 3);
+        TestSystem block = createSystem(true, 50, 3);
+
+        assertFalse(objects.isBlockStorage(), "Objects using block");
+        assertTrue(block.isBlockStorage(), "Block not used");
+
+        try
+        {
+            objects.setSpatialHash(new ParticleSpatialHash(1));
+            fail("Spatial hash accepted without block storage");
+        }
+        catch(IllegalStateException ise)
+        {
+            // expected
+        }
+
+        long time = 1000;
+        objects.initialize(time);
+        block.initialize(time);
+
+        for(int frame = 0; frame < 40; frame++)
+        {
+            time += 16;
+            objects.update(time);
+            block.update(time);
+
+            assertEquals(block.particleBlock.getParticleCount(),
+                         objects.particleList.size(),
+                         "Live count at frame " + frame);
+            assertEquals(block.getParticleCount(),
+                         objects.getParticleCount(),
+                         "System count at frame " + frame);
+        }
+
+        assertTrue(objects.getParticleCount() > 0, "Nothing alive");
+        assertTrue(objects.created > objects.getParticleCount(), "Nothing died");
+
+        // Swap removal changes the order, so compare the sorted heights
+        assertEquals(block.heights(), objects.heights(), "Particle heights");
+    }
+
+    @Test(groups = "unit")
+    public void testParallelMatchesSerial() throws Exception
+    {
+        TestSystem serial = createSystem(true, 20000, 1500);
+        TestSystem parallel = createSystem(true, 20000, 1500);
+        ForkJoinPool pool = new ForkJoinPool(4);
+
+        try
+        {
+            long time = 1000;
+            serial.initialize(time);
+            parallel.initialize(time);
+
+            for(int frame = 0; frame < 30; frame++)
+            {
+                time += 16;
+                serial.update(time);
+                parallel.update(time, pool);
+
+                assertEquals(parallel.getParticleCount(),
+                             serial.getParticleCount(),
+                             "Live count at frame " + frame);
+            }
+
+            assertTrue(parallel.getParticleCount() > 4000, "Too few to split");
+            assertTrue(parallel.getLastUpdateTime() > 0, "No update time");
+            assertEquals(parallel.heights(), serial.heights(), "Particle heights");
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    @Test(groups = "unit")
+    public void testManagerInPool() throws Exception
+    {
+        ParticleSystemManager classUnderTest = new ParticleSystemManager();
+        ForkJoinPool pool = new ForkJoinPool(2);
+
+        try
+        {
+            TestSystem[] systems =
+            {
+                createSystem(true, 5000, 2000),
+                createSystem(false, 50, 3),
+                createSystem(true, 50, 3)
+            };
+
+            for(TestSystem system : systems)
+                classUnderTest.addParticleSystem(system);
+
+            classUnderTest.setForkJoinPool(pool);
+            assertSame(classUnderTest.getForkJoinPool(), pool, "Pool not kept");
+
+            classUnderTest.update();
+            Thread.sleep(5);
+            classUnderTest.update();
+
+            for(int i = 0; i < systems.length; i++)
+            {
+                assertTrue(systems[i].getParticleCount() > 0,
+                           "System " + i + " not updated");
+                assertTrue(systems[i].getLastUpdateTime() > 0,
+                           "System " + i + " has no time");
+                assertSame(systems[i].geometryThread, Thread.currentThread(),
+                           "System " + i + " geometry not on caller");
+            }
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Build a system with gravity, physics and a floor that kills particles.
+     */
+    private static TestSystem createSystem(boolean useBlock,
+                                           int maxCount,
+                                           int perFrame)
+    {
+        TestSystem ret_val = new TestSystem(useBlock, maxCount);
+        ret_val.setParticleInitializer(new TestEmitter(perFrame));
+        ret_val.addParticleFunction(new GravityParticleFunction());
+        ret_val.addParticleFunction(new PhysicsFunction());
+        ret_val.addParticleFunction(new FloorFunction());
+
+        return ret_val;
+    }
+
+    /**
+     * System that counts the particles it creates.
+     */
+    private static class TestSystem extends ParticleSystem
+    {
+        int created;
+
+        Thread geometryThread;
+
+        TestSystem(boolean useBlock, int maxCount)
+        {
+            super("test", maxCount, useBlock);
+        }
+
+        int getParticleCount()
+        {
+            return particleCount;
+        }
+
+        float[] heights()
+        {
+            float[] ret_val = new float[particleCount];
+
+            if(particleBlock != null)
+            {
+                for(int i = 0; i < particleCount; i++)
+                    ret_val[i] = (float)particleBlock.positions[i * 3 + 1];
+            }
+            else
+            {
+                for(int i = 0; i < particleCount; i++)
+                    ret_val[i] = (float)particleList.next().position.y;
+
+                particleList.reset();
+            }
+
+            Arrays.sort(ret_val);
+            return ret_val;
+        }
+
+        @Override
+        public void onRemove()
+        {
+        }
+
+        @Override
+        protected void updateGeometry()
+        {
+            geometryThread = Thread.currentThread();
+        }
+
+        @Override
+        public int coordinatesPerParticle()
+        {
+            return 1;
+        }
+
+        @Override
+        public int numColorComponents()
+        {
+            return 4;
+        }
+
+        @Override
+        public int numTexCoordComponents()
+        {
+            return 0;
+        }
+
+        @Override
+        public Particle createParticle()
+        {
+            created++;
+            return new TestParticle();
+        }
+    }
+
+    /**
+     * Emitter creating a fixed number of particles a frame with a repeatable
+     * spread of upward speeds.
+     */
+    private static class TestEmitter extends PointEmitter
+    {
+        private final int perFrame;
+
+        private int next;
+
+        TestEmitter(int perFrame)
+        {
+            this.perFrame = perFrame;
+        }
+
+        @Override
+        public int numParticlesToCreate(int timeDelta)
+        {
+            return perFrame;
+        }
+
+        @Override
+        public boolean initialize(Particle particle)
+        {
+            particle.setPosition(next % 5, 0, 0);
+            particle.setMass(1 + next % 3);
+            particle.velocity.set(0, 2 + (next % 7) * 0.5, 0);
+            particle.setCycleTime(1000);
+            next++;
+
+            return true;
+        }
+    }
+
+    /**
+     * Kills particles that fall below the ground.
+     */
+    private static class FloorFunction implements ParticleFunction
+    {
+        @Override
+        public boolean isEnabled()
+        {
+            return true;
+        }
+
+        @Override
+        public void setEnabled(boolean state)
+        {
+        }
+
+        @Override
+        public boolean newFrame(int deltaT)
+        {
+            return true;
+        }
+
+        @Override
+        public boolean apply(Particle particle)
+        {
+            return particle.position.y >= 0;
+        }
+    }
+}
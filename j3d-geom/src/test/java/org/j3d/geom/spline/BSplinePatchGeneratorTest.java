@@ -0,0 +1,165 @@
+/*
+ * j3d.org Copyright (c) 2001-2015
+ *                                 Java Source
+ *
+ *  This source is licensed under the GNU LGPL v2.1
+ *  Please read docs/LGPL.txt for more information
+ *
+ *  This software comes with the standard NO WARRANTY disclaimer for any
+ *  purpose. Use it at your own risk. If there's a problem you get to fix it.
+ */
+
+package org.j3d.geom.spline;
+
+import java.util.Set;
+
+import org.testng.annotations.Test;
+
+import org.j3d.geom.GeometryData;
+
+import static org.testng.Assert.*;
+
+public class BSplinePatchGeneratorTest
+{
+    @Test(groups = "unit")
+    public void testAdaptiveSharedEdge() throws Exception
+    {
+        // Two patches meeting along x = 4, with the second one holding the
+        // shared edge in the opposite direction. That needs the mirror image
+        // of the depth knots to describe the same boundary curve.
+        float[][] left = createPatch(0, 1);
+        float[][] right = createPatch(4, -1);
+
+        for(int kj = 0; kj < 5; kj++)
+            right[0][kj * 3 + 1] = left[4][kj * 3 + 1];
+
+        for(int ki = 0; ki < 5; ki++)
+        {
+            float[] row = new float[15];
+
+            for(int kj = 0; kj < 5; kj++)
+                System.arraycopy(right[ki], kj * 3, row, (4 - kj) * 3, 3);
+
+            right[ki] = row;
+        }
+
+        float[] knots = { 0, 0, 0, 0, 1, 3, 3, 3, 3 };
+        float[] mirror = { 0, 0, 0, 0, 2, 3, 3, 3, 3 };
+
+        GeometryData data_left = generate(left, knots, knots);
+        GeometryData data_right = generate(right, knots, mirror);
+
+        BezierPatchGeneratorTest.checkMesh(data_left);
+        BezierPatchGeneratorTest.checkMesh(data_right);
+
+        Set<String> left_edge =
+            BezierPatchGeneratorTest.pointsOnPlaneX(data_left, 4);
+        Set<String> right_edge =
+            BezierPatchGeneratorTest.pointsOnPlaneX(data_right, 4);
+
+        assertTrue(left_edge.size() > 2, "Shared edge not refined");
+        assertEquals(right_edge, left_edge, "Shared edge points differ");
+    }
+
+    @Test(groups = "unit")
+    public void testAdaptiveEndsOnCorners() throws Exception
+    {
+        float[][] points = createPatch(0, 1);
+        float[] knots = { 0, 0, 0, 0, 1, 3, 3, 3, 3 };
+        GeometryData data = generate(points, knots, knots);
+
+        // Clamped knots, so the corners of the surface are control points
+        int found = 0;
+
+        for(int i = 0; i < data.vertexCount; i++)
+        {
+            float x = data.coordinates[i * 3];
+            float z = data.coordinates[i * 3 + 2];
+
+            if((x == 0 || x == 4) && (z == 0 || z == 4))
+                found++;
+        }
+
+        assertEquals(found, 4, "Corner vertices");
+    }
+
+    @Test(groups = "unit")
+    public void testAdaptiveUnclampedKnots() throws Exception
+    {
+        float[][] points = createPatch(0, 1);
+        float[] knots = { 0, 1, 2, 3, 4, 5, 6, 7, 8 };
+        GeometryData data = generate(points, knots, knots);
+
+        BezierPatchGeneratorTest.checkMesh(data);
+
+        // Uniform cubic knots over control points at 0 to 4 only cover the
+        // middle of the net. The surface runs from (P0 + 4 P1 + P2) / 6 = 1
+        // to (P2 + 4 P3 + P4) / 6 = 3 in both directions, not from the outer
+        // rows of control points.
+        float min_x = Float.POSITIVE_INFINITY;
+        float max_x = Float.NEGATIVE_INFINITY;
+        float min_z = Float.POSITIVE_INFINITY;
+        float max_z = Float.NEGATIVE_INFINITY;
+
+        for(int i = 0; i < data.vertexCount; i++)
+        {
+            float x = data.coordinates[i * 3];
+            float z = data.coordinates[i * 3 + 2];
+
+            min_x = Math.min(min_x, x);
+            max_x = Math.max(max_x, x);
+            min_z = Math.min(min_z, z);
+            max_z = Math.max(max_z, z);
+        }
+
+        assertEquals(min_x, 1, 0.0001f, "Wrong start of surface in x");
+        assertEquals(max_x, 3, 0.0001f, "Wrong end of surface in x");
+        assertEquals(min_z, 1, 0.0001f, "Wrong start of surface in z");
+        assertEquals(max_z, 3, 0.0001f, "Wrong end of surface in z");
+    }
+
+    /**
+     * Generate an adaptive triangle mesh for a cubic patch.
+     */
+    private GeometryData generate(float[][] points,
+                                  float[] widthKnots,
+                                  float[] depthKnots)
+        throws Exception
+    {
+        BSplinePatchGenerator gen = new BSplinePatchGenerator(32, 32, 3, 3);
+        gen.setPatchControlPoints(points);
+        gen.setPatchKnots(3, widthKnots, 3, depthKnots);
+        gen.setAdaptive(true);
+
+        GeometryData data = new GeometryData();
+        data.geometryType = GeometryData.INDEXED_TRIANGLES;
+        gen.generate(data);
+
+        return data;
+    }
+
+    /**
+     * A 5x5 patch over [x, x + 4] x [0, 4] with a bump in the middle and a
+     * wave along the u = 1 edge.
+     */
+    private float[][] createPatch(float x, float height)
+    {
+        float[][] ret_val = new float[5][15];
+
+        for(int i = 0; i < 5; i++)
+        {
+            for(int j = 0; j < 5; j++)
+            {
+                ret_val[i][j * 3] = x + i;
+                ret_val[i][j * 3 + 1] =
+                    (i > 0 && i < 4 && j > 0 && j < 4) ? height : 0;
+                ret_val[i][j * 3 + 2] = j;
+            }
+        }
+
+        ret_val[4][4] = height * 0.5f;
+        ret_val[4][10] = -height * 0.5f;
+
+        return ret_val;
+    }
+}
@@ -0,0 +1,367 @@
+/*
+ * j3d.org Copyright (c) 2001-2015
+ *                                 Java Source
+ *
+ *  This source is licensed under the GNU LGPL v2.1
+ *  Please read docs/LGPL.txt for more information
+ *
+ *  This software comes with the standard NO WARRANTY disclaimer for any
+ *  purpose. Use it at your own risk. If there's a problem you get to fix it.
+ */
+
+package org.j3d.geom.spline;
+
+import org.testng.annotations.Test;
+
+import org.j3d.geom.GeometryData;
+
+import static org.testng.Assert.*;
+
+public class BSplineUtilsTest
+{
+    private static final float TOLERANCE = 1e-5f;
+
+    /** Clamped knots for 7 control points of degree 3 */
+    private static final float[] CLAMPED_KNOTS = {
+        0, 0, 0, 0, 1, 2, 2, 3, 4, 4, 4, 4
+    };
+
+    /** Unclamped uniform knots for 5 control points of degree 2 */
+    private static final float[] UNIFORM_KNOTS = { 0, 1, 2, 3, 4, 5, 6, 7 };
+
+    @Test(groups = "unit")
+    public void testFindKnotSpan() throws Exception
+    {
+        int n = CLAMPED_KNOTS.length;
+
+        assertEquals(BSplineUtils.findKnotSpan(CLAMPED_KNOTS, n, 0), 3, "Start span");
+        assertEquals(BSplineUtils.findKnotSpan(CLAMPED_KNOTS, n, 0.5), 3, "First span");
+        assertEquals(BSplineUtils.findKnotSpan(CLAMPED_KNOTS, n, 2), 6, "Repeated knot");
+        assertEquals(BSplineUtils.findKnotSpan(CLAMPED_KNOTS, n, 3.99), 7, "Last span");
+        assertEquals(BSplineUtils.findKnotSpan(CLAMPED_KNOTS, n, 4), -1, "End of range");
+        assertEquals(BSplineUtils.findKnotSpan(CLAMPED_KNOTS, n, -1), -1, "Before range");
+    }
+
+    @Test(groups = "unit")
+    public void testClampedTableMatchesRecursion() throws Exception
+    {
+        checkTable(CLAMPED_KNOTS, 3, 7, 4 / 33.0, 33);
+    }
+
+    @Test(groups = "unit")
+    public void testUniformTableMatchesRecursion() throws Exception
+    {
+        // Samples start before the valid domain so the window gets clipped
+        checkTable(UNIFORM_KNOTS, 2, 5, 7 / 21.0, 21);
+    }
+
+    @Test(groups = "unit")
+    public void testTableReuse() throws Exception
+    {
+        BSplineBasisTable table =
+            BSplineUtils.createBasisTable(CLAMPED_KNOTS,
+                                          CLAMPED_KNOTS.length,
+                                          3,
+                                          7,
+                                          0,
+                                          0.1,
+                                          40,
+                                          null);
+
+        double[] values = table.values;
+
+        BSplineBasisTable reused =
+            BSplineUtils.createBasisTable(CLAMPED_KNOTS,
+                                          CLAMPED_KNOTS.length,
+                                          3,
+                                          7,
+                                          0,
+                                          0.2,
+                                          20,
+                                          table);
+
+        assertSame(reused, table, "Table not reused");
+        assertSame(reused.values, values, "Value array not reused");
+        assertEquals(reused.numSamples, 20, "Sample count");
+    }
+
+    @Test(groups = "unit")
+    public void testCurveAfterEdit() throws Exception
+    {
+        int num_points = 7;
+        float[] points = createCurvePoints(num_points);
+
+        BSplineGenerator classUnderTest = new BSplineGenerator(3, 24);
+        classUnderTest.setControlPoints(points);
+        classUnderTest.generateSmoothKnots();
+
+        GeometryData data = new GeometryData();
+        data.geometryType = GeometryData.INDEXED_LINE_STRIPS;
+
+        classUnderTest.generate(data);
+        checkCurve(data.coordinates, points, num_points, classUnderTest.getKnots(), 3, 24, null);
+
+        // Move one control point and turn on weights. Only the sums change.
+        points[9] += 2;
+        points[11] -= 1;
+
+        float[] weights = { 1, 2, 0.5f, 1, 3, 1, 1 };
+        classUnderTest.setControlPoints(points, weights);
+
+        data.coordinates = null;
+        classUnderTest.generate(data);
+        checkCurve(data.coordinates, points, num_points, classUnderTest.getKnots(), 3, 24, weights);
+    }
+
+    @Test(groups = "unit")
+    public void testPatchAfterEdit() throws Exception
+    {
+        int facets = 10;
+        float[][] points = new float[5][15];
+
+        for(int i = 0; i < 5; i++)
+        {
+            for(int j = 0; j < 5; j++)
+            {
+                points[i][j * 3] = i;
+                points[i][j * 3 + 1] = (i * j) % 3;
+                points[i][j * 3 + 2] = j;
+            }
+        }
+
+        BSplinePatchGenerator classUnderTest =
+            new BSplinePatchGenerator(facets, facets, 2, 3);
+        classUnderTest.setPatchControlPoints(points);
+        classUnderTest.generateSmoothKnots();
+
+        GeometryData data = new GeometryData();
+        data.geometryType = GeometryData.INDEXED_TRIANGLES;
+
+        classUnderTest.generate(data);
+        checkPatch(data.coordinates, points, null, facets, 2, 3);
+
+        points[2][7] = 4;
+
+        float[][] weights = new float[5][5];
+        for(int i = 0; i < 5; i++)
+            for(int j = 0; j < 5; j++)
+                weights[i][j] = 1 + ((i + 2 * j) % 4) * 0.5f;
+
+        classUnderTest.setPatchControlPoints(points);
+        classUnderTest.setPatchWeights(weights);
+        classUnderTest.enableControlPointWeights(true);
+
+        data.coordinates = null;
+        classUnderTest.generate(data);
+        checkPatch(data.coordinates, points, weights, facets, 2, 3);
+    }
+
+    /**
+     * Build a table and compare every value against the recursive form.
+     */
+    private void checkTable(float[] knots,
+                            int degree,
+                            int numBasis,
+                            double increment,
+                            int numSamples)
+    {
+        BSplineBasisTable table =
+            BSplineUtils.createBasisTable(knots,
+                                          knots.length,
+                                          degree,
+                                          numBasis,
+                                          0,
+                                          increment,
+                                          numSamples,
+                                          null);
+
+        assertEquals(table.width, degree + 1, "Table width");
+
+        double t = 0;
+
+        for(int s = 0; s < numSamples; s++)
+        {
+            int first = table.firstBasis[s];
+
+            assertTrue(first >= 0 && first <= numBasis - table.width,
+                       "Window out of range at sample " + s);
+
+            for(int k = 0; k < numBasis; k++)
+            {
+                double expected = blend(knots, k, degree + 1, t);
+                double actual = 0;
+
+                if(k >= first && k < first + table.width)
+                    actual = table.values[s * table.width + k - first];
+
+                assertEquals(actual, expected, TOLERANCE,
+                             "Basis " + k + " at sample " + s);
+            }
+
+            t += increment;
+        }
+    }
+
+    /**
+     * Compare generated curve coordinates against direct evaluation.
+     */
+    private void checkCurve(float[] coords,
+                            float[] points,
+                            int numPoints,
+                            float[] knots,
+                            int degree,
+                            int facets,
+                            float[] weights)
+    {
+        double increment = (numPoints - degree + 1) / (double)(facets + 1);
+        double t = 0;
+
+        for(int s = 0; s < facets; s++)
+        {
+            double[] expected = new double[3];
+            double denom = 0;
+
+            for(int k = 0; k < numPoints; k++)
+            {
+                double b = blend(knots, k, degree + 1, t);
+
+                if(weights != null)
+                    b *= weights[k];
+
+                expected[0] += points[k * 3] * b;
+                expected[1] += points[k * 3 + 1] * b;
+                expected[2] += points[k * 3 + 2] * b;
+                denom += b;
+            }
+
+            for(int c = 0; c < 3; c++)
+            {
+                double e = (weights != null) ? expected[c] / denom : expected[c];
+                assertEquals(coords[s * 3 + c], e, TOLERANCE,
+                             "Curve sample " + s + " component " + c);
+            }
+
+            t += increment;
+        }
+
+        int last = (numPoints - 1) * 3;
+        assertEquals(coords[facets * 3], points[last], "Last point x");
+        assertEquals(coords[facets * 3 + 2], points[last + 2], "Last point z");
+    }
+
+    /**
+     * Compare generated patch coordinates against direct evaluation using
+     * the same smooth knots the generator uses.
+     */
+    private void checkPatch(float[] coords,
+                            float[][] points,
+                            float[][] weights,
+                            int facets,
+                            int wDegree,
+                            int dDegree)
+    {
+        float[] w_knots = smoothKnots(points.length, wDegree);
+        float[] d_knots = smoothKnots(points[0].length / 3, dDegree);
+        double i_inc = w_knots[w_knots.length - 1] / (double)(facets + 1);
+        double j_inc = d_knots[d_knots.length - 1] / (double)(facets + 1);
+
+        double i_inter = 0;
+        int out = 0;
+
+        for(int i = 0; i <= facets; i++)
+        {
+            double j_inter = 0;
+
+            for(int j = 0; j <= facets; j++)
+            {
+                double[] expected = new double[3];
+                double denom = 0;
+
+                for(int ki = 0; ki < points.length; ki++)
+                {
+                    double bi = blend(w_knots, ki, wDegree + 1, i_inter);
+
+                    for(int kj = 0; kj < points[0].length / 3; kj++)
+                    {
+                        double b = bi * blend(d_knots, kj, dDegree + 1, j_inter);
+
+                        if(weights != null)
+                            b *= weights[ki][kj];
+
+                        expected[0] += points[ki][kj * 3] * b;
+                        expected[1] += points[ki][kj * 3 + 1] * b;
+                        expected[2] += points[ki][kj * 3 + 2] * b;
+                        denom += b;
+                    }
+                }
+
+                for(int c = 0; c < 3; c++)
+                {
+                    double e = (weights != null && denom != 0) ?
+                               expected[c] / denom : expected[c];
+
+                    assertEquals(coords[out++], e, TOLERANCE,
+                                 "Patch " + i + "," + j + " component " + c);
+                }
+
+                j_inter += j_inc;
+            }
+
+            i_inter += i_inc;
+        }
+    }
+
+    /**
+     * The smooth knot vector the generators create.
+     */
+    private float[] smoothKnots(int numPoints, int degree)
+    {
+        float[] ret_val = new float[numPoints + degree + 1];
+
+        for(int j = 0; j < ret_val.length; j++)
+        {
+            if(j <= degree)
+                ret_val[j] = 0;
+            else if(j < numPoints)
+                ret_val[j] = j - degree + 1;
+            else
+                ret_val[j] = numPoints - degree + 1;
+        }
+
+        return ret_val;
+    }
+
+    /**
+     * Reference recursive form of the basis function.
+     */
+    private double blend(float[] u, int i, int k, double t)
+    {
+        if(k == 1)
+            return ((u[i] <= t) && (t < u[i + 1])) ? 1 : 0;
+
+        double b1 = blend(u, i, k - 1, t);
+        double b2 = blend(u, i + 1, k - 1, t);
+
+        double e = (b1 != 0) ? (t - u[i]) / (u[i + k - 1] - u[i]) * b1 : 0;
+        double f = (b2 != 0) ? (u[i + k] - t) / (u[i + k] - u[i + 1]) * b2 : 0;
+
+        return e + f;
+    }
+
+    /**
+     * A zig-zag run of control points along the X axis.
+     */
+    private float[] createCurvePoints(int num)
+    {
+        float[] ret_val = new float[num * 3];
+
+        for(int i = 0; i < num; i++)
+        {
+            ret_val[i * 3] = i;
+            ret_val[i * 3 + 1] = (i % 2 == 0) ? 0 : 1;
+            ret_val[i * 3 + 2] = i * 0.5f;
+        }
+
+        return ret_val;
+    }
+}
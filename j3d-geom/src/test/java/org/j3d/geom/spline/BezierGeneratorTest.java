@@ -0,0 +1,86 @@
+/*
+ * j3d.org Copyright (c) 2001-2015
+ *                                 Java Source
+ *
+ *  This source is licensed under the GNU LGPL v2.1
+ *  Please read docs/LGPL.txt for more information
+ *
+ *  This software comes with the standard NO WARRANTY disclaimer for any
+ *  purpose. Use it at your own risk. If there's a problem you get to fix it.
+ */
+
+package org.j3d.geom.spline;
+
+import org.testng.annotations.Test;
+
+import org.j3d.geom.GeometryData;
+
+import static org.testng.Assert.*;
+
+public class BezierGeneratorTest
+{
+    @Test(groups = "unit")
+    public void testForwardDifferencingMatchesDirect() throws Exception
+    {
+        float[] points = {
+            0, 0, 0,
+            1, 3, -1,
+            2, -2, 0.5f,
+            4, 1, 2,
+            5, 0, 0,
+            7, 4, -3
+        };
+
+        // Enough samples that an unanchored table would visibly drift
+        int facets = 5000;
+
+        float[] direct = generateCurve(points, facets, false);
+        float[] differenced = generateCurve(points, facets, true);
+
+        assertEquals(differenced.length, direct.length, "Coordinate count");
+
+        for(int i = 0; i < (facets + 1) * 3; i++)
+            assertEquals(differenced[i], direct[i], 1e-4f, "Coordinate " + i);
+
+        int last = facets * 3;
+        assertEquals(differenced[last], 7f, "Last point x");
+        assertEquals(differenced[last + 1], 4f, "Last point y");
+        assertEquals(differenced[last + 2], -3f, "Last point z");
+    }
+
+    @Test(groups = "unit")
+    public void testForwardDifferencingLowOrder() throws Exception
+    {
+        // A straight line has a zero second difference
+        float[] points = { 0, 0, 0, 3, 6, 9 };
+
+        float[] coords = generateCurve(points, 3, true);
+
+        for(int i = 0; i < 4; i++)
+        {
+            assertEquals(coords[i * 3], i, 1e-6f, "Line x " + i);
+            assertEquals(coords[i * 3 + 1], i * 2, 1e-6f, "Line y " + i);
+            assertEquals(coords[i * 3 + 2], i * 3, 1e-6f, "Line z " + i);
+        }
+    }
+
+    /**
+     * Generate a curve as line strips and return the coordinates.
+     */
+    private float[] generateCurve(float[] points,
+                                  int facets,
+                                  boolean differenced)
+    {
+        BezierGenerator gen = new BezierGenerator(facets);
+        gen.setControlPoints(points);
+        gen.setForwardDifferencing(differenced);
+
+        GeometryData data = new GeometryData();
+        data.geometryType = GeometryData.INDEXED_LINE_STRIPS;
+        gen.generate(data);
+
+        assertEquals(data.vertexCount, facets + 1, "Vertex count");
+
+        return data.coordinates;
+    }
+}
@@ -0,0 +1,364 @@
+/*
+ * j3d.org Copyright (c) 2001-2015
+ *                                 Java Source
+ *
+ *  This source is licensed under the GNU LGPL v2.1
+ *  Please read docs/LGPL.txt for more information
+ *
+ *  This software comes with the standard NO WARRANTY disclaimer for any
+ *  purpose. Use it at your own risk. If there's a problem you get to fix it.
+ */
+
+package org.j3d.geom.spline;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.testng.annotations.Test;
+
+import org.j3d.geom.GeometryData;
+import org.j3d.geom.UnsupportedTypeException;
+import org.j3d.maths.vector.Matrix4d;
+
+import static org.testng.Assert.*;
+
+public class BezierPatchGeneratorTest
+{
+    @Test(groups = "unit")
+    public void testAdaptiveFlatPatch() throws Exception
+    {
+        BezierPatchGenerator classUnderTest = new BezierPatchGenerator(32, 32);
+        classUnderTest.setPatchControlPoints(createPatch(0, 0, 0));
+        classUnderTest.setAdaptive(true);
+
+        GeometryData data = new GeometryData();
+        data.geometryType = GeometryData.INDEXED_TRIANGLES;
+        data.geometryComponents = GeometryData.NORMAL_DATA;
+
+        classUnderTest.generate(data);
+
+        assertEquals(data.vertexCount, 5, "Flat patch vertex count");
+        assertEquals(data.indexesCount, 4 * 3, "Flat patch index count");
+
+        for(int i = 0; i < data.vertexCount; i++)
+        {
+            assertEquals(data.coordinates[i * 3 + 1], 0, 1e-6f, "Off the plane");
+            assertEquals(Math.abs(data.normals[i * 3 + 1]), 1, 1e-5f, "Normal");
+        }
+
+        checkMesh(data);
+    }
+
+    @Test(groups = "unit")
+    public void testAdaptiveCurvedPatch() throws Exception
+    {
+        float tolerance = 0.005f;
+        BezierPatchGenerator classUnderTest = new BezierPatchGenerator(64, 64);
+        classUnderTest.setPatchControlPoints(createPatch(0, 0, 1));
+        classUnderTest.setAdaptive(true);
+        classUnderTest.setErrorTolerance(tolerance);
+
+        GeometryData data = new GeometryData();
+        data.geometryType = GeometryData.INDEXED_TRIANGLES;
+        classUnderTest.generate(data);
+
+        int tris = data.indexesCount / 3;
+
+        assertTrue(tris > 8, "Curved patch not refined");
+        assertTrue(tris < 64 * 64 * 2, "No fewer triangles than uniform");
+
+        checkMesh(data);
+
+        // Triangle centres should be close to the surface above them. The
+        // patch is a height field over x and z, so compare the heights. The
+        // strips against the boundary depend on the boundary alone, so skip
+        // the triangles that touch it.
+        double[] pt = new double[3];
+
+        for(int t = 0; t < tris; t++)
+        {
+            float cx = 0;
+            float cy = 0;
+            float cz = 0;
+            boolean edge = false;
+
+            for(int k = 0; k < 3; k++)
+            {
+                int v = data.indexes[t * 3 + k] * 3;
+                cx += data.coordinates[v] / 3;
+                cy += data.coordinates[v + 1] / 3;
+                cz += data.coordinates[v + 2] / 3;
+
+                edge |= onBoundary(data.coordinates[v]) ||
+                        onBoundary(data.coordinates[v + 2]);
+            }
+
+            if(edge)
+                continue;
+
+            // Control points are evenly spaced so x and z are linear in u, v
+            classUnderTest.evaluateSurface(cx / 3, cz / 3, pt);
+            assertEquals(cy, pt[1], tolerance * 4, "Triangle " + t + " far from surface");
+        }
+    }
+
+    @Test(groups = "unit")
+    public void testAdaptiveSharedEdge() throws Exception
+    {
+        // Two patches meeting along x = 3. The second holds the shared edge
+        // in the opposite direction to the first.
+        float[][] left = createPatch(0, 0, 1);
+        float[][] right = createPatch(3, 0, -1);
+
+        for(int kj = 0; kj < 4; kj++)
+        {
+            right[0][kj * 3 + 1] = left[3][kj * 3 + 1];
+        }
+
+        // Reverse the depth direction of the right patch
+        for(int ki = 0; ki < 4; ki++)
+        {
+            float[] row = new float[12];
+
+            for(int kj = 0; kj < 4; kj++)
+                System.arraycopy(right[ki], kj * 3, row, (3 - kj) * 3, 3);
+
+            right[ki] = row;
+        }
+
+        BezierPatchGenerator gen_left = new BezierPatchGenerator(32, 32);
+        gen_left.setPatchControlPoints(left);
+        gen_left.setAdaptive(true);
+
+        BezierPatchGenerator gen_right = new BezierPatchGenerator(32, 32);
+        gen_right.setPatchControlPoints(right);
+        gen_right.setAdaptive(true);
+
+        GeometryData data_left = new GeometryData();
+        data_left.geometryType = GeometryData.INDEXED_TRIANGLES;
+        gen_left.generate(data_left);
+
+        GeometryData data_right = new GeometryData();
+        data_right.geometryType = GeometryData.INDEXED_TRIANGLES;
+        gen_right.generate(data_right);
+
+        Set<String> left_edge = pointsOnPlaneX(data_left, 3);
+        Set<String> right_edge = pointsOnPlaneX(data_right, 3);
+
+        assertTrue(left_edge.size() > 2, "Shared edge not refined");
+        assertEquals(right_edge, left_edge, "Shared edge points differ");
+    }
+
+    @Test(groups = "unit")
+    public void testAdaptiveViewMatrix() throws Exception
+    {
+        BezierPatchGenerator classUnderTest = new BezierPatchGenerator(64, 64);
+        classUnderTest.setPatchControlPoints(createPatch(0, 0, 1));
+        classUnderTest.setAdaptive(true);
+        classUnderTest.setErrorTolerance(0.5f);
+
+        // Looking down -Z, so move the patch away from the eye
+        Matrix4d view = new Matrix4d();
+        view.setIdentity();
+        view.m23 = -5;
+        classUnderTest.setViewMatrix(view, 500);
+
+        GeometryData data = new GeometryData();
+        data.geometryType = GeometryData.TRIANGLES;
+        classUnderTest.generate(data);
+        int near = data.vertexCount;
+
+        view.m23 = -500;
+        classUnderTest.setViewMatrix(view, 500);
+
+        data.coordinates = null;
+        classUnderTest.generate(data);
+        int far = data.vertexCount;
+
+        assertTrue(near > far, "Far patch not coarser: " + near + " " + far);
+        assertEquals(far % 3, 0, "Not whole triangles");
+    }
+
+    @Test(groups = "unit")
+    public void testAdaptiveRejectsQuads() throws Exception
+    {
+        BezierPatchGenerator classUnderTest = new BezierPatchGenerator();
+        classUnderTest.setPatchControlPoints(createPatch(0, 0, 1));
+        classUnderTest.setAdaptive(true);
+
+        GeometryData data = new GeometryData();
+        data.geometryType = GeometryData.QUADS;
+
+        try
+        {
+            classUnderTest.getVertexCount(data);
+            fail("Quads should not be supported in adaptive mode");
+        }
+        catch(UnsupportedTypeException ute)
+        {
+            // expected
+        }
+
+        try
+        {
+            classUnderTest.setErrorTolerance(-1);
+            fail("Negative tolerance accepted");
+        }
+        catch(IllegalArgumentException iae)
+        {
+            // expected
+        }
+    }
+
+    @Test(groups = "unit")
+    public void testForwardDifferencingMatchesDirect() throws Exception
+    {
+        float[][] points = createPatch(0, 0, 1);
+
+        checkDifferencedPatch(points, null, 40, 70);
+
+        float[][] weights = new float[4][4];
+        for(int i = 0; i < 4; i++)
+            for(int j = 0; j < 4; j++)
+                weights[i][j] = 1 + ((i + 2 * j) % 3) * 0.5f;
+
+        checkDifferencedPatch(points, weights, 70, 40);
+    }
+
+    /**
+     * Generate the same patch grid directly and with forward differencing
+     * and check the coordinates agree.
+     */
+    private void checkDifferencedPatch(float[][] points,
+                                       float[][] weights,
+                                       int widthFacets,
+                                       int depthFacets)
+    {
+        float[][][] coords = new float[2][][];
+
+        for(int pass = 0; pass < 2; pass++)
+        {
+            BezierPatchGenerator gen =
+                new BezierPatchGenerator(widthFacets, depthFacets);
+            gen.setPatchControlPoints(points);
+
+            if(weights != null)
+            {
+                gen.setPatchWeights(weights);
+                gen.enableControlPointWeights(true);
+            }
+
+            gen.setForwardDifferencing(pass == 1);
+            gen.regeneratePatch();
+
+            coords[pass] = gen.patchCoordinates;
+        }
+
+        for(int i = 0; i <= depthFacets; i++)
+        {
+            for(int j = 0; j < (widthFacets + 1) * 3; j++)
+                assertEquals(coords[1][i][j], coords[0][i][j], 1e-5f,
+                             "Grid row " + i + " value " + j);
+        }
+    }
+
+    /**
+     * Check that the mesh is a single closed-off disk: every edge is used
+     * once in each direction, except for the boundary which is used once,
+     * and V - E + F == 1.
+     */
+    static void checkMesh(GeometryData data)
+    {
+        Map<Long, Integer> edges = new HashMap<>();
+        int tris = data.indexesCount / 3;
+
+        for(int t = 0; t < tris; t++)
+        {
+            for(int k = 0; k < 3; k++)
+            {
+                int a = data.indexes[t * 3 + k];
+                int b = data.indexes[t * 3 + (k + 1) % 3];
+
+                assertNotEquals(a, b, "Degenerate triangle " + t);
+
+                long key = ((long)a << 32) | b;
+                Integer cnt = edges.get(key);
+                edges.put(key, cnt == null ? 1 : cnt + 1);
+            }
+        }
+
+        Set<Long> undirected = new HashSet<>();
+
+        for(Map.Entry<Long, Integer> e : edges.entrySet())
+        {
+            assertEquals((int)e.getValue(), 1, "Edge used twice in one direction");
+
+            long key = e.getKey();
+            long a = key >>> 32;
+            long b = key & 0xFFFFFFFFL;
+
+            undirected.add(Math.min(a, b) << 32 | Math.max(a, b));
+        }
+
+        int euler = data.vertexCount - undirected.size() + tris;
+        assertEquals(euler, 1, "Not a disk");
+    }
+
+    /**
+     * Check if an X or Z coordinate is on the boundary of a patch from
+     * createPatch() at the origin.
+     */
+    private static boolean onBoundary(float c)
+    {
+        return Math.abs(c) < 1e-4f || Math.abs(c - 3) < 1e-4f;
+    }
+
+    /**
+     * A 4x4 Bezier patch over [x, x + 3] x [z, z + 3] with the inner points
+     * raised by the given height.
+     */
+    static float[][] createPatch(float x, float z, float height)
+    {
+        float[][] ret_val = new float[4][12];
+
+        for(int i = 0; i < 4; i++)
+        {
+            for(int j = 0; j < 4; j++)
+            {
+                ret_val[i][j * 3] = x + i;
+                ret_val[i][j * 3 + 1] =
+                    ((i == 1 || i == 2) && (j == 1 || j == 2)) ? height : 0;
+                ret_val[i][j * 3 + 2] = z + j;
+            }
+        }
+
+        // Lift one edge so boundaries are curved too
+        ret_val[3][4] = height * 0.5f;
+        ret_val[3][7] = -height * 0.5f;
+
+        return ret_val;
+    }
+
+    /**
+     * Collect the exact coordinates of all vertices on or very near to the
+     * given X plane.
+     */
+    static Set<String> pointsOnPlaneX(GeometryData data, float x)
+    {
+        Set<String> ret_val = new HashSet<>();
+
+        for(int i = 0; i < data.vertexCount; i++)
+        {
+            if(Math.abs(data.coordinates[i * 3] - x) < 1e-4f)
+            {
+                ret_val.add(data.coordinates[i * 3] + "," +
+                            data.coordinates[i * 3 + 1] + "," +
+                            data.coordinates[i * 3 + 2]);
+            }
+        }
+
+        return ret_val;
+    }
+}
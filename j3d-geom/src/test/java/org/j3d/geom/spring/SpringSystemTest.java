@@ -0,0 +1,426 @@
+/*
+ * j3d.org Copyright (c) 2001-2015
+ *                                 Java Source
+ *
+ *  This source is licensed under the GNU LGPL v2.1
+ *  Please read docs/LGPL.txt for more information
+ *
+ *  This software comes with the standard NO WARRANTY disclaimer for any
+ *  purpose. Use it at your own risk. If there's a problem you get to fix it.
+ */
+
+package org.j3d.geom.spring;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public class SpringSystemTest
+{
+    @Test(groups = "unit")
+    public void testRectFieldMatchesNodes() throws Exception
+    {
+        int width = 40;
+        int height = 30;
+        float[] expected = createGrid(width, height);
+        float[] actual = createGrid(width, height);
+
+        SpringSystem reference = new SpringSystem();
+        reference.addRectField(width, height, expected, new float[expected.length]);
+        SpringSystem classUnderTest = new SpringSystem();
+        classUnderTest.addRectField(width, height, actual, new float[actual.length]);
+
+        // Pin the top corners like a hanging cloth
+        reference.getNode(0).locked = true;
+        reference.getNode(width - 1).locked = true;
+        classUnderTest.getNode(0).locked = true;
+        classUnderTest.getNode(width - 1).locked = true;
+
+        ForkJoinPool pool = new ForkJoinPool(3);
+
+        try
+        {
+            for(int step = 0; step < 20; step++)
+            {
+                referenceUpdate(reference, 0.01f);
+
+                if((step & 1) == 0)
+                    classUnderTest.update(0.01f, null, null, pool);
+                else
+                    classUnderTest.update(0.01f, null, null, null);
+            }
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+
+        for(int i = 0; i < expected.length; i++)
+            assertEquals(actual[i], expected[i], 1e-4f, "Position " + i);
+
+        assertEquals(actual[0], 0f, "Locked node moved");
+        assertTrue(actual[width * 3 * (height - 1) + 1] < -0.01f, "Cloth did not fall");
+
+        SpringNode node = classUnderTest.getNode(width * 2 + 5);
+        SpringNode ref_node = reference.getNode(width * 2 + 5);
+        assertEquals(node.dir[1], ref_node.dir[1], 1e-3f, "Velocity not copied back");
+    }
+
+    @Test(groups = "unit")
+    public void testCustomField() throws Exception
+    {
+        // Two separate position arrays plus a node outside the system
+        float[] pos_a = { 0, 0, 0,  1, 0, 0 };
+        float[] pos_b = { 0, 0, 0,  0, -1, 0 };
+        float[] norms = new float[6];
+
+        SpringNode anchor = new SpringNode(pos_a, norms, 0);
+        SpringNode a = new SpringNode(pos_a, norms, 3);
+        SpringNode b = new SpringNode(pos_b, norms, 3);
+
+        a.addSpring(anchor);
+        b.addSpring(a);
+        a.addSpring(b);
+
+        SpringSystem classUnderTest = new SpringSystem();
+        classUnderTest.setCustomSpringField(new SpringNode[] { a, b }, 2);
+
+        // b is 1.41 from a and should be pulled towards it
+        pos_b[3] = 1;
+        pos_b[4] = -2;
+
+        classUnderTest.update(0.01f, null, null, null);
+
+        assertEquals(pos_a[0], 0f, "Outside node moved");
+        assertTrue(pos_b[4] > -2, "Stretched spring did not pull");
+        assertTrue(pos_a[4] < 0, "Gravity not applied to a");
+
+        // A new spring on a node is picked up by the next update
+        SpringNode c = new SpringNode(pos_b, norms, 0);
+        b.addSpring(c);
+        pos_b[0] = 5;
+        pos_b[1] = -2;
+
+        classUnderTest.update(0.01f, null, null, null);
+        assertEquals(pos_b[0], 5f, "Outside node moved");
+        assertTrue(b.dir[0] > 5, "New spring ignored");
+
+        final int[] calls = new int[1];
+        SpringEvaluatorCallback callback = new SpringEvaluatorCallback()
+        {
+            @Override
+            public void processSpringNode(SpringNode node, float[] attribs)
+            {
+                calls[0]++;
+                node.dir[0] = 0;
+                node.dir[1] = 0;
+                node.dir[2] = 0;
+            }
+        };
+
+        float b_y = pos_b[4];
+        classUnderTest.update(0.01f, callback, null, null);
+
+        assertEquals(calls[0], 2, "Callback count");
+        assertEquals(pos_b[4], b_y, "Callback change to dir ignored");
+    }
+
+    @Test(groups = "unit")
+    public void testPositionBasedStiffCloth() throws Exception
+    {
+        int width = 20;
+        int height = 20;
+        float dt = 1 / 60f;
+
+        // Explicit integration of a stiff cloth at a frame time step blows up
+        float[] explicit_pos = createGrid(width, height);
+        SpringSystem explicit = createCloth(width, height, explicit_pos);
+        explicit.setSpringConstant(5000);
+
+        for(int step = 0; step < 60; step++)
+            explicit.update(dt, null, null, null);
+
+        assertTrue(maxStretch(explicit) > 2 || Float.isNaN(maxStretch(explicit)),
+                   "Explicit was expected to go unstable");
+
+        float[] actual = createGrid(width, height);
+        float[] expected = createGrid(width, height);
+        SpringSystem classUnderTest = createCloth(width, height, actual);
+        SpringSystem serial = createCloth(width, height, expected);
+
+        classUnderTest.setSpringConstant(5000);
+        classUnderTest.setIntegrationMode(SpringSystem.POSITION_BASED_INTEGRATION);
+        serial.setIntegrationMode(SpringSystem.POSITION_BASED_INTEGRATION);
+
+        ForkJoinPool pool = new ForkJoinPool(3);
+
+        try
+        {
+            for(int step = 0; step < 120; step++)
+            {
+                classUnderTest.update(dt, null, null, pool);
+                serial.update(dt, null, null, null);
+            }
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+
+        for(int i = 0; i < actual.length; i++)
+            assertEquals(actual[i], expected[i], 0f, "Pool result differs at " + i);
+
+        assertEquals(actual[0], 0f, "Locked node moved");
+        assertEquals(actual[(width - 1) * 3], width - 1f, "Locked node moved");
+        assertTrue(actual[width * 3 * (height - 1) + 1] < -1, "Cloth did not fall");
+        assertTrue(maxStretch(classUnderTest) < 1.25f,
+                   "Springs stretched to " + maxStretch(classUnderTest));
+
+        SpringNode node = classUnderTest.getNode(width * 10 + 10);
+        assertFalse(Float.isNaN(node.dir[1]), "Velocity not copied back");
+    }
+
+    @Test(groups = "unit")
+    public void testIntegrationSettings() throws Exception
+    {
+        SpringSystem classUnderTest = new SpringSystem();
+
+        assertEquals(classUnderTest.getIntegrationMode(), SpringSystem.EXPLICIT_INTEGRATION, "Default mode");
+        assertEquals(classUnderTest.getConstraintStiffness(), 1f, "Default stiffness");
+
+        try
+        {
+            classUnderTest.setIntegrationMode(7);
+            fail("Unknown mode accepted");
+        }
+        catch(IllegalArgumentException iae)
+        {
+            // expected
+        }
+
+        try
+        {
+            classUnderTest.setSolverIterations(0);
+            fail("Zero iterations accepted");
+        }
+        catch(IllegalArgumentException iae)
+        {
+            // expected
+        }
+
+        try
+        {
+            classUnderTest.setConstraintStiffness(1.5f);
+            fail("Stiffness over 1 accepted");
+        }
+        catch(IllegalArgumentException iae)
+        {
+            // expected
+        }
+
+        classUnderTest.setSolverIterations(3);
+        assertEquals(classUnderTest.getSolverIterations(), 3, "Iterations");
+    }
+
+    @Test(groups = "unit")
+    public void testIncrementalNormals() throws Exception
+    {
+        int width = 30;
+        int height = 30;
+        float[] pos = createGrid(width, height);
+        float[] ref_pos = createGrid(width, height);
+        float[] normals = new float[pos.length];
+        float[] ref_normals = new float[pos.length];
+
+        SpringSystem classUnderTest = new SpringSystem();
+        classUnderTest.addRectField(width, height, pos, normals);
+        SpringSystem reference = new SpringSystem();
+        reference.addRectField(width, height, ref_pos, ref_normals);
+
+        // Only the bottom row is free, so most of the field stays still
+        for(int i = 0; i < width * (height - 1); i++)
+        {
+            classUnderTest.getNode(i).locked = true;
+            reference.getNode(i).locked = true;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(3);
+
+        try
+        {
+            for(int step = 0; step < 10; step++)
+            {
+                classUnderTest.update(0.01f, null, null, null);
+                reference.update(0.01f, null, null, null);
+
+                classUnderTest.evaluateNormals((step & 1) == 0 ? pool : null);
+                reference.invalidateNormals();
+                reference.evaluateNormals(null);
+
+                for(int i = 0; i < normals.length; i++)
+                    assertEquals(normals[i], ref_normals[i], 0f, "Normal " + i + " at step " + step);
+            }
+
+            // A node that moves less than the threshold leaves the normals
+            // alone, one that moves further updates its neighbours only.
+            classUnderTest.setNormalThreshold(0.1f);
+            int far = width * 3 + 3;
+            normals[far * 3] = 5;
+
+            int mid = width * 10 + 10;
+            pos[mid * 3 + 1] += 0.05f;
+            classUnderTest.evaluateNormals(pool);
+            assertEquals(normals[(mid + 1) * 3 + 1], ref_normals[(mid + 1) * 3 + 1], 0f, "Moved under threshold");
+
+            pos[mid * 3 + 1] += 0.1f;
+            classUnderTest.evaluateNormals(pool);
+            assertNotEquals(normals[(mid + 1) * 3 + 1], ref_normals[(mid + 1) * 3 + 1], "Neighbour not updated");
+            assertNotEquals(normals[mid * 3 + 1], ref_normals[mid * 3 + 1], "Moved node not updated");
+            assertEquals(normals[far * 3], 5f, "Unaffected node recomputed");
+
+            classUnderTest.invalidateNormals();
+            classUnderTest.evaluateNormals(null);
+            assertEquals(normals[far * 3], ref_normals[far * 3], 0f, "Invalidate ignored");
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+
+        try
+        {
+            classUnderTest.setNormalThreshold(-1);
+            fail("Negative threshold accepted");
+        }
+        catch(IllegalArgumentException iae)
+        {
+            // expected
+        }
+    }
+
+    /**
+     * A cloth of the given size hanging from its top corners.
+     */
+    private static SpringSystem createCloth(int width, int height, float[] pos)
+    {
+        SpringSystem ret_val = new SpringSystem();
+        ret_val.addRectField(width, height, pos, new float[pos.length]);
+        ret_val.getNode(0).locked = true;
+        ret_val.getNode(width - 1).locked = true;
+
+        return ret_val;
+    }
+
+    /**
+     * The largest ratio of current to natural length over all the springs.
+     */
+    private static float maxStretch(SpringSystem system)
+    {
+        float ret_val = 0;
+
+        for(int i = 0; i < system.getNodeCount(); i++)
+        {
+            SpringNode node = system.getNode(i);
+            float p_x = node.position[node.offset];
+            float p_y = node.position[node.offset + 1];
+            float p_z = node.position[node.offset + 2];
+
+            for(int j = 0; j < node.numConnections; j++)
+            {
+                SpringNode other = node.connections[j];
+                float d_x = other.position[other.offset] - p_x;
+                float d_y = other.position[other.offset + 1] - p_y;
+                float d_z = other.position[other.offset + 2] - p_z;
+                float len = (float)Math.sqrt(d_x * d_x + d_y * d_y + d_z * d_z);
+                float stretch = len / node.naturalLengths[j];
+
+                if(!(stretch <= ret_val))
+                    ret_val = stretch;
+            }
+        }
+
+        return ret_val;
+    }
+
+    /**
+     * A flat grid in the XZ plane, one unit apart.
+     */
+    private static float[] createGrid(int width, int height)
+    {
+        float[] ret_val = new float[width * height * 3];
+
+        for(int j = 0; j < height; j++)
+        {
+            for(int i = 0; i < width; i++)
+            {
+                int idx = (j * width + i) * 3;
+                ret_val[idx] = i;
+                ret_val[idx + 2] = j;
+            }
+        }
+
+        return ret_val;
+    }
+
+    /**
+     * The original node by node update, to check the packed solver against.
+     */
+    private static void referenceUpdate(SpringSystem system, float dTime)
+    {
+        float time = (float)Math.pow(0.5f, dTime);
+        float[] gravity = new float[3];
+        float spring_constant = system.getSpringConstant();
+        int num_nodes = system.getNodeCount();
+
+        system.getGravity(gravity);
+
+        for(int i = 0; i < num_nodes; i++)
+        {
+            SpringNode node = system.getNode(i);
+
+            if(node.locked)
+                continue;
+
+            node.dir[0] *= time;
+            node.dir[1] *= time;
+            node.dir[2] *= time;
+
+            float p_x = node.position[node.offset];
+            float p_y = node.position[node.offset + 1];
+            float p_z = node.position[node.offset + 2];
+
+            for(int j = 0; j < node.numConnections; j++)
+            {
+                int n_off = node.connections[j].offset;
+                float d_x = node.connections[j].position[n_off] - p_x;
+                float d_y = node.connections[j].position[n_off + 1] - p_y;
+                float d_z = node.connections[j].position[n_off + 2] - p_z;
+
+                float len = (float)Math.sqrt(d_x * d_x + d_y * d_y + d_z * d_z);
+                float t = (len - node.naturalLengths[j]) / len;
+
+                node.dir[0] += spring_constant * dTime * 3 * d_x * t;
+                node.dir[1] += spring_constant * dTime * 3 * d_y * t;
+                node.dir[2] += spring_constant * dTime * 3 * d_z * t;
+            }
+
+            node.dir[0] += dTime * gravity[0];
+            node.dir[1] += dTime * gravity[1];
+            node.dir[2] += dTime * gravity[2];
+        }
+
+        for(int i = 0; i < num_nodes; i++)
+        {
+            SpringNode node = system.getNode(i);
+
+            if(node.locked)
+                continue;
+
+            node.position[node.offset] += dTime * node.dir[0];
+            node.position[node.offset + 1] += dTime * node.dir[1];
+            node.position[node.offset + 2] += dTime * node.dir[2];
+        }
+    }
+}
@@ -0,0 +1,1031 @@
+/*
+ * j3d.org Copyright (c) 2001-2015
+ *                                 Java Source
+ *
+ *  This source is licensed under the GNU LGPL v2.1
+ *  Please read docs/LGPL.txt for more information
+ *
+ *  This software comes with the standard NO WARRANTY disclaimer for any
+ *  purpose. Use it at your own risk. If there's a problem you get to fix it.
+ */
+
+package org.j3d.geom.subdivision;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import org.testng.annotations.Test;
+
+import org.j3d.geom.GeometryData;
+import org.j3d.geom.UnsupportedTypeException;
+
+import static org.testng.Assert.*;
+
+public class CatmullClarkGeneratorTest
+{
+    /** Corners of the cube from -1 to 1 */
+    private static final float[] CUBE_COORDS = {
+        -1, -1, -1,   1, -1, -1,   1,  1, -1,  -1,  1, -1,
+        -1, -1,  1,   1, -1,  1,   1,  1,  1,  -1,  1,  1
+    };
+
+    /** Outward facing quads of the cube */
+    private static final int[] CUBE_INDEXES = {
+        0, 3, 2, 1,
+        4, 5, 6, 7,
+        0, 1, 5, 4,
+        1, 2, 6, 5,
+        2, 3, 7, 6,
+        3, 0, 4, 7
+    };
+
+    private static final int[] CUBE_COUNTS = { 4, 4, 4, 4, 4, 4 };
+
+    @Test(groups = "unit")
+    public void testCubeFirstLevel() throws Exception
+    {
+        CatmullClarkGenerator classUnderTest = new CatmullClarkGenerator();
+        classUnderTest.setControlMesh(CUBE_COORDS, CUBE_INDEXES, CUBE_COUNTS, 6, null);
+        classUnderTest.setNumSubdivisions(1);
+
+        GeometryData data = new GeometryData();
+        data.geometryType = GeometryData.INDEXED_QUADS;
+
+        assertEquals(classUnderTest.getVertexCount(data), 8 + 6 + 12, "Level 1 vertex count");
+
+        classUnderTest.generate(data, null);
+
+        assertEquals(data.vertexCount, 26, "Vertex count");
+        assertEquals(data.indexesCount, 24 * 4, "Index count");
+
+        // Original corner moves to 5/9 of the way in
+        assertEquals(data.coordinates[6 * 3], 5 / 9f, 0.0001f, "Corner x");
+        assertEquals(data.coordinates[6 * 3 + 1], 5 / 9f, 0.0001f, "Corner y");
+        assertEquals(data.coordinates[6 * 3 + 2], 5 / 9f, 0.0001f, "Corner z");
+
+        // Face points stay in the centre of the original faces
+        for(int f = 0; f < 6; f++)
+        {
+            int p = (8 + f) * 3;
+            float len = Math.abs(data.coordinates[p]) +
+                        Math.abs(data.coordinates[p + 1]) +
+                        Math.abs(data.coordinates[p + 2]);
+
+            assertEquals(len, 1, 0.0001f, "Face point " + f + " not at face centre");
+        }
+
+        // Edge points are at 3/4 along both of the edge's face directions
+        for(int e = 0; e < 12; e++)
+        {
+            int p = (14 + e) * 3;
+            float len = Math.abs(data.coordinates[p]) +
+                        Math.abs(data.coordinates[p + 1]) +
+                        Math.abs(data.coordinates[p + 2]);
+
+            assertEquals(len, 1.5f, 0.0001f, "Edge point " + e);
+        }
+
+        for(int i = 0; i < data.indexesCount; i++)
+            assertTrue(data.indexes[i] >= 0 && data.indexes[i] < 26, "Index " + i + " out of range");
+    }
+
+    @Test(groups = "unit")
+    public void testClosedSurfaceStaysClosed() throws Exception
+    {
+        CatmullClarkGenerator classUnderTest = new CatmullClarkGenerator();
+        classUnderTest.setControlMesh(CUBE_COORDS, CUBE_INDEXES, CUBE_COUNTS, 6, null);
+        classUnderTest.setNumSubdivisions(3);
+
+        GeometryData data = new GeometryData();
+        data.geometryType = GeometryData.INDEXED_QUADS;
+        data.geometryComponents = GeometryData.NORMAL_DATA;
+
+        classUnderTest.generate(data, null);
+
+        // V - E + F = 2 with F = 6 * 4^3 quads
+        int num_faces = 6 * 64;
+        int num_edges = num_faces * 2;
+        assertEquals(data.vertexCount, 2 + num_edges - num_faces, "Euler characteristic");
+
+        // Every normal should point away from the centre
+        for(int v = 0; v < data.vertexCount; v++)
+        {
+            int p = v * 3;
+            float dot = data.coordinates[p] * data.normals[p] +
+                        data.coordinates[p + 1] * data.normals[p + 1] +
+                        data.coordinates[p + 2] * data.normals[p + 2];
+
+            assertTrue(dot > 0, "Normal " + v + " points inwards");
+        }
+    }
+
+    @Test(groups = "unit")
+    public void testOpenGridStaysFlat() throws Exception
+    {
+        int size = 4;
+        float[] coords = createGrid(size, false);
+        int[] indexes = createGridIndexes(size);
+        int[] counts = new int[size * size];
+
+        for(int i = 0; i < counts.length; i++)
+            counts[i] = 4;
+
+        CatmullClarkGenerator classUnderTest = new CatmullClarkGenerator();
+        classUnderTest.setControlMesh(coords, indexes, counts, counts.length, null);
+        classUnderTest.setNumSubdivisions(2);
+
+        GeometryData data = new GeometryData();
+        data.geometryType = GeometryData.QUADS;
+
+        classUnderTest.generate(data, null);
+
+        assertEquals(data.vertexCount, size * size * 16 * 4, "Quad vertex count");
+
+        for(int i = 0; i < data.vertexCount; i++)
+            assertEquals(data.coordinates[i * 3 + 2], 0, 0.0f, "Vertex " + i + " not flat");
+    }
+
+    @Test(groups = "unit")
+    public void testCornerVertexFixed() throws Exception
+    {
+        int[] flags = new int[8];
+        flags[6] = SubdivisionTypes.CORNER_VERTEX;
+
+        CatmullClarkGenerator classUnderTest = new CatmullClarkGenerator();
+        classUnderTest.setControlMesh(CUBE_COORDS, CUBE_INDEXES, CUBE_COUNTS, 6, flags);
+        classUnderTest.setNumSubdivisions(2);
+
+        GeometryData data = new GeometryData();
+        data.geometryType = GeometryData.INDEXED_QUADS;
+
+        classUnderTest.generate(data, null);
+
+        assertEquals(data.coordinates[6 * 3], 1, 0.0f, "Corner moved in x");
+        assertEquals(data.coordinates[6 * 3 + 1], 1, 0.0f, "Corner moved in y");
+        assertEquals(data.coordinates[6 * 3 + 2], 1, 0.0f, "Corner moved in z");
+
+        // Vertex 0 was not tagged so it should have moved
+        assertTrue(data.coordinates[0] > -1, "Untagged corner did not move");
+    }
+
+    @Test(groups = "unit")
+    public void testTriangleCage() throws Exception
+    {
+        float[] coords = {
+            1, 1, 1,  -1, -1, 1,  -1, 1, -1,  1, -1, -1
+        };
+        int[] indexes = { 0, 1, 3,  0, 2, 1,  0, 3, 2,  1, 2, 3 };
+        int[] counts = { 3, 3, 3, 3 };
+
+        CatmullClarkGenerator classUnderTest = new CatmullClarkGenerator();
+        classUnderTest.setControlMesh(coords, indexes, counts, 4, null);
+
+        GeometryData data = new GeometryData();
+        data.geometryType = GeometryData.QUADS;
+
+        try
+        {
+            classUnderTest.getVertexCount(data);
+            fail("Quads allowed from a triangle cage with no subdivision");
+        }
+        catch(UnsupportedTypeException ute)
+        {
+            // expected
+        }
+
+        data.geometryType = GeometryData.TRIANGLES;
+        assertEquals(classUnderTest.getVertexCount(data), 12, "Unsubdivided triangles");
+
+        classUnderTest.setNumSubdivisions(1);
+
+        // 12 quads of 2 triangles each
+        assertEquals(classUnderTest.getVertexCount(data), 12 * 2 * 3, "Subdivided triangles");
+
+        data.geometryType = GeometryData.QUADS;
+        classUnderTest.generate(data);
+        assertEquals(data.vertexCount, 12 * 4, "Subdivided quads");
+    }
+
+    @Test(groups = "unit")
+    public void testFlatSector() throws Exception
+    {
+        CatmullClarkGenerator classUnderTest = new CatmullClarkGenerator();
+        classUnderTest.setControlMesh(CUBE_COORDS, CUBE_INDEXES, CUBE_COUNTS, 6, null);
+        classUnderTest.setNumSubdivisions(1);
+
+        GeometryData data = new GeometryData();
+        data.geometryType = GeometryData.INDEXED_QUADS;
+
+        classUnderTest.generate(data, null);
+        assertTrue(ringFlatness(data, 6) > 0.01f, "Plain cube corner is flat");
+
+        // Vertex 6 is the third corner of the second face
+        classUnderTest.addSector(1, 2, SubdivisionTypes.UNTAGGED_SECTOR, 1, 0);
+        classUnderTest.generate(data, null);
+
+        assertEquals(ringFlatness(data, 6), 0, 1e-5f, "Flattened ring not flat");
+    }
+
+    @Test(groups = "unit")
+    public void testSectorStencilsMatchDirect() throws Exception
+    {
+        int size = 6;
+        float[] coords = createGrid(size, true);
+
+        for(int limit = 0; limit < 2; limit++)
+        {
+            CatmullClarkGenerator direct = createGridGenerator(size, true);
+            addGridSectors(direct, size);
+            direct.setNumSubdivisions(2);
+            direct.setLimitProjection(limit == 1);
+
+            CatmullClarkGenerator stencil = createGridGenerator(size, true);
+            addGridSectors(stencil, size);
+            stencil.setNumSubdivisions(2);
+            stencil.setLimitProjection(limit == 1);
+            stencil.setStencilMode(true);
+
+            GeometryData expected = new GeometryData();
+            expected.geometryType = GeometryData.INDEXED_QUADS;
+            direct.generate(expected, null);
+
+            GeometryData actual = new GeometryData();
+            actual.geometryType = GeometryData.INDEXED_QUADS;
+            stencil.generate(actual, null);
+
+            float[] evaluated = new float[expected.vertexCount * 3];
+            stencil.getStencilTable().evaluate(coords, evaluated, null);
+
+            for(int i = 0; i < evaluated.length; i++)
+            {
+                assertEquals(actual.coordinates[i], expected.coordinates[i], 1e-4f,
+                             "Limit " + limit + " output " + i);
+                assertEquals(evaluated[i], expected.coordinates[i], 1e-4f,
+                             "Limit " + limit + " value " + i);
+            }
+        }
+    }
+
+    @Test(groups = "unit")
+    public void testRemoveSector() throws Exception
+    {
+        int size = 4;
+        CatmullClarkGenerator classUnderTest = createGridGenerator(size, true);
+        classUnderTest.setNumSubdivisions(2);
+
+        GeometryData plain = new GeometryData();
+        plain.geometryType = GeometryData.INDEXED_QUADS;
+        classUnderTest.generate(plain, null);
+
+        addGridSectors(classUnderTest, size);
+
+        GeometryData sectors = new GeometryData();
+        sectors.geometryType = GeometryData.INDEXED_QUADS;
+        classUnderTest.generate(sectors, null);
+
+        assertFalse(Arrays.equals(sectors.coordinates, plain.coordinates),
+                    "Sectors had no effect");
+
+        classUnderTest.removeSector(1, 1);
+        classUnderTest.removeSector(2 * size + 2, 0);
+
+        GeometryData removed = new GeometryData();
+        removed.geometryType = GeometryData.INDEXED_QUADS;
+        classUnderTest.generate(removed, null);
+
+        assertEquals(removed.coordinates, plain.coordinates, "Removal left changes");
+
+        // Adaptive refinement must still join up around the sectors
+        addGridSectors(classUnderTest, size);
+        classUnderTest.setAdaptive(true);
+        classUnderTest.setNumSubdivisions(3);
+
+        GeometryData adaptive = new GeometryData();
+        adaptive.geometryType = GeometryData.TRIANGLES;
+        classUnderTest.generate(adaptive, null);
+
+        checkNoTJunctions(adaptive);
+    }
+
+    @Test(groups = "unit")
+    public void testConvexSectorAngle() throws Exception
+    {
+        int size = 4;
+        float[] coords = createGrid(size, true);
+
+        CatmullClarkGenerator plain = createGridGenerator(size, true);
+        plain.setNumSubdivisions(1);
+
+        GeometryData expected = new GeometryData();
+        expected.geometryType = GeometryData.INDEXED_QUADS;
+        plain.generate(expected, null);
+
+        // Vertex 2 lies on the bottom boundary between faces 1 and 2
+        CatmullClarkGenerator classUnderTest = createGridGenerator(size, true);
+        classUnderTest.setNumSubdivisions(1);
+        classUnderTest.addSector(1, 1, SubdivisionTypes.CONVEX_SECTOR, 0, (float)(Math.PI / 4));
+
+        GeometryData data = new GeometryData();
+        data.geometryType = GeometryData.INDEXED_QUADS;
+        classUnderTest.generate(data, null);
+
+        for(int i = 0; i < 3; i++)
+        {
+            assertEquals(data.coordinates[2 * 3 + i], coords[2 * 3 + i], 0.0f,
+                         "Corner moved in " + i);
+        }
+
+        int changed = 0;
+
+        for(int v = 0; v < data.vertexCount; v++)
+        {
+            for(int i = v * 3; i < v * 3 + 3; i++)
+            {
+                if(v != 2 && Math.abs(data.coordinates[i] - expected.coordinates[i]) > 1e-5f)
+                {
+                    changed++;
+                    break;
+                }
+            }
+        }
+
+        // Only the edge point of the interior edge at the corner moves
+        assertEquals(changed, 1, "Sector angle did not change the edge rule");
+    }
+
+    @Test(groups = "unit")
+    public void testInvalidSectors() throws Exception
+    {
+        CatmullClarkGenerator classUnderTest = createGridGenerator(4, false);
+        float pi = (float)Math.PI;
+
+        int[][] args = {
+            { -1, 0, SubdivisionTypes.UNTAGGED_SECTOR },
+            { 16, 0, SubdivisionTypes.UNTAGGED_SECTOR },
+            { 0, 4, SubdivisionTypes.UNTAGGED_SECTOR },
+            { 0, 0, 7 },
+            { 1, 1, SubdivisionTypes.CONVEX_SECTOR },
+            { 1, 1, SubdivisionTypes.CONCAVE_SECTOR },
+            { 5, 0, SubdivisionTypes.CONVEX_SECTOR },
+            { 0, 0, SubdivisionTypes.UNTAGGED_SECTOR }
+        };
+
+        float[] flatness = { 0, 0, 0, 0, 0, 0, 0, 1.5f };
+        float[] theta = { 0, 0, 0, 0, pi * 1.5f, pi * 0.5f, pi * 0.5f, 0 };
+
+        for(int i = 0; i < args.length; i++)
+        {
+            try
+            {
+                classUnderTest.addSector(args[i][0], args[i][1], args[i][2],
+                                         flatness[i], theta[i]);
+                fail("Invalid sector " + i + " accepted");
+            }
+            catch(IllegalArgumentException iae)
+            {
+                // expected
+            }
+        }
+
+        try
+        {
+            classUnderTest.removeSector(0, 4);
+            fail("Invalid sector removal accepted");
+        }
+        catch(IllegalArgumentException iae)
+        {
+            // expected
+        }
+    }
+
+    @Test(groups = "unit")
+    public void testParallelMatchesSerial() throws Exception
+    {
+        int size = 40;
+        float[] coords = createGrid(size, true);
+        int[] indexes = createGridIndexes(size);
+        int[] counts = new int[size * size];
+
+        for(int i = 0; i < counts.length; i++)
+            counts[i] = 4;
+
+        CatmullClarkGenerator classUnderTest = new CatmullClarkGenerator();
+        classUnderTest.setControlMesh(coords, indexes, counts, counts.length, null);
+        classUnderTest.setNumSubdivisions(3);
+
+        GeometryData serial = new GeometryData();
+        serial.geometryType = GeometryData.INDEXED_QUADS;
+        serial.geometryComponents = GeometryData.NORMAL_DATA;
+
+        classUnderTest.generate(serial, null);
+
+        // Force the levels to be recalculated on the pool
+        classUnderTest.setControlMesh(coords, indexes, counts, counts.length, null);
+
+        GeometryData parallel = new GeometryData();
+        parallel.geometryType = GeometryData.INDEXED_QUADS;
+        parallel.geometryComponents = GeometryData.NORMAL_DATA;
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+
+        try
+        {
+            classUnderTest.generate(parallel, pool);
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+
+        assertEquals(parallel.vertexCount, serial.vertexCount, "Vertex counts differ");
+        assertEquals(parallel.coordinates, serial.coordinates, "Coordinates differ");
+        assertEquals(parallel.normals, serial.normals, "Normals differ");
+        assertEquals(parallel.indexes, serial.indexes, "Indexes differ");
+    }
+
+    @Test(groups = "unit")
+    public void testStencilsMatchDirect() throws Exception
+    {
+        int size = 6;
+        float[] coords = createGrid(size, true);
+        int[] indexes = createGridIndexes(size);
+        int[] counts = new int[size * size];
+
+        for(int i = 0; i < counts.length; i++)
+            counts[i] = 4;
+
+        for(int limit = 0; limit < 2; limit++)
+        {
+            CatmullClarkGenerator direct = new CatmullClarkGenerator();
+            direct.setControlMesh(coords, indexes, counts, counts.length, null);
+            direct.setNumSubdivisions(2);
+            direct.setLimitProjection(limit == 1);
+
+            CatmullClarkGenerator stencil = new CatmullClarkGenerator();
+            stencil.setControlMesh(coords, indexes, counts, counts.length, null);
+            stencil.setNumSubdivisions(2);
+            stencil.setLimitProjection(limit == 1);
+            stencil.setStencilMode(true);
+
+            GeometryData expected = new GeometryData();
+            expected.geometryType = GeometryData.INDEXED_QUADS;
+            direct.generate(expected, null);
+
+            GeometryData actual = new GeometryData();
+            actual.geometryType = GeometryData.INDEXED_QUADS;
+            stencil.generate(actual, null);
+
+            assertEquals(actual.vertexCount, expected.vertexCount, "Vertex count");
+
+            SubdivisionStencilTable table = stencil.getStencilTable();
+            assertEquals(table.getNumStencils(), expected.vertexCount, "Stencil count");
+            assertEquals(table.getNumControlPoints(), (size + 1) * (size + 1),
+                         "Control point count");
+
+            int[] offsets = table.getOffsets();
+            float[] weights = table.getWeights();
+
+            for(int s = 0; s < table.getNumStencils(); s++)
+            {
+                float sum = 0;
+
+                for(int i = offsets[s]; i < offsets[s + 1]; i++)
+                    sum += weights[i];
+
+                assertEquals(sum, 1, 1e-5f, "Weights of stencil " + s);
+            }
+
+            float[] evaluated = new float[expected.vertexCount * 3];
+            table.evaluate(coords, evaluated, null);
+
+            for(int i = 0; i < evaluated.length; i++)
+                assertEquals(evaluated[i], expected.coordinates[i], 1e-4f,
+                             "Limit " + limit + " value " + i);
+        }
+    }
+
+    @Test(groups = "unit")
+    public void testAnimatedCage() throws Exception
+    {
+        float[] moved = CUBE_COORDS.clone();
+
+        for(int i = 0; i < moved.length; i += 3)
+        {
+            moved[i] *= 2;
+            moved[i + 1] += 0.5f;
+        }
+
+        CatmullClarkGenerator stencil = new CatmullClarkGenerator();
+        stencil.setControlMesh(CUBE_COORDS, CUBE_INDEXES, CUBE_COUNTS, 6, null);
+        stencil.setNumSubdivisions(2);
+        stencil.setStencilMode(true);
+
+        GeometryData actual = new GeometryData();
+        actual.geometryType = GeometryData.INDEXED_QUADS;
+        stencil.generate(actual, null);
+
+        SubdivisionStencilTable table = stencil.getStencilTable();
+
+        stencil.setControlPoints(moved);
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+
+        try
+        {
+            stencil.generate(actual, pool);
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+
+        assertSame(stencil.getStencilTable(), table, "Table rebuilt for new points");
+
+        CatmullClarkGenerator direct = new CatmullClarkGenerator();
+        direct.setControlMesh(moved, CUBE_INDEXES, CUBE_COUNTS, 6, null);
+        direct.setNumSubdivisions(2);
+
+        GeometryData expected = new GeometryData();
+        expected.geometryType = GeometryData.INDEXED_QUADS;
+        direct.generate(expected, null);
+
+        for(int i = 0; i < expected.vertexCount * 3; i++)
+            assertEquals(actual.coordinates[i], expected.coordinates[i], 1e-4f,
+                         "Value " + i);
+    }
+
+    @Test(groups = "unit")
+    public void testLimitOfFlatGrid() throws Exception
+    {
+        int size = 4;
+        float[] coords = createGrid(size, false);
+        int[] indexes = createGridIndexes(size);
+        int[] counts = new int[size * size];
+
+        for(int i = 0; i < counts.length; i++)
+            counts[i] = 4;
+
+        CatmullClarkGenerator classUnderTest = new CatmullClarkGenerator();
+        classUnderTest.setControlMesh(coords, indexes, counts, counts.length, null);
+        classUnderTest.setLimitProjection(true);
+
+        GeometryData data = new GeometryData();
+        data.geometryType = GeometryData.INDEXED_QUADS;
+
+        classUnderTest.generate(data, null);
+
+        // A linear grid is its own limit surface, other than the four
+        // untagged corners which are rounded off by the boundary curves.
+        int num_vtx = size + 1;
+
+        for(int j = 0; j < num_vtx; j++)
+        {
+            for(int i = 0; i < num_vtx; i++)
+            {
+                if((i == 0 || i == size) && (j == 0 || j == size))
+                    continue;
+
+                int p = (j * num_vtx + i) * 3;
+
+                for(int k = 0; k < 3; k++)
+                    assertEquals(data.coordinates[p + k], coords[p + k], 1e-5f,
+                                 "Vertex " + i + "," + j);
+            }
+        }
+    }
+
+    @Test(groups = "unit")
+    public void testAdaptiveFlatGridStaysCoarse() throws Exception
+    {
+        int size = 4;
+        CatmullClarkGenerator classUnderTest = createGridGenerator(size, false);
+        classUnderTest.setNumSubdivisions(3);
+        classUnderTest.setAdaptive(true);
+
+        GeometryData data = new GeometryData();
+        data.geometryType = GeometryData.QUADS;
+
+        try
+        {
+            classUnderTest.getVertexCount(data);
+            fail("Quads allowed in adaptive mode");
+        }
+        catch(UnsupportedTypeException ute)
+        {
+            // expected
+        }
+
+        data.geometryType = GeometryData.INDEXED_TRIANGLES;
+        classUnderTest.generate(data, null);
+
+        assertEquals(data.indexesCount, size * size * 2 * 3, "Flat grid was refined");
+        assertEquals(data.vertexCount, (size + 1) * (size + 1), "Vertex count");
+    }
+
+    @Test(groups = "unit")
+    public void testAdaptiveCubeIsClosed() throws Exception
+    {
+        CatmullClarkGenerator classUnderTest = new CatmullClarkGenerator();
+        classUnderTest.setControlMesh(CUBE_COORDS, CUBE_INDEXES, CUBE_COUNTS, 6, null);
+        classUnderTest.setNumSubdivisions(3);
+        classUnderTest.setAdaptive(true);
+        classUnderTest.setErrorTolerance(0.05f);
+
+        GeometryData data = new GeometryData();
+        data.geometryType = GeometryData.INDEXED_TRIANGLES;
+        data.geometryComponents = GeometryData.NORMAL_DATA;
+
+        classUnderTest.generate(data, null);
+
+        int num_tris = data.indexesCount / 3;
+        assertTrue(num_tris < 6 * 64 * 2, "No saving over uniform: " + num_tris);
+
+        // Every directed edge must be matched by exactly one going the other
+        // way for the surface to be closed with no T-junctions.
+        int unmatched = countUnmatchedEdges(data);
+        assertEquals(unmatched, 0, "Open edges in closed surface");
+
+        int num_edges = num_tris * 3 / 2;
+        assertEquals(data.vertexCount - num_edges + num_tris, 2, "Euler characteristic");
+
+        // The cube is symmetric about the origin, so the normals point out
+        for(int i = 0; i < data.vertexCount; i++)
+        {
+            float dot = data.coordinates[i * 3] * data.normals[i * 3] +
+                        data.coordinates[i * 3 + 1] * data.normals[i * 3 + 1] +
+                        data.coordinates[i * 3 + 2] * data.normals[i * 3 + 2];
+
+            assertTrue(dot > 0, "Normal " + i + " points inwards");
+        }
+    }
+
+    @Test(groups = "unit")
+    public void testAdaptiveRegionIsCrackFree() throws Exception
+    {
+        int size = 4;
+        CatmullClarkGenerator classUnderTest = createGridGenerator(size, false);
+        classUnderTest.setNumSubdivisions(3);
+        classUnderTest.setAdaptive(true);
+
+        GeometryData coarse = new GeometryData();
+        coarse.geometryType = GeometryData.INDEXED_TRIANGLES;
+
+        classUnderTest.generate(coarse, null);
+
+        classUnderTest.addRefinementRegion(new float[] { 1.5f, 1.5f, -1 },
+                                           new float[] { 2.5f, 2.5f, 1 },
+                                           3);
+
+        GeometryData data = new GeometryData();
+        data.geometryType = GeometryData.INDEXED_TRIANGLES;
+
+        classUnderTest.generate(data, null);
+
+        int num_tris = data.indexesCount / 3;
+        assertTrue(num_tris > size * size * 2, "Region not refined");
+        assertTrue(num_tris < size * size * 64 * 2, "Everything refined");
+
+        // The region does not reach the outside, so the only open edges
+        // are the ones around the outside of the grid and the area is the
+        // same as the unrefined grid.
+        assertEquals(countUnmatchedEdges(data), size * 4, "Cracks inside the grid");
+        assertEquals(area(data), area(coarse), 1e-4f, "Holes or overlaps");
+        checkNoTJunctions(data);
+    }
+
+    @Test(groups = "unit")
+    public void testAdaptiveViewpoint() throws Exception
+    {
+        int size = 8;
+        CatmullClarkGenerator classUnderTest = createGridGenerator(size, true);
+        classUnderTest.setNumSubdivisions(4);
+        classUnderTest.setAdaptive(true);
+        classUnderTest.setErrorTolerance(1);
+        classUnderTest.setViewpoint(new float[] { 0, 0, 3 }, 200);
+
+        GeometryData data = new GeometryData();
+        data.geometryType = GeometryData.INDEXED_TRIANGLES;
+
+        classUnderTest.generate(data, null);
+
+        int near = 0;
+        int far = 0;
+
+        for(int t = 0; t < data.indexesCount; t += 3)
+        {
+            float x = data.coordinates[data.indexes[t] * 3] +
+                      data.coordinates[data.indexes[t + 1] * 3] +
+                      data.coordinates[data.indexes[t + 2] * 3];
+
+            if(x < size * 1.5f)
+                near++;
+            else
+                far++;
+        }
+
+        assertTrue(near > far, "Near half not refined more: " + near + " " + far);
+
+        // A single sheet with no holes has an Euler characteristic of one
+        int num_tris = data.indexesCount / 3;
+        int num_edges = (num_tris * 3 + countUnmatchedEdges(data)) / 2;
+
+        assertEquals(data.vertexCount - num_edges + num_tris, 1, "Euler characteristic");
+        checkNoTJunctions(data);
+    }
+
+    @Test(groups = "unit")
+    public void testAdaptiveMatchesUniformWhenCurved() throws Exception
+    {
+        int size = 5;
+
+        CatmullClarkGenerator uniform = createGridGenerator(size, true);
+        uniform.setNumSubdivisions(2);
+        uniform.setLimitProjection(true);
+
+        GeometryData expected = new GeometryData();
+        expected.geometryType = GeometryData.INDEXED_QUADS;
+        uniform.generate(expected, null);
+
+        CatmullClarkGenerator classUnderTest = createGridGenerator(size, true);
+        classUnderTest.setNumSubdivisions(2);
+        classUnderTest.setAdaptive(true);
+
+        GeometryData serial = new GeometryData();
+        serial.geometryType = GeometryData.INDEXED_TRIANGLES;
+        classUnderTest.generate(serial, null);
+
+        // Every face is curved, so with no tolerance everything is refined
+        assertEquals(serial.indexesCount / 3, size * size * 16 * 2, "Triangle count");
+        assertEquals(serial.vertexCount, expected.vertexCount, "Vertex count");
+
+        for(int i = 0; i < serial.vertexCount; i++)
+        {
+            float best = Float.MAX_VALUE;
+
+            for(int j = 0; j < expected.vertexCount; j++)
+            {
+                float dx = serial.coordinates[i * 3] - expected.coordinates[j * 3];
+                float dy = serial.coordinates[i * 3 + 1] - expected.coordinates[j * 3 + 1];
+                float dz = serial.coordinates[i * 3 + 2] - expected.coordinates[j * 3 + 2];
+
+                best = Math.min(best, dx * dx + dy * dy + dz * dz);
+            }
+
+            assertTrue(best < 1e-8f, "Vertex " + i + " not on the uniform limit");
+        }
+
+        // Rebuild on a pool and check nothing changes
+        classUnderTest.setNumSubdivisions(0);
+        classUnderTest.setNumSubdivisions(2);
+
+        GeometryData parallel = new GeometryData();
+        parallel.geometryType = GeometryData.INDEXED_TRIANGLES;
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+
+        try
+        {
+            classUnderTest.generate(parallel, pool);
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+
+        assertEquals(parallel.coordinates, serial.coordinates, "Coordinates differ");
+        assertEquals(parallel.indexes, serial.indexes, "Indexes differ");
+    }
+
+    /**
+     * Count the directed edges of an indexed triangle array that are not
+     * matched by one going the other way.
+     */
+    private int countUnmatchedEdges(GeometryData data)
+    {
+        Set<Long> edges = new HashSet<>();
+
+        for(int t = 0; t < data.indexesCount; t++)
+        {
+            long a = data.indexes[t];
+            long b = data.indexes[(t % 3 == 2) ? t - 2 : t + 1];
+
+            if(!edges.remove((b << 32) | a))
+                edges.add((a << 32) | b);
+        }
+
+        return edges.size();
+    }
+
+    /**
+     * Total area of an indexed triangle array.
+     */
+    private float area(GeometryData data)
+    {
+        double ret_val = 0;
+        float[] c = data.coordinates;
+
+        for(int t = 0; t < data.indexesCount; t += 3)
+        {
+            int a = data.indexes[t] * 3;
+            int b = data.indexes[t + 1] * 3;
+            int d = data.indexes[t + 2] * 3;
+
+            double ux = c[b] - c[a];
+            double uy = c[b + 1] - c[a + 1];
+            double uz = c[b + 2] - c[a + 2];
+            double vx = c[d] - c[a];
+            double vy = c[d + 1] - c[a + 1];
+            double vz = c[d + 2] - c[a + 2];
+
+            double nx = uy * vz - uz * vy;
+            double ny = uz * vx - ux * vz;
+            double nz = ux * vy - uy * vx;
+
+            ret_val += 0.5 * Math.sqrt(nx * nx + ny * ny + nz * nz);
+        }
+
+        return (float)ret_val;
+    }
+
+    /**
+     * Check that no vertex of an indexed triangle array sits part way along
+     * the edge of a triangle, looking down the Z axis.
+     */
+    private void checkNoTJunctions(GeometryData data)
+    {
+        float[] c = data.coordinates;
+
+        for(int t = 0; t < data.indexesCount; t++)
+        {
+            int a = data.indexes[t] * 3;
+            int b = data.indexes[(t % 3 == 2) ? t - 2 : t + 1] * 3;
+
+            float abx = c[b] - c[a];
+            float aby = c[b + 1] - c[a + 1];
+            float len2 = abx * abx + aby * aby;
+
+            for(int v = 0; v < data.vertexCount; v++)
+            {
+                int p = v * 3;
+
+                if(p == a || p == b)
+                    continue;
+
+                float apx = c[p] - c[a];
+                float apy = c[p + 1] - c[a + 1];
+                float cross = (abx * apy - aby * apx) / len2;
+                float along = (abx * apx + aby * apy) / len2;
+
+                assertFalse(Math.abs(cross) < 1e-5f && along > 1e-4f && along < 1 - 1e-4f,
+                            "T-junction at vertex " + v);
+            }
+        }
+    }
+
+    /**
+     * Add a concave sector on the bottom boundary and a flattened interior
+     * sector to a grid generator.
+     */
+    private void addGridSectors(CatmullClarkGenerator gen, int size)
+    {
+        gen.addSector(1, 1, SubdivisionTypes.CONCAVE_SECTOR, 0.5f, (float)(Math.PI * 1.5));
+        gen.addSector(2 * size + 2, 0, SubdivisionTypes.UNTAGGED_SECTOR, 0.7f, 0);
+    }
+
+    /**
+     * Find how far the one-ring of an output vertex is from lying in a
+     * plane, as the largest distance from the plane through the vertex and
+     * two of its neighbours.
+     */
+    private float ringFlatness(GeometryData data, int v)
+    {
+        Set<Integer> ring = new HashSet<>();
+
+        for(int i = 0; i < data.indexesCount; i += 4)
+        {
+            boolean found = false;
+
+            for(int j = 0; j < 4; j++)
+                found |= data.indexes[i + j] == v;
+
+            if(found)
+            {
+                for(int j = 0; j < 4; j++)
+                    ring.add(data.indexes[i + j]);
+            }
+        }
+
+        float[] c = data.coordinates;
+        float[][] d = new float[ring.size()][3];
+        int num = 0;
+
+        for(int r : ring)
+        {
+            for(int i = 0; i < 3; i++)
+                d[num][i] = c[r * 3 + i] - c[v * 3 + i];
+
+            num++;
+        }
+
+        // Use the pair of offsets with the largest cross product
+        float[] n = new float[3];
+        float best = 0;
+
+        for(int a = 0; a < num; a++)
+        {
+            for(int b = a + 1; b < num; b++)
+            {
+                float x = d[a][1] * d[b][2] - d[a][2] * d[b][1];
+                float y = d[a][2] * d[b][0] - d[a][0] * d[b][2];
+                float z = d[a][0] * d[b][1] - d[a][1] * d[b][0];
+                float len = (float)Math.sqrt(x * x + y * y + z * z);
+
+                if(len > best)
+                {
+                    best = len;
+                    n[0] = x / len;
+                    n[1] = y / len;
+                    n[2] = z / len;
+                }
+            }
+        }
+
+        float ret_val = 0;
+
+        for(int a = 0; a < num; a++)
+        {
+            float dist = d[a][0] * n[0] + d[a][1] * n[1] + d[a][2] * n[2];
+            ret_val = Math.max(ret_val, Math.abs(dist));
+        }
+
+        return ret_val;
+    }
+
+    /**
+     * Create a generator with a grid of size x size quads as its control
+     * mesh.
+     */
+    private CatmullClarkGenerator createGridGenerator(int size, boolean bumpy)
+    {
+        float[] coords = createGrid(size, bumpy);
+        int[] indexes = createGridIndexes(size);
+        int[] counts = new int[size * size];
+
+        for(int i = 0; i < counts.length; i++)
+            counts[i] = 4;
+
+        CatmullClarkGenerator ret_val = new CatmullClarkGenerator();
+        ret_val.setControlMesh(coords, indexes, counts, counts.length, null);
+
+        return ret_val;
+    }
+
+    /**
+     * Create the vertices of a grid of size x size quads in the XY plane,
+     * optionally with a bump in the Z direction.
+     */
+    private float[] createGrid(int size, boolean bumpy)
+    {
+        int num_vtx = size + 1;
+        float[] ret_val = new float[num_vtx * num_vtx * 3];
+
+        for(int j = 0; j < num_vtx; j++)
+        {
+            for(int i = 0; i < num_vtx; i++)
+            {
+                int p = (j * num_vtx + i) * 3;
+                ret_val[p] = i;
+                ret_val[p + 1] = j;
+                ret_val[p + 2] = bumpy ? (float)(Math.sin(i * 0.7) * Math.cos(j * 0.3)) : 0;
+            }
+        }
+
+        return ret_val;
+    }
+
+    /**
+     * Create the counter-clockwise quad indexes of a grid of size x size quads.
+     */
+    private int[] createGridIndexes(int size)
+    {
+        int num_vtx = size + 1;
+        int[] ret_val = new int[size * size * 4];
+        int idx = 0;
+
+        for(int j = 0; j < size; j++)
+        {
+            for(int i = 0; i < size; i++)
+            {
+                int v = j * num_vtx + i;
+                ret_val[idx++] = v;
+                ret_val[idx++] = v + 1;
+                ret_val[idx++] = v + num_vtx + 1;
+                ret_val[idx++] = v + num_vtx;
+            }
+        }
+
+        return ret_val;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * j3d.org Copyright (c) 2001-2015
+ *                                 Java Source
+ *
+ *  This source is licensed under the GNU LGPL v2.1
+ *  Please read docs/LGPL.txt for more information
+ *
+ *  This software comes with the standard NO WARRANTY disclaimer for any
+ *  purpose. Use it at your own risk. If there's a problem you get to fix it.
+ */
+
+package org.j3d.geom.subdivision;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.testng.annotations.Test;
+
+import org.j3d.geom.GeometryData;
+import org.j3d.geom.UnsupportedTypeException;
+
+import static org.testng.Assert.*;
+
+public class SubdivisionGeneratorTest
+{
+    /**
+     * Generator that only implements the methods that had to be implemented
+     * before the pool overloads were added.
+     */
+    private static class PlainGenerator extends SubdivisionGenerator
+    {
+        int numRegenerations;
+        int numNormals;
+
+        @Override
+        public int getVertexCount(GeometryData data)
+        {
+            return 0;
+        }
+
+        @Override
+        protected void regenerateSubdivision()
+        {
+            numRegenerations++;
+        }
+
+        @Override
+        protected void regenerateNormals()
+        {
+            numNormals++;
+        }
+    }
+
+    @Test(groups = "unit")
+    public void testPoolOverloadsDelegate() throws Exception
+    {
+        PlainGenerator classUnderTest = new PlainGenerator();
+
+        GeometryData data = new GeometryData();
+        data.geometryType = GeometryData.INDEXED_QUADS;
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+
+        try
+        {
+            classUnderTest.generate(data, pool);
+            classUnderTest.regenerateSubdivision(pool);
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+
+        assertEquals(classUnderTest.numRegenerations, 2, "Regenerations");
+        assertEquals(classUnderTest.numNormals, 0, "Normals without request");
+
+        data.geometryComponents = GeometryData.NORMAL_DATA;
+        classUnderTest.generate(data);
+
+        assertEquals(classUnderTest.numRegenerations, 3, "Plain generate");
+        assertEquals(classUnderTest.numNormals, 1, "Normals on request");
+    }
+
+    @Test(groups = "unit", expectedExceptions = UnsupportedTypeException.class)
+    public void testUnknownType() throws Exception
+    {
+        GeometryData data = new GeometryData();
+        data.geometryType = -1;
+
+        new PlainGenerator().generate(data, null);
+    }
+}
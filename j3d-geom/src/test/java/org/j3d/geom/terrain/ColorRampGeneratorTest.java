@@ -0,0 +1,107 @@
+/*
+ * j3d.org Copyright (c) 2001-2015
+ *                                 Java Source
+ *
+ *  This source is licensed under the GNU LGPL v2.1
+ *  Please read docs/LGPL.txt for more information
+ *
+ *  This software comes with the standard NO WARRANTY disclaimer for any
+ *  purpose. Use it at your own risk. If there's a problem you get to fix it.
+ */
+
+package org.j3d.geom.terrain;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+
+import org.testng.annotations.Test;
+
+import org.j3d.geom.InvalidArraySizeException;
+
+import static org.testng.Assert.*;
+
+public class ColorRampGeneratorTest
+{
+    @Test(groups = "unit")
+    public void testCreateImage() throws Exception
+    {
+        float[] heights = { 0, 10, 20 };
+        float[][] ramp = { { 0, 0, 1 }, { 0, 1, 0 }, { 1, 1, 1 } };
+        ColorRampGenerator classUnderTest = new ColorRampGenerator(heights, ramp);
+
+        assertFalse(classUnderTest.hasAlpha(), "Alpha");
+
+        float[][] data = new float[40][25];
+
+        for(int i = 0; i < 40; i++)
+            for(int j = 0; j < 25; j++)
+                data[i][j] = i + j - 20;
+
+        BufferedImage serial = classUnderTest.createImage(data, null);
+        BufferedImage parallel;
+        ForkJoinPool pool = new ForkJoinPool(4);
+
+        try
+        {
+            parallel = classUnderTest.createImage(data, pool);
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+
+        assertEquals(serial.getType(), BufferedImage.TYPE_INT_RGB, "Type");
+
+        ByteBuffer buffer = ByteBuffer.allocate(40 * 25 * 3);
+        classUnderTest.writeImage(data, buffer, null);
+        assertEquals(buffer.position(), 40 * 25 * 3, "Buffer position");
+
+        for(int i = 0; i < 40; i++)
+        {
+            for(int j = 0; j < 25; j++)
+            {
+                float h = data[i][j];
+                int expected;
+
+                if(h <= 0)
+                    expected = 0x0000FF;
+                else if(h >= 20)
+                    expected = 0xFFFFFF;
+                else if(h <= 10)
+                    expected = ((int)(h / 10 * 255) << 8) |
+                               (int)((1 - h / 10) * 255);
+                else
+                    expected = ((int)((h - 10) / 10 * 255) << 16) |
+                               0xFF00 |
+                               (int)((h - 10) / 10 * 255);
+
+                int rgb = serial.getRGB(j, i) & 0xFFFFFF;
+
+                for(int shift = 0; shift < 24; shift += 8)
+                    assertEquals((rgb >> shift) & 0xFF,
+                                 (expected >> shift) & 0xFF,
+                                 1,
+                                 "Pixel " + j + "," + i);
+
+                assertEquals(parallel.getRGB(j, i), serial.getRGB(j, i),
+                             "Parallel pixel " + j + "," + i);
+
+                int out = (i * 25 + j) * 3;
+                assertEquals(buffer.get(out) & 0xFF, (rgb >> 16) & 0xFF, "Buffer red");
+                assertEquals(buffer.get(out + 1) & 0xFF, (rgb >> 8) & 0xFF, "Buffer green");
+                assertEquals(buffer.get(out + 2) & 0xFF, rgb & 0xFF, "Buffer blue");
+            }
+        }
+
+        try
+        {
+            classUnderTest.writeImage(data, ByteBuffer.allocate(10), null);
+            fail("Small buffer accepted");
+        }
+        catch(InvalidArraySizeException iase)
+        {
+            // expected
+        }
+    }
+}
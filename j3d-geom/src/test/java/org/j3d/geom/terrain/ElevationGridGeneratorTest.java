@@ -0,0 +1,275 @@
+/*
+ * j3d.org Copyright (c) 2001-2015
+ *                                 Java Source
+ *
+ *  This source is licensed under the GNU LGPL v2.1
+ *  Please read docs/LGPL.txt for more information
+ *
+ *  This software comes with the standard NO WARRANTY disclaimer for any
+ *  purpose. Use it at your own risk. If there's a problem you get to fix it.
+ */
+
+package org.j3d.geom.terrain;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.testng.annotations.Test;
+
+import org.j3d.geom.GeometryData;
+import org.j3d.geom.UnsupportedTypeException;
+
+import static org.testng.Assert.*;
+
+public class ElevationGridGeneratorTest
+{
+    private static final int WIDTH_POINTS = 10;
+    private static final int DEPTH_POINTS = 7;
+
+    @Test(groups = "unit")
+    public void testChunksMatchGrid() throws Exception
+    {
+        ElevationGridGenerator classUnderTest = createGenerator();
+
+        GeometryData whole = new GeometryData();
+        whole.geometryType = GeometryData.INDEXED_TRIANGLES;
+        whole.geometryComponents = GeometryData.NORMAL_DATA;
+        classUnderTest.generate(whole);
+
+        GeometryData format = new GeometryData();
+        format.geometryType = GeometryData.INDEXED_TRIANGLES;
+        format.geometryComponents = GeometryData.NORMAL_DATA |
+                                    GeometryData.TEXTURE_2D_DATA;
+
+        ElevationGridChunk[] chunks =
+            classUnderTest.generateChunks(format, 3, 2, null);
+
+        assertEquals(chunks.length, 6, "Chunk count");
+
+        int total_tris = 0;
+
+        for(ElevationGridChunk chunk : chunks)
+        {
+            GeometryData data = chunk.geometry;
+
+            assertEquals(data.vertexCount * 3, data.coordinates.length, "Coords");
+            total_tris += data.indexesCount / 3;
+
+            for(int i = 0; i < data.indexesCount; i++)
+                assertTrue(data.indexes[i] < data.vertexCount, "Index range");
+
+            // Every vertex is a grid point with the whole grid normal
+            for(int v = 0; v < data.vertexCount; v++)
+            {
+                int grid = findGridPoint(whole, data.coordinates, v);
+
+                assertTrue(grid >= 0, "Vertex " + v + " not on the grid");
+
+                for(int k = 0; k < 3; k++)
+                    assertEquals(data.normals[v * 3 + k],
+                                 whole.normals[grid * 3 + k],
+                                 "Normal of " + v);
+
+                checkInBounds(chunk, data.coordinates, v);
+            }
+        }
+
+        assertEquals(total_tris,
+                     (WIDTH_POINTS - 1) * (DEPTH_POINTS - 1) * 2,
+                     "Triangles do not cover the grid");
+
+        // Neighbouring chunks share their border points
+        float[] left = chunks[0].geometry.coordinates;
+        float[] right = chunks[1].geometry.coordinates;
+        int left_cols = chunks[0].geometry.vertexCount / 4;
+
+        for(int i = 0; i < 4; i++)
+        {
+            int l = (i * left_cols + left_cols - 1) * 3;
+            int r = i * (chunks[1].geometry.vertexCount / 4) * 3;
+
+            assertEquals(left[l], right[r], "Border X " + i);
+            assertEquals(left[l + 1], right[r + 1], "Border height " + i);
+        }
+    }
+
+    @Test(groups = "unit")
+    public void testSkirts() throws Exception
+    {
+        ElevationGridGenerator classUnderTest = createGenerator();
+        classUnderTest.setSkirtDepth(3);
+
+        GeometryData format = new GeometryData();
+        format.geometryType = GeometryData.INDEXED_TRIANGLES;
+
+        ElevationGridChunk[] chunks =
+            classUnderTest.generateChunks(format, 2, 2, null);
+
+        for(ElevationGridChunk chunk : chunks)
+        {
+            GeometryData data = chunk.geometry;
+            float[] coords = data.coordinates;
+
+            float cx = (chunk.minBounds[0] + chunk.maxBounds[0]) / 2;
+            float cz = (chunk.minBounds[2] + chunk.maxBounds[2]) / 2;
+            int skirt_tris = 0;
+
+            for(int i = 0; i < data.indexesCount; i += 3)
+            {
+                int a = data.indexes[i] * 3;
+                int b = data.indexes[i + 1] * 3;
+                int c = data.indexes[i + 2] * 3;
+
+                float ux = coords[b] - coords[a];
+                float uy = coords[b + 1] - coords[a + 1];
+                float uz = coords[b + 2] - coords[a + 2];
+                float vx = coords[c] - coords[a];
+                float vy = coords[c + 1] - coords[a + 1];
+                float vz = coords[c + 2] - coords[a + 2];
+
+                float nx = uy * vz - uz * vy;
+                float ny = uz * vx - ux * vz;
+                float nz = ux * vy - uy * vx;
+
+                if(Math.abs(ny) > Math.abs(nx) + Math.abs(nz))
+                {
+                    assertTrue(ny > 0, "Surface triangle faces down");
+                    continue;
+                }
+
+                // Skirt triangles face away from the middle of the chunk
+                skirt_tris++;
+                float mx = (coords[a] + coords[b] + coords[c]) / 3 - cx;
+                float mz = (coords[a + 2] + coords[b + 2] + coords[c + 2]) / 3 - cz;
+
+                assertTrue(nx * mx + nz * mz > 0, "Skirt faces in");
+            }
+
+            assertTrue(skirt_tris > 0, "No skirt");
+
+            for(int v = 0; v < data.vertexCount; v++)
+                checkInBounds(chunk, coords, v);
+        }
+
+        try
+        {
+            classUnderTest.setSkirtDepth(-1);
+            fail("Negative skirt accepted");
+        }
+        catch(IllegalArgumentException iae)
+        {
+            // expected
+        }
+    }
+
+    @Test(groups = "unit")
+    public void testParallelMatchesSerial() throws Exception
+    {
+        ElevationGridGenerator classUnderTest = createGenerator();
+        classUnderTest.setSkirtDepth(1);
+
+        GeometryData format = new GeometryData();
+        format.geometryType = GeometryData.INDEXED_TRIANGLES;
+        format.geometryComponents = GeometryData.NORMAL_DATA;
+
+        ElevationGridChunk[] serial =
+            classUnderTest.generateChunks(format, 3, 3, null);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        ElevationGridChunk[] parallel;
+
+        try
+        {
+            parallel = classUnderTest.generateChunks(format, 3, 3, pool);
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+
+        for(int i = 0; i < serial.length; i++)
+        {
+            GeometryData a = serial[i].geometry;
+            GeometryData b = parallel[i].geometry;
+
+            assertTrue(Arrays.equals(a.coordinates, b.coordinates), "Coords " + i);
+            assertTrue(Arrays.equals(a.normals, b.normals), "Normals " + i);
+            assertTrue(Arrays.equals(a.indexes, b.indexes), "Indexes " + i);
+            assertTrue(Arrays.equals(serial[i].minBounds, parallel[i].minBounds), "Bounds " + i);
+        }
+    }
+
+    @Test(groups = "unit")
+    public void testInvalidChunks() throws Exception
+    {
+        ElevationGridGenerator classUnderTest = createGenerator();
+        GeometryData format = new GeometryData();
+        format.geometryType = GeometryData.INDEXED_TRIANGLES;
+
+        try
+        {
+            classUnderTest.generateChunks(format, WIDTH_POINTS, 1, null);
+            fail("More chunks than quads accepted");
+        }
+        catch(IllegalArgumentException iae)
+        {
+            // expected
+        }
+
+        format.geometryType = GeometryData.TRIANGLE_STRIPS;
+
+        try
+        {
+            classUnderTest.generateChunks(format, 1, 1, null);
+            fail("Strips accepted");
+        }
+        catch(UnsupportedTypeException ute)
+        {
+            // expected
+        }
+    }
+
+    /**
+     * A small grid with a bumpy height field.
+     */
+    private static ElevationGridGenerator createGenerator()
+    {
+        float[][] heights = new float[DEPTH_POINTS][WIDTH_POINTS];
+
+        for(int i = 0; i < DEPTH_POINTS; i++)
+            for(int j = 0; j < WIDTH_POINTS; j++)
+                heights[i][j] = (float)(Math.sin(i * 0.7) * Math.cos(j * 0.4) * 5);
+
+        return new ElevationGridGenerator(90, 60, WIDTH_POINTS, DEPTH_POINTS,
+                                          heights, 0);
+    }
+
+    /**
+     * Find the grid point with the same X and Z as a vertex.
+     */
+    private static int findGridPoint(GeometryData whole, float[] coords, int v)
+    {
+        for(int i = 0; i < whole.vertexCount; i++)
+        {
+            if(whole.coordinates[i * 3] == coords[v * 3] &&
+               whole.coordinates[i * 3 + 2] == coords[v * 3 + 2])
+                return i;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Check a vertex is inside the chunk bounds.
+     */
+    private static void checkInBounds(ElevationGridChunk chunk, float[] coords, int v)
+    {
+        for(int k = 0; k < 3; k++)
+        {
+            float value = coords[v * 3 + k];
+
+            assertTrue(value >= chunk.minBounds[k] && value <= chunk.maxBounds[k],
+                       "Vertex " + v + " out of bounds");
+        }
+    }
+}
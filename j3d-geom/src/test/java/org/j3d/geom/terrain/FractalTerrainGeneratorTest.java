@@ -0,0 +1,141 @@
+/*
+ * j3d.org Copyright (c) 2001-2015
+ *                                 Java Source
+ *
+ *  This source is licensed under the GNU LGPL v2.1
+ *  Please read docs/LGPL.txt for more information
+ *
+ *  This software comes with the standard NO WARRANTY disclaimer for any
+ *  purpose. Use it at your own risk. If there's a problem you get to fix it.
+ */
+
+package org.j3d.geom.terrain;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.testng.annotations.Test;
+
+import org.j3d.geom.GeometryData;
+
+import static org.testng.Assert.*;
+
+public class FractalTerrainGeneratorTest
+{
+    @Test(groups = "unit")
+    public void testTileDeterministic() throws Exception
+    {
+        FractalTerrainGenerator first = createGenerator(1234);
+        FractalTerrainGenerator second = createGenerator(1234);
+
+        // Generate some other tiles first to show order does not matter
+        second.generateTile(7, -3, null);
+        second.generateTile(-100, 2, null);
+
+        float[][] a = first.generateTile(5, -2, null);
+        float[][] b = second.generateTile(5, -2, null);
+
+        assertEquals(a.length, first.getTileSidePoints(), "Tile size");
+
+        for(int i = 0; i < a.length; i++)
+            assertTrue(Arrays.equals(a[i], b[i]), "Row " + i + " differs");
+
+        float[][] other = createGenerator(4321).generateTile(5, -2, null);
+        assertFalse(Arrays.equals(a[3], other[3]), "Seed not used");
+    }
+
+    @Test(groups = "unit")
+    public void testTileBordersMatch() throws Exception
+    {
+        FractalTerrainGenerator classUnderTest = createGenerator(99);
+        int last = classUnderTest.getTileSidePoints() - 1;
+
+        float[][] tile = classUnderTest.generateTile(-1, 4, null);
+        float[][] right = classUnderTest.generateTile(0, 4, null);
+        float[][] below = classUnderTest.generateTile(-1, 5, null);
+        float[][] corner = classUnderTest.generateTile(0, 5, null);
+
+        for(int i = 0; i <= last; i++)
+        {
+            assertEquals(tile[i][last], right[i][0], "Right border " + i);
+            assertEquals(tile[last][i], below[0][i], "Lower border " + i);
+        }
+
+        assertEquals(tile[last][last], corner[0][0], "Shared corner");
+
+        // The borders are not just flat
+        assertNotEquals(tile[last / 2][last], tile[0][last], "Flat border");
+    }
+
+    @Test(groups = "unit")
+    public void testParallelMatchesSerial() throws Exception
+    {
+        FractalTerrainGenerator classUnderTest = createGenerator(42);
+        int num_x = 3;
+        int num_z = 4;
+
+        float[][][] serial = new float[num_x * num_z][][];
+        float[][][] parallel = new float[num_x * num_z][][];
+
+        classUnderTest.generateTiles(-1, 2, num_x, num_z, serial, null);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+
+        try
+        {
+            classUnderTest.generateTiles(-1, 2, num_x, num_z, parallel, pool);
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+
+        for(int t = 0; t < serial.length; t++)
+        {
+            float[][] single = classUnderTest.generateTile(-1 + t % num_x,
+                                                           2 + t / num_x,
+                                                           null);
+
+            for(int i = 0; i < single.length; i++)
+            {
+                assertTrue(Arrays.equals(serial[t][i], single[i]),
+                           "Serial tile " + t + " row " + i);
+                assertTrue(Arrays.equals(parallel[t][i], single[i]),
+                           "Parallel tile " + t + " row " + i);
+            }
+        }
+    }
+
+    @Test(groups = "unit")
+    public void testTiledModeGeometry() throws Exception
+    {
+        FractalTerrainGenerator classUnderTest = createGenerator(8);
+        classUnderTest.setTiledMode(true);
+        classUnderTest.setTile(2, 3);
+
+        float[][] heights = classUnderTest.generate();
+        float[][] tile = classUnderTest.generateTile(2, 3, null);
+
+        for(int i = 0; i < tile.length; i++)
+            assertTrue(Arrays.equals(heights[i], tile[i]), "Row " + i);
+
+        GeometryData data = new GeometryData();
+        data.geometryType = GeometryData.INDEXED_TRIANGLES;
+        classUnderTest.generate(data);
+
+        assertEquals(data.vertexCount, tile.length * tile.length, "Vertex count");
+
+        for(int i = 0; i < tile.length; i++)
+            assertEquals(data.coordinates[(i * tile.length + 5) * 3 + 1],
+                         tile[i][5],
+                         "Height " + i);
+    }
+
+    /**
+     * A small generator with no sea level, giving 33 points on a tile side.
+     */
+    private static FractalTerrainGenerator createGenerator(long seed)
+    {
+        return new FractalTerrainGenerator(100, 100, 20, false, 0, 5, 2, seed, null);
+    }
+}
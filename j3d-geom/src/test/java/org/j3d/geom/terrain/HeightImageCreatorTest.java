@@ -0,0 +1,132 @@
+/*
+ * j3d.org Copyright (c) 2001-2015
+ *                                 Java Source
+ *
+ *  This source is licensed under the GNU LGPL v2.1
+ *  Please read docs/LGPL.txt for more information
+ *
+ *  This software comes with the standard NO WARRANTY disclaimer for any
+ *  purpose. Use it at your own risk. If there's a problem you get to fix it.
+ */
+
+package org.j3d.geom.terrain;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public class HeightImageCreatorTest
+{
+    @Test(groups = "unit")
+    public void testGreyScale() throws Exception
+    {
+        float[][] data = createData(70, 45);
+        HeightImageCreator classUnderTest = new HeightImageCreator();
+
+        BufferedImage serial = classUnderTest.createGreyScaleImage(data, null);
+        BufferedImage parallel;
+        ForkJoinPool pool = new ForkJoinPool(4);
+
+        try
+        {
+            parallel = classUnderTest.createGreyScaleImage(data, pool);
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+
+        assertEquals(serial.getType(), BufferedImage.TYPE_BYTE_GRAY, "Type");
+        assertEquals(serial.getWidth(), 45, "Width");
+        assertEquals(serial.getHeight(), 70, "Height");
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(70 * 45 + 3);
+        buffer.position(3);
+        classUnderTest.writeGreyScale(data, buffer, null);
+        assertEquals(buffer.position(), 70 * 45 + 3, "Buffer position");
+
+        float min = -10;
+        float range = 20;
+
+        for(int i = 0; i < 70; i++)
+        {
+            for(int j = 0; j < 45; j++)
+            {
+                int expected = (int)((data[i][j] - min) * 255 / range);
+
+                assertEquals(serial.getRaster().getSample(j, i, 0), expected,
+                             "Pixel " + j + "," + i);
+                assertEquals(parallel.getRaster().getSample(j, i, 0), expected,
+                             "Parallel pixel " + j + "," + i);
+                assertEquals(buffer.get(3 + i * 45 + j) & 0xFF, expected,
+                             "Buffer pixel " + j + "," + i);
+            }
+        }
+    }
+
+    @Test(groups = "unit")
+    public void testColor() throws Exception
+    {
+        float[][] data = createData(30, 20);
+        byte[] min_color = { (byte)255, 0, 0, (byte)255 };
+        byte[] max_color = { 0, 0, (byte)255, (byte)128 };
+        HeightImageCreator classUnderTest =
+            new HeightImageCreator(min_color, max_color);
+
+        assertTrue(classUnderTest.hasAlpha(), "Alpha not found");
+
+        BufferedImage image = classUnderTest.createColorImage(data);
+        assertEquals(image.getType(), BufferedImage.TYPE_INT_ARGB, "Type");
+
+        ByteBuffer buffer = ByteBuffer.allocate(30 * 20 * 4);
+        classUnderTest.writeColor(data, buffer, null);
+
+        for(int i = 0; i < 30; i++)
+        {
+            for(int j = 0; j < 20; j++)
+            {
+                float t = (data[i][j] + 10) / 20;
+                int r = (int)((1 + t * -1) * 255);
+                int b = (int)((0 + t * 1) * 255);
+                int a = (int)((1 + t * (128 / 255f - 1)) * 255);
+                int argb = image.getRGB(j, i);
+
+                assertEquals((argb >> 16) & 0xFF, r, 1, "Red " + j + "," + i);
+                assertEquals(argb & 0xFF, b, 1, "Blue " + j + "," + i);
+                assertEquals((argb >>> 24), a, 1, "Alpha " + j + "," + i);
+
+                int out = (i * 20 + j) * 4;
+                assertEquals(buffer.get(out) & 0xFF, (argb >> 16) & 0xFF, "Buffer red");
+                assertEquals(buffer.get(out + 2) & 0xFF, argb & 0xFF, "Buffer blue");
+                assertEquals(buffer.get(out + 3) & 0xFF, argb >>> 24, "Buffer alpha");
+            }
+        }
+
+        classUnderTest.setColorRange(null, null);
+        assertFalse(classUnderTest.hasAlpha(), "Alpha after reset");
+        assertEquals(classUnderTest.createColorImage(data, null).getType(),
+                     BufferedImage.TYPE_INT_RGB,
+                     "Opaque type");
+    }
+
+    /**
+     * Heights in the range [-10, 10], with both ends present.
+     */
+    private static float[][] createData(int rows, int cols)
+    {
+        float[][] ret_val = new float[rows][cols];
+
+        for(int i = 0; i < rows; i++)
+            for(int j = 0; j < cols; j++)
+                ret_val[i][j] = (float)(Math.sin(i * 0.3 + j * 0.11) * 9);
+
+        ret_val[0][0] = -10;
+        ret_val[rows - 1][cols - 1] = 10;
+
+        return ret_val;
+    }
+}
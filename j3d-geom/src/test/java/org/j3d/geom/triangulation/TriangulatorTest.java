@@ -0,0 +1,160 @@
+/*
+ * j3d.org Copyright (c) 2001-2015
+ *                                 Java Source
+ *
+ *  This source is licensed under the GNU LGPL v2.1
+ *  Please read docs/LGPL.txt for more information
+ *
+ *  This software comes with the standard NO WARRANTY disclaimer for any
+ *  purpose. Use it at your own risk. If there's a problem you get to fix it.
+ */
+
+package org.j3d.geom.triangulation;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public class TriangulatorTest
+{
+    /** Outer square, counter-clockwise, then a square hole, clockwise */
+    private static final float[] SQUARE_WITH_HOLE = {
+        0, 0, 0,  4, 0, 0,  4, 4, 0,  0, 4, 0,
+        1, 1, 0,  1, 3, 0,  3, 3, 0,  3, 1, 0
+    };
+
+    @Test(groups = "unit")
+    public void testPackedSquareWithHole() throws Exception
+    {
+        int[] strips = { 4, 4 };
+        int[] contours = { 2 };
+
+        int max_idx = Triangulator.getMaxIndexCount(strips, contours);
+        assertEquals(max_idx, 24, "Wrong max index count");
+
+        int[] output = new int[max_idx];
+        int[] corners = new int[max_idx];
+
+        Triangulator classUnderTest = new Triangulator();
+        int num_tris = classUnderTest.triangulate(SQUARE_WITH_HOLE,
+                                                  null,
+                                                  strips,
+                                                  contours,
+                                                  output,
+                                                  corners);
+
+        assertEquals(num_tris, 8, "Wrong triangle count");
+        assertEquals(triangleArea(SQUARE_WITH_HOLE, output, num_tris), 12, 0.0001f,
+                     "Triangles don't cover the square minus the hole");
+
+        // Unindexed input, so the corner is the vertex
+        for(int i = 0; i < num_tris * 3; i++)
+            assertEquals(corners[i], output[i], "Corner " + i);
+    }
+
+    @Test(groups = "unit")
+    public void testPackedMatchesGeometryInfo() throws Exception
+    {
+        int[] strips = { 4, 4 };
+        int[] contours = { 2 };
+        int[] indices = { 3, 0, 1, 2, 7, 4, 5, 6 };
+
+        Triangulator classUnderTest = new Triangulator();
+
+        int[] output = new int[Triangulator.getMaxIndexCount(strips, contours)];
+        int[] corners = new int[output.length];
+        int num_tris = classUnderTest.triangulate(SQUARE_WITH_HOLE,
+                                                  indices,
+                                                  strips,
+                                                  contours,
+                                                  output,
+                                                  corners);
+
+        for(int i = 0; i < num_tris * 3; i++)
+            assertEquals(output[i], indices[corners[i]], "Corner lookup " + i);
+
+        GeometryInfo gi = new GeometryInfo(GeometryInfo.POLYGON_ARRAY);
+        gi.setCoordinates(SQUARE_WITH_HOLE);
+        gi.setCoordinateIndices(indices);
+        gi.setStripCounts(strips);
+        gi.setContourCounts(contours);
+
+        classUnderTest.triangulate(gi);
+
+        int[] gi_indices = gi.getCoordinateIndices();
+
+        assertEquals(gi.getPrimitive(), GeometryInfo.TRIANGLE_ARRAY, "Not triangles");
+        assertEquals(gi_indices.length, num_tris * 3, "Index count differs");
+
+        for(int i = 0; i < gi_indices.length; i++)
+            assertEquals(gi_indices[i], output[i], "Index " + i + " differs");
+    }
+
+    @Test(groups = "unit")
+    public void testIndexifyPackedData() throws Exception
+    {
+        // Two triangles sharing an edge, given unindexed
+        float[] coords = {
+            0, 0, 0,  1, 0, 0,  1, 1, 0,
+            0, 0, 0,  1, 1, 0,  0, 1, 0
+        };
+        float[] colors = {
+            1, 0, 0,  1, 0, 0,  0, 1, 0,
+            1, 0, 0,  0, 1, 0,  0, 0, 1
+        };
+
+        GeometryInfo classUnderTest = new GeometryInfo(GeometryInfo.TRIANGLE_ARRAY);
+        classUnderTest.setCoordinates(coords);
+        classUnderTest.setColors3(colors);
+
+        classUnderTest.indexify();
+
+        int[] coord_idx = classUnderTest.getCoordinateIndices();
+        int[] color_idx = classUnderTest.getColorIndices();
+
+        assertEquals(coord_idx, new int[] { 0, 1, 2, 0, 2, 5 }, "Coordinate indices");
+        assertEquals(color_idx, new int[] { 0, 0, 2, 0, 2, 5 }, "Color indices");
+
+        classUnderTest.compact();
+
+        assertEquals(classUnderTest.getCoordinateData().length, 12, "Compacted coordinates");
+        assertEquals(classUnderTest.getColorData().length, 9, "Compacted colors");
+        assertEquals(classUnderTest.getCoordinates().length, 4, "Coordinate objects");
+
+        // The shared corners also share colours, so no vertices are split
+        classUnderTest.indexify(true);
+
+        assertTrue(classUnderTest.getUseCoordIndexOnly(), "Not coord only");
+        assertNull(classUnderTest.getColorIndices(), "Color index left");
+        assertEquals(classUnderTest.getCoordinateData().length, 4 * 3, "Coord only vertices");
+
+        classUnderTest.unindexify();
+
+        assertEquals(classUnderTest.getCoordinateData(), coords, "Round trip coordinates");
+        assertEquals(classUnderTest.getColorData(), colors, "Round trip colors");
+    }
+
+    /**
+     * Sum of the areas of the triangles in the XY plane.
+     */
+    private float triangleArea(float[] coords, int[] tris, int numTris)
+    {
+        double ret_val = 0;
+
+        for(int i = 0; i < numTris; i++)
+        {
+            int p0 = tris[i * 3] * 3;
+            int p1 = tris[i * 3 + 1] * 3;
+            int p2 = tris[i * 3 + 2] * 3;
+
+            double ax = coords[p1] - coords[p0];
+            double ay = coords[p1 + 1] - coords[p0 + 1];
+            double bx = coords[p2] - coords[p0];
+            double by = coords[p2 + 1] - coords[p0 + 1];
+
+            ret_val += Math.abs(ax * by - ay * bx) * 0.5;
+        }
+
+        return (float)ret_val;
+    }
+}